@@ -107,6 +107,10 @@ public class Onem2mRequestPrimitiveClientBuilder {
         onem2mRequest.setPrimitive(RequestPrimitive.RESPONSE_TYPE, value);
         return this;
     }
+    public Onem2mRequestPrimitiveClientBuilder addResponseTypeNotificationUri(String value) {
+        onem2mRequest.setPrimitiveMany(RequestPrimitive.RESPONSE_TYPE_NOTIFICATION_URI, value);
+        return this;
+    }
     public Onem2mRequestPrimitiveClientBuilder setResultPersistence(String value) {
         onem2mRequest.setPrimitive(RequestPrimitive.RESULT_PERSISTENCE, value);
         return this;
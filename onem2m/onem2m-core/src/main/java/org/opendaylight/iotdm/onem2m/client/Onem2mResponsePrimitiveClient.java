@@ -17,6 +17,8 @@ public class Onem2mResponsePrimitiveClient {
     private String responseStatusCode;
     private String requestIdentifier;
     private String content;
+    private String contentStatus;
+    private String continuationCursor;
     private boolean success = false;
 
     private static final Logger LOG = LoggerFactory.getLogger(Onem2mResponsePrimitiveClient.class);
@@ -29,6 +31,8 @@ public class Onem2mResponsePrimitiveClient {
         responseStatusCode = onem2mResponse.getPrimitive(ResponsePrimitive.RESPONSE_STATUS_CODE);
         success = responseStatusCode.charAt(0) == '2' ? true : false;
         content = onem2mResponse.getPrimitive(ResponsePrimitive.CONTENT);
+        contentStatus = onem2mResponse.getPrimitive(ResponsePrimitive.CONTENT_STATUS);
+        continuationCursor = onem2mResponse.getPrimitive(ResponsePrimitive.CONTINUATION_CURSOR);
         response = new Onem2mResponse(content);
     }
 
@@ -50,5 +54,12 @@ public class Onem2mResponsePrimitiveClient {
     public String getResponseStatusCode() {
         return this.responseStatusCode;
     }
+    public String getContentStatus() {
+        return this.contentStatus;
+    }
+    // cursor of the next page of a partial discovery result, null if it's the last page
+    public String getContinuationCursor() {
+        return this.continuationCursor;
+    }
 }
 
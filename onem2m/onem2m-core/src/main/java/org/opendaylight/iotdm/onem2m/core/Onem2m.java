@@ -122,6 +122,7 @@ public class Onem2m {
         public static final int CONTENT_INSTANCE = 4;
         public static final int SUBSCRIPTION = 23;
         public static final int NODE = 14;
+        public static final int POLLING_CHANNEL = 15;
         public static final int GROUP = 9;
         public static final int ACCESS_CONTROL_POLICY = 1;
         public static final int REMOTE_CSE = 16;
@@ -138,6 +139,7 @@ public class Onem2m {
         public static final String CONTENT_INSTANCE = "cin";
         public static final String SUBSCRIPTION = "sub";
         public static final String NODE = "nod";
+        public static final String POLLING_CHANNEL = "pch";
         public static final String GROUP = "grp";
         public static final String ACCESS_CONTROL_POLICY = "acp";
         public static final String REMOTE_CSE = "csr";
@@ -162,6 +164,7 @@ public class Onem2m {
         put(ResourceType.CONTENT_INSTANCE, ResourceTypeString.CONTENT_INSTANCE);
         put(ResourceType.SUBSCRIPTION, ResourceTypeString.SUBSCRIPTION);
         put(ResourceType.NODE, ResourceTypeString.NODE);
+        put(ResourceType.POLLING_CHANNEL, ResourceTypeString.POLLING_CHANNEL);
         put(ResourceType.GROUP, ResourceTypeString.GROUP);
         put(ResourceType.ACCESS_CONTROL_POLICY, ResourceTypeString.ACCESS_CONTROL_POLICY);
         put(ResourceType.REMOTE_CSE, ResourceTypeString.REMOTE_CSE);
@@ -225,6 +228,14 @@ public class Onem2m {
         public static final int BLOCKING_REQUEST = 3;
     }
 
+    // m2m:requestStatus of the request accepted as non-blocking
+    public class RequestStatus {
+        public static final String COMPLETED = "1";
+        public static final String FAILED = "2";
+        public static final String PENDING = "3";
+        public static final String FORWARDED = "4";
+    }
+
     public class NotificationContentType {
         public static final String MODIFIED_ATTRIBUTES = "1";
         public static final String WHOLE_RESOURCE = "2";
@@ -250,6 +261,11 @@ public class Onem2m {
 
     }
 
+    public class ContentStatus {
+        public static final String PARTIAL_CONTENT = "1";
+        public static final String FULL_CONTENT = "2";
+    }
+
     // TODO: Filter Usage
     public class FilterUsageType {
         public static final int DISCOVERY = 1;
@@ -268,6 +284,8 @@ public class Onem2m {
 
     // TS0004 sections: 6.3.3.2.9, 6.6, for each new error code, add a mapping error code to CoAP and HTTP
     public class ResponseStatusCode {
+        public static final String ACCEPTED = "1000";
+
         public static final String OK = "2000";
         public static final String CREATED = "2001";
         public static final String DELETED = "2002";
@@ -276,6 +294,7 @@ public class Onem2m {
         public static final String BAD_REQUEST = "4000";
         public static final String NOT_FOUND = "4004";
         public static final String OPERATION_NOT_ALLOWED = "4005";
+        public static final String REQUEST_TIMEOUT = "4008";
         public static final String CONTENTS_UNACCEPTABLE = "4102";
         public static final String ACCESS_DENIED = "4103";
         public static final String CONFLICT = "4105";
@@ -305,6 +324,9 @@ public class Onem2m {
         public static final int ONEM2M_RSC = 265;
         public static final int ONEM2M_GID = 266;
         public static final int ONEM2M_TY = 267;
+        public static final int ONEM2M_CTS = 269;
+        // not a oneM2M option, continuation cursor of the discovery (elective, experimental range)
+        public static final int ONEM2M_CUR = 65000;
     }
 
     /*
@@ -361,6 +383,8 @@ public class Onem2m {
             addDef(CoapOption.ONEM2M_RSC, ResponsePrimitive.RESPONSE_STATUS_CODE, false, 0xFFFF);
             addDef(CoapOption.ONEM2M_GID, RequestPrimitive.GROUP_REQUEST_IDENTIFIER, true, 255);
             addDef(CoapOption.ONEM2M_TY, RequestPrimitive.RESOURCE_TYPE, false, 0xFFFF);
+            addDef(CoapOption.ONEM2M_CTS, ResponsePrimitive.CONTENT_STATUS, false, 0xFF);
+            addDef(CoapOption.ONEM2M_CUR, ResponsePrimitive.CONTINUATION_CURSOR, true, 255);
         }
     }
 
@@ -393,6 +417,9 @@ public class Onem2m {
         public static final String X_M2M_RTU = "X-M2M-RTU";
         public static final String X_M2M_OT = "X-M2M-OT";
         public static final String X_M2M_RSC = "X-M2M-RSC";
+        public static final String X_M2M_CTS = "X-M2M-CTS";
+        // not a oneM2M header, continuation cursor of the discovery
+        public static final String X_M2M_CUR = "X-M2M-CUR";
     }
 
     public class Mqtt {
@@ -442,6 +469,7 @@ public class Onem2m {
         add(RequestPrimitive.FILTER_CRITERIA_FILTER_USAGE);
         add(RequestPrimitive.FILTER_CRITERIA_LIMIT);
         add(RequestPrimitive.FILTER_CRITERIA_OFFSET);
+        add(RequestPrimitive.FILTER_CRITERIA_CURSOR);
         add(RequestPrimitive.DISCOVERY_RESULT_TYPE);
 //        add(RequestPrimitive.PROTOCOL);
 //        add(RequestPrimitive.CONTENT_FORMAT);
@@ -450,25 +478,38 @@ public class Onem2m {
     }};
 
     /**
-     * Routine to allow REST clients to invoke the MDSAL RPC which will process the RequestPrimitive accessed via
-     * the Onem2mService.
+     * Routine to allow REST clients to process the RequestPrimitive. The request is handled in-process by
+     * the Onem2mCoreProvider if it runs in this process, otherwise the MDSAL RPC accessed via the Onem2mService
+     * is invoked.
      * @param onem2mRequest request
      * @param onem2mService response
      * @return the response primitives
      */
     public static ResponsePrimitive serviceOnem2mRequest(@Nonnull final RequestPrimitive onem2mRequest,
                                                          @Nonnull final Onem2mService onem2mService) {
-        Onem2mRequestPrimitiveInput input = new Onem2mRequestPrimitiveInputBuilder()
-                                                .setConfiguredSecurityLevel(DEFAULTSECURITYLEVEL)
-                                                .setCseBaseId(null)
-                                                .setSenderIdentity(null)
-                                                .setOnem2mPrimitive(onem2mRequest.getPrimitivesList()).build();
-        return processOnem2mRequestInput(input, onem2mService);
+        return serviceOnem2mRequest(onem2mRequest, onem2mService, DEFAULTSECURITYLEVEL);
     }
 
     public static ResponsePrimitive serviceOnem2mRequest(@Nonnull final RequestPrimitive onem2mRequest,
                                                          @Nonnull final Onem2mService onem2mService,
                                                          @Nonnull final SecurityLevel securityLevel) {
+        Onem2mCoreProvider coreProvider = Onem2mCoreProvider.getInstance();
+        if (null != coreProvider) {
+            return processOnem2mRequestLocally(coreProvider, onem2mRequest, securityLevel, null, null, null);
+        }
+        return serviceOnem2mRequestRpc(onem2mRequest, onem2mService, securityLevel);
+    }
+
+    /**
+     * Invokes the MDSAL RPC to process the RequestPrimitive even if the Onem2mCoreProvider runs in this process.
+     * @param onem2mRequest request
+     * @param onem2mService the RPC service
+     * @param securityLevel security level configured for the receiver of the request
+     * @return the response primitives
+     */
+    public static ResponsePrimitive serviceOnem2mRequestRpc(@Nonnull final RequestPrimitive onem2mRequest,
+                                                            @Nonnull final Onem2mService onem2mService,
+                                                            @Nonnull final SecurityLevel securityLevel) {
         Onem2mRequestPrimitiveInput input = new Onem2mRequestPrimitiveInputBuilder()
                                                     .setConfiguredSecurityLevel(securityLevel)
                                                     .setCseBaseId(null)
@@ -492,6 +533,15 @@ public class Onem2m {
             return onem2mResponse;
         }
 
+        Onem2mCoreProvider coreProvider = Onem2mCoreProvider.getInstance();
+        if (null != coreProvider) {
+            onem2mResponse = processOnem2mRequestLocally(coreProvider, onem2mRequest, securityLevel,
+                                                         authToken.isCse(), authToken.getCseBaseCseId(),
+                                                         authToken.getEntityId());
+            authToken.setUsed();
+            return onem2mResponse;
+        }
+
         Onem2mRequestPrimitiveInput input = new Onem2mRequestPrimitiveInputBuilder()
                                                     .setConfiguredSecurityLevel(securityLevel)
                                                     .setSenderIsCse(authToken.isCse())
@@ -502,6 +552,24 @@ public class Onem2m {
         return processOnem2mRequestInput(input, onem2mService);
     }
 
+    private static ResponsePrimitive processOnem2mRequestLocally(Onem2mCoreProvider coreProvider,
+                                                                 RequestPrimitive onem2mRequest,
+                                                                 SecurityLevel securityLevel,
+                                                                 Boolean senderIsCse,
+                                                                 String cseBaseId,
+                                                                 String senderIdentity) {
+        try {
+            return coreProvider.handle(onem2mRequest, securityLevel, senderIsCse, cseBaseId, senderIdentity);
+        } catch (RuntimeException e) {
+            // the same response as in case of the RPC failure
+            ResponsePrimitive onem2mResponse = new ResponsePrimitive();
+            onem2mResponse.setRSC(ResponseStatusCode.INTERNAL_SERVER_ERROR, "Request exception:" + e.toString());
+            LOG.error("processOnem2mRequestLocally: exception: msg: {}, cause: {}, trace: {}",
+                      e.getMessage(), e.getCause(), ExceptionUtils.getStackTrace(e));
+            return onem2mResponse;
+        }
+    }
+
     private static ResponsePrimitive processOnem2mRequestInput(Onem2mRequestPrimitiveInput input,
                                                                Onem2mService onem2mService) {
         ResponsePrimitive onem2mResponse = null;
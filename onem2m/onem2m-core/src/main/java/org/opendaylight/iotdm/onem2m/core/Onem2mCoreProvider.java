@@ -10,25 +10,34 @@ package org.opendaylight.iotdm.onem2m.core;
 
 import com.google.common.util.concurrent.Futures;
 
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 
+import org.json.JSONObject;
 import org.opendaylight.controller.md.sal.binding.api.NotificationPublishService;
 import org.opendaylight.controller.md.sal.binding.api.DataBroker;
 import org.opendaylight.iotdm.onem2m.core.database.Onem2mDb;
 import org.opendaylight.iotdm.onem2m.core.database.dao.factory.DaoResourceTreeFactory;
 import org.opendaylight.iotdm.onem2m.core.database.dao.factory.DaoResourceTreeFactoryRegistry;
+import org.opendaylight.iotdm.onem2m.core.database.transactionCore.ResourceChangeEventBus;
 import org.opendaylight.iotdm.onem2m.core.database.transactionCore.ResourceTreeReader;
+import org.opendaylight.iotdm.onem2m.core.database.transactionCore.ResourceTreeRecovery;
 import org.opendaylight.iotdm.onem2m.core.database.transactionCore.ResourceTreeWriter;
 import org.opendaylight.iotdm.onem2m.core.database.transactionCore.TransactionManager;
+import org.opendaylight.iotdm.onem2m.core.rest.GroupFanOutProcessor;
+import org.opendaylight.iotdm.onem2m.core.rest.NonBlockingRequestProcessor;
 import org.opendaylight.iotdm.onem2m.core.rest.NotificationProcessor;
 import org.opendaylight.iotdm.onem2m.core.rest.RequestLocker;
 import org.opendaylight.iotdm.onem2m.core.rest.RequestPrimitiveProcessor;
+import org.opendaylight.iotdm.onem2m.core.rest.ResourceExpiryProcessor;
 import org.opendaylight.iotdm.onem2m.core.rest.utils.RequestPrimitive;
 import org.opendaylight.iotdm.onem2m.core.rest.utils.ResponsePrimitive;
+import org.opendaylight.iotdm.onem2m.core.router.Onem2mPollingChannelQueues;
 import org.opendaylight.iotdm.onem2m.core.router.Onem2mRouterService;
+import org.opendaylight.iotdm.onem2m.core.utils.JsonUtils;
 import org.opendaylight.iotdm.onem2m.plugins.Onem2mPluginsDbApi;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.SecurityLevel;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.*;
@@ -36,9 +45,11 @@ import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.on
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.primitive.list.Onem2mPrimitive;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResource;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.onem2m.core.rev141210.Onem2mCoreConfig;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.onem2m.core.rev141210.onem2m.core.change.event.config.ChangeEventConfig;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.onem2m.core.rev141210.onem2m.core.coaps.config.DefaultCoapsConfig;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.onem2m.core.rev141210.onem2m.core.https.config.DefaultHttpsConfig;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.onem2m.core.rev141210.onem2m.core.security.config.SecurityConfig;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.onem2m.core.rev141210.onem2m.core.warm.restart.config.WarmRestartConfig;
 import org.opendaylight.yangtools.yang.common.RpcResult;
 import org.opendaylight.yangtools.yang.common.RpcResultBuilder;
 import org.slf4j.Logger;
@@ -63,10 +74,19 @@ public class Onem2mCoreProvider implements Onem2mService, AutoCloseable,
     private static Onem2mRouterService routerService;
     private static Onem2mCoreProvider coreProvider = null;
     private static final RequestLocker rl = RequestLocker.getInstance();
+    private static final int DEFAULT_DATASTORE_EXPORT_BATCH_SIZE = 20;
+    private static final String DEFAULT_HOT_SET_FILE = "data/iotdm-hot-set";
+    private static final int DEFAULT_HOT_SET_SIZE = 100000;
+    private static final long DEFAULT_HOT_SET_SNAPSHOT_INTERVAL = 60;
+    private static final int DEFAULT_RECOVERY_THREADS = 4;
 
     private SecurityConfig securityConfig = null;
     private DefaultHttpsConfig defaultHttpsConfig = null;
     private DefaultCoapsConfig defaultCoapsConfig = null;
+    private ChangeEventConfig changeEventConfig = null;
+    private WarmRestartConfig warmRestartConfig = null;
+    // the hot set snapshot is disabled without configuration, e.g. in the benchmarks
+    private boolean hotSetSnapshotEnabled = false;
 
     private boolean onSessionInitialized = false;
 
@@ -86,6 +106,9 @@ public class Onem2mCoreProvider implements Onem2mService, AutoCloseable,
             this.setSecurityConfig(config.getSecurityConfig());
             this.setDefaultCoapsConfig(config.getDefaultCoapsConfig());
             this.setDefaultHttpsConfig(config.getDefaultHttpsConfig());
+            this.changeEventConfig = config.getChangeEventConfig();
+            this.warmRestartConfig = config.getWarmRestartConfig();
+            this.hotSetSnapshotEnabled = true;
         }
 
         onSessionInitialized = true;
@@ -159,17 +182,70 @@ public class Onem2mCoreProvider implements Onem2mService, AutoCloseable,
             }
         }
 
-        this.transactionManager = new TransactionManager(this.dataBroker, daoResourceTreeFactory);
+        this.transactionManager = new TransactionManager(this.dataBroker, daoResourceTreeFactory,
+                                                         getDatastoreExportBatchSize());
         this.twc = this.transactionManager.getDbResourceTreeWriter();
         this.trc = this.transactionManager.getTransactionReader();
         Onem2mDb.getInstance().registerDbReaderAndWriter(twc, trc);
         Onem2mPluginsDbApi.getInstance().registerDbReaderAndWriter(twc, trc);
         NotificationProcessor.getInstance().initThreadsAndQueuesForResourceProcessing();
+        ResourceExpiryProcessor.getInstance().start();
+        startResourceTreeRecovery();
 
         LOG.info("Onem2mCoreProvider.registerDaoPlugin: plugin registered: {}", daoResourceTreeFactory.getName());
     }
 
+    /*
+     * The state derived from the resource tree kept by the DAO plugin is rebuilt in the background, the requests
+     * are served in the meantime.
+     */
+    private void startResourceTreeRecovery() {
+        String hotSetFile = DEFAULT_HOT_SET_FILE;
+        int hotSetSize = DEFAULT_HOT_SET_SIZE;
+        long hotSetSnapshotInterval = DEFAULT_HOT_SET_SNAPSHOT_INTERVAL;
+        int recoveryThreads = DEFAULT_RECOVERY_THREADS;
+        if (null != warmRestartConfig) {
+            if (null != warmRestartConfig.getHotSetFile()) {
+                hotSetFile = warmRestartConfig.getHotSetFile();
+            }
+            if (null != warmRestartConfig.getHotSetSize()) {
+                hotSetSize = (int) Math.min(Integer.MAX_VALUE, warmRestartConfig.getHotSetSize());
+            }
+            if (null != warmRestartConfig.getHotSetSnapshotInterval()) {
+                hotSetSnapshotInterval = warmRestartConfig.getHotSetSnapshotInterval();
+            }
+            if (null != warmRestartConfig.getRecoveryThreads()) {
+                recoveryThreads = warmRestartConfig.getRecoveryThreads();
+            }
+        }
+        this.transactionManager.startResourceTreeRecovery(hotSetSnapshotEnabled ? Paths.get(hotSetFile) : null,
+                                                          hotSetSize, hotSetSnapshotInterval, recoveryThreads);
+    }
+
+    /**
+     * @return the rebuild of the state derived from the resource tree, null if no DAO plugin is registered
+     */
+    public ResourceTreeRecovery getResourceTreeRecovery() {
+        TransactionManager manager = this.transactionManager;
+        return (null == manager) ? null : manager.getResourceTreeRecovery();
+    }
+
+    private int getDatastoreExportBatchSize() {
+        if (null == changeEventConfig || !Boolean.TRUE.equals(changeEventConfig.isDatastoreExport())) {
+            return 0;
+        }
+        return (null == changeEventConfig.getDatastoreExportBatchSize()) ?
+                DEFAULT_DATASTORE_EXPORT_BATCH_SIZE : changeEventConfig.getDatastoreExportBatchSize();
+    }
+
     public void unregisterDaoPlugin() {
+        if (null != this.transactionManager) {
+            this.transactionManager.stopResourceTreeRecovery();
+        }
+        ResourceExpiryProcessor.getInstance().stop();
+        if (null != this.trc) {
+            this.trc.getResourceAttributeIndex().stop();
+        }
         Onem2mPluginsDbApi.getInstance().unregisterDbReaderAndWriter();
 
         if (null != this.transactionManager) {
@@ -231,25 +307,63 @@ public class Onem2mCoreProvider implements Onem2mService, AutoCloseable,
      */
     @Override
     public Future<RpcResult<Onem2mRequestPrimitiveOutput>> onem2mRequestPrimitive(Onem2mRequestPrimitiveInput input) {
+        RequestPrimitive receivedRequest = new RequestPrimitive();
+        receivedRequest.setPrimitivesList(input.getOnem2mPrimitive());
+        return createOutputFromResponse(processRequestPrimitives(receivedRequest,
+                                                                 input.getConfiguredSecurityLevel(),
+                                                                 input.isSenderIsCse(),
+                                                                 input.getCseBaseId(),
+                                                                 input.getSenderIdentity()));
+    }
 
+    /**
+     * Handles the request in-process, without the MD-SAL RPC. The request is passed directly to the request
+     * processor, which takes its primitives without the list of primitives, and the response is returned as it
+     * has been built by the processor, so the input and output of the RPC are not built. Intended for the callers running in the same process (the protocol
+     * plugins and native applications), the RPC remains available for remote and RESTCONF callers.
+     * @param onem2mRequest the request, it's not modified
+     * @param securityLevel security level configured for the receiver of the request
+     * @return the response
+     */
+    public ResponsePrimitive handle(@Nonnull final RequestPrimitive onem2mRequest,
+                                    @Nonnull final SecurityLevel securityLevel) {
+        return processRequestPrimitives(onem2mRequest, securityLevel, null, null, null);
+    }
 
-        //LOG.info("RPC: begin handle op ...");
-        Onem2mRequestPrimitiveOutput output = null;
+    /**
+     * Handles the authenticated request in-process, see handle(RequestPrimitive, SecurityLevel).
+     * @param onem2mRequest the request, it's not modified
+     * @param securityLevel security level configured for the receiver of the request
+     * @param senderIsCse true if the authenticated sender is CSE
+     * @param cseBaseId CSE-ID of the cseBase the sender has been authenticated for
+     * @param senderIdentity the authenticated identity of the sender
+     * @return the response
+     */
+    public ResponsePrimitive handle(@Nonnull final RequestPrimitive onem2mRequest,
+                                    @Nonnull final SecurityLevel securityLevel,
+                                    final Boolean senderIsCse,
+                                    final String cseBaseId,
+                                    final String senderIdentity) {
+        return processRequestPrimitives(onem2mRequest, securityLevel, senderIsCse, cseBaseId, senderIdentity);
+    }
 
-        List<Onem2mPrimitive> onem2mPrimitiveList = input.getOnem2mPrimitive();
-        // todo: if it is a group/fanoutpoint, new a GroupRequestPrimitiveProcessor then called a lot of single processor?
+    private ResponsePrimitive processRequestPrimitives(RequestPrimitive receivedRequest,
+                                                       SecurityLevel configuredSecurityLevel,
+                                                       Boolean senderIsCse,
+                                                       String senderCseBaseId,
+                                                       String senderIdentity) {
         RequestPrimitiveProcessor onem2mRequest = new RequestPrimitiveProcessor();
         ResponsePrimitive onem2mResponse =  new ResponsePrimitive();
-        onem2mRequest.processPrimitivesList(onem2mPrimitiveList, onem2mResponse);
+        onem2mRequest.processRequestPrimitive(receivedRequest, onem2mResponse);
         if (onem2mResponse.getPrimitiveResponseStatusCode() != null) {
-            return createOutputFromResponse(onem2mResponse);
+            return onem2mResponse;
         }
 
         if (!isDaoPluginRegistered()) {
             onem2mResponse = new ResponsePrimitive();
             onem2mResponse.setRSC(Onem2m.ResponseStatusCode.INTERNAL_SERVER_ERROR,
                     "DaoPlugin not yet registered");
-            return createOutputFromResponse(onem2mResponse);
+            return onem2mResponse;
         }
 
         Onem2mDb.CseBaseResourceLocator resourceLocator = null;
@@ -258,25 +372,17 @@ public class Onem2mCoreProvider implements Onem2mService, AutoCloseable,
             if(nativeAppName != null && nativeAppName.equals("CSEProvisioning")) {
 
                 Onem2mCseProvisioningInput cseInput = new Onem2mCseProvisioningInputBuilder()
-                        .setOnem2mPrimitive(onem2mPrimitiveList).build();
+                        .setOnem2mPrimitive(receivedRequest.getPrimitivesList()).build();
                 Future<RpcResult<Onem2mCseProvisioningOutput>> rpcResult = onem2mCseProvisioning(cseInput);
+                onem2mResponse = new ResponsePrimitive();
                 try {
-                    onem2mPrimitiveList = rpcResult.get().getResult().getOnem2mPrimitive();
-
-                    output = new Onem2mRequestPrimitiveOutputBuilder()
-                            .setOnem2mPrimitive(onem2mPrimitiveList).build();
-                    return RpcResultBuilder.success(output).buildFuture();
-
+                    onem2mResponse.setPrimitivesList(rpcResult.get().getResult().getOnem2mPrimitive());
                 } catch (InterruptedException | ExecutionException ex) {
-                    onem2mResponse = new ResponsePrimitive();
                     onem2mResponse.setPrimitiveRequestIdentifier(onem2mRequest.getPrimitiveRequestIdentifier());
                     onem2mResponse.setRSC(Onem2m.ResponseStatusCode.INTERNAL_SERVER_ERROR, "Cse Provisioning failed");
-                    onem2mPrimitiveList = onem2mResponse.getPrimitivesList();
-                    output = new Onem2mRequestPrimitiveOutputBuilder()
-                            .setOnem2mPrimitive(onem2mPrimitiveList).build();
                 }
 
-                return RpcResultBuilder.success(output).buildFuture();
+                return onem2mResponse;
             }
         } catch (IllegalArgumentException ex) {
             LOG.error("Request with invalid URI passed: {}", onem2mRequest.getPrimitiveTo());
@@ -287,6 +393,14 @@ public class Onem2mCoreProvider implements Onem2mService, AutoCloseable,
         try {
             String to = onem2mRequest.getPrimitiveTo();
             onem2mRequest.setPrimitiveTo(Onem2m.translateUriToOnem2m(to));
+
+            // the references of the non-blocking requests are not resources, the originator accesses them only
+            ResponsePrimitive requestReferenceResponse =
+                    NonBlockingRequestProcessor.getInstance().handleRequestReference(onem2mRequest);
+            if (null != requestReferenceResponse) {
+                return requestReferenceResponse;
+            }
+
             resourceLocator = this.db.createResourceLocator(onem2mRequest.getPrimitiveTo());
         } catch (IllegalArgumentException ex) {
             LOG.error("Request with invalid URI passed: {}", onem2mRequest.getPrimitiveTo());
@@ -295,10 +409,11 @@ public class Onem2mCoreProvider implements Onem2mService, AutoCloseable,
         }
 
         // verify whether the request is correct
-        SecurityLevel secLevel = evalSecurityLevel(input.getConfiguredSecurityLevel());
-        if ((null != input.getSenderIdentity()) && (! input.getSenderIdentity().isEmpty())) {
+        SecurityLevel secLevel = evalSecurityLevel(configuredSecurityLevel);
+        if ((null != senderIdentity) && (! senderIdentity.isEmpty())) {
             LOG.trace("Checking permissions of the authenticated request");
-            onem2mResponse = checkRequestPermissionsAuth(input, resourceLocator, onem2mRequest);
+            onem2mResponse = checkRequestPermissionsAuth(configuredSecurityLevel, senderIsCse, senderCseBaseId,
+                                                         senderIdentity, resourceLocator, onem2mRequest);
         } else {
             if (secLevel == SecurityLevel.L2) {
                 LOG.error("Invalid security level passed (L2) without authentication");
@@ -306,7 +421,7 @@ public class Onem2mCoreProvider implements Onem2mService, AutoCloseable,
                 onem2mResponse.setPrimitiveRequestIdentifier(onem2mRequest.getPrimitiveRequestIdentifier());
                 onem2mResponse.setRSC(Onem2m.ResponseStatusCode.INTERNAL_SERVER_ERROR,
                                       "Invalid security level without authentication");
-                return createOutputFromResponse(onem2mResponse);
+                return onem2mResponse;
             }
             LOG.trace("Checking permissions of the request which is not authenticated");
             onem2mResponse = checkRequestPermissionsNoAuth(secLevel, resourceLocator, onem2mRequest);
@@ -315,9 +430,32 @@ public class Onem2mCoreProvider implements Onem2mService, AutoCloseable,
         if (null != onem2mResponse) {
             // Error response has been returned by verification methods
             LOG.trace("Request permissions check failed");
-            return createOutputFromResponse(onem2mResponse);
+            return onem2mResponse;
         }
 
+        // the non-blocking requests are acknowledged now and executed by a worker
+        if (NonBlockingRequestProcessor.isNonBlocking(onem2mRequest)) {
+            final Onem2mDb.CseBaseResourceLocator locator = resourceLocator;
+            return NonBlockingRequestProcessor.getInstance().accept(onem2mRequest, locator.getCseBaseName(),
+                    locator.getCseBaseCseId(), () -> executeRequest(onem2mRequest, locator, configuredSecurityLevel, senderIsCse,
+                                         senderCseBaseId, senderIdentity));
+        }
+
+        return executeRequest(onem2mRequest, resourceLocator, configuredSecurityLevel, senderIsCse,
+                              senderCseBaseId, senderIdentity);
+    }
+
+    /*
+     * Executes the request which has been verified already, the request is forwarded if its target is not local.
+     */
+    private ResponsePrimitive executeRequest(RequestPrimitiveProcessor onem2mRequest,
+                                             Onem2mDb.CseBaseResourceLocator resourceLocator,
+                                             SecurityLevel configuredSecurityLevel,
+                                             Boolean senderIsCse,
+                                             String senderCseBaseId,
+                                             String senderIdentity) {
+        ResponsePrimitive onem2mResponse;
+
         // Check if the target URI points to local resource
         if (! resourceLocator.isLocalResource()) {
             LOG.trace("Non-local resource requested by URI {}", resourceLocator.getTargetURI());
@@ -335,12 +473,13 @@ public class Onem2mCoreProvider implements Onem2mService, AutoCloseable,
             LOG.trace("Local resource requested by URI {}", resourceLocator.getTargetURI());
 
             onem2mRequest.setTargetResourceLocator(resourceLocator);
+            onem2mRequest.setSenderContext(configuredSecurityLevel, senderIsCse, senderCseBaseId, senderIdentity);
             onem2mResponse = new ResponsePrimitive();
 
             onem2mRequest.handleOperation(onem2mResponse);
         }
 
-        return createOutputFromResponse(onem2mResponse);
+        return onem2mResponse;
     }
 
     private ResponsePrimitive prepareAccessDeniedErrorResponse(RequestPrimitive onem2mRequest, String message) {
@@ -680,7 +819,10 @@ public class Onem2mCoreProvider implements Onem2mService, AutoCloseable,
      * Implements verification of requests from authenticated senders.
      * Returns error response is case of verification failure. Null is returned if the request is OK.
      */
-    private ResponsePrimitive checkRequestPermissionsAuth(Onem2mRequestPrimitiveInput input,
+    private ResponsePrimitive checkRequestPermissionsAuth(SecurityLevel configuredSecurityLevel,
+                                                          Boolean senderIsCse,
+                                                          String senderCseBaseId,
+                                                          String senderIdentity,
                                                           Onem2mDb.CseBaseResourceLocator resourceLocator,
                                                           RequestPrimitive onem2mRequest) {
         /*
@@ -690,28 +832,27 @@ public class Onem2mCoreProvider implements Onem2mService, AutoCloseable,
          *  at the local IoTDM.
          *  3. The authenticated identity of the sender.
          */
-        if (null == input.isSenderIsCse()) {
+        if (null == senderIsCse) {
             LOG.error("Invalid request primitive input for authenticated request, isFromCse information missing");
             return prepareInternalErrorResponse(onem2mRequest, "Invalid data from authentication method");
         }
 
-        if ((null == input.getCseBaseId()) || (input.getCseBaseId().isEmpty())) {
+        if ((null == senderCseBaseId) || (senderCseBaseId.isEmpty())) {
             LOG.error("Invalid request primitive input for authenticated request, toCseBaseId information missing");
             return prepareInternalErrorResponse(onem2mRequest, "Invalid data from authentication method");
         }
 
-        if ((null == input.getSenderIdentity()) || (input.getSenderIdentity().isEmpty())) {
+        if ((null == senderIdentity) || (senderIdentity.isEmpty())) {
             LOG.error("Invalid request primitive input for authenticated request, " +
                       "OriginatorIdentity information is missing");
             return prepareInternalErrorResponse(onem2mRequest, "Invalid data from authentication method");
         }
 
         // Security level must be set otherwise it is internal error
-        assert null != input.getConfiguredSecurityLevel();
+        assert null != configuredSecurityLevel;
 
-        boolean isCse = input.isSenderIsCse();
-        String cseBaseId = input.getCseBaseId();
-        String senderIdentity = input.getSenderIdentity();
+        boolean isCse = senderIsCse;
+        String cseBaseId = senderCseBaseId;
 
         if ((null != resourceLocator.getCseBaseCseId()) && (! cseBaseId.equals(resourceLocator.getCseBaseCseId()))) {
             LOG.error("Request sender is not authenticated for the target cseBase: target: {}, authenticated: {}",
@@ -859,6 +1000,22 @@ public class Onem2mCoreProvider implements Onem2mService, AutoCloseable,
 
     /* TODO fix statistics which are broken after the migration to blueprint */
     public String getOnem2mStats() {
-        return stats.getStats().toString();
+        JSONObject js = stats.getStats();
+        JsonUtils.put(js, "request_locker", rl.getStats());
+        if (null != db.getSubscriptionIndex()) {
+            JsonUtils.put(js, "subscription_index", db.getSubscriptionIndex().getStats());
+            JsonUtils.put(js, "path_cache", db.getResourcePathCache().getStats());
+            JsonUtils.put(js, "attribute_index", db.getResourceAttributeIndex().getStats());
+        }
+        JsonUtils.put(js, "resource_expiry", ResourceExpiryProcessor.getInstance().getStats());
+        ResourceTreeRecovery recovery = getResourceTreeRecovery();
+        if (null != recovery) {
+            JsonUtils.put(js, "resource_tree_recovery", recovery.getStats());
+        }
+        JsonUtils.put(js, "group_fan_out", GroupFanOutProcessor.getInstance().getStats());
+        JsonUtils.put(js, "non_blocking_requests", NonBlockingRequestProcessor.getInstance().getStats());
+        JsonUtils.put(js, "polling_channels", Onem2mPollingChannelQueues.getInstance().getStats());
+        JsonUtils.put(js, "change_event_bus", ResourceChangeEventBus.getInstance().getStats());
+        return js.toString();
     }
 }
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.opendaylight.iotdm.onem2m.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import org.json.JSONObject;
+import org.opendaylight.iotdm.onem2m.core.utils.JsonUtils;
+
+/**
+ * Fixed memory latency histogram with log-linear buckets (the same scheme as HdrHistogram with one significant
+ * digit). Each power of two range of microseconds is split into 8 linear sub-buckets so the reported
+ * percentiles have at most 12.5% error. Recording is lock-free and doesn't allocate.
+ */
+public class Onem2mLatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // 2^40 us is about 12 days, longer latencies are recorded into the last bucket
+    private static final int MAX_EXPONENT = 40;
+    private static final int NUM_BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    private static int bucketIndex(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return NUM_BUCKETS - 1;
+        }
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the highest value recorded into the bucket
+     */
+    private static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = (index - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+        int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    public void recordNanos(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts.incrementAndGet(bucketIndex(micros));
+        totalCount.increment();
+        totalMicros.add(micros);
+
+        long max = maxMicros.get();
+        while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+            max = maxMicros.get();
+        }
+    }
+
+    public long getCount() {
+        return totalCount.sum();
+    }
+
+    /**
+     * Returns the value below which the given fraction of the recorded values falls. The histogram is not
+     * frozen while being read so the result is approximate under concurrent updates.
+     * @param fraction percentile as a fraction in range (0, 1]
+     * @return latency in microseconds
+     */
+    public long getPercentileMicros(double fraction) {
+        long[] snapshot = new long[NUM_BUCKETS];
+        long total = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long target = (long) Math.ceil(fraction * total);
+        long cumulative = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            cumulative += snapshot[i];
+            if (cumulative >= target) {
+                return Math.min(bucketUpperBound(i), maxMicros.get());
+            }
+        }
+        return maxMicros.get();
+    }
+
+    public JSONObject toJson() {
+        JSONObject js = new JSONObject();
+        long count = getCount();
+        JsonUtils.put(js, "count", count);
+        JsonUtils.put(js, "avg_us", count == 0 ? 0 : totalMicros.sum() / count);
+        JsonUtils.put(js, "p50_us", getPercentileMicros(0.50));
+        JsonUtils.put(js, "p90_us", getPercentileMicros(0.90));
+        JsonUtils.put(js, "p99_us", getPercentileMicros(0.99));
+        JsonUtils.put(js, "p999_us", getPercentileMicros(0.999));
+        JsonUtils.put(js, "max_us", maxMicros.get());
+        return js;
+    }
+}
@@ -8,11 +8,16 @@
 
 package org.opendaylight.iotdm.onem2m.core;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 import org.json.JSONObject;
 import org.opendaylight.iotdm.onem2m.core.utils.JsonUtils;
 
+/**
+ * Counters and latency histograms of the onem2m requests. All updates are lock-free so the statistics
+ * don't serialize the request processing threads.
+ */
 public class Onem2mStats {
 
     public static final int HTTP_REQUESTS = 0;
@@ -97,102 +102,174 @@ public class Onem2mStats {
     public static final int RESOURCE_FLEX_CONTAINER_UPDATE = 66;
     public static final int RESOURCE_FLEX_CONTAINER_DELETE = 67;
 
+    public static final int RESOURCE_POLLING_CHANNEL_CREATE = 68;
+    public static final int RESOURCE_POLLING_CHANNEL_RETRIEVE = 69;
+    public static final int RESOURCE_POLLING_CHANNEL_UPDATE = 70;
+    public static final int RESOURCE_POLLING_CHANNEL_DELETE = 71;
+
     // this should be the latest entry one plus 1
-    private static final int MAX_STATS = 68;
+    private static final int MAX_STATS = 72;
+
+    // endpoints seen after the limit is reached are counted together
+    private static final int MAX_ENDPOINTS = 10000;
+    // protocols and resource types are fixed sets, the limit protects against invalid values only
+    private static final int MAX_LATENCY_KEYS = 64;
 
-    private static Onem2mStats s;
+    private static final Onem2mStats s = new Onem2mStats();
 
-    private Integer[] statsArray;
-    private HashMap<String,Integer> endpointMap;
+    private final LongAdder[] statsArray;
+    private final ConcurrentHashMap<String,LongAdder> endpointMap;
+    private final LongAdder endpointOverflow = new LongAdder();
+
+    private final ConcurrentHashMap<String,Onem2mLatencyHistogram> operationLatency = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String,Onem2mLatencyHistogram> resourceTypeLatency = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String,Onem2mLatencyHistogram> protocolLatency = new ConcurrentHashMap<>();
 
     public static Onem2mStats getInstance() {
-        if (s == null) {
-            s = new Onem2mStats();
-        }
         return s;
     }
     private Onem2mStats() {
-        statsArray = new Integer[MAX_STATS];
+        statsArray = new LongAdder[MAX_STATS];
         for (int i = 0; i < MAX_STATS; i++) {
-            statsArray[i] = new Integer(0);
+            statsArray[i] = new LongAdder();
         }
-        endpointMap = new HashMap<String,Integer>(1000);
+        endpointMap = new ConcurrentHashMap<String,LongAdder>(1000);
     }
 
     public static final int ONEM2M_STATS_HTTP_OPS = 0;
 
-    public synchronized void endpointInc(String ep) {
-        Integer v = endpointMap.get(ep);
+    public void endpointInc(String ep) {
+        LongAdder v = endpointMap.get(ep);
         if (v == null) {
-            endpointMap.put(ep, 1);
-        } else {
-            endpointMap.put(ep, v + 1);
+            if (endpointMap.size() >= MAX_ENDPOINTS) {
+                endpointOverflow.increment();
+                return;
+            }
+            v = endpointMap.computeIfAbsent(ep, k -> new LongAdder());
         }
+        v.increment();
     }
-    public synchronized void inc(int statType) {
+    public void inc(int statType) {
 
-        statsArray[statType]++;
+        statsArray[statType].increment();
+    }
+
+    private static String operationToString(Integer operation) {
+        if (operation == null) {
+            return "unknown";
+        }
+        switch (operation) {
+            case Onem2m.Operation.CREATE: return "create";
+            case Onem2m.Operation.RETRIEVE: return "retrieve";
+            case Onem2m.Operation.UPDATE: return "update";
+            case Onem2m.Operation.DELETE: return "delete";
+            case Onem2m.Operation.NOTIFY: return "notify";
+            case Onem2m.Operation.DISCOVER: return "discover";
+            default: return "unknown";
+        }
+    }
+
+    private static void recordLatency(ConcurrentHashMap<String,Onem2mLatencyHistogram> histograms,
+                                      String key, long nanos) {
+        Onem2mLatencyHistogram h = histograms.get(key);
+        if (h == null) {
+            if (histograms.size() >= MAX_LATENCY_KEYS) {
+                return;
+            }
+            h = histograms.computeIfAbsent(key, k -> new Onem2mLatencyHistogram());
+        }
+        h.recordNanos(nanos);
+    }
+
+    /**
+     * Records the processing time of the request.
+     * @param operation onem2m operation
+     * @param resourceType type of the target (or created) resource, null or -1 if not known
+     * @param protocol protocol the request was received by
+     * @param nanos processing time in nanoseconds
+     */
+    public void recordLatency(Integer operation, Integer resourceType, String protocol, long nanos) {
+        recordLatency(operationLatency, operationToString(operation), nanos);
+        if (resourceType != null && resourceType >= 0) {
+            String rt = Onem2m.resourceTypeToString.get(resourceType);
+            recordLatency(resourceTypeLatency, rt != null ? rt : resourceType.toString(), nanos);
+        }
+        recordLatency(protocolLatency, protocol != null ? protocol : "unknown", nanos);
+    }
+
+    private static JSONObject latencyToJson(Map<String,Onem2mLatencyHistogram> histograms) {
+        JSONObject js = new JSONObject();
+        for (Map.Entry<String,Onem2mLatencyHistogram> entry : histograms.entrySet()) {
+            JsonUtils.put(js, entry.getKey(), entry.getValue().toJson());
+        }
+        return js;
     }
 
     public JSONObject getStats() {
         JSONObject js = new JSONObject();
 
-        JsonUtils.put(js, "http_requests", statsArray[HTTP_REQUESTS]);
-        JsonUtils.put(js, "http_requests_ok", statsArray[HTTP_REQUESTS_OK]);
-        JsonUtils.put(js, "http_requests_error", statsArray[HTTP_REQUESTS_ERROR]);
-        JsonUtils.put(js, "http_requests_create", statsArray[HTTP_REQUESTS_CREATE]);
-        JsonUtils.put(js, "http_requests_retrieve", statsArray[HTTP_REQUESTS_RETRIEVE]);
-        JsonUtils.put(js, "http_requests_update", statsArray[HTTP_REQUESTS_UPDATE]);
-        JsonUtils.put(js, "http_requests_delete", statsArray[HTTP_REQUESTS_DELETE]);
-        JsonUtils.put(js, "http_requests_notify", statsArray[HTTP_REQUESTS_NOTIFY]);
-
-        JsonUtils.put(js, "coap_requests", statsArray[COAP_REQUESTS]);
-        JsonUtils.put(js, "coap_requests_ok", statsArray[COAP_REQUESTS_OK]);
-        JsonUtils.put(js, "coap_requests_error", statsArray[COAP_REQUESTS_ERROR]);
-        JsonUtils.put(js, "coap_requests_create", statsArray[COAP_REQUESTS_CREATE]);
-        JsonUtils.put(js, "coap_requests_retrieve", statsArray[COAP_REQUESTS_RETRIEVE]);
-        JsonUtils.put(js, "coap_requests_update", statsArray[COAP_REQUESTS_UPDATE]);
-        JsonUtils.put(js, "coap_requests_delete", statsArray[COAP_REQUESTS_DELETE]);
-        JsonUtils.put(js, "coap_requests_notify", statsArray[COAP_REQUESTS_NOTIFY]);
-
-        JsonUtils.put(js, "resource_ae_create", statsArray[RESOURCE_AE_CREATE]);
-        JsonUtils.put(js, "resource_ae_retrieve", statsArray[RESOURCE_AE_RETRIEVE]);
-        JsonUtils.put(js, "resource_ae_update", statsArray[RESOURCE_AE_UPDATE]);
-        JsonUtils.put(js, "resource_ae_delete", statsArray[RESOURCE_AE_DELETE]);
-
-        JsonUtils.put(js, "resource_container_create", statsArray[RESOURCE_CONTAINER_CREATE]);
-        JsonUtils.put(js, "resource_container_retrieve", statsArray[RESOURCE_CONTAINER_RETRIEVE]);
-        JsonUtils.put(js, "resource_container_update", statsArray[RESOURCE_CONTAINER_UPDATE]);
-        JsonUtils.put(js, "resource_container_delete", statsArray[RESOURCE_CONTAINER_DELETE]);
-
-        JsonUtils.put(js, "resource_content_instance_create", statsArray[RESOURCE_CONTENT_INSTANCE_CREATE]);
-        JsonUtils.put(js, "resource_content_instance_retrieve", statsArray[RESOURCE_CONTENT_INSTANCE_RETRIEVE]);
-        JsonUtils.put(js, "resource_content_instance_update", statsArray[RESOURCE_CONTENT_INSTANCE_UPDATE]);
-        JsonUtils.put(js, "resource_content_instance_delete", statsArray[RESOURCE_CONTENT_INSTANCE_DELETE]);
-
-        JsonUtils.put(js, "resource_subscription_create", statsArray[RESOURCE_SUBSCRIPTION_CREATE]);
-        JsonUtils.put(js, "resource_subscription_retrieve", statsArray[RESOURCE_SUBSCRIPTION_RETRIEVE]);
-        JsonUtils.put(js, "resource_subscription_update", statsArray[RESOURCE_SUBSCRIPTION_UPDATE]);
-        JsonUtils.put(js, "resource_subscription_delete", statsArray[RESOURCE_SUBSCRIPTION_DELETE]);
-
-        JsonUtils.put(js, "resource_cse_base_create", statsArray[RESOURCE_CSE_BASE_CREATE]);
-        JsonUtils.put(js, "resource_cse_base_retrieve", statsArray[RESOURCE_CSE_BASE_RETRIEVE]);
-        JsonUtils.put(js, "resource_cse_base_update", statsArray[RESOURCE_CSE_BASE_UPDATE]);
-        JsonUtils.put(js, "resource_cse_base_delete", statsArray[RESOURCE_CSE_BASE_DELETE]);
-
-        JsonUtils.put(js, "resource_cse_remote_create", statsArray[RESOURCE_REMOTE_CSE_CREATE]);
-        JsonUtils.put(js, "resource_cse_remote_retrieve", statsArray[RESOURCE_REMOTE_CSE_RETRIEVE]);
-        JsonUtils.put(js, "resource_cse_remote_update", statsArray[RESOURCE_REMOTE_CSE_UPDATE]);
-        JsonUtils.put(js, "resource_cse_remote_delete", statsArray[RESOURCE_REMOTE_CSE_DELETE]);
+        JsonUtils.put(js, "http_requests", statsArray[HTTP_REQUESTS].sum());
+        JsonUtils.put(js, "http_requests_ok", statsArray[HTTP_REQUESTS_OK].sum());
+        JsonUtils.put(js, "http_requests_error", statsArray[HTTP_REQUESTS_ERROR].sum());
+        JsonUtils.put(js, "http_requests_create", statsArray[HTTP_REQUESTS_CREATE].sum());
+        JsonUtils.put(js, "http_requests_retrieve", statsArray[HTTP_REQUESTS_RETRIEVE].sum());
+        JsonUtils.put(js, "http_requests_update", statsArray[HTTP_REQUESTS_UPDATE].sum());
+        JsonUtils.put(js, "http_requests_delete", statsArray[HTTP_REQUESTS_DELETE].sum());
+        JsonUtils.put(js, "http_requests_notify", statsArray[HTTP_REQUESTS_NOTIFY].sum());
+
+        JsonUtils.put(js, "coap_requests", statsArray[COAP_REQUESTS].sum());
+        JsonUtils.put(js, "coap_requests_ok", statsArray[COAP_REQUESTS_OK].sum());
+        JsonUtils.put(js, "coap_requests_error", statsArray[COAP_REQUESTS_ERROR].sum());
+        JsonUtils.put(js, "coap_requests_create", statsArray[COAP_REQUESTS_CREATE].sum());
+        JsonUtils.put(js, "coap_requests_retrieve", statsArray[COAP_REQUESTS_RETRIEVE].sum());
+        JsonUtils.put(js, "coap_requests_update", statsArray[COAP_REQUESTS_UPDATE].sum());
+        JsonUtils.put(js, "coap_requests_delete", statsArray[COAP_REQUESTS_DELETE].sum());
+        JsonUtils.put(js, "coap_requests_notify", statsArray[COAP_REQUESTS_NOTIFY].sum());
+
+        JsonUtils.put(js, "resource_ae_create", statsArray[RESOURCE_AE_CREATE].sum());
+        JsonUtils.put(js, "resource_ae_retrieve", statsArray[RESOURCE_AE_RETRIEVE].sum());
+        JsonUtils.put(js, "resource_ae_update", statsArray[RESOURCE_AE_UPDATE].sum());
+        JsonUtils.put(js, "resource_ae_delete", statsArray[RESOURCE_AE_DELETE].sum());
+
+        JsonUtils.put(js, "resource_container_create", statsArray[RESOURCE_CONTAINER_CREATE].sum());
+        JsonUtils.put(js, "resource_container_retrieve", statsArray[RESOURCE_CONTAINER_RETRIEVE].sum());
+        JsonUtils.put(js, "resource_container_update", statsArray[RESOURCE_CONTAINER_UPDATE].sum());
+        JsonUtils.put(js, "resource_container_delete", statsArray[RESOURCE_CONTAINER_DELETE].sum());
+
+        JsonUtils.put(js, "resource_content_instance_create", statsArray[RESOURCE_CONTENT_INSTANCE_CREATE].sum());
+        JsonUtils.put(js, "resource_content_instance_retrieve", statsArray[RESOURCE_CONTENT_INSTANCE_RETRIEVE].sum());
+        JsonUtils.put(js, "resource_content_instance_update", statsArray[RESOURCE_CONTENT_INSTANCE_UPDATE].sum());
+        JsonUtils.put(js, "resource_content_instance_delete", statsArray[RESOURCE_CONTENT_INSTANCE_DELETE].sum());
+
+        JsonUtils.put(js, "resource_subscription_create", statsArray[RESOURCE_SUBSCRIPTION_CREATE].sum());
+        JsonUtils.put(js, "resource_subscription_retrieve", statsArray[RESOURCE_SUBSCRIPTION_RETRIEVE].sum());
+        JsonUtils.put(js, "resource_subscription_update", statsArray[RESOURCE_SUBSCRIPTION_UPDATE].sum());
+        JsonUtils.put(js, "resource_subscription_delete", statsArray[RESOURCE_SUBSCRIPTION_DELETE].sum());
+
+        JsonUtils.put(js, "resource_cse_base_create", statsArray[RESOURCE_CSE_BASE_CREATE].sum());
+        JsonUtils.put(js, "resource_cse_base_retrieve", statsArray[RESOURCE_CSE_BASE_RETRIEVE].sum());
+        JsonUtils.put(js, "resource_cse_base_update", statsArray[RESOURCE_CSE_BASE_UPDATE].sum());
+        JsonUtils.put(js, "resource_cse_base_delete", statsArray[RESOURCE_CSE_BASE_DELETE].sum());
+
+        JsonUtils.put(js, "resource_cse_remote_create", statsArray[RESOURCE_REMOTE_CSE_CREATE].sum());
+        JsonUtils.put(js, "resource_cse_remote_retrieve", statsArray[RESOURCE_REMOTE_CSE_RETRIEVE].sum());
+        JsonUtils.put(js, "resource_cse_remote_update", statsArray[RESOURCE_REMOTE_CSE_UPDATE].sum());
+        JsonUtils.put(js, "resource_cse_remote_delete", statsArray[RESOURCE_REMOTE_CSE_DELETE].sum());
+
+        JsonUtils.put(js, "resource_polling_channel_create", statsArray[RESOURCE_POLLING_CHANNEL_CREATE].sum());
+        JsonUtils.put(js, "resource_polling_channel_retrieve", statsArray[RESOURCE_POLLING_CHANNEL_RETRIEVE].sum());
+        JsonUtils.put(js, "resource_polling_channel_update", statsArray[RESOURCE_POLLING_CHANNEL_UPDATE].sum());
+        JsonUtils.put(js, "resource_polling_channel_delete", statsArray[RESOURCE_POLLING_CHANNEL_DELETE].sum());
 
         JsonUtils.put(js, "unique_endpoints", endpointMap.size());
+        JsonUtils.put(js, "endpoints_overflow", endpointOverflow.sum());
 
         Histogram h = new Histogram();
-        int max = 0;
+        long max = 0;
         String maxEp = "";
-        for (Map.Entry<String,Integer> entry : endpointMap.entrySet()) {
+        for (Map.Entry<String,LongAdder> entry : endpointMap.entrySet()) {
             String key = entry.getKey();
-            Integer value = entry.getValue();
+            long value = entry.getValue().sum();
             if (value > max) {
                 maxEp = key;
                 max = value;
@@ -204,6 +281,12 @@ public class Onem2mStats {
             JsonUtils.put(js, "talkers_10_exp_" + i, h.get(i));
         }
         JsonUtils.put(js, "talkers_avg", h.avg());
+
+        JSONObject latency = new JSONObject();
+        JsonUtils.put(latency, "operation", latencyToJson(operationLatency));
+        JsonUtils.put(latency, "resource_type", latencyToJson(resourceTypeLatency));
+        JsonUtils.put(latency, "protocol", latencyToJson(protocolLatency));
+        JsonUtils.put(js, "latency", latency);
         return js;
     }
 
@@ -211,14 +294,14 @@ public class Onem2mStats {
         private static final int NUM_BUCKETS = 7;
         public Integer[] bucketArray;
         int n;
-        int sum;
+        long sum;
         private Histogram () {
             bucketArray = new Integer[NUM_BUCKETS];
             for (int i = 0; i < NUM_BUCKETS; i++) {
                 bucketArray[i] = new Integer(0);
             }
         }
-        public void add(int value) {
+        public void add(long value) {
             sum += value;
             n++;
             double d = value;
@@ -230,8 +313,8 @@ public class Onem2mStats {
         public Integer get(int i) {
             return bucketArray[i];
         }
-        public Integer avg() {
-            if (n == 0) return 0;
+        public Long avg() {
+            if (n == 0) return 0L;
             return sum/n;
         }
     }
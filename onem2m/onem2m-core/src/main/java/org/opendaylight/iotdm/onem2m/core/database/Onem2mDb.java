@@ -12,10 +12,14 @@ import static java.util.Objects.isNull;
 import static java.util.Objects.nonNull;
 
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
-import java.util.stream.Collectors;
-import org.json.JSONArray;
+import java.util.NoSuchElementException;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.opendaylight.controller.md.sal.binding.api.DataBroker;
@@ -24,14 +28,21 @@ import org.opendaylight.controller.md.sal.common.api.data.TransactionChain;
 import org.opendaylight.controller.md.sal.common.api.data.TransactionChainListener;
 import org.opendaylight.iotdm.onem2m.core.Onem2m;
 import org.opendaylight.iotdm.onem2m.core.database.transactionCore.BGDeleteProcessor;
+import org.opendaylight.iotdm.onem2m.core.database.transactionCore.ContainerCinIndex;
+import org.opendaylight.iotdm.onem2m.core.database.transactionCore.ResourceAttributeIndex;
+import org.opendaylight.iotdm.onem2m.core.database.transactionCore.ResourceContentView;
 import org.opendaylight.iotdm.onem2m.core.database.transactionCore.ResourceTreeReader;
 import org.opendaylight.iotdm.onem2m.core.database.transactionCore.ResourceTreeWriter;
+import org.opendaylight.iotdm.onem2m.core.database.transactionCore.SubscriptionCriteria;
+import org.opendaylight.iotdm.onem2m.core.database.transactionCore.ResourcePathCache;
+import org.opendaylight.iotdm.onem2m.core.database.transactionCore.SubscriptionIndex;
 import org.opendaylight.iotdm.onem2m.core.resource.*;
 import org.opendaylight.iotdm.onem2m.core.rest.RequestPrimitiveProcessor;
+import org.opendaylight.iotdm.onem2m.core.rest.ResourceExpiryProcessor;
 import org.opendaylight.iotdm.onem2m.core.rest.utils.RequestPrimitive;
 import org.opendaylight.iotdm.onem2m.core.rest.utils.ResponsePrimitive;
+import org.opendaylight.iotdm.onem2m.core.router.Onem2mPollingChannelQueues;
 import org.opendaylight.iotdm.onem2m.core.router.Onem2mRouterService;
-import org.opendaylight.iotdm.onem2m.core.utils.Onem2mDateTime;
 import org.opendaylight.iotdm.onem2m.core.utils.JsonUtils;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.cse.list.Onem2mCse;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree
@@ -71,6 +82,7 @@ public class Onem2mDb implements TransactionChainListener {
     private static Integer iotdmInstanceId = 0;
     public ResourceTreeWriter twc;
     public ResourceTreeReader trc;
+    private SubscriptionIndex subscriptionIndex;
     /**
      * Allows other parts of the system to access the one and only instance of the "data store" object
      * @return the static instance of the db
@@ -96,6 +108,19 @@ public class Onem2mDb implements TransactionChainListener {
     public void registerDbReaderAndWriter(ResourceTreeWriter twc, ResourceTreeReader trc) {
         this.trc = trc;
         this.twc = twc;
+        this.subscriptionIndex = new SubscriptionIndex(trc);
+    }
+
+    public SubscriptionIndex getSubscriptionIndex() {
+        return subscriptionIndex;
+    }
+
+    public ResourcePathCache getResourcePathCache() {
+        return trc.getResourcePathCache();
+    }
+
+    public ResourceAttributeIndex getResourceAttributeIndex() {
+        return trc.getResourceAttributeIndex();
     }
     /**
      * Initialize the transaction chains for the database.
@@ -114,11 +139,24 @@ public class Onem2mDb implements TransactionChainListener {
     public Object startWriteTransaction() {
         return twc.startWriteTransaction();
 
+    }
+    public ListenableFuture<Void> submitWriteTransaction(Object transaction) {
+        return twc.submitWriteTransaction(transaction);
+
     }
     public boolean endWriteTransaction(Object transaction) {
         return twc.endWriteTransaction(transaction);
 
     }
+    /**
+     * Runs the action when the writes of the transaction are committed, right away without transaction.
+     * @param transaction transaction of the writes, can be null
+     * @param action action run after the commit
+     */
+    public void afterCommit(Object transaction, Runnable action) {
+        twc.afterCommit(transaction, action);
+    }
+
     public List<String> getCseList() {
         return trc.getCseList();
     }
@@ -155,8 +193,8 @@ public class Onem2mDb implements TransactionChainListener {
         onem2mRequest.setJsonResourceContentString(jsonPrimitiveContent.toString());
 
         // now create the resource with the attributes stored in the onem2mRequest
-        Onem2mResource onem2mResource = twc.createResource(null, onem2mRequest,
-                NULL_RESOURCE_ID, Onem2m.ResourceType.CSE_BASE);
+        if (!twc.createResource(null, onem2mRequest, NULL_RESOURCE_ID, Onem2m.ResourceType.CSE_BASE)) return false;
+        Onem2mResource onem2mResource = getResource(onem2mRequest.getResourceId());
         if (onem2mResource == null) return false;
 
         onem2mRequest.setOnem2mResource(onem2mResource);
@@ -199,7 +237,7 @@ public class Onem2mDb implements TransactionChainListener {
 
         // update the lmt of the parent to be the creation time of the child being created
         if (!parentId.equals(Onem2mDb.NULL_RESOURCE_ID)) {
-            modifyParentJsonContentForCreate(onem2mRequest, resourceType);
+            if (!modifyParentJsonContentForCreate(onem2mRequest, resourceType)) return false;
         }
 
         if (!parentId.equals(NULL_RESOURCE_ID)) {
@@ -217,16 +255,30 @@ public class Onem2mDb implements TransactionChainListener {
         onem2mRequest.setJsonResourceContentString(jsonPrimitiveContent.toString());
 
         // now create the resource with the attributes stored in the onem2mRequest
-        Onem2mResource onem2mResource = twc.createResource(onem2mRequest.getWriterTransaction(), onem2mRequest, parentId, resourceType);
-        if (onem2mResource == null) return false;
+        Object transaction = onem2mRequest.getWriterTransaction();
+        if (!twc.createResource(transaction, onem2mRequest, parentId, resourceType)) return false;
 
-        onem2mRequest.setOnem2mResource(onem2mResource);
+        // the resource is cached when the transaction is committed
+        twc.afterCommit(transaction, () -> {
+            Onem2mResource onem2mResource = getResource(onem2mRequest.getResourceId());
+            if (onem2mResource == null) return;
+
+            if (resourceType == Onem2m.ResourceType.SUBSCRIPTION) {
+                subscriptionIndex.subscriptionCreatedOrUpdated(onem2mResource);
+            }
+            ResourceExpiryProcessor.getInstance().schedule(onem2mResource);
+
+            onem2mRequest.setOnem2mResource(onem2mResource);
+        });
+        if (resourceType == Onem2m.ResourceType.CONTENT_INSTANCE) {
+            twc.afterCommit(transaction, () -> appendToContainerCinIndex(onem2mRequest));
+        }
         onem2mRequest.setJsonResourceContent(jsonPrimitiveContent);
 
         return true;
     }
 
-    private void modifyParentJsonContentForCreate(RequestPrimitive onem2mRequest, Integer resourceType) {
+    private boolean modifyParentJsonContentForCreate(RequestPrimitive onem2mRequest, Integer resourceType) {
 
         JSONObject jsonPrimitiveResourceContent = onem2mRequest.getBaseResource().getInJsonContent();
         JSONObject parentJsonContent = onem2mRequest.getParentJsonResourceContent();
@@ -234,19 +286,107 @@ public class Onem2mDb implements TransactionChainListener {
         // update the lmt of the parent
         JsonUtils.put(parentJsonContent, BaseResource.LAST_MODIFIED_TIME, jsonPrimitiveResourceContent.optString(BaseResource.CREATION_TIME));
 
+        if (resourceType == Onem2m.ResourceType.CONTENT_INSTANCE) {
+            return modifyContainerForContentInstanceCreate(onem2mRequest);
+        }
+
         //increment state tag if exists in parent resource
         handleStateTagUpdate(onem2mRequest);
 
         //handle resource specific attributes
-        if (resourceType == Onem2m.ResourceType.CONTENT_INSTANCE) {
-            Integer newByteSize = jsonPrimitiveResourceContent.getInt(ResourceContentInstance.CONTENT_SIZE);
-            ResourceContainer.incrementValuesForThisCreatedContentInstance(parentJsonContent, newByteSize, onem2mRequest.getResourceId());
-            ResourceContainer.checkAndFixCurrMaxRules(parentJsonContent);
-        } else if (resourceType == Onem2m.ResourceType.SUBSCRIPTION) {
+        if (resourceType == Onem2m.ResourceType.SUBSCRIPTION) {
             ResourceSubscription.modifyParentForSubscriptionCreation(parentJsonContent, onem2mRequest.getResourceId());
         }
 
         onem2mRequest.setParentContentHasBeenModified(true);
+        return true;
+    }
+
+    /**
+     * The new contentInstance is tracked by the index of the container. The container's JSON content is not
+     * rewritten for each contentInstance, its cni, cbs, lt and st are kept by the index and the content is
+     * written only once per several creates, or by persistContainerCinIndex() when the container is retrieved.
+     * The index is shared by the cache so it's modified only when the create is committed, by
+     * appendToContainerCinIndex(), the content written here carries the values it will have then.
+     */
+    private boolean modifyContainerForContentInstanceCreate(RequestPrimitive onem2mRequest) {
+
+        JSONObject jsonPrimitiveResourceContent = onem2mRequest.getBaseResource().getInJsonContent();
+        JSONObject containerJsonContent = onem2mRequest.getParentJsonResourceContent();
+
+        ContainerCinIndex cinIndex = trc.retrieveContainerCinIndex(onem2mRequest.getParentResourceId());
+        if (null == cinIndex) {
+            LOG.error("No contentInstance index of the container: {}", onem2mRequest.getParentResourceId());
+            return false;
+        }
+
+        BaseResource.incrementParentStateTagIfPresent(containerJsonContent);
+
+        Integer newByteSize = jsonPrimitiveResourceContent.getInt(ResourceContentInstance.CONTENT_SIZE);
+        ResourceContainer.overlayCurrMaxRules(containerJsonContent, cinIndex, newByteSize);
+
+        if (cinIndex.isFlushNeeded()) {
+            onem2mRequest.setParentContentHasBeenModified(true);
+        }
+        return true;
+    }
+
+    /**
+     * Appends the committed contentInstance to the index of its container and evicts the oldest ones beyond
+     * the container's limits. Run after the contentInstance has been cached so the latest one of the index
+     * can always be retrieved.
+     */
+    private void appendToContainerCinIndex(RequestPrimitive onem2mRequest) {
+        ContainerCinIndex cinIndex = trc.retrieveContainerCinIndex(onem2mRequest.getParentResourceId());
+        if (null == cinIndex) {
+            LOG.error("No contentInstance index of the container: {}", onem2mRequest.getParentResourceId());
+            return;
+        }
+
+        JSONObject containerJsonContent = onem2mRequest.getParentJsonResourceContent();
+        cinIndex.trackContainerAttributes(containerJsonContent);
+
+        Integer newByteSize = onem2mRequest.getBaseResource().getInJsonContent()
+                                           .getInt(ResourceContentInstance.CONTENT_SIZE);
+        ResourceContainer.incrementValuesForThisCreatedContentInstance(containerJsonContent, cinIndex, newByteSize,
+                                                                       onem2mRequest.getResourceId());
+        ResourceContainer.checkAndFixCurrMaxRules(containerJsonContent, cinIndex);
+
+        if (onem2mRequest.getParentContentHasBeenModified()) {
+            // the committed content of the container carries the values of the index
+            cinIndex.contentPersisted();
+        }
+        twc.containerCinIndexUpdated(null, onem2mRequest.getParentResourceId());
+    }
+
+    /**
+     * @param containerResourceId the container
+     * @return true if the cni, cbs, lt or st kept by the container's contentInstance index haven't been written
+     * with its content yet
+     */
+    public boolean hasUnpersistedContainerCinIndex(String containerResourceId) {
+        ContainerCinIndex cinIndex = trc.retrieveContainerCinIndex(containerResourceId);
+        return null != cinIndex && cinIndex.hasUnpersistedChanges();
+    }
+
+    /**
+     * Writes the container's content including the cni, cbs, lt and st kept by its contentInstance index if they
+     * have changed since the content was written. The caller holds the lock of the container so no
+     * contentInstance is created meanwhile.
+     *
+     * @param containerResourceId the container
+     * @return false if the content couldn't be written
+     */
+    public boolean persistContainerCinIndex(String containerResourceId) {
+        if (!hasUnpersistedContainerCinIndex(containerResourceId)) {
+            return true;
+        }
+        Onem2mResource container = trc.retrieveResourceById(containerResourceId);
+        if (null == container) {
+            return false;
+        }
+        // the cached content is read overlaid by the index
+        return twc.persistContainerCinIndex(containerResourceId, container.getResourceContentJsonString());
     }
 
     /**
@@ -359,7 +499,15 @@ public class Onem2mDb implements TransactionChainListener {
             if (existingJsonContent.optBoolean(ResourceContainer.DISABLE_RETRIEVAL)) {
                 LOG.error("updateResource: MUST implement disable_retrieval");
             } else {
-                ResourceContainer.checkAndFixCurrMaxRules(existingJsonContent);
+                ContainerCinIndex cinIndex = trc.retrieveContainerCinIndex(onem2mRequest.getResourceId());
+                if (null == cinIndex) {
+                    LOG.error("No contentInstance index of the container: {}", onem2mRequest.getResourceId());
+                    return false;
+                }
+                // the contentInstances beyond the new limits are evicted from the index when committed
+                ResourceContainer.overlayCurrMaxRules(existingJsonContent, cinIndex, -1);
+                twc.afterCommit(onem2mRequest.getWriterTransaction(),
+                                () -> ResourceContainer.checkAndFixCurrMaxRules(existingJsonContent, cinIndex));
             }
         }
 
@@ -380,8 +528,15 @@ public class Onem2mDb implements TransactionChainListener {
             return false;
         }
 
-        Onem2mResource onem2mResource = getResource(onem2mRequest.getResourceId());
-        onem2mRequest.setOnem2mResource(onem2mResource);
+        // the cached content is updated when the transaction is committed
+        twc.afterCommit(onem2mRequest.getWriterTransaction(), () -> {
+            Onem2mResource onem2mResource = getResource(onem2mRequest.getResourceId());
+            if (onem2mRequest.getResourceType() == Onem2m.ResourceType.SUBSCRIPTION) {
+                subscriptionIndex.subscriptionCreatedOrUpdated(onem2mResource);
+            }
+            ResourceExpiryProcessor.getInstance().schedule(onem2mResource);
+            onem2mRequest.setOnem2mResource(onem2mResource);
+        });
         return true;
     }
 
@@ -432,28 +587,22 @@ public class Onem2mDb implements TransactionChainListener {
             String rt = containerResource.getResourceType();
             if (rt != null && rt.contentEquals(Integer.valueOf(Onem2m.ResourceType.CONTAINER).toString())) {
 
-                JSONObject containerResourceContent;
-                try {
-                    containerResourceContent = new JSONObject(containerResource.getResourceContentJsonString());
-                    cinResourceId = ResourceContainer.getLatestCI(containerResourceContent);
-                } catch (JSONException e) {
-                    LOG.error("Invalid JSON {}", containerResource.getResourceContentJsonString(), e);
+                ContainerCinIndex cinIndex = trc.retrieveContainerCinIndex(containerResource.getResourceId());
+                if (null == cinIndex) {
                     return null;
                 }
+                cinResourceId = ResourceContainer.getLatestCI(cinIndex);
                 return cinResourceId != null ? getResource(cinResourceId) : null;
             }
         } else if (resourceName.contentEquals(ResourceContainer.OLDEST) || resourceName.contentEquals("oldest")) {
             String rt = containerResource.getResourceType();
             if (rt != null && rt.contentEquals(Integer.valueOf(Onem2m.ResourceType.CONTAINER).toString())) {
 
-                JSONObject containerResourceContent;
-                try {
-                    containerResourceContent = new JSONObject(containerResource.getResourceContentJsonString());
-                    cinResourceId = ResourceContainer.getOldestCI(containerResourceContent);
-                } catch (JSONException e) {
-                    LOG.error("Invalid JSON {}", containerResource.getResourceContentJsonString(), e);
+                ContainerCinIndex cinIndex = trc.retrieveContainerCinIndex(containerResource.getResourceId());
+                if (null == cinIndex) {
                     return null;
                 }
+                cinResourceId = ResourceContainer.getOldestCI(cinIndex);
                 return cinResourceId != null ? getResource(cinResourceId) : null;
             }
         }
@@ -466,9 +615,20 @@ public class Onem2mDb implements TransactionChainListener {
         if (resourceName.contentEquals(ResourceGroup.FAN_OUT_POINT) || resourceName.equalsIgnoreCase("fanoutpoint")) {
             String rt = groupOnem2mResource.getResourceType();
             if (rt != null && rt.contentEquals(Integer.valueOf(Onem2m.ResourceType.GROUP).toString())) {
-                // if parent's resourceType is group
+                // if parent's resourceType is group, the operation is processed by the GroupFanOutProcessor
                 return groupOnem2mResource;
-                // todo : do the group operaion
+            }
+        }
+        return null;
+    }
+
+    private Onem2mResource checkForPollingChannelUri(Onem2mResource pollingChannelResource, String resourceName) {
+
+        if (resourceName.contentEquals(ResourcePollingChannel.POLLING_CHANNEL_URI)) {
+            String rt = pollingChannelResource.getResourceType();
+            if (rt != null && rt.contentEquals(Integer.valueOf(Onem2m.ResourceType.POLLING_CHANNEL).toString())) {
+                // the pollingChannelURI is processed by the PollingChannelProcessor on behalf of its pollingChannel
+                return pollingChannelResource;
             }
         }
         return null;
@@ -621,6 +781,8 @@ public class Onem2mDb implements TransactionChainListener {
         private String remoteCseCseId = null;
         private String cseBaseName = null;
         private String cseBaseCseId = null;
+        private int fanOutPointIndex = -1;
+        private boolean isPollingChannelUri = false;
 
         /**
          * Processes and validates URI.
@@ -695,6 +857,18 @@ public class Onem2mDb implements TransactionChainListener {
 
             this.hierarchyPathIndex = hierarchyIndex;
             this.hierarchyPath = hierarchy;
+
+            // the fanOutPoint follows at least the group
+            for (hierarchyIndex = this.hierarchyPathIndex + 1; hierarchyIndex < hierarchy.length; hierarchyIndex++) {
+                if (isFanOutPointName(hierarchy[hierarchyIndex])) {
+                    this.fanOutPointIndex = hierarchyIndex;
+                    break;
+                }
+            }
+
+            // the pollingChannelURI is the last element, it follows at least the pollingChannel
+            this.isPollingChannelUri = hierarchy.length > this.hierarchyPathIndex + 1 &&
+                    hierarchy[hierarchy.length - 1].contentEquals(ResourcePollingChannel.POLLING_CHANNEL_URI);
         }
 
         private Onem2mCse retrieveCseBase() {
@@ -726,6 +900,44 @@ public class Onem2mDb implements TransactionChainListener {
 
         public String getRemoteCseCseId() { return this.remoteCseCseId; }
 
+        /**
+         * @return true if the URI addresses the fanOutPoint of a group (group/fopt[/sub-path]), the URI of the
+         * group is not verified to identify a group
+         */
+        public boolean isFanOutPoint() {
+            return this.fanOutPointIndex >= 0;
+        }
+
+        /**
+         * @return true if the URI addresses the pollingChannelURI of a pollingChannel (pch/pcu), the URI of the
+         * pollingChannel is not verified to identify a pollingChannel
+         */
+        public boolean isPollingChannelUri() {
+            return this.isPollingChannelUri;
+        }
+
+        /**
+         * @return URI of the group of the fanOutPoint in the same form as the target URI
+         */
+        public String getFanOutGroupURI() {
+            if (!isFanOutPoint()) {
+                return null;
+            }
+            return String.join("/", Arrays.asList(this.hierarchyPath).subList(0, this.fanOutPointIndex));
+        }
+
+        /**
+         * @return the part of the URI following the fanOutPoint, it's appended to the URIs of the group members,
+         * null if there is none
+         */
+        public String getFanOutSubPath() {
+            if (!isFanOutPoint() || this.fanOutPointIndex + 1 >= this.hierarchyPath.length) {
+                return null;
+            }
+            return String.join("/", Arrays.asList(this.hierarchyPath)
+                                          .subList(this.fanOutPointIndex + 1, this.hierarchyPath.length));
+        }
+
         public String getCseBaseCseId() {
             if (null != this.cseBaseCseId) {
                 return this.cseBaseCseId;
@@ -787,31 +999,85 @@ public class Onem2mDb implements TransactionChainListener {
                     return null;
                 }
 
+                ResourcePathCache pathCache = trc.getResourcePathCache();
+                String path = getNormalizedPath();
+                ResourcePathCache.Entry entry = pathCache.lookup(path);
+                if (null != entry) {
+                    if (entry.isNotFound()) {
+                        return null;
+                    }
+                    resource = trc.retrieveResourceById(entry.getResourceId());
+                    if (null != resource) {
+                        return resource;
+                    }
+                    pathCache.stale(path);
+                }
+                long stamp = pathCache.stamp(path);
+
                 String resourceId = cseBase.getResourceId();
                 Onem2mResource savedResource = null;
+                boolean virtualResource = false;
                 for (int hierarchyIndex = this.hierarchyPathIndex;
                      hierarchyIndex < this.hierarchyPath.length;
                      hierarchyIndex++) {
                     resource = trc.retrieveChildResourceByName(resourceId, this.hierarchyPath[hierarchyIndex]);
                     if (resource == null) {
+                        // latest, oldest and fanOutPoint are not resources of the tree, their resolution is not cached
+                        virtualResource = true;
                         // check "/latest" in the URI
                         resource = checkForLatestOldestContentInstance(savedResource, this.hierarchyPath[hierarchyIndex]);
                         if (resource == null) {
                             resource = checkForFanOutPoint(savedResource, this.hierarchyPath[hierarchyIndex]);
+                            if (resource != null) {
+                                // the sub-path of the fanOutPoint is resolved at the members of the group
+                                break;
+                            }
+                        }
+                        if (resource == null && savedResource != null) {
+                            resource = checkForPollingChannelUri(savedResource, this.hierarchyPath[hierarchyIndex]);
                         }
                         if (resource == null) {
+                            if (!isVirtualResourceName(this.hierarchyPath[hierarchyIndex])) {
+                                pathCache.putNotFound(path, stamp);
+                            }
                             break;
                         }
                     }
                     resourceId = resource.getResourceId();
                     savedResource = resource;
                 }
+                if (null != resource && !virtualResource) {
+                    pathCache.putResolved(path, resource.getResourceId(), stamp);
+                }
                 return resource;
             }
 
            //  return null;
         }
 
+        /*
+         * The structured URI in the form of the stored hierarchical URIs: cseBaseName/name1/.../nameN
+         */
+        private String getNormalizedPath() {
+            StringBuilder path = new StringBuilder(this.cseBaseName);
+            for (int hierarchyIndex = this.hierarchyPathIndex;
+                 hierarchyIndex < this.hierarchyPath.length;
+                 hierarchyIndex++) {
+                path.append('/').append(this.hierarchyPath[hierarchyIndex]);
+            }
+            return path.toString();
+        }
+
+        private boolean isVirtualResourceName(String name) {
+            return name.contentEquals(ResourceContainer.LATEST) || name.contentEquals("latest") ||
+                    name.contentEquals(ResourceContainer.OLDEST) || name.contentEquals("oldest") ||
+                    isFanOutPointName(name) || name.contentEquals(ResourcePollingChannel.POLLING_CHANNEL_URI);
+        }
+
+        private boolean isFanOutPointName(String name) {
+            return name.contentEquals(ResourceGroup.FAN_OUT_POINT) || name.equalsIgnoreCase("fanoutpoint");
+        }
+
         /**
          * Returns cseBase of the resource.
          * (This might be useful because we support more than one cseBase)
@@ -881,7 +1147,7 @@ public class Onem2mDb implements TransactionChainListener {
         // get the content as JSON string and create a JSON object
         JSONObject resourceContentJson;
         try {
-            resourceContentJson = jsonObjectFromResourceContent(cseResource);
+            resourceContentJson = ResourceContentView.of(cseResource).getJsonObject();
         } catch (IllegalArgumentException e) {
             LOG.error("Failed to create Json object from CSE resource content");
             return null;
@@ -899,7 +1165,7 @@ public class Onem2mDb implements TransactionChainListener {
         // get the content as JSON string and create a JSON object
         JSONObject resourceContentJson;
         try {
-            resourceContentJson = jsonObjectFromResourceContent(aeResource);
+            resourceContentJson = ResourceContentView.of(aeResource).getJsonObject();
         } catch (IllegalArgumentException e) {
             LOG.error("Failed to create Json object from AE resource content");
             return null;
@@ -935,17 +1201,16 @@ public class Onem2mDb implements TransactionChainListener {
 
 
     /**
-     * Checks if onem2mResource is expired. Also adds expired elements in TTLGarbageCollector.
+     * Checks if onem2mResource is expired by comparing the cached expiration time with the current time.
+     * The expired resources are deleted by the ResourceExpiryProcessor.
      *
      * @param onem2mResource resource to be checked
      * @return true if is not expired
      */
     public Boolean isAlive(Onem2mResource onem2mResource) {
-        JSONObject jsonObject = jsonObjectFromResourceContent(onem2mResource);
-        String expTime = jsonObject.optString(BaseResource.EXPIRATION_TIME);
-        boolean aliveFlag = "".equals(expTime) || Onem2mDateTime.isAlive(expTime);
+        boolean aliveFlag = ResourceContentView.of(onem2mResource).isAlive(System.currentTimeMillis());
         if (!aliveFlag) {
-            Onem2mDb.getInstance().pseudoDeleteOnem2mResource(onem2mResource);
+            ResourceExpiryProcessor.getInstance().expired(onem2mResource);
         }
         return (aliveFlag);
     }
@@ -974,15 +1239,11 @@ public class Onem2mDb implements TransactionChainListener {
             return false;
         }
 
-        Onem2mResource containerResource = getResource(onem2mResource.getParentId());
-        JSONObject containerResourceContent;
-        String cinLatestResourceId;
-        try {
-            containerResourceContent = jsonObjectFromResourceContent(containerResource);
-            cinLatestResourceId = ResourceContainer.getLatestCI(containerResourceContent);
-        } catch (IllegalArgumentException e) {
+        ContainerCinIndex cinIndex = trc.retrieveContainerCinIndex(onem2mResource.getParentId());
+        if (null == cinIndex) {
             return false;
         }
+        String cinLatestResourceId = ResourceContainer.getLatestCI(cinIndex);
         return nonNull(cinLatestResourceId) && onem2mResource.getResourceId().equals(cinLatestResourceId);
     }
 
@@ -1118,6 +1379,239 @@ public class Onem2mDb implements TransactionChainListener {
         return resourceList;
     }
 
+    /**
+     * Opens the discovery of the resources in the subtree of the root resource.  The candidates are taken from
+     * the ResourceAttributeIndex if the query has indexed conditions and the index is ready, otherwise the
+     * subtree is walked depth first from the root.  The candidates match the indexed conditions only, the
+     * caller applies the filter criteria.
+     * @param rootResource root of the subtree
+     * @param query indexed conditions of the filter criteria
+     * @param cursor continuation cursor of the previous page or null
+     * @return the stream of the candidate resources
+     * @throws IllegalArgumentException if the cursor is not valid
+     */
+    public DiscoveryStream openDiscovery(Onem2mResource rootResource, ResourceAttributeIndex.Query query,
+                                         String cursor) throws IllegalArgumentException {
+        ResourceAttributeIndex index = trc.getResourceAttributeIndex();
+        if (null != cursor) {
+            String decoded = ResourceAttributeIndex.decodeCursor(cursor);
+            if (decoded.startsWith(DiscoveryStream.WALK_CURSOR_PREFIX)) {
+                return new DiscoveryStream(rootResource, null,
+                                           decoded.substring(DiscoveryStream.WALK_CURSOR_PREFIX.length()));
+            }
+            if (!index.isReady()) {
+                // the index has been rebuilt since the previous page
+                throw new IllegalArgumentException("Expired cursor: " + cursor);
+            }
+            return new DiscoveryStream(rootResource, index.open(query, cursor), null);
+        }
+
+        if (index.isReady() && !query.isEmpty()) {
+            return new DiscoveryStream(rootResource, index.open(query, null), null);
+        }
+        return new DiscoveryStream(rootResource, null, null);
+    }
+
+    /**
+     * Stream of the discovered resources with the continuation cursor of the position after the last returned
+     * resource.  A page takes at most MAX_DISCOVERY_LIMIT resources from the walk of the subtree or candidates
+     * from the index.  The walk visits the children ordered by name, its cursor is the path of the last visited
+     * resource relative to the root, so the next page resumes there without walking the previous pages again
+     * and the resources created or deleted meanwhile don't shift the position.
+     */
+    public final class DiscoveryStream implements Iterator<Onem2mResource> {
+        private static final String WALK_CURSOR_PREFIX = "W:";
+
+        private final Onem2mResource rootResource;
+        private final String rootPath;
+        private final ResourceAttributeIndex.CandidateStream candidates;
+        private final ArrayDeque<WalkFrame> walkStack;
+        private String walkRootId;
+        private int numWalked = 0;
+        private String walkPath = null;
+        private Onem2mResource next = null;
+        private String nextCursor = null;
+        private String cursor = null;
+
+        private DiscoveryStream(Onem2mResource rootResource, ResourceAttributeIndex.CandidateStream candidates,
+                                String resumePath) {
+            this.rootResource = rootResource;
+            this.rootPath = ResourcePathCache.pathOf(rootResource.getParentTargetUri(), rootResource.getName());
+            this.candidates = candidates;
+            if (null == candidates) {
+                walkStack = new ArrayDeque<>();
+                if (null == resumePath) {
+                    walkRootId = rootResource.getResourceId();
+                } else {
+                    resumeWalk(resumePath);
+                }
+            } else {
+                candidates.setScanLimit(Onem2m.MAX_DISCOVERY_LIMIT);
+                walkStack = null;
+            }
+        }
+
+        /**
+         * @return true if the resources are taken from the attribute indexes
+         */
+        public boolean isIndexed() {
+            return null != candidates;
+        }
+
+        /*
+         * Rebuilds the stack of the walk positioned after the resource of the path: the siblings following each
+         * ancestor of the resource are still to be walked and so are the children of the resource. If a resource
+         * of the path has been deleted the walk continues with its following siblings.
+         */
+        private void resumeWalk(String resumePath) {
+            String resourceId = rootResource.getResourceId();
+            String path = "";
+            if (!resumePath.isEmpty()) {
+                for (String name : resumePath.split("/")) {
+                    walkStack.push(new WalkFrame(path, childrenOf(resourceId, name)));
+                    String childId = trc.retrieveChildResourceIDByName(resourceId, name);
+                    if (null == childId) {
+                        return;
+                    }
+                    resourceId = childId;
+                    path = childPath(path, name);
+                }
+            }
+            walkStack.push(new WalkFrame(path, childrenOf(resourceId, null)));
+        }
+
+        private List<Onem2mParentChild> childrenOf(String resourceId, String afterName) {
+            List<Onem2mParentChild> children = new ArrayList<>();
+            for (Onem2mParentChild child : trc.retrieveParentChildList(resourceId)) {
+                if (null == afterName || child.getName().compareTo(afterName) > 0) {
+                    children.add(child);
+                }
+            }
+            children.sort(Comparator.comparing(Onem2mParentChild::getName));
+            return children;
+        }
+
+        private String childPath(String path, String name) {
+            return path.isEmpty() ? name : path + "/" + name;
+        }
+
+        private String nextWalked() {
+            if (null != walkRootId) {
+                String resourceId = walkRootId;
+                walkRootId = null;
+                walkPath = "";
+                walkStack.push(new WalkFrame(walkPath, childrenOf(resourceId, null)));
+                return resourceId;
+            }
+            while (!walkStack.isEmpty()) {
+                WalkFrame frame = walkStack.peek();
+                if (!frame.children.hasNext()) {
+                    walkStack.pop();
+                    continue;
+                }
+                Onem2mParentChild child = frame.children.next();
+                walkPath = childPath(frame.path, child.getName());
+                walkStack.push(new WalkFrame(walkPath, childrenOf(child.getResourceId(), null)));
+                return child.getResourceId();
+            }
+            return null;
+        }
+
+        private boolean isWalkFinished() {
+            while (!walkStack.isEmpty() && !walkStack.peek().children.hasNext()) {
+                walkStack.pop();
+            }
+            return null == walkRootId && walkStack.isEmpty();
+        }
+
+        private boolean isInSubtree(Onem2mResource onem2mResource) {
+            if (onem2mResource.getResourceId().equals(rootResource.getResourceId())) {
+                return true;
+            }
+            String path = ResourcePathCache.pathOf(onem2mResource.getParentTargetUri(), onem2mResource.getName());
+            return path.length() > rootPath.length() && path.startsWith(rootPath) &&
+                    path.charAt(rootPath.length()) == '/';
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (null == next) {
+                if (null != candidates) {
+                    if (!candidates.hasNext()) {
+                        return false;
+                    }
+                    Onem2mResource onem2mResource = trc.retrieveResourceById(candidates.next());
+                    if (null != onem2mResource && isInSubtree(onem2mResource)) {
+                        next = onem2mResource;
+                        nextCursor = candidates.getCursor();
+                    }
+                } else {
+                    if (numWalked >= Onem2m.MAX_DISCOVERY_LIMIT) {
+                        return false;
+                    }
+                    String resourceId = nextWalked();
+                    if (null == resourceId) {
+                        return false;
+                    }
+                    numWalked++;
+                    Onem2mResource onem2mResource = trc.retrieveResourceById(resourceId);
+                    if (null != onem2mResource) {
+                        next = onem2mResource;
+                        nextCursor = ResourceAttributeIndex.encodeCursor(WALK_CURSOR_PREFIX + walkPath);
+                    }
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Onem2mResource next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Onem2mResource onem2mResource = next;
+            cursor = nextCursor;
+            next = null;
+            return onem2mResource;
+        }
+
+        /**
+         * @return true if there are more resources, also if the page stopped at the limit of the walk or scan
+         */
+        public boolean hasMore() {
+            if (hasNext()) {
+                return true;
+            }
+            return (null != candidates) ? candidates.isScanLimitReached() : !isWalkFinished();
+        }
+
+        /**
+         * @return cursor continuing after the last returned resource, or after the last scanned one if the page
+         * stopped at the limit of the walk or scan, null if there is none
+         */
+        public String getCursor() {
+            if (null == next) {
+                if (null != candidates && candidates.isScanLimitReached()) {
+                    return candidates.getScanCursor();
+                }
+                if (null == candidates && numWalked >= Onem2m.MAX_DISCOVERY_LIMIT) {
+                    return ResourceAttributeIndex.encodeCursor(WALK_CURSOR_PREFIX + walkPath);
+                }
+            }
+            return cursor;
+        }
+    }
+
+    private static final class WalkFrame {
+        private final String path;
+        private final Iterator<Onem2mParentChild> children;
+
+        private WalkFrame(String path, List<Onem2mParentChild> children) {
+            this.path = path;
+            this.children = children.iterator();
+        }
+    }
+
     public List<Onem2mParentChild> getChildrenForResource(String resourceId, int limit, int offset) {
         return trc.retrieveParentChildList(resourceId, limit, offset);
     }
@@ -1166,24 +1660,27 @@ public class Onem2mDb implements TransactionChainListener {
 
     private boolean handleModifyingParentForDeleteContentInstance(String cinResourceId, Onem2mResource containerResource) {
 
-        JSONObject containerResourceContent;
-        try {
-            containerResourceContent = new JSONObject(containerResource.getResourceContentJsonString());
-            ResourceContainer.decrementValuesForThisDeletedContentInstance(containerResourceContent, cinResourceId);
-
-        } catch (JSONException e) {
-            LOG.error("Invalid JSON {}", containerResource.getResourceContentJsonString(), e);
-            throw new IllegalArgumentException("Invalid JSON", e);
+        ContainerCinIndex cinIndex = trc.retrieveContainerCinIndex(containerResource.getResourceId());
+        if (null == cinIndex) {
+            LOG.error("No contentInstance index of the container: {}", containerResource.getResourceId());
+            return false;
         }
 
-        return twc.updateJsonResourceContentString(null, containerResource.getResourceId(), containerResourceContent.toString());
+        // the container content is not rewritten, the index keeps its cni, cbs and st
+        JSONObject containerResourceContent = jsonObjectFromResourceContent(containerResource);
+        ResourceContainer.decrementValuesForThisDeletedContentInstance(containerResourceContent, cinIndex, cinResourceId);
+        twc.containerCinIndexUpdated(null, containerResource.getResourceId());
+        return true;
     }
 
     private boolean handleModifyingParentForDeleteSubscription(String subResourceId, Onem2mResource parentResource) {
         JSONObject parentResourceContent = jsonObjectFromResourceContent(parentResource);
         ResourceSubscription.modifyParentForSubscriptionDeletion(parentResourceContent, subResourceId);
 
-        return twc.updateJsonResourceContentString(null, parentResource.getResourceId(), parentResourceContent.toString());
+        boolean updated = twc.updateJsonResourceContentString(null, parentResource.getResourceId(),
+                                                              parentResourceContent.toString());
+        subscriptionIndex.subscriptionDeleted(parentResource.getResourceId(), subResourceId);
+        return updated;
     }
 
     private boolean handleModifyingParentForDeleteContainer(Onem2mResource parentResource) {
@@ -1209,8 +1706,9 @@ public class Onem2mDb implements TransactionChainListener {
      *  by traversing the tree and deleting the children onem2m resources and parent-child links from the db
      *  1b) for the current resource, run direct side effect of this resource being deleted
      *      example: if it is a contentInstance, update parent container cni, and cbs fields, and child list
-     * 2) A resource expires, when isAlive is checked, if the resource is "expired", it is queued to the garbage
-     *  list.  This routine should handle the delete op as it might have to run the direct resource side effects
+     * 2) A resource expires, the ResourceExpiryProcessor deletes it at its expiration time the same way as the
+     *  DELETE operation.  This routine should handle the delete op as it might have to run the direct resource
+     *  side effects
      *
      * @param onem2mResource element
      * @return true if successfully removed
@@ -1255,6 +1753,8 @@ public class Onem2mDb implements TransactionChainListener {
                     LOG.error("Failed to delete AE-ID to resourceID mapping for: cseBaseCseId: {}, aeId: {}",
                             cseBaseCseId, aeId);
                 }
+                // the children are deleted in the background, the pollingChannel of the AE is removed now
+                Onem2mPollingChannelQueues.getInstance().removeChannel(aeId);
                 break;
 
             case Onem2m.ResourceType.REMOTE_CSE:
@@ -1277,6 +1777,7 @@ public class Onem2mDb implements TransactionChainListener {
                     LOG.error("Failed to delete CSE-ID to resourceID mapping for: cseBaseCseId: {}, remoteCseCseId: {}",
                               cseBaseCseId, remoteCseCseId);
                 }
+                Onem2mPollingChannelQueues.getInstance().removeChannel(remoteCseCseId);
                 break;
 
             case Onem2m.ResourceType.SUBSCRIPTION:
@@ -1286,8 +1787,14 @@ public class Onem2mDb implements TransactionChainListener {
             case Onem2m.ResourceType.CONTAINER:
                 handleModifyingParentForDeleteContainer(parentOnem2mResource);
                 break;
+
+            case Onem2m.ResourceType.POLLING_CHANNEL:
+                // the requests queued for the parent AE or remoteCSE fail, it's not reachable anymore
+                ResourcePollingChannel.handleDelete(parentOnem2mResource);
+                break;
         }
 
+        ResourceExpiryProcessor.getInstance().cancel(thisResourceId);
         if (!parentResourceId.contentEquals(NULL_RESOURCE_ID)) {
             trc.getBgDp().moveResourceToDeleteParent(thisResourceId);
         }
@@ -1315,63 +1822,15 @@ public class Onem2mDb implements TransactionChainListener {
      * underneath it will be candidates for notifications
      *
      * @param requestPrimitive contains the resId
-     * @return list of ancestors
+     * @return type F subscriptions of the resource and its ancestors
      */
-    public List<String> findAllAncestorsSubscriptionID(RequestPrimitive requestPrimitive) {
-
-        List<String> subscriptionResourceList = new ArrayList<>();
-
-        Onem2mResource onem2mResource = requestPrimitive.getOnem2mResource();
-
-        while (onem2mResource != null) {
-
-            try {
-                JSONObject jsonResourceContent = new JSONObject(onem2mResource.getResourceContentJsonString());
-
-                String arrayJsonKey = "c:" + Onem2m.ResourceType.SUBSCRIPTION;
-                JSONArray jArray = jsonResourceContent.optJSONArray(arrayJsonKey);
-                if (jArray != null) {
-                    for (int i = 0; i < jArray.length(); i++) {
-                        String subscriptionResourceId = jArray.getString(i);
-                        addSubscriptionTypeFToList(subscriptionResourceId, subscriptionResourceList);
-                    }
-                }
-            } catch (JSONException e) {
-                LOG.error("Invalid JSON {}", onem2mResource.getResourceContentJsonString(), e);
-                throw new IllegalArgumentException("Invalid JSON", e);
-            }
-
-            String parentResourceid = onem2mResource.getParentId();
-            if (parentResourceid.equals(Onem2mDb.NULL_RESOURCE_ID)) {
-                onem2mResource = null;
-            } else {
-                onem2mResource = getResource(parentResourceid);
-            }
-        }
-
-        return subscriptionResourceList;
-    }
-
-    private void addSubscriptionTypeFToList(String subscriptionResourceId, List<String> subscriptionResourceList) {
-
-        Onem2mResource onem2mSubResource = getResource(subscriptionResourceId);
-        if (onem2mSubResource == null) return;
-
-        try {
-            JSONObject subscriptionJsonObject = new JSONObject(onem2mSubResource.getResourceContentJsonString());
-            JSONObject enc = subscriptionJsonObject.optJSONObject(ResourceSubscription.EVENT_NOTIFICATION_CRITERIA);
-            if (enc != null && enc.getJSONArray(ResourceSubscription.NOTIFICATION_EVENT_TYPE).toString().contains(Onem2m.EventType.ANY_DESCENDANT_CHANGE)) {
-                subscriptionResourceList.add(subscriptionResourceId);
-            }
-        } catch (JSONException e) {
-            LOG.error("Invalid JSON {}", onem2mSubResource.getResourceContentJsonString(), e);
-            throw new IllegalArgumentException("Invalid JSON", e);
-        }
+    public List<SubscriptionCriteria> findAllAncestorsSubscriptions(RequestPrimitive requestPrimitive) {
+        return subscriptionIndex.getTypeFSubscriptions(requestPrimitive.getOnem2mResource());
     }
 
     /**
-     * find the direct parents' subscriptions IDs, if not found, return empty list.
-     * according to the eventType, find the subscriptionID
+     * find the direct parents' subscriptions, if not found, return empty list.
+     * according to the eventType, find the subscriptions
      * eventType could be A,B,C,D,E
      *
      * @param requestPrimitive resourceID
@@ -1379,92 +1838,66 @@ public class Onem2mDb implements TransactionChainListener {
      * @param skipSelfNotify skip subscription same as given requestPrimitive
      * @return list of direct parent subscriptions
      */
-    public List<String> parentSubscriptionsResourceIds(RequestPrimitive requestPrimitive, String eventType, boolean skipSelfNotify) {
+    public List<SubscriptionCriteria> parentSubscriptions(RequestPrimitive requestPrimitive, String eventType,
+                                                          boolean skipSelfNotify) {
 
-        List<String> subscriptionsResourceIds = Lists.newArrayList();
-
-        JSONObject parentJsonResourceContent;
+        List<SubscriptionCriteria> subscriptions = Lists.newArrayList();
 
         String parentResourceid = requestPrimitive.getOnem2mResource().getParentId();
         if (parentResourceid.equals(Onem2mDb.NULL_RESOURCE_ID)) {
-            return subscriptionsResourceIds;
-        } else {
-            Onem2mResource parentOnem2mResource = getResource(parentResourceid);
-            try {
-                parentJsonResourceContent = new JSONObject(parentOnem2mResource.getResourceContentJsonString());
-            } catch (JSONException e) {
-                LOG.warn("parentSubscriptionsResourceIds: {}", e);
-                return subscriptionsResourceIds;
-            }
+            return subscriptions;
         }
 
-        String arrayJsonKey = "c:" + Onem2m.ResourceType.SUBSCRIPTION;
-        JSONArray jArray = parentJsonResourceContent.optJSONArray(arrayJsonKey);
-        if (jArray != null) {
-            for (int i = 0; i < jArray.length(); i++) {
-                String subscriptionResourceId = jArray.getString(i);
-                addSubscriptionsToListForResource(subscriptionResourceId, subscriptionsResourceIds, eventType);
+        for (SubscriptionCriteria criteria : subscriptionIndex.getSubscriptions(parentResourceid)) {
+            if (skipSelfNotify && criteria.getSubscriptionResourceId().equals(requestPrimitive.getResourceId())) {
+                continue;
+            }
+            if (criteria.isInterestedIn(eventType)) {
+                subscriptions.add(criteria);
             }
         }
 
-        if (skipSelfNotify) {
-            subscriptionsResourceIds = subscriptionsResourceIds.stream()
-                                         .filter(subscriptionId -> !subscriptionId.equals(requestPrimitive.getResourceId()))
-                                         .collect(Collectors.toList());
-        }
-
-        return subscriptionsResourceIds;
+        return subscriptions;
     }
 
-    private void addSubscriptionsToListForResource(String subscriptionResourceId,
-                                                   List<String> subscriptionIds,
-                                                   String eventType) {
-
-        Onem2mResource onem2mSubResource = getResource(subscriptionResourceId);
-        if (onem2mSubResource == null) {
-            return;
-        }
-        try {
-            JSONObject subscriptionJsonObject = new JSONObject(onem2mSubResource.getResourceContentJsonString());
-            // todo: if TS 0001 is right
-            JSONObject enc = subscriptionJsonObject.optJSONObject(ResourceSubscription.EVENT_NOTIFICATION_CRITERIA);
-            if (enc != null) {
-                JSONArray net = enc.optJSONArray(ResourceSubscription.NOTIFICATION_EVENT_TYPE);
-                if (net != null && net.toString().contains(eventType)) {
-                    subscriptionIds.add(subscriptionResourceId);
-                }
-            } else if (eventType.contentEquals(Onem2m.EventType.UPDATE_RESOURCE)) {
-                //default is update.
-                subscriptionIds.add(subscriptionResourceId);
-            }
-        } catch (JSONException e) {
-            LOG.error("Invalid JSON {}", onem2mSubResource.getResourceContentJsonString(), e);
-            throw new IllegalArgumentException("Invalid JSON", e);
-        }
-    }
     /**
      *
      * @param onem2mRequest request
      * @param eventType event type
-     * @return list of resourceId subscriptions
+     * @return list of the subscriptions of the resource
      */
-    public List<String> selfSubscriptionsResourceIds(RequestPrimitive onem2mRequest, String eventType) {
+    public List<SubscriptionCriteria> selfSubscriptions(RequestPrimitive onem2mRequest, String eventType) {
 
-        List<String> subscriptionResourceList = new ArrayList<>();
+        List<SubscriptionCriteria> subscriptions = new ArrayList<>();
 
-        JSONObject jsonResourceContent = onem2mRequest.getJsonResourceContent();
-
-        // maintain a child list of resources for these resourceType as need fast access to them later
-        String arrayJsonKey = "c:" + Onem2m.ResourceType.SUBSCRIPTION;
-        JSONArray jArray = jsonResourceContent.optJSONArray(arrayJsonKey);
-        if (jArray != null) {
-            for (int i = 0; i < jArray.length(); i++) {
-                String subscriptionResourceId = jArray.getString(i);
-                addSubscriptionsToListForResource(subscriptionResourceId, subscriptionResourceList, eventType);
+        for (SubscriptionCriteria criteria : subscriptionIndex.getSubscriptions(onem2mRequest.getOnem2mResource())) {
+            if (criteria.isInterestedIn(eventType)) {
+                subscriptions.add(criteria);
             }
         }
 
-        return subscriptionResourceList;
+        return subscriptions;
+    }
+
+    /**
+     * Checks whether any subscription can be notified about the change of the resource, the resources without
+     * interested subscriptions skip the notification processing.
+     *
+     * @param onem2mResource the created, updated or deleted resource
+     * @return true if the resource, its parent or its ancestors have subscriptions
+     */
+    public boolean hasInterestedSubscriptions(Onem2mResource onem2mResource) {
+        if (Integer.valueOf(onem2mResource.getResourceType()) == Onem2m.ResourceType.SUBSCRIPTION) {
+            // the subscriber is notified about the deletion
+            return true;
+        }
+        if (!subscriptionIndex.getSubscriptions(onem2mResource).isEmpty() ||
+                subscriptionIndex.hasTypeFSubscription(onem2mResource)) {
+            return true;
+        }
+        String parentResourceId = onem2mResource.getParentId();
+        return !parentResourceId.equals(NULL_RESOURCE_ID) &&
+                !subscriptionIndex.getSubscriptions(parentResourceId).isEmpty();
     }
 
     /**
@@ -1489,6 +1922,8 @@ public class Onem2mDb implements TransactionChainListener {
      */
     public void cleanupDataStore() {
         twc.reInitializeDatastore(); // reinitialize the data store.
+        subscriptionIndex.clear();
+        ResourceExpiryProcessor.getInstance().clear();
     }
 
     /**
@@ -7,6 +7,7 @@
  */
 package org.opendaylight.iotdm.onem2m.core.database.dao;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import org.opendaylight.iotdm.onem2m.core.rest.utils.RequestPrimitive;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree
         .onem2m.parent.child.list.Onem2mParentChild;
@@ -120,7 +121,25 @@ public interface DaoResourceTreeWriter extends Closeable {
      */
     boolean writeSystemStartId(int resourceId);
 
+    /**
+     * Starts new transaction. Write operations called with the transaction are committed
+     * together when the transaction is submitted or ended.
+     * @return transaction, null if transactions are not supported
+     */
     Object startTransaction();
 
+    /**
+     * Hands the operations of the transaction over to the datastore, doesn't wait for the commit.
+     * Operations of the transaction submitted before are committed before operations of this transaction.
+     * @param transaction The transaction returned by startTransaction()
+     * @return future completed when the transaction is committed
+     */
+    ListenableFuture<Void> submitTransaction(Object transaction);
+
+    /**
+     * Submits the transaction if it hasn't been submitted yet and waits for the commit.
+     * @param transaction The transaction returned by startTransaction()
+     * @return True in case of success, False otherwise
+     */
     boolean endTransaction(Object transaction);
 }
@@ -10,9 +10,9 @@ package org.opendaylight.iotdm.onem2m.core.database.transactionCore;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
 import org.opendaylight.iotdm.onem2m.core.Onem2m;
 import org.opendaylight.iotdm.onem2m.core.database.Onem2mDb;
+import org.opendaylight.iotdm.onem2m.core.rest.ResourceExpiryProcessor;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResource;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.onem2m.parent.child.list.Onem2mParentChild;
 import org.slf4j.Logger;
@@ -26,12 +26,16 @@ public class BGDeleteProcessor {
 
     private static final Logger LOG = LoggerFactory.getLogger(BGDeleteProcessor.class);
 
-    //private final static int SLEEP_TIME_MILLISECOND = 1000000;
-    private final static int SLEEP_TIME_MILLISECOND = 10000;
+    // max number of resources removed in one write transaction
     private final static int MAX_TO_DELETE_PER_CLEANUP = 50;
     private final Thread t;
     private LinkedBlockingQueue<String> q = new LinkedBlockingQueue<>();
 
+    /**
+     * The thread waits for the resources queued by the deletes and expirations, it moves them to the delete
+     * parent and removes them from the database right away instead of polling on a timer.  The removal runs
+     * in batches of MAX_TO_DELETE_PER_CLEANUP resources until the delete parent is empty.
+     */
     public BGDeleteProcessor() {
         t = new Thread(new Runnable() {
             @Override
@@ -40,39 +44,22 @@ public class BGDeleteProcessor {
                 Thread.currentThread().setName("db-grbg-cltr");
 
                 String resourceId;
-                Onem2mDb db = Onem2mDb.getInstance();
-                boolean useSleepTimer = true;
-                long then = System.currentTimeMillis();
 
                 while (true) {
                     try {
+                        resourceId = q.take();
 
-                        // process any q'ed resources to be moved to the delete parent in the database
-                        if (q.size() != 0 || useSleepTimer) {
-                            resourceId = q.poll(30, TimeUnit.SECONDS);
-                            if (resourceId != null) {
-                                Onem2mResource onem2mResource = db.getResource(resourceId);
-                                if (onem2mResource != null) {
-                                    if (!db.moveParentChildLinkToDeleteParent(
-                                            onem2mResource.getParentId(),
-                                            onem2mResource.getName(),
-                                            onem2mResource.getResourceId())) {
-                                        LOG.error("TTLGarbageCollector: cannot move child: res{}, name {} from oldparent: {} to delete parent",
-                                                onem2mResource.getResourceId(), onem2mResource.getName(), onem2mResource.getParentId());
-                                    }
-                                }
-                            }
+                        // process all q'ed resources to be moved to the delete parent in the database
+                        while (resourceId != null) {
+                            moveToDeleteParent(resourceId);
+                            resourceId = q.poll();
                         }
 
-                        long now = System.currentTimeMillis();
-                        if (!useSleepTimer || ((now - then) >= SLEEP_TIME_MILLISECOND)) {
-                            LOG.trace("GC epoch starting.");
-                            int numDeleted = cleanupResourcesFromDeleteParent();
-                            useSleepTimer = numDeleted != MAX_TO_DELETE_PER_CLEANUP;
-                            LOG.trace("GC epoch finished. Number of elements(approx) = {}", numDeleted);
-                            then = now;
-                        }
+                        cleanupAll();
 
+                    } catch (InterruptedException e) {
+                        LOG.info("TTLGarbageCollector: interrupted");
+                        return;
                     } catch (Exception e) {
                         StackTraceElement[] st = e.getStackTrace();
                         for (int i = 0; i < 4 && i < st.length; i++) {
@@ -86,6 +73,31 @@ public class BGDeleteProcessor {
         t.start();
     }
 
+    private void moveToDeleteParent(String resourceId) {
+        Onem2mDb db = Onem2mDb.getInstance();
+        Onem2mResource onem2mResource = db.getResource(resourceId);
+        if (onem2mResource != null) {
+            if (!db.moveParentChildLinkToDeleteParent(
+                    onem2mResource.getParentId(),
+                    onem2mResource.getName(),
+                    onem2mResource.getResourceId())) {
+                LOG.error("TTLGarbageCollector: cannot move child: res{}, name {} from oldparent: {} to delete parent",
+                        onem2mResource.getResourceId(), onem2mResource.getName(), onem2mResource.getParentId());
+            }
+        }
+    }
+
+    private void cleanupAll() {
+        LOG.trace("GC epoch starting.");
+        int numDeleted = 0;
+        int n;
+        do {
+            n = cleanupResourcesFromDeleteParent();
+            numDeleted += n;
+        } while (n == MAX_TO_DELETE_PER_CLEANUP);
+        LOG.trace("GC epoch finished. Number of elements(approx) = {}", numDeleted);
+    }
+
     /*
      * Read from the parent-child database where the parentId == the-delete-resource-id ... each of these
      * resources is potentially the root of a hierarchy of resources ... need to remove from the bottom of the
@@ -124,6 +136,8 @@ public class BGDeleteProcessor {
                     } else {
                         db.twc.deleteResource(t, resToDeleteId, onem2mResource.getParentId(), onem2mResource.getName());
                     }
+                    db.getSubscriptionIndex().resourceRemoved(resToDeleteId);
+                    ResourceExpiryProcessor.getInstance().cancel(resToDeleteId);
                 } else {
                     LOG.error("cleanupResourcesFromDeleteParent: onem2mresource is null: {}", resToDeleteId);
                 }
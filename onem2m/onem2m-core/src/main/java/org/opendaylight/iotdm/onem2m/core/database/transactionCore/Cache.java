@@ -11,11 +11,16 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.cache.Weigher;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -24,6 +29,7 @@ import org.opendaylight.iotdm.onem2m.core.database.dao.DaoResourceTreeReader;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.cse.list.Onem2mCse;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.cse.list.Onem2mCseBuilder;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.cse.list.Onem2mCseKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.cse.list.onem2m.cse.Onem2mRegisteredAeIds;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mParentChildListKey;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResource;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResourceKey;
@@ -45,9 +51,15 @@ public class Cache implements WriteOnlyCache, ReadOnlyCache {
     private static final int RESOURCE_MAP_SIZE_LIMIT = 400000;
     private static final int RESOURCE_CHILDREN_MAP_SIZE_LIMIT = RESOURCE_MAP_SIZE_LIMIT;
     private static final int AE_MAP_BYTE_LIMIT = 10000;
+    private static final String CONTAINER_RESOURCE_TYPE = Integer.toString(Onem2m.ResourceType.CONTAINER);
+    private static final String CONTENT_INSTANCE_RESOURCE_TYPE =
+            Integer.toString(Onem2m.ResourceType.CONTENT_INSTANCE);
 
     private final DaoResourceTreeReader daoResourceTreeReader;
     private final ConcurrentHashMap<String, LoadingCache> onem2mAeRegCacheMap = new ConcurrentHashMap<>();
+    // AE-ID mappings deleted since the recovery read the cseList, they are not preloaded; guarded by the lock
+    private final Object aeRegPreloadLock = new Object();
+    private Set<String> aeRegDeletedDuringPreload = null;
 
     private final LoadingCache<Onem2mResourceKey, Onem2mResourceElem> onem2mResourceCache =
             CacheBuilder.<Onem2mResourceKey, Onem2mResourceElem>newBuilder()
@@ -183,7 +195,7 @@ public class Cache implements WriteOnlyCache, ReadOnlyCache {
         return onem2mCseCache.asMap();
     }
 
-    private boolean isLeafResourceType(Integer resourceType) {
+    static boolean isLeafResourceType(Integer resourceType) {
 
         if (null == resourceType) {
             return false;
@@ -214,6 +226,10 @@ public class Cache implements WriteOnlyCache, ReadOnlyCache {
         Onem2mResourceElem cacheElem = new Onem2mResourceElem(daoResourceTreeReader, resourceId, parentResourceId,
                 resourceName, resourceType.toString(), jsonContent, parentTargetUri);
 
+        if (resourceType == Onem2m.ResourceType.CONTAINER) {
+            cacheElem.setContainerCinIndex(new ContainerCinIndex());
+        }
+
         if (!isLeafResourceType(resourceType)) {
             onem2mResourceCache.put(key, cacheElem);
 
@@ -257,6 +273,8 @@ public class Cache implements WriteOnlyCache, ReadOnlyCache {
     public Onem2mResourceElem retrieveResourceById(Onem2mResourceKey key) {
         try {
             Onem2mResourceElem onem2mResourceElem = onem2mResourceCache.get(key);
+            onem2mResourceElem.accessed();
+            attachContainerCinIndex(onem2mResourceElem);
 //            LOG.info("cache: retrieveResourceById: resourceId:{}, type: {}, parentTargetUri: {}, name: {}",
 //                    onem2mResourceElem.getResourceId(), onem2mResourceElem.getResourceType(),
 //                    onem2mResourceElem.getParentTargetUri(), onem2mResourceElem.getName());
@@ -269,6 +287,176 @@ public class Cache implements WriteOnlyCache, ReadOnlyCache {
         }
     }
 
+    private static boolean isContainer(Onem2mResourceElem elem) {
+        return CONTAINER_RESOURCE_TYPE.equals(elem.getResourceType());
+    }
+
+    /**
+     * Containers loaded from the datastore get their contentInstance index rebuilt before they are returned
+     * so their content includes the current cni and cbs.
+     */
+    private void attachContainerCinIndex(Onem2mResourceElem elem) {
+        if (null != elem.getContainerCinIndex() || !isContainer(elem)) {
+            return;
+        }
+        synchronized (elem) {
+            if (null == elem.getContainerCinIndex()) {
+                elem.setContainerCinIndex(loadContainerCinIndex(elem));
+            }
+        }
+    }
+
+    private ContainerCinIndex loadContainerCinIndex(Onem2mResourceElem container) {
+        List<Onem2mResource> contentInstances = new ArrayList<>();
+        List<Onem2mParentChild> children = daoResourceTreeReader.retrieveParentChildList(
+                new Onem2mParentChildListKey(container.getResourceId()));
+        if (null != children) {
+            for (Onem2mParentChild child : children) {
+                // read directly from the DB, the contentInstances are not cached
+                Onem2mResource resource =
+                        daoResourceTreeReader.retrieveResourceById(new Onem2mResourceKey(child.getResourceId()));
+                if (null != resource && CONTENT_INSTANCE_RESOURCE_TYPE.equals(resource.getResourceType())) {
+                    contentInstances.add(resource);
+                }
+            }
+        }
+        LOG.debug("Loaded contentInstance index of container: {}, number of contentInstances: {}",
+                  container.getResourceId(), contentInstances.size());
+        return ContainerCinIndex.load(container.getResourceContentJsonString(), contentInstances);
+    }
+
+    @Override
+    public ContainerCinIndex retrieveContainerCinIndex(String containerResourceId) {
+        Onem2mResourceElem container = retrieveResourceById(new Onem2mResourceKey(containerResourceId));
+        if (null == container) {
+            return null;
+        }
+        return container.getContainerCinIndex();
+    }
+
+    /**
+     * @return the cached containers whose contentInstance index has changes not written with their content
+     */
+    List<Onem2mResourceElem> retrieveContainersWithUnpersistedCinIndex() {
+        List<Onem2mResourceElem> containers = new ArrayList<>();
+        for (Onem2mResourceElem elem : onem2mResourceCache.asMap().values()) {
+            ContainerCinIndex containerCinIndex = elem.getContainerCinIndex();
+            if (null != containerCinIndex && containerCinIndex.hasUnpersistedChanges()) {
+                containers.add(elem);
+            }
+        }
+        return containers;
+    }
+
+    /**
+     * Starts recording the deleted AE-ID mappings, it's called before the cseList is read for the
+     * preloadCseBases().
+     */
+    void beginPreloadCseBases() {
+        synchronized (aeRegPreloadLock) {
+            aeRegDeletedDuringPreload = new HashSet<>();
+        }
+    }
+
+    /**
+     * Loads the cseBases and the AE-ID mappings of their registered AEs stored in the datastore, the entries
+     * created by the writer in the meantime are kept and the mappings deleted since beginPreloadCseBases()
+     * are skipped, the read cseList may still contain them.
+     *
+     * @param cseList cseBases with their registered AEs
+     */
+    void preloadCseBases(List<Onem2mCse> cseList) {
+        synchronized (aeRegPreloadLock) {
+            Set<String> deleted = (null == aeRegDeletedDuringPreload) ? Collections.emptySet()
+                                                                       : aeRegDeletedDuringPreload;
+            aeRegDeletedDuringPreload = null;
+            for (Onem2mCse cse : cseList) {
+                onem2mCseCache.asMap().putIfAbsent(new Onem2mCseKey(cse.getName()), cse);
+                onem2mAeRegCacheMap.putIfAbsent(cse.getName(), newOnem2mAeCache(cse.getName()));
+                LoadingCache<String, String> aeCache = onem2mAeRegCacheMap.get(cse.getName());
+                if (null == cse.getOnem2mRegisteredAeIds()) {
+                    continue;
+                }
+                for (Onem2mRegisteredAeIds registeredAe : cse.getOnem2mRegisteredAeIds()) {
+                    if (!deleted.contains(aeRegKey(cse.getName(), registeredAe.getRegisteredAeId()))) {
+                        aeCache.asMap().putIfAbsent(registeredAe.getRegisteredAeId(), registeredAe.getResourceId());
+                    }
+                }
+            }
+        }
+    }
+
+    private static String aeRegKey(String cseBaseCseId, String aeId) {
+        return cseBaseCseId + "/" + aeId;
+    }
+
+    /**
+     * Caches the container read by the ResourceTreeRecovery with its contentInstance index attached, so the
+     * first request doesn't read all contentInstances of the container again. The requests read the container
+     * through the cache before they change its contentInstances, so the container is not cached if a request
+     * has loaded it in the meantime. The recovery fills at most half of the cache to keep the hot set.
+     *
+     * @param container the container with the contentInstance index
+     * @return true if the container has been cached
+     */
+    boolean preloadContainer(Onem2mResourceElem container) {
+        if (onem2mResourceCache.size() >= RESOURCE_MAP_SIZE_LIMIT / 2) {
+            return false;
+        }
+        return null == onem2mResourceCache.asMap().putIfAbsent(new Onem2mResourceKey(container.getResourceId()),
+                                                               container);
+    }
+
+    /**
+     * Loads the resource and the children of the resource into the cache.
+     *
+     * @param resourceId the resource
+     * @return false if there's no such resource
+     */
+    boolean prefill(String resourceId) {
+        Onem2mResourceElem elem = retrieveResourceById(new Onem2mResourceKey(resourceId));
+        if (null == elem) {
+            return false;
+        }
+        try {
+            if (!isLeafResourceType(Integer.valueOf(elem.getResourceType()))) {
+                onem2mResourceChildrenCache.get(new Onem2mResourceKey(resourceId));
+            }
+        } catch (NumberFormatException | ExecutionException | CacheLoader.InvalidCacheLoadException e) {
+            LOG.debug("prefill: no children of resource: {}", resourceId);
+        }
+        return true;
+    }
+
+    /**
+     * The iteration order of the cache is the hash order, the most recently retrieved resources are selected
+     * by their last access time instead.
+     *
+     * @param limit max number of the returned resourceIds
+     * @return resourceIds of the most recently retrieved cached resources, the most recent first
+     */
+    List<String> retrieveCachedResourceIds(int limit) {
+        if (limit <= 0) {
+            return Collections.emptyList();
+        }
+        // the access time is read once per resource, the concurrent retrieves keep changing it
+        Comparator<Map.Entry<String, Long>> byAccess = Map.Entry.comparingByValue();
+        // min-heap of the most recent ones found so far
+        PriorityQueue<Map.Entry<String, Long>> recent = new PriorityQueue<>(Math.min(limit, 1024), byAccess);
+        for (Onem2mResourceElem elem : onem2mResourceCache.asMap().values()) {
+            long lastAccessNanos = elem.getLastAccessNanos();
+            if (recent.size() < limit) {
+                recent.add(new AbstractMap.SimpleImmutableEntry<>(elem.getResourceId(), lastAccessNanos));
+            } else if (lastAccessNanos > recent.peek().getValue()) {
+                recent.poll();
+                recent.add(new AbstractMap.SimpleImmutableEntry<>(elem.getResourceId(), lastAccessNanos));
+            }
+        }
+        List<Map.Entry<String, Long>> sorted = new ArrayList<>(recent);
+        sorted.sort(byAccess.reversed());
+        return sorted.stream().map(Map.Entry::getKey).collect(Collectors.toList());
+    }
+
     private boolean loadCseBaseToAeRegCache(final String cseBaseCseId) {
 
         Onem2mCseKey cseKey = new Onem2mCseKey(cseBaseCseId);
@@ -327,7 +515,12 @@ public class Cache implements WriteOnlyCache, ReadOnlyCache {
             LOG.error("No cache for cseBase: {}", cseBaseCseId);
             return;
         }
-        cache.invalidate(cseBaseCseId);
+        synchronized (aeRegPreloadLock) {
+            if (null != aeRegDeletedDuringPreload) {
+                aeRegDeletedDuringPreload.add(aeRegKey(cseBaseCseId, aeId));
+            }
+            cache.invalidate(aeId);
+        }
     }
 
     @Override
@@ -428,6 +621,11 @@ public class Cache implements WriteOnlyCache, ReadOnlyCache {
         if (head == null) return;
 
         head.setResourceContentJsonString(jsonResourceContent);
+        ContainerCinIndex containerCinIndex = head.getContainerCinIndex();
+        if (null != containerCinIndex) {
+            // the written content has been read including the overlaid attributes of the index
+            containerCinIndex.contentPersisted();
+        }
         LOG.debug("Updated JSON resource content string: {}, content: {}", resourceId, jsonResourceContent);
     }
 
@@ -0,0 +1,355 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2m.core.database.transactionCore;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.opendaylight.iotdm.onem2m.core.Onem2m;
+import org.opendaylight.iotdm.onem2m.core.resource.BaseResource;
+import org.opendaylight.iotdm.onem2m.core.resource.ResourceContainer;
+import org.opendaylight.iotdm.onem2m.core.resource.ResourceContentInstance;
+import org.opendaylight.iotdm.onem2m.core.utils.JsonUtils;
+import org.opendaylight.iotdm.onem2m.core.utils.Onem2mDateTime;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index of the contentInstances of one container, ordered from the oldest to the latest. The resourceIds and
+ * byte sizes are kept in a ring buffer so appending the new contentInstance, evicting the oldest one and
+ * the latest/oldest lookups are O(1), the current number of instances and byte size are maintained as sums.
+ *
+ * The index is owned by the cached container resource. The container's JSON content is not rewritten by
+ * every contentInstance create, the cni, cbs, lt and st attributes tracked here are overlaid on the JSON
+ * content when it's read and the content is written to the datastore once per FLUSH_INTERVAL creates,
+ * when the container is retrieved and when the transaction manager is closed, see hasUnpersistedChanges().
+ * The index itself is not stored, it's rebuilt from the contentInstance children of the container.
+ */
+public class ContainerCinIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(ContainerCinIndex.class);
+    private static final int INITIAL_CAPACITY = 8;
+    // contentInstance creates after which the container's JSON content is written to the datastore
+    private static final int FLUSH_INTERVAL = 64;
+    // JSON arrays used by the former implementation, they are dropped from the stored content
+    private static final String LEGACY_CIN_RESOURCE_IDS_KEY = "c:" + Onem2m.ResourceType.CONTENT_INSTANCE;
+    private static final String LEGACY_CIN_BYTE_SIZES_KEY = "cin:bs";
+
+    private String[] resourceIds = new String[INITIAL_CAPACITY];
+    private int[] byteSizes = new int[INITIAL_CAPACITY];
+    private int head = 0;
+    private int count = 0;
+    private int currByteSize = 0;
+
+    // container attributes modified by the contentInstance creates and deletes, null/-1 if not tracked
+    private String lastModifiedTime = null;
+    private int stateTag = -1;
+    private int unpersistedCreates = 0;
+    // version of the index last written with the container's JSON content
+    private long persistedVersion = 0;
+
+    // cache of the last overlaid JSON content
+    private long version = 0;
+    private long overlayVersion = -1;
+    private String overlayInput = null;
+    private String overlayOutput = null;
+
+    /**
+     * Rebuilds the index of the container loaded from the datastore. The contentInstances are ordered by their
+     * creation time. The lt and st attributes written since the container content was stored for the last time
+     * are recovered from the contentInstances created later, the ones which have been deleted since are lost.
+     *
+     * @param containerJsonContent stored JSON content of the container
+     * @param contentInstances contentInstance children of the container
+     * @return new index
+     */
+    public static ContainerCinIndex load(String containerJsonContent, List<Onem2mResource> contentInstances) {
+        ContainerCinIndex index = new ContainerCinIndex();
+
+        JSONObject containerJson;
+        try {
+            containerJson = new JSONObject(containerJsonContent);
+        } catch (JSONException e) {
+            LOG.error("load: invalid container JSON {}", containerJsonContent, e);
+            return index;
+        }
+        String storedLastModifiedTime = containerJson.optString(BaseResource.LAST_MODIFIED_TIME, null);
+        int storedStateTag = containerJson.optInt(BaseResource.STATE_TAG, -1);
+
+        CinEntry[] entries = new CinEntry[contentInstances.size()];
+        int numEntries = 0;
+        for (Onem2mResource cin : contentInstances) {
+            try {
+                JSONObject cinJson = new JSONObject(cin.getResourceContentJsonString());
+                entries[numEntries++] = new CinEntry(cin.getResourceId(),
+                        cinJson.optString(BaseResource.CREATION_TIME, ""),
+                        cinJson.optInt(ResourceContentInstance.CONTENT_SIZE, 0));
+            } catch (JSONException e) {
+                LOG.error("load: invalid contentInstance JSON {}", cin.getResourceContentJsonString(), e);
+            }
+        }
+        Arrays.sort(entries, 0, numEntries, Comparator.comparing((CinEntry entry) -> entry.creationTime)
+                                                      .thenComparing(entry -> entry.resourceId));
+
+        int missedStateTags = 0;
+        for (int i = 0; i < numEntries; i++) {
+            CinEntry entry = entries[i];
+            index.append(entry.resourceId, entry.byteSize);
+            if (!entry.creationTime.isEmpty() && (null == storedLastModifiedTime ||
+                    Onem2mDateTime.dateCompare(entry.creationTime, storedLastModifiedTime) > 0)) {
+                index.lastModifiedTime = entry.creationTime;
+                missedStateTags++;
+            }
+        }
+        if (storedStateTag != -1) {
+            index.stateTag = storedStateTag + missedStateTags;
+        }
+        index.unpersistedCreates = missedStateTags;
+        // the stored cni and cbs miss the creates and deletes since the content was stored for the last time
+        if (missedStateTags == 0 &&
+                containerJson.optInt(ResourceContainer.CURR_NR_INSTANCES, -1) == index.count &&
+                containerJson.optInt(ResourceContainer.CURR_BYTE_SIZE, -1) == index.currByteSize) {
+            index.persistedVersion = index.version;
+        }
+        return index;
+    }
+
+    private static final class CinEntry {
+        private final String resourceId;
+        private final String creationTime;
+        private final int byteSize;
+
+        private CinEntry(String resourceId, String creationTime, int byteSize) {
+            this.resourceId = resourceId;
+            this.creationTime = creationTime;
+            this.byteSize = byteSize;
+        }
+    }
+
+    private void grow() {
+        int capacity = resourceIds.length * 2;
+        String[] newResourceIds = new String[capacity];
+        int[] newByteSizes = new int[capacity];
+        for (int i = 0; i < count; i++) {
+            int pos = (head + i) % resourceIds.length;
+            newResourceIds[i] = resourceIds[pos];
+            newByteSizes[i] = byteSizes[pos];
+        }
+        resourceIds = newResourceIds;
+        byteSizes = newByteSizes;
+        head = 0;
+    }
+
+    /**
+     * Adds the new contentInstance as the latest one.
+     *
+     * @param resourceId resourceId of the contentInstance
+     * @param byteSize content size of the contentInstance
+     */
+    public synchronized void append(String resourceId, int byteSize) {
+        if (count == resourceIds.length) {
+            grow();
+        }
+        int pos = (head + count) % resourceIds.length;
+        resourceIds[pos] = resourceId;
+        byteSizes[pos] = byteSize;
+        count++;
+        currByteSize += byteSize;
+        unpersistedCreates++;
+        version++;
+    }
+
+    /**
+     * Removes the oldest contentInstance.
+     *
+     * @return resourceId of the removed contentInstance or null if there's none
+     */
+    public synchronized String removeOldest() {
+        if (count == 0) {
+            return null;
+        }
+        String resourceId = resourceIds[head];
+        currByteSize -= byteSizes[head];
+        resourceIds[head] = null;
+        head = (head + 1) % resourceIds.length;
+        count--;
+        version++;
+        return resourceId;
+    }
+
+    /**
+     * Removes the contentInstance deleted explicitly, the search is linear.
+     *
+     * @param resourceId resourceId of the contentInstance
+     * @return true if the contentInstance has been found
+     */
+    public synchronized boolean remove(String resourceId) {
+        for (int i = 0; i < count; i++) {
+            int pos = (head + i) % resourceIds.length;
+            if (resourceId.equals(resourceIds[pos])) {
+                currByteSize -= byteSizes[pos];
+                // shift the newer entries to fill the gap
+                for (int j = i; j < count - 1; j++) {
+                    int to = (head + j) % resourceIds.length;
+                    int from = (head + j + 1) % resourceIds.length;
+                    resourceIds[to] = resourceIds[from];
+                    byteSizes[to] = byteSizes[from];
+                }
+                count--;
+                resourceIds[(head + count) % resourceIds.length] = null;
+                version++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized String getLatest() {
+        return (count == 0) ? null : resourceIds[(head + count - 1) % resourceIds.length];
+    }
+
+    public synchronized String getOldest() {
+        return (count == 0) ? null : resourceIds[head];
+    }
+
+    public synchronized int getCurrNrInstances() {
+        return count;
+    }
+
+    public synchronized int getCurrByteSize() {
+        return currByteSize;
+    }
+
+    /**
+     * Takes over the lt and st attributes of the container modified by a contentInstance create or delete.
+     *
+     * @param containerJsonContent the modified JSON content of the container
+     */
+    public synchronized void trackContainerAttributes(JSONObject containerJsonContent) {
+        String lt = containerJsonContent.optString(BaseResource.LAST_MODIFIED_TIME, null);
+        if (null != lt) {
+            lastModifiedTime = lt;
+        }
+        if (containerJsonContent.has(BaseResource.STATE_TAG)) {
+            stateTag = containerJsonContent.optInt(BaseResource.STATE_TAG, stateTag);
+        }
+        version++;
+    }
+
+    /**
+     * @return true if the container's JSON content should be written together with the create in progress,
+     * it is appended to the index only when committed
+     */
+    public synchronized boolean isFlushNeeded() {
+        return unpersistedCreates + 1 >= FLUSH_INTERVAL;
+    }
+
+    /**
+     * @return true if the cni, cbs, lt or st stored with the container's JSON content differ from the index
+     */
+    public synchronized boolean hasUnpersistedChanges() {
+        return persistedVersion != version;
+    }
+
+    /**
+     * Called when the container's JSON content, overlaid by this index, has been written to the datastore.
+     */
+    public synchronized void contentPersisted() {
+        unpersistedCreates = 0;
+        persistedVersion = version;
+    }
+
+    /**
+     * Sets the attributes maintained by the index in the container's JSON content.
+     *
+     * @param containerJsonContent JSON content of the container
+     */
+    public synchronized void overlay(JSONObject containerJsonContent) {
+        containerJsonContent.remove(LEGACY_CIN_RESOURCE_IDS_KEY);
+        containerJsonContent.remove(LEGACY_CIN_BYTE_SIZES_KEY);
+        JsonUtils.put(containerJsonContent, ResourceContainer.CURR_NR_INSTANCES, count);
+        JsonUtils.put(containerJsonContent, ResourceContainer.CURR_BYTE_SIZE, currByteSize);
+
+        // the content might have been modified by other updates of the container since, keep the later values
+        if (null != lastModifiedTime) {
+            String lt = containerJsonContent.optString(BaseResource.LAST_MODIFIED_TIME, null);
+            if (null == lt || Onem2mDateTime.dateCompare(lastModifiedTime, lt) > 0) {
+                JsonUtils.put(containerJsonContent, BaseResource.LAST_MODIFIED_TIME, lastModifiedTime);
+            }
+        }
+        if (-1 != stateTag && containerJsonContent.has(BaseResource.STATE_TAG)) {
+            if (stateTag > containerJsonContent.optInt(BaseResource.STATE_TAG)) {
+                JsonUtils.put(containerJsonContent, BaseResource.STATE_TAG, stateTag);
+            }
+        }
+    }
+
+    /**
+     * Sets the attributes in the container's JSON content written by a request which is not committed yet.
+     * The cni and cbs are the ones the index will have when the new contentInstance, if any, is appended and
+     * the oldest ones are evicted to comply with the limits, the index itself is left unchanged so that
+     * the cache never refers to uncommitted contentInstances and a failed commit leaves it intact.
+     *
+     * @param containerJsonContent JSON content of the container
+     * @param newByteSize content size of the contentInstance being created, -1 if none is created
+     * @param maxNrInstances mni of the container
+     * @param maxByteSize mbs of the container, -1 if not limited
+     */
+    public synchronized void overlayPending(JSONObject containerJsonContent, int newByteSize,
+                                            int maxNrInstances, int maxByteSize) {
+        overlay(containerJsonContent);
+
+        int nrInstances = count;
+        int byteSize = currByteSize;
+        if (newByteSize >= 0) {
+            nrInstances++;
+            byteSize += newByteSize;
+        }
+        // the same oldest entries are evicted by ResourceContainer.checkAndFixCurrMaxRules() after the commit
+        int evicted = 0;
+        while (nrInstances > 0 && (nrInstances > maxNrInstances || (maxByteSize != -1 && byteSize > maxByteSize))) {
+            byteSize -= (evicted < count) ? byteSizes[(head + evicted) % byteSizes.length] : newByteSize;
+            nrInstances--;
+            evicted++;
+        }
+        JsonUtils.put(containerJsonContent, ResourceContainer.CURR_NR_INSTANCES, nrInstances);
+        JsonUtils.put(containerJsonContent, ResourceContainer.CURR_BYTE_SIZE, byteSize);
+    }
+
+    /**
+     * Overlays the serialized JSON content of the container, the result is cached until the index or
+     * the content changes.
+     *
+     * @param containerJsonContent serialized JSON content of the container
+     * @return serialized JSON content including the attributes maintained by the index
+     */
+    public synchronized String applyTo(String containerJsonContent) {
+        if (null == containerJsonContent) {
+            return null;
+        }
+        if (overlayVersion == version && containerJsonContent == overlayInput) {
+            return overlayOutput;
+        }
+
+        JSONObject containerJson;
+        try {
+            containerJson = new JSONObject(containerJsonContent);
+        } catch (JSONException e) {
+            LOG.error("applyTo: invalid container JSON {}", containerJsonContent, e);
+            return containerJsonContent;
+        }
+        overlay(containerJson);
+
+        overlayInput = containerJsonContent;
+        overlayOutput = containerJson.toString();
+        overlayVersion = version;
+        return overlayOutput;
+    }
+}
@@ -26,15 +26,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * The DbNotifier is a layer of s/w that the ResoruceTreeWriter can call when a onem2mResource is created.  It feeds
- * the Onem2mDataTreeChangeListener.  Given that we have an mdsal database, or 3rd party plugin datastores,
- * a write to a 3rd party will not trigger the listener.  So, we implemented a DbTransaction table in the OPERATIONAL
- * datastore.  When the Writer creates, modifies, or deletes a resource, we q a DbTransaction to the DbNotifier
- * who in turn writes to the datastore.  The Onem2mDataTreeChangeListener "listens" to DbTransaction changes.
- * The Onem2mDataTreeChangeListener handles onem2mResource changes.  The DbTransaction also needs a way clean itself up.
- * So DbNotifier also listens to DbTransactions; it does this so that the "records" can be deleted/cleaned up.
+ * The DbNotifier is an optional export of the resource changes to the OPERATIONAL datastore for the listeners
+ * outside of IoTDM.  The in-process consumers subscribe to the ResourceChangeEventBus directly.  The DbNotifier
+ * subscribes to the bus too and writes a DbTransaction for each change, the puts are batched into write
+ * transactions.  The DbTransaction also needs a way clean itself up.  So DbNotifier also listens to
+ * DbTransactions; it does this so that the "records" can be deleted/cleaned up.
  */
-public class DbNotifier implements ClusteredDataTreeChangeListener<DbTransaction> {
+public class DbNotifier implements ClusteredDataTreeChangeListener<DbTransaction>,
+        ResourceChangeEventBus.ResourceChangeListener, AutoCloseable {
 
     private final Logger LOG = LoggerFactory.getLogger(DbNotifier.class);
     private DataBroker dataBroker;
@@ -49,9 +48,17 @@ public class DbNotifier implements ClusteredDataTreeChangeListener<DbTransaction
     private ListenerRegistration<DbNotifier> dcReg;
     private final LinkedBlockingQueue<DbTransaction> transactionQueue;
     private final LinkedBlockingQueue<Integer> deleteQueue;
-
-    public DbNotifier(DataBroker dataBroker) {
+    private final int numOpsPerTxn;
+    private final ResourceChangeEventBus.Subscription subscription;
+    private volatile boolean running = true;
+
+    /**
+     * @param dataBroker data broker
+     * @param numOpsPerTxn max number of the DbTransactions written or deleted in one write transaction
+     */
+    public DbNotifier(DataBroker dataBroker, int numOpsPerTxn) {
         this.dataBroker = dataBroker;
+        this.numOpsPerTxn = numOpsPerTxn;
         dcReg = dataBroker.registerDataTreeChangeListener(
                 new DataTreeIdentifier<>(LogicalDatastoreType.OPERATIONAL, IID),
                 this);
@@ -64,6 +71,32 @@ public class DbNotifier implements ClusteredDataTreeChangeListener<DbTransaction
         transactionDequeHandlerThread.start();
         Thread transactionDeleteHandlerThread = new Thread(transactionDeleteHandler);
         transactionDeleteHandlerThread.start();
+        subscription = ResourceChangeEventBus.getInstance().subscribe("db-notifier", this);
+    }
+
+    @Override
+    public void onResourceChange(ResourceChangeEvent event) {
+        switch (event.getOperation()) {
+            case CREATE:
+                enqueueDbOperation(DbTransaction.Operation.CREATE, event.getResourceId());
+                break;
+            case UPDATE:
+                enqueueDbOperation(DbTransaction.Operation.UPDATE, event.getResourceId());
+                break;
+            case DELETE:
+                enqueueDbOperation(DbTransaction.Operation.DELETE, event.getResourceId());
+                break;
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        subscription.close();
+        if (null != dcReg) {
+            dcReg.close();
+            dcReg = null;
+        }
     }
 
     @Override
@@ -104,7 +137,6 @@ public class DbNotifier implements ClusteredDataTreeChangeListener<DbTransaction
 
         private TransactionDequeHandler() {};
         private WriteTransaction writeTransaction = null;
-        private final Integer NUM_PUTS_PER_TXN = 20;
 
         @Override
         public void run() {
@@ -115,7 +147,7 @@ public class DbNotifier implements ClusteredDataTreeChangeListener<DbTransaction
             WriteTransaction wt = dataBroker.newWriteOnlyTransaction();
             DbTransaction dbt = null;
 
-            while (true) {
+            while (running) {
 
                 try {
                     dbt = transactionQueue.poll(1, TimeUnit.SECONDS);
@@ -134,7 +166,7 @@ public class DbNotifier implements ClusteredDataTreeChangeListener<DbTransaction
                     putCount++;
                 }
 
-                if ((dbt == null && putCount != 0) || putCount == NUM_PUTS_PER_TXN) {
+                if ((dbt == null && putCount != 0) || putCount >= numOpsPerTxn) {
 //                    LOG.info("submitting: {} put transactions", putCount);
                     Futures.addCallback(wt.submit(), new FutureCallback<Void>() {
                         @Override
@@ -169,7 +201,6 @@ public class DbNotifier implements ClusteredDataTreeChangeListener<DbTransaction
 
         private TransactionDeleteHandler() {};
         private WriteTransaction writeTransaction = null;
-        private final Integer NUM_DELS_PER_TXN = 20;
 
         @Override
         public void run() {
@@ -180,7 +211,7 @@ public class DbNotifier implements ClusteredDataTreeChangeListener<DbTransaction
             WriteTransaction wt = dataBroker.newWriteOnlyTransaction();
             Integer txId = null;
 
-            while (true) {
+            while (running) {
 
                 try {
                     txId = deleteQueue.poll(1, TimeUnit.SECONDS);
@@ -199,7 +230,7 @@ public class DbNotifier implements ClusteredDataTreeChangeListener<DbTransaction
                     delCount++;
                 }
 
-                if ((txId == null && delCount != 0) || delCount == NUM_DELS_PER_TXN) {
+                if ((txId == null && delCount != 0) || delCount >= numOpsPerTxn) {
 //                    LOG.info("submitting: {} delete transactions", delCount);
                     Futures.addCallback(wt.submit(), new FutureCallback<Void>() {
                         @Override
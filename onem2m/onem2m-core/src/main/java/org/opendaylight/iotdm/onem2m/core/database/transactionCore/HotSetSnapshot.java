@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2m.core.database.transactionCore;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Snapshot of the hot set, the resourceIds of the most recently retrieved cached resources, the most recent
+ * first, so a smaller hotSetSize read after a restart keeps the hottest ones. The snapshot is written
+ * periodically and when the DAO plugin is unregistered, the ResourceTreeRecovery loads the resources of the
+ * snapshot into the cache after restart. The file has one resourceId per line, it's replaced atomically so
+ * a crash while writing keeps the previous snapshot.
+ */
+class HotSetSnapshot {
+    private static final Logger LOG = LoggerFactory.getLogger(HotSetSnapshot.class);
+
+    private final Path file;
+    private final int maxSize;
+    private final long intervalSeconds;
+    private final Cache cache;
+    private ScheduledExecutorService scheduler;
+    private volatile long lastWriteMillis = -1;
+    private volatile int lastWriteSize = 0;
+
+    /**
+     * @param file the snapshot file
+     * @param maxSize max number of resourceIds in the snapshot
+     * @param intervalSeconds period of the snapshot writes, 0 writes the snapshot only when stopped
+     * @param cache the cache the hot set is read from
+     */
+    HotSetSnapshot(Path file, int maxSize, long intervalSeconds, Cache cache) {
+        this.file = file;
+        this.maxSize = maxSize;
+        this.intervalSeconds = intervalSeconds;
+        this.cache = cache;
+    }
+
+    /**
+     * @return resourceIds of the last written snapshot, empty list if there's none
+     */
+    List<String> read() {
+        if (!Files.exists(file)) {
+            return Collections.emptyList();
+        }
+        List<String> resourceIds = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while (resourceIds.size() < maxSize && null != (line = reader.readLine())) {
+                if (!line.isEmpty()) {
+                    resourceIds.add(line);
+                }
+            }
+        } catch (IOException e) {
+            LOG.error("read: failed to read the hot set snapshot: {}: {}", file, e.getMessage());
+            return Collections.emptyList();
+        }
+        return resourceIds;
+    }
+
+    synchronized void write() {
+        long then = System.currentTimeMillis();
+        List<String> resourceIds = cache.retrieveCachedResourceIds(maxSize);
+        Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            if (null != file.getParent()) {
+                Files.createDirectories(file.getParent());
+            }
+            try (BufferedWriter writer = Files.newBufferedWriter(tmpFile, StandardCharsets.UTF_8)) {
+                for (String resourceId : resourceIds) {
+                    writer.write(resourceId);
+                    writer.newLine();
+                }
+            }
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.error("write: failed to write the hot set snapshot: {}: {}", file, e.getMessage());
+            return;
+        }
+        lastWriteMillis = System.currentTimeMillis();
+        lastWriteSize = resourceIds.size();
+        LOG.debug("write: {} resourceIds written in {} ms", resourceIds.size(), lastWriteMillis - then);
+    }
+
+    synchronized void start() {
+        if (null != scheduler || intervalSeconds <= 0) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hot-set-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::write, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the periodic writes.
+     * @param writeSnapshot write the last snapshot
+     */
+    void stop(boolean writeSnapshot) {
+        synchronized (this) {
+            if (null != scheduler) {
+                scheduler.shutdownNow();
+                scheduler = null;
+            }
+        }
+        if (writeSnapshot) {
+            write();
+        }
+    }
+
+    long getLastWriteMillis() {
+        return lastWriteMillis;
+    }
+
+    int getLastWriteSize() {
+        return lastWriteSize;
+    }
+}
@@ -33,6 +33,14 @@ public class Onem2mResourceElem implements Onem2mResource {
     private String resourceType;
     private String resourceContentJsonString;
     private WeakReference<String> resourceContentJsonStringReference;
+    private volatile ContainerCinIndex containerCinIndex;
+    // same as the content string, the parsed view of the big content is released when not used
+    private volatile ResourceContentView resourceContentView;
+    private volatile WeakReference<ResourceContentView> resourceContentViewReference = new WeakReference<>(null);
+    // cached type F subscription flag of SubscriptionIndex: (generation << 1) | flag, -1 if not computed yet
+    private volatile long typeFSubscriptionState = -1;
+    // System.nanoTime() of the last retrieve through the cache, orders the hot set snapshot by recency
+    private volatile long lastAccessNanos = System.nanoTime();
 
 
     public Onem2mResourceElem(DaoResourceTreeReader daoResourceTreeReader, String resourceId, String parentId, String name,
@@ -91,7 +99,27 @@ public class Onem2mResourceElem implements Onem2mResource {
             ret = daoResourceTreeReader.retrieveResourceById(new Onem2mResourceKey(resourceId)).getResourceContentJsonString();
             setResourceContentJsonString(ret);
         }
-        return ret;
+        ContainerCinIndex index = containerCinIndex;
+        return (null == index) ? ret : index.applyTo(ret);
+    }
+
+    /**
+     * Returns the parsed content of the resource. The view is created when the content is read for the first
+     * time and it's dropped when the content is changed, so the content is never modified in place.
+     *
+     * @return the parsed content
+     */
+    public ResourceContentView getResourceContentView() {
+        String jsonString = getResourceContentJsonString();
+        ResourceContentView view = resourceContentViewReference.get();
+        if (null != view && view.getJsonString() == jsonString) {
+            return view;
+        }
+
+        view = new ResourceContentView(jsonString);
+        resourceContentView = (jsonString.length() > JSON_LENGTH_THRESHOLD) ? null : view;
+        resourceContentViewReference = new WeakReference<>(view);
+        return view;
     }
 
     protected void setResourceContentJsonString(String resourceContentJsonString) {
@@ -101,6 +129,36 @@ public class Onem2mResourceElem implements Onem2mResource {
             this.resourceContentJsonString = resourceContentJsonString;
         }
         resourceContentJsonStringReference = new WeakReference<String>(resourceContentJsonString);
+        // copy on write, the view of the old content stays valid for its current readers
+        resourceContentView = null;
+    }
+
+    /**
+     * @return contentInstance index of the cached container resource, null for other resources or if the index
+     * hasn't been loaded yet
+     */
+    ContainerCinIndex getContainerCinIndex() {
+        return containerCinIndex;
+    }
+
+    void setContainerCinIndex(ContainerCinIndex containerCinIndex) {
+        this.containerCinIndex = containerCinIndex;
+    }
+
+    long getTypeFSubscriptionState() {
+        return typeFSubscriptionState;
+    }
+
+    void setTypeFSubscriptionState(long typeFSubscriptionState) {
+        this.typeFSubscriptionState = typeFSubscriptionState;
+    }
+
+    long getLastAccessNanos() {
+        return lastAccessNanos;
+    }
+
+    void accessed() {
+        lastAccessNanos = System.nanoTime();
     }
 
     /**
@@ -77,4 +77,12 @@ public interface ReadOnlyCache {
      * @return  List including child resource data
      */
     List<Onem2mParentChild> retrieveParentChildList(Onem2mParentChildListKey key, int limit, int offset);
+
+    /**
+     * Retrieve the contentInstance index of the container, the index is rebuilt from the DB if the container
+     * isn't cached.
+     * @param containerResourceId ResourceId of the container resource
+     * @return the index or null if there's no such container
+     */
+    ContainerCinIndex retrieveContainerCinIndex(String containerResourceId);
 }
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2m.core.database.transactionCore;
+
+import com.google.common.collect.Iterators;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Read-only JSON objects and arrays. The parsed content shared by the readers of a cached resource is wrapped,
+ * so a reader which modifies it by mistake fails with UnsupportedOperationException instead of changing the
+ * content seen by all other readers.
+ */
+final class ReadOnlyJson {
+
+    private ReadOnlyJson() {
+    }
+
+    /**
+     * @param json parsed JSON object, it's not used after the call
+     * @return read-only copy of the object, the nested objects and arrays are read-only as well
+     */
+    static JSONObject of(JSONObject json) {
+        ReadOnlyJSONObject readOnly = new ReadOnlyJSONObject();
+        for (String key : json.keySet()) {
+            readOnly.putValue(key, readOnlyValue(json.opt(key)));
+        }
+        readOnly.sealed = true;
+        return readOnly;
+    }
+
+    private static JSONArray of(JSONArray json) {
+        ReadOnlyJSONArray readOnly = new ReadOnlyJSONArray();
+        for (int i = 0; i < json.length(); i++) {
+            readOnly.putValue(readOnlyValue(json.opt(i)));
+        }
+        readOnly.sealed = true;
+        return readOnly;
+    }
+
+    private static Object readOnlyValue(Object value) {
+        if (value instanceof JSONObject) {
+            return of((JSONObject) value);
+        }
+        if (value instanceof JSONArray) {
+            return of((JSONArray) value);
+        }
+        return value;
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("Shared resource content is read-only, use a copy");
+    }
+
+    private static final class ReadOnlyJSONObject extends JSONObject {
+        private boolean sealed;
+
+        private void putValue(String key, Object value) {
+            super.put(key, value);
+        }
+
+        @Override
+        public JSONObject accumulate(String key, Object value) {
+            throw readOnly();
+        }
+
+        @Override
+        public JSONObject append(String key, Object value) {
+            throw readOnly();
+        }
+
+        @Override
+        public JSONObject increment(String key) {
+            throw readOnly();
+        }
+
+        @Override
+        public JSONObject put(String key, boolean value) {
+            throw readOnly();
+        }
+
+        @Override
+        public JSONObject put(String key, Collection<?> value) {
+            throw readOnly();
+        }
+
+        @Override
+        public JSONObject put(String key, double value) {
+            throw readOnly();
+        }
+
+        @Override
+        public JSONObject put(String key, int value) {
+            throw readOnly();
+        }
+
+        @Override
+        public JSONObject put(String key, long value) {
+            throw readOnly();
+        }
+
+        @Override
+        public JSONObject put(String key, Map<?, ?> value) {
+            throw readOnly();
+        }
+
+        @Override
+        public JSONObject put(String key, Object value) {
+            // used by putValue() until the object is sealed
+            if (sealed) {
+                throw readOnly();
+            }
+            return super.put(key, value);
+        }
+
+        @Override
+        public JSONObject putOnce(String key, Object value) {
+            throw readOnly();
+        }
+
+        @Override
+        public JSONObject putOpt(String key, Object value) {
+            throw readOnly();
+        }
+
+        @Override
+        public Object remove(String key) {
+            throw readOnly();
+        }
+
+        @Override
+        public Set<String> keySet() {
+            return Collections.unmodifiableSet(super.keySet());
+        }
+    }
+
+    private static final class ReadOnlyJSONArray extends JSONArray {
+        private boolean sealed;
+
+        private void putValue(Object value) {
+            super.put(value);
+        }
+
+        @Override
+        public JSONArray put(boolean value) {
+            throw readOnly();
+        }
+
+        @Override
+        public JSONArray put(Collection<?> value) {
+            throw readOnly();
+        }
+
+        @Override
+        public JSONArray put(double value) {
+            throw readOnly();
+        }
+
+        @Override
+        public JSONArray put(int value) {
+            throw readOnly();
+        }
+
+        @Override
+        public JSONArray put(long value) {
+            throw readOnly();
+        }
+
+        @Override
+        public JSONArray put(Map<?, ?> value) {
+            throw readOnly();
+        }
+
+        @Override
+        public JSONArray put(Object value) {
+            // used by putValue() until the array is sealed
+            if (sealed) {
+                throw readOnly();
+            }
+            return super.put(value);
+        }
+
+        @Override
+        public JSONArray put(int index, boolean value) {
+            throw readOnly();
+        }
+
+        @Override
+        public JSONArray put(int index, Collection<?> value) {
+            throw readOnly();
+        }
+
+        @Override
+        public JSONArray put(int index, double value) {
+            throw readOnly();
+        }
+
+        @Override
+        public JSONArray put(int index, int value) {
+            throw readOnly();
+        }
+
+        @Override
+        public JSONArray put(int index, long value) {
+            throw readOnly();
+        }
+
+        @Override
+        public JSONArray put(int index, Map<?, ?> value) {
+            throw readOnly();
+        }
+
+        @Override
+        public JSONArray put(int index, Object value) {
+            throw readOnly();
+        }
+
+        @Override
+        public Object remove(int index) {
+            throw readOnly();
+        }
+
+        @Override
+        public Iterator<Object> iterator() {
+            return Iterators.unmodifiableIterator(super.iterator());
+        }
+    }
+}
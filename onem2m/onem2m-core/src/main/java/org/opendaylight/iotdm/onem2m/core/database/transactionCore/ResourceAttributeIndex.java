@@ -0,0 +1,918 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2m.core.database.transactionCore;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.opendaylight.iotdm.onem2m.core.resource.BaseResource;
+import org.opendaylight.iotdm.onem2m.core.resource.ResourceContainer;
+import org.opendaylight.iotdm.onem2m.core.resource.ResourceContentInstance;
+import org.opendaylight.iotdm.onem2m.core.utils.JsonUtils;
+import org.opendaylight.iotdm.onem2m.core.utils.Onem2mDateTime;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResource;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.onem2m.parent.child.list.Onem2mParentChild;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Secondary indexes of the resource attributes used by the discovery: labels, resourceType, creationTime,
+ * lastModifiedTime and the content size (cbs of the containers, cs of the contentInstances).  The times are
+ * indexed as epoch millis.  The ResourceTreeWriter updates the indexes when a resource is created, updated or
+ * removed from the tree, the indexes are rebuilt by the ResourceTreeRecovery when the DAO plugin is registered
+ * and the discovery walks the tree until the rebuild completes.
+ *
+ * The labels and the resourceTypes are indexed as postings, sorted sets of the resourceIds having the value.
+ * The ranges are indexed as sets of (value, resourceId) entries sorted by the value, the resources which don't
+ * have the attribute are kept in a separate set because the filter criteria don't exclude them.
+ *
+ * A discovery Query is planned by estimating the number of candidates of each indexed condition.  The postings
+ * know their sizes, the ranges are counted up to the best estimate so far.  The most selective condition
+ * drives the discovery and the other conditions are checked against the indexed values of the candidates, so
+ * only the resources matching all indexed conditions are read.  The candidates are streamed in the order of
+ * the driving index and the position in this order is the continuation cursor of the next page.
+ */
+public class ResourceAttributeIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(ResourceAttributeIndex.class);
+
+    public enum RangeAttribute {CREATION_TIME, LAST_MODIFIED_TIME, CONTENT_SIZE}
+
+    private static final long NO_VALUE = Long.MIN_VALUE;
+    private static final RangeAttribute[] RANGE_ATTRIBUTES = RangeAttribute.values();
+
+    private final ConcurrentHashMap<String, Posting> labelPostings = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Posting> resourceTypePostings = new ConcurrentHashMap<>();
+    private final RangeIndex[] rangeIndexes = new RangeIndex[RANGE_ATTRIBUTES.length];
+    private final ConcurrentHashMap<String, IndexedResource> indexedResources = new ConcurrentHashMap<>();
+    private final Set<String> removedDuringRebuild = ConcurrentHashMap.newKeySet();
+    private volatile boolean rebuilding = false;
+    private volatile boolean ready = false;
+    private long rebuildStartMillis;
+
+    private final LongAdder numQueries = new LongAdder();
+    private final LongAdder numCandidates = new LongAdder();
+    private final LongAdder numProbeRejects = new LongAdder();
+    private final LongAdder[] numQueriesByDriver = new LongAdder[Driver.Kind.values().length];
+
+    public ResourceAttributeIndex() {
+        for (int i = 0; i < rangeIndexes.length; i++) {
+            rangeIndexes[i] = new RangeIndex();
+        }
+        for (int i = 0; i < numQueriesByDriver.length; i++) {
+            numQueriesByDriver[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @return true when the indexes hold all resources of the tree
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Starts the rebuild of the indexes, the resources of the tree are passed to recovered() by the
+     * ResourceTreeRecovery.
+     * @return false if the indexes are being rebuilt or they are ready already
+     */
+    public synchronized boolean startRebuild() {
+        if (rebuilding || ready) {
+            return false;
+        }
+        rebuildStartMillis = System.currentTimeMillis();
+        rebuilding = true;
+        return true;
+    }
+
+    /**
+     * Indexes the resource found by the walk of the tree unless the writer has indexed or removed it in the
+     * meantime.
+     * @param onem2mResource the resource
+     */
+    public void recovered(Onem2mResource onem2mResource) {
+        if (!rebuilding) {
+            return;
+        }
+        indexedResources.computeIfAbsent(onem2mResource.getResourceId(), id -> {
+            if (removedDuringRebuild.contains(id)) {
+                return null;
+            }
+            IndexedResource values = IndexedResource.of(onem2mResource);
+            reindex(id, null, values);
+            return values;
+        });
+    }
+
+    /**
+     * Ends the rebuild, the indexes are used by the discovery if the walk has visited the whole tree.
+     * @param completed true if all resources of the tree have been passed to recovered()
+     */
+    public void finishRebuild(boolean completed) {
+        synchronized (this) {
+            if (!rebuilding) {
+                return;
+            }
+            ready = completed;
+            rebuilding = false;
+        }
+        removedDuringRebuild.clear();
+        LOG.info("rebuild: indexed {} resources in {} ms, completed: {}", indexedResources.size(),
+                 System.currentTimeMillis() - rebuildStartMillis, completed);
+    }
+
+    public synchronized void stop() {
+        rebuilding = false;
+        ready = false;
+        clear();
+    }
+
+    /**
+     * Called by the writer after the resource has been created or its content has been updated.
+     * @param onem2mResource the resource
+     */
+    public void resourceCreatedOrUpdated(Onem2mResource onem2mResource) {
+        IndexedResource values = IndexedResource.of(onem2mResource);
+        indexedResources.compute(onem2mResource.getResourceId(), (id, old) -> {
+            reindex(id, old, values);
+            return values;
+        });
+    }
+
+    /**
+     * Called by the writer when the resource is removed from the tree, the descendants are removed too.
+     * @param onem2mResource the removed resource
+     * @param trc reader of the tree
+     */
+    public void resourceRemoved(Onem2mResource onem2mResource, ResourceTreeReader trc) {
+        ArrayDeque<String> resourceIds = new ArrayDeque<>();
+        resourceIds.add(onem2mResource.getResourceId());
+        boolean isLeaf = isLeaf(onem2mResource);
+        while (!resourceIds.isEmpty()) {
+            String resourceId = resourceIds.poll();
+            resourceRemoved(resourceId);
+            if (!isLeaf) {
+                for (Onem2mParentChild child : trc.retrieveParentChildList(resourceId)) {
+                    resourceIds.add(child.getResourceId());
+                }
+            }
+        }
+    }
+
+    /**
+     * Called when the resource is deleted from the data store.
+     * @param resourceId the resource
+     */
+    public void resourceRemoved(String resourceId) {
+        if (rebuilding) {
+            removedDuringRebuild.add(resourceId);
+        }
+        indexedResources.computeIfPresent(resourceId, (id, old) -> {
+            reindex(id, old, null);
+            return null;
+        });
+    }
+
+    private static boolean isLeaf(Onem2mResource onem2mResource) {
+        try {
+            return Cache.isLeafResourceType(Integer.valueOf(onem2mResource.getResourceType()));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    public void clear() {
+        indexedResources.clear();
+        labelPostings.clear();
+        resourceTypePostings.clear();
+        for (RangeIndex rangeIndex : rangeIndexes) {
+            rangeIndex.clear();
+        }
+    }
+
+    /*
+     * Moves the resource from the postings of its old values to the postings of its new values, it's called
+     * while the entry of the resource is locked by the map so the changes of one resource are serialized.
+     */
+    private void reindex(String resourceId, IndexedResource old, IndexedResource values) {
+        List<String> oldLabels = (null == old) ? Collections.emptyList() : old.labels;
+        List<String> newLabels = (null == values) ? Collections.emptyList() : values.labels;
+        for (String label : oldLabels) {
+            if (!newLabels.contains(label)) {
+                removePosting(labelPostings, label, resourceId);
+            }
+        }
+        for (String label : newLabels) {
+            if (!oldLabels.contains(label)) {
+                addPosting(labelPostings, label, resourceId);
+            }
+        }
+
+        Integer oldType = (null == old) ? null : old.resourceType;
+        Integer newType = (null == values) ? null : values.resourceType;
+        if (null != oldType && !oldType.equals(newType)) {
+            removePosting(resourceTypePostings, oldType, resourceId);
+        }
+        if (null != newType && !newType.equals(oldType)) {
+            addPosting(resourceTypePostings, newType, resourceId);
+        }
+
+        for (int i = 0; i < rangeIndexes.length; i++) {
+            long oldValue = (null == old) ? NO_VALUE : old.rangeValues[i];
+            long newValue = (null == values) ? NO_VALUE : values.rangeValues[i];
+            if (null != old && (null == values || oldValue != newValue)) {
+                rangeIndexes[i].remove(resourceId, oldValue);
+            }
+            if (null != values && (null == old || oldValue != newValue)) {
+                rangeIndexes[i].add(resourceId, newValue);
+            }
+        }
+    }
+
+    private static <K> void addPosting(ConcurrentHashMap<K, Posting> postings, K key, String resourceId) {
+        postings.compute(key, (k, posting) -> {
+            if (null == posting) {
+                posting = new Posting();
+            }
+            posting.add(resourceId);
+            return posting;
+        });
+    }
+
+    private static <K> void removePosting(ConcurrentHashMap<K, Posting> postings, K key, String resourceId) {
+        postings.computeIfPresent(key, (k, posting) -> {
+            posting.remove(resourceId);
+            return posting.size() == 0 ? null : posting;
+        });
+    }
+
+    /**
+     * Plans the query and opens the stream of the candidates.
+     * @param query the indexed conditions of the filter criteria
+     * @param cursor continuation cursor returned by a previous page or null for the first page
+     * @return the candidates, null if the query has no indexed condition
+     * @throws IllegalArgumentException if the cursor is not valid for the query
+     */
+    public CandidateStream open(Query query, String cursor) throws IllegalArgumentException {
+        if (null == cursor && query.isEmpty()) {
+            return null;
+        }
+
+        Driver driver;
+        String position = null;
+        if (null != cursor) {
+            String decoded = decodeCursor(cursor);
+            int separator = decoded.indexOf(':');
+            if (separator < 1) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+            driver = Driver.fromCursor(decoded.substring(0, separator), query);
+            position = decoded.substring(separator + 1);
+        } else {
+            driver = plan(query);
+        }
+
+        numQueries.increment();
+        numQueriesByDriver[driver.kind.ordinal()].increment();
+        return new CandidateStream(driver, query, driver.iterator(this, query, position));
+    }
+
+    private Driver plan(Query query) {
+        Driver best = null;
+        long bestEstimate = Long.MAX_VALUE;
+        if (null != query.labels) {
+            long estimate = estimate(labelPostings, query.labels);
+            if (estimate < bestEstimate) {
+                best = new Driver(Driver.Kind.LABELS, null);
+                bestEstimate = estimate;
+            }
+        }
+        if (null != query.resourceTypes) {
+            long estimate = estimate(resourceTypePostings, query.resourceTypes);
+            if (estimate < bestEstimate) {
+                best = new Driver(Driver.Kind.RESOURCE_TYPES, null);
+                bestEstimate = estimate;
+            }
+        }
+        for (RangeAttribute attribute : RANGE_ATTRIBUTES) {
+            if (!query.hasRange(attribute)) {
+                continue;
+            }
+            RangeIndex rangeIndex = rangeIndexes[attribute.ordinal()];
+            long estimate = rangeIndex.count(query.lowerBounds[attribute.ordinal()],
+                                             query.upperBounds[attribute.ordinal()], bestEstimate);
+            if (estimate < bestEstimate) {
+                best = new Driver(Driver.Kind.RANGE, attribute);
+                bestEstimate = estimate;
+            }
+        }
+        LOG.trace("plan: driver: {}, estimate: {}", best, bestEstimate);
+        return best;
+    }
+
+    private static <K> long estimate(ConcurrentHashMap<K, Posting> postings, List<K> keys) {
+        long estimate = 0;
+        for (K key : keys) {
+            Posting posting = postings.get(key);
+            if (null != posting) {
+                estimate += posting.size();
+            }
+        }
+        return estimate;
+    }
+
+    /**
+     * @param position position in the order of the discovery
+     * @return the opaque cursor
+     */
+    public static String encodeCursor(String position) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param cursor the opaque cursor
+     * @return the position in the order of the discovery
+     * @throws IllegalArgumentException if the cursor is not valid
+     */
+    public static String decodeCursor(String cursor) throws IllegalArgumentException {
+        return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+    }
+
+    public JSONObject getStats() {
+        JSONObject js = new JSONObject();
+        JsonUtils.put(js, "ready", ready);
+        JsonUtils.put(js, "indexed_resources", indexedResources.size());
+        JsonUtils.put(js, "labels", labelPostings.size());
+        JsonUtils.put(js, "resource_types", resourceTypePostings.size());
+        JsonUtils.put(js, "queries", numQueries.sum());
+        for (Driver.Kind kind : Driver.Kind.values()) {
+            JsonUtils.put(js, "queries_" + kind.name().toLowerCase(), numQueriesByDriver[kind.ordinal()].sum());
+        }
+        JsonUtils.put(js, "candidates", numCandidates.sum());
+        JsonUtils.put(js, "probe_rejects", numProbeRejects.sum());
+        return js;
+    }
+
+    /**
+     * The conditions of the filter criteria which can be answered by the indexes.  The bounds are exclusive.
+     */
+    public static final class Query {
+        private List<String> labels;
+        private List<Integer> resourceTypes;
+        private final long[] lowerBounds = new long[RANGE_ATTRIBUTES.length];
+        private final long[] upperBounds = new long[RANGE_ATTRIBUTES.length];
+
+        public Query() {
+            for (int i = 0; i < RANGE_ATTRIBUTES.length; i++) {
+                lowerBounds[i] = Long.MIN_VALUE;
+                upperBounds[i] = Long.MAX_VALUE;
+            }
+        }
+
+        /**
+         * @param labels the resource must have any of the labels
+         */
+        public Query setLabels(List<String> labels) {
+            this.labels = labels;
+            return this;
+        }
+
+        /**
+         * @param resourceTypes the resource must be of any of the resourceTypes
+         */
+        public Query setResourceTypes(List<Integer> resourceTypes) {
+            this.resourceTypes = resourceTypes;
+            return this;
+        }
+
+        /**
+         * @param attribute the attribute
+         * @param value the value of the attribute must be greater than value
+         */
+        public Query setAbove(RangeAttribute attribute, long value) {
+            lowerBounds[attribute.ordinal()] = Math.max(lowerBounds[attribute.ordinal()], value);
+            return this;
+        }
+
+        /**
+         * @param attribute the attribute
+         * @param value the value of the attribute must be less than value
+         */
+        public Query setBelow(RangeAttribute attribute, long value) {
+            upperBounds[attribute.ordinal()] = Math.min(upperBounds[attribute.ordinal()], value);
+            return this;
+        }
+
+        boolean hasRange(RangeAttribute attribute) {
+            return lowerBounds[attribute.ordinal()] != Long.MIN_VALUE ||
+                    upperBounds[attribute.ordinal()] != Long.MAX_VALUE;
+        }
+
+        public boolean isEmpty() {
+            if (null != labels || null != resourceTypes) {
+                return false;
+            }
+            for (RangeAttribute attribute : RANGE_ATTRIBUTES) {
+                if (hasRange(attribute)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /*
+         * Checks the indexed values of the candidate, the filter criteria don't exclude the resources which
+         * don't have the ranged attribute.
+         */
+        private boolean matches(IndexedResource values) {
+            if (null != labels && Collections.disjoint(labels, values.labels)) {
+                return false;
+            }
+            if (null != resourceTypes && !resourceTypes.contains(values.resourceType)) {
+                return false;
+            }
+            for (int i = 0; i < RANGE_ATTRIBUTES.length; i++) {
+                long value = values.rangeValues[i];
+                if (value != NO_VALUE && (value <= lowerBounds[i] || value >= upperBounds[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Stream of the candidate resourceIds matching all indexed conditions of the query.
+     */
+    public final class CandidateStream implements Iterator<String> {
+        private final Driver driver;
+        private final Query query;
+        private final PositionedIterator candidates;
+        private String next = null;
+        private String nextPosition = null;
+        private String position = null;
+        private String scanPosition = null;
+        private int numScanned = 0;
+        private int scanLimit = Integer.MAX_VALUE;
+
+        private CandidateStream(Driver driver, Query query, PositionedIterator candidates) {
+            this.driver = driver;
+            this.query = query;
+            this.candidates = candidates;
+        }
+
+        /**
+         * Limits the number of candidates taken from the index, the stream ends when the limit is reached.
+         * @param scanLimit max number of candidates
+         */
+        public void setScanLimit(int scanLimit) {
+            this.scanLimit = scanLimit;
+        }
+
+        /**
+         * @return true if the stream ended because of the scan limit
+         */
+        public boolean isScanLimitReached() {
+            return null == next && numScanned >= scanLimit && candidates.hasNext();
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (null == next && numScanned < scanLimit && candidates.hasNext()) {
+                String resourceId = candidates.next();
+                numScanned++;
+                scanPosition = candidates.position();
+                numCandidates.increment();
+                IndexedResource values = indexedResources.get(resourceId);
+                if (null == values || !query.matches(values)) {
+                    numProbeRejects.increment();
+                    continue;
+                }
+                next = resourceId;
+                nextPosition = candidates.position();
+            }
+            return null != next;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String resourceId = next;
+            position = nextPosition;
+            next = null;
+            return resourceId;
+        }
+
+        /**
+         * @return cursor continuing after the last returned candidate, null if none has been returned yet
+         */
+        public String getCursor() {
+            return (null == position) ? null : encodeCursor(driver.cursorPrefix() + ":" + position);
+        }
+
+        /**
+         * @return cursor continuing after the last candidate taken from the index, null if none has been taken
+         */
+        public String getScanCursor() {
+            return (null == scanPosition) ? null : encodeCursor(driver.cursorPrefix() + ":" + scanPosition);
+        }
+    }
+
+    /*
+     * Iterator which can tell the position after the last returned element in the order of its index.
+     */
+    private interface PositionedIterator extends Iterator<String> {
+        String position();
+    }
+
+    /*
+     * The index driving the discovery.
+     */
+    private static final class Driver {
+        enum Kind {LABELS, RESOURCE_TYPES, RANGE}
+
+        private final Kind kind;
+        private final RangeAttribute attribute;
+
+        Driver(Kind kind, RangeAttribute attribute) {
+            this.kind = kind;
+            this.attribute = attribute;
+        }
+
+        String cursorPrefix() {
+            switch (kind) {
+                case LABELS:
+                    return "L";
+                case RESOURCE_TYPES:
+                    return "T";
+                default:
+                    return "R" + attribute.ordinal();
+            }
+        }
+
+        static Driver fromCursor(String prefix, Query query) throws IllegalArgumentException {
+            if (prefix.equals("L") && null != query.labels) {
+                return new Driver(Kind.LABELS, null);
+            }
+            if (prefix.equals("T") && null != query.resourceTypes) {
+                return new Driver(Kind.RESOURCE_TYPES, null);
+            }
+            if (prefix.length() == 2 && prefix.charAt(0) == 'R') {
+                int ordinal = prefix.charAt(1) - '0';
+                if (ordinal >= 0 && ordinal < RANGE_ATTRIBUTES.length && query.hasRange(RANGE_ATTRIBUTES[ordinal])) {
+                    return new Driver(Kind.RANGE, RANGE_ATTRIBUTES[ordinal]);
+                }
+            }
+            throw new IllegalArgumentException("Cursor doesn't match the filter criteria");
+        }
+
+        PositionedIterator iterator(ResourceAttributeIndex index, Query query, String position) {
+            switch (kind) {
+                case LABELS:
+                    return new UnionIterator(postingsOf(index.labelPostings, query.labels), position);
+                case RESOURCE_TYPES:
+                    return new UnionIterator(postingsOf(index.resourceTypePostings, query.resourceTypes), position);
+                default:
+                    return index.rangeIndexes[attribute.ordinal()].iterator(query.lowerBounds[attribute.ordinal()],
+                                                                           query.upperBounds[attribute.ordinal()],
+                                                                           position);
+            }
+        }
+
+        private static <K> List<Posting> postingsOf(ConcurrentHashMap<K, Posting> postings, List<K> keys) {
+            List<Posting> result = new ArrayList<>(keys.size());
+            for (K key : keys) {
+                Posting posting = postings.get(key);
+                if (null != posting) {
+                    result.add(posting);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return (null == attribute) ? kind.name() : kind.name() + "(" + attribute.name() + ")";
+        }
+    }
+
+    /*
+     * Sorted set of the resourceIds having one value of an attribute.
+     */
+    private static final class Posting {
+        private final ConcurrentSkipListSet<String> resourceIds = new ConcurrentSkipListSet<>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        void add(String resourceId) {
+            if (resourceIds.add(resourceId)) {
+                size.incrementAndGet();
+            }
+        }
+
+        void remove(String resourceId) {
+            if (resourceIds.remove(resourceId)) {
+                size.decrementAndGet();
+            }
+        }
+
+        int size() {
+            return size.get();
+        }
+    }
+
+    /*
+     * Merges the postings in the order of the resourceIds, the position is the last returned resourceId.
+     */
+    private static final class UnionIterator implements PositionedIterator {
+        private final PriorityQueue<Head> heads = new PriorityQueue<>();
+        private String last;
+
+        UnionIterator(List<Posting> postings, String position) {
+            this.last = position;
+            for (Posting posting : postings) {
+                NavigableSet<String> tail = (null == position) ?
+                        posting.resourceIds : posting.resourceIds.tailSet(position, false);
+                Iterator<String> iterator = tail.iterator();
+                if (iterator.hasNext()) {
+                    heads.add(new Head(iterator.next(), iterator));
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            // skip the resources having more than one of the values
+            while (!heads.isEmpty() && null != last && heads.peek().resourceId.compareTo(last) <= 0) {
+                advance(heads.poll());
+            }
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Head head = heads.poll();
+            last = head.resourceId;
+            advance(head);
+            return last;
+        }
+
+        private void advance(Head head) {
+            if (head.iterator.hasNext()) {
+                heads.add(new Head(head.iterator.next(), head.iterator));
+            }
+        }
+
+        @Override
+        public String position() {
+            return last;
+        }
+
+        private static final class Head implements Comparable<Head> {
+            private final String resourceId;
+            private final Iterator<String> iterator;
+
+            Head(String resourceId, Iterator<String> iterator) {
+                this.resourceId = resourceId;
+                this.iterator = iterator;
+            }
+
+            @Override
+            public int compareTo(Head other) {
+                return resourceId.compareTo(other.resourceId);
+            }
+        }
+    }
+
+    /*
+     * Values of one ranged attribute, the resources without the attribute are kept in the missing set.
+     */
+    private static final class RangeIndex {
+        private final ConcurrentSkipListSet<RangeEntry> entries = new ConcurrentSkipListSet<>();
+        private final ConcurrentSkipListSet<String> missing = new ConcurrentSkipListSet<>();
+        private final AtomicInteger missingSize = new AtomicInteger();
+
+        void add(String resourceId, long value) {
+            if (value == NO_VALUE) {
+                if (missing.add(resourceId)) {
+                    missingSize.incrementAndGet();
+                }
+            } else {
+                entries.add(new RangeEntry(value, resourceId));
+            }
+        }
+
+        void remove(String resourceId, long value) {
+            if (value == NO_VALUE) {
+                if (missing.remove(resourceId)) {
+                    missingSize.decrementAndGet();
+                }
+            } else {
+                entries.remove(new RangeEntry(value, resourceId));
+            }
+        }
+
+        void clear() {
+            entries.clear();
+            missing.clear();
+            missingSize.set(0);
+        }
+
+        private NavigableSet<RangeEntry> range(long lowerBound, long upperBound) {
+            // the bounds are exclusive, "" is the lowest resourceId
+            RangeEntry from = new RangeEntry(lowerBound == Long.MAX_VALUE ? lowerBound : lowerBound + 1, "");
+            RangeEntry to = new RangeEntry(upperBound, "");
+            if (from.compareTo(to) >= 0) {
+                return Collections.emptyNavigableSet();
+            }
+            return entries.subSet(from, true, to, false);
+        }
+
+        /*
+         * Counts the candidates, stops counting at the limit.
+         */
+        long count(long lowerBound, long upperBound, long limit) {
+            long count = missingSize.get();
+            Iterator<RangeEntry> iterator = range(lowerBound, upperBound).iterator();
+            while (count < limit && iterator.hasNext()) {
+                iterator.next();
+                count++;
+            }
+            return count;
+        }
+
+        /*
+         * The entries in the range are followed by the missing resources.  The position is value:resourceId
+         * of the last returned entry or M:resourceId of the last returned missing resource.
+         */
+        PositionedIterator iterator(long lowerBound, long upperBound, String position)
+                throws IllegalArgumentException {
+            NavigableSet<RangeEntry> range = range(lowerBound, upperBound);
+            Iterator<String> missingIterator;
+            Iterator<RangeEntry> rangeIterator;
+            if (null == position) {
+                rangeIterator = range.iterator();
+                missingIterator = missing.iterator();
+            } else if (position.startsWith("M:")) {
+                rangeIterator = Collections.emptyIterator();
+                missingIterator = missing.tailSet(position.substring(2), false).iterator();
+            } else {
+                int separator = position.indexOf(':');
+                if (separator < 1) {
+                    throw new IllegalArgumentException("Invalid cursor position: " + position);
+                }
+                long value;
+                try {
+                    value = Long.parseLong(position.substring(0, separator));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid cursor position: " + position);
+                }
+                rangeIterator = range.isEmpty() ? Collections.emptyIterator() :
+                        range.tailSet(new RangeEntry(value, position.substring(separator + 1)), false).iterator();
+                missingIterator = missing.iterator();
+            }
+            return new RangeIterator(rangeIterator, missingIterator);
+        }
+
+        private static final class RangeIterator implements PositionedIterator {
+            private final Iterator<RangeEntry> rangeIterator;
+            private final Iterator<String> missingIterator;
+            private String position;
+
+            RangeIterator(Iterator<RangeEntry> rangeIterator, Iterator<String> missingIterator) {
+                this.rangeIterator = rangeIterator;
+                this.missingIterator = missingIterator;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return rangeIterator.hasNext() || missingIterator.hasNext();
+            }
+
+            @Override
+            public String next() {
+                if (rangeIterator.hasNext()) {
+                    RangeEntry entry = rangeIterator.next();
+                    position = entry.value + ":" + entry.resourceId;
+                    return entry.resourceId;
+                }
+                String resourceId = missingIterator.next();
+                position = "M:" + resourceId;
+                return resourceId;
+            }
+
+            @Override
+            public String position() {
+                return position;
+            }
+        }
+    }
+
+    private static final class RangeEntry implements Comparable<RangeEntry> {
+        private final long value;
+        private final String resourceId;
+
+        RangeEntry(long value, String resourceId) {
+            this.value = value;
+            this.resourceId = resourceId;
+        }
+
+        @Override
+        public int compareTo(RangeEntry other) {
+            int c = Long.compare(value, other.value);
+            return (c != 0) ? c : resourceId.compareTo(other.resourceId);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof RangeEntry)) {
+                return false;
+            }
+            RangeEntry other = (RangeEntry) o;
+            return value == other.value && resourceId.equals(other.resourceId);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Long.hashCode(value) + resourceId.hashCode();
+        }
+    }
+
+    /*
+     * The indexed values of one resource.
+     */
+    private static final class IndexedResource {
+        private final List<String> labels;
+        private final Integer resourceType;
+        private final long[] rangeValues = new long[RANGE_ATTRIBUTES.length];
+
+        private IndexedResource(List<String> labels, Integer resourceType) {
+            this.labels = labels;
+            this.resourceType = resourceType;
+        }
+
+        static IndexedResource of(Onem2mResource onem2mResource) {
+            Integer resourceType;
+            ResourceContentView view;
+            try {
+                resourceType = Integer.valueOf(onem2mResource.getResourceType());
+                view = ResourceContentView.of(onem2mResource);
+            } catch (IllegalArgumentException e) {
+                LOG.error("IndexedResource: invalid resource: {}", onem2mResource.getResourceId());
+                return null;
+            }
+            JSONObject json = view.getJsonObject();
+
+            List<String> labels = Collections.emptyList();
+            JSONArray labelsArray = json.optJSONArray(BaseResource.LABELS);
+            if (null != labelsArray && labelsArray.length() > 0) {
+                labels = new ArrayList<>(labelsArray.length());
+                for (int i = 0; i < labelsArray.length(); i++) {
+                    labels.add(labelsArray.opt(i).toString());
+                }
+            }
+
+            IndexedResource values = new IndexedResource(labels, resourceType);
+            values.rangeValues[RangeAttribute.CREATION_TIME.ordinal()] = timeValue(view.getCreationTime());
+            values.rangeValues[RangeAttribute.LAST_MODIFIED_TIME.ordinal()] = timeValue(view.getLastModifiedTime());
+            // the same attributes as the size conditions of FilterCriteria.matches()
+            long size = json.optInt(ResourceContainer.CURR_BYTE_SIZE, -1);
+            if (size == -1) {
+                size = json.optInt(ResourceContentInstance.CONTENT_SIZE, -1);
+            }
+            values.rangeValues[RangeAttribute.CONTENT_SIZE.ordinal()] = (size == -1) ? NO_VALUE : size;
+            return values;
+        }
+
+        private static long timeValue(String time) {
+            if (null == time || time.isEmpty()) {
+                return NO_VALUE;
+            }
+            long millis = Onem2mDateTime.toEpochMillis(time);
+            // invalid times are not indexed, FilterCriteria.matches() decides about them
+            return (millis == 0 || millis == Long.MAX_VALUE) ? NO_VALUE : millis;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2m.core.database.transactionCore;
+
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResource;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResourceBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResourceKey;
+
+/**
+ * Change of one resource published by the ResourceTreeWriter to the ResourceChangeEventBus.  The event carries
+ * an immutable snapshot of the resource taken when the change was written, so the consumers don't need to read
+ * the resource again.  The snapshot of a deleted resource holds its state before the delete.
+ */
+public final class ResourceChangeEvent {
+
+    public enum Operation {CREATE, UPDATE, DELETE}
+
+    private final long sequence;
+    private final Operation operation;
+    private final Onem2mResource resource;
+    private final long timestamp;
+
+    ResourceChangeEvent(long sequence, Operation operation, Onem2mResource resource) {
+        this.sequence = sequence;
+        this.operation = operation;
+        this.resource = resource;
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    /**
+     * @param resource the resource, possibly a mutable cache element
+     * @return immutable copy of the resource
+     */
+    static Onem2mResource snapshot(Onem2mResource resource) {
+        return new Onem2mResourceBuilder()
+                .setKey(new Onem2mResourceKey(resource.getResourceId()))
+                .setResourceId(resource.getResourceId())
+                .setName(resource.getName())
+                .setResourceType(resource.getResourceType())
+                .setParentId(resource.getParentId())
+                .setParentTargetUri(resource.getParentTargetUri())
+                .setResourceContentJsonString(resource.getResourceContentJsonString())
+                .build();
+    }
+
+    /**
+     * @return sequence number of the event on the bus
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return snapshot of the resource, the state before the delete for the DELETE events
+     */
+    public Onem2mResource getResource() {
+        return resource;
+    }
+
+    public String getResourceId() {
+        return resource.getResourceId();
+    }
+
+    /**
+     * @return time of the change in epoch millis
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
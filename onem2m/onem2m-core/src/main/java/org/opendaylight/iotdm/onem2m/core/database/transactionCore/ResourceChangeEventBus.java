@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2m.core.database.transactionCore;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.opendaylight.iotdm.onem2m.core.utils.JsonUtils;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-process bus of the resource changes.  The ResourceTreeWriter publishes an event for each created, updated
+ * and deleted resource, the consumers (plugins, TSDR, the optional datastore export) subscribe to the bus
+ * directly instead of listening to the DbTransactions written to the OPERATIONAL datastore.
+ *
+ * The events are stored in a ring of RING_SIZE slots and each subscription reads the ring on its own thread
+ * with its own sequence, so a slow consumer doesn't delay the publishers or the other consumers.  The
+ * publishers never block on the consumers, a consumer which falls behind by more than RING_SIZE events skips
+ * the overwritten events and counts them as dropped.  Nothing is published when there are no subscriptions.
+ */
+public class ResourceChangeEventBus {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResourceChangeEventBus.class);
+    public static final int RING_SIZE = 8192;
+
+    private static ResourceChangeEventBus eventBus;
+
+    private final AtomicReferenceArray<ResourceChangeEvent> ring = new AtomicReferenceArray<>(RING_SIZE);
+    // sequence of the next event, written only under the lock
+    private volatile long cursor = 0;
+    private final Object lock = new Object();
+    private int numWaiting = 0;
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    private ResourceChangeEventBus() {}
+
+    public static synchronized ResourceChangeEventBus getInstance() {
+        if (eventBus == null) {
+            eventBus = new ResourceChangeEventBus();
+        }
+        return eventBus;
+    }
+
+    /**
+     * Listener of the resource change events, it's called on the thread of its subscription.
+     */
+    public interface ResourceChangeListener {
+        void onResourceChange(ResourceChangeEvent event);
+    }
+
+    private static int index(long sequence) {
+        return (int) (sequence & (RING_SIZE - 1));
+    }
+
+    /**
+     * @return true if there is at least one subscription
+     */
+    public boolean hasSubscriptions() {
+        return !subscriptions.isEmpty();
+    }
+
+    /**
+     * Publishes the change of the resource, a snapshot of the resource is taken before this method returns.
+     * @param operation the operation
+     * @param onem2mResource the changed resource, the state before the delete for DELETE
+     */
+    public void publish(ResourceChangeEvent.Operation operation, Onem2mResource onem2mResource) {
+        if (subscriptions.isEmpty() || null == onem2mResource) {
+            return;
+        }
+        Onem2mResource snapshot = ResourceChangeEvent.snapshot(onem2mResource);
+        synchronized (lock) {
+            long sequence = cursor;
+            ring.set(index(sequence), new ResourceChangeEvent(sequence, operation, snapshot));
+            cursor = sequence + 1;
+            if (numWaiting > 0) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Subscribes the listener, it receives the events published after this call.
+     * @param name name of the subscription used in the logs and stats
+     * @param listener the listener
+     * @return the subscription, it must be closed when the listener is not needed anymore
+     */
+    public Subscription subscribe(String name, ResourceChangeListener listener) {
+        Subscription subscription = new Subscription(name, listener);
+        subscriptions.add(subscription);
+        subscription.start();
+        LOG.info("subscribe: {}", name);
+        return subscription;
+    }
+
+    public JSONObject getStats() {
+        JSONObject js = new JSONObject();
+        long published = cursor;
+        JsonUtils.put(js, "published", published);
+        JSONArray subscriptionsJson = new JSONArray();
+        for (Subscription subscription : subscriptions) {
+            JSONObject subscriptionJson = new JSONObject();
+            JsonUtils.put(subscriptionJson, "name", subscription.name);
+            JsonUtils.put(subscriptionJson, "lag", subscription.getLag());
+            JsonUtils.put(subscriptionJson, "delivered", subscription.numDelivered.sum());
+            JsonUtils.put(subscriptionJson, "dropped", subscription.numDropped.sum());
+            JsonUtils.put(subscriptionJson, "failed", subscription.numFailed.sum());
+            subscriptionsJson.put(subscriptionJson);
+        }
+        JsonUtils.put(js, "subscriptions", subscriptionsJson);
+        return js;
+    }
+
+    /**
+     * Subscription of one listener, it delivers the events to the listener on its own thread.
+     */
+    public final class Subscription implements AutoCloseable {
+        private final String name;
+        private final ResourceChangeListener listener;
+        private final LongAdder numDelivered = new LongAdder();
+        private final LongAdder numDropped = new LongAdder();
+        private final LongAdder numFailed = new LongAdder();
+        private volatile long nextSequence;
+        private volatile boolean running = true;
+        private Thread thread;
+
+        private Subscription(String name, ResourceChangeListener listener) {
+            this.name = name;
+            this.listener = listener;
+            this.nextSequence = cursor;
+        }
+
+        private void start() {
+            thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Thread.currentThread().setName("chg-evt-" + name);
+                    deliver();
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * @return number of the published events not delivered to the listener yet
+         */
+        public long getLag() {
+            return Math.max(0, cursor - nextSequence);
+        }
+
+        private void deliver() {
+            while (running) {
+                long sequence = nextSequence;
+                if (sequence >= cursor) {
+                    synchronized (lock) {
+                        numWaiting++;
+                        try {
+                            while (running && sequence >= cursor) {
+                                lock.wait();
+                            }
+                        } catch (InterruptedException e) {
+                            return;
+                        } finally {
+                            numWaiting--;
+                        }
+                    }
+                    continue;
+                }
+
+                // the slot is written before the cursor is moved so it holds this or a newer event
+                ResourceChangeEvent event = ring.get(index(sequence));
+                if (event.getSequence() != sequence) {
+                    // overwritten by the publishers, skip to the oldest event in the ring
+                    long oldest = cursor - RING_SIZE + 1;
+                    numDropped.add(oldest - sequence);
+                    nextSequence = oldest;
+                    LOG.warn("Subscription {}: dropped {} events", name, oldest - sequence);
+                    continue;
+                }
+
+                nextSequence = sequence + 1;
+                try {
+                    listener.onResourceChange(event);
+                    numDelivered.increment();
+                } catch (Exception e) {
+                    numFailed.increment();
+                    LOG.error("Subscription {}: listener failed for resource: {}, e: {}",
+                              name, event.getResourceId(), e.toString(), e);
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            running = false;
+            subscriptions.remove(this);
+            synchronized (lock) {
+                lock.notifyAll();
+            }
+            LOG.info("close: subscription {}", name);
+        }
+    }
+}
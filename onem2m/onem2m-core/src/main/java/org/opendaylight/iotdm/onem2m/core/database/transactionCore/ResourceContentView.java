@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2m.core.database.transactionCore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.opendaylight.iotdm.onem2m.core.Onem2m;
+import org.opendaylight.iotdm.onem2m.core.resource.BaseResource;
+import org.opendaylight.iotdm.onem2m.core.resource.ResourceSubscription;
+import org.opendaylight.iotdm.onem2m.core.utils.Onem2mDateTime;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parsed JSON content of a resource. The content is parsed once and the view is cached by the Onem2mResourceElem
+ * until the content changes, so the hot paths read the attributes without parsing the JSON string again.
+ * The frequently used attributes are extracted when the view is created.
+ *
+ * The view is shared by all readers of the resource and must not be modified. The JSONObject returned by
+ * getJsonObject() is read-only as well, its modification methods throw UnsupportedOperationException.
+ * Use copyJsonObject() to get a copy which can be modified, e.g. written back as a new content string or
+ * handed over to a plugin.
+ */
+public final class ResourceContentView {
+    private static final Logger LOG = LoggerFactory.getLogger(ResourceContentView.class);
+    private static final String SUBSCRIPTION_IDS_KEY = "c:" + Onem2m.ResourceType.SUBSCRIPTION;
+
+    private final String jsonString;
+    private final JSONObject json;
+    private final String expirationTime;
+    private final long expirationTimeMillis;
+    private final String creationTime;
+    private final String lastModifiedTime;
+    private final int stateTag;
+    private final List<String> accessControlPolicyIds;
+    private final List<String> subscriptionIds;
+    private final List<String> notificationEventTypes;
+
+    /**
+     * @param jsonString JSON content of the resource
+     * @throws IllegalArgumentException if the content is not valid JSON
+     */
+    public ResourceContentView(String jsonString) {
+        JSONObject json;
+        try {
+            json = new JSONObject(jsonString);
+        } catch (JSONException | NullPointerException e) {
+            LOG.error("Invalid JSON {}", jsonString, e);
+            throw new IllegalArgumentException("Invalid JSON", e);
+        }
+        this.json = ReadOnlyJson.of(json);
+        this.jsonString = jsonString;
+        this.expirationTime = json.optString(BaseResource.EXPIRATION_TIME);
+        this.expirationTimeMillis = Onem2mDateTime.toEpochMillis(expirationTime);
+        this.creationTime = json.optString(BaseResource.CREATION_TIME, null);
+        this.lastModifiedTime = json.optString(BaseResource.LAST_MODIFIED_TIME, null);
+        this.stateTag = json.optInt(BaseResource.STATE_TAG, -1);
+        this.accessControlPolicyIds = json.has(BaseResource.ACCESS_CONTROL_POLICY_IDS) ?
+                toStringList(json.optJSONArray(BaseResource.ACCESS_CONTROL_POLICY_IDS)) : null;
+        this.subscriptionIds = toStringList(json.optJSONArray(SUBSCRIPTION_IDS_KEY));
+
+        JSONObject enc = json.optJSONObject(ResourceSubscription.EVENT_NOTIFICATION_CRITERIA);
+        this.notificationEventTypes = (null == enc) ? null :
+                toStringList(enc.optJSONArray(ResourceSubscription.NOTIFICATION_EVENT_TYPE));
+    }
+
+    /**
+     * Returns the content view of the resource, the view cached by the resource is used if available.
+     *
+     * @param resource the resource
+     * @return parsed content of the resource
+     * @throws IllegalArgumentException if the content is not valid JSON
+     */
+    public static ResourceContentView of(Onem2mResource resource) {
+        if (resource instanceof Onem2mResourceElem) {
+            return ((Onem2mResourceElem) resource).getResourceContentView();
+        }
+        return new ResourceContentView(resource.getResourceContentJsonString());
+    }
+
+    private static List<String> toStringList(JSONArray jsonArray) {
+        if (null == jsonArray || jsonArray.length() == 0) {
+            return Collections.emptyList();
+        }
+        List<String> list = new ArrayList<>(jsonArray.length());
+        for (int i = 0; i < jsonArray.length(); i++) {
+            list.add(jsonArray.optString(i));
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    public String getJsonString() {
+        return jsonString;
+    }
+
+    /**
+     * @return the parsed content shared by all readers, read-only including the nested objects and arrays
+     */
+    public JSONObject getJsonObject() {
+        return json;
+    }
+
+    /**
+     * @return new JSONObject parsed from the content, the caller can modify it
+     */
+    public JSONObject copyJsonObject() {
+        return new JSONObject(jsonString);
+    }
+
+    /**
+     * @return expiration time or empty string if not set
+     */
+    public String getExpirationTime() {
+        return expirationTime;
+    }
+
+    /**
+     * @return expiration time in epoch millis, Long.MAX_VALUE if the resource never expires
+     */
+    public long getExpirationTimeMillis() {
+        return expirationTimeMillis;
+    }
+
+    /**
+     * @param nowMillis current time in epoch millis
+     * @return true if the resource has not expired yet
+     */
+    public boolean isAlive(long nowMillis) {
+        return expirationTimeMillis > nowMillis;
+    }
+
+    public String getCreationTime() {
+        return creationTime;
+    }
+
+    public String getLastModifiedTime() {
+        return lastModifiedTime;
+    }
+
+    /**
+     * @return state tag or -1 if the resource doesn't have the state tag
+     */
+    public int getStateTag() {
+        return stateTag;
+    }
+
+    /**
+     * @return accessControlPolicyIDs or null if the attribute is not set
+     */
+    public List<String> getAccessControlPolicyIds() {
+        return accessControlPolicyIds;
+    }
+
+    /**
+     * @return resourceIds of the child subscriptions of the resource
+     */
+    public List<String> getSubscriptionIds() {
+        return subscriptionIds;
+    }
+
+    /**
+     * @return notificationEventTypes of the subscription resource or null if the eventNotificationCriteria
+     * attribute is not set
+     */
+    public List<String> getNotificationEventTypes() {
+        return notificationEventTypes;
+    }
+}
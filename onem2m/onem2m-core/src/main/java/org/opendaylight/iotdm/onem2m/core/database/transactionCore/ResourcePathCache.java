@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2m.core.database.transactionCore;
+
+import com.google.common.cache.CacheBuilder;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import org.json.JSONObject;
+import org.opendaylight.iotdm.onem2m.core.utils.JsonUtils;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of the resolved structured URIs.  The key is the normalized CSE-relative hierarchical path of a
+ * resource (cseBaseName/name1/.../nameN) and the value is the resourceId of the resource, or no resourceId
+ * if the path doesn't resolve to any resource, so the repeated requests to the same missing resource don't
+ * walk the tree again.  A hit costs one lookup regardless of the depth of the resource in the tree.
+ *
+ * The ResourceTreeWriter keeps the cache consistent: a created resource invalidates the negative entry of its
+ * path and a resource leaving the tree invalidates its path.  The entries of the descendants of a removed
+ * resource are not removed, that would cost a scan of the whole cache per removal.  They are invalidated
+ * lazily: the resourceId of an entry is always checked by the lookup of the resource, a missing resource
+ * makes the entry stale and the path is resolved again, and the negative entries stay valid because the
+ * removal of a subtree doesn't create any path.  The resource names are write-once and the resourceIds are
+ * never reused, so a cached resourceId can't point to another resource.
+ *
+ * A resolution racing with a create or a delete of the same path must not cache its result.  The resolver
+ * takes a stamp of the path before it walks the tree and the result is kept only if the stamp hasn't changed
+ * until the entry is put.  The stamps are kept per stripe of the paths, the removal of a subtree changes the
+ * stamps of all paths, so a resolution racing with the removal doesn't cache a path of the removed subtree.
+ */
+public class ResourcePathCache {
+    private static final Logger LOG = LoggerFactory.getLogger(ResourcePathCache.class);
+
+    public static final int MAX_ENTRIES = 100000;
+    private static final int NUM_STRIPES = 1024;
+
+    private final com.google.common.cache.Cache<String, Entry> pathCache;
+    private final AtomicLongArray stripeStamps = new AtomicLongArray(NUM_STRIPES);
+    private final AtomicLong subtreeGeneration = new AtomicLong();
+    private final LongAdder numHits = new LongAdder();
+    private final LongAdder numNegativeHits = new LongAdder();
+    private final LongAdder numMisses = new LongAdder();
+    private final LongAdder numStale = new LongAdder();
+    private final LongAdder numInvalidated = new LongAdder();
+
+    public ResourcePathCache() {
+        this(MAX_ENTRIES);
+    }
+
+    public ResourcePathCache(int maxEntries) {
+        this.pathCache = CacheBuilder.<String, Entry>newBuilder()
+                .maximumSize(maxEntries)
+                .build();
+    }
+
+    /**
+     * Resolved path, the resourceId is null if the path doesn't resolve to any resource.
+     */
+    public static final class Entry {
+        private static final Entry NOT_FOUND = new Entry(null);
+
+        private final String resourceId;
+
+        private Entry(String resourceId) {
+            this.resourceId = resourceId;
+        }
+
+        public boolean isNotFound() {
+            return null == resourceId;
+        }
+
+        public String getResourceId() {
+            return resourceId;
+        }
+    }
+
+    /**
+     * @param parentTargetUri hierarchical URI of the parent as stored in the resource, empty for the cseBase
+     * @param name name of the resource
+     * @return the normalized path of the resource
+     */
+    public static String pathOf(String parentTargetUri, String name) {
+        if (null == parentTargetUri || parentTargetUri.isEmpty()) {
+            return name;
+        }
+        return parentTargetUri + "/" + name;
+    }
+
+    private int stripe(String path) {
+        int h = path.hashCode();
+        return (h ^ (h >>> 16)) & (NUM_STRIPES - 1);
+    }
+
+    /**
+     * Takes the stamp of the path before the path is resolved.
+     * @param path the path
+     * @return the stamp to be passed to the put methods
+     */
+    public long stamp(String path) {
+        // both counters only grow so the sum changes whenever any of them changes
+        return stripeStamps.get(stripe(path)) + subtreeGeneration.get();
+    }
+
+    /**
+     * @param path the path
+     * @return the cached entry or null
+     */
+    public Entry lookup(String path) {
+        Entry entry = pathCache.getIfPresent(path);
+        if (null == entry) {
+            numMisses.increment();
+        } else if (entry.isNotFound()) {
+            numNegativeHits.increment();
+        } else {
+            numHits.increment();
+        }
+        return entry;
+    }
+
+    /**
+     * Called when the resource of a cached path is not found anymore, the path is resolved again.
+     * @param path the path
+     */
+    public void stale(String path) {
+        numStale.increment();
+        pathCache.invalidate(path);
+    }
+
+    public void putResolved(String path, String resourceId, long stamp) {
+        put(path, new Entry(resourceId), stamp);
+    }
+
+    public void putNotFound(String path, long stamp) {
+        put(path, Entry.NOT_FOUND, stamp);
+    }
+
+    private void put(String path, Entry entry, long stamp) {
+        if (stamp != stamp(path)) {
+            return;
+        }
+        pathCache.put(path, entry);
+        // the path might have been created or removed after the first check, the entry must not outlive it
+        if (stamp != stamp(path)) {
+            pathCache.invalidate(path);
+        }
+    }
+
+    /**
+     * Called by the writer after the resource has been added to the tree.
+     * @param onem2mResource the created resource
+     */
+    public void resourceCreated(Onem2mResource onem2mResource) {
+        String path = pathOf(onem2mResource.getParentTargetUri(), onem2mResource.getName());
+        stripeStamps.incrementAndGet(stripe(path));
+        pathCache.invalidate(path);
+    }
+
+    /**
+     * Called by the writer after the resource has been removed from the tree.
+     * @param onem2mResource the removed resource
+     */
+    public void resourceRemoved(Onem2mResource onem2mResource) {
+        String path = pathOf(onem2mResource.getParentTargetUri(), onem2mResource.getName());
+        if (isLeaf(onem2mResource)) {
+            stripeStamps.incrementAndGet(stripe(path));
+            pathCache.invalidate(path);
+            numInvalidated.increment();
+            return;
+        }
+
+        // the entries of the descendants are not searched for, they are found stale when they are used
+        subtreeGeneration.incrementAndGet();
+        pathCache.invalidate(path);
+        numInvalidated.increment();
+        LOG.trace("resourceRemoved: invalidated subtree: {}", path);
+    }
+
+    private static boolean isLeaf(Onem2mResource onem2mResource) {
+        try {
+            return Cache.isLeafResourceType(Integer.valueOf(onem2mResource.getResourceType()));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    public void clear() {
+        subtreeGeneration.incrementAndGet();
+        pathCache.invalidateAll();
+    }
+
+    public JSONObject getStats() {
+        JSONObject js = new JSONObject();
+        long hits = numHits.sum();
+        long negativeHits = numNegativeHits.sum();
+        long lookups = hits + negativeHits + numMisses.sum();
+        JsonUtils.put(js, "size", pathCache.size());
+        JsonUtils.put(js, "hits", hits);
+        JsonUtils.put(js, "negative_hits", negativeHits);
+        JsonUtils.put(js, "misses", numMisses.sum());
+        JsonUtils.put(js, "stale", numStale.sum());
+        JsonUtils.put(js, "invalidated", numInvalidated.sum());
+        JsonUtils.put(js, "hit_ratio", lookups == 0 ? 0.0 : (double) (hits + negativeHits) / lookups);
+        return js;
+    }
+}
@@ -36,17 +36,30 @@ public class ResourceTreeReader {
     private ReadOnlyCache cache;
     private DaoResourceTreeReader daoResourceTreeReader;
     private BGDeleteProcessor BGDeleteProcessor;
+    private ResourcePathCache resourcePathCache;
+    private ResourceAttributeIndex resourceAttributeIndex;
 
-    public ResourceTreeReader(Cache cache, DaoResourceTreeReader daoResourceTreeReader, BGDeleteProcessor BGDeleteProcessor) {
+    public ResourceTreeReader(Cache cache, DaoResourceTreeReader daoResourceTreeReader, BGDeleteProcessor BGDeleteProcessor,
+                              ResourcePathCache resourcePathCache, ResourceAttributeIndex resourceAttributeIndex) {
         this.cache = cache;
         this.daoResourceTreeReader = daoResourceTreeReader;
         this.BGDeleteProcessor = BGDeleteProcessor;
+        this.resourcePathCache = resourcePathCache;
+        this.resourceAttributeIndex = resourceAttributeIndex;
     }
 
     public BGDeleteProcessor getBgDp() {
         return BGDeleteProcessor;
     }
 
+    public ResourcePathCache getResourcePathCache() {
+        return resourcePathCache;
+    }
+
+    public ResourceAttributeIndex getResourceAttributeIndex() {
+        return resourceAttributeIndex;
+    }
+
     /**
      * Gwet the cse from the db store using its key ie. the cseName
      *
@@ -144,6 +157,16 @@ public class ResourceTreeReader {
         return cache.retrieveResourceById(new Onem2mResourceKey(resourceId));
     }
 
+    /**
+     * Retrieve the index of the contentInstances of the container
+     *
+     * @param containerResourceId the container resource id
+     * @return the index or null if there's no such container
+     */
+    public ContainerCinIndex retrieveContainerCinIndex(String containerResourceId) {
+        return cache.retrieveContainerCinIndex(containerResourceId);
+    }
+
     /**
      * Retrieve the child using its resource name
      *
@@ -0,0 +1,327 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2m.core.database.transactionCore;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import org.json.JSONObject;
+import org.opendaylight.iotdm.onem2m.core.Onem2m;
+import org.opendaylight.iotdm.onem2m.core.database.Onem2mDb;
+import org.opendaylight.iotdm.onem2m.core.database.dao.DaoResourceTreeReader;
+import org.opendaylight.iotdm.onem2m.core.rest.ResourceExpiryProcessor;
+import org.opendaylight.iotdm.onem2m.core.utils.JsonUtils;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.Onem2mCseList;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.cse.list.Onem2mCse;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mParentChildListKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResource;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResourceKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.onem2m.parent.child.list.Onem2mParentChild;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rebuilds the state derived from the resource tree kept by the DAO plugin across restarts. It runs in the
+ * background when the DAO plugin is registered, the requests are served in the meantime:
+ *
+ * 1. the cseBases and the AE-ID mappings of their registered AEs are loaded into the cache,
+ * 2. the resources of the hot set snapshot are loaded into the cache in parallel, so the resources accessed
+ *    before the restart are served from the memory as soon as possible,
+ * 3. the resource tree is walked in parallel and each resource is passed to the ResourceAttributeIndex, the
+ *    ResourceExpiryProcessor and the SubscriptionIndex, the contentInstance index (cni, cbs) of each container
+ *    is rebuilt from the contentInstances read by the walk and cached with the container.
+ *
+ * The resources are read from the DAO directly so the walk doesn't evict the hot set from the cache. The time of
+ * each step is logged and reported by the stats, the steady state is reached when all steps are done. The hot set
+ * snapshot is written periodically once the hot set has been loaded.
+ */
+public class ResourceTreeRecovery {
+    private static final Logger LOG = LoggerFactory.getLogger(ResourceTreeRecovery.class);
+
+    // number of resources visited by one task of the walk, bigger lists are split between the threads
+    private static final int WALK_BATCH_SIZE = 64;
+    private static final String CONTAINER_RESOURCE_TYPE = Integer.toString(Onem2m.ResourceType.CONTAINER);
+    private static final String CONTENT_INSTANCE_RESOURCE_TYPE =
+            Integer.toString(Onem2m.ResourceType.CONTENT_INSTANCE);
+
+    private final Cache cache;
+    private final DaoResourceTreeReader daoResourceTreeReader;
+    private final ResourceAttributeIndex resourceAttributeIndex;
+    private final HotSetSnapshot hotSetSnapshot;
+    private final ForkJoinPool walkPool;
+    private final CountDownLatch completed = new CountDownLatch(1);
+    private Thread recoveryThread;
+    private volatile boolean running = false;
+    private volatile boolean hotSetLoaded = false;
+
+    private final LongAdder numResources = new LongAdder();
+    private final LongAdder numContainers = new LongAdder();
+    private final LongAdder numCachedContainers = new LongAdder();
+    private volatile int numCseBases = 0;
+    private volatile int numHotSetResources = 0;
+    private volatile long startMillis = -1;
+    private volatile long hotSetMillis = -1;
+    private volatile long walkMillis = -1;
+    private volatile long steadyStateMillis = -1;
+
+    /**
+     * @param cache the cache of the transaction core
+     * @param daoResourceTreeReader reader of the DAO plugin
+     * @param resourceAttributeIndex the attribute index rebuilt by the walk
+     * @param hotSetFile file of the hot set snapshot, null disables the snapshot
+     * @param hotSetSize max number of resources in the hot set
+     * @param hotSetSnapshotIntervalSeconds period of the hot set snapshot writes
+     * @param numThreads number of threads walking the resource tree
+     */
+    ResourceTreeRecovery(Cache cache, DaoResourceTreeReader daoResourceTreeReader,
+                         ResourceAttributeIndex resourceAttributeIndex, Path hotSetFile, int hotSetSize,
+                         long hotSetSnapshotIntervalSeconds, int numThreads) {
+        this.cache = cache;
+        this.daoResourceTreeReader = daoResourceTreeReader;
+        this.resourceAttributeIndex = resourceAttributeIndex;
+        this.hotSetSnapshot = (null == hotSetFile || hotSetSize <= 0) ? null :
+                new HotSetSnapshot(hotSetFile, hotSetSize, hotSetSnapshotIntervalSeconds, cache);
+        this.walkPool = new ForkJoinPool(Math.max(1, numThreads), pool -> {
+            ForkJoinWorkerThread worker = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            worker.setName("res-tree-recovery-" + worker.getPoolIndex());
+            return worker;
+        }, null, false);
+    }
+
+    synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        recoveryThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Thread.currentThread().setName("res-tree-recovery");
+                recover();
+            }
+        });
+        recoveryThread.setDaemon(true);
+        recoveryThread.start();
+    }
+
+    /**
+     * Stops the recovery, the hot set snapshot is written if the hot set has been loaded, otherwise the snapshot
+     * of the previous run is kept.
+     */
+    synchronized void stop() {
+        running = false;
+        if (null != recoveryThread) {
+            recoveryThread.interrupt();
+            recoveryThread = null;
+        }
+        walkPool.shutdownNow();
+        if (null != hotSetSnapshot) {
+            hotSetSnapshot.stop(hotSetLoaded);
+        }
+    }
+
+    /**
+     * Waits until the state derived from the resource tree has been rebuilt.
+     *
+     * @param timeout max time to wait
+     * @param unit unit of the timeout
+     * @return true if the steady state has been reached, false if the recovery has been stopped or timed out
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitSteadyState(long timeout, TimeUnit unit) throws InterruptedException {
+        return completed.await(timeout, unit) && steadyStateMillis >= 0;
+    }
+
+    private void recover() {
+        startMillis = System.currentTimeMillis();
+        try {
+            List<Onem2mCse> cseList = loadCseBases();
+
+            loadHotSet();
+            if (null != hotSetSnapshot) {
+                hotSetSnapshot.start();
+            }
+
+            long then = System.currentTimeMillis();
+            resourceAttributeIndex.startRebuild();
+            List<String> cseResourceIds = cseList.stream().map(Onem2mCse::getResourceId).collect(Collectors.toList());
+            walkPool.invoke(new WalkTask(cseResourceIds));
+            resourceAttributeIndex.finishRebuild(running);
+            if (!running) {
+                return;
+            }
+            walkMillis = System.currentTimeMillis() - then;
+
+            steadyStateMillis = System.currentTimeMillis() - startMillis;
+            LOG.info("recover: steady state reached in {} ms: cseBases: {}, hot set: {} resources in {} ms, " +
+                     "resource tree: {} resources, {} containers ({} cached) walked in {} ms by {} threads",
+                     steadyStateMillis, numCseBases, numHotSetResources, hotSetMillis, numResources.sum(),
+                     numContainers.sum(), numCachedContainers.sum(), walkMillis, walkPool.getParallelism());
+        } catch (Exception e) {
+            if (running) {
+                LOG.error("recover: failed to rebuild the state of the resource tree: {}", e.toString(), e);
+            }
+            resourceAttributeIndex.finishRebuild(false);
+        } finally {
+            completed.countDown();
+        }
+    }
+
+    private List<Onem2mCse> loadCseBases() {
+        List<Onem2mCse> cseBases = Collections.emptyList();
+        cache.beginPreloadCseBases();
+        try {
+            Onem2mCseList cseList = daoResourceTreeReader.retrieveFullCseList();
+            if (null != cseList && null != cseList.getOnem2mCse()) {
+                cseBases = cseList.getOnem2mCse();
+            }
+        } finally {
+            cache.preloadCseBases(cseBases);
+        }
+        numCseBases = cseBases.size();
+        return cseBases;
+    }
+
+    private void loadHotSet() throws InterruptedException, ExecutionException {
+        if (null == hotSetSnapshot) {
+            return;
+        }
+        long then = System.currentTimeMillis();
+        List<String> resourceIds = hotSetSnapshot.read();
+        // the parallel stream runs in the walk pool
+        numHotSetResources = walkPool.submit(() -> (int) resourceIds.parallelStream()
+                                                                    .filter(resourceId -> running)
+                                                                    .filter(cache::prefill)
+                                                                    .count()).get();
+        hotSetMillis = System.currentTimeMillis() - then;
+        hotSetLoaded = true;
+        LOG.info("loadHotSet: {} of {} resources of the hot set loaded in {} ms", numHotSetResources,
+                 resourceIds.size(), hotSetMillis);
+    }
+
+    private void recovered(Onem2mResource onem2mResource) {
+        numResources.increment();
+        resourceAttributeIndex.recovered(onem2mResource);
+        ResourceExpiryProcessor.getInstance().recovered(onem2mResource);
+        SubscriptionIndex subscriptionIndex = Onem2mDb.getInstance().getSubscriptionIndex();
+        if (null != subscriptionIndex) {
+            // loads the subscriptions of the subscribed resources
+            subscriptionIndex.getSubscriptions(onem2mResource);
+        }
+    }
+
+    /*
+     * Visits the resource and returns the resourceIds of its children to be visited. The contentInstances of
+     * a container are visited with the container because their index is rebuilt from them.
+     */
+    private List<String> visit(String resourceId) {
+        Onem2mResourceElem resource = daoResourceTreeReader.retrieveResourceById(new Onem2mResourceKey(resourceId));
+        if (null == resource) {
+            return Collections.emptyList();
+        }
+        if (CONTENT_INSTANCE_RESOURCE_TYPE.equals(resource.getResourceType())) {
+            recovered(resource);
+            return Collections.emptyList();
+        }
+
+        List<Onem2mParentChild> children =
+                daoResourceTreeReader.retrieveParentChildList(new Onem2mParentChildListKey(resourceId));
+        if (null == children) {
+            children = Collections.emptyList();
+        }
+        if (!CONTAINER_RESOURCE_TYPE.equals(resource.getResourceType())) {
+            recovered(resource);
+            return children.stream().map(Onem2mParentChild::getResourceId).collect(Collectors.toList());
+        }
+
+        List<Onem2mResource> childResources = children.parallelStream()
+                .map(child -> (Onem2mResource) daoResourceTreeReader.retrieveResourceById(
+                        new Onem2mResourceKey(child.getResourceId())))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        List<Onem2mResource> contentInstances = new ArrayList<>(childResources.size());
+        List<String> otherChildren = new ArrayList<>();
+        for (Onem2mResource child : childResources) {
+            if (CONTENT_INSTANCE_RESOURCE_TYPE.equals(child.getResourceType())) {
+                contentInstances.add(child);
+                recovered(child);
+            } else {
+                otherChildren.add(child.getResourceId());
+            }
+        }
+
+        // the container is indexed with the cni and cbs of the rebuilt index
+        resource.setContainerCinIndex(ContainerCinIndex.load(resource.getResourceContentJsonString(),
+                                                             contentInstances));
+        recovered(resource);
+        numContainers.increment();
+        if (cache.preloadContainer(resource)) {
+            numCachedContainers.increment();
+        }
+        return otherChildren;
+    }
+
+    private final class WalkTask extends RecursiveAction {
+        private final List<String> resourceIds;
+
+        private WalkTask(List<String> resourceIds) {
+            this.resourceIds = resourceIds;
+        }
+
+        @Override
+        protected void compute() {
+            if (resourceIds.size() > WALK_BATCH_SIZE) {
+                int half = resourceIds.size() / 2;
+                invokeAll(new WalkTask(resourceIds.subList(0, half)),
+                          new WalkTask(resourceIds.subList(half, resourceIds.size())));
+                return;
+            }
+
+            List<WalkTask> childTasks = new ArrayList<>();
+            for (String resourceId : resourceIds) {
+                if (!running) {
+                    return;
+                }
+                List<String> childResourceIds = visit(resourceId);
+                if (!childResourceIds.isEmpty()) {
+                    childTasks.add(new WalkTask(childResourceIds));
+                }
+            }
+            invokeAll(childTasks);
+        }
+    }
+
+    public JSONObject getStats() {
+        JSONObject js = new JSONObject();
+        JsonUtils.put(js, "running", running);
+        JsonUtils.put(js, "cse_bases", numCseBases);
+        JsonUtils.put(js, "hot_set_resources", numHotSetResources);
+        JsonUtils.put(js, "hot_set_ms", hotSetMillis);
+        JsonUtils.put(js, "walked_resources", numResources.sum());
+        JsonUtils.put(js, "walked_containers", numContainers.sum());
+        JsonUtils.put(js, "cached_containers", numCachedContainers.sum());
+        JsonUtils.put(js, "walk_ms", walkMillis);
+        JsonUtils.put(js, "steady_state_ms", steadyStateMillis);
+        if (null != hotSetSnapshot) {
+            JsonUtils.put(js, "snapshot_size", hotSetSnapshot.getLastWriteSize());
+            JsonUtils.put(js, "snapshot_age_ms", hotSetSnapshot.getLastWriteMillis() < 0 ? -1 :
+                    System.currentTimeMillis() - hotSetSnapshot.getLastWriteMillis());
+        }
+        return js;
+    }
+}
@@ -8,15 +8,20 @@
 
 package org.opendaylight.iotdm.onem2m.core.database.transactionCore;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import org.opendaylight.iotdm.onem2m.core.Onem2m;
 import org.opendaylight.iotdm.onem2m.core.database.dao.DaoResourceTreeWriter;
 import org.opendaylight.iotdm.onem2m.core.rest.utils.RequestPrimitive;
-import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.db.transactions.DbTransaction;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * This class contain static functions invoked by the Onem2mDb class.  They are turn invoke the data store API
@@ -29,13 +34,21 @@ public class ResourceTreeWriter implements Closeable {
     private WriteOnlyCache cache;
     private ResourceTreeReader resourceTreeReader;
     private DaoResourceTreeWriter daoWriter;
-    private DbNotifier dbNotifier;
-
-    public ResourceTreeWriter(WriteOnlyCache cache, DaoResourceTreeWriter daoWriter, ResourceTreeReader resourceTreeReader, DbNotifier dbNotifier) {
+    private ResourceChangeEventBus eventBus;
+    private ResourcePathCache resourcePathCache;
+    private ResourceAttributeIndex resourceAttributeIndex;
+    // updates of the cache, indexes and subscribers applied when the transaction is committed
+    private final Map<Object, List<Runnable>> pendingUpdates = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    public ResourceTreeWriter(WriteOnlyCache cache, DaoResourceTreeWriter daoWriter, ResourceTreeReader resourceTreeReader,
+                              ResourceChangeEventBus eventBus, ResourcePathCache resourcePathCache,
+                              ResourceAttributeIndex resourceAttributeIndex) {
         this.cache = cache;
         this.resourceTreeReader = resourceTreeReader;
         this.daoWriter = daoWriter;
-        this.dbNotifier = dbNotifier;
+        this.eventBus = eventBus;
+        this.resourcePathCache = resourcePathCache;
+        this.resourceAttributeIndex = resourceAttributeIndex;
     }
 
     @Override
@@ -80,44 +93,89 @@ public class ResourceTreeWriter implements Closeable {
         return daoWriter.startTransaction();
     }
 
+    public ListenableFuture<Void> submitWriteTransaction(Object transaction) {
+        return daoWriter.submitTransaction(transaction);
+    }
+
+    /**
+     * Waits for the commit of the transaction and applies the updates of the cache, indexes and subscribers
+     * of its writes if it has been committed successfully, drops them otherwise.
+     *
+     * @param transaction transaction returned by startWriteTransaction()
+     * @return true if successfully committed
+     */
     public boolean endWriteTransaction(Object transaction) {
-        return daoWriter.endTransaction(transaction);
+        boolean committed = daoWriter.endTransaction(transaction);
+        List<Runnable> updates = null == transaction ? null : pendingUpdates.remove(transaction);
+        if (null == updates) {
+            return committed;
+        }
+        if (!committed) {
+            LOG.error("endWriteTransaction: commit failed, dropping {} updates of the cache", updates.size());
+            return false;
+        }
+        for (Runnable update : updates) {
+            update.run();
+        }
+        return true;
     }
 
     /**
-     * Add a resource to the data store
+     * Runs the action when the writes of the transaction are committed, right away if there is no transaction
+     * because the writes without transaction are committed when they return.
      *
+     * @param transaction transaction of the writes, can be null
+     * @param action      action run after the commit
+     */
+    public void afterCommit(Object transaction, Runnable action) {
+        if (null == transaction) {
+            action.run();
+            return;
+        }
+        pendingUpdates.computeIfAbsent(transaction, t -> new ArrayList<>()).add(action);
+    }
+
+    /**
+     * Add a resource to the data store, the resource is cached and published when the transaction is committed
+     *
+     * @param transaction      transaction of the write, null to write right away
      * @param onem2mRequest    request
      * @param parentResourceId id of the parent resource
      * @param resourceType     resourceType of the resource
-     * @return this new resource
+     * @return true if the write has been accepted by the data store
      */
-    public Onem2mResource createResource(Object transaction, RequestPrimitive onem2mRequest,
-                                         String parentResourceId, Integer resourceType) {
+    public boolean createResource(Object transaction, RequestPrimitive onem2mRequest,
+                                  String parentResourceId, Integer resourceType) {
         if (!daoWriter.createResource(transaction, onem2mRequest, parentResourceId, resourceType)) {
             LOG.error("createResource: Could not create resource db");
 
-            return null;
-        }
-
-        Onem2mResource ret = cache.createResource(
-                onem2mRequest.getResourceId(),
-                onem2mRequest.getResourceName(),
-                onem2mRequest.getJsonResourceContentString(),
-                parentResourceId,
-                resourceType,
-                onem2mRequest.getParentTargetUri());
-        if (ret == null) {
-            LOG.error("createResource: Could not create resource inRam");
-            return null;
+            return false;
         }
 
-        dbNotifier.enqueueDbOperation(DbTransaction.Operation.CREATE, onem2mRequest.getResourceId());
+        final String resourceId = onem2mRequest.getResourceId();
+        final String resourceName = onem2mRequest.getResourceName();
+        final String jsonContent = onem2mRequest.getJsonResourceContentString();
+        final String parentTargetUri = onem2mRequest.getParentTargetUri();
+        afterCommit(transaction, () -> {
+            Onem2mResource ret = cache.createResource(resourceId, resourceName, jsonContent,
+                                                      parentResourceId, resourceType, parentTargetUri);
+            if (ret == null) {
+                LOG.error("createResource: Could not create resource inRam: {}", resourceId);
+                return;
+            }
+
+            resourcePathCache.resourceCreated(ret);
+            resourceAttributeIndex.resourceCreatedOrUpdated(ret);
+            eventBus.publish(ResourceChangeEvent.Operation.CREATE, ret);
+        });
 
-        return ret;
+        return true;
     }
 
     /**
+     * The cached content is updated and published when the transaction is committed
+     *
+     * @param transaction         transaction of the write, null to write right away
      * @param resourceId          this resource
      * @param jsonResourceContent serialized JSON object
      */
@@ -127,10 +185,50 @@ public class ResourceTreeWriter implements Closeable {
             return false;
         }
 
-        cache.updateJsonResourceContentString(resourceId, jsonResourceContent);
+        afterCommit(transaction, () -> {
+            cache.updateJsonResourceContentString(resourceId, jsonResourceContent);
+
+            Onem2mResource onem2mResource = resourceTreeReader.retrieveResourceById(resourceId);
+            if (null != onem2mResource) {
+                resourceAttributeIndex.resourceCreatedOrUpdated(onem2mResource);
+                eventBus.publish(ResourceChangeEvent.Operation.UPDATE, onem2mResource);
+            }
+        });
+
+        return true;
+    }
 
-        dbNotifier.enqueueDbOperation(DbTransaction.Operation.UPDATE, resourceId);
+    /**
+     * The container's cni, cbs, lt and st kept by its contentInstance index have been changed without writing
+     * the container's content, the indexed attributes of the container are updated when the transaction is
+     * committed.
+     *
+     * @param transaction         transaction of the contentInstance write, can be null
+     * @param containerResourceId the container
+     */
+    public void containerCinIndexUpdated(Object transaction, String containerResourceId) {
+        afterCommit(transaction, () -> {
+            Onem2mResource container = resourceTreeReader.retrieveResourceById(containerResourceId);
+            if (null != container) {
+                resourceAttributeIndex.resourceCreatedOrUpdated(container);
+            }
+        });
+    }
 
+    /**
+     * Writes the container's content including the cni, cbs, lt and st kept by its contentInstance index.
+     * The attributes read from the cache don't change so the indexes aren't updated and no update is published.
+     *
+     * @param containerResourceId the container
+     * @param jsonResourceContent the container's content overlaid by its index
+     * @return true if the write has been accepted by the data store
+     */
+    public boolean persistContainerCinIndex(String containerResourceId, String jsonResourceContent) {
+        if (!daoWriter.updateJsonResourceContentString(null, containerResourceId, jsonResourceContent)) {
+            LOG.error("persistContainerCinIndex: DB could not write container: {}", containerResourceId);
+            return false;
+        }
+        cache.updateJsonResourceContentString(containerResourceId, jsonResourceContent);
         return true;
     }
 
@@ -141,6 +239,9 @@ public class ResourceTreeWriter implements Closeable {
     public boolean moveParentChildLinkToDeleteParent(String oldParentResourceId,
                                                      String childResourceName, String childResourceId) {
 
+        // the resolved paths of the resource and its descendants are invalidated once it's out of the tree
+        Onem2mResource onem2mResource = resourceTreeReader.retrieveResourceById(childResourceId);
+
         if (!daoWriter.moveParentChildLink(childResourceId, childResourceName,
                                            oldParentResourceId, Onem2m.SYS_DELETE_RESOURCE_ID)) {
             LOG.error("moveParentChildLinkToDeleteParent: DB could not perform operation: resourceId:{}",
@@ -155,6 +256,11 @@ public class ResourceTreeWriter implements Closeable {
             return false;
         }
 
+        if (null != onem2mResource) {
+            resourcePathCache.resourceRemoved(onem2mResource);
+            resourceAttributeIndex.resourceRemoved(onem2mResource, resourceTreeReader);
+        }
+
         return true;
     }
 
@@ -164,13 +270,29 @@ public class ResourceTreeWriter implements Closeable {
      * @param resourceId the resource id
      */
     public boolean deleteResource(Object transaction, String resourceId, String parentResourceId, String resourceName) {
+        // the event carries the state of the resource before the delete, the snapshot is taken while it's cached
+        Onem2mResource deleted = null;
+        if (eventBus.hasSubscriptions()) {
+            Onem2mResource onem2mResource = resourceTreeReader.retrieveResourceById(resourceId);
+            if (null != onem2mResource) {
+                deleted = ResourceChangeEvent.snapshot(onem2mResource);
+            }
+        }
+
+        // the cache is updated right away, the cleanup of the deleted subtrees walks the remaining children
+        // through the cache within one transaction
         cache.deleteResource(resourceId, resourceName, parentResourceId);
+        resourceAttributeIndex.resourceRemoved(resourceId);
 
         if (!daoWriter.deleteResource(transaction, resourceId, parentResourceId, resourceName)) {
             LOG.error("deleteResource: DB could not delete");
             return false;
         }
 
+        if (null != deleted) {
+            final Onem2mResource snapshot = deleted;
+            afterCommit(transaction, () -> eventBus.publish(ResourceChangeEvent.Operation.DELETE, snapshot));
+        }
         return true;
     }
 
@@ -223,5 +345,7 @@ public class ResourceTreeWriter implements Closeable {
         LOG.info("reInitializeDatastore");
         daoWriter.reInitializeDatastore();
         cache.reInitializeDatastore();
+        resourcePathCache.clear();
+        resourceAttributeIndex.clear();
     }
 }
\ No newline at end of file
@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2m.core.database.transactionCore;
+
+import static java.util.Objects.isNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.opendaylight.iotdm.onem2m.core.Onem2m;
+import org.opendaylight.iotdm.onem2m.core.database.Onem2mDb;
+import org.opendaylight.iotdm.onem2m.core.resource.ResourceContainer;
+import org.opendaylight.iotdm.onem2m.core.resource.ResourceContentInstance;
+import org.opendaylight.iotdm.onem2m.core.resource.ResourceSubscription;
+import org.opendaylight.iotdm.onem2m.core.utils.Onem2mDateTime;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The eventNotificationCriteria and the notification attributes of one subscription resource, compiled when
+ * the subscription is created or updated so the notification processing doesn't parse the subscription for
+ * every event. Instances are immutable, an update of the subscription replaces the compiled criteria.
+ */
+public final class SubscriptionCriteria {
+    private static final Logger LOG = LoggerFactory.getLogger(SubscriptionCriteria.class);
+
+    private final String subscriptionResourceId;
+    private final String subscribedResourceId;
+    private final Set<String> eventTypes;
+    private final boolean hasEventNotificationCriteria;
+    private final boolean hasOnlyEventTypes;
+    private final String createdBefore;
+    private final String createdAfter;
+    private final String modifiedSince;
+    private final String unmodifiedSince;
+    private final Integer stateTagBigger;
+    private final Integer stateTagSmaller;
+    private final Integer sizeAbove;
+    private final Integer sizeBelow;
+    private final Set<String> operationMonitor;
+    private final String notificationContentType;
+    private final List<String> notificationUris;
+    private final List<String> notificationTargetResourceIds;
+    private final boolean updatedAfterNotification;
+
+    private SubscriptionCriteria(Onem2mResource subscriptionResource, JSONObject json) {
+        this.subscriptionResourceId = subscriptionResource.getResourceId();
+        this.subscribedResourceId = subscriptionResource.getParentId();
+
+        JSONObject enc = json.optJSONObject(ResourceSubscription.EVENT_NOTIFICATION_CRITERIA);
+        this.hasEventNotificationCriteria = (null != enc);
+        if (null != enc) {
+            JSONArray net = enc.optJSONArray(ResourceSubscription.NOTIFICATION_EVENT_TYPE);
+            this.eventTypes = (null == net) ? null : toStringSet(net);
+            this.hasOnlyEventTypes = (enc.length() == 1 && null != net);
+            this.createdBefore = enc.optString(ResourceSubscription.CREATED_BEFORE, null);
+            this.createdAfter = enc.optString(ResourceSubscription.CREATED_AFTER, null);
+            this.modifiedSince = enc.optString(ResourceSubscription.MODIFIED_SINCE, null);
+            this.unmodifiedSince = enc.optString(ResourceSubscription.UNMODIFIED_SINCE, null);
+            this.stateTagBigger = optInteger(enc, ResourceSubscription.STATE_TAG_BIGGER);
+            this.stateTagSmaller = optInteger(enc, ResourceSubscription.STATE_TAG_SMALLER);
+            this.sizeAbove = optInteger(enc, ResourceSubscription.SIZE_ABOVE);
+            this.sizeBelow = optInteger(enc, ResourceSubscription.SIZE_BELOW);
+            JSONArray om = enc.optJSONArray(ResourceSubscription.OPERATION_MONITOR);
+            this.operationMonitor = (null == om) ? null : toStringSet(om);
+        } else {
+            this.eventTypes = null;
+            this.hasOnlyEventTypes = false;
+            this.createdBefore = null;
+            this.createdAfter = null;
+            this.modifiedSince = null;
+            this.unmodifiedSince = null;
+            this.stateTagBigger = null;
+            this.stateTagSmaller = null;
+            this.sizeAbove = null;
+            this.sizeBelow = null;
+            this.operationMonitor = null;
+        }
+
+        this.notificationContentType = json.optString(ResourceSubscription.NOTIFICATION_CONTENT_TYPE,
+                                                      Onem2m.NotificationContentType.WHOLE_RESOURCE);
+
+        // the URIs without valid scheme are resourceIds of the resources with pointOfAccess, they are resolved once
+        List<String> uris = new ArrayList<>();
+        List<String> targets = new ArrayList<>();
+        JSONArray uriArray = json.optJSONArray(ResourceSubscription.NOTIFICATION_URI);
+        if (null != uriArray) {
+            for (int i = 0; i < uriArray.length(); i++) {
+                String uri = uriArray.optString(i);
+                if (Onem2m.isValidUriScheme(uri)) {
+                    uris.add(uri);
+                } else {
+                    Onem2mResource target = Onem2mDb.getInstance().findResourceUsingURI(uri);
+                    if (isNull(target)) {
+                        LOG.warn("SubscriptionCriteria: Resource not found for resourceId specified in " +
+                                 "NOTIFICATION_URI: {}, subscription: {}", uri, subscriptionResourceId);
+                    } else {
+                        targets.add(target.getResourceId());
+                    }
+                }
+            }
+        }
+        this.notificationUris = Collections.unmodifiableList(uris);
+        this.notificationTargetResourceIds = Collections.unmodifiableList(targets);
+
+        this.updatedAfterNotification = json.has(ResourceSubscription.EXPIRATION_COUNTER) ||
+                json.optBoolean(ResourceSubscription.LATEST_NOTIFY);
+    }
+
+    /**
+     * @param subscriptionResource the subscription resource
+     * @return compiled criteria of the subscription or null if its content is not valid
+     */
+    public static SubscriptionCriteria compile(Onem2mResource subscriptionResource) {
+        try {
+            return new SubscriptionCriteria(subscriptionResource,
+                                            ResourceContentView.of(subscriptionResource).getJsonObject());
+        } catch (IllegalArgumentException e) {
+            LOG.error("compile: invalid subscription: {}", subscriptionResource.getResourceId());
+            return null;
+        }
+    }
+
+    private static Integer optInteger(JSONObject json, String key) {
+        return json.has(key) ? json.optInt(key) : null;
+    }
+
+    private static Set<String> toStringSet(JSONArray jsonArray) {
+        Set<String> set = new HashSet<>();
+        for (int i = 0; i < jsonArray.length(); i++) {
+            set.add(jsonArray.optString(i));
+        }
+        return Collections.unmodifiableSet(set);
+    }
+
+    /**
+     * The subscriptions without notificationEventType are interested in the updates of the subscribed resource.
+     *
+     * @param eventType notificationEventType
+     * @return true if the subscription is interested in the event type
+     */
+    public boolean isInterestedIn(String eventType) {
+        if (null == eventTypes) {
+            return Onem2m.EventType.UPDATE_RESOURCE.equals(eventType);
+        }
+        return eventTypes.contains(eventType);
+    }
+
+    /**
+     * @return true if the subscription is interested in the changes of all descendants of the subscribed resource
+     */
+    public boolean isTypeF() {
+        return null != eventTypes && eventTypes.contains(Onem2m.EventType.ANY_DESCENDANT_CHANGE);
+    }
+
+    /**
+     * Checks the eventNotificationCriteria against the changed resource. The notification is sent if the criteria
+     * are not set or if any of the set conditions is met.
+     *
+     * @param changedResource content of the changed resource
+     * @param eventType notificationEventType of the event
+     * @return true if the notification should be sent
+     */
+    public boolean matches(ResourceContentView changedResource, String eventType) {
+        if (!hasEventNotificationCriteria) {
+            return true;
+        }
+        if (hasOnlyEventTypes) {
+            return eventTypes.contains(eventType);
+        }
+
+        String ct = changedResource.getCreationTime();
+        if (null != createdBefore && null != ct && Onem2mDateTime.dateCompare(ct, createdBefore) < 0) {
+            return true;
+        }
+        if (null != createdAfter && null != ct && Onem2mDateTime.dateCompare(ct, createdAfter) > 0) {
+            return true;
+        }
+
+        String lt = changedResource.getLastModifiedTime();
+        if (null != modifiedSince && null != lt && Onem2mDateTime.dateCompare(lt, modifiedSince) > 0) {
+            return true;
+        }
+        if (null != unmodifiedSince && null != lt && Onem2mDateTime.dateCompare(lt, unmodifiedSince) < 0) {
+            return true;
+        }
+
+        int st = changedResource.getStateTag();
+        if (st != -1) {
+            if (null != stateTagBigger && st > stateTagBigger) {
+                return true;
+            }
+            if (null != stateTagSmaller && st < stateTagSmaller) {
+                return true;
+            }
+        }
+
+        if (null != sizeAbove || null != sizeBelow) {
+            JSONObject json = changedResource.getJsonObject();
+            int size = json.optInt(ResourceContainer.CURR_BYTE_SIZE, -1);
+            if (size == -1) {
+                size = json.optInt(ResourceContentInstance.CONTENT_SIZE, -1);
+            }
+            if (size != -1) {
+                if (null != sizeAbove && size > sizeAbove) {
+                    return true;
+                }
+                if (null != sizeBelow && size < sizeBelow) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public String getSubscriptionResourceId() {
+        return subscriptionResourceId;
+    }
+
+    public String getSubscribedResourceId() {
+        return subscribedResourceId;
+    }
+
+    /**
+     * @return operations of the operationMonitor or null if not set
+     */
+    public Set<String> getOperationMonitor() {
+        return operationMonitor;
+    }
+
+    public String getNotificationContentType() {
+        return notificationContentType;
+    }
+
+    /**
+     * @return notificationURIs with valid scheme
+     */
+    public List<String> getNotificationUris() {
+        return notificationUris;
+    }
+
+    /**
+     * @return resourceIds of the resources whose pointOfAccess is used as notificationURI
+     */
+    public List<String> getNotificationTargetResourceIds() {
+        return notificationTargetResourceIds;
+    }
+
+    /**
+     * @return true if the subscription has expirationCounter or latestNotify which are updated by notifications
+     */
+    public boolean isUpdatedAfterNotification() {
+        return updatedAfterNotification;
+    }
+}
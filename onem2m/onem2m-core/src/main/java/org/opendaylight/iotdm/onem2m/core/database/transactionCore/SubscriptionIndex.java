@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2m.core.database.transactionCore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.json.JSONObject;
+import org.opendaylight.iotdm.onem2m.core.database.Onem2mDb;
+import org.opendaylight.iotdm.onem2m.core.utils.JsonUtils;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory index of the subscriptions keyed by the resourceId of the subscribed resource. The subscriptions
+ * are kept as compiled SubscriptionCriteria so the notification processing doesn't read and parse
+ * the subscription resources for every event.
+ *
+ * Only the resources having subscriptions are indexed. The entry of a resource is loaded from its list of
+ * child subscriptions when it's needed for the first time, so the index needs no rebuild after restart.
+ * The entries are replaced as copy-on-write lists when a subscription is created, updated or deleted, this
+ * happens after the list of the child subscriptions of the parent has been updated in the cache. Loads and
+ * modifications of one entry are serialized by the map.
+ *
+ * Whether the resource or any of its ancestors has a subscription of the type F (any descendant change) is
+ * cached in the resource. The cached flags are invalidated by incrementing a generation counter whenever
+ * a subscription is created, updated or deleted, which is rare compared to the resource changes.
+ */
+public class SubscriptionIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(SubscriptionIndex.class);
+
+    private final ResourceTreeReader trc;
+    private final ConcurrentHashMap<String, List<SubscriptionCriteria>> subscriptionsByResourceId =
+            new ConcurrentHashMap<>();
+    private final AtomicLong typeFGeneration = new AtomicLong();
+
+    public SubscriptionIndex(ResourceTreeReader trc) {
+        this.trc = trc;
+    }
+
+    private List<SubscriptionCriteria> load(Onem2mResource subscribedResource) {
+        List<String> subscriptionIds = ResourceContentView.of(subscribedResource).getSubscriptionIds();
+        List<SubscriptionCriteria> subscriptions = new ArrayList<>(subscriptionIds.size());
+        for (String subscriptionId : subscriptionIds) {
+            Onem2mResource subscriptionResource = trc.retrieveResourceById(subscriptionId);
+            if (null == subscriptionResource) {
+                continue;
+            }
+            SubscriptionCriteria criteria = SubscriptionCriteria.compile(subscriptionResource);
+            if (null != criteria) {
+                subscriptions.add(criteria);
+            }
+        }
+        return Collections.unmodifiableList(subscriptions);
+    }
+
+    /**
+     * @param resource the subscribed resource
+     * @return subscriptions of the resource, empty list if it has none
+     */
+    public List<SubscriptionCriteria> getSubscriptions(Onem2mResource resource) {
+        List<SubscriptionCriteria> subscriptions = subscriptionsByResourceId.get(resource.getResourceId());
+        if (null != subscriptions) {
+            return subscriptions;
+        }
+
+        try {
+            if (ResourceContentView.of(resource).getSubscriptionIds().isEmpty()) {
+                return Collections.emptyList();
+            }
+            return subscriptionsByResourceId.computeIfAbsent(resource.getResourceId(), id -> load(resource));
+        } catch (IllegalArgumentException e) {
+            LOG.warn("getSubscriptions: invalid resource: {}", resource.getResourceId());
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * @param resourceId the subscribed resource
+     * @return subscriptions of the resource, empty list if it has none or doesn't exist
+     */
+    public List<SubscriptionCriteria> getSubscriptions(String resourceId) {
+        List<SubscriptionCriteria> subscriptions = subscriptionsByResourceId.get(resourceId);
+        if (null != subscriptions) {
+            return subscriptions;
+        }
+        Onem2mResource resource = trc.retrieveResourceById(resourceId);
+        return (null == resource) ? Collections.<SubscriptionCriteria>emptyList() : getSubscriptions(resource);
+    }
+
+    /**
+     * @param resource the resource
+     * @return true if the resource or any of its ancestors has a subscription of the type F
+     */
+    public boolean hasTypeFSubscription(Onem2mResource resource) {
+        // the generation is read first so a concurrent change invalidates the computed flag
+        long generation = typeFGeneration.get();
+        Onem2mResourceElem elem = (resource instanceof Onem2mResourceElem) ? (Onem2mResourceElem) resource : null;
+        if (null != elem) {
+            long state = elem.getTypeFSubscriptionState();
+            if (state != -1 && (state >>> 1) == generation) {
+                return (state & 1) == 1;
+            }
+        }
+
+        boolean hasTypeF = false;
+        for (SubscriptionCriteria criteria : getSubscriptions(resource)) {
+            if (criteria.isTypeF()) {
+                hasTypeF = true;
+                break;
+            }
+        }
+        if (!hasTypeF) {
+            Onem2mResource parent = getParent(resource);
+            hasTypeF = (null != parent) && hasTypeFSubscription(parent);
+        }
+
+        if (null != elem) {
+            elem.setTypeFSubscriptionState((generation << 1) | (hasTypeF ? 1 : 0));
+        }
+        return hasTypeF;
+    }
+
+    /**
+     * @param resource the resource
+     * @return type F subscriptions of the resource and its ancestors
+     */
+    public List<SubscriptionCriteria> getTypeFSubscriptions(Onem2mResource resource) {
+        List<SubscriptionCriteria> typeFSubscriptions = new ArrayList<>();
+        // walk up only while there is a type F subscription left above
+        while (null != resource && hasTypeFSubscription(resource)) {
+            for (SubscriptionCriteria criteria : getSubscriptions(resource)) {
+                if (criteria.isTypeF()) {
+                    typeFSubscriptions.add(criteria);
+                }
+            }
+            resource = getParent(resource);
+        }
+        return typeFSubscriptions;
+    }
+
+    private Onem2mResource getParent(Onem2mResource resource) {
+        String parentId = resource.getParentId();
+        if (null == parentId || parentId.equals(Onem2mDb.NULL_RESOURCE_ID)) {
+            return null;
+        }
+        return trc.retrieveResourceById(parentId);
+    }
+
+    private static List<SubscriptionCriteria> replace(List<SubscriptionCriteria> subscriptions,
+                                                      String subscriptionId, SubscriptionCriteria criteria) {
+        List<SubscriptionCriteria> newSubscriptions = new ArrayList<>(subscriptions.size() + 1);
+        for (SubscriptionCriteria subscription : subscriptions) {
+            if (!subscription.getSubscriptionResourceId().equals(subscriptionId)) {
+                newSubscriptions.add(subscription);
+            }
+        }
+        if (null != criteria) {
+            newSubscriptions.add(criteria);
+        }
+        return newSubscriptions.isEmpty() ? null : Collections.unmodifiableList(newSubscriptions);
+    }
+
+    /**
+     * Indexes the created or updated subscription, must be called after the subscription has been added to
+     * the child subscriptions of its parent.
+     *
+     * @param subscriptionResource the subscription resource
+     */
+    public void subscriptionCreatedOrUpdated(Onem2mResource subscriptionResource) {
+        String subscriptionId = subscriptionResource.getResourceId();
+        SubscriptionCriteria criteria = SubscriptionCriteria.compile(subscriptionResource);
+        Onem2mResource parent = getParent(subscriptionResource);
+        if (null == parent) {
+            LOG.error("subscriptionCreatedOrUpdated: parent of subscription not found: {}", subscriptionId);
+            return;
+        }
+
+        try {
+            subscriptionsByResourceId.compute(parent.getResourceId(), (id, subscriptions) ->
+                    replace((null == subscriptions) ? load(parent) : subscriptions, subscriptionId, criteria));
+        } catch (IllegalArgumentException e) {
+            LOG.error("subscriptionCreatedOrUpdated: invalid parent resource: {}", parent.getResourceId());
+        }
+        typeFGeneration.incrementAndGet();
+    }
+
+    /**
+     * Removes the deleted subscription from the index.
+     *
+     * @param subscribedResourceId resourceId of the parent of the subscription
+     * @param subscriptionId resourceId of the subscription
+     */
+    public void subscriptionDeleted(String subscribedResourceId, String subscriptionId) {
+        subscriptionsByResourceId.computeIfPresent(subscribedResourceId,
+                                                   (id, subscriptions) -> replace(subscriptions, subscriptionId, null));
+        typeFGeneration.incrementAndGet();
+    }
+
+    /**
+     * Drops the entry of the resource removed from the datastore.
+     *
+     * @param resourceId the removed resource
+     */
+    public void resourceRemoved(String resourceId) {
+        if (null != subscriptionsByResourceId.remove(resourceId)) {
+            typeFGeneration.incrementAndGet();
+        }
+    }
+
+    public void clear() {
+        subscriptionsByResourceId.clear();
+        typeFGeneration.incrementAndGet();
+    }
+
+    public JSONObject getStats() {
+        JSONObject js = new JSONObject();
+        long numSubscriptions = 0;
+        for (List<SubscriptionCriteria> subscriptions : subscriptionsByResourceId.values()) {
+            numSubscriptions += subscriptions.size();
+        }
+        JsonUtils.put(js, "indexed_resources", subscriptionsByResourceId.size());
+        JsonUtils.put(js, "subscriptions", numSubscriptions);
+        JsonUtils.put(js, "type_f_generation", typeFGeneration.get());
+        return js;
+    }
+}
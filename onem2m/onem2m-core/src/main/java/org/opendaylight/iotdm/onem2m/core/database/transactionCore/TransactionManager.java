@@ -14,6 +14,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.List;
 
 /**
  * Created by gguliash on 4/19/16.
@@ -27,16 +29,29 @@ public class TransactionManager implements Closeable{
     private final DaoResourceTreeFactory daoResourceTreeFactory;
     private final DbNotifier dbNotifier;
     private final BGDeleteProcessor bgDeleteProcessor;
+    private final ResourcePathCache resourcePathCache;
+    private final ResourceAttributeIndex resourceAttributeIndex;
     private final DataBroker dataBroker;
+    private ResourceTreeRecovery resourceTreeRecovery;
 
-    public TransactionManager(DataBroker dataBroker, DaoResourceTreeFactory daoResourceTreeFactory) {
+    /**
+     * @param dataBroker data broker
+     * @param daoResourceTreeFactory DAO plugin
+     * @param datastoreExportBatchSize the resource changes are exported as DbTransactions to the OPERATIONAL
+     *                                 datastore in write transactions of this size, 0 disables the export
+     */
+    public TransactionManager(DataBroker dataBroker, DaoResourceTreeFactory daoResourceTreeFactory,
+                              int datastoreExportBatchSize) {
         this.daoResourceTreeFactory = daoResourceTreeFactory;
         this.daoResourceTreeReader = daoResourceTreeFactory.getDaoResourceTreeReader();
         this.cache = new Cache(daoResourceTreeReader);
         this.bgDeleteProcessor = new BGDeleteProcessor();
-        this.resourceTreeReader = new ResourceTreeReader(cache, daoResourceTreeReader, bgDeleteProcessor);
+        this.resourcePathCache = new ResourcePathCache();
+        this.resourceAttributeIndex = new ResourceAttributeIndex();
+        this.resourceTreeReader = new ResourceTreeReader(cache, daoResourceTreeReader, bgDeleteProcessor,
+                                                         resourcePathCache, resourceAttributeIndex);
         this.dataBroker = dataBroker;
-        this.dbNotifier = new DbNotifier(dataBroker);
+        this.dbNotifier = (datastoreExportBatchSize > 0) ? new DbNotifier(dataBroker, datastoreExportBatchSize) : null;
     }
 
     /**
@@ -44,7 +59,9 @@ public class TransactionManager implements Closeable{
      * @return database writer interface which also updated cache
      */
     public ResourceTreeWriter getDbResourceTreeWriter() {
-        return new ResourceTreeWriter(cache, daoResourceTreeFactory.getDaoResourceTreeWriter(), resourceTreeReader, dbNotifier);
+        return new ResourceTreeWriter(cache, daoResourceTreeFactory.getDaoResourceTreeWriter(), resourceTreeReader,
+                                      ResourceChangeEventBus.getInstance(), resourcePathCache,
+                                      resourceAttributeIndex);
     }
 
     /**
@@ -55,8 +72,70 @@ public class TransactionManager implements Closeable{
         return resourceTreeReader;
     }
 
+    /**
+     * Starts the rebuild of the state derived from the resource tree stored by the DAO plugin, it's called once
+     * the reader and writer are registered.
+     *
+     * @param hotSetFile file of the hot set snapshot, null disables the snapshot
+     * @param hotSetSize max number of resources in the hot set
+     * @param hotSetSnapshotIntervalSeconds period of the hot set snapshot writes, 0 writes the snapshot only
+     *                                      when the transaction manager is closed
+     * @param numThreads number of threads walking the resource tree
+     * @return the started recovery
+     */
+    public synchronized ResourceTreeRecovery startResourceTreeRecovery(Path hotSetFile, int hotSetSize,
+                                                                       long hotSetSnapshotIntervalSeconds,
+                                                                       int numThreads) {
+        if (null == resourceTreeRecovery) {
+            resourceTreeRecovery = new ResourceTreeRecovery(cache, daoResourceTreeReader, resourceAttributeIndex,
+                                                            hotSetFile, hotSetSize, hotSetSnapshotIntervalSeconds,
+                                                            numThreads);
+            resourceTreeRecovery.start();
+        }
+        return resourceTreeRecovery;
+    }
+
+    public synchronized ResourceTreeRecovery getResourceTreeRecovery() {
+        return resourceTreeRecovery;
+    }
+
+    /**
+     * Stops the rebuild of the derived state and writes the hot set snapshot.
+     */
+    public synchronized void stopResourceTreeRecovery() {
+        if (null != resourceTreeRecovery) {
+            resourceTreeRecovery.stop();
+            resourceTreeRecovery = null;
+        }
+    }
+
+    /**
+     * Writes the content of the cached containers whose cni, cbs, lt or st kept by the contentInstance index
+     * haven't been written yet, the index is rebuilt from the contentInstances otherwise.
+     */
+    private void persistContainerCinIndexes() {
+        List<Onem2mResourceElem> containers = cache.retrieveContainersWithUnpersistedCinIndex();
+        if (containers.isEmpty()) {
+            return;
+        }
+        ResourceTreeWriter writer = getDbResourceTreeWriter();
+        try {
+            for (Onem2mResourceElem container : containers) {
+                writer.persistContainerCinIndex(container.getResourceId(), container.getResourceContentJsonString());
+            }
+        } finally {
+            writer.close();
+        }
+        LOG.info("Persisted contentInstance indexes of {} containers", containers.size());
+    }
+
     @Override
     public void close(){
+        stopResourceTreeRecovery();
+        persistContainerCinIndexes();
+        if (null != dbNotifier) {
+            dbNotifier.close();
+        }
         daoResourceTreeFactory.close();
     }
 }
@@ -18,6 +18,7 @@ import org.json.JSONObject;
 import org.opendaylight.iotdm.onem2m.core.Onem2m;
 
 import org.opendaylight.iotdm.onem2m.core.database.Onem2mDb;
+import org.opendaylight.iotdm.onem2m.core.database.transactionCore.ResourceContentView;
 import org.opendaylight.iotdm.onem2m.core.database.transactionCore.ResourceTreeReader;
 
 import org.opendaylight.iotdm.onem2m.core.database.transactionCore.ResourceTreeWriter;
@@ -240,8 +241,7 @@ public class BaseResource {
 
     private String getParentExpTime(RequestPrimitive onem2mRequest) {
         Onem2mResource parentResource = getParentResource(onem2mRequest);
-        JSONObject parentJson = new JSONObject(parentResource.getResourceContentJsonString());
-        return parentJson.optString(BaseResource.EXPIRATION_TIME);
+        return ResourceContentView.of(parentResource).getExpirationTime();
     }
 
     public boolean parseJsonCommonCreateUpdateContent(String key) {
@@ -9,10 +9,10 @@
 package org.opendaylight.iotdm.onem2m.core.resource;
 
 import java.util.Iterator;
-import org.json.JSONArray;
 import org.json.JSONObject;
 import org.opendaylight.iotdm.onem2m.core.Onem2m;
 import org.opendaylight.iotdm.onem2m.core.database.Onem2mDb;
+import org.opendaylight.iotdm.onem2m.core.database.transactionCore.ContainerCinIndex;
 import org.opendaylight.iotdm.onem2m.core.rest.CheckAccessControlProcessor;
 import org.opendaylight.iotdm.onem2m.core.rest.utils.RequestPrimitive;
 import org.opendaylight.iotdm.onem2m.core.rest.utils.ResponsePrimitive;
@@ -31,7 +31,6 @@ public class ResourceContainer extends BaseResource {
     // taken from CDT-container-v1_0_0.xsd / TS0004_v_1-0_1 Section 8.2.2 Short Names
     // TODO: ts0001 9.6.6-2
 
-    public static final String CIN_BYTES_SIZE_KEY = "cin:bs";
     public static final Integer SYS_MAX_NR_INSTANCES = 8;
 
     public static final String CREATOR = "cr";
@@ -222,134 +221,81 @@ public class ResourceContainer extends BaseResource {
 
     }
 
-    public static void checkAndFixCurrMaxRules(JSONObject containerResourceContent) {
+    private static int maxNrInstances(JSONObject containerResourceContent) {
+        int mni = containerResourceContent.optInt(ResourceContainer.MAX_NR_INSTANCES, -1);
+        return (mni == -1) ? SYS_MAX_NR_INSTANCES : mni;
+    }
 
-        // maintain an array of cin ids in the container
-        String cinResouceIdJsonKey = "c:" + Onem2m.ResourceType.CONTENT_INSTANCE;
-        JSONArray cinResouceIdJsonArray = containerResourceContent.optJSONArray(cinResouceIdJsonKey);
-        JSONArray cinByteSizeJsonArray = containerResourceContent.optJSONArray(CIN_BYTES_SIZE_KEY);
+    private static int maxByteSize(JSONObject containerResourceContent) {
+        return containerResourceContent.optInt(ResourceContainer.MAX_BYTE_SIZE, -1);
+    }
 
-        if (cinResouceIdJsonArray != null && cinByteSizeJsonArray != null) {
-            if (cinResouceIdJsonArray.length() != cinByteSizeJsonArray.length()) {
-                LOG.error("checkAndFixCurrMaxRules: resId len:{}, != byteSize len: {}",
-                        cinResouceIdJsonArray.length(),
-                        cinByteSizeJsonArray.length());
-            }
-        } else {
-            return; // possibly no ci's created yet
-        }
+    /**
+     * Evicts the oldest contentInstances until the container complies with its mni and mbs limits, the evicted
+     * contentInstances are deleted in the background. Called when the write which changed the container's
+     * contentInstances or limits has been committed.
+     *
+     * @param containerResourceContent JSON content of the container, its cni and cbs are updated
+     * @param cinIndex contentInstance index of the container
+     */
+    public static void checkAndFixCurrMaxRules(JSONObject containerResourceContent, ContainerCinIndex cinIndex) {
 
         // if there is a max nr instances, remove until curr nr instances == max/sys_limit
-        Integer mni = containerResourceContent.optInt(ResourceContainer.MAX_NR_INSTANCES, -1);
-        if (mni == -1) {
-            mni = SYS_MAX_NR_INSTANCES;
-        }
-        int cni = containerResourceContent.optInt(ResourceContainer.CURR_NR_INSTANCES, -1);
-        while (cni != -1 && cni > mni) {
-            int delByteSize = cinByteSizeJsonArray.getInt(0); // 0 is oldest, N is latest
-            JsonUtils.dec(containerResourceContent, ResourceContainer.CURR_NR_INSTANCES);
-            JsonUtils.decN(containerResourceContent, ResourceContainer.CURR_BYTE_SIZE, delByteSize);
-            Onem2mDb.getInstance().getBGDeleteProcessor().moveResourceToDeleteParent(cinResouceIdJsonArray.getString(0));
-            cinResouceIdJsonArray.remove(0);
-            cinByteSizeJsonArray.remove(0);
-            cni = containerResourceContent.optInt(ResourceContainer.CURR_NR_INSTANCES, -1);
+        int mni = maxNrInstances(containerResourceContent);
+        while (cinIndex.getCurrNrInstances() > mni) {
+            Onem2mDb.getInstance().getBGDeleteProcessor().moveResourceToDeleteParent(cinIndex.removeOldest());
         }
 
-        // if there is a max nr instances, remove until curr nr instances == max
-        Integer mbs = containerResourceContent.optInt(ResourceContainer.MAX_BYTE_SIZE, -1);
+        // if there is a max byte size, remove until curr byte size <= max
+        int mbs = maxByteSize(containerResourceContent);
         if (mbs != -1) {
-            int cbs = containerResourceContent.optInt(ResourceContainer.CURR_BYTE_SIZE, -1);
-            while (cbs != -1 && cbs > mbs) {
-                int delByteSize = cinByteSizeJsonArray.getInt(0); // 0 is oldest, N is latest
-                JsonUtils.dec(containerResourceContent, ResourceContainer.CURR_NR_INSTANCES);
-                JsonUtils.decN(containerResourceContent, ResourceContainer.CURR_BYTE_SIZE, delByteSize);
-                Onem2mDb.getInstance().getBGDeleteProcessor().moveResourceToDeleteParent(cinResouceIdJsonArray.getString(0));
-                cinResouceIdJsonArray.remove(0);
-                cinByteSizeJsonArray.remove(0);
-                cbs = containerResourceContent.optInt(ResourceContainer.CURR_BYTE_SIZE, -1);
+            while (cinIndex.getCurrByteSize() > mbs) {
+                Onem2mDb.getInstance().getBGDeleteProcessor().moveResourceToDeleteParent(cinIndex.removeOldest());
             }
         }
+
+        cinIndex.overlay(containerResourceContent);
     }
 
-    // update the parent container to track the new ci, plus maintain curr byte size and curr num instances
+    /**
+     * Sets the cni and cbs the container will have once the write is committed, without modifying the index.
+     *
+     * @param containerResourceContent JSON content of the container written by the request
+     * @param cinIndex contentInstance index of the container
+     * @param newByteSize content size of the contentInstance being created, -1 if none is created
+     */
+    public static void overlayCurrMaxRules(JSONObject containerResourceContent, ContainerCinIndex cinIndex,
+                                           int newByteSize) {
+        cinIndex.overlayPending(containerResourceContent, newByteSize,
+                                maxNrInstances(containerResourceContent), maxByteSize(containerResourceContent));
+    }
+
+    // track the committed ci in the index of the parent container, it maintains curr byte size and curr num instances
     public static void incrementValuesForThisCreatedContentInstance(JSONObject containerResourceContent,
+                                                                    ContainerCinIndex cinIndex,
                                                                     Integer newByteSize,
                                                                     String resourceId) {
-
-        JsonUtils.inc(containerResourceContent, ResourceContainer.CURR_NR_INSTANCES);
-        JsonUtils.incN(containerResourceContent, ResourceContainer.CURR_BYTE_SIZE, newByteSize);
-
-        // maintain an array of cin ids in the container
-        String arrayJsonKey = "c:" + Onem2m.ResourceType.CONTENT_INSTANCE;
-        JSONArray jArray = containerResourceContent.optJSONArray(arrayJsonKey);
-        if (jArray == null) {
-            jArray = new JSONArray();
-            jArray.put(resourceId);
-            containerResourceContent.put(arrayJsonKey, jArray);
-        } else {
-            jArray.put(jArray.length(), resourceId);
-        }
-
-        // also maintain an array of the respective byte sizes
-        JSONArray jCinCbsArray = containerResourceContent.optJSONArray(CIN_BYTES_SIZE_KEY);
-        if (jCinCbsArray == null) {
-            jCinCbsArray = new JSONArray();
-            jCinCbsArray.put(newByteSize);
-            containerResourceContent.put(CIN_BYTES_SIZE_KEY, jCinCbsArray);
-        } else {
-            jCinCbsArray.put(jCinCbsArray.length(), newByteSize);
-        }
+        cinIndex.append(resourceId, newByteSize);
+        cinIndex.overlay(containerResourceContent);
     }
 
     public static void decrementValuesForThisDeletedContentInstance(JSONObject containerResourceContent,
+                                                                    ContainerCinIndex cinIndex,
                                                                     String cinResourceId) {
-
-        String cinResouceIdJsonKey = "c:" + Onem2m.ResourceType.CONTENT_INSTANCE;
-        JSONArray cinResouceIdJsonArray = containerResourceContent.optJSONArray(cinResouceIdJsonKey);
-        JSONArray cinByteSizeJsonArray = containerResourceContent.optJSONArray(CIN_BYTES_SIZE_KEY);
-
-        if (cinResouceIdJsonArray != null && cinByteSizeJsonArray != null) {
-            if (cinResouceIdJsonArray.length() != cinByteSizeJsonArray.length()) {
-                LOG.error("decrementValuesForThisDeletedContentInstance: resId len:{}, != byteSize len: {}",
-                        cinResouceIdJsonArray.length(),
-                        cinByteSizeJsonArray.length());
-            }
-        } else {
-            return; // possibly no ci's created yet
-        }
-
-        for (int i = 0; i < cinResouceIdJsonArray.length(); i++) {
-            if (cinResourceId.equals(cinResouceIdJsonArray.getString(i))) {
-                incrementParentStateTagIfPresent(containerResourceContent);
-                JsonUtils.dec(containerResourceContent, ResourceContainer.CURR_NR_INSTANCES);
-                JsonUtils.decN(containerResourceContent, ResourceContainer.CURR_BYTE_SIZE, cinByteSizeJsonArray.getInt(i));
-                cinResouceIdJsonArray.remove(i);
-                cinByteSizeJsonArray.remove(i);
-                break;
-            }
+        // the ci might have been already evicted
+        if (cinIndex.remove(cinResourceId)) {
+            incrementParentStateTagIfPresent(containerResourceContent);
+            cinIndex.trackContainerAttributes(containerResourceContent);
+            cinIndex.overlay(containerResourceContent);
         }
     }
 
-    public static String getLatestCI(JSONObject containerResourceContent) {
-
-        String cinResouceIdJsonKey = "c:" + Onem2m.ResourceType.CONTENT_INSTANCE;
-        JSONArray cinResouceIdJsonArray = containerResourceContent.optJSONArray(cinResouceIdJsonKey);
-
-        if (cinResouceIdJsonArray != null && cinResouceIdJsonArray.length() != 0) {
-            return cinResouceIdJsonArray.getString(cinResouceIdJsonArray.length() - 1);
-        }
-        return null;
+    public static String getLatestCI(ContainerCinIndex cinIndex) {
+        return cinIndex.getLatest();
     }
 
-    public static String getOldestCI(JSONObject containerResourceContent) {
-
-        String cinResourceIdJsonKey = "c:" + Onem2m.ResourceType.CONTENT_INSTANCE;
-        JSONArray cinResourceIdJsonArray = containerResourceContent.optJSONArray(cinResourceIdJsonKey);
-
-        if (cinResourceIdJsonArray != null && cinResourceIdJsonArray.length() != 0) {
-            return cinResourceIdJsonArray.getString(0);
-        }
-        return null;
+    public static String getOldestCI(ContainerCinIndex cinIndex) {
+        return cinIndex.getOldest();
     }
 
     public static void modifyParentForContainerDeletion(JSONObject parentJsonContent) {
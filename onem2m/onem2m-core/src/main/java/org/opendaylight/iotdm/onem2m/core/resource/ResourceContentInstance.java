@@ -104,8 +104,6 @@ public class ResourceContentInstance extends BaseResource {
             }
         }
 
-        onem2mRequest.setParentContentHasBeenModified(true);
-
         if (onem2mRequest.isCreate) {
             if (!Onem2mDb.getInstance().createResource(onem2mRequest, onem2mResponse)) {
                 onem2mResponse.setRSC(Onem2m.ResponseStatusCode.INTERNAL_SERVER_ERROR, "Cannot write to data store!");
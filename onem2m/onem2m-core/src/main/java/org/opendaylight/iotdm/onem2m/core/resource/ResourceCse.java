@@ -61,6 +61,7 @@ public class ResourceCse extends BaseResource {
         a.put(Integer.valueOf(Onem2m.ResourceType.SUBSCRIPTION));
         a.put(Integer.valueOf(Onem2m.ResourceType.GROUP));
         a.put(Integer.valueOf(Onem2m.ResourceType.NODE));
+        a.put(Integer.valueOf(Onem2m.ResourceType.POLLING_CHANNEL));
         a.put(Integer.valueOf(Onem2m.ResourceType.ACCESS_CONTROL_POLICY));
         JsonUtils.put(jsonPrimitiveContent, SUPPORTED_RESOURCE_TYPES, a);
         /**
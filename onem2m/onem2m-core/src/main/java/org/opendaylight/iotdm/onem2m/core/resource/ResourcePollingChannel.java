@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.opendaylight.iotdm.onem2m.core.resource;
+
+import java.util.Iterator;
+import org.json.JSONObject;
+import org.opendaylight.iotdm.onem2m.core.Onem2m;
+import org.opendaylight.iotdm.onem2m.core.database.Onem2mDb;
+import org.opendaylight.iotdm.onem2m.core.database.transactionCore.ResourceContentView;
+import org.opendaylight.iotdm.onem2m.core.rest.CheckAccessControlProcessor;
+import org.opendaylight.iotdm.onem2m.core.rest.utils.RequestPrimitive;
+import org.opendaylight.iotdm.onem2m.core.rest.utils.ResponsePrimitive;
+import org.opendaylight.iotdm.onem2m.core.router.Onem2mPollingChannelQueues;
+import org.opendaylight.iotdm.onem2m.core.router.Onem2mRouterService;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The pollingChannel of an AE or a remoteCSE which is not request reachable.  The entity retrieves the requests
+ * targeting it by the long-poll of the pollingChannelURI (pcu) virtual resource of the pollingChannel and it
+ * sends the responses of the requests to the pcu as NOTIFY.
+ */
+public class ResourcePollingChannel extends BaseResource {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResourcePollingChannel.class);
+    public ResourcePollingChannel(RequestPrimitive onem2mRequest, ResponsePrimitive onem2mResponse) {
+        super(onem2mRequest, onem2mResponse);
+    }
+
+    // name of the pollingChannelURI virtual resource, the child of the pollingChannel
+    public static final String POLLING_CHANNEL_URI = "pcu";
+
+    private void parseJsonCreateUpdateContent() {
+
+        Iterator<?> keys = jsonPrimitiveContent.keys();
+        while( keys.hasNext() ) {
+            String key = (String)keys.next();
+
+            switch (key) {
+
+                case BaseResource.LABELS:
+                case BaseResource.EXPIRATION_TIME:
+                case BaseResource.RESOURCE_NAME:
+                    if (!parseJsonCommonCreateUpdateContent(key)) {
+                        return;
+                    }
+                    break;
+
+                default:
+                    onem2mResponse.setRSC(Onem2m.ResponseStatusCode.CONTENTS_UNACCEPTABLE,
+                            "CONTENT(" + RequestPrimitive.CONTENT + ") attribute not recognized: " + key);
+                    return;
+            }
+        }
+    }
+
+    public void processCreateUpdateAttributes() {
+
+        // verify this resource can be created under the target resource
+        if (onem2mRequest.isCreate) {
+            // target resourceType
+            Integer prt = onem2mRequest.getParentResourceType();
+            if (prt != Onem2m.ResourceType.AE && prt != Onem2m.ResourceType.REMOTE_CSE) {
+                onem2mResponse.setRSC(Onem2m.ResponseStatusCode.OPERATION_NOT_ALLOWED,
+                        "Cannot create PollingChannel under this resource type: " + prt);
+                return;
+            }
+        }
+
+        /**
+         * The resource has been filled in with any attributes that need to be written to the database
+         */
+        if (onem2mRequest.isCreate) {
+            if (!Onem2mDb.getInstance().createResource(onem2mRequest, onem2mResponse)) {
+                onem2mResponse.setRSC(Onem2m.ResponseStatusCode.INTERNAL_SERVER_ERROR, "Cannot create in data store!");
+                // TODO: what do we do now ... seems really bad ... keep stats
+                return;
+            }
+            registerChannel(onem2mRequest.getParentOnem2mResource(), onem2mRequest.getResourceId());
+        } else {
+            if (!Onem2mDb.getInstance().updateResource(onem2mRequest, onem2mResponse)) {
+                onem2mResponse.setRSC(Onem2m.ResponseStatusCode.INTERNAL_SERVER_ERROR, "Cannot update the data store!");
+                // TODO: what do we do now ... seems really bad ... keep stats
+                return;
+            }
+        }
+    }
+
+    public void handleCreateUpdate() {
+
+        parse(Onem2m.ResourceTypeString.POLLING_CHANNEL);
+        if (onem2mResponse.getPrimitiveResponseStatusCode() != null)
+            return;
+
+        if (isJson()) {
+            parseJsonCreateUpdateContent();
+            if (onem2mResponse.getPrimitiveResponseStatusCode() != null)
+                return;
+        }
+        CheckAccessControlProcessor.handleCreateUpdate(onem2mRequest, onem2mResponse);
+        if (onem2mResponse.getPrimitiveResponseStatusCode() != null)
+            return;
+        processCommonCreateUpdateAttributes();
+        if (onem2mResponse.getPrimitiveResponseStatusCode() != null)
+            return;
+        processCreateUpdateAttributes();
+
+    }
+
+    /**
+     * @param parent parent resource of the pollingChannel
+     * @return CSE-ID of the remoteCSE or AE-ID of the AE which owns the pollingChannel, null for other parents
+     */
+    public static String getTargetId(Onem2mResource parent) {
+        if (null == parent) {
+            return null;
+        }
+        JSONObject parentJson = ResourceContentView.of(parent).getJsonObject();
+        Integer prt = Integer.valueOf(parent.getResourceType());
+        if (prt == Onem2m.ResourceType.REMOTE_CSE) {
+            return parentJson.optString(ResourceRemoteCse.CSE_ID, null);
+        } else if (prt == Onem2m.ResourceType.AE) {
+            return parentJson.optString(ResourceAE.AE_ID, null);
+        }
+        return null;
+    }
+
+    /**
+     * Registers the pollingChannel, the requests for its parent entity are queued until they are polled.
+     * It's done at the create and again at each poll, so the channel is known also after restart.
+     * @param parent parent resource of the pollingChannel
+     * @param pollingChannelResourceId resourceID of the pollingChannel
+     */
+    public static void registerChannel(Onem2mResource parent, String pollingChannelResourceId) {
+        String targetId = getTargetId(parent);
+        if (null == targetId) {
+            LOG.error("Failed to get the entity ID of the pollingChannel parent: {}", pollingChannelResourceId);
+            return;
+        }
+        Onem2mPollingChannelQueues.getInstance().registerChannel(targetId);
+        if (Integer.valueOf(parent.getResourceType()) == Onem2m.ResourceType.REMOTE_CSE) {
+            Onem2mRouterService.getInstance().updateRoutingDataRemoteCsePolingChannel(targetId,
+                                                                                      pollingChannelResourceId);
+        }
+    }
+
+    /**
+     * Removes the pollingChannel, the requests queued for its parent entity fail.
+     * @param parent parent resource of the pollingChannel
+     */
+    public static void handleDelete(Onem2mResource parent) {
+        String targetId = getTargetId(parent);
+        if (null == targetId) {
+            return;
+        }
+        Onem2mPollingChannelQueues.getInstance().removeChannel(targetId);
+        if (Integer.valueOf(parent.getResourceType()) == Onem2m.ResourceType.REMOTE_CSE) {
+            Onem2mRouterService.getInstance().updateRoutingDataRemoteCsePolingChannel(targetId, null);
+        }
+    }
+}
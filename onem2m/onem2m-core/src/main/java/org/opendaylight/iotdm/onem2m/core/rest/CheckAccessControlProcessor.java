@@ -13,6 +13,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.opendaylight.iotdm.onem2m.core.Onem2m;
 import org.opendaylight.iotdm.onem2m.core.database.Onem2mDb;
+import org.opendaylight.iotdm.onem2m.core.database.transactionCore.ResourceContentView;
 import org.opendaylight.iotdm.onem2m.core.database.transactionCore.ResourceTreeReader;
 import org.opendaylight.iotdm.onem2m.core.resource.ResourceAccessControlPolicy;
 import org.opendaylight.iotdm.onem2m.core.resource.BaseResource;
@@ -51,32 +52,22 @@ public class CheckAccessControlProcessor {
                 AccessControlPolicyIDList = new ArrayList<>();
                 // if target is not CSE, check whether the parent (onem2mresource) contains acpid
                 Onem2mResource parentresource = onem2mRequest.getParentOnem2mResource();
-                try {
-                    JSONObject jsonContent = new JSONObject(parentresource.getResourceContentJsonString());
-                    while (jsonContent.optString(BaseResource.ACCESS_CONTROL_POLICY_IDS, null) == null) {
-                        Integer rt = Integer.valueOf(parentresource.getResourceType());
-                        if (rt == Onem2m.ResourceType.CSE_BASE) {
-                            String defaultACPID = Onem2mDb.getInstance().getChildResourceID(parentresource.getResourceId(),"_defaultACP");
-                            String hierarchyURI = Onem2mDb.getInstance().getNonHierarchicalNameForResource(defaultACPID);
-                            AccessControlPolicyIDList.add(hierarchyURI);
-                            break;
-                        } else {
-                            parentresource = Onem2mDb.getInstance().getResource(parentresource.getParentId());
-                            jsonContent = new JSONObject(parentresource.getResourceContentJsonString());
-                        }
+                List<String> acpiList = ResourceContentView.of(parentresource).getAccessControlPolicyIds();
+                while (acpiList == null) {
+                    Integer rt = Integer.valueOf(parentresource.getResourceType());
+                    if (rt == Onem2m.ResourceType.CSE_BASE) {
+                        String defaultACPID = Onem2mDb.getInstance().getChildResourceID(parentresource.getResourceId(),"_defaultACP");
+                        String hierarchyURI = Onem2mDb.getInstance().getNonHierarchicalNameForResource(defaultACPID);
+                        AccessControlPolicyIDList.add(hierarchyURI);
+                        break;
+                    } else {
+                        parentresource = Onem2mDb.getInstance().getResource(parentresource.getParentId());
+                        acpiList = ResourceContentView.of(parentresource).getAccessControlPolicyIds();
                     }
-                    if (AccessControlPolicyIDList.isEmpty()) {
-                        // find parent ACPID
-                        JSONArray acpiArray = jsonContent.optJSONArray(BaseResource.ACCESS_CONTROL_POLICY_IDS);
-                        if (acpiArray != null) {
-                            for (int i = 0; i < acpiArray.length(); i++) {
-                                AccessControlPolicyIDList.add(acpiArray.getString(i));
-                            }
-                        }
-                    }
-                } catch (JSONException e) {
-                    LOG.error("Invalid JSON {}", parentresource.getResourceContentJsonString(), e);
-                    throw new IllegalArgumentException("Invalid JSON", e);
+                }
+                if (AccessControlPolicyIDList.isEmpty() && acpiList != null) {
+                    // find parent ACPID
+                    AccessControlPolicyIDList.addAll(acpiList);
                 }
             }
         } else {
@@ -89,30 +80,22 @@ public class CheckAccessControlProcessor {
                 AccessControlPolicyIDList = new ArrayList<>();
                 // get self resource, onem2mresource inside request,
                 Onem2mResource onem2mresource = onem2mRequest.getOnem2mResource();
-                try {
-                    JSONObject jsonContent = new JSONObject(onem2mresource.getResourceContentJsonString());
-                    while (jsonContent.optString(BaseResource.ACCESS_CONTROL_POLICY_IDS, null) == null) {
-                        Integer rt = Integer.valueOf(onem2mresource.getResourceType());
-                        if (rt == Onem2m.ResourceType.CSE_BASE) {
-                            String defaultACPID = Onem2mDb.getInstance().getChildResourceID(onem2mresource.getResourceId(), "_defaultACP");
-                            String hierarchyURI = Onem2mDb.getInstance().getNonHierarchicalNameForResource(defaultACPID);
-                            AccessControlPolicyIDList.add(hierarchyURI);
-                            break;
-                        } else {
-                            onem2mresource = Onem2mDb.getInstance().getResource(onem2mresource.getParentId());
-                            jsonContent = new JSONObject(onem2mresource.getResourceContentJsonString());
-                        }
+                List<String> acpiList = ResourceContentView.of(onem2mresource).getAccessControlPolicyIds();
+                while (acpiList == null) {
+                    Integer rt = Integer.valueOf(onem2mresource.getResourceType());
+                    if (rt == Onem2m.ResourceType.CSE_BASE) {
+                        String defaultACPID = Onem2mDb.getInstance().getChildResourceID(onem2mresource.getResourceId(), "_defaultACP");
+                        String hierarchyURI = Onem2mDb.getInstance().getNonHierarchicalNameForResource(defaultACPID);
+                        AccessControlPolicyIDList.add(hierarchyURI);
+                        break;
+                    } else {
+                        onem2mresource = Onem2mDb.getInstance().getResource(onem2mresource.getParentId());
+                        acpiList = ResourceContentView.of(onem2mresource).getAccessControlPolicyIds();
                     }
+                }
 
-                    if (AccessControlPolicyIDList.isEmpty()) {
-                        JSONArray acpiArray = jsonContent.optJSONArray(BaseResource.ACCESS_CONTROL_POLICY_IDS);
-                        for (int i = 0; i < acpiArray.length(); i++) {
-                            AccessControlPolicyIDList.add(acpiArray.optString(i));
-                        }
-                    }
-                } catch (JSONException e) {
-                    LOG.error("Invalid JSON {}", onem2mresource.getResourceContentJsonString(), e);
-                    throw new IllegalArgumentException("Invalid JSON", e);
+                if (AccessControlPolicyIDList.isEmpty() && acpiList != null) {
+                    AccessControlPolicyIDList.addAll(acpiList);
                 }
             }
         }
@@ -125,7 +108,7 @@ public class CheckAccessControlProcessor {
             Onem2mResource accessControlPolicyResource = Onem2mDb.getInstance().findResourceUsingURI(accessControlPolicyID);
             if (accessControlPolicyResource != null) {
                 try {
-                    JSONObject jsonContent = new JSONObject(accessControlPolicyResource.getResourceContentJsonString());
+                    JSONObject jsonContent = ResourceContentView.of(accessControlPolicyResource).getJsonObject();
                     JSONObject pvJson = jsonContent.optJSONObject(ResourceAccessControlPolicy.PRIVILIEGES);
                     JSONArray acrArray = pvJson.optJSONArray(ResourceAccessControlPolicy.ACCESS_CONTROL_RULES);
                     for (int i = 0; i < acrArray.length(); i++) {
@@ -149,7 +132,7 @@ public class CheckAccessControlProcessor {
                                 if (testGroup != null && Onem2m.ResourceType.GROUP == Integer.valueOf(testGroup.getResourceType())) {
 
                                     try {
-                                        JSONObject gourpjsonObj = new JSONObject(testGroup.getResourceContentJsonString());
+                                        JSONObject gourpjsonObj = ResourceContentView.of(testGroup).getJsonObject();
                                         JSONArray memberIDlist = gourpjsonObj.optJSONArray(ResourceGroup.MEMBERS_IDS);
                                         if (memberIDlist.toString().contains(from)) {
                                             // second : check whether the "From" IP is allowed
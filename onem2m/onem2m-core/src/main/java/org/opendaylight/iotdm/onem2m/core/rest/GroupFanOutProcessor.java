@@ -0,0 +1,451 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2m.core.rest;
+
+import com.google.common.collect.ImmutableSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.opendaylight.iotdm.onem2m.core.Onem2m;
+import org.opendaylight.iotdm.onem2m.core.Onem2mCoreProvider;
+import org.opendaylight.iotdm.onem2m.core.database.Onem2mDb;
+import org.opendaylight.iotdm.onem2m.core.database.transactionCore.ResourceContentView;
+import org.opendaylight.iotdm.onem2m.core.resource.ResourceGroup;
+import org.opendaylight.iotdm.onem2m.core.rest.utils.RequestPrimitive;
+import org.opendaylight.iotdm.onem2m.core.rest.utils.ResponsePrimitive;
+import org.opendaylight.iotdm.onem2m.core.utils.JsonUtils;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.SecurityLevel;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Processes the requests addressed to the fanOutPoint of a group (group/fopt[/sub-path]).  The request is sent
+ * to each member of the group with the sub-path appended to the member ID and the responses of the members are
+ * returned in one aggregatedResponse (m2m:agr) in the order of the memberIDs.
+ *
+ * The members are sent concurrently by a pool of MAX_PARALLELISM threads shared by all fan-outs, at most
+ * MAX_QUEUED tasks wait for a thread. The local members of a create, update or delete are processed as one batch:
+ * their resources are locked together and their writes share one write transaction, so they are committed
+ * together and a fan-out doesn't interleave with another one modifying the same members. The local members of
+ * a retrieve don't write and are sent one by one.
+ * A remote member which doesn't respond within MEMBER_TIMEOUT_MS gets the TARGET_NOT_REACHABLE response, a local
+ * one the REQUEST_TIMEOUT response; the remote member requests rejected by the full queue fail, the local ones
+ * are processed by the requesting thread instead. The nested fan-outs process their local members in their own
+ * thread, the pool threads never wait for each other.
+ * Each member request is checked against the access control of the member as if it was sent by the originator.
+ */
+public class GroupFanOutProcessor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GroupFanOutProcessor.class);
+
+    public static final int MAX_PARALLELISM = 32;
+    public static final int MAX_QUEUED = 1024;
+    public static final long MEMBER_TIMEOUT_MS = 10000;
+    // groups can be members of groups, a group which is its own member must not be fanned out forever
+    private static final int MAX_NESTING_DEPTH = 4;
+    // the target of the member request is the member, the fan-out itself is non-blocking if requested so,
+    // the members are blocking
+    private static final Set<String> MEMBER_EXCLUDED_PRIMITIVES = ImmutableSet.of(
+            RequestPrimitive.TO, RequestPrimitive.RESPONSE_TYPE, RequestPrimitive.RESPONSE_TYPE_NOTIFICATION_URI);
+
+    public static final String AGGREGATED_RESPONSE = "m2m:agr";
+    public static final String RESPONSE = "m2m:rsp";
+
+    private static GroupFanOutProcessor groupFanOutProcessor;
+
+    private final ThreadPoolExecutor executor;
+    private final long memberTimeoutMs;
+    private final ThreadLocal<Integer> nestingDepth = ThreadLocal.withInitial(() -> 0);
+    private final LongAdder numFanOuts = new LongAdder();
+    private final LongAdder numLocalMembers = new LongAdder();
+    private final LongAdder numRemoteMembers = new LongAdder();
+    private final LongAdder numTimeouts = new LongAdder();
+    private final LongAdder numFailed = new LongAdder();
+    private final LongAdder numRejected = new LongAdder();
+    private final LongAdder latencyNanos = new LongAdder();
+
+    private GroupFanOutProcessor() {
+        this(MAX_PARALLELISM, MAX_QUEUED, MEMBER_TIMEOUT_MS);
+    }
+
+    GroupFanOutProcessor(int maxParallelism, int maxQueued, long memberTimeoutMs) {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(maxParallelism, maxParallelism, 60, TimeUnit.SECONDS,
+                                          new ArrayBlockingQueue<>(maxQueued), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "grp-fanout-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        this.memberTimeoutMs = memberTimeoutMs;
+    }
+
+    public static synchronized GroupFanOutProcessor getInstance() {
+        if (groupFanOutProcessor == null) {
+            groupFanOutProcessor = new GroupFanOutProcessor();
+        }
+        return groupFanOutProcessor;
+    }
+
+    /**
+     * Member of the group with the URI the request is sent to.
+     */
+    private static final class Member {
+        private final String uri;
+        private boolean isLocal = false;
+        // the task processing the member and the index of the member's response in its result
+        private Future<List<ResponsePrimitive>> future = null;
+        private int index = 0;
+        private ResponsePrimitive response = null;
+
+        private Member(String uri) {
+            this.uri = uri;
+        }
+    }
+
+    /**
+     * Members processed by one thread, the task returns their responses in the order of the members.
+     */
+    private static final class MemberTask {
+        private final List<Member> members;
+        private final Callable<List<ResponsePrimitive>> callable;
+
+        private MemberTask(List<Member> members, Callable<List<ResponsePrimitive>> callable) {
+            this.members = members;
+            this.callable = callable;
+        }
+    }
+
+    /**
+     * Sends the request to all members of the group and sets the aggregated response.
+     * @param onem2mRequest request addressed to the fanOutPoint
+     * @param onem2mResponse response
+     */
+    public void handleFanOut(RequestPrimitiveProcessor onem2mRequest, ResponsePrimitive onem2mResponse) {
+        long startTime = System.nanoTime();
+        Onem2mDb.CseBaseResourceLocator locator = onem2mRequest.getTargetResourceLocator();
+
+        Onem2mResource groupResource = Onem2mDb.getInstance().findResourceUsingURI(locator.getFanOutGroupURI());
+        if (groupResource == null ||
+                !String.valueOf(Onem2m.ResourceType.GROUP).equals(groupResource.getResourceType())) {
+            onem2mResponse.setRSC(Onem2m.ResponseStatusCode.NOT_FOUND,
+                    "Group of the fanOutPoint not found: " + onem2mRequest.getPrimitiveTo());
+            return;
+        }
+        if (nestingDepth.get() >= MAX_NESTING_DEPTH) {
+            onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST,
+                    "Too many nested fanOutPoints: " + onem2mRequest.getPrimitiveTo());
+            return;
+        }
+        numFanOuts.increment();
+
+        List<Member> members = new ArrayList<>();
+        JSONArray mids = ResourceContentView.of(groupResource).getJsonObject().optJSONArray(ResourceGroup.MEMBERS_IDS);
+        String subPath = locator.getFanOutSubPath();
+        if (mids != null) {
+            for (int i = 0; i < mids.length(); i++) {
+                String mid = mids.optString(i, null);
+                if (mid != null && !mid.isEmpty()) {
+                    members.add(new Member((subPath == null) ? mid : mid + "/" + subPath));
+                }
+            }
+        }
+
+        int depth = nestingDepth.get();
+        boolean isBatched = onem2mRequest.getPrimitiveOperation() != Onem2m.Operation.RETRIEVE;
+        List<Member> localBatch = new ArrayList<>();
+        List<MemberTask> inlineTasks = new ArrayList<>();
+        for (Member member : members) {
+            try {
+                member.isLocal = Onem2mDb.getInstance().createResourceLocator(member.uri).isLocalResource();
+            } catch (IllegalArgumentException e) {
+                member.response = memberErrorResponse(onem2mRequest, Onem2m.ResponseStatusCode.BAD_REQUEST,
+                                                      "Invalid member URI: " + member.uri);
+                continue;
+            }
+            if (member.isLocal) {
+                numLocalMembers.increment();
+                if (isBatched) {
+                    localBatch.add(member);
+                    continue;
+                }
+            } else {
+                numRemoteMembers.increment();
+            }
+            MemberTask task = memberTask(Collections.singletonList(member), depth + 1,
+                    () -> Collections.singletonList(sendToMember(onem2mRequest, member.uri)));
+            if (member.isLocal && depth > 0) {
+                // nested fan-out running in a pool thread
+                inlineTasks.add(task);
+            } else if (!submit(task)) {
+                if (member.isLocal) {
+                    inlineTasks.add(task);
+                } else {
+                    member.response = memberErrorResponse(onem2mRequest,
+                            Onem2m.ResponseStatusCode.INTERNAL_SERVER_ERROR,
+                            "Fan-out rejected, too many queued member requests");
+                }
+            }
+        }
+        if (!localBatch.isEmpty()) {
+            MemberTask task = memberTask(localBatch, depth + 1, () -> processLocalBatch(onem2mRequest, localBatch));
+            if (depth > 0 || !submit(task)) {
+                inlineTasks.add(task);
+            }
+        }
+
+        // processed while the other members are in flight
+        for (MemberTask task : inlineTasks) {
+            runInline(onem2mRequest, task);
+        }
+        awaitMembers(onem2mRequest, members, startTime);
+
+        JSONArray rspArray = new JSONArray();
+        for (Member member : members) {
+            rspArray.put(toJson(member));
+        }
+        JSONObject agr = new JSONObject();
+        JsonUtils.put(agr, RESPONSE, rspArray);
+        JSONObject content = new JSONObject();
+        JsonUtils.put(content, AGGREGATED_RESPONSE, agr);
+
+        onem2mResponse.setPrimitiveContent(content.toString());
+        onem2mResponse.setPrimitiveContentFormat(Onem2m.ContentFormat.JSON);
+        onem2mResponse.setPrimitiveHttpContentType(Onem2m.ContentType.APP_VND_RES_JSON);
+        onem2mResponse.setPrimitiveResponseStatusCode(Onem2m.ResponseStatusCode.OK);
+        latencyNanos.add(System.nanoTime() - startTime);
+    }
+
+    /*
+     * The member requests run with the nesting depth of the fan-out they belong to, the depth is kept by a
+     * ThreadLocal because the nested fan-out is reached through the request processing.
+     */
+    private MemberTask memberTask(List<Member> taskMembers, int depth, Callable<List<ResponsePrimitive>> callable) {
+        return new MemberTask(taskMembers, () -> {
+            int callerDepth = nestingDepth.get();
+            nestingDepth.set(depth);
+            try {
+                return callable.call();
+            } finally {
+                nestingDepth.set(callerDepth);
+            }
+        });
+    }
+
+    private boolean submit(MemberTask task) {
+        Future<List<ResponsePrimitive>> future;
+        try {
+            future = executor.submit(task.callable);
+        } catch (RejectedExecutionException e) {
+            numRejected.increment();
+            return false;
+        }
+        for (int i = 0; i < task.members.size(); i++) {
+            task.members.get(i).future = future;
+            task.members.get(i).index = i;
+        }
+        return true;
+    }
+
+    private void runInline(RequestPrimitiveProcessor onem2mRequest, MemberTask task) {
+        try {
+            List<ResponsePrimitive> responses = task.callable.call();
+            for (int i = 0; i < task.members.size(); i++) {
+                task.members.get(i).response = responses.get(i);
+            }
+        } catch (Exception e) {
+            LOG.error("handleFanOut: members: {}, {}", task.members.size(), e.toString());
+            for (Member member : task.members) {
+                member.response = memberErrorResponse(onem2mRequest, Onem2m.ResponseStatusCode.INTERNAL_SERVER_ERROR,
+                                                      "Request to member failed: " + member.uri);
+            }
+        }
+    }
+
+    /*
+     * The local members of a create, update or delete hold the locks of all their resources until their writes
+     * are committed in one transaction.  The member requests write to the transaction of the batch and their
+     * responses are completed by its commit.
+     */
+    private List<ResponsePrimitive> processLocalBatch(RequestPrimitiveProcessor onem2mRequest,
+                                                      List<Member> localMembers) {
+        List<ResponsePrimitive> responses = new ArrayList<>(localMembers.size());
+        Set<String> resourceIds = new LinkedHashSet<>();
+        for (Member member : localMembers) {
+            Onem2mResource resource = Onem2mDb.getInstance().findResourceUsingURI(member.uri);
+            if (resource != null) {
+                resourceIds.add(resource.getResourceId());
+            }
+        }
+        if (!RequestLocker.getInstance().TryLockResources(resourceIds, RequestPrimitiveProcessor.LOCK_TIMEOUT_SEC,
+                                                          TimeUnit.SECONDS)) {
+            for (Member member : localMembers) {
+                responses.add(memberErrorResponse(onem2mRequest, Onem2m.ResponseStatusCode.INTERNAL_SERVER_ERROR,
+                                                  "Timeout while waiting for resource: " + member.uri));
+            }
+            return responses;
+        }
+        boolean committed;
+        try {
+            Object transaction = Onem2mDb.getInstance().startWriteTransaction();
+            // the nested fan-outs bind their own batch
+            Object callerTransaction = RequestPrimitiveProcessor.bindBatchWriterTransaction(transaction);
+            try {
+                for (Member member : localMembers) {
+                    responses.add(sendToMember(onem2mRequest, member.uri));
+                }
+            } finally {
+                RequestPrimitiveProcessor.bindBatchWriterTransaction(callerTransaction);
+                committed = Onem2mDb.getInstance().endWriteTransaction(transaction);
+            }
+        } finally {
+            RequestLocker.getInstance().UnlockResources(resourceIds);
+        }
+
+        if (!committed) {
+            // the members which have written are the ones waiting for the commit to complete their response
+            for (ResponsePrimitive memberResponse : responses) {
+                if (memberResponse.getPrimitiveResponseStatusCode() == null) {
+                    numFailed.increment();
+                    memberResponse.setRSC(Onem2m.ResponseStatusCode.INTERNAL_SERVER_ERROR,
+                                          "Database transaction failed!");
+                }
+            }
+        }
+        return responses;
+    }
+
+    private void awaitMembers(RequestPrimitiveProcessor onem2mRequest, List<Member> members, long startTime) {
+        long deadline = startTime + TimeUnit.MILLISECONDS.toNanos(memberTimeoutMs);
+        for (Member member : members) {
+            if (member.future == null) {
+                continue;
+            }
+            try {
+                member.response = member.future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)
+                                               .get(member.index);
+            } catch (TimeoutException | CancellationException e) {
+                numTimeouts.increment();
+                if (member.isLocal) {
+                    // the local request isn't interrupted in the middle of its write, it isn't started if queued
+                    member.future.cancel(false);
+                    member.response = memberErrorResponse(onem2mRequest, Onem2m.ResponseStatusCode.REQUEST_TIMEOUT,
+                                                          "Member did not respond in time: " + member.uri);
+                } else {
+                    member.future.cancel(true);
+                    member.response = memberErrorResponse(onem2mRequest,
+                            Onem2m.ResponseStatusCode.TARGET_NOT_REACHABLE,
+                            "Member did not respond in time: " + member.uri);
+                }
+            } catch (ExecutionException e) {
+                LOG.error("awaitMembers: member: {}, {}", member.uri, e.getCause().toString());
+                member.response = memberErrorResponse(onem2mRequest, Onem2m.ResponseStatusCode.INTERNAL_SERVER_ERROR,
+                                                      "Request to member failed: " + member.uri);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                member.future.cancel(!member.isLocal);
+                member.response = memberErrorResponse(onem2mRequest, Onem2m.ResponseStatusCode.TARGET_NOT_REACHABLE,
+                                                      "Fan-out interrupted");
+            }
+        }
+    }
+
+    /*
+     * Sends the request to the member the same way as the received requests are processed, the access of the
+     * originator is checked and the requests for remote members are forwarded.
+     */
+    ResponsePrimitive sendToMember(RequestPrimitiveProcessor onem2mRequest, String memberUri) {
+        RequestPrimitive memberRequest = new RequestPrimitive();
+        memberRequest.copyPrimitives(onem2mRequest.getReceivedRequest(), MEMBER_EXCLUDED_PRIMITIVES);
+        memberRequest.setPrimitive(RequestPrimitive.TO, memberUri);
+
+        SecurityLevel securityLevel = onem2mRequest.getSenderSecurityLevel();
+        try {
+            return Onem2mCoreProvider.getInstance().handle(memberRequest,
+                    (securityLevel == null) ? SecurityLevel.L0 : securityLevel,
+                    onem2mRequest.getSenderIsCse(), onem2mRequest.getSenderCseBaseId(),
+                    onem2mRequest.getSenderIdentity());
+        } catch (RuntimeException e) {
+            LOG.error("sendToMember: member: {}, {}", memberUri, e.toString());
+            return memberErrorResponse(onem2mRequest, Onem2m.ResponseStatusCode.BAD_REQUEST,
+                                       "Request to member failed: " + memberUri);
+        }
+    }
+
+    private ResponsePrimitive memberErrorResponse(RequestPrimitive onem2mRequest, String rsc, String message) {
+        numFailed.increment();
+        ResponsePrimitive memberResponse = new ResponsePrimitive();
+        memberResponse.setPrimitiveRequestIdentifier(onem2mRequest.getPrimitiveRequestIdentifier());
+        memberResponse.setRSC(rsc, message);
+        return memberResponse;
+    }
+
+    private static JSONObject toJson(Member member) {
+        ResponsePrimitive memberResponse = member.response;
+        JSONObject rsp = new JSONObject();
+        String rsc = memberResponse.getPrimitiveResponseStatusCode();
+        if (rsc == null) {
+            // processed without error
+            rsc = Onem2m.ResponseStatusCode.OK;
+        }
+        try {
+            JsonUtils.put(rsp, ResponsePrimitive.RESPONSE_STATUS_CODE, Integer.valueOf(rsc));
+        } catch (NumberFormatException e) {
+            JsonUtils.put(rsp, ResponsePrimitive.RESPONSE_STATUS_CODE, rsc);
+        }
+        JsonUtils.put(rsp, ResponsePrimitive.REQUEST_IDENTIFIER, memberResponse.getPrimitiveRequestIdentifier());
+        JsonUtils.put(rsp, ResponsePrimitive.TO, member.uri);
+
+        String content = memberResponse.getPrimitiveContent();
+        if (content != null && !content.isEmpty()) {
+            try {
+                JsonUtils.put(rsp, ResponsePrimitive.CONTENT, new JSONObject(content));
+            } catch (JSONException e) {
+                JsonUtils.put(rsp, ResponsePrimitive.CONTENT, content);
+            }
+        }
+        return rsp;
+    }
+
+    public JSONObject getStats() {
+        JSONObject js = new JSONObject();
+        long fanOuts = numFanOuts.sum();
+        JsonUtils.put(js, "fan_outs", fanOuts);
+        JsonUtils.put(js, "local_members", numLocalMembers.sum());
+        JsonUtils.put(js, "remote_members", numRemoteMembers.sum());
+        JsonUtils.put(js, "timeouts", numTimeouts.sum());
+        JsonUtils.put(js, "failed", numFailed.sum());
+        JsonUtils.put(js, "rejected", numRejected.sum());
+        JsonUtils.put(js, "active_threads", executor.getActiveCount());
+        JsonUtils.put(js, "queued", executor.getQueue().size());
+        JsonUtils.put(js, "latency_avg_us", fanOuts == 0 ? 0 :
+                TimeUnit.NANOSECONDS.toMicros(latencyNanos.sum()) / fanOuts);
+        return js;
+    }
+}
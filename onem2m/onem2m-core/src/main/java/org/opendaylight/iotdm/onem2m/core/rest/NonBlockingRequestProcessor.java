@@ -0,0 +1,368 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2m.core.rest;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.opendaylight.iotdm.onem2m.core.Onem2m;
+import org.opendaylight.iotdm.onem2m.core.Onem2mCoreProvider;
+import org.opendaylight.iotdm.onem2m.core.rest.utils.NotificationPrimitive;
+import org.opendaylight.iotdm.onem2m.core.rest.utils.RequestPrimitive;
+import org.opendaylight.iotdm.onem2m.core.rest.utils.ResponsePrimitive;
+import org.opendaylight.iotdm.onem2m.core.utils.JsonUtils;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.ResourceChanged;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.ResourceChangedBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Processes the nonBlockingRequestSynch and nonBlockingRequestAsynch requests.  The request is acknowledged
+ * immediately by the ACCEPTED response with the reference of the request and it's executed later by a pool of
+ * MAX_WORKERS threads, so a slow operation doesn't hold the protocol thread of the sender.  At most MAX_QUEUED
+ * requests wait for a worker, the requests above the limit are rejected by the NOT_ACCEPTABLE response instead
+ * of queueing without bound (oneM2M defines no overload status code, NOT_ACCEPTABLE tells the originator that
+ * the receiver can't take the request now, not that non-blocking requests are not supported).
+ *
+ * The status and the result of the request are kept in memory for REQUEST_TTL_MS after the request has been
+ * accepted, the originator retrieves them by the reference (nonBlockingRequestSynch) or they are sent to the
+ * notificationURIs of the response type when the request is finished (nonBlockingRequestAsynch).  The requests
+ * are tracked only in memory, they are lost by restart.
+ */
+public class NonBlockingRequestProcessor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NonBlockingRequestProcessor.class);
+
+    public static final int MAX_WORKERS = 16;
+    public static final int MAX_QUEUED = 1024;
+    public static final long REQUEST_TTL_MS = TimeUnit.MINUTES.toMillis(5);
+    // the oldest requests are evicted before their TTL if there are too many of them
+    private static final int MAX_TRACKED_REQUESTS = 100000;
+
+    // name of the request reference, /<cseBaseName>/<REQUEST_REFERENCE_PREFIX><id>
+    public static final String REQUEST_REFERENCE_PREFIX = "nbreq-";
+
+    public static final String URI = "m2m:uri";
+    public static final String REQUEST = "m2m:req";
+    public static final String RESPONSE = "m2m:rsp";
+    public static final String REQUEST_ID = "rid";
+    public static final String ORIGINATOR = "og";
+    public static final String REQUEST_STATUS = "rs";
+    public static final String OPERATION_RESULT = "ol";
+
+    private static NonBlockingRequestProcessor nonBlockingRequestProcessor;
+
+    private final ThreadPoolExecutor executor;
+    private final long requestTtlMs;
+    private final Map<String, TrackedRequest> trackedRequests = new ConcurrentHashMap<>();
+    // the TTL is the same for all requests so the requests in the accept order expire in the same order
+    private final Queue<TrackedRequest> expiryQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicLong nextId = new AtomicLong();
+    private final LongAdder numAccepted = new LongAdder();
+    private final LongAdder numRejected = new LongAdder();
+    private final LongAdder numCompleted = new LongAdder();
+    private final LongAdder numFailed = new LongAdder();
+    private final LongAdder numEvicted = new LongAdder();
+    private final LongAdder numNotified = new LongAdder();
+
+    private NonBlockingRequestProcessor() {
+        this(MAX_WORKERS, MAX_QUEUED, REQUEST_TTL_MS);
+    }
+
+    NonBlockingRequestProcessor(int maxWorkers, int maxQueued, long requestTtlMs) {
+        this.requestTtlMs = requestTtlMs;
+        final AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(maxWorkers, maxWorkers, 60, TimeUnit.SECONDS,
+                                          new ArrayBlockingQueue<>(maxQueued), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "nb-request-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public static synchronized NonBlockingRequestProcessor getInstance() {
+        if (nonBlockingRequestProcessor == null) {
+            nonBlockingRequestProcessor = new NonBlockingRequestProcessor();
+        }
+        return nonBlockingRequestProcessor;
+    }
+
+    /**
+     * Stops the workers, the pending requests are not executed.
+     */
+    void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * State of the accepted request, only the result is kept, not the request.
+     */
+    private static final class TrackedRequest {
+        private final String id;
+        // the only URI the request is accessed by, /<cseBaseName>/<id>
+        private final String reference;
+        private final String originator;
+        private final String requestIdentifier;
+        private final long expiresAtNanos;
+        private volatile String requestStatus = Onem2m.RequestStatus.PENDING;
+        private volatile String responseStatusCode = null;
+        private volatile String content = null;
+
+        private TrackedRequest(String id, String cseBaseName, String originator, String requestIdentifier,
+                               long expiresAtNanos) {
+            this.id = id;
+            this.reference = "/" + cseBaseName + "/" + id;
+            this.originator = originator;
+            this.requestIdentifier = requestIdentifier;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+
+    /**
+     * @param onem2mRequest received request
+     * @return true if the sender doesn't wait for the result of the request
+     */
+    public static boolean isNonBlocking(RequestPrimitive onem2mRequest) {
+        Integer responseType = onem2mRequest.getPrimitiveResponseType();
+        return responseType != null && (responseType == Onem2m.ResponseType.NON_BLOCKING_REQUEST_SYNCH ||
+                                        responseType == Onem2m.ResponseType.NON_BLOCKING_REQUEST_ASYNCH);
+    }
+
+    /**
+     * Accepts the request and submits its execution to the workers.
+     * @param onem2mRequest the non-blocking request, its permissions have been checked already
+     * @param cseBaseName name of the cseBase the reference of the request is created in
+     * @param cseBaseCseId CSE-ID of the cseBase, the sender of the result notifications
+     * @param operation executes the request as blocking and returns the response, it's called by a worker
+     * @return ACCEPTED response with the reference of the request or the error response if the request can't be
+     * accepted
+     */
+    public ResponsePrimitive accept(final RequestPrimitive onem2mRequest,
+                                    final String cseBaseName,
+                                    final String cseBaseCseId,
+                                    final Supplier<ResponsePrimitive> operation) {
+        ResponsePrimitive onem2mResponse = new ResponsePrimitive();
+        onem2mResponse.setPrimitiveRequestIdentifier(onem2mRequest.getPrimitiveRequestIdentifier());
+
+        long now = System.nanoTime();
+        evictExpired(now);
+
+        final TrackedRequest tracked = new TrackedRequest(REQUEST_REFERENCE_PREFIX + nextId.incrementAndGet(),
+                cseBaseName, onem2mRequest.getPrimitiveFrom(), onem2mRequest.getPrimitiveRequestIdentifier(),
+                now + TimeUnit.MILLISECONDS.toNanos(requestTtlMs));
+        final List<String> notificationUris =
+                (onem2mRequest.getPrimitiveResponseType() == Onem2m.ResponseType.NON_BLOCKING_REQUEST_ASYNCH) ?
+                        onem2mRequest.getPrimitiveResponseTypeNotificationUris() : null;
+        final String senderCseId = cseBaseCseId;
+
+        trackedRequests.put(tracked.id, tracked);
+        expiryQueue.add(tracked);
+        try {
+            executor.execute(() -> execute(tracked, operation, notificationUris, senderCseId));
+        } catch (RejectedExecutionException e) {
+            trackedRequests.remove(tracked.id);
+            expiryQueue.remove(tracked);
+            numRejected.increment();
+            LOG.warn("accept: too many pending non-blocking requests, rejected: {}", tracked.requestIdentifier);
+            onem2mResponse.setRSC(Onem2m.ResponseStatusCode.NOT_ACCEPTABLE,
+                                  "Too many pending non-blocking requests, retry later");
+            return onem2mResponse;
+        }
+        numAccepted.increment();
+
+        String reference = tracked.reference;
+        JSONObject content = new JSONObject();
+        JsonUtils.put(content, URI, reference);
+        onem2mResponse.setPrimitiveContent(content.toString());
+        onem2mResponse.setPrimitiveContentFormat(Onem2m.ContentFormat.JSON);
+        onem2mResponse.setPrimitiveHttpContentType(Onem2m.ContentType.APP_VND_RES_JSON);
+        onem2mResponse.setPrimitiveContentLocation(reference);
+        onem2mResponse.setPrimitiveResponseStatusCode(Onem2m.ResponseStatusCode.ACCEPTED);
+        return onem2mResponse;
+    }
+
+    private void execute(TrackedRequest tracked, Supplier<ResponsePrimitive> operation,
+                         List<String> notificationUris, String senderCseId) {
+        ResponsePrimitive result;
+        try {
+            result = operation.get();
+        } catch (RuntimeException e) {
+            LOG.error("execute: non-blocking request failed: {}, {}", tracked.requestIdentifier, e.toString());
+            result = new ResponsePrimitive();
+            result.setRSC(Onem2m.ResponseStatusCode.INTERNAL_SERVER_ERROR, "Request processing failed");
+        }
+
+        String rsc = result.getPrimitiveResponseStatusCode();
+        if (rsc == null) {
+            rsc = Onem2m.ResponseStatusCode.OK;
+        }
+        // the status is set last, the result is complete when the status is not pending
+        tracked.content = result.getPrimitiveContent();
+        tracked.responseStatusCode = rsc;
+        if (rsc.equals(Onem2m.ResponseStatusCode.ACCEPTED)) {
+            // forwarded to the CSE which accepted it as non-blocking as well
+            tracked.requestStatus = Onem2m.RequestStatus.FORWARDED;
+        } else if (rsc.startsWith("2")) {
+            tracked.requestStatus = Onem2m.RequestStatus.COMPLETED;
+            numCompleted.increment();
+        } else {
+            tracked.requestStatus = Onem2m.RequestStatus.FAILED;
+            numFailed.increment();
+        }
+
+        if (notificationUris != null && !notificationUris.isEmpty()) {
+            sendResultNotification(tracked, notificationUris, senderCseId);
+        }
+    }
+
+    private void sendResultNotification(TrackedRequest tracked, List<String> notificationUris, String senderCseId) {
+        NotificationPrimitive onem2mNotification = new NotificationPrimitive();
+        for (String uri : notificationUris) {
+            onem2mNotification.setPrimitiveMany(NotificationPrimitive.URI, uri);
+        }
+        JSONObject notification = new JSONObject();
+        JsonUtils.put(notification, RESPONSE, operationResultToJson(tracked));
+        onem2mNotification.setPrimitive(NotificationPrimitive.CONTENT, notification.toString());
+
+        ResourceChanged rc = new ResourceChangedBuilder()
+                .setOnem2mPrimitive(onem2mNotification.getPrimitivesList())
+                .setSenderCseId(senderCseId)
+                .build();
+        try {
+            Onem2mCoreProvider.getNotifier().putNotification(rc);
+            numNotified.increment();
+        } catch (Exception e) {
+            LOG.error("sendResultNotification: cannot send notification: {}", tracked.requestIdentifier);
+        }
+    }
+
+    /**
+     * Handles the requests addressed to the reference of an accepted request, the originator of the request
+     * can retrieve its status and result or delete it.  Only the exact reference /<cseBaseName>/nbreq-<n>
+     * (or its CSE-relative form without the leading slash) is matched, the requests to the resources are not
+     * affected even if their names start with the prefix of the references.
+     * @param onem2mRequest received request
+     * @return response or null if the request is not addressed to a tracked request
+     */
+    public ResponsePrimitive handleRequestReference(RequestPrimitive onem2mRequest) {
+        String to = onem2mRequest.getPrimitiveTo();
+        if (to == null || trackedRequests.isEmpty()) {
+            return null;
+        }
+        int idStart = to.lastIndexOf('/') + 1;
+        if (!to.startsWith(REQUEST_REFERENCE_PREFIX, idStart)) {
+            return null;
+        }
+        String id = to.substring(idStart);
+        evictExpired(System.nanoTime());
+        TrackedRequest tracked = trackedRequests.get(id);
+        if (tracked == null || !(tracked.reference.equals(to) || tracked.reference.substring(1).equals(to))) {
+            return null;
+        }
+
+        ResponsePrimitive onem2mResponse = new ResponsePrimitive();
+        onem2mResponse.setPrimitiveRequestIdentifier(onem2mRequest.getPrimitiveRequestIdentifier());
+        if (tracked.originator != null && !tracked.originator.equals(onem2mRequest.getPrimitiveFrom())) {
+            onem2mResponse.setRSC(Onem2m.ResponseStatusCode.ACCESS_DENIED,
+                                  "Request can be accessed by its originator only: " + to);
+            return onem2mResponse;
+        }
+
+        Integer operation = onem2mRequest.getPrimitiveOperation();
+        if (operation == Onem2m.Operation.RETRIEVE) {
+            JSONObject req = new JSONObject();
+            JsonUtils.put(req, REQUEST_ID, tracked.requestIdentifier);
+            JsonUtils.put(req, ORIGINATOR, tracked.originator);
+            String requestStatus = tracked.requestStatus;
+            JsonUtils.put(req, REQUEST_STATUS, Integer.valueOf(requestStatus));
+            if (!requestStatus.equals(Onem2m.RequestStatus.PENDING)) {
+                JsonUtils.put(req, OPERATION_RESULT, operationResultToJson(tracked));
+            }
+            JSONObject content = new JSONObject();
+            JsonUtils.put(content, REQUEST, req);
+            onem2mResponse.setPrimitiveContent(content.toString());
+            onem2mResponse.setPrimitiveContentFormat(Onem2m.ContentFormat.JSON);
+            onem2mResponse.setPrimitiveHttpContentType(Onem2m.ContentType.APP_VND_RES_JSON);
+            onem2mResponse.setPrimitiveResponseStatusCode(Onem2m.ResponseStatusCode.OK);
+        } else if (operation == Onem2m.Operation.DELETE) {
+            trackedRequests.remove(id);
+            onem2mResponse.setPrimitiveResponseStatusCode(Onem2m.ResponseStatusCode.DELETED);
+        } else {
+            onem2mResponse.setRSC(Onem2m.ResponseStatusCode.OPERATION_NOT_ALLOWED,
+                                  "Operation not allowed for request: " + to);
+        }
+        return onem2mResponse;
+    }
+
+    private static JSONObject operationResultToJson(TrackedRequest tracked) {
+        JSONObject rsp = new JSONObject();
+        String rsc = tracked.responseStatusCode;
+        try {
+            JsonUtils.put(rsp, ResponsePrimitive.RESPONSE_STATUS_CODE, Integer.valueOf(rsc));
+        } catch (NumberFormatException e) {
+            JsonUtils.put(rsp, ResponsePrimitive.RESPONSE_STATUS_CODE, rsc);
+        }
+        JsonUtils.put(rsp, ResponsePrimitive.REQUEST_IDENTIFIER, tracked.requestIdentifier);
+        String content = tracked.content;
+        if (content != null && !content.isEmpty()) {
+            try {
+                JsonUtils.put(rsp, ResponsePrimitive.CONTENT, new JSONObject(content));
+            } catch (JSONException e) {
+                JsonUtils.put(rsp, ResponsePrimitive.CONTENT, content);
+            }
+        }
+        return rsp;
+    }
+
+    /*
+     * Removes the requests in the accept order until the first which hasn't expired, the oldest requests are
+     * removed also if there are too many of them.
+     */
+    private void evictExpired(long now) {
+        TrackedRequest oldest;
+        while ((oldest = expiryQueue.peek()) != null) {
+            if (oldest.expiresAtNanos - now > 0 && trackedRequests.size() <= MAX_TRACKED_REQUESTS) {
+                return;
+            }
+            if (expiryQueue.remove(oldest) && trackedRequests.remove(oldest.id, oldest)) {
+                numEvicted.increment();
+            }
+        }
+    }
+
+    public JSONObject getStats() {
+        JSONObject js = new JSONObject();
+        JsonUtils.put(js, "accepted", numAccepted.sum());
+        JsonUtils.put(js, "rejected", numRejected.sum());
+        JsonUtils.put(js, "completed", numCompleted.sum());
+        JsonUtils.put(js, "failed", numFailed.sum());
+        JsonUtils.put(js, "notified", numNotified.sum());
+        JsonUtils.put(js, "evicted", numEvicted.sum());
+        JsonUtils.put(js, "tracked", trackedRequests.size());
+        JsonUtils.put(js, "active_workers", executor.getActiveCount());
+        JsonUtils.put(js, "queued", executor.getQueue().size());
+        return js;
+    }
+}
@@ -18,9 +18,9 @@ import static org.opendaylight.iotdm.onem2m.core.Onem2m.EventType.UPDATE_RESOURC
 
 import com.google.common.collect.Lists;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -31,14 +31,14 @@ import org.json.JSONObject;
 import org.opendaylight.iotdm.onem2m.core.Onem2m;
 import org.opendaylight.iotdm.onem2m.core.Onem2mCoreProvider;
 import org.opendaylight.iotdm.onem2m.core.database.Onem2mDb;
+import org.opendaylight.iotdm.onem2m.core.database.transactionCore.ResourceContentView;
+import org.opendaylight.iotdm.onem2m.core.database.transactionCore.SubscriptionCriteria;
 import org.opendaylight.iotdm.onem2m.core.resource.BaseResource;
 import org.opendaylight.iotdm.onem2m.core.resource.ResourceAE;
-import org.opendaylight.iotdm.onem2m.core.resource.ResourceContainer;
-import org.opendaylight.iotdm.onem2m.core.resource.ResourceContentInstance;
 import org.opendaylight.iotdm.onem2m.core.resource.ResourceSubscription;
 import org.opendaylight.iotdm.onem2m.core.rest.utils.NotificationPrimitive;
 import org.opendaylight.iotdm.onem2m.core.rest.utils.RequestPrimitive;
-import org.opendaylight.iotdm.onem2m.core.utils.Onem2mDateTime;
+import org.opendaylight.iotdm.onem2m.core.router.Onem2mPollingChannelQueues;
 import org.opendaylight.iotdm.onem2m.core.utils.JsonUtils;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.ResourceChanged;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.ResourceChangedBuilder;
@@ -88,19 +88,15 @@ public class NotificationProcessor {
      * This routine looks at the notification content type and build the json representation based on its setting.
      *
      * @param onem2mRequest      the set of request primitives
-     * @param onem2mNotification the set of notification primitives
+     * @param subscription       the compiled subscription
      */
-    private JSONObject produceJsonContent(RequestPrimitive onem2mRequest, NotificationPrimitive onem2mNotification) {
+    private JSONObject produceJsonContent(RequestPrimitive onem2mRequest, SubscriptionCriteria subscription) {
 
         JSONObject content = null;
 
         Onem2mResource onem2mResource = onem2mRequest.getOnem2mResource();
 
-        String nct = onem2mNotification.getJsonSubscriptionResourceContent()
-                .optString(ResourceSubscription.NOTIFICATION_CONTENT_TYPE, null);
-        if (nct == null) {
-            nct = Onem2m.NotificationContentType.WHOLE_RESOURCE;
-        }
+        String nct = subscription.getNotificationContentType();
         switch (nct) {
             case Onem2m.NotificationContentType.MODIFIED_ATTRIBUTES:
                 // cache the resourceContent so input json keys are known for modified attrs
@@ -154,14 +150,14 @@ public class NotificationProcessor {
      */
     private void handleEventTypeA(RequestPrimitive onem2mRequest) {
         Onem2mDb onem2mDb = Onem2mDb.getInstance();
-        List<String> subscriptionsResourceIds = onem2mDb.selfSubscriptionsResourceIds(onem2mRequest, UPDATE_RESOURCE);
+        List<SubscriptionCriteria> subscriptions = onem2mDb.selfSubscriptions(onem2mRequest, UPDATE_RESOURCE);
 
         //notify also parent if it has stateTag
         if (parentHasStateTag(onem2mRequest)) {
-            subscriptionsResourceIds.addAll(onem2mDb.parentSubscriptionsResourceIds(onem2mRequest, UPDATE_RESOURCE, false));
+            subscriptions.addAll(onem2mDb.parentSubscriptions(onem2mRequest, UPDATE_RESOURCE, false));
         }
 
-        sendNotificationAccordingToType(onem2mRequest, subscriptionsResourceIds, UPDATE_RESOURCE);
+        sendNotificationAccordingToType(onem2mRequest, subscriptions, UPDATE_RESOURCE);
     }
 
     /**
@@ -170,8 +166,8 @@ public class NotificationProcessor {
      * @param onem2mRequest onem2mrequest
      */
     private void handleEventTypeB(RequestPrimitive onem2mRequest) {
-        List<String> subscriptionsResourceIds = Onem2mDb.getInstance().selfSubscriptionsResourceIds(onem2mRequest, DELETE_RESOURCE);
-        sendNotificationAccordingToType(onem2mRequest, subscriptionsResourceIds, DELETE_RESOURCE);
+        List<SubscriptionCriteria> subscriptions = Onem2mDb.getInstance().selfSubscriptions(onem2mRequest, DELETE_RESOURCE);
+        sendNotificationAccordingToType(onem2mRequest, subscriptions, DELETE_RESOURCE);
     }
 
     /**
@@ -199,19 +195,19 @@ public class NotificationProcessor {
      * @param isCreateChild use CREATE_CHILD if true or DELETE_CHILD otherwise
      */
     private void handleParentSubscriptions(RequestPrimitive onem2mRequest, boolean isCreateChild) {
-        Map<String, List<String>> eventTypeToSubscriptionsResourceIds = new HashMap<>();
+        Map<String, List<SubscriptionCriteria>> eventTypeToSubscriptions = new HashMap<>();
         List<String> eventTypes = Lists.newArrayList(isCreateChild ? CREATE_CHILD:DELETE_CHILD, UPDATE_RESOURCE);
 
         for (String eventType : eventTypes) {
             if (!eventType.equals(UPDATE_RESOURCE) || parentHasStateTag(onem2mRequest)) {
                 //skip notification for subscription create - isCreateChild=true
-                List<String> subscriptionsResourceIds = Onem2mDb.getInstance()
-                                                       .parentSubscriptionsResourceIds(onem2mRequest, eventType, isCreateChild);
-                eventTypeToSubscriptionsResourceIds.put(eventType, subscriptionsResourceIds);
+                List<SubscriptionCriteria> subscriptions = Onem2mDb.getInstance()
+                                                       .parentSubscriptions(onem2mRequest, eventType, isCreateChild);
+                eventTypeToSubscriptions.put(eventType, subscriptions);
             }
         }
 
-        sendNotificationAccordingToType(onem2mRequest, eventTypeToSubscriptionsResourceIds);
+        sendNotificationAccordingToType(onem2mRequest, eventTypeToSubscriptions);
     }
 
     /**
@@ -219,8 +215,8 @@ public class NotificationProcessor {
      *
      * @param onem2mRequest onem2mrequest
      */
-    public void handleEventTypeE(RequestPrimitive onem2mRequest, List<String> subscriptionsResourceIds) {
-        sendNotificationAccordingToType(onem2mRequest, subscriptionsResourceIds, RETRIEVE_NECHILD);
+    public void handleEventTypeE(RequestPrimitive onem2mRequest, List<SubscriptionCriteria> subscriptions) {
+        sendNotificationAccordingToType(onem2mRequest, subscriptions, RETRIEVE_NECHILD);
     }
 
     /**
@@ -231,8 +227,8 @@ public class NotificationProcessor {
      */
 
     private void handleEventTypeF(RequestPrimitive onem2mRequest) {
-        List<String> subscriptionsResourceIds = Onem2mDb.getInstance().findAllAncestorsSubscriptionID(onem2mRequest);
-        sendNotificationAccordingToType(onem2mRequest, subscriptionsResourceIds, ANY_DESCENDANT_CHANGE);
+        List<SubscriptionCriteria> subscriptions = Onem2mDb.getInstance().findAllAncestorsSubscriptions(onem2mRequest);
+        sendNotificationAccordingToType(onem2mRequest, subscriptions, ANY_DESCENDANT_CHANGE);
     }
 
     private boolean parentHasStateTag(RequestPrimitive onem2mRequest) {
@@ -245,44 +241,30 @@ public class NotificationProcessor {
         return Onem2m.stateTaggedResourceTypes.contains(parentResourceType);
     }
 
-    private void sendNotificationAccordingToType(RequestPrimitive onem2mRequest, Map<String, List<String>> eventTypeToSubscriptionsResourceIds) {
-        for (Map.Entry<String, List<String>> entry : eventTypeToSubscriptionsResourceIds.entrySet()) {
+    private void sendNotificationAccordingToType(RequestPrimitive onem2mRequest, Map<String, List<SubscriptionCriteria>> eventTypeToSubscriptions) {
+        for (Map.Entry<String, List<SubscriptionCriteria>> entry : eventTypeToSubscriptions.entrySet()) {
             sendNotificationAccordingToType(onem2mRequest, entry.getValue(), entry.getKey());
         }
     }
 
-    private void sendNotificationAccordingToType(RequestPrimitive onem2mRequest, List<String> subscriptionsResourceIds, String eventType) {
+    private void sendNotificationAccordingToType(RequestPrimitive onem2mRequest, List<SubscriptionCriteria> subscriptions, String eventType) {
 
-        for (String subscriptionResourceId : subscriptionsResourceIds) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
 
-            JSONObject notification = new JSONObject();
-            JSONObject notificationEvent = new JSONObject();
-            JSONObject representation;
-            JSONObject operationMonitor = new JSONObject();
+        // read only, the content is the same for all subscriptions
+        ResourceContentView changedResource = ResourceContentView.of(onem2mRequest.getOnem2mResource());
 
-            NotificationPrimitive onem2mNotification = new NotificationPrimitive();
+        for (SubscriptionCriteria subscription : subscriptions) {
 
+            String subscriptionResourceId = subscription.getSubscriptionResourceId();
             Onem2mResource subscriptionResource = Onem2mDb.getInstance().getResource(subscriptionResourceId);
-            onem2mNotification.setSubscriptionResource(subscriptionResource);
-            onem2mNotification.setJsonSubscriptionResourceContent(subscriptionResource.getResourceContentJsonString());
-
-            JSONObject subsJsonObject;
-            try {
-                subsJsonObject = new JSONObject(subscriptionResource.getResourceContentJsonString());
-            } catch (JSONException e) {
-                LOG.error("Invalid JSON {}", subscriptionResource.getResourceContentJsonString(), e);
-                throw new IllegalArgumentException("Invalid JSON", e);
+            if (subscriptionResource == null) {
+                // deleted in the meantime
+                continue;
             }
 
-            JSONObject changedResourceJsonObject;
-            try {
-                changedResourceJsonObject = new JSONObject(onem2mRequest.getOnem2mResource().getResourceContentJsonString());
-            } catch (JSONException e) {
-            LOG.error("Invalid JSON {}", onem2mRequest.getOnem2mResource().getResourceContentJsonString(), e);
-            throw new IllegalArgumentException("Invalid JSON", e);
-        }
-            // todo: changedResource correct?
-
             /* Step 1.0	Check the eventNotificationCriteria attribute of the <subscription> resource associated with the modified resource:
             •	 If the eventNotificationCriteria attribute is set, then the Originator shall check whether the corresponding
             event matches with the event criteria. If notificationEventType is not set within the eventNotificationCriteria attribute,
@@ -292,121 +274,33 @@ public class NotificationProcessor {
                 Update_of_Resource for notificationEventType and then continue with the step 2.0.
 
             */
+            if (!subscription.matches(changedResource, eventType)) {
+                continue;
+            }
 
+            JSONObject notification = new JSONObject();
+            JSONObject notificationEvent = new JSONObject();
+            JSONObject representation;
 
-            Boolean sendThisNotification = false;
-            JSONObject eventNotificationCriteria = onem2mNotification.getJsonSubscriptionResourceContent().
-                    optJSONObject(ResourceSubscription.EVENT_NOTIFICATION_CRITERIA);
-            if (eventNotificationCriteria != null) {
-                Iterator<?> encKeys = eventNotificationCriteria.keys();
-                while (encKeys.hasNext()) {
-                    String encKey = (String) encKeys.next();
-                    Object j = eventNotificationCriteria.opt(encKey);
-                    switch (encKey) {
-                        case ResourceSubscription.CREATED_BEFORE:
-                            String crb = (String) j;
-                            String ct = changedResourceJsonObject.optString(BaseResource.CREATION_TIME);
-                            if (ct != null && Onem2mDateTime.dateCompare(ct, crb) < 0) {
-                                sendThisNotification = true;
-                            }
-                            break;
-                        case ResourceSubscription.CREATED_AFTER:
-                            String cra = (String) j;
-                            String ct2 = changedResourceJsonObject.optString(BaseResource.CREATION_TIME);
-                            if (ct2 != null && Onem2mDateTime.dateCompare(ct2, cra) < 0) {
-                                sendThisNotification = true;
-                            }
-                            break;
-                        case ResourceSubscription.MODIFIED_SINCE:
-                            String ms = (String) j;
-                            String mt = changedResourceJsonObject.optString(BaseResource.LAST_MODIFIED_TIME);
-                            if (mt != null && Onem2mDateTime.dateCompare(mt, ms) > 0) {
-                                sendThisNotification = true;
-                            }
-                            break;
-                        case ResourceSubscription.UNMODIFIED_SINCE:
-                            String ums = (String) j;
-                            String mt2 = changedResourceJsonObject.optString(BaseResource.LAST_MODIFIED_TIME);
-                            if (mt2 != null && Onem2mDateTime.dateCompare(mt2, ums) < 0) {
-                                sendThisNotification = true;
-                            }
-                            break;
-                        case ResourceSubscription.STATE_TAG_BIGGER:
-                            String stb = (String) j;
-                            Integer st = changedResourceJsonObject.optInt(BaseResource.STATE_TAG, -1);
-                            if (st != -1) {
-                                if (st > Integer.valueOf(stb))
-                                    sendThisNotification = true;
-                            }
-                            break;
-                        case ResourceSubscription.STATE_TAG_SMALLER:
-                            String sts = (String) j;
-                            Integer st2 = changedResourceJsonObject.optInt(BaseResource.STATE_TAG, -1);
-                            if (st2 != -1) {
-                                if (st2 < Integer.valueOf(sts))
-                                    sendThisNotification = true;
-                            }
-                            break;
-                        case ResourceSubscription.SIZE_ABOVE:
-                            String sza = (String) j;
-                            Integer cbs = changedResourceJsonObject.optInt(ResourceContainer.CURR_BYTE_SIZE, -1);
-                            if (cbs != -1) {
-                                if (cbs > Integer.valueOf(sza))
-                                    sendThisNotification = true;
-                            } else {
-                                Integer cs = changedResourceJsonObject.optInt(ResourceContentInstance.CONTENT_SIZE, -1);
-                                if (cs != -1) {
-                                    if (cs > Integer.valueOf(sza))
-                                        sendThisNotification = true;
-                                }
-                            }
-
-                        case ResourceSubscription.SIZE_BELOW:
-                            String szb = (String) j;
-                            Integer cbs2 = changedResourceJsonObject.optInt(ResourceContainer.CURR_BYTE_SIZE, -1);
-                            if (cbs2 != -1) {
-                                if (cbs2 < Integer.valueOf(szb))
-                                    sendThisNotification = true;
-                            } else {
-                                Integer cs = changedResourceJsonObject.optInt(ResourceContentInstance.CONTENT_SIZE, -1);
-                                if (cs != -1) {
-                                    if (cs < Integer.valueOf(szb))
-                                        sendThisNotification = true;
-                                }
-                            }
-
-                        case ResourceSubscription.ATTRIBUTE:
-                            // todo: check whether this attributes belong to that resource?
-                            // list of String
-
-                        case OPERATION_MONITOR:
-                            JSONArray om = (JSONArray) j;
-
-                            String operation = onem2mRequest.getPrimitive(RequestPrimitive.OPERATION);
-                            if (om.toString().contains(operation))
-                                JsonUtils.put(operationMonitor, ORIGINATOR, onem2mRequest.getPrimitive(RequestPrimitive.FROM));
-
-                            JsonUtils.put(operationMonitor, OPERATION, Integer.valueOf(onem2mRequest.getPrimitive(RequestPrimitive.OPERATION)));
-                            JsonUtils.put(notificationEvent, OPERATION_MONITOR, operationMonitor);
+            NotificationPrimitive onem2mNotification = new NotificationPrimitive();
+            onem2mNotification.setSubscriptionResource(subscriptionResource);
 
-                        case ResourceSubscription.NOTIFICATION_EVENT_TYPE:
+            Set<String> om = subscription.getOperationMonitor();
+            if (om != null) {
+                JSONObject operationMonitor = new JSONObject();
+                String operation = onem2mRequest.getPrimitive(RequestPrimitive.OPERATION);
+                if (om.contains(operation))
+                    JsonUtils.put(operationMonitor, ORIGINATOR, onem2mRequest.getPrimitive(RequestPrimitive.FROM));
 
-                        default:
-                    }
-                }
-                if (eventNotificationCriteria.length() == 1) {
-                    // has only 1 attribute: notificationEventType
-                    JSONArray net = eventNotificationCriteria.optJSONArray(ResourceSubscription.NOTIFICATION_EVENT_TYPE);
-                    if (net != null && net.toString().contains(eventType)) {
-                        sendThisNotification = true;
-                    }
-                }
-            } else {
-                sendThisNotification = true;
+                JsonUtils.put(operationMonitor, OPERATION, Integer.valueOf(operation));
+                JsonUtils.put(notificationEvent, OPERATION_MONITOR, operationMonitor);
             }
 
-            // if does not match, break this for loop
-            if (!sendThisNotification) break;
+            // the subscription content is copied only if the notification modifies it
+            JSONObject subsJsonObject = null;
+            if (subscription.isUpdatedAfterNotification()) {
+                subsJsonObject = ResourceContentView.of(subscriptionResource).copyJsonObject();
+            }
 
             // todo: what does notification include? See latest TS
 
@@ -414,7 +308,7 @@ public class NotificationProcessor {
             // Step 2.1	The Originator shall determine the type of the notification per the notificationContentType attribute.
             // The possible values of for notificationContentType attribute are 'Modified Attributes',
             // 'All Attributes', and or optionally 'ResourceID'.
-            representation = produceJsonContent(onem2mRequest, onem2mNotification);
+            representation = produceJsonContent(onem2mRequest, subscription);
             // todo: how to check attribute ? work with eventType to determine whose attributes
             // todo: support modified attributes
 
@@ -426,47 +320,50 @@ public class NotificationProcessor {
             // Step 2.3 Check the latestNotify attribute:
             // If the latestNotify attribute is set, the Originator shall assign Event Category parameter of value 'latest' of
             // the notifications generated pertaining to the subscription created. Then continue with other step
-            if (subsJsonObject.optBoolean(ResourceSubscription.LATEST_NOTIFY)) {
+            if (null != subsJsonObject && subsJsonObject.optBoolean(ResourceSubscription.LATEST_NOTIFY)) {
                 // modify the subscription eventCat attribute to "latest" ? See TS 0001
                 subsJsonObject.put(ResourceSubscription.NOTIFICATION_EVENT_CAT,"latest");
             }
 
-            JSONArray uriArray = onem2mNotification.getJsonSubscriptionResourceContent()
-                    .optJSONArray(ResourceSubscription.NOTIFICATION_URI);
-            for (int i = 0; i < uriArray.length(); i++) {
-                String uri = uriArray.optString(i);
-                if (Onem2m.isValidUriScheme(uri)) {
-                    onem2mNotification.setPrimitiveMany(NotificationPrimitive.URI, uri);
+            for (String uri : subscription.getNotificationUris()) {
+                onem2mNotification.setPrimitiveMany(NotificationPrimitive.URI, uri);
+            }
+            // AE-IDs of the request unreachable AEs which poll the notifications through their pollingChannel
+            List<String> pollingChannelTargets = null;
+            for (String targetResourceId : subscription.getNotificationTargetResourceIds()) {
+                Onem2mResource resource = Onem2mDb.getInstance().getResource(targetResourceId);
+                if (isNull(resource)) {
+                    LOG.warn("sendNotificationAccordingToType: Resource not found " +
+                            "for resourceId specified in NOTIFICATION_URI: {}", targetResourceId);
                 }
-                else { //supposed to be resourceId
-                    Onem2mResource resource = Onem2mDb.getInstance().findResourceUsingURI(uri);
-                    if (isNull(resource)) {
-                        LOG.warn("sendNotificationAccordingToType: Resource not found " +
-                                "for resourceId specified in NOTIFICATION_URI: {}", uri);
-                    }
-                    else {
-                        JSONObject subscriptionJsonObject = new JSONObject(resource.getResourceContentJsonString());
-                        boolean requestReachability = subscriptionJsonObject.getBoolean(ResourceAE.REQUEST_REACHABILITY);
-                        if (requestReachability) {
-                            JSONArray pointOfAccess = subscriptionJsonObject.optJSONArray(ResourceAE.POINT_OF_ACCESS);
-                            for (int j = 0; j < pointOfAccess.length(); j++) {
-                                String poaUri = pointOfAccess.optString(j);
-                                if (Onem2m.isValidUriScheme(poaUri)) {
-                                    onem2mNotification.setPrimitiveMany(NotificationPrimitive.URI, poaUri);
-                                }
-                                else {
-                                    LOG.warn("sendNotificationAccordingToType: PointOfAccess uri({}) " +
-                                            "is not valid for resource with resourceId specified in NOTIFICATION_URI: {}", poaUri, uri);
-                                }
+                else {
+                    JSONObject subscriptionJsonObject = ResourceContentView.of(resource).getJsonObject();
+                    boolean requestReachability = subscriptionJsonObject.getBoolean(ResourceAE.REQUEST_REACHABILITY);
+                    if (requestReachability) {
+                        JSONArray pointOfAccess = subscriptionJsonObject.optJSONArray(ResourceAE.POINT_OF_ACCESS);
+                        for (int j = 0; j < pointOfAccess.length(); j++) {
+                            String poaUri = pointOfAccess.optString(j);
+                            if (Onem2m.isValidUriScheme(poaUri)) {
+                                onem2mNotification.setPrimitiveMany(NotificationPrimitive.URI, poaUri);
+                            }
+                            else {
+                                LOG.warn("sendNotificationAccordingToType: PointOfAccess uri({}) " +
+                                        "is not valid for resource with resourceId specified in NOTIFICATION_URI: {}", poaUri, targetResourceId);
                             }
                         }
-                        else {
-                            LOG.warn("sendNotificationAccordingToType: RequestReachability is set to false " +
-                                    "for resource with resourceId specified in NOTIFICATION_URI: {}", uri);
+                    }
+                    else if (Onem2mPollingChannelQueues.getInstance().hasChannel(
+                            subscriptionJsonObject.optString(ResourceAE.AE_ID, null))) {
+                        if (null == pollingChannelTargets) {
+                            pollingChannelTargets = Lists.newArrayList();
                         }
+                        pollingChannelTargets.add(subscriptionJsonObject.optString(ResourceAE.AE_ID));
+                    }
+                    else {
+                        LOG.warn("sendNotificationAccordingToType: RequestReachability is set to false " +
+                                "for resource with resourceId specified in NOTIFICATION_URI: {}", targetResourceId);
                     }
                 }
-
             }
 
 
@@ -487,6 +384,17 @@ public class NotificationProcessor {
                 LOG.warn("Unable to get sender CSEBase CSE-ID");
             }
 
+            if (null != pollingChannelTargets) {
+                for (String aeId : pollingChannelTargets) {
+                    JSONObject notifyRequest = new JSONObject();
+                    JsonUtils.put(notifyRequest, RequestPrimitive.OPERATION, Onem2m.Operation.NOTIFY);
+                    JsonUtils.put(notifyRequest, RequestPrimitive.TO, aeId);
+                    JsonUtils.put(notifyRequest, RequestPrimitive.FROM, senderCse);
+                    JsonUtils.put(notifyRequest, RequestPrimitive.CONTENT, notification);
+                    Onem2mPollingChannelQueues.getInstance().enqueueNotification(aeId, notifyRequest);
+                }
+            }
+
             // copy the URI's to the notification,
             ResourceChanged rc = new ResourceChangedBuilder()
                     .setOnem2mPrimitive(onem2mNotification.getPrimitivesList())
@@ -500,8 +408,9 @@ public class NotificationProcessor {
                 LOG.error("cannot send notification");
             }
 
-            updateSubscription(subsJsonObject, subscriptionResourceId);
-
+            if (null != subsJsonObject) {
+                updateSubscription(subsJsonObject, subscriptionResourceId);
+            }
         }
     }
 
@@ -701,6 +610,11 @@ public class NotificationProcessor {
     }
 
     public void enqueueNotifierOperation(Operation opCode, RequestPrimitive requestPrimitive) {
+        Onem2mResource onem2mResource = requestPrimitive.getOnem2mResource();
+        if (null != onem2mResource && !Onem2mDb.getInstance().hasInterestedSubscriptions(onem2mResource)) {
+            // nobody to notify
+            return;
+        }
         Integer qNum = Math.abs(requestPrimitive.getResourceId().hashCode()) % NUM_SUBSCRIBER_PROCESSORS;
         try {
             queueList.get(qNum).put(new QEntry(opCode, requestPrimitive));
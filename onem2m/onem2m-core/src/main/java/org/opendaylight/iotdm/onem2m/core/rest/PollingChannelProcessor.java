@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2m.core.rest;
+
+import java.util.List;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.opendaylight.iotdm.onem2m.core.Onem2m;
+import org.opendaylight.iotdm.onem2m.core.database.Onem2mDb;
+import org.opendaylight.iotdm.onem2m.core.resource.ResourcePollingChannel;
+import org.opendaylight.iotdm.onem2m.core.rest.utils.RequestPrimitive;
+import org.opendaylight.iotdm.onem2m.core.rest.utils.ResponsePrimitive;
+import org.opendaylight.iotdm.onem2m.core.router.Onem2mPollingChannelQueues;
+import org.opendaylight.iotdm.onem2m.core.utils.JsonUtils;
+import org.opendaylight.iotdm.onem2m.core.utils.Onem2mDateTime;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Processes the requests addressed to the pollingChannelURI of a pollingChannel (pch/pcu), they can be sent
+ * only by the AE or the remoteCSE owning the pollingChannel.
+ *
+ * The RETRIEVE is the long-poll, it waits up to Onem2mPollingChannelQueues.MAX_POLL_TIMEOUT_MS (or until the
+ * request expiration timestamp of the poll) for the requests queued for the entity.  One request is returned
+ * as m2m:rqp, more requests are returned as the list of m2m:rqp in m2m:agr.  The REQUEST_TIMEOUT response is
+ * returned if there is no request, the entity polls again.  The NOTIFY carries the response of the entity to
+ * the polled request in m2m:rsp (or the list of m2m:rsp in m2m:agr), the response is matched by its request
+ * identifier and it's returned to the originator of the request.
+ */
+public class PollingChannelProcessor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PollingChannelProcessor.class);
+
+    public static final String AGGREGATED_REQUEST = "m2m:agr";
+    public static final String REQUEST = "m2m:rqp";
+    public static final String RESPONSE = "m2m:rsp";
+
+    private static PollingChannelProcessor pollingChannelProcessor;
+
+    private PollingChannelProcessor() {
+    }
+
+    public static synchronized PollingChannelProcessor getInstance() {
+        if (pollingChannelProcessor == null) {
+            pollingChannelProcessor = new PollingChannelProcessor();
+        }
+        return pollingChannelProcessor;
+    }
+
+    /**
+     * Handles the long-poll and the responses of the entity owning the pollingChannel.
+     * @param onem2mRequest request addressed to the pollingChannelURI
+     * @param onem2mResponse response
+     */
+    public void handlePollingChannelUri(RequestPrimitive onem2mRequest, ResponsePrimitive onem2mResponse) {
+        Onem2mResource pollingChannel = Onem2mDb.getInstance().findResourceUsingURI(onem2mRequest.getPrimitiveTo());
+        if (pollingChannel == null ||
+                !String.valueOf(Onem2m.ResourceType.POLLING_CHANNEL).equals(pollingChannel.getResourceType())) {
+            onem2mResponse.setRSC(Onem2m.ResponseStatusCode.NOT_FOUND,
+                    "PollingChannel of the pollingChannelURI not found: " + onem2mRequest.getPrimitiveTo());
+            return;
+        }
+
+        Onem2mResource parent = Onem2mDb.getInstance().getResource(pollingChannel.getParentId());
+        String targetId = ResourcePollingChannel.getTargetId(parent);
+        if (null == targetId) {
+            LOG.error("Failed to get the entity ID of the pollingChannel parent: {}", pollingChannel.getResourceId());
+            onem2mResponse.setRSC(Onem2m.ResponseStatusCode.INTERNAL_SERVER_ERROR,
+                    "Failed to resolve the owner of the pollingChannel");
+            return;
+        }
+        if (!isOwner(targetId, onem2mRequest.getPrimitiveFrom())) {
+            onem2mResponse.setRSC(Onem2m.ResponseStatusCode.ACCESS_DENIED,
+                    "PollingChannelURI can be accessed by the owner of the pollingChannel only");
+            return;
+        }
+
+        Integer operation = onem2mRequest.getPrimitiveOperation();
+        if (operation == Onem2m.Operation.RETRIEVE) {
+            // registered again as the channels are not persisted
+            ResourcePollingChannel.registerChannel(parent, pollingChannel.getResourceId());
+            handlePoll(onem2mRequest, onem2mResponse, targetId);
+        } else if (operation == Onem2m.Operation.NOTIFY) {
+            handleResponses(onem2mRequest, onem2mResponse, targetId);
+        } else {
+            onem2mResponse.setRSC(Onem2m.ResponseStatusCode.OPERATION_NOT_ALLOWED,
+                    "Operation not allowed for pollingChannelURI: " + operation);
+        }
+    }
+
+    /*
+     * The entity IDs are compared without the leading slashes, CSE-IDs can be used in the SP-relative form.
+     */
+    private static boolean isOwner(String targetId, String from) {
+        if (null == from) {
+            return false;
+        }
+        return stripSlashes(targetId).equals(stripSlashes(from));
+    }
+
+    private static String stripSlashes(String id) {
+        int i = 0;
+        while (i < id.length() && id.charAt(i) == '/') {
+            i++;
+        }
+        return id.substring(i);
+    }
+
+    private void handlePoll(RequestPrimitive onem2mRequest, ResponsePrimitive onem2mResponse, String targetId) {
+        long timeoutMs = Onem2mPollingChannelQueues.MAX_POLL_TIMEOUT_MS;
+        String rqet = onem2mRequest.getPrimitive(RequestPrimitive.REQUEST_EXPIRATION_TIMESTAMP);
+        if (null != rqet) {
+            long expiresAtMs = Onem2mDateTime.toEpochMillis(rqet);
+            if (expiresAtMs != 0 && expiresAtMs != Long.MAX_VALUE) {
+                timeoutMs = Math.min(timeoutMs, expiresAtMs - System.currentTimeMillis());
+            }
+        }
+
+        List<JSONObject> requests;
+        try {
+            requests = Onem2mPollingChannelQueues.getInstance().poll(targetId, timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            onem2mResponse.setRSC(Onem2m.ResponseStatusCode.INTERNAL_SERVER_ERROR, "Poll interrupted");
+            return;
+        }
+        if (requests.isEmpty()) {
+            onem2mResponse.setRSC(Onem2m.ResponseStatusCode.REQUEST_TIMEOUT, "No request for: " + targetId);
+            return;
+        }
+
+        JSONObject content = new JSONObject();
+        if (requests.size() == 1) {
+            JsonUtils.put(content, REQUEST, requests.get(0));
+        } else {
+            JSONObject agr = new JSONObject();
+            JsonUtils.put(agr, REQUEST, new JSONArray(requests));
+            JsonUtils.put(content, AGGREGATED_REQUEST, agr);
+        }
+        onem2mResponse.setPrimitiveContent(content.toString());
+        onem2mResponse.setPrimitiveContentFormat(Onem2m.ContentFormat.JSON);
+        onem2mResponse.setPrimitiveHttpContentType(Onem2m.ContentType.APP_VND_RES_JSON);
+        onem2mResponse.setPrimitiveResponseStatusCode(Onem2m.ResponseStatusCode.OK);
+    }
+
+    private void handleResponses(RequestPrimitive onem2mRequest, ResponsePrimitive onem2mResponse, String targetId) {
+        JSONArray responses;
+        try {
+            JSONObject content = new JSONObject(onem2mRequest.getPrimitiveContent());
+            JSONObject agr = content.optJSONObject(GroupFanOutProcessor.AGGREGATED_RESPONSE);
+            if (null != agr) {
+                responses = agr.optJSONArray(RESPONSE);
+            } else {
+                responses = new JSONArray();
+                responses.put(content.getJSONObject(RESPONSE));
+            }
+        } catch (JSONException | NullPointerException e) {
+            onem2mResponse.setRSC(Onem2m.ResponseStatusCode.CONTENTS_UNACCEPTABLE,
+                    "CONTENT(" + RequestPrimitive.CONTENT + ") " + RESPONSE + " expected");
+            return;
+        }
+
+        int numCompleted = 0;
+        for (int i = 0; null != responses && i < responses.length(); i++) {
+            JSONObject rsp = responses.optJSONObject(i);
+            if (null == rsp || !rsp.has(ResponsePrimitive.REQUEST_IDENTIFIER) ||
+                    !rsp.has(ResponsePrimitive.RESPONSE_STATUS_CODE)) {
+                continue;
+            }
+            ResponsePrimitive response = new ResponsePrimitive();
+            response.setPrimitiveRequestIdentifier(rsp.optString(ResponsePrimitive.REQUEST_IDENTIFIER));
+            response.setPrimitiveResponseStatusCode(rsp.optString(ResponsePrimitive.RESPONSE_STATUS_CODE));
+            Object pc = rsp.opt(ResponsePrimitive.CONTENT);
+            if (null != pc) {
+                response.setPrimitiveContent(pc.toString());
+                response.setPrimitiveContentFormat(Onem2m.ContentFormat.JSON);
+                response.setPrimitiveHttpContentType(Onem2m.ContentType.APP_VND_RES_JSON);
+            }
+            if (Onem2mPollingChannelQueues.getInstance().complete(targetId,
+                    rsp.optString(ResponsePrimitive.TO, null), response)) {
+                numCompleted++;
+            } else {
+                LOG.debug("No polled request of response: {}, from: {}",
+                          response.getPrimitiveRequestIdentifier(), targetId);
+            }
+        }
+
+        if (numCompleted == 0) {
+            onem2mResponse.setRSC(Onem2m.ResponseStatusCode.NOT_FOUND,
+                    "No polled request of the response(s) found, they might have expired");
+            return;
+        }
+        onem2mResponse.setPrimitiveResponseStatusCode(Onem2m.ResponseStatusCode.OK);
+    }
+}
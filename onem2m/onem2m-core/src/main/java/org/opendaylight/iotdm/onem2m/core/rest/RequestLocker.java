@@ -8,75 +8,212 @@
 
 package org.opendaylight.iotdm.onem2m.core.rest;
 
-import com.google.common.util.concurrent.Monitor;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import org.json.JSONObject;
+import org.opendaylight.iotdm.onem2m.core.utils.JsonUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Avoid concurrent write access to a resource
+ * Avoid concurrent write access to a resource. The resourceId is hashed into a fixed array of lock stripes,
+ * so nothing is allocated per locked resource and requests for different resources don't serialize on a
+ * global lock. Two resources may share a stripe, the locks are reentrant so one thread can still lock both.
  */
 public class RequestLocker {
 
     private static final Logger LOG = LoggerFactory.getLogger(RequestLocker.class);
-    private static RequestLocker rl;
-    private Monitor gMonitor;
-    private ConcurrentHashMap<String,ResourceInfo> resourceInfoMap;
-    private static final Integer INITIAL_MONITOR_COUNT = 200;
+    private static final RequestLocker rl = new RequestLocker();
+
+    // must be power of two
+    private static final int NUM_STRIPES = 1024;
+    private static final int STRIPE_MASK = NUM_STRIPES - 1;
+
+    private final ReentrantLock[] stripes;
+    // per stripe number of lock requests which had to wait
+    private final AtomicLongArray contendedCount;
+    private final LongAdder lockCount = new LongAdder();
+    private final LongAdder waitTimeNanos = new LongAdder();
+    private final LongAdder timeoutCount = new LongAdder();
 
     public static RequestLocker getInstance() {
-        if (rl == null) {
-            rl = new RequestLocker();
-        }
         return rl;
     }
 
     private RequestLocker() {
-        gMonitor = new Monitor();
-        resourceInfoMap = new ConcurrentHashMap<>(INITIAL_MONITOR_COUNT);
+        stripes = new ReentrantLock[NUM_STRIPES];
+        for (int i = 0; i < NUM_STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        contendedCount = new AtomicLongArray(NUM_STRIPES);
     }
 
+    private static int stripeIndex(String resourceId) {
+        int h = resourceId.hashCode();
+        // spread the higher bits as the resourceIds share long prefixes/suffixes
+        h ^= (h >>> 16);
+        return h & STRIPE_MASK;
+    }
+
+    /**
+     * Blocks until the resource is locked.
+     * @param resourceId resource to lock
+     */
     public void LockResource(String resourceId) {
-        ResourceInfo resourceInfo;
-        gMonitor.enter();
-        resourceInfo = resourceInfoMap.get(resourceId);
-        if (resourceInfo == null) {
-            resourceInfo = new ResourceInfo();
-            resourceInfoMap.put(resourceId, resourceInfo);
-        } else {
-            resourceInfo.numLocks++;
+        int index = stripeIndex(resourceId);
+        ReentrantLock lock = stripes[index];
+        lockCount.increment();
+        if (lock.tryLock()) {
+            return;
+        }
+
+        contendedCount.incrementAndGet(index);
+        long start = System.nanoTime();
+        lock.lock();
+        waitTimeNanos.add(System.nanoTime() - start);
+    }
+
+    /**
+     * Tries to lock the resource within the timeout.
+     * @param resourceId resource to lock
+     * @param timeout maximal time to wait for the lock
+     * @param unit unit of the timeout
+     * @return true if locked, false if the timeout expired or the thread was interrupted
+     */
+    public boolean TryLockResource(String resourceId, long timeout, TimeUnit unit) {
+        int index = stripeIndex(resourceId);
+        ReentrantLock lock = stripes[index];
+        lockCount.increment();
+        if (lock.tryLock()) {
+            return true;
+        }
+
+        contendedCount.incrementAndGet(index);
+        long start = System.nanoTime();
+        boolean locked = false;
+        try {
+            locked = lock.tryLock(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
-        gMonitor.leave();
-        //LOG.info("LockResource: entering res: {}", resourceId);
-        resourceInfo.monitor.enter();
-        //LOG.info("LockResource: in monitor res: {}", resourceId);
+        waitTimeNanos.add(System.nanoTime() - start);
+
+        if (!locked) {
+            timeoutCount.increment();
+            LOG.warn("TryLockResource: timeout while waiting for lock of resource: {}", resourceId);
+        }
+        return locked;
     }
 
     public void UnlockResource(String resourceId) {
-        ResourceInfo resourceInfo;
-        gMonitor.enter();
-        resourceInfo = resourceInfoMap.get(resourceId);
-        if (resourceInfo != null) {
-            //LOG.info("UnockResource: leaving res: {}", resourceId);
-            resourceInfo.monitor.leave();
-            //LOG.info("UnockResource: left monitor res: {}", resourceId);
-            resourceInfo.numLocks--;
-            if (resourceInfo.numLocks == 0) {
-                resourceInfoMap.remove(resourceId);
+        ReentrantLock lock = stripes[stripeIndex(resourceId)];
+        if (!lock.isHeldByCurrentThread()) {
+            LOG.error("UnlockResource: resource lock not held: {}", resourceId);
+            return;
+        }
+        lock.unlock();
+    }
+
+    /*
+     * Distinct stripes of the resources in ascending order, all threads locking more resources at once take
+     * the stripes in the same order so they can't deadlock.
+     */
+    private static int[] stripeIndexes(Collection<String> resourceIds) {
+        TreeSet<Integer> indexes = new TreeSet<>();
+        for (String resourceId : resourceIds) {
+            indexes.add(stripeIndex(resourceId));
+        }
+        int[] result = new int[indexes.size()];
+        int i = 0;
+        for (Integer index : indexes) {
+            result[i++] = index;
+        }
+        return result;
+    }
+
+    /**
+     * Tries to lock all the resources within the timeout, either all resources are locked or none.  The
+     * resources are unlocked by UnlockResources(), the single resources can still be locked and unlocked by
+     * the same thread while they are locked.
+     * @param resourceIds resources to lock
+     * @param timeout maximal time to wait for all the locks
+     * @param unit unit of the timeout
+     * @return true if locked, false if the timeout expired or the thread was interrupted
+     */
+    public boolean TryLockResources(Collection<String> resourceIds, long timeout, TimeUnit unit) {
+        int[] indexes = stripeIndexes(resourceIds);
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (int i = 0; i < indexes.length; i++) {
+            ReentrantLock lock = stripes[indexes[i]];
+            lockCount.increment();
+            if (lock.tryLock()) {
+                continue;
+            }
+
+            contendedCount.incrementAndGet(indexes[i]);
+            long start = System.nanoTime();
+            boolean locked = false;
+            try {
+                locked = lock.tryLock(Math.max(0, deadline - start), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            waitTimeNanos.add(System.nanoTime() - start);
+
+            if (!locked) {
+                timeoutCount.increment();
+                LOG.warn("TryLockResources: timeout while waiting for locks of {} resources", resourceIds.size());
+                for (int j = i - 1; j >= 0; j--) {
+                    stripes[indexes[j]].unlock();
+                }
+                return false;
             }
-        } else {
-            LOG.error("UnlockResource: resource lock not found: {}", resourceId);
         }
-        gMonitor.leave();
+        return true;
     }
 
-    private class ResourceInfo {
-        protected int numLocks;
-        protected Monitor monitor;
-        private ResourceInfo() {
-            this.numLocks = 1;
-            this.monitor = new Monitor();
+    public void UnlockResources(Collection<String> resourceIds) {
+        int[] indexes = stripeIndexes(resourceIds);
+        for (int i = indexes.length - 1; i >= 0; i--) {
+            ReentrantLock lock = stripes[indexes[i]];
+            if (!lock.isHeldByCurrentThread()) {
+                LOG.error("UnlockResources: resource lock not held, stripe: {}", indexes[i]);
+                continue;
+            }
+            lock.unlock();
         }
     }
-}
 
+    /**
+     * @return lock statistics: number of locks, number of the contended locks with the most contended stripe,
+     * total and average wait time of the contended locks and number of timeouts
+     */
+    public JSONObject getStats() {
+        JSONObject js = new JSONObject();
+        long contended = 0;
+        long maxContended = 0;
+        int maxContendedStripe = 0;
+        for (int i = 0; i < NUM_STRIPES; i++) {
+            long c = contendedCount.get(i);
+            contended += c;
+            if (c > maxContended) {
+                maxContended = c;
+                maxContendedStripe = i;
+            }
+        }
+        long waitMicros = TimeUnit.NANOSECONDS.toMicros(waitTimeNanos.sum());
+
+        JsonUtils.put(js, "stripes", NUM_STRIPES);
+        JsonUtils.put(js, "locks", lockCount.sum());
+        JsonUtils.put(js, "contended", contended);
+        JsonUtils.put(js, "max_contended_stripe", maxContendedStripe + ":" + maxContended);
+        JsonUtils.put(js, "wait_time_us", waitMicros);
+        JsonUtils.put(js, "wait_time_avg_us", contended == 0 ? 0 : waitMicros / contended);
+        JsonUtils.put(js, "timeouts", timeoutCount.sum());
+        return js;
+    }
+}
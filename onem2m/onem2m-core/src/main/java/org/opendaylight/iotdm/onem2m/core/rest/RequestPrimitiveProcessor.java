@@ -12,15 +12,19 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import org.json.JSONObject;
 import org.opendaylight.iotdm.onem2m.core.Onem2m;
+import org.opendaylight.iotdm.onem2m.core.Onem2mStats;
 import org.opendaylight.iotdm.onem2m.core.database.Onem2mDb;
+import org.opendaylight.iotdm.onem2m.core.database.transactionCore.ResourceContentView;
 import org.opendaylight.iotdm.onem2m.core.resource.*;
 import org.opendaylight.iotdm.onem2m.core.rest.utils.RequestPrimitive;
 import org.opendaylight.iotdm.onem2m.core.rest.utils.ResponsePrimitive;
 import org.opendaylight.iotdm.onem2m.core.router.Onem2mRouterService;
 import org.opendaylight.iotdm.onem2m.core.utils.JsonUtils;
 import org.opendaylight.iotdm.onem2m.core.utils.Onem2mDateTime;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.SecurityLevel;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.primitive.list.Onem2mPrimitive;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResource;
 import org.slf4j.Logger;
@@ -33,339 +37,458 @@ import org.slf4j.LoggerFactory;
 public class RequestPrimitiveProcessor extends RequestPrimitive {
 
     private static final Logger LOG = LoggerFactory.getLogger(RequestPrimitiveProcessor.class);
+    // maximal time a request waits for the lock of the resource it modifies
+    static final long LOCK_TIMEOUT_SEC = 30;
+    // write transaction shared by the requests of a batch processed by this thread, see GroupFanOutProcessor
+    private static final ThreadLocal<Object> batchWriterTransaction = new ThreadLocal<>();
+
+    // the received primitives and the identity of the sender are passed to the members of a group by fan-out
+    private RequestPrimitive receivedRequest = null;
+    private SecurityLevel senderSecurityLevel = null;
+    private Boolean senderIsCse = null;
+    private String senderCseBaseId = null;
+    private String senderIdentity = null;
 
     public RequestPrimitiveProcessor() {
         super();
     }
 
+    /**
+     * Sets the security context the request has been received with, it's used for the requests sent to the
+     * members of a group.
+     * @param securityLevel security level configured for the receiver of the request
+     * @param senderIsCse true if the authenticated sender is CSE
+     * @param cseBaseId CSE-ID of the cseBase the sender has been authenticated for
+     * @param senderIdentity the authenticated identity of the sender
+     */
+    public void setSenderContext(SecurityLevel securityLevel, Boolean senderIsCse, String cseBaseId,
+                                 String senderIdentity) {
+        this.senderSecurityLevel = securityLevel;
+        this.senderIsCse = senderIsCse;
+        this.senderCseBaseId = cseBaseId;
+        this.senderIdentity = senderIdentity;
+    }
+
+    RequestPrimitive getReceivedRequest() {
+        return receivedRequest;
+    }
+
+    SecurityLevel getSenderSecurityLevel() {
+        return senderSecurityLevel;
+    }
+
+    Boolean getSenderIsCse() {
+        return senderIsCse;
+    }
+
+    String getSenderCseBaseId() {
+        return senderCseBaseId;
+    }
+
+    String getSenderIdentity() {
+        return senderIdentity;
+    }
+
+    /**
+     * Binds the write transaction of a batch of requests to the calling thread.  The create and update requests
+     * processed by the thread write to it instead of committing their own transaction, their responses are
+     * completed when the caller commits it.
+     * @param transaction transaction started by the caller, null to unbind it
+     * @return the transaction bound before, the caller binds it again when the batch is done
+     */
+    static Object bindBatchWriterTransaction(Object transaction) {
+        Object previous = batchWriterTransaction.get();
+        if (null == transaction) {
+            batchWriterTransaction.remove();
+        } else {
+            batchWriterTransaction.set(transaction);
+        }
+        return previous;
+    }
+
+    private Object startWriterTransaction() {
+        Object transaction = batchWriterTransaction.get();
+        return (null != transaction) ? transaction : Onem2mDb.getInstance().startWriteTransaction();
+    }
+
+    private boolean isBatchWriterTransaction() {
+        return null != getWriterTransaction() && getWriterTransaction() == batchWriterTransaction.get();
+    }
+
+    /*
+     * The transaction of a batch is committed by the owner of the batch.
+     */
+    private boolean endWriterTransaction() {
+        return isBatchWriterTransaction() || Onem2mDb.getInstance().endWriteTransaction(getWriterTransaction());
+    }
+
+    /*
+     * Completes the response when the writes of the request are committed, right away unless they are batched.
+     */
+    private void afterWriterCommit(Runnable completion) {
+        Onem2mDb.getInstance().afterCommit(isBatchWriterTransaction() ? getWriterTransaction() : null, completion);
+    }
+
     public void processPrimitivesList(List<Onem2mPrimitive> onem2mPrimitivesList, ResponsePrimitive onem2mResponse) {
+        RequestPrimitive receivedRequest = new RequestPrimitive();
+        receivedRequest.setPrimitivesList(onem2mPrimitivesList);
+        processRequestPrimitive(receivedRequest, onem2mResponse);
+    }
+
+    /**
+     * Takes the primitives of the request received in-process, without the list of primitives used by the RPC.
+     * @param receivedRequest the received request, it's not modified
+     * @param onem2mResponse response, the status code is set if a primitive is not valid
+     */
+    public void processRequestPrimitive(RequestPrimitive receivedRequest, ResponsePrimitive onem2mResponse) {
+
+        this.receivedRequest = receivedRequest;
 
         /**
          * Loop thru each input parameter, do some basic validation and put into a class variable so code can direct
          * access them.
          */
-        Integer i;
+        receivedRequest.forEachPrimitive((name, value) -> processPrimitive(name, value, onem2mResponse));
+    }
 
-        for (Onem2mPrimitive onem2mPrimitive : onem2mPrimitivesList) {
+    private boolean processPrimitive(String name, String v, ResponsePrimitive onem2mResponse) {
 
-            String v = onem2mPrimitive.getValue();
+        Integer i;
 
-            switch (onem2mPrimitive.getName()) {
+        switch (name) {
 
-                case OPERATION:
-                    i = convertToUInt(v);
-                    if (i != -1) {
-                        primitiveOperation = i;
-                    } else {
-                        onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST, "Invalid operation: " + v);
-                        return;
-                    }
-                    break;
+            case OPERATION:
+                i = convertToUInt(v);
+                if (i != -1) {
+                    primitiveOperation = i;
+                } else {
+                    onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST, "Invalid operation: " + v);
+                    return false;
+                }
+                break;
 
-                case TO:
-                    if (validateUri(v)) {
-                        primitiveTo = v;
-                    } else {
-                        onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST, "targetURI (to) not valid URI: " + v);
-                        return;
-                    }
-                    break;
+            case TO:
+                if (validateUri(v)) {
+                    primitiveTo = v;
+                } else {
+                    onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST, "targetURI (to) not valid URI: " + v);
+                    return false;
+                }
+                break;
 
-                case FROM:
-                    if (validateUri(v)) {
-                        primitiveFrom = v;
-                    } else {
-                        onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST, "Origin/From not valid URI: " + v);
-                        return;
-                    }
-                    break;
+            case FROM:
+                if (validateUri(v)) {
+                    primitiveFrom = v;
+                } else {
+                    onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST, "Origin/From not valid URI: " + v);
+                    return false;
+                }
+                break;
 
-                case REQUEST_IDENTIFIER:
-                    primitiveRequestIdentifier = v;
-                    break;
+            case REQUEST_IDENTIFIER:
+                primitiveRequestIdentifier = v;
+                break;
 
-                case CONTENT_FORMAT:
-                    primitiveContentFormat = v;
-                    if (!v.equals(Onem2m.ContentFormat.JSON)) {
-                        onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST, "Unsupported content format: " + v);
-                        return;
-                    }
-                    break;
+            case CONTENT_FORMAT:
+                primitiveContentFormat = v;
+                if (!v.equals(Onem2m.ContentFormat.JSON)) {
+                    onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST, "Unsupported content format: " + v);
+                    return false;
+                }
+                break;
 
-                case RESOURCE_TYPE:
-                    i = convertToUInt(v);
-                    if (i != -1) {
-                        primitiveResourceType = i;
-                    } else {
-                        onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST, "Invalid resource: " + v);
-                        return;
-                    }
-                    break;
+            case RESOURCE_TYPE:
+                i = convertToUInt(v);
+                if (i != -1) {
+                    primitiveResourceType = i;
+                } else {
+                    onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST, "Invalid resource: " + v);
+                    return false;
+                }
+                break;
 
-                case NAME:
-                    primitiveName = v;
-                    break;
+            case NAME:
+                primitiveName = v;
+                break;
 
-                case CONTENT:
-                    primitiveContent = v;
-                    break;
+            case CONTENT:
+                primitiveContent = v;
+                break;
 
-                case RESPONSE_TYPE:
-                    i = convertToUInt(v);
-                    if (i != -1) {
-                        primitiveResponseType = i;
-                        // this is an optional parameter but we will reject unsupported values
-                        // only support blocking requests at this time, if not provided we default to blocking anyway
-                        if (i != Onem2m.ResponseType.BLOCKING_REQUEST) {
-                            onem2mResponse.setRSC(Onem2m.ResponseStatusCode.NON_BLOCKING_REQUEST_NOT_SUPPORTED,
-                                    "Invalid response type: " + v);
-                            return;
-                        }
-                    } else {
-                        onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST, "Invalid response type: " + v);
-                        return;
+            case RESPONSE_TYPE:
+                i = convertToUInt(v);
+                if (i != -1) {
+                    primitiveResponseType = i;
+                    // this is an optional parameter, if not provided we default to blocking
+                    if (i != Onem2m.ResponseType.BLOCKING_REQUEST &&
+                            i != Onem2m.ResponseType.NON_BLOCKING_REQUEST_SYNCH &&
+                            i != Onem2m.ResponseType.NON_BLOCKING_REQUEST_ASYNCH) {
+                        onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST,
+                                "Invalid response type: " + v);
+                        return false;
                     }
-                    break;
+                } else {
+                    onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST, "Invalid response type: " + v);
+                    return false;
+                }
+                break;
 
-                case RESULT_CONTENT:
-                    i = convertToUInt(v);
-                    if (i != -1) {
-                        primitiveResultContent = i;
-                    } else {
-                        onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST, "Invalid result content: " + v);
-                        return;
-                    }
-                    break;
+            case RESPONSE_TYPE_NOTIFICATION_URI:
+                if (!validateUri(v)) {
+                    onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST,
+                            "Response type notificationURI not valid URI: " + v);
+                    return false;
+                }
+                if (primitiveResponseTypeNotificationUris == null) {
+                    primitiveResponseTypeNotificationUris = new ArrayList<>();
+                }
+                primitiveResponseTypeNotificationUris.add(v);
+                break;
 
-                case EVENT_CATEGORY:
-                    break;
+            case RESULT_CONTENT:
+                i = convertToUInt(v);
+                if (i != -1) {
+                    primitiveResultContent = i;
+                } else {
+                    onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST, "Invalid result content: " + v);
+                    return false;
+                }
+                break;
 
-                case DELIVERY_AGGREGATION:
-                    break;
+            case EVENT_CATEGORY:
+                break;
 
-                case FILTER_CRITERIA_CREATED_BEFORE:
-                    primitiveFilterCriteriaCreatedBefore = v;
-                    if (!Onem2mDateTime.isValidDateTime(v)) {
-                        onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST,
-                                "FILTER_CRITERIA_CREATED_BEFORE(" + RequestPrimitive.FILTER_CRITERIA_CREATED_BEFORE +
-                                        ") not valid format: " + v);
-                        return;
-                    }
-                    found_filter_criteria = true;
-                    break;
+            case DELIVERY_AGGREGATION:
+                break;
 
-                case FILTER_CRITERIA_CREATED_AFTER:
-                    primitiveFilterCriteriaCreatedAfter = v;
-                    if (!Onem2mDateTime.isValidDateTime(v)) {
-                        onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST,
-                                "FILTER_CRITERIA_CREATED_AFTER(" + RequestPrimitive.FILTER_CRITERIA_CREATED_AFTER +
-                                        ") not valid format: " + v);
-                        return;
-                    }
-                    found_filter_criteria = true;
-                    break;
+            case FILTER_CRITERIA_CREATED_BEFORE:
+                primitiveFilterCriteriaCreatedBefore = v;
+                if (!Onem2mDateTime.isValidDateTime(v)) {
+                    onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST,
+                            "FILTER_CRITERIA_CREATED_BEFORE(" + RequestPrimitive.FILTER_CRITERIA_CREATED_BEFORE +
+                                    ") not valid format: " + v);
+                    return false;
+                }
+                found_filter_criteria = true;
+                break;
 
-                case FILTER_CRITERIA_MODIFIED_SINCE:
-                    primitiveFilterCriteriaModifiedSince = v;
-                    if (!Onem2mDateTime.isValidDateTime(v)) {
-                        onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST,
-                                "FILTER_CRITERIA_MODIFIED_SINCE(" + RequestPrimitive.FILTER_CRITERIA_MODIFIED_SINCE +
-                                        ") not valid format: " + v);
-                        return;
-                    }
-                    found_filter_criteria = true;
-                    break;
+            case FILTER_CRITERIA_CREATED_AFTER:
+                primitiveFilterCriteriaCreatedAfter = v;
+                if (!Onem2mDateTime.isValidDateTime(v)) {
+                    onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST,
+                            "FILTER_CRITERIA_CREATED_AFTER(" + RequestPrimitive.FILTER_CRITERIA_CREATED_AFTER +
+                                    ") not valid format: " + v);
+                    return false;
+                }
+                found_filter_criteria = true;
+                break;
 
-                case FILTER_CRITERIA_UNMODIFIED_SINCE:
-                    primitiveFilterCriteriaUnModifiedSince = v;
-                    if (!Onem2mDateTime.isValidDateTime(v)) {
-                        onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST,
-                                "FILTER_CRITERIA_UNMODIFIED_SINCE(" + RequestPrimitive.FILTER_CRITERIA_UNMODIFIED_SINCE +
-                                        ") not valid format: " + v);
-                        return;
-                    }
-                    found_filter_criteria = true;
-                    break;
+            case FILTER_CRITERIA_MODIFIED_SINCE:
+                primitiveFilterCriteriaModifiedSince = v;
+                if (!Onem2mDateTime.isValidDateTime(v)) {
+                    onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST,
+                            "FILTER_CRITERIA_MODIFIED_SINCE(" + RequestPrimitive.FILTER_CRITERIA_MODIFIED_SINCE +
+                                    ") not valid format: " + v);
+                    return false;
+                }
+                found_filter_criteria = true;
+                break;
 
-                case FILTER_CRITERIA_STATE_TAG_SMALLER:
-                    i = convertToUInt(v);
-                    if (i != -1) {
-                        primitiveFilterCriteriaStateTagSmaller = i;
-                    } else {
-                        onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST,
-                                "FILTER_CRITERIA_STATE_TAG_SMALLER(" + RequestPrimitive.FILTER_CRITERIA_STATE_TAG_SMALLER +
-                                        ") not valid format: " + v);
-                        return;
-                    }
-                    found_filter_criteria = true;
-                    break;
+            case FILTER_CRITERIA_UNMODIFIED_SINCE:
+                primitiveFilterCriteriaUnModifiedSince = v;
+                if (!Onem2mDateTime.isValidDateTime(v)) {
+                    onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST,
+                            "FILTER_CRITERIA_UNMODIFIED_SINCE(" + RequestPrimitive.FILTER_CRITERIA_UNMODIFIED_SINCE +
+                                    ") not valid format: " + v);
+                    return false;
+                }
+                found_filter_criteria = true;
+                break;
 
-                case FILTER_CRITERIA_STATE_TAG_BIGGER:
-                    i = convertToUInt(v);
-                    if (i != -1) {
-                        primitiveFilterCriteriaStateTagBigger = i;
-                    } else {
-                        onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST,
-                                "FILTER_CRITERIA_STATE_TAG_BIGGER(" + RequestPrimitive.FILTER_CRITERIA_STATE_TAG_BIGGER +
-                                        ") not valid format: " + v);
-                        return;
-                    }
-                    found_filter_criteria = true;
-                    break;
+            case FILTER_CRITERIA_STATE_TAG_SMALLER:
+                i = convertToUInt(v);
+                if (i != -1) {
+                    primitiveFilterCriteriaStateTagSmaller = i;
+                } else {
+                    onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST,
+                            "FILTER_CRITERIA_STATE_TAG_SMALLER(" + RequestPrimitive.FILTER_CRITERIA_STATE_TAG_SMALLER +
+                                    ") not valid format: " + v);
+                    return false;
+                }
+                found_filter_criteria = true;
+                break;
 
-                case FILTER_CRITERIA_SIZE_ABOVE:
-                    i = convertToUInt(v);
-                    if (i != -1) {
-                        primitiveFilterCriteriaSizeAbove = i;
-                    } else {
-                        onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST,
-                                "FILTER_CRITERIA_SIZE_ABOVE(" + RequestPrimitive.FILTER_CRITERIA_SIZE_ABOVE +
-                                        ") not valid format: " + v);
-                        return;
-                    }
-                    found_filter_criteria = true;
-                    break;
+            case FILTER_CRITERIA_STATE_TAG_BIGGER:
+                i = convertToUInt(v);
+                if (i != -1) {
+                    primitiveFilterCriteriaStateTagBigger = i;
+                } else {
+                    onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST,
+                            "FILTER_CRITERIA_STATE_TAG_BIGGER(" + RequestPrimitive.FILTER_CRITERIA_STATE_TAG_BIGGER +
+                                    ") not valid format: " + v);
+                    return false;
+                }
+                found_filter_criteria = true;
+                break;
 
-                case FILTER_CRITERIA_SIZE_BELOW:
-                    i = convertToUInt(v);
-                    if (i != -1) {
-                        primitiveFilterCriteriaSizeBelow = i;
-                    } else {
-                        onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST,
-                                "FILTER_CRITERIA_SIZE_BELOW(" + RequestPrimitive.FILTER_CRITERIA_SIZE_BELOW +
-                                        ") not valid format: " + v);
-                        return;
-                    }
-                    found_filter_criteria = true;
-                    break;
+            case FILTER_CRITERIA_SIZE_ABOVE:
+                i = convertToUInt(v);
+                if (i != -1) {
+                    primitiveFilterCriteriaSizeAbove = i;
+                } else {
+                    onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST,
+                            "FILTER_CRITERIA_SIZE_ABOVE(" + RequestPrimitive.FILTER_CRITERIA_SIZE_ABOVE +
+                                    ") not valid format: " + v);
+                    return false;
+                }
+                found_filter_criteria = true;
+                break;
 
-                case FILTER_CRITERIA_LABELS:
-                    List<String> labels = getPrimitiveFilterCriteriaLabels();
-                    if (labels == null) {
-                        primitiveFilterCriteriaLabels = new ArrayList<>();
-                    }
-                    primitiveFilterCriteriaLabels.add(v);
-                    found_filter_criteria = true;
-                    break;
+            case FILTER_CRITERIA_SIZE_BELOW:
+                i = convertToUInt(v);
+                if (i != -1) {
+                    primitiveFilterCriteriaSizeBelow = i;
+                } else {
+                    onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST,
+                            "FILTER_CRITERIA_SIZE_BELOW(" + RequestPrimitive.FILTER_CRITERIA_SIZE_BELOW +
+                                    ") not valid format: " + v);
+                    return false;
+                }
+                found_filter_criteria = true;
+                break;
 
-                case FILTER_CRITERIA_RESOURCE_TYPE:
-                    i = convertToUInt(v);
-                    if (i != -1) {
-                        List<Integer> resourceTypes = getPrimitiveFilterCriteriaResourceTypes();
-                        if (resourceTypes == null) {
-                            primitiveFilterCriteriaResourceTypes = new ArrayList<>();
-                        }
-                        primitiveFilterCriteriaResourceTypes.add(i);
-                        found_filter_criteria = true;
-                    } else {
-                        onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST,
-                                "FILTER_CRITERIA_RESOURCE_TYPE(" + RequestPrimitive.FILTER_CRITERIA_RESOURCE_TYPE +
-                                        ") not valid format: " + v);
-                        return;
-                    }
-                    break;
+            case FILTER_CRITERIA_LABELS:
+                List<String> labels = getPrimitiveFilterCriteriaLabels();
+                if (labels == null) {
+                    primitiveFilterCriteriaLabels = new ArrayList<>();
+                }
+                primitiveFilterCriteriaLabels.add(v);
+                found_filter_criteria = true;
+                break;
 
-                case FILTER_CRITERIA_OFFSET:
-                    i = convertToUInt(v);
-                    if (i != -1) {
-                        primitiveFilterCriteriaOffset = i;
-                    } else {
-                        onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST,
-                                "FILTER_CRITERIA_OFFSET(" + RequestPrimitive.FILTER_CRITERIA_OFFSET +
-                                        ") not valid format: " + v);
-                        return;
+            case FILTER_CRITERIA_RESOURCE_TYPE:
+                i = convertToUInt(v);
+                if (i != -1) {
+                    List<Integer> resourceTypes = getPrimitiveFilterCriteriaResourceTypes();
+                    if (resourceTypes == null) {
+                        primitiveFilterCriteriaResourceTypes = new ArrayList<>();
                     }
+                    primitiveFilterCriteriaResourceTypes.add(i);
                     found_filter_criteria = true;
-                    break;
+                } else {
+                    onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST,
+                            "FILTER_CRITERIA_RESOURCE_TYPE(" + RequestPrimitive.FILTER_CRITERIA_RESOURCE_TYPE +
+                                    ") not valid format: " + v);
+                    return false;
+                }
+                break;
 
-                case FILTER_CRITERIA_LIMIT:
-                    i = convertToUInt(v);
-                    if (i != -1) {
-                        primitiveFilterCriteriaLimit = i;
-                    } else {
-                        onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST,
-                                "FILTER_CRITERIA_LIMIT(" + RequestPrimitive.FILTER_CRITERIA_LIMIT +
-                                        ") not valid format: " + v);
-                        return;
-                    }
-                    found_filter_criteria = true;
-                    break;
+            case FILTER_CRITERIA_OFFSET:
+                i = convertToUInt(v);
+                if (i != -1) {
+                    primitiveFilterCriteriaOffset = i;
+                } else {
+                    onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST,
+                            "FILTER_CRITERIA_OFFSET(" + RequestPrimitive.FILTER_CRITERIA_OFFSET +
+                                    ") not valid format: " + v);
+                    return false;
+                }
+                found_filter_criteria = true;
+                break;
 
-                case FILTER_CRITERIA_FILTER_USAGE:
-                    i = convertToUInt(v);
-                    if (i != -1) {
-                        primitiveFilterCriteriaFilterUsage = i;
-                        if (i != Onem2m.FilterUsageType.DISCOVERY && i != Onem2m.FilterUsageType.CONDITIONAL_RETRIEVAL) {
-                            onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST,
-                                    "FILTER_CRITERIA_FILTER_USAGE(" + RequestPrimitive.FILTER_CRITERIA_FILTER_USAGE +
-                                            ") not valid value: " + v);
-                            return;
-                        }
-                    } else {
+            case FILTER_CRITERIA_LIMIT:
+                i = convertToUInt(v);
+                if (i != -1) {
+                    primitiveFilterCriteriaLimit = i;
+                } else {
+                    onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST,
+                            "FILTER_CRITERIA_LIMIT(" + RequestPrimitive.FILTER_CRITERIA_LIMIT +
+                                    ") not valid format: " + v);
+                    return false;
+                }
+                found_filter_criteria = true;
+                break;
+
+            case FILTER_CRITERIA_CURSOR:
+                primitiveFilterCriteriaCursor = v;
+                found_filter_criteria = true;
+                break;
+
+            case FILTER_CRITERIA_FILTER_USAGE:
+                i = convertToUInt(v);
+                if (i != -1) {
+                    primitiveFilterCriteriaFilterUsage = i;
+                    if (i != Onem2m.FilterUsageType.DISCOVERY && i != Onem2m.FilterUsageType.CONDITIONAL_RETRIEVAL) {
                         onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST,
                                 "FILTER_CRITERIA_FILTER_USAGE(" + RequestPrimitive.FILTER_CRITERIA_FILTER_USAGE +
-                                        ") not valid format: " + v);
-                        return;
-                    }
-                    if (primitiveFilterCriteriaFilterUsage == Onem2m.FilterUsageType.DISCOVERY) {
-                        setFUDiscovery(true);
+                                        ") not valid value: " + v);
+                        return false;
                     }
-                    break;
+                } else {
+                    onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST,
+                            "FILTER_CRITERIA_FILTER_USAGE(" + RequestPrimitive.FILTER_CRITERIA_FILTER_USAGE +
+                                    ") not valid format: " + v);
+                    return false;
+                }
+                if (primitiveFilterCriteriaFilterUsage == Onem2m.FilterUsageType.DISCOVERY) {
+                    setFUDiscovery(true);
+                }
+                break;
 
-                case DISCOVERY_RESULT_TYPE:
-                    i = convertToUInt(v);
-                    if (i != -1) {
-                        primitiveDiscoveryResultType = i;
-                        if (!(i == Onem2m.DiscoveryResultType.NON_HIERARCHICAL ||
-                                i == Onem2m.DiscoveryResultType.HIERARCHICAL)) {
-                            onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST,
-                                    "DISCOVERY_RESULT_TYPE(" + RequestPrimitive.DISCOVERY_RESULT_TYPE +
-                                            ") invalid option: " + v);
-                            return;
-                        }
-                    } else {
+            case DISCOVERY_RESULT_TYPE:
+                i = convertToUInt(v);
+                if (i != -1) {
+                    primitiveDiscoveryResultType = i;
+                    if (!(i == Onem2m.DiscoveryResultType.NON_HIERARCHICAL ||
+                            i == Onem2m.DiscoveryResultType.HIERARCHICAL)) {
                         onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST,
                                 "DISCOVERY_RESULT_TYPE(" + RequestPrimitive.DISCOVERY_RESULT_TYPE +
-                                        ") not valid format: " + v);
-                        return;
+                                        ") invalid option: " + v);
+                        return false;
                     }
-                    break;
+                } else {
+                    onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST,
+                            "DISCOVERY_RESULT_TYPE(" + RequestPrimitive.DISCOVERY_RESULT_TYPE +
+                                    ") not valid format: " + v);
+                    return false;
+                }
+                break;
 
-                case PROTOCOL:
-                    primitiveProtocol = v;
-                    switch (v) {
-                        case Onem2m.Protocol.COAP:
-                        case Onem2m.Protocol.HTTP:
-                        case Onem2m.Protocol.MQTT:
-                        case Onem2m.Protocol.NATIVEAPP:
-                            break;
-                        default:
-                            onem2mResponse.setRSC(Onem2m.ResponseStatusCode.NON_BLOCKING_REQUEST_NOT_SUPPORTED,
-                                    "Invalid protocol: " + v);
-                            return;
-                    }
-                    break;
+            case PROTOCOL:
+                primitiveProtocol = v;
+                switch (v) {
+                    case Onem2m.Protocol.COAP:
+                    case Onem2m.Protocol.HTTP:
+                    case Onem2m.Protocol.MQTT:
+                    case Onem2m.Protocol.NATIVEAPP:
+                        break;
+                    default:
+                        onem2mResponse.setRSC(Onem2m.ResponseStatusCode.NON_BLOCKING_REQUEST_NOT_SUPPORTED,
+                                "Invalid protocol: " + v);
+                        return false;
+                }
+                break;
 
-                case NATIVEAPP_NAME:
-                    this.primitiveNativeAppName = v;
-                    break;
+            case NATIVEAPP_NAME:
+                this.primitiveNativeAppName = v;
+                break;
 
-                case ROLE:
-                    break;
+            case ROLE:
+                break;
 
-                case ORIGINATING_TIMESTAMP:
-                    break;
+            case ORIGINATING_TIMESTAMP:
+                break;
 
-                case "CSE_ID":
-                case "CSE_TYPE":
-                    break;
+            case "CSE_ID":
+            case "CSE_TYPE":
+                break;
 
-                default:
-                    onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST,
-                            "REQUEST_PRIMITIVE(" + onem2mPrimitive.getName() + ") not valid/supported: value: " + v);
-                    return;
-            }
+            default:
+                onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST,
+                        "REQUEST_PRIMITIVE(" + name + ") not valid/supported: value: " + v);
+                return false;
         }
+        return true;
     }
 
     /**
@@ -381,6 +504,7 @@ public class RequestPrimitiveProcessor extends RequestPrimitive {
                 name.contentEquals("oldest") ||
                 name.contentEquals(ResourceContainer.OLDEST) ||
                 name.contentEquals("0") ||
+                name.contentEquals(ResourcePollingChannel.POLLING_CHANNEL_URI) ||
                 name.contains("/")) {
             return false;
         }
@@ -435,6 +559,19 @@ public class RequestPrimitiveProcessor extends RequestPrimitive {
      * @param onem2mResponse response
      */
     public void handleOperation(ResponsePrimitive onem2mResponse) {
+        long startTime = System.nanoTime();
+        try {
+            processOperation(onem2mResponse);
+        } finally {
+            Integer operation = getPrimitiveOperation();
+            Integer resourceType = (operation != null && operation == Onem2m.Operation.CREATE) ?
+                    getPrimitiveResourceType() : getResourceType();
+            Onem2mStats.getInstance().recordLatency(operation, resourceType, getPrimitiveProtocol(),
+                                                    System.nanoTime() - startTime);
+        }
+    }
+
+    private void processOperation(ResponsePrimitive onem2mResponse) {
 
         // if the request had a REQUEST_IDENTIFIER, return it in the response so client can correlate
         // this must be the first statement as the rqi must be in the error response
@@ -493,9 +630,24 @@ public class RequestPrimitiveProcessor extends RequestPrimitive {
             }
         }
 
+        // the requests to the fanOutPoint of a group are sent to all members of the group
+        Onem2mDb.CseBaseResourceLocator targetResourceLocator = getTargetResourceLocator();
+        if (null != targetResourceLocator && targetResourceLocator.isFanOutPoint() &&
+                operation != Onem2m.Operation.NOTIFY) {
+            GroupFanOutProcessor.getInstance().handleFanOut(this, onem2mResponse);
+            return;
+        }
+
+        // the entity without request reachability polls its requests and sends their responses to the
+        // pollingChannelURI of its pollingChannel
+        if (null != targetResourceLocator && targetResourceLocator.isPollingChannelUri()) {
+            PollingChannelProcessor.getInstance().handlePollingChannelUri(this, onem2mResponse);
+            return;
+        }
+
         switch (operation) {
             case Onem2m.Operation.CREATE:
-                setWriterTransaction(Onem2mDb.getInstance().startWriteTransaction());
+                setWriterTransaction(startWriterTransaction());
                 try {
                     if (! hasContent()) {
                         onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST,
@@ -515,7 +667,7 @@ public class RequestPrimitiveProcessor extends RequestPrimitive {
                                 "Cannot create a CSE Base, it must be provisioned separately!");
                     }
                 } finally {
-                    if (!Onem2mDb.getInstance().endWriteTransaction(getWriterTransaction())) {
+                    if (!endWriterTransaction()) {
                         onem2mResponse.setRSC(Onem2m.ResponseStatusCode.INTERNAL_SERVER_ERROR,
                                 "Database transaction failed!");
                     }
@@ -525,6 +677,7 @@ public class RequestPrimitiveProcessor extends RequestPrimitive {
                 handleOperationRetrieve(onem2mResponse);
                 break;
             case Onem2m.Operation.UPDATE:
+                setWriterTransaction(startWriterTransaction());
                 try {
                     if (! hasContent()) {
                         onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST,
@@ -534,6 +687,10 @@ public class RequestPrimitiveProcessor extends RequestPrimitive {
 
                     handleOperationUpdate(onem2mResponse);
                 } finally {
+                    if (!endWriterTransaction()) {
+                        onem2mResponse.setRSC(Onem2m.ResponseStatusCode.INTERNAL_SERVER_ERROR,
+                                "Database transaction failed!");
+                    }
                 }
                 break;
             case Onem2m.Operation.DELETE:
@@ -661,26 +818,65 @@ public class RequestPrimitiveProcessor extends RequestPrimitive {
         }
 
         // prevent multiple writers to the parent, as state will be updated
-        RequestLocker.getInstance().LockResource(this.getParentResourceId());
+        if (!RequestLocker.getInstance().TryLockResource(this.getParentResourceId(),
+                                                         LOCK_TIMEOUT_SEC, TimeUnit.SECONDS)) {
+            onem2mResponse.setRSC(Onem2m.ResponseStatusCode.INTERNAL_SERVER_ERROR,
+                    "Timeout while waiting for parent resource: " + this.getPrimitiveTo());
+            return;
+        }
+        boolean committed;
         try {
             ResourceContentProcessor.handleCreate(this, onem2mResponse, this.getTargetResourceLocator());
             if (onem2mResponse.getPrimitiveResponseStatusCode() != null) {
                 return;
             }
+            // wait for the commit while holding the lock, the cache is updated by the commit and the next
+            // writer of the parent has to see it; the resource must be stored before it's returned and notified.
+            // The batched create is committed by the owner of the batch which holds the lock of the parent too
+            committed = endWriterTransaction();
         } finally {
             RequestLocker.getInstance().UnlockResource(this.getParentResourceId());
         }
 
-        // now format a response based on result content desired
-        ResultContentProcessor.handleCreate(this, onem2mResponse);
+        if (!committed) {
+            onem2mResponse.setRSC(Onem2m.ResponseStatusCode.INTERNAL_SERVER_ERROR, "Database transaction failed!");
+            return;
+        }
+
+        afterWriterCommit(() -> {
+            // now format a response based on result content desired
+            ResultContentProcessor.handleCreate(this, onem2mResponse);
 
-        // now process common notifications type F
-        NotificationProcessor.getInstance().enqueueNotifierOperation(NotificationProcessor.Operation.CREATE, this);
+            // now process common notifications type F
+            NotificationProcessor.getInstance().enqueueNotifierOperation(NotificationProcessor.Operation.CREATE, this);
 
-        // TODO: see TS0004 6.8
-        // if the create was successful, ie no error has already happened, set CREATED for status code here
-        if (onem2mResponse.getPrimitiveResponseStatusCode() == null) {
-            onem2mResponse.setPrimitiveResponseStatusCode(Onem2m.ResponseStatusCode.CREATED);
+            // TODO: see TS0004 6.8
+            // if the create was successful, ie no error has already happened, set CREATED for status code here
+            if (onem2mResponse.getPrimitiveResponseStatusCode() == null) {
+                onem2mResponse.setPrimitiveResponseStatusCode(Onem2m.ResponseStatusCode.CREATED);
+            }
+        });
+    }
+
+    /**
+     * The retrieved container's cni, cbs, lt and st are read from its contentInstance index, they are written
+     * with the container's content if the stored ones lag behind.  The response doesn't depend on the write.
+     * @param containerResourceId the retrieved container
+     */
+    private void persistContainerCinIndex(String containerResourceId) {
+        if (!Onem2mDb.getInstance().hasUnpersistedContainerCinIndex(containerResourceId)) {
+            return;
+        }
+        // the contentInstance creates write the container content while holding its lock
+        if (!RequestLocker.getInstance().TryLockResource(containerResourceId, LOCK_TIMEOUT_SEC, TimeUnit.SECONDS)) {
+            return;
+        }
+        try {
+            if (!Onem2mDb.getInstance().persistContainerCinIndex(containerResourceId)) {
+                LOG.error("Failed to write the contentInstance index of container: {}", containerResourceId);
+            }
+        } finally {
+            RequestLocker.getInstance().UnlockResource(containerResourceId);
         }
     }
 
@@ -736,10 +932,13 @@ public class RequestPrimitiveProcessor extends RequestPrimitive {
 
         // check parent Container disableRetrieval attribute
         Integer rt = this.getResourceType();
+        if (rt == Onem2m.ResourceType.CONTAINER) {
+            persistContainerCinIndex(onem2mResource.getResourceId());
+        }
         if (rt == Onem2m.ResourceType.CONTENT_INSTANCE) {
             String parentID = this.getOnem2mResource().getParentId();
             Onem2mResource parentResource = Onem2mDb.getInstance().getResource(parentID);
-            JSONObject parentJsonObject = new JSONObject(parentResource.getResourceContentJsonString());
+            JSONObject parentJsonObject = ResourceContentView.of(parentResource).getJsonObject();
             if (parentJsonObject.optBoolean(ResourceContainer.DISABLE_RETRIEVAL)) {
                 onem2mResponse.setRSC(Onem2m.ResponseStatusCode.OPERATION_NOT_ALLOWED,
                         "Parent Container's disableRetrieval is set to true, cannot delete this resource: " + getPrimitiveTo());
@@ -833,7 +1032,7 @@ public class RequestPrimitiveProcessor extends RequestPrimitive {
         if (rt == Onem2m.ResourceType.CONTENT_INSTANCE) {
             String parentID = this.getOnem2mResource().getParentId();
             Onem2mResource parentResource = Onem2mDb.getInstance().getResource(parentID);
-            JSONObject parentJsonObject = new JSONObject(parentResource.getResourceContentJsonString());
+            JSONObject parentJsonObject = ResourceContentView.of(parentResource).getJsonObject();
             if (parentJsonObject.optBoolean(ResourceContainer.DISABLE_RETRIEVAL)) {
                 onem2mResponse.setRSC(Onem2m.ResponseStatusCode.OPERATION_NOT_ALLOWED,
                         "Parent Container's disableRetrieval is set to true, cannot delete this resource: " + this.getPrimitiveTo());
@@ -857,12 +1056,26 @@ public class RequestPrimitiveProcessor extends RequestPrimitive {
             return;
         }
 
-        NotificationProcessor.getInstance().enqueueNotifierOperation(NotificationProcessor.Operation.DELETE, this);
+        deleteTargetResource(onem2mResource, onem2mResponse);
+        if (onem2mResponse.getPrimitiveResponseStatusCode() != null) {
+            return;
+        }
+
+        // TODO: see TS0004 6.8
+        // if FOUND, and all went well, send back OK
+        if (onem2mResponse.getPrimitiveResponseStatusCode() == null) {
+            onem2mResponse.setPrimitiveResponseStatusCode(Onem2m.ResponseStatusCode.DELETED);
+        }
+    }
 
-        Onem2mRouterService.getInstance().updateRoutingTable(this);
+    private void deleteTargetResource(Onem2mResource onem2mResource, ResponsePrimitive onem2mResponse) {
 
         // now delete the resource from the database
-        RequestLocker.getInstance().LockResource(this.getResourceId());
+        if (!RequestLocker.getInstance().TryLockResource(this.getResourceId(), LOCK_TIMEOUT_SEC, TimeUnit.SECONDS)) {
+            onem2mResponse.setRSC(Onem2m.ResponseStatusCode.INTERNAL_SERVER_ERROR,
+                    "Timeout while waiting for resource: " + this.getPrimitiveTo());
+            return;
+        }
         try {
             // TODO: idempotent so who cares if cannot find the resource ... is this true?
             if (Onem2mDb.getInstance().pseudoDeleteOnem2mResource(onem2mResource) == false) {
@@ -870,15 +1083,42 @@ public class RequestPrimitiveProcessor extends RequestPrimitive {
                         "Resource target URI data store delete error: " + this.getPrimitiveTo());
                 return;
             }
+            // the subscribers are notified only when the delete has been committed
+            Onem2mDb.getInstance().afterCommit(getWriterTransaction(), () -> NotificationProcessor.getInstance()
+                    .enqueueNotifierOperation(NotificationProcessor.Operation.DELETE, this));
         } finally {
             RequestLocker.getInstance().UnlockResource(this.getResourceId());
         }
 
-        // TODO: see TS0004 6.8
-        // if FOUND, and all went well, send back OK
-        if (onem2mResponse.getPrimitiveResponseStatusCode() == null) {
-            onem2mResponse.setPrimitiveResponseStatusCode(Onem2m.ResponseStatusCode.DELETED);
+        Onem2mRouterService.getInstance().updateRoutingTable(this);
+    }
+
+    /**
+     * Delete the expired resource the same way the DELETE operation does, the subscribers get the delete
+     * notifications and the routing table is updated.  Used by the ResourceExpiryProcessor.
+     * @param onem2mResource the expired resource
+     * @return true if the resource has been deleted
+     */
+    public boolean handleResourceExpiration(Onem2mResource onem2mResource) {
+
+        this.primitiveOperation = Onem2m.Operation.DELETE;
+        this.setPrimitiveTo(onem2mResource.getResourceId());
+        this.setResourceId(onem2mResource.getResourceId());
+        this.setOnem2mResource(onem2mResource);
+        this.setJsonResourceContent(onem2mResource.getResourceContentJsonString());
+        this.setResourceType(onem2mResource.getResourceType());
+
+        this.setParentTargetUri(onem2mResource.getParentTargetUri());
+        this.setResourceName(onem2mResource.getName());
+
+        ResponsePrimitive onem2mResponse = new ResponsePrimitive();
+        deleteTargetResource(onem2mResource, onem2mResponse);
+        if (onem2mResponse.getPrimitiveResponseStatusCode() != null) {
+            LOG.error("handleResourceExpiration: resource: {}, {}", onem2mResource.getResourceId(),
+                      onem2mResponse.getPrimitive(ResponsePrimitive.CONTENT));
+            return false;
         }
+        return true;
     }
 
     /**
@@ -945,28 +1185,42 @@ public class RequestPrimitiveProcessor extends RequestPrimitive {
             return;
         }
 
-        RequestLocker.getInstance().LockResource(resourceId);
+        if (!RequestLocker.getInstance().TryLockResource(resourceId, LOCK_TIMEOUT_SEC, TimeUnit.SECONDS)) {
+            onem2mResponse.setRSC(Onem2m.ResponseStatusCode.INTERNAL_SERVER_ERROR,
+                    "Timeout while waiting for resource: " + this.getPrimitiveTo());
+            return;
+        }
+        boolean committed;
         try {
             ResourceContentProcessor.handleUpdate(this, onem2mResponse);
             if (onem2mResponse.getPrimitiveResponseStatusCode() != null) {
                 return;
             }
+            // the cache is updated by the commit, the next writer of the resource has to see it
+            committed = endWriterTransaction();
         } finally {
             RequestLocker.getInstance().UnlockResource(resourceId);
         }
 
-        ResultContentProcessor.handleUpdate(this, onem2mResponse);
-        if (onem2mResponse.getPrimitiveResponseStatusCode() != null) {
+        if (!committed) {
+            onem2mResponse.setRSC(Onem2m.ResponseStatusCode.INTERNAL_SERVER_ERROR, "Database transaction failed!");
             return;
         }
 
-        NotificationProcessor.getInstance().enqueueNotifierOperation(NotificationProcessor.Operation.UPDATE, this);
+        afterWriterCommit(() -> {
+            ResultContentProcessor.handleUpdate(this, onem2mResponse);
+            if (onem2mResponse.getPrimitiveResponseStatusCode() != null) {
+                return;
+            }
+
+            NotificationProcessor.getInstance().enqueueNotifierOperation(NotificationProcessor.Operation.UPDATE, this);
 
-        // TODO: see TS0004 6.8
-        // if FOUND, and all went well, send back CHANGED
-        if (onem2mResponse.getPrimitiveResponseStatusCode() == null) {
-            onem2mResponse.setPrimitiveResponseStatusCode(Onem2m.ResponseStatusCode.CHANGED);
-        }
+            // TODO: see TS0004 6.8
+            // if FOUND, and all went well, send back CHANGED
+            if (onem2mResponse.getPrimitiveResponseStatusCode() == null) {
+                onem2mResponse.setPrimitiveResponseStatusCode(Onem2m.ResponseStatusCode.CHANGED);
+            }
+        });
     }
 
     /**
@@ -87,6 +87,16 @@ public class ResourceContentProcessor {
                     Onem2mStats.getInstance().inc(Onem2mStats.RESOURCE_NODE_UPDATE);
                 }
                 break;
+            case Onem2m.ResourceType.POLLING_CHANNEL:
+                ResourcePollingChannel resourcePollingChannel = new ResourcePollingChannel(onem2mRequest, onem2mResponse);
+                onem2mRequest.setBaseResource(resourcePollingChannel);
+                resourcePollingChannel.handleCreateUpdate();
+                if (onem2mRequest.isCreate) {
+                    Onem2mStats.getInstance().inc(Onem2mStats.RESOURCE_POLLING_CHANNEL_CREATE);
+                } else {
+                    Onem2mStats.getInstance().inc(Onem2mStats.RESOURCE_POLLING_CHANNEL_UPDATE);
+                }
+                break;
             case Onem2m.ResourceType.GROUP:
                 ResourceGroup resourceGroup = new ResourceGroup(onem2mRequest, onem2mResponse);
                 onem2mRequest.setBaseResource(resourceGroup);
@@ -180,6 +190,9 @@ public class ResourceContentProcessor {
             case Onem2m.ResourceType.NODE:
                 Onem2mStats.getInstance().inc(Onem2mStats.RESOURCE_NODE_RETRIEVE);
                 break;
+            case Onem2m.ResourceType.POLLING_CHANNEL:
+                Onem2mStats.getInstance().inc(Onem2mStats.RESOURCE_POLLING_CHANNEL_RETRIEVE);
+                break;
             case Onem2m.ResourceType.GROUP:
                 Onem2mStats.getInstance().inc(Onem2mStats.RESOURCE_GROUP_RETRIEVE);
                 break;
@@ -245,6 +258,9 @@ public class ResourceContentProcessor {
             case Onem2m.ResourceType.NODE:
                 Onem2mStats.getInstance().inc(Onem2mStats.RESOURCE_NODE_DELETE);
                 break;
+            case Onem2m.ResourceType.POLLING_CHANNEL:
+                Onem2mStats.getInstance().inc(Onem2mStats.RESOURCE_POLLING_CHANNEL_DELETE);
+                break;
             case Onem2m.ResourceType.GROUP:
                 Onem2mStats.getInstance().inc(Onem2mStats.RESOURCE_GROUP_DELETE);
                 break;
@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2m.core.rest;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.json.JSONObject;
+import org.opendaylight.iotdm.onem2m.core.Onem2m;
+import org.opendaylight.iotdm.onem2m.core.database.Onem2mDb;
+import org.opendaylight.iotdm.onem2m.core.database.transactionCore.ResourceContentView;
+import org.opendaylight.iotdm.onem2m.core.utils.JsonUtils;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The ResourceExpiryProcessor deletes the resources when their expirationTime is reached.  The resources with
+ * expirationTime other than FOREVER are kept in a min-heap ordered by the expiration time, the heap is
+ * populated when the resources are created or updated and it is rebuilt by the ResourceTreeRecovery when
+ * the DAO plugin is registered.  One thread waits for the earliest expiration and deletes the expired resource
+ * the same way the DELETE operation does so the subscribers are notified.
+ *
+ * The heap entries are not removed when the expiration time of a resource changes, the latest expiration time
+ * of each resource is kept in a map and the stale heap entries are dropped when they are polled.
+ */
+public class ResourceExpiryProcessor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResourceExpiryProcessor.class);
+
+    private static ResourceExpiryProcessor resourceExpiryProcessor;
+
+    private final PriorityQueue<ExpiryEntry> expiryHeap = new PriorityQueue<>();
+    private final ConcurrentHashMap<String, Long> expirationTimes = new ConcurrentHashMap<>();
+    private final LongAdder numScheduled = new LongAdder();
+    private final LongAdder numExpired = new LongAdder();
+    private final LongAdder numStale = new LongAdder();
+    private final LongAdder numFailed = new LongAdder();
+    private Thread expiryThread;
+    private volatile boolean running = false;
+
+    private ResourceExpiryProcessor() {}
+
+    public static ResourceExpiryProcessor getInstance() {
+        if (resourceExpiryProcessor == null) {
+            resourceExpiryProcessor = new ResourceExpiryProcessor();
+        }
+        return resourceExpiryProcessor;
+    }
+
+    /**
+     * Starts the expiry thread, the resources of the tree are scheduled by the ResourceTreeRecovery while the
+     * thread deletes the resources expired so far.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        expiryThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Thread.currentThread().setName("res-expiry-proc");
+                runExpiry();
+            }
+        });
+        expiryThread.setDaemon(true);
+        expiryThread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (null != expiryThread) {
+            expiryThread.interrupt();
+            expiryThread = null;
+        }
+        clear();
+    }
+
+    /**
+     * Schedules the expiration of the created or updated resource.  Resources which never expire are not
+     * scheduled, a pending expiration of an updated resource is cancelled.
+     * @param onem2mResource the resource
+     */
+    public void schedule(Onem2mResource onem2mResource) {
+        long expirationTimeMillis;
+        try {
+            expirationTimeMillis = ResourceContentView.of(onem2mResource).getExpirationTimeMillis();
+        } catch (IllegalArgumentException e) {
+            LOG.error("schedule: invalid resource: {}", onem2mResource.getResourceId());
+            return;
+        }
+        schedule(onem2mResource.getResourceId(), expirationTimeMillis);
+    }
+
+    private void schedule(String resourceId, long expirationTimeMillis) {
+        if (expirationTimeMillis == Long.MAX_VALUE) {
+            expirationTimes.remove(resourceId);
+            return;
+        }
+
+        Long previous = expirationTimes.put(resourceId, expirationTimeMillis);
+        if (null != previous && previous == expirationTimeMillis) {
+            return;
+        }
+
+        numScheduled.increment();
+        ExpiryEntry entry = new ExpiryEntry(resourceId, expirationTimeMillis);
+        synchronized (expiryHeap) {
+            expiryHeap.add(entry);
+            // wake up the thread only if the new entry expires first
+            if (expiryHeap.peek() == entry) {
+                expiryHeap.notify();
+            }
+        }
+    }
+
+    /**
+     * Called when a reader finds an expired resource, the resource is deleted by the expiry thread unless it
+     * is already scheduled.
+     * @param onem2mResource the expired resource
+     */
+    public void expired(Onem2mResource onem2mResource) {
+        if (running && !expirationTimes.containsKey(onem2mResource.getResourceId())) {
+            schedule(onem2mResource);
+        }
+    }
+
+    /**
+     * Schedules the expiration of the resource found by the walk of the tree, the expiration scheduled by
+     * the writer in the meantime is kept.
+     * @param onem2mResource the resource
+     */
+    public void recovered(Onem2mResource onem2mResource) {
+        if (running && !expirationTimes.containsKey(onem2mResource.getResourceId())) {
+            schedule(onem2mResource);
+        }
+    }
+
+    /**
+     * Cancels the pending expiration of the deleted resource.
+     * @param resourceId the deleted resource
+     */
+    public void cancel(String resourceId) {
+        expirationTimes.remove(resourceId);
+    }
+
+    public void clear() {
+        synchronized (expiryHeap) {
+            expiryHeap.clear();
+            expirationTimes.clear();
+        }
+    }
+
+    private void runExpiry() {
+        while (running) {
+            ExpiryEntry entry;
+            try {
+                synchronized (expiryHeap) {
+                    entry = expiryHeap.peek();
+                    if (null == entry) {
+                        expiryHeap.wait();
+                        continue;
+                    }
+                    long delay = entry.expirationTimeMillis - System.currentTimeMillis();
+                    if (delay > 0) {
+                        expiryHeap.wait(delay);
+                        continue;
+                    }
+                    expiryHeap.poll();
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            try {
+                expire(entry);
+            } catch (Exception e) {
+                numFailed.increment();
+                LOG.error("runExpiry: resource: {}, e: {}", entry.resourceId, e.toString(), e);
+            }
+        }
+    }
+
+    private void expire(ExpiryEntry entry) {
+        Long expirationTimeMillis = expirationTimes.get(entry.resourceId);
+        if (null == expirationTimeMillis || expirationTimeMillis != entry.expirationTimeMillis) {
+            // the resource has been deleted or its expiration time has changed
+            numStale.increment();
+            return;
+        }
+
+        Onem2mDb db = Onem2mDb.getInstance();
+        Onem2mResource onem2mResource = db.getResource(entry.resourceId);
+        if (null == onem2mResource) {
+            expirationTimes.remove(entry.resourceId, entry.expirationTimeMillis);
+            numStale.increment();
+            return;
+        }
+
+        // the content might have been updated after the entry was scheduled, the update schedules a new entry
+        long now = System.currentTimeMillis();
+        if (ResourceContentView.of(onem2mResource).isAlive(now)) {
+            numStale.increment();
+            return;
+        }
+        if (!expirationTimes.remove(entry.resourceId, entry.expirationTimeMillis)) {
+            numStale.increment();
+            return;
+        }
+
+        // resources below a deleted or expired ancestor are removed together with the ancestor
+        if (!isInResourceTree(db, onem2mResource, now)) {
+            numStale.increment();
+            return;
+        }
+
+        if (new RequestPrimitiveProcessor().handleResourceExpiration(onem2mResource)) {
+            numExpired.increment();
+        } else {
+            numFailed.increment();
+        }
+    }
+
+    private boolean isInResourceTree(Onem2mDb db, Onem2mResource onem2mResource, long now) {
+        Onem2mResource child = onem2mResource;
+        String parentId = child.getParentId();
+        while (null != parentId && !parentId.equals(Onem2mDb.NULL_RESOURCE_ID)) {
+            if (parentId.equals(Onem2m.SYS_DELETE_RESOURCE_ID) ||
+                    !child.getResourceId().equals(db.findChildFromParentAndChildName(parentId, child.getName()))) {
+                return false;
+            }
+            Onem2mResource parent = db.getResource(parentId);
+            if (null == parent || !ResourceContentView.of(parent).isAlive(now)) {
+                return false;
+            }
+            child = parent;
+            parentId = parent.getParentId();
+        }
+        return true;
+    }
+
+    public JSONObject getStats() {
+        JSONObject js = new JSONObject();
+        synchronized (expiryHeap) {
+            JsonUtils.put(js, "heap_size", expiryHeap.size());
+            ExpiryEntry head = expiryHeap.peek();
+            if (null != head) {
+                JsonUtils.put(js, "next_expiration_ms", head.expirationTimeMillis - System.currentTimeMillis());
+            }
+        }
+        JsonUtils.put(js, "scheduled_resources", expirationTimes.size());
+        JsonUtils.put(js, "scheduled", numScheduled.sum());
+        JsonUtils.put(js, "expired", numExpired.sum());
+        JsonUtils.put(js, "stale", numStale.sum());
+        JsonUtils.put(js, "failed", numFailed.sum());
+        return js;
+    }
+
+    private static final class ExpiryEntry implements Comparable<ExpiryEntry> {
+        private final String resourceId;
+        private final long expirationTimeMillis;
+
+        ExpiryEntry(String resourceId, long expirationTimeMillis) {
+            this.resourceId = resourceId;
+            this.expirationTimeMillis = expirationTimeMillis;
+        }
+
+        @Override
+        public int compareTo(ExpiryEntry other) {
+            return Long.compare(expirationTimeMillis, other.expirationTimeMillis);
+        }
+    }
+}
@@ -20,6 +20,8 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 import org.opendaylight.iotdm.onem2m.core.Onem2m;
 import org.opendaylight.iotdm.onem2m.core.database.Onem2mDb;
+import org.opendaylight.iotdm.onem2m.core.database.transactionCore.ResourceContentView;
+import org.opendaylight.iotdm.onem2m.core.database.transactionCore.SubscriptionCriteria;
 import org.opendaylight.iotdm.onem2m.core.resource.BaseResource;
 import org.opendaylight.iotdm.onem2m.core.rest.utils.FilterCriteria;
 import org.opendaylight.iotdm.onem2m.core.rest.utils.RequestPrimitive;
@@ -108,6 +110,14 @@ public class ResultContentProcessor {
             }
         }
 
+        Onem2mDb.DiscoveryStream stream = null;
+        if (onem2mRequest.getFUDiscovery() && rc != Onem2m.ResultContent.NOTHING) {
+            stream = openDiscovery(onem2mRequest, onem2mResource, onem2mResponse);
+            if (null == stream) {
+                return;
+            }
+        }
+
         switch (rc) {
             case Onem2m.ResultContent.NOTHING:
                 onem2mResponse.setPrimitiveContent(jsonObject.toString());
@@ -115,7 +125,7 @@ public class ResultContentProcessor {
 
             case Onem2m.ResultContent.ATTRIBUTES:
                 if (onem2mRequest.getFUDiscovery()) {
-                    discoveryJsonResultContentAttributes(onem2mRequest, onem2mResource, onem2mResponse, jsonArray);
+                    discoveryJsonResultContentAttributes(onem2mRequest, onem2mResource, onem2mResponse, jsonArray, stream);
                     onem2mResponse.setPrimitiveContent(jsonArray.toString());
                 } else {
                     jsonObject = produceJsonResultContentAttributes(onem2mRequest, onem2mResource, onem2mResponse);
@@ -144,7 +154,7 @@ public class ResultContentProcessor {
 
             case Onem2m.ResultContent.ATTRIBUTES_CHILD_RESOURCES:
                 if (onem2mRequest.getFUDiscovery()) {
-                    discoveryJsonResultContentAttributesAndChildResources(onem2mRequest, onem2mResource, onem2mResponse, jsonArray);
+                    discoveryJsonResultContentAttributesAndChildResources(onem2mRequest, onem2mResource, onem2mResponse, jsonArray, stream);
                     onem2mResponse.setPrimitiveContent(jsonArray.toString());
                 } else {
                     produceJsonResultContentChildResources(onem2mRequest, onem2mResource, onem2mResponse, jsonObject);
@@ -157,7 +167,8 @@ public class ResultContentProcessor {
 
             case Onem2m.ResultContent.ATTRIBUTES_CHILD_RESOURCE_REFS:
                 if (onem2mRequest.getFUDiscovery()) {
-                    discoveryJsonResultContentChildResourceRefs(onem2mRequest, onem2mResource, onem2mResponse, jsonArray, true);
+                    discoveryJsonResultContentChildResourceRefs(onem2mRequest, onem2mResource, onem2mResponse, jsonArray, stream,
+                            true);
                     onem2mResponse.setPrimitiveContent(jsonArray.toString());
                 } else {
                     produceJsonResultContentChildResourceRefs(onem2mRequest, onem2mResource, onem2mResponse, jsonObject);
@@ -170,7 +181,8 @@ public class ResultContentProcessor {
 
             case Onem2m.ResultContent.CHILD_RESOURCE_REFS:
                 if (onem2mRequest.getFUDiscovery()) {
-                    discoveryJsonResultContentChildResourceRefs(onem2mRequest, onem2mResource, onem2mResponse, jsonArray, false);
+                    discoveryJsonResultContentChildResourceRefs(onem2mRequest, onem2mResource, onem2mResponse, jsonArray, stream,
+                            false);
                     onem2mResponse.setPrimitiveContent(jsonArray.toString());
                 } else {
                     produceJsonResultContentChildResourceRefs(onem2mRequest, onem2mResource, onem2mResponse, jsonObject);
@@ -332,36 +344,32 @@ public class ResultContentProcessor {
     private static void discoveryJsonResultContentAttributes(RequestPrimitive onem2mRequest,
                                                              Onem2mResource onem2mResource,
                                                              ResponsePrimitive onem2mResponse,
-                                                             JSONArray jsonArray) {
+                                                             JSONArray jsonArray,
+                                                             Onem2mDb.DiscoveryStream stream) {
         Integer addedCount = 0;
         Integer skippedCount = 0;
         Integer limit = limitFromRequest(onem2mRequest);
-        Integer offset = offsetFromRequest(onem2mRequest);
-
-        List<String> resourceIdList =
-                Onem2mDb.getInstance().getHierarchicalResourceList(onem2mResource.getResourceId(),
-                        Onem2m.MAX_DISCOVERY_LIMIT);
-        for (String resourceId : resourceIdList) {
-            if (addedCount < limit) {
+        Integer offset = discoveryOffsetFromRequest(onem2mRequest);
+        while (addedCount < limit && stream.hasNext()) {
 
-                Onem2mResource resource = Onem2mDb.getInstance().getResource(resourceId);
-                onem2mResponse.setJsonResourceContent(resource.getResourceContentJsonString());
+            Onem2mResource resource = stream.next();
+            onem2mResponse.setJsonResourceContent(resource.getResourceContentJsonString());
 
-                JSONObject jContent = produceJsonResultContentAttributes(onem2mRequest, resource, onem2mResponse);
-                if (nonNull(jContent)) {
-                    if (skipAndIncrementOrAdd(jsonArray, jContent, skippedCount, offset)) {
-                        addedCount++;
-                    }
-                    else {
-                        skippedCount++;
-                    }
+            JSONObject jContent = produceJsonResultContentAttributes(onem2mRequest, resource, onem2mResponse);
+            if (nonNull(jContent)) {
+                if (skipAndIncrementOrAdd(jsonArray, jContent, skippedCount, offset)) {
+                    addedCount++;
+                }
+                else {
+                    skippedCount++;
+                }
 
-                    if (Objects.equals(addedCount, limit)) {
-                        break;
-                    }
+                if (Objects.equals(addedCount, limit)) {
+                    break;
                 }
             }
         }
+        setDiscoveryContentStatus(stream, onem2mResponse);
     }
 
     /**
@@ -428,7 +436,8 @@ public class ResultContentProcessor {
 
                 String resourceId = child.getResourceId();
                 Onem2mResource childResource = Onem2mDb.getInstance().getResource(resourceId);
-                onem2mResponse.setJsonResourceContent(childResource.getResourceContentJsonString());
+                // only read by the filter criteria, the shared parsed content is used
+                onem2mResponse.setJsonResourceContent(ResourceContentView.of(childResource).getJsonObject());
                 JSONObject jContent = new JSONObject();
                 if (produceJsonResultContentChildResourceRef(onem2mRequest, childResource, onem2mResponse, jContent)) {
                     resultJsonArray.put(jContent);
@@ -448,43 +457,21 @@ public class ResultContentProcessor {
                                                              Onem2mResource onem2mResource,
                                                              ResponsePrimitive onem2mResponse,
                                                              JSONArray jsonArray,
+                                                             Onem2mDb.DiscoveryStream stream,
                                                              boolean showRootAttrs) {
 
         Integer addedCount = 0;
         Integer skippedCount = 0;
         Integer limit = limitFromRequest(onem2mRequest);
-        Integer offset = offsetFromRequest(onem2mRequest);
-
-        List<String> resourceIdList =
-                Onem2mDb.getInstance().getHierarchicalResourceList(onem2mResource.getResourceId(),
-                        Onem2m.MAX_DISCOVERY_LIMIT);
-        int resourceListLen = resourceIdList.size();
-        for (int i = 0; i < resourceListLen; i++) {
-            if (addedCount < limit) {
-                String resourceId = resourceIdList.get(i);
-                Onem2mResource resource = Onem2mDb.getInstance().getResource(resourceId);
-                onem2mResponse.setJsonResourceContent(resource.getResourceContentJsonString());
-                if (i == 0) {
-                    if (showRootAttrs) {
-                        JSONObject jContent = produceJsonResultContentAttributes(onem2mRequest, resource, onem2mResponse);
-
-                        if (nonNull(jContent)) {
-                            if (skipAndIncrementOrAdd(jsonArray, jContent, skippedCount, offset)) {
-                                addedCount++;
-                            }
-                            else {
-                                skippedCount++;
-                            }
-
-                            if (Objects.equals(addedCount, limit)) {
-                                break;
-                            }
-                        }
-                    }
-                } else {
-                    // child resources
-                    JSONObject jContent = new JSONObject();
-                    if (produceJsonResultContentChildResourceRef(onem2mRequest, resource, onem2mResponse, jContent)) {
+        Integer offset = discoveryOffsetFromRequest(onem2mRequest);
+        while (addedCount < limit && stream.hasNext()) {
+            Onem2mResource resource = stream.next();
+            if (resource.getResourceId().equals(onem2mResource.getResourceId())) {
+                if (showRootAttrs) {
+                    onem2mResponse.setJsonResourceContent(resource.getResourceContentJsonString());
+                    JSONObject jContent = produceJsonResultContentAttributes(onem2mRequest, resource, onem2mResponse);
+
+                    if (nonNull(jContent)) {
                         if (skipAndIncrementOrAdd(jsonArray, jContent, skippedCount, offset)) {
                             addedCount++;
                         }
@@ -497,8 +484,54 @@ public class ResultContentProcessor {
                         }
                     }
                 }
+            } else {
+                // child resources
+                onem2mResponse.setJsonResourceContent(ResourceContentView.of(resource).getJsonObject());
+                JSONObject jContent = new JSONObject();
+                if (produceJsonResultContentChildResourceRef(onem2mRequest, resource, onem2mResponse, jContent)) {
+                    if (skipAndIncrementOrAdd(jsonArray, jContent, skippedCount, offset)) {
+                        addedCount++;
+                    }
+                    else {
+                        skippedCount++;
+                    }
+
+                    if (Objects.equals(addedCount, limit)) {
+                        break;
+                    }
+                }
             }
         }
+        setDiscoveryContentStatus(stream, onem2mResponse);
+    }
+
+    /**
+     * Opens the discovery stream of the subtree, the indexed conditions of the filter criteria select the
+     * candidates and the cursor of the request continues the previous page.
+     * @return the stream or null if the cursor is not valid, the response has been set
+     */
+    private static Onem2mDb.DiscoveryStream openDiscovery(RequestPrimitive onem2mRequest,
+                                                          Onem2mResource onem2mResource,
+                                                          ResponsePrimitive onem2mResponse) {
+        try {
+            return Onem2mDb.getInstance().openDiscovery(onem2mResource, FilterCriteria.toQuery(onem2mRequest),
+                    onem2mRequest.getPrimitiveFilterCriteriaCursor());
+        } catch (IllegalArgumentException e) {
+            onem2mResponse.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST,
+                    "FILTER_CRITERIA(" + RequestPrimitive.FILTER_CRITERIA_CURSOR + ") invalid: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Marks the response as partial content with the cursor of the next page if the discovery stopped before
+     * the end of the stream.
+     */
+    private static void setDiscoveryContentStatus(Onem2mDb.DiscoveryStream stream, ResponsePrimitive onem2mResponse) {
+        if (stream.hasMore() && null != stream.getCursor()) {
+            onem2mResponse.setPrimitiveContentStatus(Onem2m.ContentStatus.PARTIAL_CONTENT);
+            onem2mResponse.setPrimitiveContinuationCursor(stream.getCursor());
+        }
     }
 
     private static Integer limitFromRequest(RequestPrimitive onem2mRequest) {
@@ -511,6 +544,16 @@ public class ResultContentProcessor {
         }
     }
 
+    /**
+     * The offset applies to the first page only, the cursor continues after the resources already returned.
+     */
+    private static Integer discoveryOffsetFromRequest(RequestPrimitive onem2mRequest) {
+        if (null != onem2mRequest.getPrimitiveFilterCriteriaCursor()) {
+            return 0;
+        }
+        return offsetFromRequest(onem2mRequest);
+    }
+
     private static Integer offsetFromRequest(RequestPrimitive onem2mRequest) {
         Integer offset = onem2mRequest.getPrimitiveFilterCriteriaOffset();
         if (offset == -1) {
@@ -592,9 +635,9 @@ public class ResultContentProcessor {
             }
         }
         if (childList.isEmpty()) {
-            List<String> subscriptionResourceIdList = Onem2mDb.getInstance().selfSubscriptionsResourceIds(onem2mRequest, Onem2m.EventType.RETRIEVE_NECHILD);
-            if (!subscriptionResourceIdList.isEmpty()) {
-                NotificationProcessor.getInstance().handleEventTypeE(onem2mRequest, subscriptionResourceIdList);
+            List<SubscriptionCriteria> subscriptions = Onem2mDb.getInstance().selfSubscriptions(onem2mRequest, Onem2m.EventType.RETRIEVE_NECHILD);
+            if (!subscriptions.isEmpty()) {
+                NotificationProcessor.getInstance().handleEventTypeE(onem2mRequest, subscriptions);
                 //todo: do we have another thread to create resources?
                 // todo: what is the correct method to wait?
                 try {
@@ -629,37 +672,32 @@ public class ResultContentProcessor {
     private static void discoveryJsonResultContentAttributesAndChildResources(RequestPrimitive onem2mRequest,
                                                                     Onem2mResource onem2mResource,
                                                                     ResponsePrimitive onem2mResponse,
-                                                                    JSONArray jsonArray) {
+                                                                    JSONArray jsonArray,
+                                                                    Onem2mDb.DiscoveryStream stream) {
 
         Integer addedCount = 0;
         Integer skippedCount = 0;
         Integer limit = limitFromRequest(onem2mRequest);
-        Integer offset = offsetFromRequest(onem2mRequest);
-
-        List<String> resourceIdList =
-                Onem2mDb.getInstance().getHierarchicalResourceList(onem2mResource.getResourceId(),
-                        Onem2m.MAX_DISCOVERY_LIMIT);
-        // the first resource is the root, show its attrs too
-        for (String aResourceIdList : resourceIdList) {
-            if (addedCount < limit) {
-                Onem2mResource resource = Onem2mDb.getInstance()
-                                                  .getResource(aResourceIdList);
-                onem2mResponse.setJsonResourceContent(resource.getResourceContentJsonString());
-                JSONObject jContent = produceJsonResultContentAttributes(onem2mRequest, resource, onem2mResponse);
-                if (nonNull(jContent)) {
-                    if (skipAndIncrementOrAdd(jsonArray, jContent, skippedCount, offset)) {
-                        addedCount++;
-                    }
-                    else {
-                        skippedCount++;
-                    }
+        Integer offset = discoveryOffsetFromRequest(onem2mRequest);
+        // the root is in the stream too, its attrs are shown as well
+        while (addedCount < limit && stream.hasNext()) {
+            Onem2mResource resource = stream.next();
+            onem2mResponse.setJsonResourceContent(resource.getResourceContentJsonString());
+            JSONObject jContent = produceJsonResultContentAttributes(onem2mRequest, resource, onem2mResponse);
+            if (nonNull(jContent)) {
+                if (skipAndIncrementOrAdd(jsonArray, jContent, skippedCount, offset)) {
+                    addedCount++;
+                }
+                else {
+                    skippedCount++;
+                }
 
-                    if (Objects.equals(addedCount, limit)) {
-                        break;
-                    }
+                if (Objects.equals(addedCount, limit)) {
+                    break;
                 }
             }
         }
+        setDiscoveryContentStatus(stream, onem2mResponse);
     }
 
     /**
@@ -9,6 +9,7 @@
 package org.opendaylight.iotdm.onem2m.core.rest.utils;
 
 import java.util.*;
+import java.util.function.BiPredicate;
 
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.primitive.list.Onem2mPrimitive;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.primitive.list.Onem2mPrimitiveBuilder;
@@ -19,12 +20,13 @@ public class BasePrimitive {
 
     private static final Logger LOG = LoggerFactory.getLogger(BasePrimitive.class);
 
-    protected List<Onem2mPrimitive> onem2mPrimitivesList;
+    // built from the maps when it's needed, only the input and output of the RPC use it
+    private List<Onem2mPrimitive> onem2mPrimitivesList;
     protected Map<String,String> primitiveMap;
     protected Map<String,List<String>> primitiveManyMap;
 
     public BasePrimitive() {
-        onem2mPrimitivesList = new ArrayList<Onem2mPrimitive>();
+        onem2mPrimitivesList = null;
         primitiveMap = new HashMap<String,String>();
         primitiveManyMap = new HashMap<String,List<String>>();
    }
@@ -34,10 +36,21 @@ public class BasePrimitive {
      * @param onem2mPrimitivesList input list
      */
     public void setPrimitivesList(List<Onem2mPrimitive> onem2mPrimitivesList) {
-        this.onem2mPrimitivesList = onem2mPrimitivesList;
         for (Onem2mPrimitive onem2mPrimitive : onem2mPrimitivesList) {
-            primitiveMap.put(onem2mPrimitive.getName(), onem2mPrimitive.getValue());
+            String name = onem2mPrimitive.getName();
+            String previousValue = primitiveMap.put(name, onem2mPrimitive.getValue());
+            if (null != previousValue || primitiveManyMap.containsKey(name)) {
+                // the primitive is repeated in the list (labels as an example), all values are kept
+                List<String> valueArray = primitiveManyMap.get(name);
+                if (valueArray == null) {
+                    valueArray = new ArrayList<String>();
+                    valueArray.add(previousValue);
+                    primitiveManyMap.put(name, valueArray);
+                }
+                valueArray.add(onem2mPrimitive.getValue());
+            }
         }
+        this.onem2mPrimitivesList = onem2mPrimitivesList;
     }
 
     /**
@@ -49,8 +62,8 @@ public class BasePrimitive {
         if (delPrimitive(primitiveName)) {
             LOG.error("set Attr N={}, V={}", primitiveName, primitiveValue);
         }
-        onem2mPrimitivesList.add(new Onem2mPrimitiveBuilder().setName(primitiveName).setValue(primitiveValue).build());
         primitiveMap.put(primitiveName, primitiveValue);
+        onem2mPrimitivesList = null;
         //LOG.info("set Attr N={}, V={}", primitiveName, primitiveValue);
     }
 
@@ -64,7 +77,6 @@ public class BasePrimitive {
         if (delPrimitive(primitiveName)) {
             LOG.error("set Attr N={}, V={}", primitiveName, primitiveValue);
         }
-        onem2mPrimitivesList.add(new Onem2mPrimitiveBuilder().setName(primitiveName).setValue(primitiveValue).build());
         List<String> valueArray = getPrimitiveMany(primitiveName);
         if (valueArray == null) {
             valueArray = new ArrayList<String>();
@@ -73,6 +85,7 @@ public class BasePrimitive {
         } else {
             valueArray.add(primitiveValue);
         }
+        onem2mPrimitivesList = null;
         //LOG.info("setMany Attr N={}, V={}, numValues={}", primitiveName, primitiveValue, valueArray.size());
     }
 
@@ -102,17 +115,55 @@ public class BasePrimitive {
     public boolean delPrimitive(String primitiveName) {
         if (primitiveMap.containsKey(primitiveName)) {
             primitiveMap.remove(primitiveName);
+            primitiveManyMap.remove(primitiveName);
+            onem2mPrimitivesList = null;
+            return true;
+        }
+        return false;
+    }
 
-            Optional<Onem2mPrimitive> primitive = onem2mPrimitivesList.stream()
-                                                .filter(p -> p.getName().equals(primitiveName))
-                                                .findFirst();
+    /**
+     * Passes each name value pair to the action, the names with many values are passed once per value.
+     * The list of primitives is not built, so the primitives can be processed in-process without it.
+     * @param action called for each name value pair, returns false to stop the iteration
+     * @return false if the iteration has been stopped by the action
+     */
+    public boolean forEachPrimitive(BiPredicate<String, String> action) {
+        for (Map.Entry<String, String> primitive : primitiveMap.entrySet()) {
+            if (!primitiveManyMap.containsKey(primitive.getKey()) &&
+                !action.test(primitive.getKey(), primitive.getValue())) {
+                return false;
+            }
+        }
+        for (Map.Entry<String, List<String>> primitive : primitiveManyMap.entrySet()) {
+            for (String value : primitive.getValue()) {
+                if (!action.test(primitive.getKey(), value)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
 
-            if(primitive.isPresent()) {
-                onem2mPrimitivesList.remove(primitive.get());
+    /**
+     * Copies the name value pairs of another primitive, including all values of the names with many values.
+     * @param other the primitive to copy from
+     * @param excludedNames names which are not copied
+     */
+    public void copyPrimitives(BasePrimitive other, Set<String> excludedNames) {
+        for (Map.Entry<String, String> primitive : other.primitiveMap.entrySet()) {
+            if (!excludedNames.contains(primitive.getKey()) &&
+                !other.primitiveManyMap.containsKey(primitive.getKey())) {
+                setPrimitive(primitive.getKey(), primitive.getValue());
+            }
+        }
+        for (Map.Entry<String, List<String>> primitive : other.primitiveManyMap.entrySet()) {
+            if (!excludedNames.contains(primitive.getKey())) {
+                for (String value : primitive.getValue()) {
+                    setPrimitiveMany(primitive.getKey(), value);
+                }
             }
-            return true;
         }
-        return false;
     }
 
     /**
@@ -120,6 +171,12 @@ public class BasePrimitive {
      * @return the list of primitives
      */
     public List<Onem2mPrimitive> getPrimitivesList() {
+        if (null == onem2mPrimitivesList) {
+            List<Onem2mPrimitive> primitives = new ArrayList<Onem2mPrimitive>(primitiveMap.size());
+            forEachPrimitive((name, value) ->
+                    primitives.add(new Onem2mPrimitiveBuilder().setName(name).setValue(value).build()));
+            onem2mPrimitivesList = primitives;
+        }
         return onem2mPrimitivesList;
     }
 }
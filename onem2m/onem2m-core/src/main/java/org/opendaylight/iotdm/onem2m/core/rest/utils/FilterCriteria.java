@@ -11,6 +11,8 @@ package org.opendaylight.iotdm.onem2m.core.rest.utils;
 import java.util.List;
 import org.json.JSONArray;
 import org.json.JSONObject;
+import org.opendaylight.iotdm.onem2m.core.database.transactionCore.ResourceAttributeIndex;
+import org.opendaylight.iotdm.onem2m.core.database.transactionCore.ResourceAttributeIndex.RangeAttribute;
 import org.opendaylight.iotdm.onem2m.core.resource.ResourceContainer;
 import org.opendaylight.iotdm.onem2m.core.resource.BaseResource;
 import org.opendaylight.iotdm.onem2m.core.resource.ResourceContentInstance;
@@ -25,6 +27,51 @@ public class FilterCriteria {
 
     private FilterCriteria() { }
 
+    /**
+     * Collects the conditions of the filter criteria which can be answered by the ResourceAttributeIndex.  The
+     * index plans the discovery using these conditions, the candidates are then checked by matches().
+     * @param onem2mRequest request
+     * @return the query, empty if there is no indexed condition
+     */
+    public static ResourceAttributeIndex.Query toQuery(RequestPrimitive onem2mRequest) {
+        ResourceAttributeIndex.Query query = new ResourceAttributeIndex.Query();
+        if (!onem2mRequest.getHasFilterCriteria()) {
+            return query;
+        }
+
+        String crb = onem2mRequest.getPrimitiveFilterCriteriaCreatedBefore();
+        if (crb != null && Onem2mDateTime.isValidDateTime(crb)) {
+            query.setBelow(RangeAttribute.CREATION_TIME, Onem2mDateTime.toEpochMillis(crb));
+        }
+        String cra = onem2mRequest.getPrimitiveFilterCriteriaCreatedAfter();
+        if (cra != null && Onem2mDateTime.isValidDateTime(cra)) {
+            query.setAbove(RangeAttribute.CREATION_TIME, Onem2mDateTime.toEpochMillis(cra));
+        }
+        String ms = onem2mRequest.getPrimitiveFilterCriteriaModifiedSince();
+        if (ms != null && Onem2mDateTime.isValidDateTime(ms)) {
+            query.setAbove(RangeAttribute.LAST_MODIFIED_TIME, Onem2mDateTime.toEpochMillis(ms));
+        }
+        String ums = onem2mRequest.getPrimitiveFilterCriteriaUnModifiedSince();
+        if (ums != null && Onem2mDateTime.isValidDateTime(ums)) {
+            query.setBelow(RangeAttribute.LAST_MODIFIED_TIME, Onem2mDateTime.toEpochMillis(ums));
+        }
+        Integer sza = onem2mRequest.getPrimitiveFilterCriteriaSizeAbove();
+        if (sza != -1) {
+            query.setAbove(RangeAttribute.CONTENT_SIZE, sza);
+        }
+        Integer szb = onem2mRequest.getPrimitiveFilterCriteriaSizeBelow();
+        if (szb != -1) {
+            query.setBelow(RangeAttribute.CONTENT_SIZE, szb);
+        }
+        if (onem2mRequest.getPrimitiveFilterCriteriaResourceTypes() != null) {
+            query.setResourceTypes(onem2mRequest.getPrimitiveFilterCriteriaResourceTypes());
+        }
+        if (onem2mRequest.getPrimitiveFilterCriteriaLabels() != null) {
+            query.setLabels(onem2mRequest.getPrimitiveFilterCriteriaLabels());
+        }
+        return query;
+    }
+
     /**
      * See if this resource passes each filter if specified
      * @param onem2mRequest request
@@ -64,6 +64,8 @@ public class RequestPrimitive extends BasePrimitive {
     public static final String RESULT_EXPIRATION_TIMESTAMP = "rset";
     public static final String OPERATION_EXECUTION_TIME = "oet";
     public static final String RESPONSE_TYPE = "rt";
+    // notificationURIs of the responseType, the result of a nonBlockingRequestAsynch is sent to them
+    public static final String RESPONSE_TYPE_NOTIFICATION_URI = "nu";
     public static final String RESULT_PERSISTENCE = "rp";
     public static final String RESULT_CONTENT = "rcn";
     public static final String EVENT_CATEGORY = "ec";
@@ -84,6 +86,8 @@ public class RequestPrimitive extends BasePrimitive {
     public static final String FILTER_CRITERIA_FILTER_USAGE = "fu";
     public static final String FILTER_CRITERIA_LIMIT = "lim";
     public static final String FILTER_CRITERIA_OFFSET = "off";
+    // not a oneM2M parameter, continuation cursor of the discovery returned in the previous response
+    public static final String FILTER_CRITERIA_CURSOR = "cur";
     public static final String DISCOVERY_RESULT_TYPE = "drt";
     public static final String ROLE = "rol";
     public static final String ATTRIBUTE_LIST = "atrl";
@@ -107,6 +111,7 @@ public class RequestPrimitive extends BasePrimitive {
         add(RESULT_EXPIRATION_TIMESTAMP);
         add(OPERATION_EXECUTION_TIME);
         add(RESPONSE_TYPE);
+        add(RESPONSE_TYPE_NOTIFICATION_URI);
         add(RESULT_PERSISTENCE);
         add(RESULT_CONTENT);
         add(EVENT_CATEGORY);
@@ -126,6 +131,7 @@ public class RequestPrimitive extends BasePrimitive {
         add(FILTER_CRITERIA_FILTER_USAGE);
         add(FILTER_CRITERIA_LIMIT);
         add(FILTER_CRITERIA_OFFSET);
+        add(FILTER_CRITERIA_CURSOR);
         add(DISCOVERY_RESULT_TYPE);
         add(PROTOCOL);
         add(CONTENT_FORMAT);
@@ -170,6 +176,9 @@ public class RequestPrimitive extends BasePrimitive {
     protected Integer primitiveResponseType = -1;
     public Integer getPrimitiveResponseType() { return primitiveResponseType; }
 
+    protected List<String> primitiveResponseTypeNotificationUris;
+    public List<String> getPrimitiveResponseTypeNotificationUris() { return primitiveResponseTypeNotificationUris; }
+
     protected Integer primitiveResultContent = -1;
     public Integer getPrimitiveResultContent() { return primitiveResultContent; }
 
@@ -206,6 +215,9 @@ public class RequestPrimitive extends BasePrimitive {
     protected Integer primitiveFilterCriteriaOffset = -1;
     public Integer getPrimitiveFilterCriteriaOffset() { return primitiveFilterCriteriaOffset; }
 
+    protected String primitiveFilterCriteriaCursor;
+    public String getPrimitiveFilterCriteriaCursor() { return primitiveFilterCriteriaCursor; }
+
     protected Integer primitiveFilterCriteriaFilterUsage = -1;
     public Integer getPrimitiveFilterCriteriaFilterUsage() { return primitiveFilterCriteriaFilterUsage; }
 
@@ -37,6 +37,8 @@ public class ResponsePrimitive extends BasePrimitive {
     public static final String CONTENT_FORMAT = "content_format";
     public static final String HTTP_CONTENT_TYPE = "http_content_type";
     public static final String CONTENT_LOCATION = "onem2m_content_location";
+    public static final String CONTENT_STATUS = "cnst";
+    public static final String CONTINUATION_CURSOR = "cur";
 
     private String primitiveResponseStatusCode;
     public String getPrimitiveResponseStatusCode() { return primitiveResponseStatusCode; }
@@ -72,6 +74,20 @@ public class ResponsePrimitive extends BasePrimitive {
         setPrimitive(CONTENT_LOCATION, primitiveContentLocation);
     }
 
+    private String primitiveContentStatus;
+    public String getPrimitiveContentStatus() { return primitiveContentStatus; }
+    public void setPrimitiveContentStatus(String primitiveContentStatus) {
+        this.primitiveContentStatus = primitiveContentStatus;
+        setPrimitive(CONTENT_STATUS, primitiveContentStatus);
+    }
+
+    private String primitiveContinuationCursor;
+    public String getPrimitiveContinuationCursor() { return primitiveContinuationCursor; }
+    public void setPrimitiveContinuationCursor(String primitiveContinuationCursor) {
+        this.primitiveContinuationCursor = primitiveContinuationCursor;
+        setPrimitive(CONTINUATION_CURSOR, primitiveContinuationCursor);
+    }
+
     private String primitiveRequestIdentifier;
     public String getPrimitiveRequestIdentifier() { return primitiveRequestIdentifier; }
     public void setPrimitiveRequestIdentifier(String primitiveRequestIdentifier) {
@@ -137,6 +153,13 @@ public class ResponsePrimitive extends BasePrimitive {
         JsonUtils.put(
                 responseJson, ResponsePrimitive.REQUEST_IDENTIFIER,
                 this.getPrimitive(ResponsePrimitive.REQUEST_IDENTIFIER));
+        // the discovery paging isn't carried only by the HTTP headers
+        JsonUtils.put(
+                responseJson, ResponsePrimitive.CONTENT_STATUS,
+                this.getPrimitive(ResponsePrimitive.CONTENT_STATUS));
+        JsonUtils.put(
+                responseJson, ResponsePrimitive.CONTINUATION_CURSOR,
+                this.getPrimitive(ResponsePrimitive.CONTINUATION_CURSOR));
         return responseJson;
     }
 }
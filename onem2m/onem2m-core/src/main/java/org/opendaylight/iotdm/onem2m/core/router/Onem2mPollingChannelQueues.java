@@ -0,0 +1,497 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.opendaylight.iotdm.onem2m.core.router;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.opendaylight.iotdm.onem2m.core.Onem2m;
+import org.opendaylight.iotdm.onem2m.core.rest.utils.RequestPrimitive;
+import org.opendaylight.iotdm.onem2m.core.rest.utils.ResponsePrimitive;
+import org.opendaylight.iotdm.onem2m.core.utils.JsonUtils;
+import org.opendaylight.iotdm.onem2m.core.utils.Onem2mDateTime;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.primitive.list.Onem2mPrimitive;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Queues of the requests for the entities which are not request reachable (remoteCSEs and AEs behind NAT or
+ * offline) and which retrieve the requests through their pollingChannel.  Each target has its own bounded queue,
+ * the requests are released in batches of at most MAX_BATCH when the target long-polls its pollingChannelURI
+ * and the response of the target completes the future returned to the originator, so no router thread waits
+ * for the target.
+ *
+ * The queued and the delivered requests expire at their request expiration timestamp (rqet), or after
+ * DEFAULT_REQUEST_TTL_MS if they have none, and the originator gets the REQUEST_TIMEOUT response.  The queues
+ * are kept only in memory, the requests are lost by restart.
+ *
+ * The queues exist only for the targets with a registered pollingChannel, the requests for the other targets
+ * fail and their polls return nothing.  The delivered requests are identified by the originator and the request
+ * identifier, the request identifiers of different originators can be the same.
+ */
+public class Onem2mPollingChannelQueues {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Onem2mPollingChannelQueues.class);
+
+    public static final int MAX_QUEUED_REQUESTS = 1000;
+    public static final int MAX_BATCH = 50;
+    public static final long DEFAULT_REQUEST_TTL_MS = TimeUnit.SECONDS.toMillis(60);
+    // the originator waits for the response, the requests with longer expiration are cut to this TTL
+    public static final long MAX_REQUEST_TTL_MS = TimeUnit.MINUTES.toMillis(5);
+    public static final long MAX_POLL_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(30);
+    private static final long SWEEP_INTERVAL_MS = 1000;
+
+    // the request primitive parameters of the filter criteria, they are nested in fc of the json request
+    private static final Set<String> filterCriteriaAttributes = new HashSet<String>() {{
+        add(RequestPrimitive.FILTER_CRITERIA_CREATED_BEFORE);
+        add(RequestPrimitive.FILTER_CRITERIA_CREATED_AFTER);
+        add(RequestPrimitive.FILTER_CRITERIA_MODIFIED_SINCE);
+        add(RequestPrimitive.FILTER_CRITERIA_UNMODIFIED_SINCE);
+        add(RequestPrimitive.FILTER_CRITERIA_STATE_TAG_SMALLER);
+        add(RequestPrimitive.FILTER_CRITERIA_STATE_TAG_BIGGER);
+        add(RequestPrimitive.FILTER_CRITERIA_LABELS);
+        add(RequestPrimitive.FILTER_CRITERIA_RESOURCE_TYPE);
+        add(RequestPrimitive.FILTER_CRITERIA_SIZE_ABOVE);
+        add(RequestPrimitive.FILTER_CRITERIA_SIZE_BELOW);
+        add(RequestPrimitive.FILTER_CRITERIA_FILTER_USAGE);
+        add(RequestPrimitive.FILTER_CRITERIA_LIMIT);
+        add(RequestPrimitive.FILTER_CRITERIA_OFFSET);
+    }};
+
+    private static final Set<String> integerAttributes = new HashSet<String>() {{
+        add(RequestPrimitive.OPERATION);
+        add(RequestPrimitive.RESOURCE_TYPE);
+        add(RequestPrimitive.RESULT_CONTENT);
+        add(RequestPrimitive.DISCOVERY_RESULT_TYPE);
+    }};
+
+    private static Onem2mPollingChannelQueues pollingChannelQueues;
+
+    // queues of the targets with a pollingChannel, keyed by the CSE-ID of the remoteCSE or the AE-ID
+    private final Map<String, TargetQueue> targets = new ConcurrentHashMap<>();
+    private final AtomicLong nextRequestId = new AtomicLong();
+    private final LongAdder numQueued = new LongAdder();
+    private final LongAdder numRejected = new LongAdder();
+    private final LongAdder numDelivered = new LongAdder();
+    private final LongAdder numCompleted = new LongAdder();
+    private final LongAdder numExpired = new LongAdder();
+    private final LongAdder totalWaitMs = new LongAdder();
+    private final AtomicLong maxWaitMs = new AtomicLong();
+    private final Thread sweeper;
+
+    private Onem2mPollingChannelQueues() {
+        sweeper = new Thread(this::sweepLoop, "polling-channel-sweep");
+        sweeper.setDaemon(true);
+        sweeper.start();
+    }
+
+    public static synchronized Onem2mPollingChannelQueues getInstance() {
+        if (pollingChannelQueues == null) {
+            pollingChannelQueues = new Onem2mPollingChannelQueues();
+        }
+        return pollingChannelQueues;
+    }
+
+    private static final class QueuedRequest {
+        private final String originator;
+        private final String requestIdentifier;
+        private final JSONObject request;
+        // null for the notifications, the response of the target is not waited for
+        private final CompletableFuture<ResponsePrimitive> response;
+        private final long queuedAtMs;
+        private final long expiresAtMs;
+
+        private QueuedRequest(String originator, String requestIdentifier, JSONObject request,
+                              CompletableFuture<ResponsePrimitive> response, long queuedAtMs, long expiresAtMs) {
+            this.originator = originator;
+            this.requestIdentifier = requestIdentifier;
+            this.request = request;
+            this.response = response;
+            this.queuedAtMs = queuedAtMs;
+            this.expiresAtMs = expiresAtMs;
+        }
+
+        private String deliveryKey() {
+            return Onem2mPollingChannelQueues.deliveryKey(originator, requestIdentifier);
+        }
+    }
+
+    private static String deliveryKey(String originator, String requestIdentifier) {
+        return ((null == originator) ? "" : originator) + " " + requestIdentifier;
+    }
+
+    /**
+     * The requests waiting for the poll of the target and the delivered requests waiting for the response,
+     * all guarded by the monitor of the TargetQueue.
+     */
+    private static final class TargetQueue {
+        private final Deque<QueuedRequest> queue = new ArrayDeque<>();
+        private final Map<String, QueuedRequest> delivered = new HashMap<>();
+    }
+
+    /**
+     * Registers the pollingChannel of the target, the requests for the target are queued from now on.
+     * @param targetId CSE-ID of the remoteCSE or AE-ID of the AE
+     */
+    public void registerChannel(String targetId) {
+        targets.computeIfAbsent(targetId, id -> new TargetQueue());
+    }
+
+    /**
+     * @param targetId CSE-ID of the remoteCSE or AE-ID of the AE
+     * @return true if the target has a pollingChannel
+     */
+    public boolean hasChannel(String targetId) {
+        return null != targetId && targets.containsKey(targetId);
+    }
+
+    /**
+     * Removes the pollingChannel of the target, the queued and the delivered requests fail as the target is not
+     * reachable anymore.
+     * @param targetId CSE-ID of the remoteCSE or AE-ID of the AE
+     */
+    public void removeChannel(String targetId) {
+        TargetQueue target = targets.remove(targetId);
+        if (null == target) {
+            return;
+        }
+        List<QueuedRequest> dropped;
+        synchronized (target) {
+            dropped = new ArrayList<>(target.queue);
+            dropped.addAll(target.delivered.values());
+            target.queue.clear();
+            target.delivered.clear();
+            target.notifyAll();
+        }
+        for (QueuedRequest queued : dropped) {
+            fail(queued, Onem2m.ResponseStatusCode.TARGET_NOT_REACHABLE, "Polling channel removed");
+        }
+    }
+
+    /**
+     * Queues the request for the target, the returned future is completed by the response of the target, or by
+     * the error response if the request expires or can't be queued.
+     * @param targetId CSE-ID of the remoteCSE or AE-ID of the AE
+     * @param request request to be forwarded
+     * @return future of the response
+     */
+    public CompletableFuture<ResponsePrimitive> enqueueRequest(String targetId, RequestPrimitive request) {
+        CompletableFuture<ResponsePrimitive> future = new CompletableFuture<>();
+        String rqi = request.getPrimitiveRequestIdentifier();
+        long now = System.currentTimeMillis();
+        QueuedRequest queued = new QueuedRequest(request.getPrimitiveFrom(), rqi, requestToJson(request), future,
+                now, expirationTime(request.getPrimitive(RequestPrimitive.REQUEST_EXPIRATION_TIMESTAMP), now));
+        enqueue(targetId, queued);
+        return future;
+    }
+
+    /**
+     * Queues the notification for the target, the response of the target is not waited for.
+     * @param targetId AE-ID of the AE
+     * @param request notify request in json format, the request identifier is set if missing
+     * @return true if queued
+     */
+    public boolean enqueueNotification(String targetId, JSONObject request) {
+        String rqi = request.optString(RequestPrimitive.REQUEST_IDENTIFIER, null);
+        if (null == rqi) {
+            rqi = "pch-" + nextRequestId.incrementAndGet();
+            JsonUtils.put(request, RequestPrimitive.REQUEST_IDENTIFIER, rqi);
+        }
+        long now = System.currentTimeMillis();
+        String originator = request.optString(RequestPrimitive.FROM, null);
+        return enqueue(targetId, new QueuedRequest(originator, rqi, request, null, now,
+                expirationTime(request.optString(RequestPrimitive.REQUEST_EXPIRATION_TIMESTAMP, null), now)));
+    }
+
+    private boolean enqueue(String targetId, QueuedRequest queued) {
+        if (queued.expiresAtMs <= queued.queuedAtMs) {
+            fail(queued, Onem2m.ResponseStatusCode.REQUEST_TIMEOUT, "Request expired");
+            return false;
+        }
+        TargetQueue target = (null == targetId) ? null : targets.get(targetId);
+        if (null == target) {
+            numRejected.increment();
+            fail(queued, Onem2m.ResponseStatusCode.TARGET_NOT_REACHABLE, "No polling channel of: " + targetId);
+            return false;
+        }
+        synchronized (target) {
+            if (targets.get(targetId) != target) {
+                // removed concurrently, the requests of the removed queue are not swept
+                fail(queued, Onem2m.ResponseStatusCode.TARGET_NOT_REACHABLE, "Polling channel removed");
+                return false;
+            }
+            if (target.queue.size() < MAX_QUEUED_REQUESTS) {
+                target.queue.addLast(queued);
+                target.notifyAll();
+                numQueued.increment();
+                return true;
+            }
+        }
+        numRejected.increment();
+        LOG.warn("enqueue: polling channel queue of {} is full, rejected: {}", targetId, queued.requestIdentifier);
+        fail(queued, Onem2m.ResponseStatusCode.TARGET_NOT_REACHABLE, "Polling channel queue is full");
+        return false;
+    }
+
+    /**
+     * Long-poll of the target, waits until at least one request is queued or the timeout elapses.
+     * @param targetId CSE-ID of the remoteCSE or AE-ID of the AE
+     * @param timeoutMs maximal time to wait, limited by MAX_POLL_TIMEOUT_MS
+     * @return the oldest at most MAX_BATCH requests in json format, empty if none has been queued or the target
+     * has no pollingChannel
+     * @throws InterruptedException if the polling thread is interrupted
+     */
+    public List<JSONObject> poll(String targetId, long timeoutMs) throws InterruptedException {
+        TargetQueue target = (null == targetId) ? null : targets.get(targetId);
+        if (null == target) {
+            return new ArrayList<>();
+        }
+        long deadline = System.currentTimeMillis() + Math.min(Math.max(timeoutMs, 0), MAX_POLL_TIMEOUT_MS);
+        List<JSONObject> batch = new ArrayList<>();
+        List<QueuedRequest> expired = new ArrayList<>();
+        synchronized (target) {
+            while (true) {
+                long now = System.currentTimeMillis();
+                QueuedRequest queued;
+                while (batch.size() < MAX_BATCH && null != (queued = target.queue.pollFirst())) {
+                    if (queued.expiresAtMs <= now) {
+                        expired.add(queued);
+                        continue;
+                    }
+                    if (null != queued.response) {
+                        target.delivered.put(queued.deliveryKey(), queued);
+                    }
+                    recordWait(now - queued.queuedAtMs);
+                    batch.add(queued.request);
+                }
+                long remaining = deadline - now;
+                if (!batch.isEmpty() || remaining <= 0 || targets.get(targetId) != target) {
+                    break;
+                }
+                target.wait(remaining);
+            }
+        }
+        for (QueuedRequest queued : expired) {
+            numExpired.increment();
+            fail(queued, Onem2m.ResponseStatusCode.REQUEST_TIMEOUT, "Request expired in the polling channel");
+        }
+        numDelivered.add(batch.size());
+        return batch;
+    }
+
+    /**
+     * Completes the delivered request by the response of the target.
+     * @param targetId CSE-ID of the remoteCSE or AE-ID of the AE
+     * @param originator originator of the request (to of the response), null if the response doesn't have it
+     * @param response response of the target
+     * @return false if there's no delivered request of the originator and the request identifier of the response,
+     * or if the response without originator matches more of them
+     */
+    public boolean complete(String targetId, String originator, ResponsePrimitive response) {
+        TargetQueue target = targets.get(targetId);
+        if (null == target) {
+            return false;
+        }
+        String rqi = response.getPrimitiveRequestIdentifier();
+        QueuedRequest queued = null;
+        synchronized (target) {
+            if (null != originator) {
+                queued = target.delivered.remove(deliveryKey(originator, rqi));
+            } else {
+                String key = null;
+                for (Map.Entry<String, QueuedRequest> entry : target.delivered.entrySet()) {
+                    if (entry.getValue().requestIdentifier.equals(rqi)) {
+                        if (null != key) {
+                            LOG.warn("complete: response without originator matches more requests: {}", rqi);
+                            return false;
+                        }
+                        key = entry.getKey();
+                    }
+                }
+                if (null != key) {
+                    queued = target.delivered.remove(key);
+                }
+            }
+        }
+        if (null == queued) {
+            return false;
+        }
+        numCompleted.increment();
+        queued.response.complete(response);
+        return true;
+    }
+
+    private void recordWait(long waitMs) {
+        totalWaitMs.add(waitMs);
+        long max;
+        while (waitMs > (max = maxWaitMs.get()) && !maxWaitMs.compareAndSet(max, waitMs)) {
+            // retry
+        }
+    }
+
+    private static void fail(QueuedRequest queued, String rsc, String message) {
+        if (null == queued.response) {
+            return;
+        }
+        ResponsePrimitive response = new ResponsePrimitive();
+        response.setPrimitiveRequestIdentifier(queued.requestIdentifier);
+        response.setRSC(rsc, message);
+        queued.response.complete(response);
+    }
+
+    /*
+     * The request expiration timestamp is absolute, the requests without it get the default TTL.
+     */
+    private static long expirationTime(String rqet, long now) {
+        if (null == rqet || rqet.isEmpty()) {
+            return now + DEFAULT_REQUEST_TTL_MS;
+        }
+        long expiresAtMs = Onem2mDateTime.toEpochMillis(rqet);
+        if (expiresAtMs == 0) {
+            LOG.warn("Invalid request expiration timestamp: {}, the default TTL is used", rqet);
+            return now + DEFAULT_REQUEST_TTL_MS;
+        }
+        return Math.min(expiresAtMs, now + MAX_REQUEST_TTL_MS);
+    }
+
+    private void sweepLoop() {
+        while (true) {
+            try {
+                Thread.sleep(SWEEP_INTERVAL_MS);
+                sweep(System.currentTimeMillis());
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                LOG.error("Polling channel sweep failed: {}", e.toString());
+            }
+        }
+    }
+
+    /*
+     * The requests of the targets which don't poll, or don't respond, would hold the originators until the
+     * expiration so they are failed here.
+     */
+    private void sweep(long now) {
+        for (TargetQueue target : targets.values()) {
+            List<QueuedRequest> expired = new ArrayList<>();
+            synchronized (target) {
+                expireAll(target.queue.iterator(), now, expired);
+                expireAll(target.delivered.values().iterator(), now, expired);
+            }
+            for (QueuedRequest queued : expired) {
+                numExpired.increment();
+                fail(queued, Onem2m.ResponseStatusCode.REQUEST_TIMEOUT, "Request expired in the polling channel");
+            }
+        }
+    }
+
+    private static void expireAll(Iterator<QueuedRequest> it, long now, List<QueuedRequest> expired) {
+        while (it.hasNext()) {
+            QueuedRequest queued = it.next();
+            if (queued.expiresAtMs <= now) {
+                it.remove();
+                expired.add(queued);
+            }
+        }
+    }
+
+    /**
+     * Converts the request to the json format of the request primitive (TS-0004 m2m:rqp) which is sent to the
+     * target in the response of its poll.
+     * @param request the request
+     * @return request primitive in json format
+     */
+    public static JSONObject requestToJson(RequestPrimitive request) {
+        JSONObject rqp = new JSONObject();
+        JSONObject fc = new JSONObject();
+        for (Onem2mPrimitive primitive : request.getPrimitivesList()) {
+            String name = primitive.getName();
+            String value = primitive.getValue();
+            if (!RequestPrimitive.primitiveAttributes.contains(name) || null == value) {
+                continue;
+            }
+            if (filterCriteriaAttributes.contains(name)) {
+                putValue(fc, name, value);
+            } else if (name.equals(RequestPrimitive.CONTENT)) {
+                try {
+                    JsonUtils.put(rqp, name, new JSONObject(value));
+                } catch (JSONException e) {
+                    JsonUtils.put(rqp, name, value);
+                }
+            } else if (integerAttributes.contains(name)) {
+                try {
+                    JsonUtils.put(rqp, name, Integer.valueOf(value));
+                } catch (NumberFormatException e) {
+                    JsonUtils.put(rqp, name, value);
+                }
+            } else {
+                putValue(rqp, name, value);
+            }
+        }
+        if (fc.length() > 0) {
+            JsonUtils.put(rqp, RequestPrimitive.FILTER_CRITERIA, fc);
+        }
+        return rqp;
+    }
+
+    /*
+     * The parameters with many values (labels as an example) are repeated in the list, they are put as array.
+     */
+    private static void putValue(JSONObject json, String name, String value) {
+        Object existing = json.opt(name);
+        if (null == existing) {
+            JsonUtils.put(json, name, value);
+        } else if (existing instanceof JSONArray) {
+            ((JSONArray) existing).put(value);
+        } else {
+            JsonUtils.put(json, name, new JSONArray().put(existing).put(value));
+        }
+    }
+
+    public JSONObject getStats() {
+        int depth = 0;
+        int maxDepth = 0;
+        int awaitingResponse = 0;
+        for (TargetQueue target : targets.values()) {
+            synchronized (target) {
+                depth += target.queue.size();
+                maxDepth = Math.max(maxDepth, target.queue.size());
+                awaitingResponse += target.delivered.size();
+            }
+        }
+        long delivered = numDelivered.sum();
+        JSONObject js = new JSONObject();
+        JsonUtils.put(js, "targets", targets.size());
+        JsonUtils.put(js, "queue_depth", depth);
+        JsonUtils.put(js, "max_queue_depth", maxDepth);
+        JsonUtils.put(js, "awaiting_response", awaitingResponse);
+        JsonUtils.put(js, "queued", numQueued.sum());
+        JsonUtils.put(js, "rejected", numRejected.sum());
+        JsonUtils.put(js, "delivered", delivered);
+        JsonUtils.put(js, "completed", numCompleted.sum());
+        JsonUtils.put(js, "expired", numExpired.sum());
+        JsonUtils.put(js, "avg_wait_ms", delivered == 0 ? 0 : totalWaitMs.sum() / delivered);
+        JsonUtils.put(js, "max_wait_ms", maxWaitMs.get());
+        return js;
+    }
+}
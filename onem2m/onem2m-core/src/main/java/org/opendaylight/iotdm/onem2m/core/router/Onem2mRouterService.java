@@ -37,6 +37,7 @@ import javax.annotation.Nonnull;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -259,7 +260,24 @@ public class Onem2mRouterService implements IotdmPluginDbClient {
      */
     public Future<ResponsePrimitive> forwardRequest(RequestPrimitive request,
                                                     Onem2mDb.CseBaseResourceLocator resourceLocator) {
-        return this.executor.submit(() -> routerServiceJob(request, resourceLocator));
+        // the requests for the remoteCSE which is reachable through its pollingChannel only are queued
+        // until the remoteCSE polls, they don't hold a router thread meanwhile
+        String remoteCseId = resourceLocator.getRemoteCseCseId();
+        CseRoutingDataRemote routingData = (null == remoteCseId) ? null : routingTable.findFirstRemoteCse(remoteCseId);
+        if (null != routingData && isPollingChannelOnly(routingData) &&
+            null != request.getPrimitiveRequestIdentifier()) {
+            LOG.debug("Queueing request for polling channel, RID: {}, URI: {}",
+                      request.getPrimitiveRequestIdentifier(), resourceLocator.getTargetURI());
+            return Onem2mPollingChannelQueues.getInstance().enqueueRequest(routingData.cseId, request);
+        }
+        // the job completes the returned future when the request is forwarded to the registrar CSE's pollingChannel
+        return CompletableFuture.supplyAsync(() -> routerServiceJob(request, resourceLocator), this.executor)
+                                .thenCompose(response -> response);
+    }
+
+    private static boolean isPollingChannelOnly(CseRoutingDataRemote routingData) {
+        return null != routingData.polingChannel &&
+               !(routingData.requestReachable && null != routingData.pointOfAccess);
     }
 
     /**
@@ -298,10 +316,10 @@ public class Onem2mRouterService implements IotdmPluginDbClient {
      * request will be forwarded.
      * @param request Onem2m request to be routed
      * @param resourceLocator Locator or the target resource
-     * @return Onem2m response
+     * @return future of the Onem2m response, completed unless the request is queued for a pollingChannel
      */
-    private ResponsePrimitive routerServiceJob(RequestPrimitive request,
-                                               Onem2mDb.CseBaseResourceLocator resourceLocator) {
+    private CompletableFuture<ResponsePrimitive> routerServiceJob(RequestPrimitive request,
+                                                                  Onem2mDb.CseBaseResourceLocator resourceLocator) {
         ResponsePrimitive responseToOrigin = new ResponsePrimitive();
 
         // if the request had a REQUEST_IDENTIFIER, return it in the response so client can correlate
@@ -312,7 +330,7 @@ public class Onem2mRouterService implements IotdmPluginDbClient {
         } else {
             responseToOrigin.setRSC(Onem2m.ResponseStatusCode.BAD_REQUEST,
                                   "REQUEST_IDENTIFIER(" + RequestPrimitive.REQUEST_IDENTIFIER + ") not specified");
-            return responseToOrigin;
+            return CompletableFuture.completedFuture(responseToOrigin);
         }
 
         // get remote CSE routing data
@@ -322,7 +340,7 @@ public class Onem2mRouterService implements IotdmPluginDbClient {
                                     "No routing data found for remoteCSE: " + resourceLocator.getRemoteCseCseId());
             LOG.debug("Failed to found routing data for remoteCSE ({}), target URI: {}",
                       resourceLocator.getRemoteCseCseId(), resourceLocator.getTargetURI());
-            return responseToOrigin;
+            return CompletableFuture.completedFuture(responseToOrigin);
         }
 
         // call the blocking send implemented by the plugin
@@ -348,6 +366,12 @@ public class Onem2mRouterService implements IotdmPluginDbClient {
                     CseRoutingDataRemote routingDataRegistrar = cseBase.getRemoteCse(cseBase.registrarCseId);
                     // Forward to registrar CSE only if it's not the same
                     if (routingDataRegistrar != routingData) {
+                        if (isPollingChannelOnly(routingDataRegistrar)) {
+                            // the registrar CSE polls the request, the router thread doesn't wait for it
+                            LOG.debug("Queueing request for the registrar CSE's polling channel, RID: {}", rqi);
+                            return Onem2mPollingChannelQueues.getInstance()
+                                                             .enqueueRequest(routingDataRegistrar.cseId, request);
+                        }
                         response = forwardRequestRemoteCse(request, responseToOrigin, routingDataRegistrar);
                     }
                 }
@@ -362,7 +386,7 @@ public class Onem2mRouterService implements IotdmPluginDbClient {
         LOG.debug("Forwarding end, response: RID: {}, statusCode: {}",
                   responseToOrigin.getPrimitive(ResponsePrimitive.REQUEST_IDENTIFIER),
                   responseToOrigin.getPrimitiveResponseStatusCode());
-        return responseToOrigin;
+        return CompletableFuture.completedFuture(responseToOrigin);
     }
 
     /**
@@ -418,13 +442,9 @@ public class Onem2mRouterService implements IotdmPluginDbClient {
                             return response;
                     }
                 }
-            } else if (null != routingData.polingChannel){
-                // TODO use PolingChannel
-                LOG.error("Forwarding through pooling channel not implemented");
-                responseOrigin.setRSC(Onem2m.ResponseStatusCode.NOT_IMPLEMENTED,
-                                      "Forwarding by polling channel not implemented");
-                return responseOrigin;
             }
+            // the remoteCSEs reachable through their pollingChannel only are handled by the callers, the requests
+            // are queued without a router thread waiting for the response
         } catch(Exception ex) {
             // let's catch all exceptions to avoid crash of onem2mCore because of buggy plugin
             LOG.error("Forwarding of request by plugin: {}, failed: {}",
@@ -590,6 +610,25 @@ public class Onem2mRouterService implements IotdmPluginDbClient {
         }
     }
 
+    /**
+     * Updates poling channel of the remoteCSE specified by its cseId only, the remoteCSE is looked up
+     * in all cseBases.
+     * @param remoteCseId cseId of the remoteCSE
+     * @param polingChannel New poling channel to be set, null if removed
+     */
+    public void updateRoutingDataRemoteCsePolingChannel(@Nonnull String remoteCseId, String polingChannel) {
+        CseRoutingDataRemote routingData = routingTable.findFirstRemoteCse(remoteCseId);
+        if (null == routingData) {
+            LOG.trace("No routing data of remoteCSE: {}, poling channel not updated", remoteCseId);
+            return;
+        }
+        if (null == polingChannel ? null == routingData.polingChannel :
+                                    polingChannel.equals(routingData.polingChannel)) {
+            return;
+        }
+        updateRoutingDataRemoteCsePolingChannel(routingData.parentCseBaseName, remoteCseId, polingChannel);
+    }
+
     /**
      * Updates routing table by data from request primitive.
      * Only updates of cseBase and remoteCSE resources are expected.
@@ -84,6 +84,25 @@ public class Onem2mDateTime {
         return (dateCompare(dateTimeString, cur) > 0);
     }
 
+    /**
+     * Converts the time string to milliseconds since the epoch so the expiration time can be compared without
+     * parsing the string again.
+     * @param dateTimeString time string, FOREVER or empty string means the resource never expires
+     * @return epoch millis, Long.MAX_VALUE for FOREVER and 0 for an invalid time string which is treated as expired
+     */
+    public static long toEpochMillis(String dateTimeString) {
+        if (null == dateTimeString || dateTimeString.isEmpty() || dateTimeString.contentEquals(FOREVER)) {
+            return Long.MAX_VALUE;
+        }
+        // the time string is UTC, see getCurrDateTime()
+        DateTimeFormatter fmt = DateTimeFormat.forPattern(DEFAULT_EXPIRATION_TIME).withZoneUTC();
+        try {
+            return fmt.parseMillis(dateTimeString);
+        } catch (IllegalArgumentException e) {
+            return 0;
+        }
+    }
+
     public static int dateCompare(String dateString1, String dateString2) {
 
         if (dateString1.contentEquals(FOREVER) && dateString2.contentEquals(FOREVER)) {
@@ -8,79 +8,71 @@
 
 package org.opendaylight.iotdm.onem2m.plugins;
 
-import java.util.Collection;
-import org.opendaylight.controller.md.sal.binding.api.*;
-import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
-import org.opendaylight.iotdm.onem2m.core.database.Onem2mDb;
-import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.DbTransactions;
-import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.db.transactions.DbTransaction;
+import org.opendaylight.controller.md.sal.binding.api.DataBroker;
+import org.opendaylight.iotdm.onem2m.core.database.transactionCore.ResourceChangeEvent;
+import org.opendaylight.iotdm.onem2m.core.database.transactionCore.ResourceChangeEventBus;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResource;
-import org.opendaylight.yangtools.concepts.ListenerRegistration;
-import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
-public abstract class Onem2mDatastoreListener implements ClusteredDataTreeChangeListener<DbTransaction> {
-
-    private final Logger LOG = LoggerFactory.getLogger(Onem2mDatastoreListener.class);
-
-    private static final InstanceIdentifier<DbTransaction> IID =
-            InstanceIdentifier.builder(DbTransactions.class)
-                    .child(DbTransaction.class)
-                    .build();
-    private ListenerRegistration<Onem2mDatastoreListener> dcReg;
-    private DataBroker dataBroker;
+/**
+ * Base class of the plugin listeners of the onem2m resource changes.  The listener subscribes to the
+ * ResourceChangeEventBus when it's registered, so the subclass is fully constructed before the first event.
+ * The handlers are called on the thread of its subscription with a snapshot of the changed resource, the deleted
+ * resources are passed in their state before the delete.
+ * The listener must be closed when it's not needed anymore.
+ */
+public abstract class Onem2mDatastoreListener implements ResourceChangeEventBus.ResourceChangeListener,
+        AutoCloseable {
 
+    private ResourceChangeEventBus.Subscription subscription = null;
 
+    /**
+     * @param dataBroker not used, the changes are not read from the datastore anymore
+     */
     public Onem2mDatastoreListener(DataBroker dataBroker) {
-        this.dataBroker = dataBroker;
-        dcReg = dataBroker.registerDataTreeChangeListener(new DataTreeIdentifier<>(LogicalDatastoreType.OPERATIONAL,
-                IID), this);
     }
 
-    @Override
-    public void onDataTreeChanged(Collection<DataTreeModification<DbTransaction>> changes) {
-
-        DbTransaction dbTransaction;
-
-        for (DataTreeModification<DbTransaction> change : changes) {
-            switch (change.getRootNode().getModificationType()) {
-                case WRITE:
-                    dbTransaction = change.getRootNode().getDataAfter();
-                    dbTransactionHandler(dbTransaction);
-                    break;
-            }
+    /**
+     * Subscribes the listener to the resource changes, does nothing if it's registered already.
+     * @return this listener
+     */
+    public synchronized Onem2mDatastoreListener register() {
+        if (null == subscription) {
+            String name = getClass().getName();
+            subscription = ResourceChangeEventBus.getInstance()
+                                                 .subscribe(name.substring(name.lastIndexOf('.') + 1), this);
         }
+        return this;
     }
 
-    private void dbTransactionHandler(DbTransaction dbt) {
-        Onem2mResource onem2mResource = Onem2mDb.getInstance().getResource(dbt.getResourceId());
-        if (onem2mResource != null) {
-            switch (dbt.getOperation()) {
-                case CREATE:
-                    onem2mResourceCreated(onem2mResource);
-                    break;
-                case UPDATE:
-                    onem2mResourceChanged(onem2mResource);
-                    break;
-                case DELETE:
-                    onem2mResourceDeleted(onem2mResource);
-                    break;
-            }
-        } else {
-            LOG.warn("dbTransactionHandler: cannot find onem2mResource for: {}", dbt.getResourceId());
+    @Override
+    public void onResourceChange(ResourceChangeEvent event) {
+        Onem2mResource onem2mResource = event.getResource();
+        switch (event.getOperation()) {
+            case CREATE:
+                onem2mResourceCreated(onem2mResource.getParentTargetUri(), onem2mResource);
+                break;
+            case UPDATE:
+                onem2mResourceChanged(onem2mResource.getParentTargetUri(), onem2mResource);
+                break;
+            case DELETE:
+                onem2mResourceDeleted(onem2mResource.getParentTargetUri(), onem2mResource);
+                break;
         }
     }
-    private void onem2mResourceCreated(Onem2mResource onem2mResource) {
-        onem2mResourceCreated(onem2mResource.getParentTargetUri(), onem2mResource);
-    }
 
-    private void onem2mResourceChanged(Onem2mResource onem2mResource) {
-        onem2mResourceChanged(onem2mResource.getParentTargetUri(), onem2mResource);
+    /**
+     * @return number of the resource changes not handled by this listener yet
+     */
+    public synchronized long getLag() {
+        return (null == subscription) ? 0 : subscription.getLag();
     }
 
-    private void onem2mResourceDeleted(Onem2mResource onem2mResource) {
-        onem2mResourceDeleted(onem2mResource.getParentTargetUri(), onem2mResource);
+    @Override
+    public synchronized void close() {
+        if (null != subscription) {
+            subscription.close();
+            subscription = null;
+        }
     }
 
     public abstract void onem2mResourceCreated(String hName, Onem2mResource onem2mResource);
@@ -120,6 +120,16 @@ public class IotdmPluginCoapResponse implements IotdmPluginResponse {
         if (nonNull(contentLocation) && (!contentLocation.isEmpty())) {
             options.setLocationPath(Onem2m.translateUriFromOnem2m(contentLocation));
         }
+
+        // partial discovery result and the cursor of its next page
+        String cnst = onem2mResponse.getPrimitive(ResponsePrimitive.CONTENT_STATUS);
+        if (nonNull(cnst)) {
+            options.addOption(new Option(Onem2m.CoapOption.ONEM2M_CTS, Integer.parseInt(cnst)));
+        }
+        String cursor = onem2mResponse.getPrimitive(ResponsePrimitive.CONTINUATION_CURSOR);
+        if (nonNull(cursor)) {
+            options.addOption(new Option(Onem2m.CoapOption.ONEM2M_CUR, cursor));
+        }
     }
 
     /**
@@ -135,6 +145,8 @@ public class IotdmPluginCoapResponse implements IotdmPluginResponse {
     private static CoAP.ResponseCode mapCoreResponseToCoapResponse(String rscString) {
 
         switch (rscString) {
+            case Onem2m.ResponseStatusCode.ACCEPTED:
+                return CoAP.ResponseCode.CREATED;
             case Onem2m.ResponseStatusCode.OK:
                 return CoAP.ResponseCode.CONTENT;
             case Onem2m.ResponseStatusCode.CREATED:
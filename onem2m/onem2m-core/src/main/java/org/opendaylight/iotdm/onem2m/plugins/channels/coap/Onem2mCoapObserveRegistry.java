@@ -0,0 +1,407 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.opendaylight.iotdm.onem2m.plugins.channels.coap;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.eclipse.californium.core.CoapResource;
+import org.eclipse.californium.core.coap.CoAP;
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.coap.Response;
+import org.eclipse.californium.core.network.Exchange;
+import org.eclipse.californium.core.observe.ObserveManager;
+import org.eclipse.californium.core.observe.ObserveRelation;
+import org.eclipse.californium.core.observe.ObservingEndpoint;
+import org.eclipse.californium.core.server.resources.CoapExchange;
+import org.opendaylight.iotdm.onem2m.core.Onem2m;
+import org.opendaylight.iotdm.onem2m.core.database.Onem2mDb;
+import org.opendaylight.iotdm.onem2m.core.database.transactionCore.ResourceChangeEvent;
+import org.opendaylight.iotdm.onem2m.core.database.transactionCore.ResourceChangeEventBus;
+import org.opendaylight.iotdm.onem2m.core.resource.ResourceContainer;
+import org.opendaylight.iotdm.onem2m.plugins.IotdmPlugin;
+import org.opendaylight.iotdm.onem2m.plugins.registry.Onem2mLocalEndpointRegistry;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * CoAP Observe (RFC 7641) of the oneM2M resources served by the CoAP channel.  A GET with the Observe option
+ * registers an observe relation on the observed URI, e.g. a container or its latest contentInstance (.../la).
+ * The changes of the resources are received from the ResourceChangeEventBus and the retrieve of the observed
+ * URI is executed again for each relation, the result is pushed to the device over the existing relation.
+ *
+ * The notifications are sent as NON messages.  A CON notification is sent to each relation at least every
+ * REFRESH_INTERVAL_MS or every REFRESH_INTERVAL_COUNT notifications, the URIs without a change for
+ * REFRESH_INTERVAL_MS are refreshed by the sweeper, so a device which stopped acknowledging is detected and its
+ * relations are cancelled by Californium when the CON notification times out.  A RST from the device cancels
+ * the relation immediately.  The refresh is decided here per relation, the process-wide standard NetworkConfig
+ * read by the ObserveRelation of Californium is left as configured.
+ */
+class Onem2mCoapObserveRegistry implements ResourceChangeEventBus.ResourceChangeListener {
+    private static final Logger LOG = LoggerFactory.getLogger(Onem2mCoapObserveRegistry.class);
+
+    static final long REFRESH_INTERVAL_MS = TimeUnit.MINUTES.toMillis(2);
+    static final int REFRESH_INTERVAL_COUNT = 100;
+    static final int MAX_OBSERVE_RELATIONS = 100000;
+    private static final long SWEEP_INTERVAL_MS = TimeUnit.SECONDS.toMillis(30);
+    private static final int OBSERVE_REGISTER = 0;
+    private static final int OBSERVE_DEREGISTER = 1;
+    private static final String LATEST_SUFFIX = "/" + ResourceContainer.LATEST;
+    private static final String OLDEST_SUFFIX = "/" + ResourceContainer.OLDEST;
+    private static final String CONTENT_INSTANCE_RESOURCE_TYPE =
+            String.valueOf(Onem2m.ResourceType.CONTENT_INSTANCE);
+
+    private final Onem2mLocalEndpointRegistry pluginRegistry;
+    private final Function<String, String> resourceIdResolver;
+    private final ObserveManager observeManager = new ObserveManager();
+    // observed resources by the onem2m URI and by the resourceId of the observed (or parent) resource
+    private final Map<String, ObservedResource> observedByUri = new ConcurrentHashMap<>();
+    private final Map<String, Set<ObservedResource>> observedByResourceId = new ConcurrentHashMap<>();
+    private final AtomicInteger numRelations = new AtomicInteger();
+
+    private ResourceChangeEventBus.Subscription subscription;
+    private Thread sweeperThread;
+    private volatile boolean running = true;
+
+    Onem2mCoapObserveRegistry(Onem2mLocalEndpointRegistry pluginRegistry) {
+        this(pluginRegistry, uri -> Onem2mDb.getInstance().findResourceIdUsingURI(uri));
+    }
+
+    /**
+     * @param pluginRegistry registry of the plugins the retrieves are dispatched to
+     * @param resourceIdResolver resolves the onem2m URI of the local resource to its resourceId
+     */
+    Onem2mCoapObserveRegistry(Onem2mLocalEndpointRegistry pluginRegistry,
+                              Function<String, String> resourceIdResolver) {
+        this.pluginRegistry = pluginRegistry;
+        this.resourceIdResolver = resourceIdResolver;
+    }
+
+    /**
+     * Starts the sweeper.
+     */
+    synchronized void start() {
+        running = true;
+        sweeperThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Thread.currentThread().setName("coap-observe-sweep");
+                sweep();
+            }
+        });
+        sweeperThread.setDaemon(true);
+        sweeperThread.start();
+    }
+
+    synchronized void close() {
+        running = false;
+        if (null != sweeperThread) {
+            sweeperThread.interrupt();
+            sweeperThread = null;
+        }
+        unsubscribe();
+        for (ObservedResource observed : observedByUri.values()) {
+            observed.clearObserveRelations();
+        }
+        observedByUri.clear();
+        observedByResourceId.clear();
+    }
+
+    private synchronized void subscribe() {
+        if (null == subscription && running) {
+            subscription = ResourceChangeEventBus.getInstance().subscribe("coap-observe", this);
+        }
+    }
+
+    private synchronized void unsubscribe() {
+        if (null != subscription) {
+            subscription.close();
+            subscription = null;
+        }
+    }
+
+    /**
+     * @param exchange received exchange
+     * @return true for the GET requests with the Observe option
+     */
+    static boolean isObserveRequest(Exchange exchange) {
+        Request request = exchange.getRequest();
+        return request.getCode() == CoAP.Code.GET && request.getOptions().hasObserve();
+    }
+
+    /**
+     * Registers or deregisters the observe relation of the GET request with the Observe option.
+     * @param exchange received exchange
+     * @param request the request of the exchange
+     * @return true if the request was handled, false if it has to be handled as the plain GET
+     */
+    boolean handleObserveRequest(Exchange exchange, IotdmPluginCoapRequest request) {
+        Request coapRequest = exchange.getRequest();
+        InetSocketAddress source = new InetSocketAddress(coapRequest.getSource(), coapRequest.getSourcePort());
+
+        if (coapRequest.getOptions().getObserve() == OBSERVE_DEREGISTER) {
+            ObserveRelation relation = observeManager.getRelation(source, coapRequest.getToken());
+            if (null != relation) {
+                relation.cancel();
+            }
+            return false;
+        }
+        if (coapRequest.getOptions().getObserve() != OBSERVE_REGISTER) {
+            return false;
+        }
+
+        if (numRelations.get() >= MAX_OBSERVE_RELATIONS) {
+            // the server may ignore the Observe option, the device gets the current state only
+            LOG.warn("handleObserveRequest: max number of observe relations reached: {}", MAX_OBSERVE_RELATIONS);
+            return false;
+        }
+
+        ObservedResource observed;
+        do {
+            observed = getObservedResource(request.getOnem2mUri());
+            if (null == observed) {
+                return false;
+            }
+            // retried if the sweeper has just removed the resource without relations
+        } while (!observed.beginRegistration());
+
+        try {
+            // the same as the ServerMessageDeliverer does for the observable resources, the relation is added to
+            // the resource when the response is successful
+            ObservingEndpoint remote = observeManager.findObservingEndpoint(source);
+            ObserveRelation relation = new ObserveRelation(remote, observed, exchange);
+            remote.addObserveRelation(relation);
+            exchange.setRelation(relation);
+            observed.handleRequest(exchange);
+        } finally {
+            observed.endRegistration();
+        }
+        return true;
+    }
+
+    private ObservedResource getObservedResource(String onem2mUri) {
+        ObservedResource observed = observedByUri.get(onem2mUri);
+        if (null != observed) {
+            return observed;
+        }
+
+        boolean childrenOnly = onem2mUri.endsWith(LATEST_SUFFIX) || onem2mUri.endsWith(OLDEST_SUFFIX);
+        String targetUri = childrenOnly ? onem2mUri.substring(0, onem2mUri.lastIndexOf('/')) : onem2mUri;
+        String resourceId = resourceIdResolver.apply(targetUri);
+        if (null == resourceId) {
+            // not a local resource, the plain GET returns the error
+            return null;
+        }
+
+        observed = observedByUri.computeIfAbsent(onem2mUri,
+                                                 uri -> new ObservedResource(uri, resourceId, childrenOnly));
+        observedByResourceId.computeIfAbsent(resourceId, id -> ConcurrentHashMap.newKeySet()).add(observed);
+        subscribe();
+        return observed;
+    }
+
+    private void removeObservedResource(ObservedResource observed) {
+        observedByUri.remove(observed.onem2mUri, observed);
+        Set<ObservedResource> observedSet = observedByResourceId.get(observed.resourceId);
+        if (null != observedSet) {
+            observedSet.remove(observed);
+            if (observedSet.isEmpty()) {
+                observedByResourceId.remove(observed.resourceId, observedSet);
+            }
+        }
+    }
+
+    @Override
+    public void onResourceChange(ResourceChangeEvent event) {
+        Onem2mResource resource = event.getResource();
+        resourceChanged(resource.getResourceId(), resource.getResourceType(), resource.getParentId(),
+                        event.getOperation() == ResourceChangeEvent.Operation.DELETE);
+    }
+
+    void resourceChanged(String resourceId, String resourceType, String parentId, boolean deleted) {
+        Set<ObservedResource> observedSet = observedByResourceId.get(resourceId);
+        if (null != observedSet) {
+            for (ObservedResource observed : observedSet) {
+                // the children only URIs are notified on the delete of the parent too, the retrieve fails
+                // and the relations are cancelled
+                if (!observed.childrenOnly || deleted) {
+                    observed.notifyObservers();
+                }
+            }
+        }
+
+        // the contentInstances change the la/ol of their container and its cni/cbs
+        if (CONTENT_INSTANCE_RESOURCE_TYPE.equals(resourceType) && null != parentId) {
+            observedSet = observedByResourceId.get(parentId);
+            if (null != observedSet) {
+                for (ObservedResource observed : observedSet) {
+                    observed.notifyObservers();
+                }
+            }
+        }
+    }
+
+    private void sweep() {
+        while (running) {
+            try {
+                Thread.sleep(SWEEP_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            sweep(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * One pass of the sweeper.
+     * @param now current time in milliseconds
+     */
+    void sweep(long now) {
+        for (ObservedResource observed : observedByUri.values()) {
+            // all relations cancelled by the devices or after the timeout of the CON notification
+            if (observed.removeIfUnused(now - SWEEP_INTERVAL_MS)) {
+                continue;
+            }
+            if (observed.getObserverCount() > 0 && now - observed.lastNotified >= REFRESH_INTERVAL_MS) {
+                // no change for the refresh interval, the notification is sent as CON and the silent
+                // devices are detected
+                observed.notifyObservers();
+            }
+        }
+        if (observedByUri.isEmpty()) {
+            unsubscribe();
+        }
+    }
+
+    int getNumRelations() {
+        return numRelations.get();
+    }
+
+    /**
+     * The observable resource of one observed onem2m URI.  The resource is not a part of the resource tree
+     * of the server, the requests are dispatched to it by the registry.
+     */
+    private final class ObservedResource extends CoapResource {
+        private final String onem2mUri;
+        private final String resourceId;
+        private final boolean childrenOnly;
+        private volatile long lastNotified = System.currentTimeMillis();
+        // CON refresh state of the relations
+        private final Map<ObserveRelation, RefreshState> refreshStates = new ConcurrentHashMap<>();
+        // guarded by this
+        private int numRegistering = 0;
+        private boolean removed = false;
+
+        ObservedResource(String onem2mUri, String resourceId, boolean childrenOnly) {
+            super(onem2mUri);
+            this.onem2mUri = onem2mUri;
+            this.resourceId = resourceId;
+            this.childrenOnly = childrenOnly;
+            // the type of the notifications is set by handleGET()
+            setObservable(true);
+        }
+
+        /**
+         * @return false if the resource has been removed by the sweeper, the registration must look it up again
+         */
+        synchronized boolean beginRegistration() {
+            if (removed) {
+                return false;
+            }
+            numRegistering++;
+            return true;
+        }
+
+        synchronized void endRegistration() {
+            numRegistering--;
+            lastNotified = System.currentTimeMillis();
+        }
+
+        /**
+         * Removes the resource if it has no relation and no registration is in progress, the check and the
+         * removal are atomic with respect to beginRegistration().
+         */
+        synchronized boolean removeIfUnused(long notifiedBefore) {
+            if (numRegistering > 0 || getObserverCount() > 0 || lastNotified >= notifiedBefore) {
+                return false;
+            }
+            removed = true;
+            removeObservedResource(this);
+            return true;
+        }
+
+        void notifyObservers() {
+            lastNotified = System.currentTimeMillis();
+            if (getObserverCount() > 0) {
+                changed();
+            }
+        }
+
+        @Override
+        public void addObserveRelation(ObserveRelation relation) {
+            super.addObserveRelation(relation);
+            refreshStates.put(relation, new RefreshState());
+            numRelations.incrementAndGet();
+        }
+
+        @Override
+        public void removeObserveRelation(ObserveRelation relation) {
+            super.removeObserveRelation(relation);
+            refreshStates.remove(relation);
+            numRelations.decrementAndGet();
+        }
+
+        /**
+         * Handles the registration and each notification, the retrieve is executed with the request of the
+         * registration.
+         */
+        @Override
+        public void handleGET(CoapExchange coapExchange) {
+            IotdmPluginCoapRequest request = new IotdmPluginCoapRequest(coapExchange.advanced());
+            IotdmPluginCoapResponse response = new IotdmPluginCoapResponse();
+
+            IotdmPlugin plg = pluginRegistry.getPlugin(request.getOnem2mUri());
+            if (null == plg) {
+                coapExchange.respond(CoAP.ResponseCode.NOT_FOUND);
+                return;
+            }
+            plg.handle(request, response);
+            Response coapResponse = response.buildCoapResponse();
+            RefreshState refreshState = refreshStates.get(coapExchange.advanced().getRelation());
+            if (null != refreshState) {
+                // notification of an established relation
+                coapResponse.setType(refreshState.next() ? CoAP.Type.CON : CoAP.Type.NON);
+            }
+            coapExchange.respond(coapResponse);
+        }
+    }
+
+    /**
+     * Decides which notifications of one relation are sent as CON.
+     */
+    private static final class RefreshState {
+        private long lastConfirmable = System.currentTimeMillis();
+        private int numSinceConfirmable = 0;
+
+        synchronized boolean next() {
+            long now = System.currentTimeMillis();
+            if (++numSinceConfirmable >= REFRESH_INTERVAL_COUNT || now - lastConfirmable >= REFRESH_INTERVAL_MS) {
+                numSinceConfirmable = 0;
+                lastConfirmable = now;
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -42,6 +42,7 @@ public class Onem2mCoapPluginServer extends Onem2mCoapBaseChannel {
     public boolean init() {
         onem2mCoapBaseHandler = new Onem2mCoapBaseHandler(port);
         onem2mCoapBaseHandler.addEndpoints();
+        observeRegistry.start();
 
         try {
             onem2mCoapBaseHandler.start();
@@ -62,6 +63,7 @@ public class Onem2mCoapPluginServer extends Onem2mCoapBaseChannel {
             return;
         }
         try {
+            observeRegistry.close();
             onem2mCoapBaseHandler.stop();
             onem2mCoapBaseHandler.destroy();
             LOG.info("Stopped CoAP Server: on port: {}", port);
@@ -78,11 +80,13 @@ public class Onem2mCoapPluginServer extends Onem2mCoapBaseChannel {
 abstract class Onem2mCoapBaseChannel<Tconfig> extends Onem2mBaseCommunicationChannel<Tconfig> {
     private static final Logger LOG = LoggerFactory.getLogger(Onem2mCoapBaseChannel.class);
     protected Onem2mCoapBaseHandler onem2mCoapBaseHandler = null;
+    protected final Onem2mCoapObserveRegistry observeRegistry;
 
     Onem2mCoapBaseChannel(String ipAddress, int port,
                           Onem2mLocalEndpointRegistry registry,
                           Tconfig config, boolean usesDefaultCfg) {
         super(ipAddress, port, registry, config, usesDefaultCfg);
+        observeRegistry = new Onem2mCoapObserveRegistry(registry);
     }
 
     @Override
@@ -172,6 +176,11 @@ abstract class Onem2mCoapBaseChannel<Tconfig> extends Onem2mBaseCommunicationCha
                     request.setPayLoad(cn);
                 }
 
+                if (Onem2mCoapObserveRegistry.isObserveRequest(exchange) &&
+                    observeRegistry.handleObserveRequest(exchange, request)) {
+                    return;
+                }
+
                 IotdmPlugin plg = pluginRegistry.getPlugin(request.getOnem2mUri());
                 if (nonNull(plg)) {
                     plg.handle(request, response);
@@ -178,6 +178,7 @@ public class Onem2mCoapsPluginServer extends Onem2mCoapBaseChannel<Onem2mCoapsPl
         }
 
         onem2mCoapBaseHandler.addEndpoints();
+        observeRegistry.start();
 
         try {
             onem2mCoapBaseHandler.start();
@@ -201,6 +202,7 @@ public class Onem2mCoapsPluginServer extends Onem2mCoapBaseChannel<Onem2mCoapsPl
             return;
         }
         try {
+            observeRegistry.close();
             onem2mCoapBaseHandler.stop();
             onem2mCoapBaseHandler.destroy();
             LOG.info("Stopped CoAPS Server: on port: {}", port);
@@ -40,6 +40,14 @@ public class IotdmPluginOnem2mBaseRequest implements IotdmPluginRequest<String>
         }
     }
 
+    /**
+     * @return the onem2m request primitive in json format
+     */
+    public JSONObject getRequestPrimitiveJson() {
+        initRqpJson();
+        return rqpBody;
+    }
+
     /**
      * @return onem2m operation
      */
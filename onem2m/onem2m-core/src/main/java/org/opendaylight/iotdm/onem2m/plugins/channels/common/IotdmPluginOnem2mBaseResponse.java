@@ -88,6 +88,13 @@ public class IotdmPluginOnem2mBaseResponse implements IotdmPluginResponse {
         return true;
     }
 
+    /**
+     * @return the response primitive, null if not set
+     */
+    public ResponsePrimitive getResponsePrimitive() {
+        return response;
+    }
+
     /**
      * set basic response fields of ResponsePrimitive with error body
      * @param returnCode onem2m return code
@@ -85,6 +85,9 @@ public class IotdmPluginHttpResponse implements IotdmPluginResponse {
         int httpRsc = HttpServletResponse.SC_BAD_REQUEST;
 
         switch (rscString) {
+            case Onem2m.ResponseStatusCode.ACCEPTED:
+                httpRsc = HttpServletResponse.SC_ACCEPTED;
+                break;
             case Onem2m.ResponseStatusCode.OK:
                 httpRsc = HttpServletResponse.SC_OK;
                 break;
@@ -199,6 +202,15 @@ public class IotdmPluginHttpResponse implements IotdmPluginResponse {
         if (cl != null) {
             httpResponse.setHeader("Content-Location", Onem2m.translateUriFromOnem2m(cl));
         }
+
+        String cnst = onem2mResponse.getPrimitive(ResponsePrimitive.CONTENT_STATUS);
+        if (cnst != null) {
+            httpResponse.setHeader(Onem2m.HttpHeaders.X_M2M_CTS, cnst);
+        }
+        String cursor = onem2mResponse.getPrimitive(ResponsePrimitive.CONTINUATION_CURSOR);
+        if (cursor != null) {
+            httpResponse.setHeader(Onem2m.HttpHeaders.X_M2M_CUR, cursor);
+        }
         return true;
     }
 
@@ -25,15 +25,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.servlet.http.HttpServletRequest;
-import java.io.IOException;
-import java.util.Set;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author jkosmel
  */
 class Onem2mWebsocketPluginServer extends Onem2mBaseCommunicationChannel {
     private static final Logger LOG = LoggerFactory.getLogger(Onem2mWebsocketPluginServer.class);
+    // one of LOG_SAMPLE_RATE received messages is logged
+    private static final long LOG_SAMPLE_RATE = 1000;
+    private final AtomicLong numReceived = new AtomicLong();
     private Server httpServer;
 
     Onem2mWebsocketPluginServer(String ipAddress, int port,
@@ -79,7 +80,6 @@ class Onem2mWebsocketPluginServer extends Onem2mBaseCommunicationChannel {
     }
 
     private class Onem2mWebSocketBaseHandler extends WebSocketHandler {
-        private final Set<WebSocket.Connection> connections = new CopyOnWriteArraySet<>();
         //private List<String> supportedSubProtocols = new ArrayList<>();
 
         @Override
@@ -103,23 +103,28 @@ class Onem2mWebsocketPluginServer extends Onem2mBaseCommunicationChannel {
 
         private class WebSocketImpl implements WebSocket.OnTextMessage {
             private Connection connection;
+            // the responses and notifications are sent through the session
+            private Onem2mWebsocketSession session;
 
             @Override
             public void onOpen(Connection connection) {
                 this.connection = connection;
-                connections.add(connection); //store connections for further notifications purposes
+                this.session = Onem2mWebsocketSessionRegistry.getInstance().register(connection);
                 LOG.info("Websocket connection successfully opened for: " + connection);
             }
 
             @Override
             public void onMessage(String wsMessage) {
                 try {
-                    LOG.info("Websocket message received from: "+ connection.toString());
+                    if (LOG.isDebugEnabled() && numReceived.incrementAndGet() % LOG_SAMPLE_RATE == 1) {
+                        LOG.debug("Websocket message received from: {}, total received: {}",
+                                  connection, numReceived.get());
+                    }
 
                     if (StringUtils.isEmpty(wsMessage)) {
                         String msg = "Received websocket message is empty";
                         LOG.warn(msg);
-                        this.connection.sendMessage(IotdmPluginOnem2mBaseResponse.buildErrorResponse(msg, Onem2m.ResponseStatusCode.BAD_REQUEST));
+                        session.sendResponse(IotdmPluginOnem2mBaseResponse.buildErrorResponse(msg, Onem2m.ResponseStatusCode.BAD_REQUEST));
                         return;
                     }
                     IotdmPluginOnem2mBaseRequest request = new IotdmPluginOnem2mBaseRequest(wsMessage, Onem2m.SubProtocol.JSON);
@@ -128,29 +133,25 @@ class Onem2mWebsocketPluginServer extends Onem2mBaseCommunicationChannel {
                     IotdmPlugin plg = pluginRegistry.getPlugin(request.getOnem2mUri());
                     if (plg != null) {
                         plg.handle(request, response);
-                        this.connection.sendMessage(response.buildWebsocketResponse());
+                        Onem2mWebsocketSessionRegistry.getInstance().bindResponse(
+                                session, request.getRequestPrimitiveJson(), response.getResponsePrimitive());
+                        session.sendResponse(response.buildWebsocketResponse());
                     }
                     else {
                         String msg = "Websocket plugin not found";
                         LOG.warn(msg);
-                        this.connection.sendMessage(IotdmPluginOnem2mBaseResponse.buildErrorResponse(msg, Onem2m.ResponseStatusCode.INTERNAL_SERVER_ERROR));
+                        session.sendResponse(IotdmPluginOnem2mBaseResponse.buildErrorResponse(msg, Onem2m.ResponseStatusCode.INTERNAL_SERVER_ERROR));
                     }
-                    LOG.info("Websocket message has been processed");
                 } catch (Exception e) {
                     String msg = "Exception in websocket message processing";
                     LOG.warn(msg, e);
-                    try {
-                        this.connection.sendMessage(IotdmPluginOnem2mBaseResponse.buildErrorResponse(msg+": "+e.getMessage(), Onem2m.ResponseStatusCode.INTERNAL_SERVER_ERROR));
-                    } catch (IOException ioe) {
-                        LOG.error("Error occured while sending websocket message", ioe);
-                        //this.connection.close(); //TODO: should we close on error?
-                    }
+                    session.sendResponse(IotdmPluginOnem2mBaseResponse.buildErrorResponse(msg+": "+e.getMessage(), Onem2m.ResponseStatusCode.INTERNAL_SERVER_ERROR));
                 }
             }
 
             @Override
             public void onClose(int closeCode, String message) {
-                connections.remove(connection);
+                session.close();
                 LOG.info("Websocket connection has been closed: " + connection);
             }
         }
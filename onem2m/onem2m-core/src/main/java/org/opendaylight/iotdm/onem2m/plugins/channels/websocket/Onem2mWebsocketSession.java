@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.opendaylight.iotdm.onem2m.plugins.channels.websocket;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import org.eclipse.jetty.websocket.WebSocket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Connected websocket session of a client (typically an AE) with the bounded queue of the outbound messages.
+ * The responses and notifications are queued and written by one drain task at a time so the thread which
+ * produced the message never blocks on the connection.
+ *
+ * When the queue is over its high watermark a new notification replaces the queued notification of the same
+ * subscription (the client gets the latest state only).  When the queue is full, or the client doesn't read
+ * a message for SEND_TIMEOUT_MS, the client is considered a slow consumer and the session is closed.
+ */
+public class Onem2mWebsocketSession {
+    private static final Logger LOG = LoggerFactory.getLogger(Onem2mWebsocketSession.class);
+
+    public static final int MAX_QUEUED_MESSAGES = 256;
+    public static final int COALESCE_WATERMARK = MAX_QUEUED_MESSAGES / 2;
+    public static final long SEND_TIMEOUT_MS = 10000;
+    // close code of the policy violation (RFC 6455)
+    private static final int CLOSE_POLICY_VIOLATION = 1008;
+
+    private final WebSocket.Connection connection;
+    private final Executor executor;
+    private final Onem2mWebsocketSessionRegistry registry;
+    private final Deque<OutboundMessage> queue = new ArrayDeque<>();
+    private boolean draining = false;
+    private long sendStartedMs = 0;
+    private volatile boolean closed = false;
+
+    private static class OutboundMessage {
+        private final String message;
+        // subscription reference of the notification, null for the responses
+        private String coalesceKey;
+
+        OutboundMessage(String message, String coalesceKey) {
+            this.message = message;
+            this.coalesceKey = coalesceKey;
+        }
+    }
+
+    Onem2mWebsocketSession(WebSocket.Connection connection, Executor executor,
+                           Onem2mWebsocketSessionRegistry registry) {
+        this.connection = connection;
+        this.executor = executor;
+        this.registry = registry;
+    }
+
+    /**
+     * Queues the response to the request received through this session, the responses are never coalesced.
+     * @param message response message
+     * @return true if queued
+     */
+    public boolean sendResponse(String message) {
+        return enqueue(new OutboundMessage(message, null));
+    }
+
+    /**
+     * Queues the notification.
+     * @param message notify request message
+     * @param subscriptionReference the notifications of the same subscription can be coalesced
+     * @return true if queued, false if the session is closed or it was closed as a slow consumer
+     */
+    public boolean sendNotification(String message, String subscriptionReference) {
+        return enqueue(new OutboundMessage(message, subscriptionReference));
+    }
+
+    public boolean isOpen() {
+        return !closed && connection.isOpen();
+    }
+
+    private boolean enqueue(OutboundMessage outbound) {
+        if (!isOpen()) {
+            return false;
+        }
+
+        boolean slowConsumer = false;
+        boolean startDrain = false;
+        synchronized (queue) {
+            if (draining && sendStartedMs != 0 &&
+                System.currentTimeMillis() - sendStartedMs > SEND_TIMEOUT_MS) {
+                slowConsumer = true;
+            } else if (queue.size() >= COALESCE_WATERMARK && null != outbound.coalesceKey &&
+                       coalesce(outbound)) {
+                registry.numCoalesced.increment();
+                return true;
+            } else if (queue.size() >= MAX_QUEUED_MESSAGES) {
+                slowConsumer = true;
+            } else {
+                queue.addLast(outbound);
+                if (!draining) {
+                    draining = true;
+                    startDrain = true;
+                }
+            }
+        }
+
+        if (slowConsumer) {
+            closeSlowConsumer();
+            return false;
+        }
+        if (startDrain) {
+            executor.execute(this::drain);
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the queued notification of the same subscription, the position in the queue is kept.
+     */
+    private boolean coalesce(OutboundMessage outbound) {
+        Iterator<OutboundMessage> it = queue.descendingIterator();
+        while (it.hasNext()) {
+            OutboundMessage queued = it.next();
+            if (Objects.equals(outbound.coalesceKey, queued.coalesceKey)) {
+                it.remove();
+                // keep the newer message at the end, the order of the notifications of the subscription is kept
+                queue.addLast(outbound);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void drain() {
+        while (true) {
+            OutboundMessage outbound;
+            synchronized (queue) {
+                outbound = queue.pollFirst();
+                if (null == outbound || closed) {
+                    draining = false;
+                    sendStartedMs = 0;
+                    return;
+                }
+                sendStartedMs = System.currentTimeMillis();
+            }
+
+            try {
+                connection.sendMessage(outbound.message);
+                if (null != outbound.coalesceKey) {
+                    registry.numNotificationsSent.increment();
+                }
+            } catch (IOException e) {
+                LOG.error("Failed to send websocket message to: {}, {}", connection, e.toString());
+                close();
+                return;
+            }
+        }
+    }
+
+    private void closeSlowConsumer() {
+        registry.numSlowConsumers.increment();
+        LOG.warn("Closing websocket session of slow consumer: {}", connection);
+        connection.close(CLOSE_POLICY_VIOLATION, "slow consumer");
+        close();
+    }
+
+    /**
+     * Drops the queued messages and removes the session from the registry.
+     */
+    void close() {
+        closed = true;
+        synchronized (queue) {
+            registry.numDropped.add(queue.size());
+            queue.clear();
+        }
+        registry.unregister(this);
+    }
+
+    @Override
+    public String toString() {
+        return connection.toString();
+    }
+}
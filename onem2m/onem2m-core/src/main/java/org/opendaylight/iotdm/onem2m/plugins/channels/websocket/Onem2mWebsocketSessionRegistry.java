@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.opendaylight.iotdm.onem2m.plugins.channels.websocket;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import org.eclipse.jetty.websocket.WebSocket;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.opendaylight.iotdm.onem2m.core.Onem2m;
+import org.opendaylight.iotdm.onem2m.core.resource.ResourceAE;
+import org.opendaylight.iotdm.onem2m.core.rest.utils.RequestPrimitive;
+import org.opendaylight.iotdm.onem2m.core.rest.utils.ResponsePrimitive;
+import org.opendaylight.iotdm.onem2m.core.utils.JsonUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of the sessions connected to the websocket plugin servers.  The sessions are resolved by the AE-ID
+ * and by the websocket point of access (ws:// or wss:// poa) of the AE created or updated through the session,
+ * so the notifications of the AE can be sent over its existing connection.
+ */
+public class Onem2mWebsocketSessionRegistry {
+    private static final Logger LOG = LoggerFactory.getLogger(Onem2mWebsocketSessionRegistry.class);
+    private static final int NUM_SENDER_THREADS = 4;
+
+    private static Onem2mWebsocketSessionRegistry sessionRegistry;
+
+    private final Map<String, Onem2mWebsocketSession> sessionsByAeId = new ConcurrentHashMap<>();
+    private final Map<String, Onem2mWebsocketSession> sessionsByPoa = new ConcurrentHashMap<>();
+    // the AE-IDs and poas bound to each session, used for the cleanup
+    private final Map<Onem2mWebsocketSession, Set<String>> bindings = new ConcurrentHashMap<>();
+    private final ExecutorService senderExecutor;
+
+    final LongAdder numNotificationsSent = new LongAdder();
+    final LongAdder numCoalesced = new LongAdder();
+    final LongAdder numDropped = new LongAdder();
+    final LongAdder numSlowConsumers = new LongAdder();
+
+    private Onem2mWebsocketSessionRegistry() {
+        senderExecutor = Executors.newFixedThreadPool(NUM_SENDER_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "websocket-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static synchronized Onem2mWebsocketSessionRegistry getInstance() {
+        if (sessionRegistry == null) {
+            sessionRegistry = new Onem2mWebsocketSessionRegistry();
+        }
+        return sessionRegistry;
+    }
+
+    Onem2mWebsocketSession register(WebSocket.Connection connection) {
+        Onem2mWebsocketSession session = new Onem2mWebsocketSession(connection, senderExecutor, this);
+        bindings.put(session, ConcurrentHashMap.newKeySet());
+        return session;
+    }
+
+    void unregister(Onem2mWebsocketSession session) {
+        Set<String> keys = bindings.remove(session);
+        if (null == keys) {
+            return;
+        }
+        for (String key : keys) {
+            sessionsByAeId.remove(key, session);
+            sessionsByPoa.remove(key, session);
+        }
+    }
+
+    /**
+     * Binds the AE created or updated through the session to the session: its AE-ID and its websocket poas.
+     * Only the successful AE creates and the successful updates of the AE by itself are bound, so the request
+     * passed the access checks of the core and the AE-ID is the one assigned by the CSE, not the originator
+     * claimed by the client.
+     * @param session session which received the request
+     * @param rqp the request primitive in json format
+     * @param response the response primitive of the request
+     */
+    void bindResponse(Onem2mWebsocketSession session, JSONObject rqp, ResponsePrimitive response) {
+        Set<String> keys = bindings.get(session);
+        if (null == keys || null == rqp || null == response) {
+            return;
+        }
+
+        int operation = rqp.optInt(RequestPrimitive.OPERATION, -1);
+        String rsc = response.getPrimitive(ResponsePrimitive.RESPONSE_STATUS_CODE);
+        if (!(operation == Onem2m.Operation.CREATE && Onem2m.ResponseStatusCode.CREATED.equals(rsc)) &&
+            !(operation == Onem2m.Operation.UPDATE && Onem2m.ResponseStatusCode.CHANGED.equals(rsc))) {
+            return;
+        }
+
+        String content = response.getPrimitive(ResponsePrimitive.CONTENT);
+        if (null == content || content.isEmpty()) {
+            // the AE-ID is not known without the representation of the AE, e.g. with rcn=0
+            return;
+        }
+        JSONObject ae;
+        try {
+            ae = new JSONObject(content).optJSONObject("m2m:" + Onem2m.ResourceTypeString.AE);
+        } catch (JSONException e) {
+            return;
+        }
+        String aeId = (null == ae) ? null : ae.optString(ResourceAE.AE_ID, null);
+        if (null == aeId || aeId.isEmpty()) {
+            return;
+        }
+        if (operation == Onem2m.Operation.UPDATE && !aeId.equals(rqp.optString(RequestPrimitive.FROM, null))) {
+            // the AE was updated by another originator, the session is not the AE's one
+            return;
+        }
+
+        if (sessionsByAeId.get(aeId) != session) {
+            bind(sessionsByAeId, aeId, session, keys);
+        }
+        JSONArray poas = ae.optJSONArray(ResourceAE.POINT_OF_ACCESS);
+        if (null == poas) {
+            return;
+        }
+        for (int i = 0; i < poas.length(); i++) {
+            String poa = poas.optString(i);
+            if (poa.startsWith("ws://") || poa.startsWith("wss://")) {
+                bind(sessionsByPoa, poa, session, keys);
+            }
+        }
+    }
+
+    private void bind(Map<String, Onem2mWebsocketSession> index, String key, Onem2mWebsocketSession session,
+                      Set<String> keys) {
+        Onem2mWebsocketSession previous = index.put(key, session);
+        keys.add(key);
+        if (null != previous && previous != session) {
+            // the client reconnected, the old session keeps its other bindings
+            Set<String> previousKeys = bindings.get(previous);
+            if (null != previousKeys) {
+                previousKeys.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Resolves the session of the notification target.  The URL is looked up as the poa set by the AE and if
+     * not found, the host (ws://{AE-ID}) or the path (ws://host:port/{AE-ID}) of the URL as the AE-ID.
+     * @param url the notification URL
+     * @return the open session or null
+     */
+    public Onem2mWebsocketSession resolve(String url) {
+        Onem2mWebsocketSession session = sessionsByPoa.get(url);
+        if (null == session) {
+            try {
+                URI uri = new URI(url);
+                if (null != uri.getHost()) {
+                    session = sessionsByAeId.get(uri.getHost());
+                }
+                if (null == session && null != uri.getPath() && uri.getPath().length() > 1) {
+                    session = sessionsByAeId.get(uri.getPath().substring(1));
+                }
+            } catch (URISyntaxException e) {
+                LOG.error("Invalid websocket notification URL: {}", url);
+                return null;
+            }
+        }
+        return (null != session && session.isOpen()) ? session : null;
+    }
+
+    public JSONObject getStats() {
+        JSONObject js = new JSONObject();
+        JsonUtils.put(js, "sessions", bindings.size());
+        JsonUtils.put(js, "notificationsSent", numNotificationsSent.sum());
+        JsonUtils.put(js, "coalesced", numCoalesced.sum());
+        JsonUtils.put(js, "dropped", numDropped.sum());
+        JsonUtils.put(js, "slowConsumers", numSlowConsumers.sum());
+        return js;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2m.core.database;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.iotdm.onem2m.client.CSE;
+import org.opendaylight.iotdm.onem2m.client.Container;
+import org.opendaylight.iotdm.onem2m.client.ContentInstance;
+import org.opendaylight.iotdm.onem2m.client.Onem2mRequestPrimitiveClient;
+import org.opendaylight.iotdm.onem2m.client.Onem2mRequestPrimitiveClientBuilder;
+import org.opendaylight.iotdm.onem2m.core.Onem2m;
+import org.opendaylight.iotdm.onem2m.core.Onem2mCoreProvider;
+import org.opendaylight.iotdm.onem2m.core.database.dao.InMemoryDaoResourceTreeFactory;
+import org.opendaylight.iotdm.onem2m.core.resource.BaseResource;
+import org.opendaylight.iotdm.onem2m.core.resource.ResourceContainer;
+import org.opendaylight.iotdm.onem2m.core.resource.ResourceContentInstance;
+import org.opendaylight.iotdm.onem2m.core.rest.utils.ResponsePrimitive;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The contentInstance index of a container is shared by the cache, it must reflect only the committed creates.
+ */
+public class Onem2mDbContentInstanceTest {
+    private static final String CSE_NAME = "InCSE1";
+    private static final String CONTAINER_URI = "/" + CSE_NAME + "/Cnt1";
+    private static final int MAX_NR_INSTANCES = 2;
+    // more than the creates after which the container content is written with the values of its index
+    private static final int CREATES = 100;
+
+    private Onem2mCoreProvider provider;
+    private InMemoryDaoResourceTreeFactory factory;
+
+    private ResponsePrimitive send(Onem2mRequestPrimitiveClient request) {
+        return provider.handle(request, Onem2m.DEFAULTSECURITYLEVEL);
+    }
+
+    private static void assertStatus(String expected, ResponsePrimitive response) {
+        assertEquals(response.getPrimitiveContent(), expected, response.getPrimitiveResponseStatusCode());
+    }
+
+    private ResponsePrimitive createContentInstance(String content) {
+        ContentInstance cin = new ContentInstance();
+        cin.setTo(CONTAINER_URI);
+        cin.setOperationCreate();
+        cin.setContent(content);
+        return send(cin.build());
+    }
+
+    private JSONObject retrieve(String to, String key) throws Exception {
+        ResponsePrimitive response = send(new Onem2mRequestPrimitiveClientBuilder()
+                .setProtocol(Onem2m.Protocol.NATIVEAPP)
+                .setContentFormat(Onem2m.ContentFormat.JSON)
+                .setTo(to)
+                .setFrom("/Onem2mDbContentInstanceTest")
+                .setRequestIdentifier("RQI_1234")
+                .setOperationRetrieve()
+                .build());
+        assertStatus(Onem2m.ResponseStatusCode.OK, response);
+        return new JSONObject(response.getPrimitiveContent()).getJSONObject(key);
+    }
+
+    private JSONObject retrieveContainer() throws Exception {
+        return retrieve(CONTAINER_URI, "m2m:" + Onem2m.ResourceTypeString.CONTAINER);
+    }
+
+    private String retrieveContent(String cinName) throws Exception {
+        return retrieve(CONTAINER_URI + "/" + cinName, "m2m:" + Onem2m.ResourceTypeString.CONTENT_INSTANCE)
+                .getString(ResourceContentInstance.CONTENT);
+    }
+
+    @Before
+    public void setUp() {
+        provider = new Onem2mCoreProvider(null, null, null);
+        factory = new InMemoryDaoResourceTreeFactory();
+        provider.registerDaoPlugin(factory);
+
+        CSE cse = new CSE();
+        cse.setCseId(CSE_NAME);
+        cse.setCseType(Onem2m.CseType.INCSE);
+        cse.setOperationCreate();
+        // the provisioning response is returned as the list of primitives
+        assertEquals(Onem2m.ResponseStatusCode.OK,
+                     send(cse.build()).getPrimitive(ResponsePrimitive.RESPONSE_STATUS_CODE));
+
+        Container container = new Container();
+        container.setTo("/" + CSE_NAME);
+        container.setOperationCreate();
+        container.setMaxNrInstances(MAX_NR_INSTANCES);
+        container.setCreator(null);
+        container.setName("Cnt1");
+        assertStatus(Onem2m.ResponseStatusCode.CREATED, send(container.build()));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        provider.close();
+        factory.close();
+    }
+
+    @Test
+    public void testFailedCreateLeavesIndexUnchanged() throws Exception {
+        assertStatus(Onem2m.ResponseStatusCode.CREATED, createContentInstance("1"));
+        assertStatus(Onem2m.ResponseStatusCode.CREATED, createContentInstance("2"));
+        JSONObject before = retrieveContainer();
+
+        // the create would evict the oldest contentInstance if committed
+        factory.setCommitFailing(true);
+        assertStatus(Onem2m.ResponseStatusCode.INTERNAL_SERVER_ERROR, createContentInstance("3"));
+        factory.setCommitFailing(false);
+
+        JSONObject after = retrieveContainer();
+        assertEquals(MAX_NR_INSTANCES, after.getInt(ResourceContainer.CURR_NR_INSTANCES));
+        assertEquals(before.getInt(ResourceContainer.CURR_BYTE_SIZE), after.getInt(ResourceContainer.CURR_BYTE_SIZE));
+        assertEquals(before.getInt(BaseResource.STATE_TAG), after.getInt(BaseResource.STATE_TAG));
+        assertEquals("2", retrieveContent(ResourceContainer.LATEST));
+        assertEquals("1", retrieveContent(ResourceContainer.OLDEST));
+
+        // the index keeps working with the next committed create
+        assertStatus(Onem2m.ResponseStatusCode.CREATED, createContentInstance("4"));
+        after = retrieveContainer();
+        assertEquals(MAX_NR_INSTANCES, after.getInt(ResourceContainer.CURR_NR_INSTANCES));
+        assertEquals(before.getInt(BaseResource.STATE_TAG) + 1, after.getInt(BaseResource.STATE_TAG));
+        assertEquals("4", retrieveContent(ResourceContainer.LATEST));
+        assertEquals("2", retrieveContent(ResourceContainer.OLDEST));
+    }
+
+    @Test
+    public void testCommittedCreatesEvictOldest() throws Exception {
+        for (int i = 1; i <= CREATES; i++) {
+            assertStatus(Onem2m.ResponseStatusCode.CREATED, createContentInstance(Integer.toString(i)));
+            assertEquals(Integer.toString(i), retrieveContent(ResourceContainer.LATEST));
+        }
+        JSONObject container = retrieveContainer();
+        assertEquals(MAX_NR_INSTANCES, container.getInt(ResourceContainer.CURR_NR_INSTANCES));
+        assertEquals(Integer.toString(CREATES - 1).length() + Integer.toString(CREATES).length(),
+                     container.getInt(ResourceContainer.CURR_BYTE_SIZE));
+        assertEquals(Integer.toString(CREATES - MAX_NR_INSTANCES + 1), retrieveContent(ResourceContainer.OLDEST));
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2m.core.database.dao;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.opendaylight.iotdm.onem2m.core.database.dao.factory.DaoResourceTreeFactory;
+
+/**
+ * DAO plugin keeping the resource tree in memory for the tests of the onem2m-core. The writes of a transaction
+ * are applied when it's ended, the commits can be made to fail to test the handling of failed transactions.
+ * The resource ids have the same format as the ids generated by the MDSAL plugin (all in shard 0).
+ */
+public class InMemoryDaoResourceTreeFactory implements DaoResourceTreeFactory {
+    private static final String IDDELIMITER = "-";
+    private static final int IDRADIX = 36;
+
+    private final InMemoryResourceTreeStore store = new InMemoryResourceTreeStore();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private volatile boolean commitFailing = false;
+    private final AtomicInteger commitCount = new AtomicInteger();
+
+    public InMemoryDaoResourceTreeFactory() {
+        store.systemStartId++;
+    }
+
+    @Override
+    public DaoResourceTreeWriter getDaoResourceTreeWriter() {
+        return new InMemoryResourceTreeWriter(this, store);
+    }
+
+    @Override
+    public DaoResourceTreeReader getDaoResourceTreeReader() {
+        return new InMemoryResourceTreeReader(store);
+    }
+
+    @Override
+    public String getName() {
+        return "InMemoryDaoResourceTreeFactory";
+    }
+
+    @Override
+    public void close() {
+        store.clear();
+    }
+
+    /**
+     * @param commitFailing true if the transactions ended from now on fail and their writes are dropped
+     */
+    public void setCommitFailing(boolean commitFailing) {
+        this.commitFailing = commitFailing;
+    }
+
+    boolean isCommitFailing() {
+        return commitFailing;
+    }
+
+    /**
+     * @return number of transactions with writes committed so far
+     */
+    public int getCommitCount() {
+        return commitCount.get();
+    }
+
+    void transactionCommitted() {
+        commitCount.incrementAndGet();
+    }
+
+    String generateResourceId(Integer iotdmInstance) {
+        return "0" + IDDELIMITER +
+               Integer.toString(nextId.incrementAndGet(), IDRADIX) + IDDELIMITER +
+               Integer.toString(store.systemStartId, IDRADIX) + IDDELIMITER +
+               Integer.toString(iotdmInstance, IDRADIX);
+    }
+}
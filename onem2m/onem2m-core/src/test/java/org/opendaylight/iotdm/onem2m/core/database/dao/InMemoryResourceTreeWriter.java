@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2m.core.database.dao;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.opendaylight.iotdm.onem2m.core.rest.utils.RequestPrimitive;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.cse.list.Onem2mCseBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.cse.list.Onem2mCseKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResource;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResourceBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResourceKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree
+        .onem2m.parent.child.list.Onem2mParentChild;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree
+        .onem2m.parent.child.list.Onem2mParentChildBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree
+        .onem2m.parent.child.list.Onem2mParentChildKey;
+
+/**
+ * Writes the resource tree to the in-memory store. The resource writes of a transaction are queued and applied
+ * by endTransaction() unless the commits fail, the writes without transaction are applied immediately.
+ */
+public class InMemoryResourceTreeWriter implements DaoResourceTreeWriter {
+    private final InMemoryDaoResourceTreeFactory factory;
+    private final InMemoryResourceTreeStore store;
+
+    private static class Transaction {
+        private final List<Runnable> writes = new ArrayList<>();
+    }
+
+    InMemoryResourceTreeWriter(InMemoryDaoResourceTreeFactory factory, InMemoryResourceTreeStore store) {
+        this.factory = factory;
+        this.store = store;
+    }
+
+    public void finalize() throws Throwable {
+        super.finalize();
+    }
+
+    @Override
+    public void close() {
+
+    }
+
+    @Override
+    public String generateResourceId(String parentResourceId, Integer resourceType, Integer iotdmInstance) {
+        return factory.generateResourceId(iotdmInstance);
+    }
+
+    @Override
+    public boolean createCseByName(String name, String resourceId) {
+        store.cses.put(name, new Onem2mCseBuilder()
+                .setKey(new Onem2mCseKey(name))
+                .setName(name)
+                .setResourceId(resourceId)
+                .build());
+        return true;
+    }
+
+    private static void write(Object transaction, Runnable write) {
+        if (null == transaction) {
+            write.run();
+        } else {
+            ((Transaction) transaction).writes.add(write);
+        }
+    }
+
+    @Override
+    public boolean createResource(Object transaction, RequestPrimitive onem2mRequest, String parentResourceId,
+                                  Integer resourceType) {
+        String resourceId = onem2mRequest.getResourceId();
+        Onem2mResource resource = new Onem2mResourceBuilder()
+                .setKey(new Onem2mResourceKey(resourceId))
+                .setResourceId(resourceId)
+                .setName(onem2mRequest.getResourceName())
+                .setResourceType(resourceType.toString())
+                .setParentId(parentResourceId)
+                .setParentTargetUri(onem2mRequest.getParentTargetUri())
+                .setResourceContentJsonString(onem2mRequest.getJsonResourceContentString())
+                .build();
+        String resourceName = onem2mRequest.getResourceName();
+        write(transaction, () -> {
+            store.resources.put(resourceId, resource);
+            // new resource has NO children
+            store.childMap(resourceId);
+            createParentChildLink(parentResourceId, resourceName, resourceId);
+        });
+        return true;
+    }
+
+    @Override
+    public boolean updateJsonResourceContentString(Object transaction, String resourceId, String jsonResourceContent) {
+        Runnable update = () -> store.resources.computeIfPresent(resourceId,
+                (id, old) -> new Onem2mResourceBuilder(old).setResourceContentJsonString(jsonResourceContent).build());
+        if (null != transaction) {
+            // the resource might be created by the same transaction
+            write(transaction, update);
+            return true;
+        }
+        update.run();
+        return store.resources.containsKey(resourceId);
+    }
+
+    @Override
+    public boolean deleteResource(Object transaction, String resourceId, String parentResourceId, String resourceName) {
+        write(transaction, () -> {
+            store.resources.remove(resourceId);
+            store.children.remove(resourceId);
+            removeParentChildLink(parentResourceId, resourceName);
+        });
+        return true;
+    }
+
+    @Override
+    public boolean moveParentChildLink(String resourceId, String childResourceName,
+                                       String oldPrentResourceId, String newParentResourceId) {
+        removeParentChildLink(oldPrentResourceId, childResourceName);
+        createParentChildLink(newParentResourceId, childResourceName, resourceId);
+        return true;
+    }
+
+    private void createParentChildLink(String parentResourceId, String childName, String childResourceId) {
+        if (null == parentResourceId || parentResourceId.isEmpty()) {
+            return;
+        }
+        store.childMap(parentResourceId).put(childName, new Onem2mParentChildBuilder()
+                .setKey(new Onem2mParentChildKey(childName))
+                .setName(childName)
+                .setResourceId(childResourceId)
+                .build());
+    }
+
+    private void removeParentChildLink(String parentResourceId, String childName) {
+        if (null == parentResourceId) {
+            return;
+        }
+        Map<String, Onem2mParentChild> childMap = store.children.get(parentResourceId);
+        if (null != childMap) {
+            childMap.remove(childName);
+        }
+    }
+
+    @Override
+    public void reInitializeDatastore() {
+        store.clear();
+        store.systemStartId++;
+    }
+
+    @Override
+    public boolean createAeIdToResourceIdMapping(String cseBaseName, String aeId, String aeResourceId) {
+        store.aeIds.computeIfAbsent(cseBaseName, k -> new ConcurrentHashMap<>()).put(aeId, aeResourceId);
+        return true;
+    }
+
+    @Override
+    public boolean deleteAeIdToResourceIdMapping(String cseBaseName, String aeId) {
+        Map<String, String> cseAeIds = store.aeIds.get(cseBaseName);
+        if (null != cseAeIds) {
+            cseAeIds.remove(aeId);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean createRemoteCseIdToResourceIdMapping(String cseBaseName, String remoteCseCseId,
+                                                        String remoteCseResourceId) {
+        store.remoteCseIds.computeIfAbsent(cseBaseName, k -> new ConcurrentHashMap<>())
+                          .put(remoteCseCseId, remoteCseResourceId);
+        return true;
+    }
+
+    @Override
+    public boolean deleteRemoteCseIdToResourceIdMapping(String cseBaseName, String remoteCseCseId) {
+        Map<String, String> cseRemoteCseIds = store.remoteCseIds.get(cseBaseName);
+        if (null != cseRemoteCseIds) {
+            cseRemoteCseIds.remove(remoteCseCseId);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean writeSystemStartId(int systemStartId) {
+        store.systemStartId = systemStartId;
+        return true;
+    }
+
+    @Override
+    public Object startTransaction() {
+        return new Transaction();
+    }
+
+    @Override
+    public ListenableFuture<Void> submitTransaction(Object transaction) {
+        return Futures.immediateFuture(null);
+    }
+
+    @Override
+    public boolean endTransaction(Object transaction) {
+        if (null == transaction) {
+            return true;
+        }
+        if (factory.isCommitFailing()) {
+            return false;
+        }
+        List<Runnable> writes = ((Transaction) transaction).writes;
+        if (!writes.isEmpty()) {
+            writes.forEach(Runnable::run);
+            writes.clear();
+            factory.transactionCommitted();
+        }
+        return true;
+    }
+}
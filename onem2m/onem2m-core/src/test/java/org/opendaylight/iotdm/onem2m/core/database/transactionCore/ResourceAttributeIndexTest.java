@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2m.core.database.transactionCore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.iotdm.onem2m.client.CSE;
+import org.opendaylight.iotdm.onem2m.client.Onem2mRequestPrimitiveClientBuilder;
+import org.opendaylight.iotdm.onem2m.core.Onem2m;
+import org.opendaylight.iotdm.onem2m.core.Onem2mCoreProvider;
+import org.opendaylight.iotdm.onem2m.core.database.Onem2mDb;
+import org.opendaylight.iotdm.onem2m.core.database.dao.InMemoryDaoResourceTreeFactory;
+import org.opendaylight.iotdm.onem2m.core.resource.BaseResource;
+import org.opendaylight.iotdm.onem2m.core.rest.utils.RequestPrimitive;
+import org.opendaylight.iotdm.onem2m.core.rest.utils.ResponsePrimitive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The attribute index follows the writes of the resource tree and drives the discovery.
+ */
+public class ResourceAttributeIndexTest {
+    private static final String CSE_NAME = "InCSE1";
+    private static final String CONTAINER_TYPE = "m2m:" + Onem2m.ResourceTypeString.CONTAINER;
+
+    private Onem2mCoreProvider provider;
+    private InMemoryDaoResourceTreeFactory factory;
+    private ResourceAttributeIndex index;
+
+    private ResponsePrimitive send(RequestPrimitive request) {
+        return provider.handle(request, Onem2m.DEFAULTSECURITYLEVEL);
+    }
+
+    private static Onem2mRequestPrimitiveClientBuilder request(String to) {
+        return new Onem2mRequestPrimitiveClientBuilder()
+                .setProtocol(Onem2m.Protocol.NATIVEAPP)
+                .setContentFormat(Onem2m.ContentFormat.JSON)
+                .setTo(to)
+                .setFrom("/ResourceAttributeIndexTest")
+                .setRequestIdentifier("RQI_1234");
+    }
+
+    private static String labelsContent(String... labels) {
+        return new JSONObject().put(CONTAINER_TYPE,
+                new JSONObject().put(BaseResource.LABELS, new JSONArray(Arrays.asList(labels)))).toString();
+    }
+
+    private String createContainer(String name, String... labels) {
+        ResponsePrimitive response = send(request("/" + CSE_NAME).setOperationCreate()
+                .setResourceType(Onem2m.ResourceType.CONTAINER)
+                .setName(name)
+                .setPrimitiveContent(labelsContent(labels))
+                .build());
+        assertEquals(response.getPrimitiveContent(), Onem2m.ResponseStatusCode.CREATED,
+                     response.getPrimitiveResponseStatusCode());
+        return resourceId(name);
+    }
+
+    private void updateLabels(String name, String... labels) {
+        ResponsePrimitive response = send(request("/" + CSE_NAME + "/" + name).setOperationUpdate()
+                .setPrimitiveContent(labelsContent(labels))
+                .build());
+        assertEquals(response.getPrimitiveContent(), Onem2m.ResponseStatusCode.CHANGED,
+                     response.getPrimitiveResponseStatusCode());
+    }
+
+    private void delete(String name) {
+        ResponsePrimitive response = send(request("/" + CSE_NAME + "/" + name).setOperationDelete().build());
+        assertEquals(response.getPrimitiveContent(), Onem2m.ResponseStatusCode.DELETED,
+                     response.getPrimitiveResponseStatusCode());
+    }
+
+    private static String resourceId(String name) {
+        return Onem2mDb.getInstance().findResourceUsingURI(CSE_NAME + "/" + name).getResourceId();
+    }
+
+    private Set<String> candidates(ResourceAttributeIndex.Query query) {
+        Set<String> resourceIds = new HashSet<>();
+        index.open(query, null).forEachRemaining(resourceIds::add);
+        return resourceIds;
+    }
+
+    private Set<String> labelled(String label) {
+        return candidates(new ResourceAttributeIndex.Query().setLabels(Collections.singletonList(label)));
+    }
+
+    private static Set<String> setOf(String... resourceIds) {
+        return new HashSet<>(Arrays.asList(resourceIds));
+    }
+
+    private long queriesDrivenBy(String driver) {
+        return index.getStats().getLong("queries_" + driver);
+    }
+
+    /*
+     * Discovery of the resources with the label under the cseBase, the names are added to the list.
+     * @return the cursor of the next page, null if it's the last page
+     */
+    private String discover(String label, int limit, String cursor, List<String> names) {
+        Onem2mRequestPrimitiveClientBuilder builder = request("/" + CSE_NAME).setOperationRetrieve();
+        builder.parseQueryStringIntoPrimitives(RequestPrimitive.FILTER_CRITERIA_FILTER_USAGE + "=" +
+                Onem2m.FilterUsageType.DISCOVERY + "&" + RequestPrimitive.FILTER_CRITERIA_LABELS + "=" + label +
+                "&" + RequestPrimitive.FILTER_CRITERIA_LIMIT + "=" + limit);
+        if (null != cursor) {
+            builder.setPrimitiveNameValue(RequestPrimitive.FILTER_CRITERIA_CURSOR, cursor);
+        }
+        ResponsePrimitive response = send(builder.build());
+        assertEquals(response.getPrimitiveContent(), Onem2m.ResponseStatusCode.OK,
+                     response.getPrimitiveResponseStatusCode());
+        JSONArray resources = new JSONArray(response.getPrimitiveContent());
+        for (int i = 0; i < resources.length(); i++) {
+            names.add(resources.getJSONObject(i).getJSONObject(CONTAINER_TYPE).getString(BaseResource.RESOURCE_NAME));
+        }
+        String nextCursor = response.getPrimitive(ResponsePrimitive.CONTINUATION_CURSOR);
+        assertEquals(null == nextCursor ? null : Onem2m.ContentStatus.PARTIAL_CONTENT,
+                     response.getPrimitive(ResponsePrimitive.CONTENT_STATUS));
+        // the MQTT and websocket responses carry the cursor as the HTTP and CoAP ones
+        assertEquals(nextCursor, response.toJson().optString(ResponsePrimitive.CONTINUATION_CURSOR, null));
+        return nextCursor;
+    }
+
+    private static void await(Supplier<Boolean> condition, String message) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (!condition.get() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(message, condition.get());
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        provider = new Onem2mCoreProvider(null, null, null);
+        factory = new InMemoryDaoResourceTreeFactory();
+        provider.registerDaoPlugin(factory);
+
+        CSE cse = new CSE();
+        cse.setCseId(CSE_NAME);
+        cse.setCseType(Onem2m.CseType.INCSE);
+        cse.setOperationCreate();
+        assertEquals(Onem2m.ResponseStatusCode.OK,
+                     send(cse.build()).getPrimitive(ResponsePrimitive.RESPONSE_STATUS_CODE));
+
+        index = Onem2mDb.getInstance().getResourceAttributeIndex();
+        await(index::isReady, "index rebuilt");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        provider.close();
+        factory.close();
+    }
+
+    @Test
+    public void testIndexFollowsCreateUpdateDelete() throws Exception {
+        String red = createContainer("Cnt1", "red");
+        String redBlue = createContainer("Cnt2", "red", "blue");
+        assertEquals(setOf(red, redBlue), labelled("red"));
+        assertEquals(setOf(redBlue), labelled("blue"));
+        assertEquals(setOf(red, redBlue), candidates(new ResourceAttributeIndex.Query()
+                .setResourceTypes(Collections.singletonList(Onem2m.ResourceType.CONTAINER))));
+
+        updateLabels("Cnt1", "blue");
+        assertEquals(setOf(redBlue), labelled("red"));
+        assertEquals(setOf(red, redBlue), labelled("blue"));
+
+        // the resource is removed from the tree by the background delete
+        delete("Cnt2");
+        await(() -> labelled("red").isEmpty(), "deleted resource removed from the index");
+        assertEquals(setOf(red), labelled("blue"));
+        assertEquals(setOf(red), candidates(new ResourceAttributeIndex.Query()
+                .setResourceTypes(Collections.singletonList(Onem2m.ResourceType.CONTAINER))));
+    }
+
+    @Test
+    public void testPlannerPicksMostSelectiveIndex() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            createContainer("Common" + i, "common");
+        }
+        String rare = createContainer("Rare", "common", "rare");
+        List<Integer> containers = Collections.singletonList(Onem2m.ResourceType.CONTAINER);
+
+        // 1 resource has the label, 21 the resourceType
+        long byLabels = queriesDrivenBy("labels");
+        assertEquals(setOf(rare), candidates(new ResourceAttributeIndex.Query()
+                .setLabels(Collections.singletonList("rare")).setResourceTypes(containers)));
+        assertEquals(byLabels + 1, queriesDrivenBy("labels"));
+
+        // no resource has been created in the future
+        long byRange = queriesDrivenBy("range");
+        assertTrue(candidates(new ResourceAttributeIndex.Query()
+                .setLabels(Collections.singletonList("common")).setResourceTypes(containers)
+                .setAbove(ResourceAttributeIndex.RangeAttribute.CREATION_TIME,
+                          System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1))).isEmpty());
+        assertEquals(byRange + 1, queriesDrivenBy("range"));
+
+        // the discovery with an indexed condition reads the candidates of the index instead of walking the tree
+        Onem2mDb db = Onem2mDb.getInstance();
+        assertTrue(db.openDiscovery(db.findResourceUsingURI(CSE_NAME), new ResourceAttributeIndex.Query()
+                .setLabels(Collections.singletonList("rare")), null).isIndexed());
+        assertFalse(db.openDiscovery(db.findResourceUsingURI(CSE_NAME), new ResourceAttributeIndex.Query(), null)
+                .isIndexed());
+        byLabels = queriesDrivenBy("labels");
+        List<String> names = new ArrayList<>();
+        assertNull(discover("rare", 10, null, names));
+        assertEquals(Collections.singletonList("Rare"), names);
+        assertEquals(byLabels + 1, queriesDrivenBy("labels"));
+    }
+
+    @Test
+    public void testCursorPagingAcrossModification() throws Exception {
+        Set<String> created = new HashSet<>();
+        for (int i = 0; i < 6; i++) {
+            createContainer("Page" + i, "page");
+            created.add("Page" + i);
+        }
+
+        List<String> names = new ArrayList<>();
+        String cursor = discover("page", 2, null, names);
+        assertNotNull(cursor);
+        assertEquals(2, names.size());
+
+        // one of the returned resources and one of the following ones are modified before the next page
+        String returned = names.get(0);
+        String following = created.stream().filter(name -> !names.contains(name)).sorted().findFirst().get();
+        updateLabels(returned, "page", "updated");
+        delete(following);
+        await(() -> null == Onem2mDb.getInstance().findResourceUsingURI(CSE_NAME + "/" + following) &&
+                    !labelled("page").contains(following), "deleted resource removed");
+        created.remove(following);
+
+        int pages = 1;
+        while (null != cursor) {
+            cursor = discover("page", 2, cursor, names);
+            pages++;
+        }
+        // each remaining resource is returned once, the deleted one isn't returned
+        assertEquals(names.toString(), created.size(), names.size());
+        assertEquals(created, new HashSet<>(names));
+        assertEquals(3, pages);
+    }
+}
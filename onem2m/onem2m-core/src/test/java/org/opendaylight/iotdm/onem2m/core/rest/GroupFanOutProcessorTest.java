@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2m.core.rest;
+
+import java.util.concurrent.TimeUnit;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.iotdm.onem2m.client.CSE;
+import org.opendaylight.iotdm.onem2m.client.Container;
+import org.opendaylight.iotdm.onem2m.client.Onem2mRequestPrimitiveClientBuilder;
+import org.opendaylight.iotdm.onem2m.core.Onem2m;
+import org.opendaylight.iotdm.onem2m.core.Onem2mCoreProvider;
+import org.opendaylight.iotdm.onem2m.core.database.Onem2mDb;
+import org.opendaylight.iotdm.onem2m.core.database.dao.InMemoryDaoResourceTreeFactory;
+import org.opendaylight.iotdm.onem2m.core.resource.ResourceContainer;
+import org.opendaylight.iotdm.onem2m.core.resource.ResourceGroup;
+import org.opendaylight.iotdm.onem2m.core.rest.utils.RequestPrimitive;
+import org.opendaylight.iotdm.onem2m.core.rest.utils.ResponsePrimitive;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.SecurityLevel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GroupFanOutProcessorTest {
+    private static final String CSE_NAME = "InCSE1";
+    private static final String ORIGINATOR = "/GroupFanOutProcessorTest";
+    private static final String REMOTE_CSE = "//remote.example/CSE2/";
+    private static final String CNT1 = CSE_NAME + "/Cnt1";
+    private static final String CNT2 = CSE_NAME + "/Cnt2";
+
+    private Onem2mCoreProvider provider;
+    private InMemoryDaoResourceTreeFactory factory;
+
+    /*
+     * The remote members respond with their URI as content after the given delay, the local members are
+     * processed by the core.
+     */
+    private static class TestFanOutProcessor extends GroupFanOutProcessor {
+        private final long remoteDelayMs;
+
+        TestFanOutProcessor(int maxParallelism, int maxQueued, long memberTimeoutMs, long remoteDelayMs) {
+            super(maxParallelism, maxQueued, memberTimeoutMs);
+            this.remoteDelayMs = remoteDelayMs;
+        }
+
+        @Override
+        ResponsePrimitive sendToMember(RequestPrimitiveProcessor onem2mRequest, String memberUri) {
+            if (!memberUri.startsWith(REMOTE_CSE)) {
+                return super.sendToMember(onem2mRequest, memberUri);
+            }
+            try {
+                Thread.sleep(remoteDelayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            ResponsePrimitive response = new ResponsePrimitive();
+            response.setPrimitiveRequestIdentifier(onem2mRequest.getPrimitiveRequestIdentifier());
+            response.setPrimitiveResponseStatusCode(Onem2m.ResponseStatusCode.OK);
+            response.setPrimitiveContent(new JSONObject().put("remote", memberUri).toString());
+            return response;
+        }
+    }
+
+    private ResponsePrimitive send(RequestPrimitive request) {
+        return provider.handle(request, Onem2m.DEFAULTSECURITYLEVEL);
+    }
+
+    private static Onem2mRequestPrimitiveClientBuilder request(String to) {
+        return new Onem2mRequestPrimitiveClientBuilder()
+                .setProtocol(Onem2m.Protocol.NATIVEAPP)
+                .setContentFormat(Onem2m.ContentFormat.JSON)
+                .setTo(to)
+                .setFrom(ORIGINATOR)
+                .setRequestIdentifier("RQI_1234");
+    }
+
+    private static RequestPrimitive updateMaxNrInstances(String to, int mni) {
+        return request(to).setOperationUpdate()
+                .setPrimitiveContent(new JSONObject().put("m2m:" + Onem2m.ResourceTypeString.CONTAINER,
+                        new JSONObject().put(ResourceContainer.MAX_NR_INSTANCES, mni)).toString())
+                .build();
+    }
+
+    /*
+     * Processes the request by the fan-out processor under test, as the core processes the local requests.
+     */
+    private static ResponsePrimitive fanOut(GroupFanOutProcessor processor, RequestPrimitive request) {
+        RequestPrimitiveProcessor onem2mRequest = new RequestPrimitiveProcessor();
+        ResponsePrimitive response = new ResponsePrimitive();
+        onem2mRequest.processRequestPrimitive(request, response);
+        onem2mRequest.setPrimitiveTo(Onem2m.translateUriToOnem2m(onem2mRequest.getPrimitiveTo()));
+        onem2mRequest.setTargetResourceLocator(
+                Onem2mDb.getInstance().createResourceLocator(onem2mRequest.getPrimitiveTo()));
+        onem2mRequest.setSenderContext(SecurityLevel.L0, null, null, null);
+        processor.handleFanOut(onem2mRequest, response);
+        assertEquals(Onem2m.ResponseStatusCode.OK, response.getPrimitiveResponseStatusCode());
+        return response;
+    }
+
+    private static JSONArray memberResponses(ResponsePrimitive response) {
+        return new JSONObject(response.getPrimitiveContent())
+                .getJSONObject(GroupFanOutProcessor.AGGREGATED_RESPONSE)
+                .getJSONArray(GroupFanOutProcessor.RESPONSE);
+    }
+
+    private static void assertMember(String rsc, String to, JSONObject rsp) {
+        assertEquals(rsp.toString(), Integer.parseInt(rsc), rsp.getInt(ResponsePrimitive.RESPONSE_STATUS_CODE));
+        assertEquals(to, rsp.getString(ResponsePrimitive.TO));
+    }
+
+    private void createContainer(String name) {
+        Container container = new Container();
+        container.setTo("/" + CSE_NAME);
+        container.setOperationCreate();
+        container.setCreator(null);
+        container.setName(name);
+        assertEquals(Onem2m.ResponseStatusCode.CREATED,
+                     send(container.build()).getPrimitiveResponseStatusCode());
+    }
+
+    private void createGroup(String name, String... mids) {
+        JSONObject group = new JSONObject()
+                .put(ResourceGroup.MAX_NR_MEMBERS, 10)
+                .put(ResourceGroup.MEMBERS_IDS, new JSONArray(mids));
+        ResponsePrimitive response = send(request("/" + CSE_NAME).setOperationCreate()
+                .setResourceType(Onem2m.ResourceType.GROUP)
+                .setName(name)
+                .setPrimitiveContent(new JSONObject()
+                        .put("m2m:" + Onem2m.ResourceTypeString.GROUP, group).toString())
+                .build());
+        assertEquals(response.getPrimitiveContent(), Onem2m.ResponseStatusCode.CREATED,
+                     response.getPrimitiveResponseStatusCode());
+    }
+
+    private int retrieveMaxNrInstances(String to) {
+        ResponsePrimitive response = send(request(to).setOperationRetrieve().build());
+        return new JSONObject(response.getPrimitiveContent())
+                .getJSONObject("m2m:" + Onem2m.ResourceTypeString.CONTAINER)
+                .getInt(ResourceContainer.MAX_NR_INSTANCES);
+    }
+
+    @Before
+    public void setUp() {
+        provider = new Onem2mCoreProvider(null, null, null);
+        factory = new InMemoryDaoResourceTreeFactory();
+        provider.registerDaoPlugin(factory);
+
+        CSE cse = new CSE();
+        cse.setCseId(CSE_NAME);
+        cse.setCseType(Onem2m.CseType.INCSE);
+        cse.setOperationCreate();
+        assertEquals(Onem2m.ResponseStatusCode.OK,
+                     send(cse.build()).getPrimitive(ResponsePrimitive.RESPONSE_STATUS_CODE));
+        createContainer("Cnt1");
+        createContainer("Cnt2");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        provider.close();
+        factory.close();
+    }
+
+    @Test
+    public void testAggregatesLocalAndRemoteMembers() {
+        createGroup("Grp1", CNT1, REMOTE_CSE + "Cnt1", CNT2);
+        GroupFanOutProcessor processor = new TestFanOutProcessor(4, 4, TimeUnit.SECONDS.toMillis(10), 0);
+
+        JSONArray rsp = memberResponses(fanOut(processor, request("/" + CSE_NAME + "/Grp1/fopt")
+                .setOperationRetrieve().build()));
+        assertEquals(3, rsp.length());
+        assertMember(Onem2m.ResponseStatusCode.OK, CNT1, rsp.getJSONObject(0));
+        assertMember(Onem2m.ResponseStatusCode.OK, REMOTE_CSE + "Cnt1", rsp.getJSONObject(1));
+        assertMember(Onem2m.ResponseStatusCode.OK, CNT2, rsp.getJSONObject(2));
+        assertEquals("Cnt1", rsp.getJSONObject(0).getJSONObject(ResponsePrimitive.CONTENT)
+                .getJSONObject("m2m:" + Onem2m.ResourceTypeString.CONTAINER).getString("rn"));
+        assertEquals(REMOTE_CSE + "Cnt1",
+                     rsp.getJSONObject(1).getJSONObject(ResponsePrimitive.CONTENT).getString("remote"));
+    }
+
+    @Test
+    public void testLocalMembersShareOneTransaction() {
+        createGroup("Grp1", CNT1, REMOTE_CSE + "Cnt1", CNT2);
+        GroupFanOutProcessor processor = new TestFanOutProcessor(4, 4, TimeUnit.SECONDS.toMillis(10), 0);
+
+        int commits = factory.getCommitCount();
+        JSONArray rsp = memberResponses(fanOut(processor, updateMaxNrInstances("/" + CSE_NAME + "/Grp1/fopt", 5)));
+        assertMember(Onem2m.ResponseStatusCode.CHANGED, CNT1, rsp.getJSONObject(0));
+        assertMember(Onem2m.ResponseStatusCode.OK, REMOTE_CSE + "Cnt1", rsp.getJSONObject(1));
+        assertMember(Onem2m.ResponseStatusCode.CHANGED, CNT2, rsp.getJSONObject(2));
+        assertEquals(commits + 1, factory.getCommitCount());
+        assertEquals(5, retrieveMaxNrInstances(CNT1));
+        assertEquals(5, retrieveMaxNrInstances(CNT2));
+
+        // the local members fail together
+        factory.setCommitFailing(true);
+        rsp = memberResponses(fanOut(processor, updateMaxNrInstances("/" + CSE_NAME + "/Grp1/fopt", 7)));
+        factory.setCommitFailing(false);
+        assertMember(Onem2m.ResponseStatusCode.INTERNAL_SERVER_ERROR, CNT1, rsp.getJSONObject(0));
+        assertMember(Onem2m.ResponseStatusCode.OK, REMOTE_CSE + "Cnt1", rsp.getJSONObject(1));
+        assertMember(Onem2m.ResponseStatusCode.INTERNAL_SERVER_ERROR, CNT2, rsp.getJSONObject(2));
+        assertEquals(5, retrieveMaxNrInstances(CNT1));
+        assertEquals(5, retrieveMaxNrInstances(CNT2));
+    }
+
+    @Test
+    public void testMemberTimeout() {
+        createGroup("Grp1", CNT1, REMOTE_CSE + "Cnt1", CNT2);
+        long memberTimeoutMs = 200;
+        GroupFanOutProcessor processor = new TestFanOutProcessor(4, 4, memberTimeoutMs,
+                                                                 TimeUnit.SECONDS.toMillis(10));
+
+        long start = System.nanoTime();
+        JSONArray rsp = memberResponses(fanOut(processor, request("/" + CSE_NAME + "/Grp1/fopt")
+                .setOperationRetrieve().build()));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("fan-out took " + elapsedMs + " ms", elapsedMs < TimeUnit.SECONDS.toMillis(5));
+        assertMember(Onem2m.ResponseStatusCode.OK, CNT1, rsp.getJSONObject(0));
+        assertMember(Onem2m.ResponseStatusCode.TARGET_NOT_REACHABLE, REMOTE_CSE + "Cnt1", rsp.getJSONObject(1));
+        assertMember(Onem2m.ResponseStatusCode.OK, CNT2, rsp.getJSONObject(2));
+    }
+
+    @Test
+    public void testRejectedWhenQueueFull() {
+        // the first remote member is processed, the second one is queued and the third one is rejected;
+        // the local member rejected after them is processed by the requesting thread
+        createGroup("Grp1", REMOTE_CSE + "Cnt1", REMOTE_CSE + "Cnt2", REMOTE_CSE + "Cnt3", CNT1);
+        GroupFanOutProcessor processor = new TestFanOutProcessor(1, 1, TimeUnit.SECONDS.toMillis(10), 200);
+
+        JSONArray rsp = memberResponses(fanOut(processor, request("/" + CSE_NAME + "/Grp1/fopt")
+                .setOperationRetrieve().build()));
+        assertMember(Onem2m.ResponseStatusCode.OK, REMOTE_CSE + "Cnt1", rsp.getJSONObject(0));
+        assertMember(Onem2m.ResponseStatusCode.OK, REMOTE_CSE + "Cnt2", rsp.getJSONObject(1));
+        assertMember(Onem2m.ResponseStatusCode.INTERNAL_SERVER_ERROR, REMOTE_CSE + "Cnt3", rsp.getJSONObject(2));
+        assertMember(Onem2m.ResponseStatusCode.OK, CNT1, rsp.getJSONObject(3));
+        assertEquals(2, processor.getStats().getLong("rejected"));
+    }
+
+    @Test
+    public void testNestingDepthLimited() {
+        // the group is its own member, the request is processed by the core
+        createGroup("Grp1", CSE_NAME + "/Grp1/fopt");
+
+        ResponsePrimitive response = send(request("/" + CSE_NAME + "/Grp1/fopt").setOperationRetrieve().build());
+        int depth = 0;
+        JSONObject rsp;
+        while (true) {
+            assertEquals(Onem2m.ResponseStatusCode.OK, response.getPrimitiveResponseStatusCode());
+            rsp = memberResponses(response).getJSONObject(0);
+            depth++;
+            if (rsp.getInt(ResponsePrimitive.RESPONSE_STATUS_CODE) != Integer.parseInt(Onem2m.ResponseStatusCode.OK)) {
+                break;
+            }
+            response = new ResponsePrimitive();
+            response.setPrimitiveResponseStatusCode(Onem2m.ResponseStatusCode.OK);
+            response.setPrimitiveContent(rsp.getJSONObject(ResponsePrimitive.CONTENT).toString());
+        }
+        assertMember(Onem2m.ResponseStatusCode.BAD_REQUEST, CSE_NAME + "/Grp1/fopt", rsp);
+        assertEquals(4, depth);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2m.core.rest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+import org.opendaylight.iotdm.onem2m.core.Onem2m;
+import org.opendaylight.iotdm.onem2m.core.rest.utils.RequestPrimitive;
+import org.opendaylight.iotdm.onem2m.core.rest.utils.ResponsePrimitive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NonBlockingRequestProcessorTest {
+    private static final String CSE_BASE_NAME = "InCSE1";
+    private static final String CSE_BASE_CSE_ID = "/in-cse-1";
+    private static final String ORIGINATOR = "/AE1";
+
+    private NonBlockingRequestProcessor processor;
+
+    private static class Request extends RequestPrimitive {
+        Request(int operation, String to, String from) {
+            this.primitiveOperation = operation;
+            this.primitiveResponseType = Onem2m.ResponseType.NON_BLOCKING_REQUEST_SYNCH;
+            this.primitiveFrom = from;
+            this.primitiveRequestIdentifier = "rqi-" + operation;
+            setPrimitiveTo(to);
+        }
+    }
+
+    private static ResponsePrimitive okResponse() {
+        ResponsePrimitive response = new ResponsePrimitive();
+        response.setPrimitiveResponseStatusCode(Onem2m.ResponseStatusCode.OK);
+        return response;
+    }
+
+    private ResponsePrimitive accept(Supplier<ResponsePrimitive> operation) {
+        return processor.accept(new Request(Onem2m.Operation.RETRIEVE, "/" + CSE_BASE_NAME + "/AE1", ORIGINATOR),
+                                CSE_BASE_NAME, CSE_BASE_CSE_ID, operation);
+    }
+
+    private static String reference(ResponsePrimitive accepted) throws Exception {
+        return new JSONObject(accepted.getPrimitiveContent()).optString(NonBlockingRequestProcessor.URI);
+    }
+
+    private ResponsePrimitive retrieve(String to) {
+        return processor.handleRequestReference(new Request(Onem2m.Operation.RETRIEVE, to, ORIGINATOR));
+    }
+
+    private static void awaitCount(Supplier<Long> count, long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (count.get() != expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, (long) count.get());
+    }
+
+    @After
+    public void tearDown() {
+        processor.close();
+    }
+
+    @Test
+    public void testWorkersAndQueueAreBounded() throws Exception {
+        int maxWorkers = 2;
+        int maxQueued = 3;
+        processor = new NonBlockingRequestProcessor(maxWorkers, maxQueued, TimeUnit.MINUTES.toMillis(5));
+
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        Supplier<ResponsePrimitive> blocked = () -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            return okResponse();
+        };
+
+        List<String> references = new ArrayList<>();
+        for (int i = 0; i < maxWorkers + maxQueued; i++) {
+            ResponsePrimitive accepted = accept(blocked);
+            assertEquals(Onem2m.ResponseStatusCode.ACCEPTED, accepted.getPrimitiveResponseStatusCode());
+            references.add(reference(accepted));
+        }
+
+        ResponsePrimitive rejected = accept(blocked);
+        assertEquals(Onem2m.ResponseStatusCode.NOT_ACCEPTABLE, rejected.getPrimitiveResponseStatusCode());
+        assertEquals(1, processor.getStats().optLong("rejected"));
+        assertTrue(processor.getStats().optInt("active_workers") <= maxWorkers);
+
+        release.countDown();
+        awaitCount(() -> processor.getStats().optLong("completed"), maxWorkers + maxQueued);
+        assertTrue(maxRunning.get() <= maxWorkers);
+
+        for (String reference : references) {
+            JSONObject req = new JSONObject(retrieve(reference).getPrimitiveContent())
+                    .optJSONObject(NonBlockingRequestProcessor.REQUEST);
+            assertEquals(Integer.parseInt(Onem2m.RequestStatus.COMPLETED),
+                         req.optInt(NonBlockingRequestProcessor.REQUEST_STATUS));
+        }
+    }
+
+    @Test
+    public void testRequestsExpire() throws Exception {
+        processor = new NonBlockingRequestProcessor(1, 1, 500);
+
+        String reference = reference(accept(NonBlockingRequestProcessorTest::okResponse));
+        awaitCount(() -> processor.getStats().optLong("completed"), 1);
+        assertNotNull(retrieve(reference));
+
+        Thread.sleep(600);
+        assertNull(retrieve(reference));
+        assertEquals(1, processor.getStats().optLong("evicted"));
+        assertEquals(0, processor.getStats().optInt("tracked"));
+    }
+
+    @Test
+    public void testOnlyExactReferenceIsMatched() throws Exception {
+        processor = new NonBlockingRequestProcessor(1, 1, TimeUnit.MINUTES.toMillis(5));
+
+        String reference = reference(accept(NonBlockingRequestProcessorTest::okResponse));
+        String id = reference.substring(reference.lastIndexOf('/') + 1);
+        awaitCount(() -> processor.getStats().optLong("completed"), 1);
+
+        assertEquals("/" + CSE_BASE_NAME + "/" + id, reference);
+        assertEquals(Onem2m.ResponseStatusCode.OK, retrieve(reference).getPrimitiveResponseStatusCode());
+        assertEquals(Onem2m.ResponseStatusCode.OK, retrieve(reference.substring(1)).getPrimitiveResponseStatusCode());
+
+        // the resources named like the references are not hijacked
+        assertNull(retrieve("/" + CSE_BASE_NAME + "/AE1/" + id));
+        assertNull(retrieve("/OtherCSE/" + id));
+        assertNull(retrieve(reference + "0"));
+
+        ResponsePrimitive denied = processor.handleRequestReference(
+                new Request(Onem2m.Operation.RETRIEVE, reference, "/AE2"));
+        assertEquals(Onem2m.ResponseStatusCode.ACCESS_DENIED, denied.getPrimitiveResponseStatusCode());
+    }
+}
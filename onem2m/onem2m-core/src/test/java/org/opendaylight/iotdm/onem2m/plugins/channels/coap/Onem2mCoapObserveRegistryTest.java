@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2m.plugins.channels.coap;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.eclipse.californium.core.CoapClient;
+import org.eclipse.californium.core.CoapHandler;
+import org.eclipse.californium.core.CoapObserveRelation;
+import org.eclipse.californium.core.CoapResource;
+import org.eclipse.californium.core.CoapResponse;
+import org.eclipse.californium.core.CoapServer;
+import org.eclipse.californium.core.coap.CoAP;
+import org.eclipse.californium.core.coap.MediaTypeRegistry;
+import org.eclipse.californium.core.coap.OptionSet;
+import org.eclipse.californium.core.coap.Response;
+import org.eclipse.californium.core.network.CoapEndpoint;
+import org.eclipse.californium.core.network.Exchange;
+import org.eclipse.californium.core.network.config.NetworkConfig;
+import org.eclipse.californium.core.server.resources.Resource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.iotdm.onem2m.core.Onem2m;
+import org.opendaylight.iotdm.onem2m.plugins.IotdmPlugin;
+import org.opendaylight.iotdm.onem2m.plugins.registry.Onem2mLocalEndpointRegistry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Observe relations registered over the loopback interface by many observers, the same load as the
+ * PerfCoapObserveClient of the onem2mbenchmark puts on a running controller. The retrieve of the observed URI
+ * is served by a stub plugin returning the current value.
+ */
+public class Onem2mCoapObserveRegistryTest {
+    private static final String CONTAINER_NAME = "cnt";
+    private static final String CONTAINER_ID = "container-1";
+    private static final String CONTENT_INSTANCE_ID = "contentInstance-1";
+    private static final String CONTENT_INSTANCE_TYPE = String.valueOf(Onem2m.ResourceType.CONTENT_INSTANCE);
+    private static final int NUM_ENDPOINTS = 8;
+    private static final int OBSERVERS_PER_ENDPOINT = 500;
+    private static final int NUM_CHANGES = 10;
+    // a single CPU registers the 4000 relations in about 5 s and sends their 40000 notifications in about 6 s
+    private static final long REGISTRATION_BUDGET_MS = TimeUnit.SECONDS.toMillis(20);
+    private static final long NOTIFICATION_BUDGET_MS = TimeUnit.SECONDS.toMillis(30);
+
+    private final AtomicInteger value = new AtomicInteger();
+    private final List<CoapEndpoint> clientEndpoints = new ArrayList<>();
+    private Onem2mCoapObserveRegistry registry;
+    private CoapServer server;
+    private int port;
+
+    /**
+     * Counts the notifications of one relation.
+     */
+    private static final class Observer implements CoapHandler {
+        private volatile int lastValue = -1;
+        private final AtomicInteger numNotifications = new AtomicInteger();
+
+        @Override
+        public void onLoad(CoapResponse response) {
+            if (response.isSuccess()) {
+                lastValue = Integer.parseInt(response.getResponseText());
+                numNotifications.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void onError() {
+        }
+    }
+
+    private class RootResource extends CoapResource {
+        RootResource() {
+            super("");
+        }
+
+        @Override
+        public Resource getChild(String name) {
+            return this;
+        }
+
+        @Override
+        public void handleRequest(Exchange exchange) {
+            if (Onem2mCoapObserveRegistry.isObserveRequest(exchange) &&
+                registry.handleObserveRequest(exchange, new IotdmPluginCoapRequest(exchange))) {
+                return;
+            }
+            exchange.sendResponse(new Response(CoAP.ResponseCode.NOT_FOUND));
+        }
+    }
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        IotdmPlugin plugin = mock(IotdmPlugin.class);
+        doAnswer(invocation -> {
+            IotdmPluginCoapResponse response = (IotdmPluginCoapResponse) invocation.getArguments()[1];
+            response.setReturnCode(CoAP.ResponseCode.CONTENT.value);
+            response.setOptions(new OptionSet().setContentFormat(MediaTypeRegistry.TEXT_PLAIN));
+            response.setResponsePayload(Integer.toString(value.get()));
+            return null;
+        }).when(plugin).handle(any(), any());
+        Onem2mLocalEndpointRegistry pluginRegistry = mock(Onem2mLocalEndpointRegistry.class);
+        when(pluginRegistry.getPlugin(anyString())).thenReturn(plugin);
+
+        registry = new Onem2mCoapObserveRegistry(pluginRegistry,
+                                                 uri -> uri.endsWith(CONTAINER_NAME) ? CONTAINER_ID : null);
+        server = new CoapServer(new NetworkConfig()) {
+            @Override
+            protected Resource createRoot() {
+                return new RootResource();
+            }
+        };
+        CoapEndpoint endpoint = new CoapEndpoint(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                                                 new NetworkConfig());
+        server.addEndpoint(endpoint);
+        server.start();
+        port = endpoint.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        clientEndpoints.forEach(CoapEndpoint::destroy);
+        server.destroy();
+        registry.close();
+    }
+
+    private CoapEndpoint newClientEndpoint() throws Exception {
+        CoapEndpoint endpoint = new CoapEndpoint(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                                                 new NetworkConfig());
+        endpoint.start();
+        clientEndpoints.add(endpoint);
+        return endpoint;
+    }
+
+    private CoapObserveRelation observe(CoapEndpoint endpoint, Observer observer) {
+        CoapClient client = new CoapClient("coap", InetAddress.getLoopbackAddress().getHostAddress(), port,
+                                           "InCSE1", CONTAINER_NAME, "la");
+        client.setEndpoint(endpoint);
+        return client.observe(observer);
+    }
+
+    private void contentInstanceCreated(int newValue) {
+        value.set(newValue);
+        registry.resourceChanged(CONTENT_INSTANCE_ID, CONTENT_INSTANCE_TYPE, CONTAINER_ID, false);
+    }
+
+    private static void await(Supplier<Boolean> condition, String message) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        while (!condition.get() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(message, condition.get());
+    }
+
+    private static boolean allReceived(List<Observer> observers, int expected) {
+        return observers.stream().allMatch(observer -> observer.lastValue == expected);
+    }
+
+    @Test
+    public void testManyObserversReceiveEachChange() throws Exception {
+        List<Observer> observers = new ArrayList<>();
+        long startTime = System.nanoTime();
+        for (int e = 0; e < NUM_ENDPOINTS; e++) {
+            CoapEndpoint endpoint = newClientEndpoint();
+            for (int i = 0; i < OBSERVERS_PER_ENDPOINT; i++) {
+                Observer observer = new Observer();
+                observers.add(observer);
+                observe(endpoint, observer);
+            }
+        }
+        int numObservers = observers.size();
+        await(() -> registry.getNumRelations() == numObservers && allReceived(observers, 0),
+              "all observers registered");
+        long registeredTime = System.nanoTime();
+
+        for (int i = 1; i <= NUM_CHANGES; i++) {
+            contentInstanceCreated(i);
+            int expected = i;
+            await(() -> allReceived(observers, expected), "all observers notified of change " + i);
+        }
+        long notifiedTime = System.nanoTime();
+
+        for (Observer observer : observers) {
+            // the registration response and one notification per change
+            assertEquals(NUM_CHANGES + 1, observer.numNotifications.get());
+        }
+        long registrationMs = TimeUnit.NANOSECONDS.toMillis(registeredTime - startTime);
+        assertTrue(numObservers + " relations registered in " + registrationMs + " ms",
+                   registrationMs <= REGISTRATION_BUDGET_MS);
+        long notificationMs = TimeUnit.NANOSECONDS.toMillis(notifiedTime - registeredTime);
+        assertTrue(numObservers * NUM_CHANGES + " notifications in " + notificationMs + " ms",
+                   notificationMs <= NOTIFICATION_BUDGET_MS);
+    }
+
+    @Test
+    public void testObserveAgainAfterSweep() throws Exception {
+        CoapEndpoint endpoint = newClientEndpoint();
+        Observer first = new Observer();
+        CoapObserveRelation relation = observe(endpoint, first);
+        await(() -> registry.getNumRelations() == 1 && first.lastValue == 0, "first observer registered");
+
+        relation.proactiveCancel();
+        await(() -> registry.getNumRelations() == 0, "first observer cancelled");
+        // the observed URI without relations is removed once it's silent for the sweep interval
+        registry.sweep(System.currentTimeMillis() + Onem2mCoapObserveRegistry.REFRESH_INTERVAL_MS);
+
+        Observer second = new Observer();
+        observe(endpoint, second);
+        await(() -> registry.getNumRelations() == 1 && second.lastValue == 0, "second observer registered");
+        // the URI with a relation is kept and refreshed
+        registry.sweep(System.currentTimeMillis() + Onem2mCoapObserveRegistry.REFRESH_INTERVAL_MS);
+        await(() -> second.numNotifications.get() == 2, "second observer refreshed");
+
+        contentInstanceCreated(1);
+        await(() -> second.lastValue == 1, "second observer notified");
+        assertEquals(0, first.lastValue);
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2m.persistence.logstore;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.opendaylight.iotdm.onem2m.core.database.dao.DaoResourceTreeReader;
+import org.opendaylight.iotdm.onem2m.core.database.dao.DaoResourceTreeWriter;
+import org.opendaylight.iotdm.onem2m.core.database.dao.factory.DaoResourceTreeFactory;
+import org.opendaylight.iotdm.onem2m.persistence.logstore.read.LogStoreResourceTreeReader;
+import org.opendaylight.iotdm.onem2m.persistence.logstore.store.LogStore;
+import org.opendaylight.iotdm.onem2m.persistence.logstore.write.LogStoreResourceTreeWriter;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.onem2m.persistence.logstore.rev170601.Onem2mPersistenceLogstoreConfig;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.onem2m.persistence.logstore.rev170601.onem2m.persistence.logstore.write.config.WriteConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * DAO factory of the resource tree stored in the embedded LogStore. The store is opened (and its log is
+ * replayed) by the factory, all readers and writers share it.
+ */
+public class LogStoreDaoResourceTreeFactory implements DaoResourceTreeFactory {
+    private final Logger LOG = LoggerFactory.getLogger(LogStoreDaoResourceTreeFactory.class);
+    private AtomicInteger nextId;
+    private Integer systemStartId = 0;
+
+    private static final String IDDELIMITER = "-";
+    private static final int IDRADIX = 36;
+    // the resourceIds have the same format as the ids of the MD-SAL plugin, all resources are in shard 0
+    private static final String IDSHARD = "0";
+
+    private static final String DEFAULT_DATA_DIRECTORY = "data/iotdm-logstore";
+    private static final int DEFAULT_MAX_SEGMENT_SIZE_MB = 64;
+    private static final int DEFAULT_COMPACTION_THRESHOLD_PERCENT = 50;
+    private static final int DEFAULT_MAX_BATCH_SIZE = 256;
+    private static final long DEFAULT_MAX_LINGER_MICROS = 500;
+
+    private final LogStoreResourceTree resourceTree;
+    private final LogStore store;
+
+    public LogStoreDaoResourceTreeFactory(Onem2mPersistenceLogstoreConfig config) throws IOException {
+        String dataDirectory = DEFAULT_DATA_DIRECTORY;
+        int maxSegmentSizeMb = DEFAULT_MAX_SEGMENT_SIZE_MB;
+        int compactionThresholdPercent = DEFAULT_COMPACTION_THRESHOLD_PERCENT;
+        boolean resetOnStartup = false;
+        if (null != config) {
+            if (null != config.getDataDirectory()) {
+                dataDirectory = config.getDataDirectory();
+            }
+            if (null != config.getMaxSegmentSizeMb()) {
+                maxSegmentSizeMb = config.getMaxSegmentSizeMb();
+            }
+            if (null != config.getCompactionThresholdPercent()) {
+                compactionThresholdPercent = config.getCompactionThresholdPercent();
+            }
+            resetOnStartup = Boolean.TRUE.equals(config.isResetOnStartup());
+        }
+
+        int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+        long maxLingerMicros = DEFAULT_MAX_LINGER_MICROS;
+        boolean syncWrites = true;
+        WriteConfig writeConfig = (null != config) ? config.getWriteConfig() : null;
+        if (null != writeConfig) {
+            if (null != writeConfig.getMaxBatchSize()) {
+                maxBatchSize = writeConfig.getMaxBatchSize();
+            }
+            if (null != writeConfig.getMaxLingerMicros()) {
+                maxLingerMicros = writeConfig.getMaxLingerMicros();
+            }
+            if (null != writeConfig.isSyncWrites()) {
+                syncWrites = writeConfig.isSyncWrites();
+            }
+        }
+
+        resourceTree = new LogStoreResourceTree();
+        store = new LogStore(Paths.get(dataDirectory), maxSegmentSizeMb * 1024L * 1024L, syncWrites, maxBatchSize,
+                             maxLingerMicros, compactionThresholdPercent, resourceTree);
+        resourceTree.setStore(store);
+        if (resetOnStartup) {
+            LOG.info("LogStoreDaoResourceTreeFactory: deleting the stored resource tree");
+            store.clear();
+        }
+        LOG.info("LogStoreDaoResourceTreeFactory: directory: {}, keys: {}", dataDirectory, store.getNumKeys());
+
+        initSystemStartIds();
+    }
+
+    @Override
+    public DaoResourceTreeWriter getDaoResourceTreeWriter() {
+        return new LogStoreResourceTreeWriter(this, resourceTree);
+    }
+
+    @Override
+    public DaoResourceTreeReader getDaoResourceTreeReader() {
+        return new LogStoreResourceTreeReader(resourceTree);
+    }
+
+    @Override
+    public String getName() { return "LogStoreDaoResourceTreeFactory"; }
+
+    @Override
+    public void close() {
+        store.close();
+    }
+
+    public void initSystemStartIds() {
+        nextId = new AtomicInteger();
+        systemStartId = this.getDaoResourceTreeReader().retrieveSystemStartId();
+        this.getDaoResourceTreeWriter().writeSystemStartId(++systemStartId);
+    }
+
+    public String generateResourceId(String parentResourceId,
+                                     Integer resourceType,
+                                     Integer iotdmInstance) {
+
+        return IDSHARD + IDDELIMITER +
+               Integer.toString(nextId.incrementAndGet(), IDRADIX) + IDDELIMITER +
+               Integer.toString(systemStartId, IDRADIX) + IDDELIMITER +
+               Integer.toString(iotdmInstance, IDRADIX);
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2m.persistence.logstore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.opendaylight.iotdm.onem2m.persistence.logstore.store.LogStore;
+import org.opendaylight.iotdm.onem2m.persistence.logstore.store.LogStoreListener;
+
+/**
+ * Layout of the onem2m resource tree in the LogStore and the in-memory structures derived from it.
+ *
+ * Keys of the store:
+ *   r:resourceId               static attributes of the resource (parentId, name, type, parentTargetUri)
+ *   j:resourceId               JSON content of the resource, so the update is one put
+ *   c:parentResourceId/name    resourceId of the child, one key per parent-child link
+ *   s:cseName                  resourceId of the cseBase
+ *   a:cseName/aeId             resourceId of the AE registered with the AE-ID
+ *   e:cseName/cseId            resourceId of the remote CSE registered with the CSE-ID
+ *   i:                         systemStartId
+ *
+ * The resourceIds and the cseBase names don't contain '/', so the first '/' of the key ends the resourceId or
+ * the cseBase name. The parent-child lists and the cseBase registrations are kept in memory, they are
+ * rebuilt from the c:, s:, a: and e: keys when the log is replayed.
+ */
+public class LogStoreResourceTree implements LogStoreListener {
+
+    static final String RESOURCE_PREFIX = "r:";
+    static final String CONTENT_PREFIX = "j:";
+    static final String CHILD_PREFIX = "c:";
+    static final String CSE_PREFIX = "s:";
+    static final String AE_ID_PREFIX = "a:";
+    static final String REMOTE_CSE_ID_PREFIX = "e:";
+    static final String SYSTEM_START_ID_KEY = "i:";
+    private static final char KEY_DELIMITER = '/';
+
+    private LogStore store;
+    // the parent-child links by the parent resourceId, the links of the parent are kept in insertion order
+    private final Map<String, Map<String, String>> children = new ConcurrentHashMap<>();
+    private final Map<String, CseEntry> cses = new ConcurrentHashMap<>();
+
+    /**
+     * In-memory registrations of the cseBase
+     */
+    public static final class CseEntry {
+        private volatile String resourceId;
+        private final Map<String, String> aeIds = new ConcurrentHashMap<>();
+        private final Map<String, String> remoteCseIds = new ConcurrentHashMap<>();
+
+        public String getResourceId() {
+            return resourceId;
+        }
+
+        public Map<String, String> getAeIds() {
+            return Collections.unmodifiableMap(aeIds);
+        }
+
+        public Map<String, String> getRemoteCseIds() {
+            return Collections.unmodifiableMap(remoteCseIds);
+        }
+    }
+
+    /**
+     * Static attributes of the stored resource
+     */
+    public static final class ResourceAttributes {
+        public final String parentId;
+        public final String name;
+        public final String resourceType;
+        public final String parentTargetUri;
+
+        ResourceAttributes(String parentId, String name, String resourceType, String parentTargetUri) {
+            this.parentId = parentId;
+            this.name = name;
+            this.resourceType = resourceType;
+            this.parentTargetUri = parentTargetUri;
+        }
+    }
+
+    /**
+     * The store is set when it's opened, its recovery already fills the derived structures.
+     */
+    void setStore(LogStore store) {
+        this.store = store;
+    }
+
+    public LogStore getStore() {
+        return store;
+    }
+
+    public static String resourceKey(String resourceId) {
+        return RESOURCE_PREFIX + resourceId;
+    }
+
+    public static String contentKey(String resourceId) {
+        return CONTENT_PREFIX + resourceId;
+    }
+
+    public static String childKey(String parentResourceId, String name) {
+        return CHILD_PREFIX + parentResourceId + KEY_DELIMITER + name;
+    }
+
+    public static String cseKey(String cseName) {
+        return CSE_PREFIX + cseName;
+    }
+
+    public static String aeIdKey(String cseName, String aeId) {
+        return AE_ID_PREFIX + cseName + KEY_DELIMITER + aeId;
+    }
+
+    public static String remoteCseIdKey(String cseName, String cseId) {
+        return REMOTE_CSE_ID_PREFIX + cseName + KEY_DELIMITER + cseId;
+    }
+
+    public static String systemStartIdKey() {
+        return SYSTEM_START_ID_KEY;
+    }
+
+    public static byte[] encodeString(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static String decodeString(byte[] value) {
+        return (null == value) ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    public static byte[] encodeResource(String parentId, String name, String resourceType, String parentTargetUri) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeNullable(out, parentId);
+            writeNullable(out, name);
+            writeNullable(out, resourceType);
+            writeNullable(out, parentTargetUri);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to encode resource: " + name, e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static ResourceAttributes decodeResource(byte[] value) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(value))) {
+            return new ResourceAttributes(readNullable(in), readNullable(in), readNullable(in), readNullable(in));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to decode resource", e);
+        }
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(null != value);
+        if (null != value) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * @param parentResourceId the parent
+     * @return copy of the parent-child links of the parent (name to resourceId), null if there are none
+     */
+    public Map<String, String> getChildren(String parentResourceId) {
+        Map<String, String> links = children.get(parentResourceId);
+        if (null == links) {
+            return null;
+        }
+        synchronized (links) {
+            return new LinkedHashMap<>(links);
+        }
+    }
+
+    /**
+     * @return the first links of the parent, the whole list isn't copied
+     */
+    public List<Map.Entry<String, String>> getChildren(String parentResourceId, int limit, int offset) {
+        List<Map.Entry<String, String>> result = new ArrayList<>();
+        Map<String, String> links = children.get(parentResourceId);
+        if (null == links || limit <= 0) {
+            return result;
+        }
+        synchronized (links) {
+            int skipped = 0;
+            for (Map.Entry<String, String> link : links.entrySet()) {
+                if (skipped++ < offset) {
+                    continue;
+                }
+                result.add(new AbstractMap.SimpleImmutableEntry<>(link.getKey(), link.getValue()));
+                if (result.size() >= limit) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    public String getChild(String parentResourceId, String name) {
+        Map<String, String> links = children.get(parentResourceId);
+        if (null == links) {
+            return null;
+        }
+        synchronized (links) {
+            return links.get(name);
+        }
+    }
+
+    public Map<String, Map<String, String>> getAllChildren() {
+        Map<String, Map<String, String>> all = new LinkedHashMap<>();
+        for (String parentResourceId : children.keySet()) {
+            Map<String, String> links = getChildren(parentResourceId);
+            if (null != links) {
+                all.put(parentResourceId, links);
+            }
+        }
+        return all;
+    }
+
+    public CseEntry getCse(String cseName) {
+        CseEntry cse = cses.get(cseName);
+        return (null == cse || null == cse.resourceId) ? null : cse;
+    }
+
+    public Map<String, CseEntry> getCses() {
+        Map<String, CseEntry> result = new LinkedHashMap<>();
+        cses.forEach((name, cse) -> {
+            if (null != cse.resourceId) {
+                result.put(name, cse);
+            }
+        });
+        return result;
+    }
+
+    /*
+     * LogStoreListener, called by the recovery and the writer of the store
+     */
+
+    @Override
+    public void onPut(String key, byte[] value) {
+        if (key.startsWith(CHILD_PREFIX)) {
+            String[] parentAndName = split(key, CHILD_PREFIX);
+            Map<String, String> links = children.computeIfAbsent(parentAndName[0],
+                    parentResourceId -> Collections.synchronizedMap(new LinkedHashMap<>()));
+            links.put(parentAndName[1], decodeString(value));
+        } else if (key.startsWith(CSE_PREFIX)) {
+            getCseEntry(key.substring(CSE_PREFIX.length())).resourceId = decodeString(value);
+        } else if (key.startsWith(AE_ID_PREFIX)) {
+            String[] cseAndId = split(key, AE_ID_PREFIX);
+            getCseEntry(cseAndId[0]).aeIds.put(cseAndId[1], decodeString(value));
+        } else if (key.startsWith(REMOTE_CSE_ID_PREFIX)) {
+            String[] cseAndId = split(key, REMOTE_CSE_ID_PREFIX);
+            getCseEntry(cseAndId[0]).remoteCseIds.put(cseAndId[1], decodeString(value));
+        }
+    }
+
+    @Override
+    public void onDelete(String key) {
+        if (key.startsWith(RESOURCE_PREFIX)) {
+            // the links of the deleted resource are deleted by the same transaction
+            children.remove(key.substring(RESOURCE_PREFIX.length()));
+        } else if (key.startsWith(CHILD_PREFIX)) {
+            String[] parentAndName = split(key, CHILD_PREFIX);
+            Map<String, String> links = children.get(parentAndName[0]);
+            if (null != links) {
+                links.remove(parentAndName[1]);
+            }
+        } else if (key.startsWith(CSE_PREFIX)) {
+            cses.remove(key.substring(CSE_PREFIX.length()));
+        } else if (key.startsWith(AE_ID_PREFIX)) {
+            String[] cseAndId = split(key, AE_ID_PREFIX);
+            CseEntry cse = cses.get(cseAndId[0]);
+            if (null != cse) {
+                cse.aeIds.remove(cseAndId[1]);
+            }
+        } else if (key.startsWith(REMOTE_CSE_ID_PREFIX)) {
+            String[] cseAndId = split(key, REMOTE_CSE_ID_PREFIX);
+            CseEntry cse = cses.get(cseAndId[0]);
+            if (null != cse) {
+                cse.remoteCseIds.remove(cseAndId[1]);
+            }
+        }
+    }
+
+    @Override
+    public void onClear() {
+        children.clear();
+        cses.clear();
+    }
+
+    private CseEntry getCseEntry(String cseName) {
+        return cses.computeIfAbsent(cseName, name -> new CseEntry());
+    }
+
+    private static String[] split(String key, String prefix) {
+        int delimiter = key.indexOf(KEY_DELIMITER, prefix.length());
+        return new String[] { key.substring(prefix.length(), delimiter), key.substring(delimiter + 1) };
+    }
+}
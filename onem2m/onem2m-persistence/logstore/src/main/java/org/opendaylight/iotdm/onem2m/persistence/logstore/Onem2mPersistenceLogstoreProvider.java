@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.opendaylight.iotdm.onem2m.persistence.logstore;
+
+import java.io.IOException;
+import org.opendaylight.iotdm.onem2m.core.Onem2mCoreProvider;
+import org.opendaylight.iotdm.onem2m.core.database.dao.factory.DaoResourceTreeFactoryRegistry;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.onem2m.persistence.logstore.rev170601.Onem2mPersistenceLogstoreConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class Onem2mPersistenceLogstoreProvider implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Onem2mPersistenceLogstoreProvider.class);
+    private final DaoResourceTreeFactoryRegistry daoFactoryRegistry;
+    private final Onem2mPersistenceLogstoreConfig config;
+    private LogStoreDaoResourceTreeFactory factory;
+
+    public Onem2mPersistenceLogstoreProvider(DaoResourceTreeFactoryRegistry daoFactoryRegistry,
+                                             Onem2mPersistenceLogstoreConfig config) {
+        this.daoFactoryRegistry = daoFactoryRegistry;
+        this.config = config;
+    }
+
+    public void init() {
+        try {
+            this.factory = new LogStoreDaoResourceTreeFactory(config);
+        } catch (IOException e) {
+            LOG.error("Onem2mPersistenceLogstoreProvider: cannot open the log store: {}", e.getMessage());
+            return;
+        }
+        daoFactoryRegistry.registerDaoPlugin(factory);
+        LOG.info("Onem2mPersistenceLogstoreProvider Session Initiated");
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (null == this.factory) {
+            return;
+        }
+        Onem2mCoreProvider.getInstance().unregisterDaoPlugin();
+        this.factory.close();
+        LOG.info("Onem2mPersistenceLogstoreProvider Closed");
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2m.persistence.logstore.read;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.opendaylight.iotdm.onem2m.core.Onem2m;
+import org.opendaylight.iotdm.onem2m.core.database.dao.DaoResourceTreeReader;
+import org.opendaylight.iotdm.onem2m.core.database.transactionCore.Onem2mResourceElem;
+import org.opendaylight.iotdm.onem2m.persistence.logstore.LogStoreResourceTree;
+import org.opendaylight.iotdm.onem2m.persistence.logstore.store.LogStore;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.Onem2mCseList;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.Onem2mCseListBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.Onem2mResourceTree;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.Onem2mResourceTreeBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.cse.list.Onem2mCse;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.cse.list.Onem2mCseBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.cse.list.Onem2mCseKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.cse.list.onem2m.cse.Onem2mRegisteredAeIds;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.cse.list.onem2m.cse.Onem2mRegisteredAeIdsBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.cse.list.onem2m.cse.Onem2mRegisteredAeIdsKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.cse.list.onem2m.cse.Onem2mRegisteredRemoteCses;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.cse.list.onem2m.cse.Onem2mRegisteredRemoteCsesBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.cse.list.onem2m.cse.Onem2mRegisteredRemoteCsesKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mParentChildList;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mParentChildListBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mParentChildListKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResource;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResourceBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResourceKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.onem2m.parent.child.list.Onem2mParentChild;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.onem2m.parent.child.list.Onem2mParentChildBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.onem2m.parent.child.list.Onem2mParentChildKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the resources from the LogStore, the parent-child links and the cseBase registrations are read
+ * from the in-memory structures of the LogStoreResourceTree.
+ */
+public class LogStoreResourceTreeReader implements DaoResourceTreeReader {
+    private final Logger LOG = LoggerFactory.getLogger(LogStoreResourceTreeReader.class);
+    private final LogStoreResourceTree resourceTree;
+    private final LogStore store;
+
+    public LogStoreResourceTreeReader(LogStoreResourceTree resourceTree) {
+        this.resourceTree = resourceTree;
+        this.store = resourceTree.getStore();
+    }
+
+    @Override
+    public Onem2mCse retrieveCseByName(Onem2mCseKey key) {
+        LogStoreResourceTree.CseEntry cse = resourceTree.getCse(key.getName());
+        if (null == cse) {
+            return null;
+        }
+        return buildCse(key.getName(), cse);
+    }
+
+    private Onem2mCse buildCse(String name, LogStoreResourceTree.CseEntry cse) {
+        List<Onem2mRegisteredAeIds> aeIds = new ArrayList<>();
+        for (Map.Entry<String, String> aeId : cse.getAeIds().entrySet()) {
+            aeIds.add(new Onem2mRegisteredAeIdsBuilder()
+                              .setKey(new Onem2mRegisteredAeIdsKey(aeId.getKey()))
+                              .setRegisteredAeId(aeId.getKey())
+                              .setResourceId(aeId.getValue())
+                              .build());
+        }
+        List<Onem2mRegisteredRemoteCses> remoteCses = new ArrayList<>();
+        for (Map.Entry<String, String> cseId : cse.getRemoteCseIds().entrySet()) {
+            remoteCses.add(new Onem2mRegisteredRemoteCsesBuilder()
+                                   .setKey(new Onem2mRegisteredRemoteCsesKey(cseId.getKey()))
+                                   .setRegisteredCseId(cseId.getKey())
+                                   .setResourceId(cseId.getValue())
+                                   .build());
+        }
+        return new Onem2mCseBuilder()
+                .setKey(new Onem2mCseKey(name))
+                .setName(name)
+                .setResourceId(cse.getResourceId())
+                .setOnem2mRegisteredAeIds(aeIds)
+                .setOnem2mRegisteredRemoteCses(remoteCses)
+                .build();
+    }
+
+    @Override
+    public Onem2mResourceElem retrieveResourceById(Onem2mResourceKey key) {
+        String resourceId = key.getResourceId();
+        byte[] resource = store.get(LogStoreResourceTree.resourceKey(resourceId));
+        if (null == resource) {
+            return null;
+        }
+        LogStoreResourceTree.ResourceAttributes attributes = LogStoreResourceTree.decodeResource(resource);
+        String jsonContent = LogStoreResourceTree.decodeString(
+                store.get(LogStoreResourceTree.contentKey(resourceId)));
+        return new Onem2mResourceElem(this, resourceId, attributes.parentId, attributes.name,
+                                      attributes.resourceType, jsonContent, attributes.parentTargetUri);
+    }
+
+    @Override
+    public List<Onem2mParentChild> retrieveParentChildList(Onem2mParentChildListKey key) {
+        String parentResourceId = key.getParentResourceId();
+        Map<String, String> children = resourceTree.getChildren(parentResourceId);
+        if (null == children) {
+            // the list of the resource without children is empty, the list of the unknown resource doesn't exist
+            return store.contains(LogStoreResourceTree.resourceKey(parentResourceId)) ? new ArrayList<>() : null;
+        }
+        List<Onem2mParentChild> list = new ArrayList<>(children.size());
+        children.forEach((name, resourceId) -> list.add(buildParentChild(name, resourceId)));
+        return list;
+    }
+
+    @Override
+    public List<Onem2mParentChild> retrieveParentChildList(Onem2mParentChildListKey key, int limit, int offset) {
+        List<Onem2mParentChild> list = new ArrayList<>();
+        for (Map.Entry<String, String> child : resourceTree.getChildren(key.getParentResourceId(), limit, offset)) {
+            list.add(buildParentChild(child.getKey(), child.getValue()));
+        }
+        return list;
+    }
+
+    @Override
+    public Onem2mParentChild retrieveChildByName(String resourceId, String name) {
+        String childResourceId = resourceTree.getChild(resourceId, name);
+        if (null == childResourceId) {
+            return null;
+        }
+        return buildParentChild(name, childResourceId);
+    }
+
+    private static Onem2mParentChild buildParentChild(String name, String resourceId) {
+        return new Onem2mParentChildBuilder()
+                .setKey(new Onem2mParentChildKey(name))
+                .setName(name)
+                .setResourceId(resourceId)
+                .build();
+    }
+
+    @Override
+    public Onem2mCseList retrieveFullCseList() {
+        List<Onem2mCse> cseList = new ArrayList<>();
+        resourceTree.getCses().forEach((name, cse) -> cseList.add(buildCse(name, cse)));
+        return new Onem2mCseListBuilder().setOnem2mCse(cseList).build();
+    }
+
+    /**
+     * Builds the whole resource tree, it's used by the dumps only.
+     */
+    @Override
+    public Onem2mResourceTree retrieveFullResourceList() {
+        List<Onem2mResource> resources = new ArrayList<>();
+        store.forEachKey(LogStoreResourceTree.resourceKey(""), key -> {
+            String resourceId = key.substring(LogStoreResourceTree.resourceKey("").length());
+            Onem2mResourceElem resource = retrieveResourceById(new Onem2mResourceKey(resourceId));
+            if (null != resource) {
+                resources.add(new Onem2mResourceBuilder()
+                                      .setKey(new Onem2mResourceKey(resourceId))
+                                      .setResourceId(resourceId)
+                                      .setName(resource.getName())
+                                      .setResourceType(resource.getResourceType())
+                                      .setParentId(resource.getParentId())
+                                      .setParentTargetUri(resource.getParentTargetUri())
+                                      .setResourceContentJsonString(resource.getResourceContentJsonString())
+                                      .build());
+            }
+        });
+
+        List<Onem2mParentChildList> parentChildLists = new ArrayList<>();
+        resourceTree.getAllChildren().forEach((parentResourceId, children) -> {
+            List<Onem2mParentChild> list = new ArrayList<>(children.size());
+            children.forEach((name, resourceId) -> list.add(buildParentChild(name, resourceId)));
+            parentChildLists.add(new Onem2mParentChildListBuilder()
+                                         .setKey(new Onem2mParentChildListKey(parentResourceId))
+                                         .setParentResourceId(parentResourceId)
+                                         .setOnem2mParentChild(list)
+                                         .build());
+        });
+
+        return new Onem2mResourceTreeBuilder()
+                .setOnem2mResource(resources)
+                .setOnem2mParentChildList(parentChildLists)
+                .build();
+    }
+
+    /**
+     * Retrieve the resourceID of the AE by its AE-ID.
+     * @param cseBaseName The name of cseBase.
+     * @param aeId The AE-ID of the AE.
+     * @return resourceID of the AE
+     */
+    @Override
+    public String retrieveAeResourceIdByAeId(String cseBaseName, String aeId) {
+        LogStoreResourceTree.CseEntry cse = resourceTree.getCse(cseBaseName);
+        String resourceId = (null == cse) ? null : cse.getAeIds().get(aeId);
+        if (null == resourceId) {
+            LOG.trace("Failed to retrieve AE-ID to resourceID mapping for cseBaseName: {}, AE-ID: {}",
+                      cseBaseName, aeId);
+        }
+        return resourceId;
+    }
+
+    @Override
+    public Integer isEntityRegistered(String entityId, String cseBaseCseId) {
+
+        if (null != cseBaseCseId) {
+            return (null != retrieveAeResourceIdByAeId(cseBaseCseId, entityId)) ? Onem2m.ResourceType.AE : null;
+        }
+
+        // CSE-ID and name are the same in our implementation, walk the cseBase resources
+        for (String cseBaseName : resourceTree.getCses().keySet()) {
+            if (null != retrieveAeResourceIdByAeId(cseBaseName, entityId)) {
+                return Onem2m.ResourceType.AE;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int retrieveSystemStartId() {
+        String systemStartId = LogStoreResourceTree.decodeString(
+                store.get(LogStoreResourceTree.systemStartIdKey()));
+        if (null == systemStartId) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(systemStartId);
+        } catch (NumberFormatException e) {
+            LOG.error("Invalid systemStartId: {}", systemStartId);
+            return 0;
+        }
+    }
+
+    @Override
+    public void close() {
+
+    }
+}
@@ -0,0 +1,858 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2m.persistence.logstore.store;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Embedded key-value store keeping the data in an append-only log of segment files and the location of the
+ * current value of each key in an in-memory index (the Bitcask design). A read is one positional read of the
+ * segment file, a write is an append to the active segment.
+ *
+ * Submitted transactions are queued and a single writer thread appends them to the active segment in batches
+ * (group commit): the batch is collected until it has maxBatchSize operations or the linger time of its first
+ * transaction expires, it's written by one write and made durable by one fsync. The index and the listener are
+ * updated after the fsync and only then the commit futures of the batch are completed.
+ *
+ * Each transaction is one record [length][crc32][body] so the recovery replays the complete transactions only.
+ * The torn record at the end of the log (the crash during the write) is cut off by the recovery.
+ *
+ * The active segment is rotated when it reaches maxSegmentSize. When the share of the overwritten and deleted
+ * data of the immutable segments exceeds the compaction threshold, the live values of all immutable segments are
+ * copied to new segments and the old segments are deleted, see compact().
+ */
+public class LogStore implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(LogStore.class);
+
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+    // number of bytes of the live values copied into one record of the compacted segment
+    private static final int COMPACTION_RECORD_SIZE = 1024 * 1024;
+    private static final int REPLAY_BUFFER_SIZE = 1024 * 1024;
+    private static final int MAX_READ_ATTEMPTS = 3;
+    private static final long POLL_TIMEOUT_MS = 100;
+    private static final long CLOSE_TIMEOUT_SEC = 10;
+
+    /**
+     * Location of the current value of the key.
+     */
+    private static final class IndexEntry {
+        final LogStoreSegment segment;
+        final long offset;
+        final int length;
+        // bytes of the whole put operation, counted as live bytes of the segment
+        final int size;
+
+        IndexEntry(LogStoreSegment segment, long offset, int length, int size) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.size = size;
+        }
+    }
+
+    private final Path directory;
+    private final long maxSegmentSize;
+    private final boolean syncWrites;
+    private final int maxBatchSize;
+    private final long maxLingerNanos;
+    private final int compactionThresholdPercent;
+    private final LogStoreListener listener;
+
+    private final Map<String, IndexEntry> index = new ConcurrentHashMap<>();
+    // all segments in the replay order, the active segment is the last one; copy on write guarded by this
+    private volatile List<LogStoreSegment> segments;
+    // the active segment is written by the writer thread, it's rotated by the writer thread only
+    private volatile LogStoreSegment activeSegment;
+    private final ReentrantLock compactionLock = new ReentrantLock();
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean(false);
+    private final ExecutorService compactionExecutor;
+
+    private final BlockingQueue<LogStoreTransaction> queue = new LinkedBlockingQueue<>();
+    private final Thread writerThread;
+    // guards the check of running together with the add to the queue, so nothing is queued after the writer
+    // thread has been told to drain the queue and exit
+    private final Object queueLock = new Object();
+    private volatile boolean running = true;
+
+    /**
+     * Opens the store in the directory, the existing segments are replayed before the constructor returns.
+     *
+     * @param directory directory of the segment files, created if it doesn't exist
+     * @param maxSegmentSize size in bytes the active segment is rotated at
+     * @param syncWrites fsync each batch before its commit is reported
+     * @param maxBatchSize maximal number of operations written by one batch
+     * @param maxLingerMicros maximal time the first transaction of the batch waits for the next transactions
+     * @param compactionThresholdPercent share of the garbage in the immutable segments triggering the compaction
+     * @param listener listener of the committed operations
+     * @throws IOException if the segments can't be read
+     */
+    public LogStore(Path directory, long maxSegmentSize, boolean syncWrites, int maxBatchSize, long maxLingerMicros,
+                    int compactionThresholdPercent, LogStoreListener listener) throws IOException {
+        this.directory = directory;
+        this.maxSegmentSize = maxSegmentSize;
+        this.syncWrites = syncWrites;
+        this.maxBatchSize = maxBatchSize;
+        this.maxLingerNanos = TimeUnit.MICROSECONDS.toNanos(maxLingerMicros);
+        this.compactionThresholdPercent = compactionThresholdPercent;
+        this.listener = listener;
+
+        recover();
+
+        this.compactionExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "onem2m-logstore-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.writerThread = new Thread(this::runBatches, "onem2m-logstore-group-commit");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+        LOG.info("LogStore: directory: {}, maxSegmentSize: {}, syncWrites: {}, maxBatchSize: {}, maxLingerMicros: {}",
+                 directory, maxSegmentSize, syncWrites, maxBatchSize, maxLingerMicros);
+        scheduleCompaction();
+    }
+
+    /**
+     * @param key the key
+     * @return the current value of the key or null if the key doesn't exist or can't be read
+     */
+    public byte[] get(String key) {
+        for (int attempt = 1; ; attempt++) {
+            IndexEntry entry = index.get(key);
+            if (null == entry) {
+                return null;
+            }
+            try {
+                return entry.segment.read(entry.offset, entry.length);
+            } catch (ClosedByInterruptException e) {
+                // the interrupt closed the channel for all readers, it's opened again for the others
+                reopen(entry.segment);
+                LOG.warn("Read of key {} interrupted", key);
+                return null;
+            } catch (ClosedChannelException e) {
+                // the segment was deleted by the compaction, the index points to the new location now
+                if (attempt >= MAX_READ_ATTEMPTS) {
+                    LOG.error("Failed to read key {}: segment {} closed", key, entry.segment);
+                    return null;
+                }
+                reopen(entry.segment);
+            } catch (IOException e) {
+                LOG.error("Failed to read key {} from segment {}: {}", key, entry.segment, e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    public boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * Walks the keys with the prefix, e.g. to dump the store. The keys written during the walk may be skipped.
+     */
+    public void forEachKey(String prefix, Consumer<String> consumer) {
+        index.keySet().stream().filter(key -> key.startsWith(prefix)).forEach(consumer);
+    }
+
+    public int getNumKeys() {
+        return index.size();
+    }
+
+    /**
+     * Hands the transaction over to the writer thread, doesn't wait for the commit.
+     *
+     * @param transaction transaction to be committed
+     * @return future completed when the transaction is committed
+     */
+    public ListenableFuture<Void> submit(LogStoreTransaction transaction) {
+        if (transaction.isSubmitted()) {
+            return transaction.getCommitFuture();
+        }
+        transaction.setSubmitted();
+
+        if (transaction.getNumOperations() == 0) {
+            transaction.commitSucceeded();
+        } else if (transaction.getEncodedSize() > MAX_RECORD_SIZE) {
+            transaction.commitFailed(new IllegalArgumentException(
+                    "Transaction too big: " + transaction.getEncodedSize() + " bytes"));
+        } else {
+            boolean queued;
+            synchronized (queueLock) {
+                queued = running && queue.add(transaction);
+            }
+            if (!queued) {
+                transaction.commitFailed(new IllegalStateException("LogStore is closed"));
+            }
+        }
+        return transaction.getCommitFuture();
+    }
+
+    /**
+     * Submits the transaction if not submitted yet and waits for its commit.
+     *
+     * @param transaction transaction to be committed
+     * @return true if successfully committed
+     */
+    public boolean commit(LogStoreTransaction transaction) {
+        try {
+            submit(transaction).get();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.error("Interrupted while waiting for commit");
+        } catch (ExecutionException e) {
+            LOG.error("Commit failed: {}", e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Deletes all keys. The clear is written to the log in order with the other transactions, the space of
+     * the segments is reclaimed by the compaction.
+     *
+     * @return true if successfully committed
+     */
+    public boolean clear() {
+        LogStoreTransaction transaction = new LogStoreTransaction();
+        transaction.clear();
+        return commit(transaction);
+    }
+
+    /**
+     * Commits all queued transactions and closes the segments. If the writer thread doesn't drain the queue in
+     * CLOSE_TIMEOUT_SEC, the transactions still queued are failed and the close waits for the batch being
+     * written, the segments are never closed under the writer thread.
+     */
+    @Override
+    public void close() {
+        synchronized (queueLock) {
+            if (!running) {
+                return;
+            }
+            running = false;
+        }
+        boolean interrupted = false;
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(CLOSE_TIMEOUT_SEC));
+        } catch (InterruptedException e) {
+            interrupted = true;
+        }
+        if (writerThread.isAlive()) {
+            List<LogStoreTransaction> pending = new ArrayList<>();
+            queue.drainTo(pending);
+            LOG.warn("LogStore writer didn't finish in {} s, failing {} queued transactions",
+                     CLOSE_TIMEOUT_SEC, pending.size());
+            IllegalStateException closed = new IllegalStateException("LogStore is closed");
+            pending.forEach(transaction -> transaction.commitFailed(closed));
+            // the writer exits after the batch in progress, the queue stays empty as running is false
+            while (writerThread.isAlive()) {
+                try {
+                    writerThread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        // the compaction in progress isn't interrupted, the interrupt would close the channels of the segments
+        // it reads, wait for it to release the segments instead
+        compactionExecutor.shutdown();
+        compactionLock.lock();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            if (!syncWrites) {
+                activeSegment.force();
+            }
+        } catch (IOException e) {
+            LOG.error("Failed to sync segment {}: {}", activeSegment, e.getMessage());
+        } finally {
+            for (LogStoreSegment segment : segments) {
+                try {
+                    segment.close();
+                } catch (IOException e) {
+                    LOG.error("Failed to close segment {}: {}", segment, e.getMessage());
+                }
+            }
+            compactionLock.unlock();
+        }
+        LOG.info("LogStore closed: {}", directory);
+    }
+
+    private void reopen(LogStoreSegment segment) {
+        try {
+            segment.reopen();
+        } catch (IOException e) {
+            LOG.error("Failed to reopen segment {}: {}", segment, e.getMessage());
+        }
+    }
+
+    /*
+     * Recovery
+     */
+
+    private void recover() throws IOException {
+        long startTime = System.nanoTime();
+        Files.createDirectories(directory);
+
+        List<LogStoreSegment> found = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                String fileName = path.getFileName().toString();
+                if (fileName.endsWith(LogStoreSegment.TMP_SUFFIX)) {
+                    // output of the interrupted compaction, the merged segments still exist
+                    LOG.info("Deleting unfinished compaction output: {}", path);
+                    Files.delete(path);
+                    continue;
+                }
+                long[] segmentId = LogStoreSegment.parseFileName(fileName);
+                if (null != segmentId) {
+                    found.add(LogStoreSegment.open(directory, segmentId[0], (int) segmentId[1]));
+                }
+            }
+        }
+        found.sort(LogStoreSegment.ORDER);
+
+        long numRecords = 0;
+        List<LogStoreSegment> recovered = new ArrayList<>();
+        for (LogStoreSegment segment : found) {
+            numRecords += replay(segment, found);
+            if (segment.getSize() == 0) {
+                segment.delete();
+            } else {
+                recovered.add(segment);
+            }
+        }
+
+        // the writes continue in the new segment, never after the possibly cut off tail of the last one
+        long nextSegmentId = found.isEmpty() ? 0 : found.get(found.size() - 1).id + 1;
+        activeSegment = LogStoreSegment.open(directory, nextSegmentId, 0);
+        recovered.add(activeSegment);
+        segments = Collections.unmodifiableList(recovered);
+
+        LOG.info("LogStore recovered: {} segments, {} records, {} keys in {} ms", found.size(), numRecords,
+                 index.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+    }
+
+    /**
+     * Replays the records of the segment into the index. The segment is cut off at the first incomplete or
+     * corrupted record.
+     *
+     * @param found all segments, the live bytes of them are reset by the replayed clear
+     * @return number of replayed records
+     */
+    private long replay(LogStoreSegment segment, List<LogStoreSegment> found) throws IOException {
+        FileChannel channel = segment.getChannel();
+        channel.position(0);
+        // the stream isn't closed, it would close the channel
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Channels.newInputStream(channel), REPLAY_BUFFER_SIZE));
+
+        long size = segment.getSize();
+        long position = 0;
+        long numRecords = 0;
+        while (position + RECORD_HEADER_SIZE <= size) {
+            int length = in.readInt();
+            int crc = in.readInt();
+            if (length < 4 || length > MAX_RECORD_SIZE || position + RECORD_HEADER_SIZE + length > size) {
+                break;
+            }
+            byte[] body = new byte[length];
+            in.readFully(body);
+            CRC32 crc32 = new CRC32();
+            crc32.update(body, 0, length);
+            if ((int) crc32.getValue() != crc || !replayRecord(segment, position + RECORD_HEADER_SIZE, body, found)) {
+                break;
+            }
+            position += RECORD_HEADER_SIZE + length;
+            numRecords++;
+        }
+
+        if (position < size) {
+            LOG.warn("Segment {}: cutting off incomplete or corrupted record at {}, {} bytes dropped",
+                     segment, position, size - position);
+            segment.truncate(position);
+        }
+        return numRecords;
+    }
+
+    /**
+     * @param bodyOffset offset of the record body in the segment
+     * @return false if the record can't be decoded
+     */
+    private boolean replayRecord(LogStoreSegment segment, long bodyOffset, byte[] body,
+                                 List<LogStoreSegment> found) {
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        try {
+            int numOps = buffer.getInt();
+            for (int i = 0; i < numOps; i++) {
+                int start = buffer.position();
+                byte type = buffer.get();
+                int keyLength = buffer.getInt();
+                String key = new String(body, buffer.position(), keyLength, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + keyLength);
+                int valueLength = buffer.getInt();
+                switch (type) {
+                    case LogStoreTransaction.OP_PUT:
+                        if (valueLength < 0) {
+                            LOG.error("Segment {}: invalid value length at {}", segment, bodyOffset + start);
+                            return false;
+                        }
+                        byte[] value = new byte[valueLength];
+                        int valuePosition = buffer.position();
+                        buffer.get(value);
+                        applyPut(key, value, new IndexEntry(segment, bodyOffset + valuePosition, valueLength,
+                                                            buffer.position() - start));
+                        break;
+                    case LogStoreTransaction.OP_DELETE:
+                        applyDelete(key);
+                        break;
+                    case LogStoreTransaction.OP_CLEAR:
+                        applyClear(found);
+                        break;
+                    default:
+                        LOG.error("Segment {}: unknown operation {} at {}", segment, type, bodyOffset + start);
+                        return false;
+                }
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            LOG.error("Segment {}: invalid record at {}: {}", segment, bodyOffset - RECORD_HEADER_SIZE, e.toString());
+            return false;
+        }
+        return true;
+    }
+
+    /*
+     * Updates of the index, called by the recovery and then by the writer thread only
+     */
+
+    private void applyPut(String key, byte[] value, IndexEntry entry) {
+        IndexEntry old = index.put(key, entry);
+        if (null != old) {
+            old.segment.addLiveBytes(-old.size);
+        }
+        entry.segment.addLiveBytes(entry.size);
+        listener.onPut(key, value);
+    }
+
+    private void applyDelete(String key) {
+        IndexEntry old = index.remove(key);
+        if (null != old) {
+            old.segment.addLiveBytes(-old.size);
+        }
+        listener.onDelete(key);
+    }
+
+    private void applyClear(List<LogStoreSegment> cleared) {
+        index.clear();
+        cleared.forEach(LogStoreSegment::resetLiveBytes);
+        listener.onClear();
+    }
+
+    /*
+     * Group commit
+     */
+
+    private void runBatches() {
+        while (running || !queue.isEmpty()) {
+            LogStoreTransaction first;
+            try {
+                first = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (null == first) {
+                continue;
+            }
+
+            List<LogStoreTransaction> batch = new ArrayList<>();
+            batch.add(first);
+            int numOps = first.getNumOperations();
+
+            // linger for another transactions of the batch
+            long deadline = System.nanoTime() + maxLingerNanos;
+            while (numOps < maxBatchSize) {
+                long remaining = deadline - System.nanoTime();
+                LogStoreTransaction next;
+                try {
+                    next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (null == next) {
+                    break;
+                }
+                batch.add(next);
+                numOps += next.getNumOperations();
+            }
+
+            writeBatch(batch);
+        }
+    }
+
+    private void writeBatch(List<LogStoreTransaction> batch) {
+        LogStoreSegment segment = activeSegment;
+        long start = segment.getSize();
+        try {
+            if (start >= maxSegmentSize) {
+                segment = rotate();
+                start = 0;
+            }
+
+            int size = 0;
+            for (LogStoreTransaction transaction : batch) {
+                size += RECORD_HEADER_SIZE + transaction.getEncodedSize();
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            for (LogStoreTransaction transaction : batch) {
+                encodeRecord(transaction, buffer);
+            }
+            buffer.flip();
+
+            segment.append(buffer);
+            if (syncWrites) {
+                segment.force();
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Failed to write batch of {} transactions to segment {}: {}", batch.size(), segment,
+                      e.toString());
+            truncate(segment, start);
+            batch.forEach(transaction -> transaction.commitFailed(e));
+            return;
+        }
+
+        long position = start;
+        for (LogStoreTransaction transaction : batch) {
+            position = applyRecord(transaction, segment, position);
+        }
+        batch.forEach(LogStoreTransaction::commitSucceeded);
+    }
+
+    private void truncate(LogStoreSegment segment, long size) {
+        try {
+            segment.reopen();
+            if (segment.getSize() != size) {
+                segment.truncate(size);
+            }
+        } catch (IOException e) {
+            LOG.error("Failed to truncate segment {}: {}", segment, e.getMessage());
+        }
+    }
+
+    private static void encodeRecord(LogStoreTransaction transaction, ByteBuffer buffer) {
+        int recordStart = buffer.position();
+        int length = transaction.getEncodedSize();
+        buffer.putInt(length);
+        buffer.putInt(0);
+        buffer.putInt(transaction.getNumOperations());
+        for (LogStoreTransaction.Operation operation : transaction.getOperations()) {
+            buffer.put(operation.type);
+            buffer.putInt(operation.keyBytes.length);
+            buffer.put(operation.keyBytes);
+            if (null == operation.value) {
+                buffer.putInt(-1);
+            } else {
+                buffer.putInt(operation.value.length);
+                buffer.put(operation.value);
+            }
+        }
+        CRC32 crc32 = new CRC32();
+        crc32.update(buffer.array(), recordStart + RECORD_HEADER_SIZE, length);
+        buffer.putInt(recordStart + 4, (int) crc32.getValue());
+    }
+
+    /**
+     * Applies the operations of the written transaction to the index.
+     *
+     * @param recordStart offset of the record of the transaction in the segment
+     * @return offset of the next record
+     */
+    private long applyRecord(LogStoreTransaction transaction, LogStoreSegment segment, long recordStart) {
+        long position = recordStart + RECORD_HEADER_SIZE + 4;
+        for (LogStoreTransaction.Operation operation : transaction.getOperations()) {
+            int operationSize = operation.getEncodedSize();
+            switch (operation.type) {
+                case LogStoreTransaction.OP_PUT:
+                    long valueOffset = position + operationSize - operation.value.length;
+                    applyPut(operation.key, operation.value,
+                             new IndexEntry(segment, valueOffset, operation.value.length, operationSize));
+                    break;
+                case LogStoreTransaction.OP_DELETE:
+                    applyDelete(operation.key);
+                    break;
+                case LogStoreTransaction.OP_CLEAR:
+                    applyClear(segments);
+                    scheduleCompaction();
+                    break;
+                default:
+                    break;
+            }
+            position += operationSize;
+        }
+        return recordStart + RECORD_HEADER_SIZE + transaction.getEncodedSize();
+    }
+
+    private LogStoreSegment rotate() throws IOException {
+        LogStoreSegment old = activeSegment;
+        if (!syncWrites) {
+            // the immutable segments are always durable
+            old.force();
+        }
+        LogStoreSegment next = LogStoreSegment.open(directory, old.id + 1, 0);
+        addSegment(next);
+        activeSegment = next;
+        LOG.debug("Rotated segment {} to {}", old, next);
+        scheduleCompaction();
+        return next;
+    }
+
+    private synchronized void addSegment(LogStoreSegment segment) {
+        List<LogStoreSegment> updated = new ArrayList<>(segments);
+        updated.add(segment);
+        updated.sort(LogStoreSegment.ORDER);
+        segments = Collections.unmodifiableList(updated);
+    }
+
+    private synchronized void removeSegments(Set<LogStoreSegment> removed) {
+        List<LogStoreSegment> updated = new ArrayList<>(segments);
+        updated.removeIf(removed::contains);
+        segments = Collections.unmodifiableList(updated);
+    }
+
+    /*
+     * Compaction
+     */
+
+    private void scheduleCompaction() {
+        if (null == compactionExecutor || !running || !compactionScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        compactionExecutor.execute(() -> {
+            compactionScheduled.set(false);
+            compact();
+        });
+    }
+
+    /**
+     * Merges the immutable segments if the share of their garbage exceeds the threshold. The live values are
+     * copied into new segments named (id of the last merged segment, 1..), so the recovery replays them after
+     * the merged segments and before the segments written during the compaction. Each new segment is written
+     * as a temporary file, synced and renamed, then the index is switched to it for the keys which were not
+     * written meanwhile. The merged segments are deleted from the oldest one, so the deletes of the newer
+     * segments are never lost while an older segment still exists.
+     *
+     * @return true if the segments were merged
+     */
+    public boolean compact() {
+        compactionLock.lock();
+        try {
+            LogStoreSegment active = activeSegment;
+            List<LogStoreSegment> immutable = new ArrayList<>();
+            long totalBytes = 0;
+            long liveBytes = 0;
+            for (LogStoreSegment segment : segments) {
+                if (segment != active && segment.id < active.id) {
+                    immutable.add(segment);
+                    totalBytes += segment.getSize();
+                    liveBytes += segment.getLiveBytes();
+                }
+            }
+            if (immutable.isEmpty() || (totalBytes - liveBytes) * 100 < totalBytes * compactionThresholdPercent) {
+                return false;
+            }
+
+            long startTime = System.nanoTime();
+            Set<LogStoreSegment> merged = Collections.newSetFromMap(new IdentityHashMap<>());
+            merged.addAll(immutable);
+            long mergedId = immutable.get(immutable.size() - 1).id;
+            int nextSubId = 1;
+            for (LogStoreSegment segment : immutable) {
+                if (segment.id == mergedId) {
+                    nextSubId = Math.max(nextSubId, segment.subId + 1);
+                }
+            }
+
+            CompactionOutput output = null;
+            int numOutputs = 0;
+            try {
+                for (Map.Entry<String, IndexEntry> entry : index.entrySet()) {
+                    IndexEntry location = entry.getValue();
+                    if (!merged.contains(location.segment)) {
+                        continue;
+                    }
+                    if (null == output) {
+                        output = new CompactionOutput(LogStoreSegment.createTemporary(directory, mergedId,
+                                                                                       nextSubId++));
+                    }
+                    output.add(entry.getKey(), location,
+                               location.segment.read(location.offset, location.length));
+                    if (output.size() >= maxSegmentSize) {
+                        output.install();
+                        output = null;
+                        numOutputs++;
+                    }
+                }
+                if (null != output) {
+                    output.install();
+                    output = null;
+                    numOutputs++;
+                }
+                syncDirectory();
+            } finally {
+                if (null != output) {
+                    output.discard();
+                }
+            }
+
+            removeSegments(merged);
+            for (LogStoreSegment segment : immutable) {
+                segment.delete();
+            }
+            LOG.info("LogStore compaction: merged {} segments, {} bytes, into {} segments, {} live bytes in {} ms",
+                     immutable.size(), totalBytes, numOutputs, liveBytes,
+                     TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+            return true;
+        } catch (IOException | RuntimeException e) {
+            LOG.error("LogStore compaction failed: {}", e.toString());
+            return false;
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // not supported by all platforms, the renames are synced by the file system later
+            LOG.debug("Failed to sync directory {}: {}", directory, e.getMessage());
+        }
+    }
+
+    /**
+     * New segment written by the compaction. The values are collected into records of COMPACTION_RECORD_SIZE,
+     * the index entries are switched when the whole segment is installed.
+     */
+    private final class CompactionOutput {
+        private final LogStoreSegment segment;
+        private final List<String> keys = new ArrayList<>();
+        private final List<IndexEntry> oldEntries = new ArrayList<>();
+        private final List<IndexEntry> newEntries = new ArrayList<>();
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(body);
+        private int numOps = 0;
+
+        CompactionOutput(LogStoreSegment segment) {
+            this.segment = segment;
+        }
+
+        long size() {
+            return segment.getSize() + body.size();
+        }
+
+        void add(String key, IndexEntry oldEntry, byte[] value) throws IOException {
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            int operationSize = 1 + 4 + keyBytes.length + 4 + value.length;
+            if (numOps > 0 && body.size() + operationSize > COMPACTION_RECORD_SIZE) {
+                flushRecord();
+            }
+            long valueOffset = segment.getSize() + RECORD_HEADER_SIZE + 4 + body.size() + operationSize
+                    - value.length;
+            out.writeByte(LogStoreTransaction.OP_PUT);
+            out.writeInt(keyBytes.length);
+            out.write(keyBytes);
+            out.writeInt(value.length);
+            out.write(value);
+            numOps++;
+
+            keys.add(key);
+            oldEntries.add(oldEntry);
+            newEntries.add(new IndexEntry(segment, valueOffset, value.length, operationSize));
+        }
+
+        private void flushRecord() throws IOException {
+            if (numOps == 0) {
+                return;
+            }
+            int length = 4 + body.size();
+            ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+            record.putInt(length);
+            record.putInt(0);
+            record.putInt(numOps);
+            record.put(body.toByteArray());
+            CRC32 crc32 = new CRC32();
+            crc32.update(record.array(), RECORD_HEADER_SIZE, length);
+            record.putInt(4, (int) crc32.getValue());
+            record.flip();
+            segment.append(record);
+            body.reset();
+            numOps = 0;
+        }
+
+        /**
+         * Makes the segment durable and visible to the recovery, then switches the unchanged keys to it.
+         */
+        void install() throws IOException {
+            flushRecord();
+            segment.force();
+            segment.install(directory);
+            addSegment(segment);
+            for (int i = 0; i < keys.size(); i++) {
+                IndexEntry oldEntry = oldEntries.get(i);
+                IndexEntry newEntry = newEntries.get(i);
+                if (index.replace(keys.get(i), oldEntry, newEntry)) {
+                    oldEntry.segment.addLiveBytes(-oldEntry.size);
+                    newEntry.segment.addLiveBytes(newEntry.size);
+                }
+            }
+        }
+
+        void discard() {
+            try {
+                segment.delete();
+            } catch (IOException e) {
+                LOG.error("Failed to delete compaction output {}: {}", segment, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2m.persistence.logstore.store;
+
+/**
+ * Receives the committed operations of the LogStore in the commit order, first the operations replayed by the
+ * recovery and then the operations of each committed transaction. It's used to maintain the in-memory structures
+ * derived from the stored keys. The methods are called by one thread at a time, before the commit of the
+ * transaction is reported, and they must not block.
+ */
+public interface LogStoreListener {
+
+    /**
+     * @param key the written key
+     * @param value the written value, it must not be modified
+     */
+    void onPut(String key, byte[] value);
+
+    void onDelete(String key);
+
+    /**
+     * All keys have been deleted.
+     */
+    void onClear();
+}
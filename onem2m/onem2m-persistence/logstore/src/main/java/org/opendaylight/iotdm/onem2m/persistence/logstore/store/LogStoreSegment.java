@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2m.persistence.logstore.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One file of the log. The segments are replayed in the order of their (id, subId). The segments written by the
+ * LogStore have subId 0, the segments written by the compaction of the segments up to id N are named (N, 1..),
+ * so they are replayed after the merged segments and before all segments written during the compaction.
+ */
+final class LogStoreSegment {
+    static final String SEGMENT_SUFFIX = ".seg";
+    static final String TMP_SUFFIX = ".tmp";
+
+    static final Comparator<LogStoreSegment> ORDER =
+            Comparator.comparingLong((LogStoreSegment segment) -> segment.id).thenComparingInt(segment -> segment.subId);
+
+    final long id;
+    final int subId;
+    private volatile Path path;
+    private volatile FileChannel channel;
+    private volatile boolean deleted = false;
+    private volatile long size;
+    // bytes of the keys and values of this segment which are still referenced by the index
+    private final AtomicLong liveBytes = new AtomicLong();
+
+    private LogStoreSegment(long id, int subId, Path path, FileChannel channel, long size) {
+        this.id = id;
+        this.subId = subId;
+        this.path = path;
+        this.channel = channel;
+        this.size = size;
+    }
+
+    static String fileName(long id, int subId) {
+        return String.format("%016x-%04x%s", id, subId, SEGMENT_SUFFIX);
+    }
+
+    /**
+     * @param fileName name of a file in the log directory
+     * @return {id, subId} of the segment or null if the file is not a segment
+     */
+    static long[] parseFileName(String fileName) {
+        if (!fileName.endsWith(SEGMENT_SUFFIX)) {
+            return null;
+        }
+        String[] parts = fileName.substring(0, fileName.length() - SEGMENT_SUFFIX.length()).split("-");
+        if (parts.length != 2) {
+            return null;
+        }
+        try {
+            return new long[] { Long.parseLong(parts[0], 16), Integer.parseInt(parts[1], 16) };
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    static LogStoreSegment open(Path directory, long id, int subId) throws IOException {
+        Path path = directory.resolve(fileName(id, subId));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                               StandardOpenOption.WRITE);
+        return new LogStoreSegment(id, subId, path, channel, channel.size());
+    }
+
+    /**
+     * Creates the segment as the temporary file, it's renamed by install() when it's completely written.
+     */
+    static LogStoreSegment createTemporary(Path directory, long id, int subId) throws IOException {
+        Path path = directory.resolve(fileName(id, subId) + TMP_SUFFIX);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                                               StandardOpenOption.WRITE);
+        return new LogStoreSegment(id, subId, path, channel, 0);
+    }
+
+    /**
+     * Renames the temporary segment to its final name, the channel stays open.
+     */
+    void install(Path directory) throws IOException {
+        Path target = directory.resolve(fileName(id, subId));
+        Files.move(path, target, StandardCopyOption.ATOMIC_MOVE);
+        path = target;
+    }
+
+    /**
+     * Opens the channel again if it was closed by the interrupt of a thread using it, the interrupt closes
+     * the channel for all threads.
+     */
+    synchronized void reopen() throws IOException {
+        if (!deleted && !channel.isOpen()) {
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+    }
+
+    boolean isDeleted() {
+        return deleted;
+    }
+
+    FileChannel getChannel() {
+        return channel;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    long getLiveBytes() {
+        return liveBytes.get();
+    }
+
+    void addLiveBytes(long delta) {
+        liveBytes.addAndGet(delta);
+    }
+
+    void resetLiveBytes() {
+        liveBytes.set(0);
+    }
+
+    /**
+     * Appends the buffer at the end of the segment, called by one writer at a time.
+     * @return offset of the first appended byte
+     */
+    long append(ByteBuffer buffer) throws IOException {
+        long position = size;
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            offset += channel.write(buffer, offset);
+        }
+        size = offset;
+        return position;
+    }
+
+    /**
+     * Cuts off the partially written tail, e.g. after a failed append or a torn write found by the recovery.
+     */
+    void truncate(long newSize) throws IOException {
+        channel.truncate(newSize);
+        size = newSize;
+    }
+
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    byte[] read(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of segment " + path + " at " + position);
+            }
+            position += read;
+        }
+        return buffer.array();
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+
+    void delete() throws IOException {
+        deleted = true;
+        close();
+        Files.deleteIfExists(path);
+    }
+
+    @Override
+    public String toString() {
+        return path.getFileName().toString();
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2m.persistence.logstore.store;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Set of writes committed atomically by the LogStore. The operations are only recorded here, the whole
+ * transaction is appended to the log as one checksummed record when it's submitted, so the recovery replays
+ * either all or none of its operations.
+ * The transaction is not thread safe, it is expected to be used by the thread processing the request.
+ */
+public class LogStoreTransaction {
+
+    static final byte OP_PUT = 1;
+    static final byte OP_DELETE = 2;
+    static final byte OP_CLEAR = 3;
+
+    static final class Operation {
+        final byte type;
+        final String key;
+        final byte[] keyBytes;
+        final byte[] value;
+
+        private Operation(byte type, String key, byte[] value) {
+            this.type = type;
+            this.key = key;
+            this.keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            this.value = value;
+        }
+
+        /**
+         * @return number of bytes of the encoded operation: type, key length, key, value length, value
+         */
+        int getEncodedSize() {
+            return 1 + 4 + keyBytes.length + 4 + ((null == value) ? 0 : value.length);
+        }
+    }
+
+    private final List<Operation> operations = new ArrayList<>();
+    private final SettableFuture<Void> commitFuture = SettableFuture.create();
+    private boolean submitted = false;
+    private int encodedSize = 4;
+
+    public void put(String key, byte[] value) {
+        if (null == value) {
+            throw new IllegalArgumentException("Null value of key: " + key);
+        }
+        addOperation(new Operation(OP_PUT, key, value));
+    }
+
+    public void delete(String key) {
+        addOperation(new Operation(OP_DELETE, key, null));
+    }
+
+    void clear() {
+        addOperation(new Operation(OP_CLEAR, "", null));
+    }
+
+    private void addOperation(Operation operation) {
+        if (submitted) {
+            throw new IllegalStateException("Transaction has been already submitted");
+        }
+        operations.add(operation);
+        encodedSize += operation.getEncodedSize();
+    }
+
+    List<Operation> getOperations() {
+        return Collections.unmodifiableList(operations);
+    }
+
+    public int getNumOperations() {
+        return operations.size();
+    }
+
+    /**
+     * @return number of bytes of the encoded record body: number of operations and the operations
+     */
+    int getEncodedSize() {
+        return encodedSize;
+    }
+
+    boolean isSubmitted() {
+        return submitted;
+    }
+
+    void setSubmitted() {
+        submitted = true;
+    }
+
+    /**
+     * @return future completed when the transaction is written to the log and visible to the readers
+     */
+    public ListenableFuture<Void> getCommitFuture() {
+        return commitFuture;
+    }
+
+    void commitSucceeded() {
+        commitFuture.set(null);
+    }
+
+    void commitFailed(Throwable cause) {
+        commitFuture.setException(cause);
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2m.persistence.logstore.write;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.Map;
+import org.opendaylight.iotdm.onem2m.core.database.dao.DaoResourceTreeWriter;
+import org.opendaylight.iotdm.onem2m.core.rest.utils.RequestPrimitive;
+import org.opendaylight.iotdm.onem2m.persistence.logstore.LogStoreDaoResourceTreeFactory;
+import org.opendaylight.iotdm.onem2m.persistence.logstore.LogStoreResourceTree;
+import org.opendaylight.iotdm.onem2m.persistence.logstore.store.LogStore;
+import org.opendaylight.iotdm.onem2m.persistence.logstore.store.LogStoreTransaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the resource tree into the LogStore. The operations of the transaction started by the caller are
+ * committed atomically when the transaction is submitted, the operations without transaction are committed
+ * immediately in their own transaction.
+ */
+public class LogStoreResourceTreeWriter implements DaoResourceTreeWriter {
+    private final Logger LOG = LoggerFactory.getLogger(LogStoreResourceTreeWriter.class);
+    private final LogStoreDaoResourceTreeFactory factory;
+    private final LogStoreResourceTree resourceTree;
+    private final LogStore store;
+
+    public LogStoreResourceTreeWriter(LogStoreDaoResourceTreeFactory factory, LogStoreResourceTree resourceTree) {
+        this.factory = factory;
+        this.resourceTree = resourceTree;
+        this.store = resourceTree.getStore();
+    }
+
+    public void finalize() throws Throwable {
+        super.finalize();
+    }
+
+    /**
+     * Returns the transaction the write operations are added to. Operations of the null transaction
+     * are committed immediately in their own transaction.
+     *
+     * @param transaction transaction passed by the caller
+     * @return the LogStore transaction or null if the transaction is not LogStore transaction
+     */
+    private LogStoreTransaction getTransaction(Object transaction) {
+        if (null == transaction) {
+            return new LogStoreTransaction();
+        }
+        if (transaction instanceof LogStoreTransaction) {
+            return (LogStoreTransaction) transaction;
+        }
+        LOG.error("Invalid transaction type: {}", transaction.getClass().getName());
+        return null;
+    }
+
+    /**
+     * Commits the standalone transaction and waits for the result. Transactions started by the caller
+     * are committed by the submitTransaction() or endTransaction().
+     */
+    private boolean commitStandalone(Object transaction, LogStoreTransaction logStoreTransaction) {
+        if (null != transaction) {
+            return true;
+        }
+        return store.commit(logStoreTransaction);
+    }
+
+    @Override
+    public String generateResourceId(String parentResourceId,
+                                     Integer resourceType,
+                                     Integer iotdmInstance) {
+
+        return factory.generateResourceId(parentResourceId, resourceType, iotdmInstance);
+    }
+
+    @Override
+    public boolean createCseByName(String name, String resourceId) {
+        LogStoreTransaction transaction = new LogStoreTransaction();
+        transaction.put(LogStoreResourceTree.cseKey(name), LogStoreResourceTree.encodeString(resourceId));
+        return store.commit(transaction);
+    }
+
+    @Override
+    public boolean createResource(Object transaction, RequestPrimitive onem2mRequest, String parentResourceId,
+                                  Integer resourceType) {
+        LogStoreTransaction logStoreTransaction = getTransaction(transaction);
+        if (null == logStoreTransaction) {
+            return false;
+        }
+
+        try {
+            String resourceId = onem2mRequest.getResourceId();
+            String jsonContent = onem2mRequest.getJsonResourceContentString();
+            logStoreTransaction.put(LogStoreResourceTree.resourceKey(resourceId),
+                                    LogStoreResourceTree.encodeResource(parentResourceId,
+                                                                        onem2mRequest.getResourceName(),
+                                                                        resourceType.toString(),
+                                                                        onem2mRequest.getParentTargetUri()));
+            logStoreTransaction.put(LogStoreResourceTree.contentKey(resourceId),
+                                    LogStoreResourceTree.encodeString(jsonContent));
+            logStoreTransaction.put(LogStoreResourceTree.childKey(parentResourceId, onem2mRequest.getResourceName()),
+                                    LogStoreResourceTree.encodeString(resourceId));
+        } catch (Exception e) {
+            LOG.error("Exception {}", e.getMessage());
+            return false;
+        }
+        return commitStandalone(transaction, logStoreTransaction);
+    }
+
+    @Override
+    public boolean updateJsonResourceContentString(Object transaction, String resourceId, String jsonResourceContent) {
+        LogStoreTransaction logStoreTransaction = getTransaction(transaction);
+        if (null == logStoreTransaction) {
+            return false;
+        }
+
+        try {
+            logStoreTransaction.put(LogStoreResourceTree.contentKey(resourceId),
+                                    LogStoreResourceTree.encodeString(jsonResourceContent));
+        } catch (Exception e) {
+            LOG.error("Exception {}", e.getMessage());
+            return false;
+        }
+        return commitStandalone(transaction, logStoreTransaction);
+    }
+
+    @Override
+    public boolean moveParentChildLink(String resourceId, String childResourceName,
+                                       String oldPrentResourceId, String newParentResourceId) {
+        LogStoreTransaction transaction = new LogStoreTransaction();
+        transaction.delete(LogStoreResourceTree.childKey(oldPrentResourceId, childResourceName));
+        transaction.put(LogStoreResourceTree.childKey(newParentResourceId, childResourceName),
+                        LogStoreResourceTree.encodeString(resourceId));
+        return store.commit(transaction);
+    }
+
+    @Override
+    public boolean deleteResource(Object transaction, String resourceId, String parentResourceId, String resourceName) {
+        LogStoreTransaction logStoreTransaction = getTransaction(transaction);
+        if (null == logStoreTransaction) {
+            return false;
+        }
+
+        try {
+            // the parent-child list of the resource is deleted with the resource
+            Map<String, String> children = resourceTree.getChildren(resourceId);
+            if (null != children) {
+                for (String childName : children.keySet()) {
+                    logStoreTransaction.delete(LogStoreResourceTree.childKey(resourceId, childName));
+                }
+            }
+            logStoreTransaction.delete(LogStoreResourceTree.resourceKey(resourceId));
+            logStoreTransaction.delete(LogStoreResourceTree.contentKey(resourceId));
+            logStoreTransaction.delete(LogStoreResourceTree.childKey(parentResourceId, resourceName));
+        } catch (Exception e) {
+            LOG.error("Exception {}", e.getMessage());
+            return false;
+        }
+        return commitStandalone(transaction, logStoreTransaction);
+    }
+
+    @Override
+    public boolean createAeIdToResourceIdMapping(String cseBaseName,
+                                                 String aeId, String aeResourceId) {
+        LogStoreTransaction transaction = new LogStoreTransaction();
+        transaction.put(LogStoreResourceTree.aeIdKey(cseBaseName, aeId),
+                        LogStoreResourceTree.encodeString(aeResourceId));
+        return store.commit(transaction);
+    }
+
+    @Override
+    public boolean deleteAeIdToResourceIdMapping(String cseBaseName, String aeId) {
+        LogStoreTransaction transaction = new LogStoreTransaction();
+        transaction.delete(LogStoreResourceTree.aeIdKey(cseBaseName, aeId));
+        return store.commit(transaction);
+    }
+
+    @Override
+    public boolean createRemoteCseIdToResourceIdMapping(String cseBaseName,
+                                                        String remoteCseCseId, String remoteCseResourceId) {
+        LogStoreTransaction transaction = new LogStoreTransaction();
+        transaction.put(LogStoreResourceTree.remoteCseIdKey(cseBaseName, remoteCseCseId),
+                        LogStoreResourceTree.encodeString(remoteCseResourceId));
+        return store.commit(transaction);
+    }
+
+    @Override
+    public boolean deleteRemoteCseIdToResourceIdMapping(String cseBaseName, String remoteCseCseId) {
+        LogStoreTransaction transaction = new LogStoreTransaction();
+        transaction.delete(LogStoreResourceTree.remoteCseIdKey(cseBaseName, remoteCseCseId));
+        return store.commit(transaction);
+    }
+
+    @Override
+    public void reInitializeDatastore() {
+        store.clear();
+        factory.initSystemStartIds();
+    }
+
+    @Override
+    public boolean writeSystemStartId(int systemStartId) {
+        LogStoreTransaction transaction = new LogStoreTransaction();
+        transaction.put(LogStoreResourceTree.systemStartIdKey(),
+                        LogStoreResourceTree.encodeString(Integer.toString(systemStartId)));
+        return store.commit(transaction);
+    }
+
+    @Override
+    public void close() {
+        // the store is shared by all writers and it's closed by the factory
+    }
+
+    @Override
+    public Object startTransaction() {
+        return new LogStoreTransaction();
+    }
+
+    @Override
+    public ListenableFuture<Void> submitTransaction(Object transaction) {
+        if (null == transaction) {
+            return Futures.immediateFuture(null);
+        }
+        LogStoreTransaction logStoreTransaction = getTransaction(transaction);
+        if (null == logStoreTransaction) {
+            return Futures.immediateFailedFuture(
+                    new IllegalArgumentException("Invalid transaction type: " + transaction.getClass().getName()));
+        }
+        return store.submit(logStoreTransaction);
+    }
+
+    @Override
+    public boolean endTransaction(Object transaction) {
+        if (null == transaction) {
+            return true;
+        }
+        LogStoreTransaction logStoreTransaction = getTransaction(transaction);
+        if (null == logStoreTransaction) {
+            return false;
+        }
+        return store.commit(logStoreTransaction);
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2m.persistence.logstore.store;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LogStoreTest {
+    private static final long MAX_SEGMENT_SIZE = 1024 * 1024;
+    // the garbage share never reaches it, the compaction runs only when the test asks for it
+    private static final int NO_COMPACTION = 101;
+
+    private static final LogStoreListener NO_LISTENER = new LogStoreListener() {
+        @Override
+        public void onPut(String key, byte[] value) {
+        }
+
+        @Override
+        public void onDelete(String key) {
+        }
+
+        @Override
+        public void onClear() {
+        }
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LogStore store;
+
+    private LogStore open(long maxSegmentSize, int compactionThresholdPercent) throws IOException {
+        if (null != store) {
+            store.close();
+        }
+        store = new LogStore(folder.getRoot().toPath(), maxSegmentSize, true, 64, 100,
+                             compactionThresholdPercent, NO_LISTENER);
+        return store;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String value(LogStore store, String key) {
+        byte[] value = store.get(key);
+        return (null == value) ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static boolean put(LogStore store, String key, String value) {
+        LogStoreTransaction transaction = new LogStoreTransaction();
+        transaction.put(key, bytes(value));
+        return store.commit(transaction);
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder.getRoot().toPath(),
+                                                                     "*" + LogStoreSegment.SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                if (Files.size(path) > 0) {
+                    files.add(path);
+                }
+            }
+        }
+        files.sort(null);
+        return files;
+    }
+
+    @After
+    public void tearDown() {
+        if (null != store) {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testTornTailRecordIsCutOff() throws Exception {
+        open(MAX_SEGMENT_SIZE, NO_COMPACTION);
+        assertTrue(put(store, "a", "value-a"));
+        assertTrue(put(store, "b", "value-b"));
+        store.close();
+        store = null;
+
+        // crash in the middle of the append of the last record
+        List<Path> files = segmentFiles();
+        assertEquals(1, files.size());
+        Path segment = files.get(0);
+        long size = Files.size(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 3);
+        }
+
+        open(MAX_SEGMENT_SIZE, NO_COMPACTION);
+        assertEquals("value-a", value(store, "a"));
+        assertNull(store.get("b"));
+        assertEquals(1, store.getNumKeys());
+        assertTrue(Files.size(segment) < size - 3);
+
+        // the writes continue after the recovery and survive the next one
+        assertTrue(put(store, "c", "value-c"));
+        open(MAX_SEGMENT_SIZE, NO_COMPACTION);
+        assertEquals("value-a", value(store, "a"));
+        assertNull(store.get("b"));
+        assertEquals("value-c", value(store, "c"));
+    }
+
+    @Test
+    public void testRecordWithCrcMismatchIsCutOff() throws Exception {
+        open(MAX_SEGMENT_SIZE, NO_COMPACTION);
+        assertTrue(put(store, "a", "value-a"));
+        assertTrue(put(store, "b", "value-b"));
+        store.close();
+        store = null;
+
+        // flip the last byte of the value of b, the length of the record stays valid
+        Path segment = segmentFiles().get(0);
+        long size = Files.size(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, size - 1);
+            last.put(0, (byte) (last.get(0) ^ 0xff));
+            last.rewind();
+            channel.write(last, size - 1);
+        }
+
+        open(MAX_SEGMENT_SIZE, NO_COMPACTION);
+        assertEquals("value-a", value(store, "a"));
+        assertFalse(store.contains("b"));
+        assertEquals(1, store.getNumKeys());
+    }
+
+    @Test
+    public void testCompactionKeepsLatestValues() throws Exception {
+        int numKeys = 10;
+        int numRounds = 20;
+        open(512, NO_COMPACTION);
+        for (int round = 0; round < numRounds; round++) {
+            for (int i = 0; i < numKeys; i++) {
+                assertTrue(put(store, "key-" + i, String.format("%064d", round)));
+            }
+        }
+        LogStoreTransaction delete = new LogStoreTransaction();
+        delete.delete("key-0");
+        assertTrue(store.commit(delete));
+        int numSegmentsBefore = segmentFiles().size();
+        assertTrue(numSegmentsBefore > 10);
+
+        // the compaction scheduled by the constructor and this one are serialized, the segments are compacted
+        // when compact() returns, whichever of them did it
+        open(512, 50);
+        store.compact();
+        assertFalse(store.compact());
+        int numSegmentsAfter = segmentFiles().size();
+        assertTrue("segments before: " + numSegmentsBefore + ", after: " + numSegmentsAfter,
+                   numSegmentsAfter < numSegmentsBefore / 4);
+
+        String latest = String.format("%064d", numRounds - 1);
+        assertNull(store.get("key-0"));
+        for (int i = 1; i < numKeys; i++) {
+            assertEquals(latest, value(store, "key-" + i));
+        }
+
+        // the compacted segments are replayed with the same result
+        open(512, NO_COMPACTION);
+        assertEquals(numKeys - 1, store.getNumKeys());
+        assertFalse(store.contains("key-0"));
+        for (int i = 1; i < numKeys; i++) {
+            assertEquals(latest, value(store, "key-" + i));
+        }
+    }
+
+    @Test
+    public void testCloseCompletesAllSubmittedTransactions() throws Exception {
+        open(MAX_SEGMENT_SIZE, NO_COMPACTION);
+        List<ListenableFuture<Void>> futures = new ArrayList<>();
+        Thread submitter = new Thread(() -> {
+            for (int i = 0; i < 10000; i++) {
+                LogStoreTransaction transaction = new LogStoreTransaction();
+                transaction.put("key-" + i, bytes("value-" + i));
+                synchronized (futures) {
+                    futures.add(store.submit(transaction));
+                }
+            }
+        });
+        submitter.start();
+        Thread.sleep(5);
+        store.close();
+        submitter.join();
+
+        // each transaction is either committed or failed, none of them is left in the queue
+        int numCommitted = 0;
+        for (ListenableFuture<Void> future : futures) {
+            try {
+                future.get(10, TimeUnit.SECONDS);
+                numCommitted++;
+            } catch (ExecutionException e) {
+                assertNotNull(e.getCause());
+            }
+        }
+
+        open(MAX_SEGMENT_SIZE, NO_COMPACTION);
+        assertEquals(numCommitted, store.getNumKeys());
+    }
+}
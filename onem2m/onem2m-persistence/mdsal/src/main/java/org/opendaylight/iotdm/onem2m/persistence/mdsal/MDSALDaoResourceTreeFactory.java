@@ -7,6 +7,10 @@
  */
 package org.opendaylight.iotdm.onem2m.persistence.mdsal;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.opendaylight.controller.md.sal.binding.api.DataBroker;
 import org.opendaylight.iotdm.onem2m.core.Onem2m;
@@ -16,6 +20,10 @@ import org.opendaylight.iotdm.onem2m.core.database.dao.factory.DaoResourceTreeFa
 import org.opendaylight.iotdm.onem2m.persistence.mdsal.read.MDSALResourceTreeReader;
 import org.opendaylight.iotdm.onem2m.persistence.mdsal.write.MDSALResourceTreeWriter;
 import org.opendaylight.iotdm.onem2m.persistence.mdsal.write.MDSALTransactionWriter;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.Onem2mCseList;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.cse.list.Onem2mCse;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.onem2m.persistence.mdsal.rev170601.Onem2mPersistenceMdsalConfig;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.onem2m.persistence.mdsal.rev170601.onem2m.persistence.mdsal.write.config.WriteConfig;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,17 +43,79 @@ public class MDSALDaoResourceTreeFactory implements DaoResourceTreeFactory {
     private static final int IDRADIX = 36;
     private static final int IDSHARDPOSITION = 0;
 
+    private static final int MAX_SHARDS = IDRADIX; // shard is encoded as one base-36 digit
+    private static final int DEFAULT_NUM_SHARDS = 4;
+    private static final int DEFAULT_MAX_BATCH_SIZE = 256;
+    private static final long DEFAULT_MAX_LINGER_MICROS = 500;
+
     private DataBroker dataBroker;
-    private int numShards = 1;
+    private int numShards = DEFAULT_NUM_SHARDS;
+    // group commit of the writes of each shard, shared by all writers
+    private final List<MDSALTransactionWriter> transactionWriters = new ArrayList<>();
+    // the children of the cseBases are spread over the shards, the other resources inherit the parent's shard
+    private final Set<String> cseBaseResourceIds = ConcurrentHashMap.newKeySet();
 
-    public MDSALDaoResourceTreeFactory(DataBroker dataBroker) {
+    public MDSALDaoResourceTreeFactory(DataBroker dataBroker, Onem2mPersistenceMdsalConfig config) {
         this.dataBroker = dataBroker;
+
+        if (null != config && null != config.getNumShards()) {
+            numShards = config.getNumShards();
+        }
+        if (numShards < 1 || numShards > MAX_SHARDS) {
+            LOG.error("Invalid number of shards: {}, using: {}", numShards, DEFAULT_NUM_SHARDS);
+            numShards = DEFAULT_NUM_SHARDS;
+        }
+
+        int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+        long maxLingerMicros = DEFAULT_MAX_LINGER_MICROS;
+        WriteConfig writeConfig = (null != config) ? config.getWriteConfig() : null;
+        if (null != writeConfig) {
+            if (null != writeConfig.getMaxBatchSize()) {
+                maxBatchSize = writeConfig.getMaxBatchSize();
+            }
+            if (null != writeConfig.getMaxLingerMicros()) {
+                maxLingerMicros = writeConfig.getMaxLingerMicros();
+            }
+        }
+        for (int shard = 0; shard < numShards; shard++) {
+            transactionWriters.add(new MDSALTransactionWriter(dataBroker, shard, maxBatchSize, maxLingerMicros));
+        }
+        boolean resetOnStartup = null == config || !Boolean.FALSE.equals(config.isResetOnStartup());
+        LOG.info("MDSALDaoResourceTreeFactory: numShards: {}, resetOnStartup: {}", numShards, resetOnStartup);
+
+        if (resetOnStartup) {
+            new MDSALResourceTreeWriter(this, transactionWriters).initDataStore();
+        }
         initSystemStartIds();
+        loadCseBaseResourceIds();
+    }
+
+    private void loadCseBaseResourceIds() {
+        Onem2mCseList cseList = this.getDaoResourceTreeReader().retrieveFullCseList();
+        if (null == cseList || null == cseList.getOnem2mCse()) {
+            return;
+        }
+        for (Onem2mCse cse : cseList.getOnem2mCse()) {
+            cseBaseResourceIds.add(cse.getResourceId());
+        }
+    }
+
+    /**
+     * Records the resourceId of a cseBase, its children are spread over the shards.
+     *
+     * @param resourceId resourceId of the cseBase
+     */
+    public void addCseBase(String resourceId) {
+        cseBaseResourceIds.add(resourceId);
+    }
+
+    public void clearCseBases() {
+        cseBaseResourceIds.clear();
     }
 
     @Override
     public DaoResourceTreeWriter getDaoResourceTreeWriter() {
-        return new MDSALResourceTreeWriter(this, new MDSALTransactionWriter(this, dataBroker));
+        return new MDSALResourceTreeWriter(this, transactionWriters);
     }
 
     @Override
@@ -58,6 +128,7 @@ public class MDSALDaoResourceTreeFactory implements DaoResourceTreeFactory {
 
     @Override
     public void close() {
+        transactionWriters.forEach(MDSALTransactionWriter::close);
     }
 
     public void initSystemStartIds() {
@@ -73,30 +144,28 @@ public class MDSALDaoResourceTreeFactory implements DaoResourceTreeFactory {
         int baseResourceId = nextId.incrementAndGet();
         StringBuilder builder = new StringBuilder();
 
-        switch(resourceType) {
-            case Onem2m.ResourceType.CONTENT_INSTANCE:
-                // take the shard of the parent as all content instances for a container goto the same shard
-                builder
-                    .append(getShardFromResourceId(parentResourceId))
-                    .append(IDDELIMITER);
-                break;
-
-            case Onem2m.ResourceType.CSE_BASE:
-                // just use + with string constants
-                builder.append("0" + IDDELIMITER);
-                break;
-
-            default:
-                int shard = baseResourceId % numShards;
-                String b36ShardId = Integer.toString(shard, IDRADIX);
-                if (b36ShardId.length() != 1) {
-                    LOG.error("generateResourceId: max shards exceeded");
-                    return "0";
-                }
-
-                builder
-                    .append(b36ShardId)
-                    .append(IDDELIMITER);
+        if (Onem2m.ResourceType.CSE_BASE == resourceType) {
+            // just use + with string constants
+            builder.append("0" + IDDELIMITER);
+        } else if (null == parentResourceId || cseBaseResourceIds.contains(parentResourceId) ||
+                   !parentResourceId.matches(IDREGEX)) {
+            // the children of the cseBase (e.g. the AEs of the devices) are spread over the shards
+            int shard = baseResourceId % numShards;
+            String b36ShardId = Integer.toString(shard, IDRADIX);
+            if (b36ShardId.length() != 1) {
+                LOG.error("generateResourceId: max shards exceeded");
+                return "0";
+            }
+
+            builder
+                .append(b36ShardId)
+                .append(IDDELIMITER);
+        } else {
+            // the other resources take the shard of the parent, so the resource, its parent-child list and
+            // its link in the parent's list are written through the same shard and kept in order
+            builder
+                .append(Integer.toString(getShardFromResourceId(parentResourceId), IDRADIX))
+                .append(IDDELIMITER);
         }
 
         builder
@@ -116,4 +185,23 @@ public class MDSALDaoResourceTreeFactory implements DaoResourceTreeFactory {
         }
         return (int) Integer.valueOf(resourceId.split(IDDELIMITER)[IDSHARDPOSITION], IDRADIX);
     }
+
+    /**
+     * Returns the shard the writes of the resource are committed through. The system resources which
+     * don't have the generated resourceId (e.g. the delete parent) belong to shard 0. Resources created
+     * with a bigger number of shards are mapped to the current shards.
+     *
+     * @param resourceId the resource id
+     * @return shard index in range 0..numShards-1
+     */
+    public int getShard(String resourceId) {
+        if (null == resourceId || !resourceId.contains(IDDELIMITER)) {
+            return 0;
+        }
+        return getShardFromResourceId(resourceId) % numShards;
+    }
+
+    public int getNumShards() {
+        return numShards;
+    }
 }
@@ -12,6 +12,7 @@ package org.opendaylight.iotdm.onem2m.persistence.mdsal;
 import org.opendaylight.controller.md.sal.binding.api.DataBroker;
 import org.opendaylight.iotdm.onem2m.core.Onem2mCoreProvider;
 import org.opendaylight.iotdm.onem2m.core.database.dao.factory.DaoResourceTreeFactoryRegistry;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.onem2m.persistence.mdsal.rev170601.Onem2mPersistenceMdsalConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -20,15 +21,18 @@ public class Onem2mPersistenceMdsalProvider implements AutoCloseable {
     private static final Logger LOG = LoggerFactory.getLogger(Onem2mPersistenceMdsalProvider.class);
     private final DataBroker dataBroker;
     private final DaoResourceTreeFactoryRegistry daoFactoryRegistry;
+    private final Onem2mPersistenceMdsalConfig config;
     private MDSALDaoResourceTreeFactory factory;
 
-    public Onem2mPersistenceMdsalProvider(DataBroker dataBroker, DaoResourceTreeFactoryRegistry daoFactoryRegistry) {
+    public Onem2mPersistenceMdsalProvider(DataBroker dataBroker, DaoResourceTreeFactoryRegistry daoFactoryRegistry,
+                                          Onem2mPersistenceMdsalConfig config) {
         this.dataBroker = dataBroker;
         this.daoFactoryRegistry = daoFactoryRegistry;
+        this.config = config;
     }
 
     public void init() {
-        this.factory = new MDSALDaoResourceTreeFactory(dataBroker);
+        this.factory = new MDSALDaoResourceTreeFactory(dataBroker, config);
         daoFactoryRegistry.registerDaoPlugin(factory);
         LOG.info("Onem2mPersistenceMdsalProvider Session Initiated");
     }
@@ -7,8 +7,8 @@
  */
 package org.opendaylight.iotdm.onem2m.persistence.mdsal.write;
 
-import com.google.common.collect.Lists;
-import com.google.common.util.concurrent.Monitor;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
 import org.opendaylight.iotdm.onem2m.core.database.dao.DaoResourceTreeWriter;
 import org.opendaylight.iotdm.onem2m.core.rest.utils.RequestPrimitive;
@@ -46,7 +46,6 @@ import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -56,29 +55,25 @@ import java.util.List;
  */
 public class MDSALResourceTreeWriter implements DaoResourceTreeWriter {
     private final Logger LOG = LoggerFactory.getLogger(MDSALResourceTreeWriter.class);
-    private MDSALTransactionWriter writer;
+    private List<MDSALTransactionWriter> writers;
     private LogicalDatastoreType dsType = LogicalDatastoreType.CONFIGURATION;
     private MDSALDaoResourceTreeFactory factory;
-    private List<Monitor> crudMonitor = Lists.newArrayList();
 
-    private int numShards;
-
-    public MDSALResourceTreeWriter(MDSALDaoResourceTreeFactory factory, MDSALTransactionWriter writer) {
-        this.writer = writer;
+    public MDSALResourceTreeWriter(MDSALDaoResourceTreeFactory factory, List<MDSALTransactionWriter> writers) {
+        this.writers = writers;
         this.factory = factory;
-        numShards = 1;
-        for (int i = 0; i < numShards; i++)  {
-            crudMonitor.add(i, new Monitor());
-        }
-        initDataStore();
     }
 
     public void finalize() throws Throwable {
         super.finalize();
     }
 
-    private void initDataStore() {
-        writer.reload();
+    /**
+     * Overwrites the cseList and the resource tree with empty lists, it's called by the factory at startup
+     * if the stored resource tree is not kept.
+     */
+    public void initDataStore() {
+        MDSALTransaction transaction = new MDSALTransaction();
 
         // overwrite the cseList with empty info
         InstanceIdentifier<Onem2mCseList> iidCseList = InstanceIdentifier.builder(Onem2mCseList.class).build();
@@ -88,10 +83,66 @@ public class MDSALResourceTreeWriter implements DaoResourceTreeWriter {
         InstanceIdentifier<Onem2mResourceTree> iidTreeList = InstanceIdentifier.builder(Onem2mResourceTree.class).build();
         Onem2mResourceTree tree = new Onem2mResourceTreeBuilder().setOnem2mResource(Collections.<Onem2mResource>emptyList()).build();
 
-        writer.update(iidCseList, cseList, LogicalDatastoreType.CONFIGURATION);
-        writer.update(iidTreeList, tree, LogicalDatastoreType.CONFIGURATION);
+        transaction.update(iidCseList, cseList, LogicalDatastoreType.CONFIGURATION);
+        transaction.update(iidTreeList, tree, LogicalDatastoreType.CONFIGURATION);
+
+        commit(transaction);
+        factory.clearCseBases();
+    }
+
+    /**
+     * Returns the transaction the write operations are added to. Operations of the null transaction
+     * are committed immediately in their own transaction.
+     *
+     * @param transaction transaction passed by the caller
+     * @return the MDSAL transaction or null if the transaction is not MDSAL transaction
+     */
+    private MDSALTransaction getTransaction(Object transaction) {
+        if (null == transaction) {
+            return new MDSALTransaction();
+        }
+        if (transaction instanceof MDSALTransaction) {
+            return (MDSALTransaction) transaction;
+        }
+        LOG.error("Invalid transaction type: {}", transaction.getClass().getName());
+        return null;
+    }
+
+    /**
+     * Binds the transaction to the shard of the resource. All writes of a resource, of its parent-child list
+     * and of its link in the parent's list go through the shard of the resource. The resources take the shard
+     * of their parent (except the children of the cseBase), so the links created in a parent-child list are
+     * committed through the same shard as the list itself.
+     *
+     * @return false if the shard can't be determined from the resource id
+     */
+    private boolean bindShard(MDSALTransaction transaction, String resourceId) {
+        try {
+            transaction.bindShard(factory.getShard(resourceId));
+        } catch (IllegalArgumentException e) {
+            LOG.error("Can't get shard number: {}", e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    private ListenableFuture<Void> submit(MDSALTransaction transaction) {
+        return writers.get(transaction.getShard()).submit(transaction);
+    }
+
+    private boolean commit(MDSALTransaction transaction) {
+        return writers.get(transaction.getShard()).commit(transaction);
+    }
 
-        writer.close();
+    /**
+     * Commits the standalone transaction and waits for the result. Transactions started by the caller
+     * are committed by the submitTransaction() or endTransaction().
+     */
+    private boolean commitStandalone(Object transaction, MDSALTransaction mdsalTransaction) {
+        if (null != transaction) {
+            return true;
+        }
+        return commit(mdsalTransaction);
     }
 
     /**
@@ -115,10 +166,8 @@ public class MDSALResourceTreeWriter implements DaoResourceTreeWriter {
 
     @Override
     public boolean createCseByName(String name, String resourceId) {
-        boolean status = true;
-        crudMonitor.get(0).enter();
+        MDSALTransaction transaction = new MDSALTransaction();
         try {
-            writer.reload();
             Onem2mCse onem2mCse = new Onem2mCseBuilder()
                     .setKey(new Onem2mCseKey(name))
                     .setName(name)
@@ -129,34 +178,33 @@ public class MDSALResourceTreeWriter implements DaoResourceTreeWriter {
             InstanceIdentifier<Onem2mCse> iid = InstanceIdentifier.create(Onem2mCseList.class)
                     .child(Onem2mCse.class, key);
 
-            writer.create(iid, onem2mCse, dsType);
-
+            transaction.create(iid, onem2mCse, dsType);
         } catch (Exception e) {
             LOG.error("exception : {}", e.getMessage());
-            status = false;
-        } finally {
-            writer.close();
-            crudMonitor.get(0).leave();
-            return status;
+            return false;
+        }
+        if (!commit(transaction)) {
+            return false;
         }
+        factory.addCseBase(resourceId);
+        return true;
     }
 
     @Override
     public boolean createResource(Object transaction, RequestPrimitive onem2mRequest, String parentResourceId,
                                   Integer resourceType) {
-        int shard = -1;
-        try {
-            shard = factory.getShardFromResourceId(onem2mRequest.getResourceId()) % numShards;
-        } catch(IllegalArgumentException e) {
-            LOG.error("Can't get shard number: {}", e.getMessage());
+        MDSALTransaction mdsalTransaction = getTransaction(transaction);
+        if (null == mdsalTransaction) {
             return false;
         }
 
-        boolean status = true;
-        crudMonitor.get(shard).enter();
-        try {
-            writer.reload();
+        // the contentInstances have the shard of their container, this keeps the creates of the
+        // contentInstances and the updates of their container in order
+        if (!bindShard(mdsalTransaction, onem2mRequest.getResourceId())) {
+            return false;
+        }
 
+        try {
             /**
              * Initialize the resource
              */
@@ -176,7 +224,7 @@ public class MDSALResourceTreeWriter implements DaoResourceTreeWriter {
                     .child(Onem2mResource.class, onem2mResource.getKey());
 
 
-            writer.create(iid, onem2mResource, dsType);
+            mdsalTransaction.create(iid, onem2mResource, dsType);
 
             Onem2mParentChildListKey parentChildListKey = new Onem2mParentChildListKey(onem2mRequest.getResourceId());
             Onem2mParentChildList onem2mParentChildList = new Onem2mParentChildListBuilder()
@@ -188,35 +236,27 @@ public class MDSALResourceTreeWriter implements DaoResourceTreeWriter {
             InstanceIdentifier<Onem2mParentChildList> pciid = InstanceIdentifier.create(Onem2mResourceTree.class)
                     .child(Onem2mParentChildList.class, onem2mParentChildList.getKey());
 
-            writer.create(pciid, onem2mParentChildList, dsType);
+            // merged, the links of the children committed through another shard are not overwritten
+            mdsalTransaction.update(pciid, onem2mParentChildList, dsType);
 
-            createParentChildLink(parentResourceId, onem2mRequest.getResourceName(), onem2mRequest.getResourceId());
+            createParentChildLink(mdsalTransaction, parentResourceId,
+                                  onem2mRequest.getResourceName(), onem2mRequest.getResourceId());
 
         } catch (Exception e) {
             LOG.error("Exception {}", e.getMessage());
-            status = false;
-        } finally {
-            writer.close();
-            crudMonitor.get(shard).leave();
-            return status;
+            return false;
         }
+        return commitStandalone(transaction, mdsalTransaction);
     }
 
     @Override
     public boolean updateJsonResourceContentString(Object transaction, String resourceId, String jsonResourceContent) {
-        int shard = -1;
-        try {
-            shard = factory.getShardFromResourceId(resourceId) % numShards;
-        } catch(IllegalArgumentException e) {
-            LOG.error("Can't get shard number: {}", e.getMessage());
+        MDSALTransaction mdsalTransaction = getTransaction(transaction);
+        if (null == mdsalTransaction || !bindShard(mdsalTransaction, resourceId)) {
             return false;
         }
 
-        boolean status = true;
-        crudMonitor.get(shard).enter();
         try {
-            writer.reload();
-
             Onem2mResourceKey key = new Onem2mResourceKey(resourceId);
             Onem2mResource onem2mResource = new Onem2mResourceBuilder()
                     .setKey(key)
@@ -226,159 +266,94 @@ public class MDSALResourceTreeWriter implements DaoResourceTreeWriter {
             InstanceIdentifier<Onem2mResource> iid = InstanceIdentifier.create(Onem2mResourceTree.class)
                     .child(Onem2mResource.class, onem2mResource.getKey());
 
-            writer.update(iid, onem2mResource, dsType);
+            mdsalTransaction.update(iid, onem2mResource, dsType);
         } catch (Exception e) {
             LOG.error("Exception {}", e.getMessage());
-            status = false;
-        } finally {
-            writer.close();
-            crudMonitor.get(shard).leave();
-            return status;
+            return false;
         }
+        return commitStandalone(transaction, mdsalTransaction);
     }
 
     @Override
     public boolean moveParentChildLink(String resourceId, String childResourceName,
                                        String oldPrentResourceId, String newParentResourceId) {
-        int shard = -1;
-        try {
-            shard = factory.getShardFromResourceId(resourceId) % numShards;
-        } catch(IllegalArgumentException e) {
-            LOG.error("Can't get shard number: {}", e.getMessage());
+        MDSALTransaction transaction = new MDSALTransaction();
+        // the links of the resource are ordered with its create and delete
+        if (!bindShard(transaction, resourceId)) {
             return false;
         }
 
-        boolean status = true;
-        crudMonitor.get(shard).enter();
         try {
-            writer.reload();
-
-            removeParentChildLink(oldPrentResourceId, childResourceName);
-            createParentChildLink(newParentResourceId, childResourceName, resourceId);
-
+            removeParentChildLink(transaction, oldPrentResourceId, childResourceName);
+            createParentChildLink(transaction, newParentResourceId, childResourceName, resourceId);
         } catch (Exception e) {
             LOG.error("Exception {}", e.getMessage());
-            status = false;
-        } finally {
-            writer.close();
-            crudMonitor.get(shard).leave();
-            return status;
+            return false;
         }
+        return commit(transaction);
     }
 
-    private void createParentChildLink(String parentResourceId, String childName, String childResourceId) {
-//        int shard = factory.getShardFromResourceId(parentResourceId) % numShards;
-//        boolean status = true;
-//        crudMonitor.get(shard).enter();
-//        try {
-//            writer.reload();
-//
-//            Onem2mParentChild onem2mParentChild = new Onem2mParentChildBuilder()
-//                    .setKey(new Onem2mParentChildKey(childName))
-//                    .setName(childName)
-//                    .setResourceId(childResourceId)
-//                    .build();
-//
-//            InstanceIdentifier<Onem2mParentChild> iid = InstanceIdentifier.create(Onem2mResourceTree.class)
-//                    .child(Onem2mParentChildList.class, new Onem2mParentChildListKey(parentResourceId))
-//                    .child(Onem2mParentChild.class, onem2mParentChild.getKey());
-//
-//            writer.create(iid, onem2mParentChild, dsType);
-//        } catch (Exception e) {
-//            LOG.error("Exception {}", e.getMessage());
-//            status = false;
-//        } finally {
-//            writer.close();
-//            crudMonitor.get(shard).leave();
-//            return status;
-//        }
-
-            Onem2mParentChild onem2mParentChild = new Onem2mParentChildBuilder()
-                    .setKey(new Onem2mParentChildKey(childName))
-                    .setName(childName)
-                    .setResourceId(childResourceId)
-                    .build();
-
-            InstanceIdentifier<Onem2mParentChild> iid = InstanceIdentifier.create(Onem2mResourceTree.class)
-                    .child(Onem2mParentChildList.class, new Onem2mParentChildListKey(parentResourceId))
-                    .child(Onem2mParentChild.class, onem2mParentChild.getKey());
+    private void createParentChildLink(MDSALTransaction transaction, String parentResourceId,
+                                       String childName, String childResourceId) {
+        Onem2mParentChild onem2mParentChild = new Onem2mParentChildBuilder()
+                .setKey(new Onem2mParentChildKey(childName))
+                .setName(childName)
+                .setResourceId(childResourceId)
+                .build();
 
-            writer.create(iid, onem2mParentChild, dsType);
+        InstanceIdentifier<Onem2mParentChild> iid = InstanceIdentifier.create(Onem2mResourceTree.class)
+                .child(Onem2mParentChildList.class, new Onem2mParentChildListKey(parentResourceId))
+                .child(Onem2mParentChild.class, onem2mParentChild.getKey());
 
+        transaction.create(iid, onem2mParentChild, dsType);
     }
 
-    private void removeParentChildLink(String parentResourceId, String childResourceName) {
-//        int shard = factory.getShardFromResourceId(parentResourceId) % numShards;
-//        boolean status = true;
-//        crudMonitor.get(shard).enter();
-//        try {
-//            writer.reload();
-
-            Onem2mParentChildKey childKey = new Onem2mParentChildKey(childResourceName);
-            InstanceIdentifier<Onem2mParentChild> iid = InstanceIdentifier.create(Onem2mResourceTree.class)
-                    .child(Onem2mParentChildList.class, new Onem2mParentChildListKey(parentResourceId))
-                    .child(Onem2mParentChild.class, childKey);
-
-            writer.delete(iid, dsType);
-//        } catch (Exception e) {
-//            LOG.error("Exception {}", e.getMessage());
-//            status = false;
-//        } finally {
-//            writer.close();
-//            crudMonitor.get(shard).leave();
-//            return status;
-//        }
+    private void removeParentChildLink(MDSALTransaction transaction, String parentResourceId,
+                                       String childResourceName) {
+        Onem2mParentChildKey childKey = new Onem2mParentChildKey(childResourceName);
+        InstanceIdentifier<Onem2mParentChild> iid = InstanceIdentifier.create(Onem2mResourceTree.class)
+                .child(Onem2mParentChildList.class, new Onem2mParentChildListKey(parentResourceId))
+                .child(Onem2mParentChild.class, childKey);
+
+        transaction.delete(iid, dsType);
     }
 
     @Override
     public boolean deleteResource(Object transaction, String resourceId, String parentResourceId, String resourceName) {
-        int shard = -1;
-        try {
-            shard = factory.getShardFromResourceId(resourceId) % numShards;
-        } catch(IllegalArgumentException e) {
-            LOG.error("Can't get shard number: {}", e.getMessage());
+        MDSALTransaction mdsalTransaction = getTransaction(transaction);
+        if (null == mdsalTransaction || !bindShard(mdsalTransaction, resourceId)) {
             return false;
         }
 
-        boolean status = true;
-        crudMonitor.get(shard).enter();
         try {
-            writer.reload();
-
             Onem2mResourceKey key = new Onem2mResourceKey(resourceId);
             InstanceIdentifier<Onem2mResource> iid = InstanceIdentifier.create(Onem2mResourceTree.class)
                     .child(Onem2mResource.class, key);
 
 
-            writer.delete(iid, dsType);
+            mdsalTransaction.delete(iid, dsType);
 
             Onem2mParentChildListKey parentChildListKey = new Onem2mParentChildListKey(resourceId);
 
             InstanceIdentifier<Onem2mParentChildList> pciid = InstanceIdentifier.create(Onem2mResourceTree.class)
                     .child(Onem2mParentChildList.class, parentChildListKey);
 
-            writer.delete(pciid, dsType);
+            mdsalTransaction.delete(pciid, dsType);
 
-            removeParentChildLink(parentResourceId, resourceName);
+            removeParentChildLink(mdsalTransaction, parentResourceId, resourceName);
 
         } catch (Exception e) {
             LOG.error("Exception {}", e.getMessage());
-            status = false;
-        } finally {
-            writer.close();
-            crudMonitor.get(shard).leave();
-            return status;
+            return false;
         }
+        return commitStandalone(transaction, mdsalTransaction);
     }
 
     @Override
     public boolean createAeIdToResourceIdMapping(String cseBaseName,
                                                  String aeId, String aeResourceId) {
-        boolean status = true;
-        crudMonitor.get(0).enter();
+        MDSALTransaction transaction = new MDSALTransaction();
         try {
-            writer.reload();
-
             Onem2mRegisteredAeIds registeredAe = new Onem2mRegisteredAeIdsBuilder()
                                                          .setKey(new Onem2mRegisteredAeIdsKey(aeId))
                                                          .setRegisteredAeId(aeId)
@@ -390,47 +365,36 @@ public class MDSALResourceTreeWriter implements DaoResourceTreeWriter {
                             .child(Onem2mCse.class, new Onem2mCseKey(cseBaseName))
                             .child(Onem2mRegisteredAeIds.class, registeredAe.getKey());
 
-            writer.create(iid, registeredAe, dsType);
+            transaction.create(iid, registeredAe, dsType);
         } catch (Exception e) {
             LOG.error("Exception {}", e.getMessage());
-            status = false;
-        } finally {
-            writer.close();
-            crudMonitor.get(0).leave();
-            return status;
+            return false;
         }
+        return commit(transaction);
     }
 
     @Override
     public boolean deleteAeIdToResourceIdMapping(String cseBaseName, String aeId) {
-        boolean status = true;
-        crudMonitor.get(0).enter();
+        MDSALTransaction transaction = new MDSALTransaction();
         try {
-            writer.reload();
             InstanceIdentifier<Onem2mRegisteredAeIds> iid =
                     InstanceIdentifier.create(Onem2mCseList.class)
                         .child(Onem2mCse.class, new Onem2mCseKey(cseBaseName))
                         .child(Onem2mRegisteredAeIds.class, new Onem2mRegisteredAeIdsKey(aeId));
 
-            writer.delete(iid, dsType);
+            transaction.delete(iid, dsType);
         } catch (Exception e) {
             LOG.error("Exception {}", e.getMessage());
-            status = false;
-        } finally {
-            writer.close();
-            crudMonitor.get(0).leave();
-            return status;
+            return false;
         }
+        return commit(transaction);
     }
 
     @Override
     public boolean createRemoteCseIdToResourceIdMapping(String cseBaseName,
                                                         String remoteCseCseId, String remoteCseResourceId) {
-        boolean status = true;
-        crudMonitor.get(0).enter();
+        MDSALTransaction transaction = new MDSALTransaction();
         try {
-            writer.reload();
-
             Onem2mRegisteredRemoteCses registeredCse = new Onem2mRegisteredRemoteCsesBuilder()
                 .setRegisteredCseId(remoteCseCseId)
                 .setResourceId(remoteCseResourceId)
@@ -441,43 +405,34 @@ public class MDSALResourceTreeWriter implements DaoResourceTreeWriter {
                                   .child(Onem2mCse.class, new Onem2mCseKey(cseBaseName))
                                   .child(Onem2mRegisteredRemoteCses.class, registeredCse.getKey());
 
-            writer.create(iid, registeredCse, dsType);
+            transaction.create(iid, registeredCse, dsType);
         } catch (Exception e) {
             LOG.error("Exception {}", e.getMessage());
-            status = false;
-        } finally {
-            writer.close();
-            crudMonitor.get(0).leave();
-            return status;
+            return false;
         }
+        return commit(transaction);
     }
 
     @Override
     public boolean deleteRemoteCseIdToResourceIdMapping(String cseBaseName, String remoteCseCseId) {
-        boolean status = true;
-        crudMonitor.get(0).enter();
+        MDSALTransaction transaction = new MDSALTransaction();
         try {
-            writer.reload();
-
             InstanceIdentifier<Onem2mRegisteredRemoteCses> iid =
                 InstanceIdentifier.create(Onem2mCseList.class)
                           .child(Onem2mCse.class, new Onem2mCseKey(cseBaseName))
                           .child(Onem2mRegisteredRemoteCses.class, new Onem2mRegisteredRemoteCsesKey(remoteCseCseId));
 
-            writer.delete(iid, dsType);
+            transaction.delete(iid, dsType);
         } catch (Exception e) {
             LOG.error("Exception {}", e.getMessage());
-            status = false;
-        } finally {
-            writer.close();
-            crudMonitor.get(0).leave();
-            return status;
+            return false;
         }
+        return commit(transaction);
     }
 
     @Override
     public void reInitializeDatastore() {
-        writer.reload();
+        MDSALTransaction transaction = new MDSALTransaction();
 
         // overwrite the cseList with empty info
         InstanceIdentifier<Onem2mCseList> iidCseList = InstanceIdentifier.builder(Onem2mCseList.class).build();
@@ -487,11 +442,12 @@ public class MDSALResourceTreeWriter implements DaoResourceTreeWriter {
         InstanceIdentifier<Onem2mResourceTree> iidTreeList = InstanceIdentifier.builder(Onem2mResourceTree.class).build();
         Onem2mResourceTree tree = new Onem2mResourceTreeBuilder().setOnem2mResource(Collections.<Onem2mResource>emptyList()).build();
 
-        writer.create(iidCseList, cseList, LogicalDatastoreType.CONFIGURATION);
-        writer.create(iidCseList, cseList, LogicalDatastoreType.OPERATIONAL);
-        writer.create(iidTreeList, tree, LogicalDatastoreType.CONFIGURATION);
-        writer.create(iidTreeList, tree, LogicalDatastoreType.OPERATIONAL);
-        writer.close();
+        transaction.create(iidCseList, cseList, LogicalDatastoreType.CONFIGURATION);
+        transaction.create(iidCseList, cseList, LogicalDatastoreType.OPERATIONAL);
+        transaction.create(iidTreeList, tree, LogicalDatastoreType.CONFIGURATION);
+        transaction.create(iidTreeList, tree, LogicalDatastoreType.OPERATIONAL);
+        commit(transaction);
+        factory.clearCseBases();
 
         factory.initSystemStartIds();
 
@@ -499,40 +455,54 @@ public class MDSALResourceTreeWriter implements DaoResourceTreeWriter {
 
     @Override
     public boolean writeSystemStartId(int systemStartId) {
-        boolean status = true;
-        crudMonitor.get(0).enter();
+        MDSALTransaction transaction = new MDSALTransaction();
         try {
-            writer.reload();
-
             IotdmSpecificOperationalDataBuilder builder = new IotdmSpecificOperationalDataBuilder()
                 .setSystemStartId((long) systemStartId);
 
             InstanceIdentifier<IotdmSpecificOperationalData> iid =
                 InstanceIdentifier.builder(IotdmSpecificOperationalData.class).build();
 
-            writer.create(iid, builder.build(), dsType);
+            transaction.create(iid, builder.build(), dsType);
         } catch (Exception e) {
             LOG.error("Exception {}", e.getMessage());
-            status = false;
-        } finally {
-            writer.close();
-            crudMonitor.get(0).leave();
-            return status;
+            return false;
         }
+        return commit(transaction);
     }
 
     @Override
     public void close() {
-        writer.close();
+        // the transaction writers are shared by all writers and they are closed by the factory
     }
 
     @Override
     public Object startTransaction() {
-        return null;
+        return new MDSALTransaction();
+    }
+
+    @Override
+    public ListenableFuture<Void> submitTransaction(Object transaction) {
+        if (null == transaction) {
+            return Futures.immediateFuture(null);
+        }
+        MDSALTransaction mdsalTransaction = getTransaction(transaction);
+        if (null == mdsalTransaction) {
+            return Futures.immediateFailedFuture(
+                    new IllegalArgumentException("Invalid transaction type: " + transaction.getClass().getName()));
+        }
+        return submit(mdsalTransaction);
     }
 
     @Override
     public boolean endTransaction(Object transaction) {
-        return true;
+        if (null == transaction) {
+            return true;
+        }
+        MDSALTransaction mdsalTransaction = getTransaction(transaction);
+        if (null == mdsalTransaction) {
+            return false;
+        }
+        return commit(mdsalTransaction);
     }
 }
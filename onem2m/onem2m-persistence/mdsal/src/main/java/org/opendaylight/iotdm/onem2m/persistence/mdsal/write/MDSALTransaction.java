@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2m.persistence.mdsal.write;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
+import org.opendaylight.yangtools.yang.binding.DataObject;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+
+/**
+ * Transaction returned by the MDSALResourceTreeWriter.startTransaction(). The write operations of the
+ * transaction are only recorded here. They are committed all together (as part of one batch of the
+ * MDSALTransactionWriter) when the transaction is submitted, so e.g. the new resource, its parent-child
+ * link and the update of the parent resource are stored in the same datastore commit.
+ * All operations of the transaction are committed through the transaction writer of one shard, the shard is
+ * bound by the first operation of the transaction.
+ * The transaction is not thread safe, it is expected to be used by the thread processing the request.
+ */
+public class MDSALTransaction {
+    private static final int UNBOUND_SHARD = -1;
+
+    private final List<MDSALWriteOperation<?>> operations = new ArrayList<>();
+    private final SettableFuture<Void> commitFuture = SettableFuture.create();
+    private boolean submitted = false;
+    private int shard = UNBOUND_SHARD;
+
+    /**
+     * Binds the transaction to the shard if it's not bound yet.
+     *
+     * @param shard shard of the resource written by the next operation
+     */
+    void bindShard(int shard) {
+        if (UNBOUND_SHARD == this.shard) {
+            this.shard = shard;
+        }
+    }
+
+    /**
+     * @return shard the transaction is bound to, shard 0 is used by the unbound transactions
+     */
+    int getShard() {
+        return (UNBOUND_SHARD == shard) ? 0 : shard;
+    }
+
+    protected <U extends DataObject> void create(InstanceIdentifier<U> iid, U data,
+                                                 LogicalDatastoreType logicalDatastoreType) {
+        addOperation(new MDSALWriteOperation<>(MDSALWriteOperation.Type.CREATE, logicalDatastoreType, iid, data));
+    }
+
+    protected <U extends DataObject> void update(InstanceIdentifier<U> iid, U data,
+                                                 LogicalDatastoreType logicalDatastoreType) {
+        addOperation(new MDSALWriteOperation<>(MDSALWriteOperation.Type.UPDATE, logicalDatastoreType, iid, data));
+    }
+
+    protected <U extends DataObject> void delete(InstanceIdentifier<U> iid,
+                                                 LogicalDatastoreType logicalDatastoreType) {
+        addOperation(new MDSALWriteOperation<>(MDSALWriteOperation.Type.DELETE, logicalDatastoreType, iid, null));
+    }
+
+    private void addOperation(MDSALWriteOperation<?> operation) {
+        if (submitted) {
+            throw new IllegalStateException("Transaction has been already submitted");
+        }
+        operations.add(operation);
+    }
+
+    List<MDSALWriteOperation<?>> getOperations() {
+        return Collections.unmodifiableList(operations);
+    }
+
+    int getNumOperations() {
+        return operations.size();
+    }
+
+    boolean isSubmitted() {
+        return submitted;
+    }
+
+    void setSubmitted() {
+        submitted = true;
+    }
+
+    /**
+     * @return future completed when all operations of the transaction are committed into the datastore
+     */
+    public ListenableFuture<Void> getCommitFuture() {
+        return commitFuture;
+    }
+
+    void commitSucceeded() {
+        commitFuture.set(null);
+    }
+
+    void commitFailed(Throwable cause) {
+        commitFuture.setException(cause);
+    }
+}
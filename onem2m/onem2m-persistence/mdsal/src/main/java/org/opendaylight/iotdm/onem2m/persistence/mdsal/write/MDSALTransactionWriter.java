@@ -7,91 +7,247 @@
  */
 package org.opendaylight.iotdm.onem2m.persistence.mdsal.write;
 
+import com.google.common.util.concurrent.CheckedFuture;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.opendaylight.controller.md.sal.binding.api.BindingTransactionChain;
 import org.opendaylight.controller.md.sal.binding.api.DataBroker;
 import org.opendaylight.controller.md.sal.binding.api.WriteTransaction;
-import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
-import org.opendaylight.iotdm.onem2m.persistence.mdsal.MDSALDaoResourceTreeFactory;
-import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import org.opendaylight.controller.md.sal.common.api.data.AsyncTransaction;
+import org.opendaylight.controller.md.sal.common.api.data.TransactionChain;
+import org.opendaylight.controller.md.sal.common.api.data.TransactionChainListener;
+import org.opendaylight.controller.md.sal.common.api.data.TransactionCommitFailedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Created by gguliash on 4/19/16.
- * e-mail vinmesmiti@gmail.com; gguliash@cisco.com
+ * Group commit of the MDSAL transactions of one shard. Submitted transactions are queued and a single batching thread
+ * collects them into one write transaction until the batch has maxBatchSize operations or the linger time
+ * of the first transaction in the batch expires. Batches are submitted through the transaction chain
+ * without waiting for the previous commit, the chain keeps them in order. The number of outstanding
+ * commits is limited so the transactions accumulate into bigger batches while the datastore is busy.
  */
-public class MDSALTransactionWriter {
+public class MDSALTransactionWriter implements TransactionChainListener, AutoCloseable {
     private static final Logger LOG = LoggerFactory.getLogger(MDSALTransactionWriter.class);
-    private WriteTransaction writeTransaction = null;
-    private DataBroker broker;
-    private boolean isClosed = true;
-    private MDSALDaoResourceTreeFactory factory;
+    private static final int MAX_OUTSTANDING_COMMITS = 2;
+    private static final long POLL_TIMEOUT_MS = 100;
+    private static final long CLOSE_TIMEOUT_SEC = 10;
+    private static final long COMMIT_TIMEOUT_SEC = 30;
 
-    public MDSALTransactionWriter(MDSALDaoResourceTreeFactory factory, DataBroker broker) {
-        this.broker = broker;
-        this.factory = factory;
-    }
+    private final DataBroker broker;
+    private final int maxBatchSize;
+    private final long maxLingerNanos;
+    private final BlockingQueue<MDSALTransaction> queue = new LinkedBlockingQueue<>();
+    private final Semaphore outstandingCommits = new Semaphore(MAX_OUTSTANDING_COMMITS);
+    private final Thread batchThread;
+    private BindingTransactionChain chain;
+    // guards the running flag so no transaction is queued after close() has drained the queue
+    private final Object queueLock = new Object();
+    private volatile boolean running = true;
 
-    @Override
-    protected void finalize() throws Throwable {
-        super.finalize();
-        if (isClosed) return;
-        LOG.error("Why was not it closed");
-        close();
+    public MDSALTransactionWriter(DataBroker broker, int shard, int maxBatchSize, long maxLingerMicros) {
+        this.broker = broker;
+        this.maxBatchSize = maxBatchSize;
+        this.maxLingerNanos = TimeUnit.MICROSECONDS.toNanos(maxLingerMicros);
+        this.chain = broker.createTransactionChain(this);
+        this.batchThread = new Thread(this::runBatches, "onem2m-mdsal-group-commit-" + shard);
+        this.batchThread.setDaemon(true);
+        this.batchThread.start();
+        LOG.info("MDSALTransactionWriter: shard: {}, maxBatchSize: {}, maxLingerMicros: {}",
+                 shard, maxBatchSize, maxLingerMicros);
     }
 
     /**
-     * Delete
+     * Hands the transaction over to the batching thread, doesn't wait for the commit.
      *
-     * @param deleteIID            iid
-     * @param logicalDatastoreType op vs config
-     * @param <U>                  return value
+     * @param transaction transaction to be committed
+     * @return future completed when the transaction is committed
      */
-    protected <U extends org.opendaylight.yangtools.yang.binding.DataObject> void delete
-    (InstanceIdentifier<U> deleteIID, LogicalDatastoreType logicalDatastoreType) {
-        writeTransaction.delete(logicalDatastoreType, deleteIID);
+    public ListenableFuture<Void> submit(MDSALTransaction transaction) {
+        if (transaction.isSubmitted()) {
+            return transaction.getCommitFuture();
+        }
+        transaction.setSubmitted();
+
+        if (transaction.getNumOperations() == 0) {
+            transaction.commitSucceeded();
+            return transaction.getCommitFuture();
+        }
+        synchronized (queueLock) {
+            if (running) {
+                queue.add(transaction);
+                return transaction.getCommitFuture();
+            }
+        }
+        transaction.commitFailed(new IllegalStateException("MDSALTransactionWriter is closed"));
+        return transaction.getCommitFuture();
     }
 
     /**
-     * Update
+     * Submits the transaction if not submitted yet and waits for its commit at most COMMIT_TIMEOUT_SEC.
      *
-     * @param addIID               iid
-     * @param data                 new value
-     * @param logicalDatastoreType op vs config
-     * @param <U>                  return value
+     * @param transaction transaction to be committed
+     * @return true if successfully committed
      */
-    protected <U extends org.opendaylight.yangtools.yang.binding.DataObject> void update // writeMerge
-    (InstanceIdentifier<U> addIID, U data, LogicalDatastoreType logicalDatastoreType) {
-        writeTransaction.merge(logicalDatastoreType, addIID, data, true);
+    public boolean commit(MDSALTransaction transaction) {
+        try {
+            submit(transaction).get(COMMIT_TIMEOUT_SEC, TimeUnit.SECONDS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.error("Interrupted while waiting for commit");
+        } catch (ExecutionException e) {
+            LOG.error("Commit failed: {}", e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+        } catch (TimeoutException e) {
+            LOG.error("Timeout while waiting for commit");
+        }
+        return false;
     }
 
-    /**
-     * Create/Write
-     *
-     * @param addIID               iid
-     * @param data                 new data
-     * @param logicalDatastoreType op vs config
-     * @param <U>                  return value
-     */
-    protected <U extends org.opendaylight.yangtools.yang.binding.DataObject> void create // writePut
-    (InstanceIdentifier<U> addIID, U data, LogicalDatastoreType logicalDatastoreType) {
-        writeTransaction.put(logicalDatastoreType, addIID, data, true);
+    private void runBatches() {
+        while (running || !queue.isEmpty()) {
+            MDSALTransaction first;
+            try {
+                first = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (first == null) {
+                continue;
+            }
+
+            List<MDSALTransaction> batch = new ArrayList<>();
+            batch.add(first);
+            int numOps = first.getNumOperations();
+
+            // linger for another transactions of the batch
+            long deadline = System.nanoTime() + maxLingerNanos;
+            while (numOps < maxBatchSize) {
+                long remaining = deadline - System.nanoTime();
+                MDSALTransaction next;
+                try {
+                    next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (next == null) {
+                    break;
+                }
+                batch.add(next);
+                numOps += next.getNumOperations();
+            }
+
+            outstandingCommits.acquireUninterruptibly();
+
+            // the transactions queued while waiting for the previous commits goes to this batch too
+            while (numOps < maxBatchSize) {
+                MDSALTransaction next = queue.poll();
+                if (next == null) {
+                    break;
+                }
+                batch.add(next);
+                numOps += next.getNumOperations();
+            }
+
+            commitBatch(batch);
+        }
     }
 
-    protected void reload() {
-        close();
-        writeTransaction = broker.newWriteOnlyTransaction();
-        isClosed = false;
+    private void commitBatch(final List<MDSALTransaction> batch) {
+        CheckedFuture<Void, TransactionCommitFailedException> future;
+        try {
+            WriteTransaction writeTransaction = getChain().newWriteOnlyTransaction();
+            for (MDSALTransaction transaction : batch) {
+                for (MDSALWriteOperation<?> operation : transaction.getOperations()) {
+                    operation.apply(writeTransaction);
+                }
+            }
+            future = writeTransaction.submit();
+        } catch (RuntimeException e) {
+            LOG.error("Failed to submit batch of {} transactions: {}", batch.size(), e.getMessage());
+            outstandingCommits.release();
+            batch.forEach(transaction -> transaction.commitFailed(e));
+            return;
+        }
+
+        Futures.addCallback(future, new FutureCallback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                outstandingCommits.release();
+                batch.forEach(MDSALTransaction::commitSucceeded);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                LOG.error("Commit of batch of {} transactions failed: {}", batch.size(), t.getMessage());
+                outstandingCommits.release();
+                batch.forEach(transaction -> transaction.commitFailed(t));
+            }
+        });
+    }
+
+    private synchronized BindingTransactionChain getChain() {
+        return chain;
     }
 
-    protected void close() {
-        if (isClosed) return;
+    @Override
+    public synchronized void onTransactionChainFailed(TransactionChain<?, ?> failedChain,
+                                                      AsyncTransaction<?, ?> transaction, Throwable cause) {
+        LOG.error("Transaction chain failed: {}", cause.getMessage());
+        // the failed batch is reported by its commit future, the following batches use new chain
+        failedChain.close();
+        if (failedChain == chain && running) {
+            chain = broker.createTransactionChain(this);
+        }
+    }
+
+    @Override
+    public void onTransactionChainSuccessful(TransactionChain<?, ?> chain) {
+        LOG.debug("Transaction chain closed");
+    }
+
+    /**
+     * Commits all queued transactions and closes the transaction chain. The transactions the batching thread
+     * doesn't commit before the timeout are failed so nobody waits for them.
+     */
+    @Override
+    public void close() {
+        synchronized (queueLock) {
+            running = false;
+        }
         try {
-            writeTransaction.submit().checkedGet();
-        } catch (Exception e) {
-            LOG.error("Error = {}", e.getMessage());
+            batchThread.join(TimeUnit.SECONDS.toMillis(CLOSE_TIMEOUT_SEC));
+            if (batchThread.isAlive()) {
+                LOG.error("Timeout while waiting for the batching thread");
+                batchThread.interrupt();
+            }
+            failQueued();
+            if (!outstandingCommits.tryAcquire(MAX_OUTSTANDING_COMMITS, CLOSE_TIMEOUT_SEC, TimeUnit.SECONDS)) {
+                LOG.error("Timeout while waiting for outstanding commits");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failQueued();
+        }
+        getChain().close();
+    }
+
+    private void failQueued() {
+        List<MDSALTransaction> leftover = new ArrayList<>();
+        queue.drainTo(leftover);
+        if (!leftover.isEmpty()) {
+            LOG.error("Failing {} transactions not committed before close", leftover.size());
+            IllegalStateException cause = new IllegalStateException("MDSALTransactionWriter is closed");
+            leftover.forEach(transaction -> transaction.commitFailed(cause));
         }
-        writeTransaction = null;
-        isClosed = true;
-        //futureProcessor.addCheckedFuture(writeTransaction.submit());
     }
 }
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2m.persistence.mdsal.write;
+
+import org.opendaylight.controller.md.sal.binding.api.WriteTransaction;
+import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
+import org.opendaylight.yangtools.yang.binding.DataObject;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+
+/**
+ * Single datastore operation recorded by the MDSALTransaction. The operation is applied to the shared
+ * write transaction by the MDSALTransactionWriter when the batch including the operation is committed.
+ *
+ * @param <U> type of the written data object
+ */
+final class MDSALWriteOperation<U extends DataObject> {
+
+    enum Type {
+        CREATE, // writePut
+        UPDATE, // writeMerge
+        DELETE
+    }
+
+    private final Type type;
+    private final LogicalDatastoreType logicalDatastoreType;
+    private final InstanceIdentifier<U> iid;
+    private final U data;
+
+    MDSALWriteOperation(Type type, LogicalDatastoreType logicalDatastoreType, InstanceIdentifier<U> iid, U data) {
+        this.type = type;
+        this.logicalDatastoreType = logicalDatastoreType;
+        this.iid = iid;
+        this.data = data;
+    }
+
+    Type getType() {
+        return type;
+    }
+
+    InstanceIdentifier<U> getIid() {
+        return iid;
+    }
+
+    /**
+     * Applies the operation to the write transaction.
+     *
+     * @param writeTransaction the shared transaction of the batch
+     */
+    void apply(WriteTransaction writeTransaction) {
+        switch (type) {
+            case CREATE:
+                writeTransaction.put(logicalDatastoreType, iid, data, true);
+                break;
+            case UPDATE:
+                writeTransaction.merge(logicalDatastoreType, iid, data, true);
+                break;
+            case DELETE:
+                writeTransaction.delete(logicalDatastoreType, iid);
+                break;
+        }
+    }
+}
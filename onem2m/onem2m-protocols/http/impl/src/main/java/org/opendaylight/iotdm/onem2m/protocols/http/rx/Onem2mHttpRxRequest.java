@@ -129,7 +129,12 @@ public class Onem2mHttpRxRequest extends Onem2mProtocolRxRequest {
         }
         headerValue = httpRequest.getHeader(Onem2m.HttpHeaders.X_M2M_RTU);
         if (headerValue != null) {
-            clientBuilder.setResponseType(headerValue);
+            // the notificationURIs of the response type are separated by '&'
+            for (String uri : headerValue.split("&")) {
+                if (!uri.trim().isEmpty()) {
+                    clientBuilder.addResponseTypeNotificationUri(uri.trim());
+                }
+            }
         }
         headerValue = httpRequest.getHeader(Onem2m.HttpHeaders.X_M2M_OT);
         if (headerValue != null) {
@@ -104,6 +104,7 @@ public abstract class Onem2mHttpClient implements Onem2mProtocolTxChannel {
                 LOG.info("Starting HTTP client.");
             }
 
+            configureClient(client);
             client.start();
         } catch (Exception e) {
             LOG.error("Failed to start client:: {}", e);
@@ -111,6 +112,14 @@ public abstract class Onem2mHttpClient implements Onem2mProtocolTxChannel {
         }
     }
 
+    /**
+     * Allows the child classes to configure the client before it's started.
+     * @param client The client to be started.
+     */
+    protected void configureClient(HttpClient client) {
+        // nothing to do by default
+    }
+
     @Override
     public void close() {
         try {
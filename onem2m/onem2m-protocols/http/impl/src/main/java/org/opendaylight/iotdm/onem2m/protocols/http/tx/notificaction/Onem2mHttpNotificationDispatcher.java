@@ -0,0 +1,430 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.opendaylight.iotdm.onem2m.protocols.http.tx.notificaction;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nonnull;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.opendaylight.iotdm.onem2m.core.utils.JsonUtils;
+import org.opendaylight.iotdm.onem2m.protocols.common.Onem2mProtocolTxHandler;
+import org.opendaylight.iotdm.onem2m.protocols.http.tx.Onem2mHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Delivers the HTTP notifications asynchronously. The notifications are queued per notificationURI in queues
+ * with bounded depth, the oldest notification is dropped when the queue of the target is full.
+ *
+ * Only one request per notificationURI is sent at a time so the notifications are delivered in order,
+ * the number of concurrent requests sent to one host is limited by the max-in-flight-per-host parameter.
+ * The targets which can't send because of the host limit wait for a request to the host to complete.
+ * The notifications queued while the target waits are aggregated into one request (the oneM2M
+ * aggregatedNotification, i.e. batchNotify) if the batch size is greater than one.
+ *
+ * Requests failed because of connection failure, timeout or server error are retried with exponential backoff,
+ * the notifications are dropped when all retries fail. Requests rejected by the receiver with a client error
+ * are not retried.
+ *
+ * The targets and hosts without queued notifications and requests in flight are removed.
+ */
+public class Onem2mHttpNotificationDispatcher {
+    private static final Logger LOG = LoggerFactory.getLogger(Onem2mHttpNotificationDispatcher.class);
+
+    protected static final String AGGREGATED_NOTIFICATION = "m2m:agn";
+    protected static final String NOTIFICATION = "m2m:sgn";
+
+    private final Onem2mHttpNotifierConfiguration configuration;
+    private final Onem2mProtocolTxHandler onem2mHandler;
+    private final Onem2mHttpNotifierRequestAbstractFactory requestFactory;
+    private final Onem2mHttpClient client;
+    private final ScheduledExecutorService retryScheduler;
+
+    private final ConcurrentHashMap<String, Target> targets = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Host> hosts = new ConcurrentHashMap<>();
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder batchRequests = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder overflowed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    private volatile boolean closed = false;
+
+    public Onem2mHttpNotificationDispatcher(@Nonnull final Onem2mHttpNotifierConfiguration configuration,
+                                            @Nonnull final Onem2mProtocolTxHandler onem2mHandler,
+                                            @Nonnull final Onem2mHttpNotifierRequestAbstractFactory requestFactory,
+                                            @Nonnull final Onem2mHttpClient client) {
+        this.configuration = configuration;
+        this.onem2mHandler = onem2mHandler;
+        this.requestFactory = requestFactory;
+        this.client = client;
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "onem2m-http-notifier-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static final class Notification {
+        private final String payload;
+        private final String cseBaseId;
+
+        private Notification(String payload, String cseBaseId) {
+            this.payload = payload;
+            this.cseBaseId = cseBaseId;
+        }
+    }
+
+    /**
+     * Queue of one notificationURI. The pending batch is kept until it's delivered or dropped, the target
+     * is busy while the request of the batch is in flight or waits for retry.
+     */
+    private final class Target {
+        private final String url;
+        private final Host host;
+        private final ArrayDeque<Notification> queue = new ArrayDeque<>();
+        private List<Notification> pending = null;
+        private int attempts = 0;
+        private boolean busy = false;
+        private boolean retired = false;
+
+        private Target(String url) {
+            this.url = url;
+            this.host = hosts.compute(hostKey(url), (key, host) -> {
+                Host ret = (null == host) ? new Host(key) : host;
+                ret.addTarget();
+                return ret;
+            });
+        }
+
+        private boolean isIdle() {
+            return queue.isEmpty() && null == pending && !busy;
+        }
+    }
+
+    /**
+     * Limits the number of requests in flight to one host.
+     */
+    private final class Host {
+        private final String key;
+        private final ArrayDeque<Target> waiting = new ArrayDeque<>();
+        private int inFlight = 0;
+        private int numTargets = 0;
+
+        private Host(String key) {
+            this.key = key;
+        }
+
+        private synchronized void addTarget() {
+            numTargets++;
+        }
+
+        private synchronized void removeTarget() {
+            numTargets--;
+        }
+
+        private synchronized boolean isUnused() {
+            return 0 == numTargets && 0 == inFlight && waiting.isEmpty();
+        }
+
+        private synchronized boolean tryAcquire(Target target) {
+            if (inFlight < configuration.getMaxInFlightPerHost()) {
+                inFlight++;
+                return true;
+            }
+            if (!waiting.contains(target)) {
+                waiting.add(target);
+            }
+            return false;
+        }
+
+        /**
+         * @return the target waiting for the released slot or null
+         */
+        private synchronized Target release() {
+            inFlight--;
+            return waiting.poll();
+        }
+    }
+
+    private static String hostKey(String url) {
+        try {
+            URI uri = new URI(url);
+            if (null != uri.getHost()) {
+                return uri.getHost() + ":" + uri.getPort();
+            }
+        } catch (URISyntaxException e) {
+            LOG.debug("Invalid notification URI: {}", url);
+        }
+        return url;
+    }
+
+    /**
+     * Queues the notification for delivery.
+     * @param url notificationURI
+     * @param payload content of the notification
+     * @param cseBaseId CSE-ID of the cseBase sending the notification
+     * @return false if the notification has been rejected because the dispatcher is closed
+     */
+    public boolean enqueue(String url, String payload, String cseBaseId) {
+        if (closed) {
+            dropped.increment();
+            return false;
+        }
+        enqueued.increment();
+
+        Notification notification = new Notification(payload, cseBaseId);
+        while (true) {
+            Target target = targets.computeIfAbsent(url, Target::new);
+            synchronized (target) {
+                if (target.retired) {
+                    // removed concurrently as idle, the new target is created by the next iteration
+                    continue;
+                }
+                if (target.queue.size() >= configuration.getQueueDepth()) {
+                    target.queue.poll();
+                    overflowed.increment();
+                    LOG.warn("Notification queue full, dropping the oldest notification: uri: {}", url);
+                }
+                target.queue.add(notification);
+            }
+            trySend(target);
+            return true;
+        }
+    }
+
+    private List<Notification> pollBatch(Target target) {
+        List<Notification> batch = new ArrayList<>(Math.min(configuration.getBatchSize(), target.queue.size()));
+        Notification first = target.queue.poll();
+        batch.add(first);
+        // only the notifications of the same originator can be aggregated
+        while (batch.size() < configuration.getBatchSize() && !target.queue.isEmpty() &&
+                equalsNullable(first.cseBaseId, target.queue.peek().cseBaseId)) {
+            batch.add(target.queue.poll());
+        }
+        return batch;
+    }
+
+    private static boolean equalsNullable(String first, String second) {
+        return (null == first) ? null == second : first.equals(second);
+    }
+
+    private void trySend(Target target) {
+        List<Notification> batch;
+        synchronized (target) {
+            if (target.busy || closed) {
+                return;
+            }
+            if (null == target.pending) {
+                if (target.queue.isEmpty()) {
+                    retireIfIdle(target);
+                    return;
+                }
+                target.pending = pollBatch(target);
+                target.attempts = 0;
+            }
+            if (!target.host.tryAcquire(target)) {
+                return;
+            }
+            target.busy = true;
+            batch = target.pending;
+        }
+        send(target, batch);
+    }
+
+    private void retireIfIdle(Target target) {
+        // called with the target locked, the target is not used anymore if it's removed from the map
+        if (target.isIdle() && targets.remove(target.url, target)) {
+            target.retired = true;
+            target.host.removeTarget();
+            pruneIfUnused(target.host);
+        }
+    }
+
+    private void pruneIfUnused(Host host) {
+        // the targets are added to the host by hosts.compute() so the removal can't race with a new target
+        hosts.computeIfPresent(host.key, (key, current) -> (current == host && host.isUnused()) ? null : current);
+    }
+
+    private static String notificationContent(String payload) {
+        // the payload is the whole m2m:sgn, only its content is put into the array of the m2m:agn
+        try {
+            JSONObject json = new JSONObject(payload);
+            if (json.length() == 1 && json.has(NOTIFICATION)) {
+                return json.get(NOTIFICATION).toString();
+            }
+        } catch (JSONException e) {
+            LOG.debug("Notification payload is not JSON: {}", e.getMessage());
+        }
+        return payload;
+    }
+
+    private void send(Target target, List<Notification> batch) {
+        try {
+            sendBatch(target, batch);
+        } catch (RuntimeException e) {
+            // the host slot and the busy target are released by the failure
+            LOG.error("Failed to send {} notification(s) to uri: {}: {}", batch.size(), target.url, e.toString());
+            handleFailure(target, batch, e.toString());
+        }
+    }
+
+    private void sendBatch(Target target, List<Notification> batch) {
+        String payload;
+        if (batch.size() == 1) {
+            payload = batch.get(0).payload;
+        } else {
+            StringBuilder sb = new StringBuilder("{\"").append(AGGREGATED_NOTIFICATION).append("\":{\"")
+                    .append(NOTIFICATION).append("\":[");
+            for (int i = 0; i < batch.size(); i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append(notificationContent(batch.get(i).payload));
+            }
+            payload = sb.append("]}}").toString();
+            batchRequests.increment();
+        }
+        requests.increment();
+
+        LOG.debug("HTTP(S): Sending {} notification(s) to uri: {}", batch.size(), target.url);
+        onem2mHandler.handle(requestFactory.createHttpNotifierRequest(
+                target.url, payload, batch.get(0).cseBaseId, client,
+                new Onem2mHttpNotifierRequest.DeliveryCallback() {
+                    @Override
+                    public void onResponse(int responseStatus) {
+                        handleResponse(target, batch, responseStatus);
+                    }
+
+                    @Override
+                    public void onFailure(String reason) {
+                        handleFailure(target, batch, reason);
+                    }
+                }, configuration.getRequestTimeoutMs()));
+    }
+
+    private void handleResponse(Target target, List<Notification> batch, int responseStatus) {
+        if (responseStatus >= 500 || responseStatus == 429) {
+            handleFailure(target, batch, "response status " + responseStatus);
+            return;
+        }
+
+        if (responseStatus >= 200 && responseStatus < 300) {
+            delivered.add(batch.size());
+        } else {
+            rejected.add(batch.size());
+            LOG.warn("Notification rejected: uri: {}, response status: {}", target.url, responseStatus);
+        }
+        synchronized (target) {
+            target.pending = null;
+            target.busy = false;
+        }
+        completed(target);
+    }
+
+    private void handleFailure(Target target, List<Notification> batch, String reason) {
+        long delayMs = 0;
+        synchronized (target) {
+            target.attempts++;
+            if (target.attempts > configuration.getMaxRetries() || closed) {
+                dropped.add(batch.size());
+                LOG.error("Dropping {} notification(s) after {} attempt(s): uri: {}, reason: {}",
+                          batch.size(), target.attempts, target.url, reason);
+                target.pending = null;
+                target.busy = false;
+            } else {
+                // the target stays busy until the retry so the later notifications are not sent before
+                delayMs = Math.min(configuration.getRetryBackoffMs() << Math.min(target.attempts - 1, 30),
+                                   configuration.getMaxRetryBackoffMs());
+                LOG.debug("Notification failed, retry in {} ms: uri: {}, reason: {}", delayMs, target.url, reason);
+            }
+        }
+
+        if (delayMs > 0) {
+            retries.increment();
+        }
+        // the failure can be reported synchronously by the sending thread, the next requests are sent
+        // by the scheduler so the failures of the queued notifications don't recurse
+        Target waiting = target.host.release();
+        try {
+            retryScheduler.schedule(() -> {
+                synchronized (target) {
+                    target.busy = false;
+                }
+                trySend(target);
+                if (null != waiting && waiting != target) {
+                    trySend(waiting);
+                }
+                pruneIfUnused(target.host);
+            }, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            LOG.debug("Retry not scheduled, dispatcher closed: uri: {}", target.url);
+        }
+    }
+
+    private void completed(Target target) {
+        Target waiting = target.host.release();
+        trySend(target);
+        if (null != waiting && waiting != target) {
+            trySend(waiting);
+        }
+        pruneIfUnused(target.host);
+    }
+
+    public void close() {
+        closed = true;
+        retryScheduler.shutdownNow();
+        long queued = 0;
+        for (Target target : targets.values()) {
+            synchronized (target) {
+                queued += target.queue.size();
+                target.queue.clear();
+            }
+        }
+        dropped.add(queued);
+        targets.clear();
+        LOG.info("HTTP notification dispatcher closed, stats: {}", getStats());
+    }
+
+    public JSONObject getStats() {
+        JSONObject js = new JSONObject();
+        long queued = 0;
+        for (Target target : targets.values()) {
+            synchronized (target) {
+                queued += target.queue.size();
+            }
+        }
+        JsonUtils.put(js, "targets", targets.size());
+        JsonUtils.put(js, "hosts", hosts.size());
+        JsonUtils.put(js, "queued", queued);
+        JsonUtils.put(js, "enqueued", enqueued.sum());
+        JsonUtils.put(js, "delivered", delivered.sum());
+        JsonUtils.put(js, "requests", requests.sum());
+        JsonUtils.put(js, "batch_requests", batchRequests.sum());
+        JsonUtils.put(js, "retries", retries.sum());
+        JsonUtils.put(js, "overflowed", overflowed.sum());
+        JsonUtils.put(js, "dropped", dropped.sum());
+        JsonUtils.put(js, "rejected", rejected.sum());
+        return js;
+    }
+}
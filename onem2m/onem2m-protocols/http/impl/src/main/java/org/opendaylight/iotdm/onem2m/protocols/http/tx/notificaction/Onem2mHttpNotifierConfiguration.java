@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.opendaylight.iotdm.onem2m.protocols.http.tx.notificaction;
+
+import org.opendaylight.iotdm.onem2m.protocols.http.tx.Onem2mHttpClientConfiguration;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.onem2m.protocol.http.rev170110.http.protocol.provider.config.HttpsConfig;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.onem2m.protocol.http.rev170110.http.protocol.provider.config.NotifierPluginConfig;
+
+/**
+ * Configuration of the HTTP notifier plugin including parameters of the notification delivery.
+ * The parameters not set in the NotifierPluginConfig are set to the default values.
+ */
+public class Onem2mHttpNotifierConfiguration extends Onem2mHttpClientConfiguration {
+    public static final int DEFAULT_QUEUE_DEPTH = 1000;
+    public static final int DEFAULT_MAX_IN_FLIGHT_PER_HOST = 4;
+    public static final int DEFAULT_BATCH_SIZE = 1;
+    public static final int DEFAULT_MAX_RETRIES = 3;
+    public static final long DEFAULT_RETRY_BACKOFF_MS = 500;
+    public static final long DEFAULT_MAX_RETRY_BACKOFF_MS = 30000;
+    public static final long DEFAULT_REQUEST_TIMEOUT_MS = 10000;
+    public static final long DEFAULT_IDLE_CONNECTION_TIMEOUT_MS = 60000;
+
+    protected final int queueDepth;
+    protected final int maxInFlightPerHost;
+    protected final int batchSize;
+    protected final int maxRetries;
+    protected final long retryBackoffMs;
+    protected final long maxRetryBackoffMs;
+    protected final long requestTimeoutMs;
+    protected final long idleConnectionTimeoutMs;
+
+    public Onem2mHttpNotifierConfiguration(boolean secureConnection,
+                                           HttpsConfig secureConnectionConfig,
+                                           NotifierPluginConfig notifierConfig) {
+        super(secureConnection, secureConnectionConfig);
+        if (null == notifierConfig) {
+            this.queueDepth = DEFAULT_QUEUE_DEPTH;
+            this.maxInFlightPerHost = DEFAULT_MAX_IN_FLIGHT_PER_HOST;
+            this.batchSize = DEFAULT_BATCH_SIZE;
+            this.maxRetries = DEFAULT_MAX_RETRIES;
+            this.retryBackoffMs = DEFAULT_RETRY_BACKOFF_MS;
+            this.maxRetryBackoffMs = DEFAULT_MAX_RETRY_BACKOFF_MS;
+            this.requestTimeoutMs = DEFAULT_REQUEST_TIMEOUT_MS;
+            this.idleConnectionTimeoutMs = DEFAULT_IDLE_CONNECTION_TIMEOUT_MS;
+            return;
+        }
+
+        this.queueDepth = positive(notifierConfig.getQueueDepth(), DEFAULT_QUEUE_DEPTH);
+        this.maxInFlightPerHost = positive(notifierConfig.getMaxInFlightPerHost(), DEFAULT_MAX_IN_FLIGHT_PER_HOST);
+        this.batchSize = positive(notifierConfig.getBatchSize(), DEFAULT_BATCH_SIZE);
+        this.maxRetries = (null == notifierConfig.getMaxRetries()) ?
+                DEFAULT_MAX_RETRIES : notifierConfig.getMaxRetries();
+        this.retryBackoffMs = positive(notifierConfig.getRetryBackoffMs(), DEFAULT_RETRY_BACKOFF_MS);
+        this.maxRetryBackoffMs = Math.max(this.retryBackoffMs,
+                positive(notifierConfig.getMaxRetryBackoffMs(), DEFAULT_MAX_RETRY_BACKOFF_MS));
+        this.requestTimeoutMs = positive(notifierConfig.getRequestTimeoutMs(), DEFAULT_REQUEST_TIMEOUT_MS);
+        this.idleConnectionTimeoutMs = positive(notifierConfig.getIdleConnectionTimeoutMs(),
+                                                DEFAULT_IDLE_CONNECTION_TIMEOUT_MS);
+    }
+
+    private static int positive(Integer value, int defaultValue) {
+        return (null == value || value <= 0) ? defaultValue : value;
+    }
+
+    private static long positive(Long value, long defaultValue) {
+        return (null == value || value <= 0) ? defaultValue : value;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public int getMaxInFlightPerHost() {
+        return maxInFlightPerHost;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public long getRetryBackoffMs() {
+        return retryBackoffMs;
+    }
+
+    public long getMaxRetryBackoffMs() {
+        return maxRetryBackoffMs;
+    }
+
+    public long getRequestTimeoutMs() {
+        return requestTimeoutMs;
+    }
+
+    public long getIdleConnectionTimeoutMs() {
+        return idleConnectionTimeoutMs;
+    }
+}
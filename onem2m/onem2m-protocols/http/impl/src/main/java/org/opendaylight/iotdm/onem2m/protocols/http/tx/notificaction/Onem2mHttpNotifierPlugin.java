@@ -9,6 +9,8 @@
 package org.opendaylight.iotdm.onem2m.protocols.http.tx.notificaction;
 
 import javax.annotation.Nonnull;
+import org.eclipse.jetty.client.HttpClient;
+import org.json.JSONObject;
 import org.opendaylight.iotdm.onem2m.notifier.Onem2mNotifierPlugin;
 import org.opendaylight.iotdm.onem2m.protocols.common.Onem2mProtocolTxHandler;
 import org.opendaylight.iotdm.onem2m.protocols.http.tx.Onem2mHttpClient;
@@ -21,13 +23,46 @@ public class Onem2mHttpNotifierPlugin extends Onem2mHttpClient implements Onem2m
 
     protected final Onem2mProtocolTxHandler onem2mHandler;
     protected final Onem2mHttpNotifierRequestAbstractFactory requestFactory;
+    protected final Onem2mHttpNotifierConfiguration notifierConfiguration;
+    protected final Onem2mHttpNotificationDispatcher dispatcher;
 
     public Onem2mHttpNotifierPlugin(@Nonnull final Onem2mProtocolTxHandler onem2mHandler,
                                     @Nonnull final Onem2mHttpNotifierRequestAbstractFactory requestFactory,
                                     @Nonnull final Onem2mHttpClientConfiguration configuration) {
+        this(onem2mHandler, requestFactory,
+             new Onem2mHttpNotifierConfiguration(configuration.isSecureConnection(),
+                                                 configuration.getSecureConnectionConfig(), null));
+    }
+
+    public Onem2mHttpNotifierPlugin(@Nonnull final Onem2mProtocolTxHandler onem2mHandler,
+                                    @Nonnull final Onem2mHttpNotifierRequestAbstractFactory requestFactory,
+                                    @Nonnull final Onem2mHttpNotifierConfiguration configuration) {
         super(configuration);
         this.onem2mHandler = onem2mHandler;
         this.requestFactory = requestFactory;
+        this.notifierConfiguration = configuration;
+        this.dispatcher = new Onem2mHttpNotificationDispatcher(configuration, onem2mHandler, requestFactory, this);
+    }
+
+    /**
+     * Every request in flight to a host uses its own connection, the connections are kept alive
+     * and reused by the next requests to the host.
+     */
+    @Override
+    protected void configureClient(HttpClient client) {
+        client.setMaxConnectionsPerAddress(notifierConfiguration.getMaxInFlightPerHost());
+        client.setIdleTimeout(notifierConfiguration.getIdleConnectionTimeoutMs());
+        client.setTimeout(notifierConfiguration.getRequestTimeoutMs());
+    }
+
+    @Override
+    public void close() {
+        dispatcher.close();
+        super.close();
+    }
+
+    public JSONObject getStats() {
+        return dispatcher.getStats();
     }
 
     /**
@@ -46,8 +81,9 @@ public class Onem2mHttpNotifierPlugin extends Onem2mHttpClient implements Onem2m
      */
     @Override
     public void sendNotification(String url, String payload, String cseBaseId) {
-        this.onem2mHandler.handle(
-                requestFactory.createHttpNotifierRequest(url, payload, cseBaseId, this));
+        if (!dispatcher.enqueue(url, payload, cseBaseId)) {
+            LOG.error("Dropping notification, notifier closed: uri: {}", url);
+        }
     }
 
 }
@@ -20,6 +20,8 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nonnull;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Implements complete logic of the handling of notifications.
@@ -34,18 +36,92 @@ public class Onem2mHttpNotifierRequest extends Onem2mProtocolTxRequest {
     protected final String cseBaseId;
     protected final Onem2mHttpClient client;
     protected final boolean secureConnection;
+    protected final DeliveryCallback callback;
+    protected final long timeoutMs;
     protected ContentExchange ex = null;
 
+    /**
+     * Receives result of the notification request. Exactly one of the methods is called for every request.
+     */
+    public interface DeliveryCallback {
+        /**
+         * Called when the response has been received.
+         * @param responseStatus HTTP status code of the response
+         */
+        void onResponse(int responseStatus);
+
+        /**
+         * Called when the request failed without response, i.e. the connection failed or the request expired.
+         * @param reason description of the failure
+         */
+        void onFailure(String reason);
+    }
+
     public Onem2mHttpNotifierRequest(@Nonnull final String url,
                                      @Nonnull final String payload,
                                      final String cseBaseId,
                                      @Nonnull final Onem2mHttpClient client,
                                      final boolean secureConnection) {
+        this(url, payload, cseBaseId, client, secureConnection, null, 0);
+    }
+
+    public Onem2mHttpNotifierRequest(@Nonnull final String url,
+                                     @Nonnull final String payload,
+                                     final String cseBaseId,
+                                     @Nonnull final Onem2mHttpClient client,
+                                     final boolean secureConnection,
+                                     final DeliveryCallback callback,
+                                     final long timeoutMs) {
         this.url = url;
         this.payload = payload;
         this.cseBaseId = cseBaseId;
         this.client = client;
         this.secureConnection = secureConnection;
+        this.callback = callback;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Content exchange passing the result of the request to the callback.
+     */
+    protected class NotificationExchange extends ContentExchange {
+        private final AtomicBoolean completed = new AtomicBoolean(false);
+
+        protected NotificationExchange() {
+            super(true);
+        }
+
+        @Override
+        protected void onResponseComplete() throws IOException {
+            super.onResponseComplete();
+            if (completed.compareAndSet(false, true)) {
+                callback.onResponse(getResponseStatus());
+            }
+        }
+
+        @Override
+        protected void onConnectionFailed(Throwable x) {
+            super.onConnectionFailed(x);
+            failed("connection failed: " + x.getMessage());
+        }
+
+        @Override
+        protected void onException(Throwable x) {
+            super.onException(x);
+            failed("exception: " + x.getMessage());
+        }
+
+        @Override
+        protected void onExpire() {
+            super.onExpire();
+            failed("expired");
+        }
+
+        protected void failed(String reason) {
+            if (completed.compareAndSet(false, true)) {
+                callback.onFailure(reason);
+            }
+        }
     }
 
     @Override
@@ -56,15 +132,18 @@ public class Onem2mHttpNotifierRequest extends Onem2mProtocolTxRequest {
 
     @Override
     protected boolean translateRequestFromOnem2m() {
-        ex = new ContentExchange();
+        ex = (null == callback) ? new ContentExchange() : new NotificationExchange();
         ex.setURL(url);
-        ex.setRequestContentSource(new ByteArrayInputStream(payload.getBytes()));
+        byte[] content = payload.getBytes(StandardCharsets.UTF_8);
+        ex.setRequestContentSource(new ByteArrayInputStream(content));
         ex.setRequestContentType(Onem2m.ContentType.APP_VND_NTFY_JSON);
-        Integer cl = payload != null ?  payload.length() : 0;
-        ex.setRequestHeader("Content-Length", cl.toString());
+        ex.setRequestHeader("Content-Length", Integer.toString(content.length));
         ex.setRequestHeader(Onem2m.HttpHeaders.X_M2M_ORIGIN, ("/"+ this.cseBaseId));
         ex.setRequestHeader(Onem2m.HttpHeaders.X_M2M_RI, Onem2mProtocolUtils.getNextRequestId());
         ex.setMethod("post");
+        if (timeoutMs > 0) {
+            ex.setTimeout(timeoutMs);
+        }
         return true;
     }
 
@@ -78,6 +157,10 @@ public class Onem2mHttpNotifierRequest extends Onem2mProtocolTxRequest {
         try {
             client.send(ex);
         } catch (IOException e) {
+            if (ex instanceof NotificationExchange) {
+                ((NotificationExchange) ex).failed("send failed: " + e.getMessage());
+                return false;
+            }
             LOG.error("Dropping notification: uri: {}, payload: {}", url, payload);
             return false;
         }
@@ -26,4 +26,20 @@ public interface Onem2mHttpNotifierRequestAbstractFactory {
      */
     Onem2mHttpNotifierRequest createHttpNotifierRequest(String url, String payload, String cseBaseId,
                                                         Onem2mHttpClient client);
+
+    /**
+     * Creates HTTP Notifier TxRequest passing its result to the callback.
+     * @param url The destination URL where the request will be sent.
+     * @param payload The payload to send.
+     * @param cseBaseId The CSE-ID of the cseBase sending the notification.
+     * @param client Onem2mHttpClient as TxChannel which will be used to
+     *               send the request.
+     * @param callback Callback receiving the result of the request.
+     * @param timeoutMs Timeout of the request in milliseconds.
+     * @return Created HTTP notifier request.
+     */
+    Onem2mHttpNotifierRequest createHttpNotifierRequest(String url, String payload, String cseBaseId,
+                                                        Onem2mHttpClient client,
+                                                        Onem2mHttpNotifierRequest.DeliveryCallback callback,
+                                                        long timeoutMs);
 }
@@ -26,4 +26,13 @@ public class Onem2mHttpNotifierRequestFactory implements Onem2mHttpNotifierReque
                                                                Onem2mHttpClient client) {
         return new Onem2mHttpNotifierRequest(url, payload, cseBaseId, client, secureConnection);
     }
+
+    @Override
+    public Onem2mHttpNotifierRequest createHttpNotifierRequest(String url, String payload, String cseBaseId,
+                                                               Onem2mHttpClient client,
+                                                               Onem2mHttpNotifierRequest.DeliveryCallback callback,
+                                                               long timeoutMs) {
+        return new Onem2mHttpNotifierRequest(url, payload, cseBaseId, client, secureConnection,
+                                             callback, timeoutMs);
+    }
 }
@@ -17,6 +17,7 @@ import org.opendaylight.iotdm.onem2m.protocols.common.utils.Onem2mProtocolConfig
 import org.opendaylight.iotdm.onem2m.protocols.http.rx.Onem2mHttpBaseIotdmPlugin;
 import org.opendaylight.iotdm.onem2m.protocols.http.rx.Onem2mHttpRxRequestFactory;
 import org.opendaylight.iotdm.onem2m.protocols.http.tx.Onem2mHttpClientConfiguration;
+import org.opendaylight.iotdm.onem2m.protocols.http.tx.notificaction.Onem2mHttpNotifierConfiguration;
 import org.opendaylight.iotdm.onem2m.protocols.http.tx.notificaction.Onem2mHttpNotifierPlugin;
 import org.opendaylight.iotdm.onem2m.protocols.http.tx.notificaction.Onem2mHttpNotifierRequestFactory;
 import org.opendaylight.iotdm.onem2m.protocols.http.tx.routing.Onem2mHttpRouterPlugin;
@@ -100,8 +101,9 @@ public class Onem2mHttpProvider implements AutoCloseable {
             if (null != this.notifierConfig && null != this.notifierConfig.isSecureConnection()) {
                 secureConnection = this.notifierConfig.isSecureConnection();
             }
-            Onem2mHttpClientConfiguration cfg = new Onem2mHttpClientConfiguration(secureConnection,
-                                                                                  this.secConfig);
+            Onem2mHttpNotifierConfiguration cfg = new Onem2mHttpNotifierConfiguration(secureConnection,
+                                                                                      this.secConfig,
+                                                                                      this.notifierConfig);
             notifierPlugin = new Onem2mHttpNotifierPlugin(new Onem2mProtocolTxHandler(),
                                                           new Onem2mHttpNotifierRequestFactory(secureConnection),
                                                           cfg);
@@ -10,10 +10,12 @@ package org.opendaylight.iotdm.onem2m.protocols.websocket;
 
 import org.opendaylight.controller.sal.binding.api.BindingAwareBroker.ProviderContext;
 import org.opendaylight.controller.sal.binding.api.BindingAwareProvider;
+import org.opendaylight.iotdm.onem2m.notifier.Onem2mNotifierService;
 import org.opendaylight.iotdm.onem2m.protocols.common.Onem2mProtocolRxHandler;
 import org.opendaylight.iotdm.onem2m.protocols.websocket.rx.Onem2mWebsocketIotdmPlugin;
 import org.opendaylight.iotdm.onem2m.protocols.websocket.rx.Onem2mWebsocketIotdmPluginConfig;
 import org.opendaylight.iotdm.onem2m.protocols.websocket.rx.Onem2mWebsocketRxRequestFactory;
+import org.opendaylight.iotdm.onem2m.protocols.websocket.tx.notification.Onem2mWebsocketNotifierPlugin;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.Onem2mService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,6 +44,10 @@ public class Onem2mWebsocketProvider implements BindingAwareProvider, AutoClosea
         } catch (Exception e) {
             LOG.error("Failed to start websocket server: {}", e);
         }
+
+        // notifications to the AEs connected to the websocket server
+        Onem2mNotifierService.getInstance().pluginRegistration(new Onem2mWebsocketNotifierPlugin("ws"));
+        Onem2mNotifierService.getInstance().pluginRegistration(new Onem2mWebsocketNotifierPlugin("wss"));
         LOG.info("Onem2mWebsocketProvider Session Initiated");
     }
 
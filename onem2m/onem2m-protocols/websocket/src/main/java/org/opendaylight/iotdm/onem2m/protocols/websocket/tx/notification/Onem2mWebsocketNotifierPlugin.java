@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.opendaylight.iotdm.onem2m.protocols.websocket.tx.notification;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.opendaylight.iotdm.onem2m.core.Onem2m;
+import org.opendaylight.iotdm.onem2m.core.rest.NotificationProcessor;
+import org.opendaylight.iotdm.onem2m.core.rest.utils.RequestPrimitive;
+import org.opendaylight.iotdm.onem2m.notifier.Onem2mNotifierPlugin;
+import org.opendaylight.iotdm.onem2m.plugins.channels.websocket.Onem2mWebsocketSession;
+import org.opendaylight.iotdm.onem2m.plugins.channels.websocket.Onem2mWebsocketSessionRegistry;
+import org.opendaylight.iotdm.onem2m.protocols.common.utils.Onem2mProtocolUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implementation of notifier plugin for websocket.  The notifications are sent as notify requests over the
+ * websocket session the target AE keeps open to the websocket plugin server, the AE doesn't need any
+ * other reachable endpoint.  Supported URL formats are the poa set by the AE through its session and
+ * ws://{AE-ID}, ws://{host}:{port}/{AE-ID} (the same for wss).
+ */
+public class Onem2mWebsocketNotifierPlugin implements Onem2mNotifierPlugin {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Onem2mWebsocketNotifierPlugin.class);
+
+    private final String scheme;
+
+    /**
+     * @param scheme URL scheme handled by this instance, ws or wss
+     */
+    public Onem2mWebsocketNotifierPlugin(String scheme) {
+        this.scheme = scheme;
+    }
+
+    @Override
+    public String getNotifierPluginName() { return scheme; }
+
+    @Override
+    public void sendNotification(String url, String payload, String cseBaseId) {
+        Onem2mWebsocketSession session = Onem2mWebsocketSessionRegistry.getInstance().resolve(url);
+        if (null == session) {
+            LOG.error("Dropping notification: no websocket session for URL: {}", url);
+            return;
+        }
+
+        JSONObject content;
+        try {
+            content = new JSONObject(payload);
+        } catch (JSONException e) {
+            LOG.error("Invalid payload for websocket notification request: {}", e);
+            return;
+        }
+
+        JSONObject rqp = new JSONObject();
+        rqp.put(RequestPrimitive.OPERATION, Onem2m.Operation.NOTIFY);
+        rqp.put(RequestPrimitive.TO, url);
+        rqp.put(RequestPrimitive.FROM, cseBaseId);
+        rqp.put(RequestPrimitive.REQUEST_IDENTIFIER, Onem2mProtocolUtils.getNextRequestId());
+        rqp.put(RequestPrimitive.CONTENT, content);
+
+        if (!session.sendNotification(rqp.toString(),
+                                      content.optString(NotificationProcessor.SUBSCRIPTION_REFERENCE, null))) {
+            LOG.error("Dropping notification: websocket session closed, URL: {}", url);
+        }
+    }
+}
@@ -87,14 +87,16 @@ public class Onem2mbenchmarkProvider implements Onem2mbenchmarkService, BindingA
         switch (input.getOperation()) {
 
             case PERFRPC:
+            case PERFLOCAL:
                 numResources = input.getNumResources();
                 if (numResources <= 0) numResources = 1;
                 numThreads = input.getNumThreads();
                 if (numThreads <= 0) numThreads = 1;
 
-                LOG.info("Test started: numResources: {} numThreads: {}",
-                        numResources, numThreads);
-                PerfCrudRpc perfCrudRpc = new PerfCrudRpc(onem2mService);
+                boolean localDispatch = (input.getOperation() == StartTestInput.Operation.PERFLOCAL);
+                LOG.info("Test started: numResources: {} numThreads: {} localDispatch: {}",
+                        numResources, numThreads, localDispatch);
+                PerfCrudRpc perfCrudRpc = new PerfCrudRpc(onem2mService, localDispatch);
                 boolean status = perfCrudRpc.runPerfTest((int) numResources, (int) numThreads);
                 setTestOperData(ExecStatus.Idle);
                 execStatus.set(ExecStatus.Idle);
@@ -109,6 +111,43 @@ public class Onem2mbenchmarkProvider implements Onem2mbenchmarkService, BindingA
 
                 return RpcResultBuilder.success(output).buildFuture();
 
+            case PERFRESOLVE:
+                numResources = input.getNumResources();
+                if (numResources <= 0) numResources = 1;
+                numThreads = input.getNumThreads();
+                if (numThreads <= 0) numThreads = 1;
+
+                LOG.info("Test started: numResources: {} numThreads: {}", numResources, numThreads);
+                PerfResolveRpc perfResolveRpc = new PerfResolveRpc(onem2mService);
+                boolean resolveStatus = perfResolveRpc.runPerfTest((int) numResources, (int) numThreads);
+                setTestOperData(ExecStatus.Idle);
+                execStatus.set(ExecStatus.Idle);
+
+                output = new StartTestOutputBuilder()
+                        .setStatus(resolveStatus ? StartTestOutput.Status.OK : StartTestOutput.Status.FAILED)
+                        .setRetrievesPerSec(perfResolveRpc.retrievesPerSec)
+                        .setRetrievesPerSecByDepth(perfResolveRpc.retrievesPerSecByDepth)
+                        .build();
+
+                return RpcResultBuilder.success(output).buildFuture();
+
+            case PERFFANOUT:
+                numResources = input.getNumResources();
+                if (numResources <= 0) numResources = 1;
+
+                LOG.info("Test started: numResources: {}", numResources);
+                PerfFanOutRpc perfFanOutRpc = new PerfFanOutRpc(onem2mService);
+                boolean fanOutStatus = perfFanOutRpc.runPerfTest((int) numResources);
+                setTestOperData(ExecStatus.Idle);
+                execStatus.set(ExecStatus.Idle);
+
+                output = new StartTestOutputBuilder()
+                        .setStatus(fanOutStatus ? StartTestOutput.Status.OK : StartTestOutput.Status.FAILED)
+                        .setFanOutLatencyUsByGroupSize(perfFanOutRpc.fanOutLatencyUsByGroupSize)
+                        .build();
+
+                return RpcResultBuilder.success(output).buildFuture();
+
             case PERFCOAP:
                 numResources = input.getNumResources();
                 serverUri = input.getServerUri();
@@ -130,6 +169,25 @@ public class Onem2mbenchmarkProvider implements Onem2mbenchmarkService, BindingA
                 }
                 break;
 
+            case PERFCOAPOBSERVE:
+                numResources = input.getNumResources();
+                serverUri = input.getServerUri();
+                LOG.info("Test started: numObservers: {}", numResources);
+                PerfCoapObserveClient perfCoapObserveClient = new PerfCoapObserveClient();
+                if (perfCoapObserveClient.runPerfTest((int) numResources, serverUri)) {
+                    setTestOperData(ExecStatus.Idle);
+                    execStatus.set(ExecStatus.Idle);
+
+                    output = new StartTestOutputBuilder()
+                            .setStatus(StartTestOutput.Status.OK)
+                            .setObserveRegistrationsPerSec(perfCoapObserveClient.registrationsPerSec)
+                            .setNotificationsPerSec(perfCoapObserveClient.notificationsPerSec)
+                            .build();
+
+                    return RpcResultBuilder.success(output).buildFuture();
+                }
+                break;
+
             case PERFHTTP:
                 numResources = input.getNumResources();
                 serverUri = input.getServerUri();
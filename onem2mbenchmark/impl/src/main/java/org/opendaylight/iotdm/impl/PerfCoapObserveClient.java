@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.impl;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.eclipse.californium.core.CoapHandler;
+import org.eclipse.californium.core.CoapObserveRelation;
+import org.eclipse.californium.core.CoapResponse;
+import org.eclipse.californium.core.coap.CoAP;
+import org.eclipse.californium.core.coap.MediaTypeRegistry;
+import org.eclipse.californium.core.network.CoapEndpoint;
+import org.opendaylight.iotdm.onem2m.client.ResourceContainerBuilder;
+import org.opendaylight.iotdm.onem2m.client.ResourceContentInstanceBuilder;
+import org.opendaylight.iotdm.onem2m.core.Onem2m;
+import org.opendaylight.iotdm.onem2m.odlclient.OdlOnem2mCoapClient;
+import org.opendaylight.iotdm.onem2m.odlclient.OdlOnem2mCoapRequestPrimitiveBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Load test of the CoAP Observe of the server.  numObservers observe relations are registered on the latest
+ * contentInstance (la) of one container from the local endpoints bound to the loopback interface, then
+ * contentInstances are created and the notifications received by the observers are counted.  The test is
+ * finished when each observer received the notification of the last contentInstance.
+ */
+public class PerfCoapObserveClient {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PerfCoapObserveClient.class);
+    private static final String CONTAINER_NAME = "PerfCoapObserve_CNT";
+    private static final String CONTAINER_URI = "/" + Onem2m.SYS_PERF_TEST_CSE + "/" + CONTAINER_NAME;
+    private static final String LAST_CONTENT = "PerfCoapObserve_last";
+    private static final int NUM_CONTENT_INSTANCES = 10;
+    private static final int MAX_OBSERVERS_PER_ENDPOINT = 500;
+    private static final long NOTIFICATION_TIMEOUT_S = 60;
+
+    public long registrationsPerSec, notificationsPerSec;
+
+    private final AtomicLong numNotifications = new AtomicLong();
+    private final List<CoapEndpoint> endpoints = new ArrayList<>();
+    private final List<CoapObserveRelation> relations = new ArrayList<>();
+
+    public PerfCoapObserveClient() {
+    }
+
+    /**
+     * Run the observe test with numObservers observe relations.
+     * @param numObservers number of the observe relations
+     * @param serverUri uri of the CoAP server, e.g. coap://localhost
+     * @return true if all the observers received all the notifications
+     */
+    public boolean runPerfTest(int numObservers, String serverUri) {
+        OdlOnem2mCoapClient coapClient = new OdlOnem2mCoapClient(serverUri);
+        boolean status = false;
+
+        if (!createContainer(coapClient) || !createContentInstance(coapClient, "PerfCoapObserve_first")) {
+            LOG.error("runPerfTest: cannot create the observed container");
+            return false;
+        }
+
+        try {
+            CountDownLatch lastReceived = new CountDownLatch(numObservers);
+            if (registerObservers(numObservers, serverUri, lastReceived) &&
+                notifyTest(coapClient, numObservers, lastReceived)) {
+                LOG.info("runPerfTest: all tests finished");
+                status = true;
+            } else {
+                LOG.error("runPerfTest: tests failed early");
+            }
+        } finally {
+            cleanup(coapClient);
+        }
+        return status;
+    }
+
+    private boolean createContainer(OdlOnem2mCoapClient coapClient) {
+        String containerString = new ResourceContainerBuilder()
+                .setCreator(null)
+                .setMaxNrInstances(5)
+                .build();
+
+        CoapResponse coapResponse = coapClient.sendRequest(new OdlOnem2mCoapRequestPrimitiveBuilder()
+                .setOperationCreate()
+                .setTo("/" + Onem2m.SYS_PERF_TEST_CSE)
+                .setFrom("PerfCoapObserve_FROM")
+                .setRequestIdentifier("PerfCoapObserve_RQI")
+                .setName(CONTAINER_NAME)
+                .setContent(containerString, MediaTypeRegistry.APPLICATION_JSON)
+                .setResourceType(Onem2m.ResourceType.CONTAINER)
+                .build());
+        return null != coapResponse && coapResponse.getCode() == CoAP.ResponseCode.CREATED;
+    }
+
+    private boolean createContentInstance(OdlOnem2mCoapClient coapClient, String content) {
+        String cinString = new ResourceContentInstanceBuilder()
+                .setContent(content)
+                .build();
+
+        CoapResponse coapResponse = coapClient.sendRequest(new OdlOnem2mCoapRequestPrimitiveBuilder()
+                .setOperationCreate()
+                .setTo(CONTAINER_URI)
+                .setFrom("PerfCoapObserve_FROM")
+                .setRequestIdentifier("PerfCoapObserve_RQI")
+                .setContent(cinString, MediaTypeRegistry.APPLICATION_JSON)
+                .setResourceType(Onem2m.ResourceType.CONTENT_INSTANCE)
+                .build());
+        return null != coapResponse && coapResponse.getCode() == CoAP.ResponseCode.CREATED;
+    }
+
+    /**
+     * Registers the observers, each endpoint bound to the loopback interface carries at most
+     * MAX_OBSERVERS_PER_ENDPOINT relations like a gateway of constrained devices.
+     */
+    private boolean registerObservers(int numObservers, String serverUri, CountDownLatch lastReceived) {
+        long startTime, endTime, delta;
+        OdlOnem2mCoapClient observeClient = null;
+        CountDownLatch registered = new CountDownLatch(numObservers);
+
+        startTime = System.nanoTime();
+        for (int i = 0; i < numObservers; i++) {
+            if (i % MAX_OBSERVERS_PER_ENDPOINT == 0) {
+                CoapEndpoint endpoint = new CoapEndpoint(new InetSocketAddress("127.0.0.1", 0));
+                try {
+                    endpoint.start();
+                } catch (Exception e) {
+                    LOG.error("Cannot start the loopback endpoint: {}", e.toString());
+                    return false;
+                }
+                endpoints.add(endpoint);
+                observeClient = new OdlOnem2mCoapClient(serverUri).setEndpoint(endpoint);
+            }
+
+            CoapObserveRelation relation = observeClient.observe(new OdlOnem2mCoapRequestPrimitiveBuilder()
+                    .setOperationRetrieve()
+                    .setTo(CONTAINER_URI + "/la")
+                    .setFrom("PerfCoapObserve_FROM_" + i)
+                    .setRequestIdentifier("PerfCoapObserve_RQI_" + i)
+                    .build(), new ObserveHandler(registered, lastReceived));
+            relations.add(relation);
+        }
+        try {
+            if (!registered.await(NOTIFICATION_TIMEOUT_S, TimeUnit.SECONDS)) {
+                LOG.error("Registration response missing for {}/{} observers", registered.getCount(), numObservers);
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        endTime = System.nanoTime();
+        delta = (endTime - startTime);
+        registrationsPerSec = TimeUnit.SECONDS.toNanos(1) * numObservers / Math.max(delta, 1);
+        LOG.info("Time to register observers ... num: {}, delta: {}ns, ops/s: {}",
+                 numObservers, delta, registrationsPerSec);
+
+        for (CoapObserveRelation relation : relations) {
+            if (relation.isCanceled()) {
+                LOG.error("Observe relation rejected by the server");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean notifyTest(OdlOnem2mCoapClient coapClient, int numObservers, CountDownLatch lastReceived) {
+        long startTime, endTime, delta;
+
+        numNotifications.set(0);
+        startTime = System.nanoTime();
+        for (int i = 1; i < NUM_CONTENT_INSTANCES; i++) {
+            if (!createContentInstance(coapClient, "PerfCoapObserve_" + i)) {
+                LOG.error("Create contentInstance failed (iteration: {})", i);
+                return false;
+            }
+        }
+        if (!createContentInstance(coapClient, LAST_CONTENT)) {
+            LOG.error("Create of the last contentInstance failed");
+            return false;
+        }
+
+        try {
+            if (!lastReceived.await(NOTIFICATION_TIMEOUT_S, TimeUnit.SECONDS)) {
+                LOG.error("Notification of the last contentInstance missing for {}/{} observers",
+                          lastReceived.getCount(), numObservers);
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        endTime = System.nanoTime();
+        delta = (endTime - startTime);
+        notificationsPerSec = TimeUnit.SECONDS.toNanos(1) * numNotifications.get() / Math.max(delta, 1);
+        LOG.info("Time to notify ... num/expected: {}/{}, delta: {}ns, ops/s: {}",
+                 numNotifications.get(), (long) numObservers * NUM_CONTENT_INSTANCES, delta, notificationsPerSec);
+        return true;
+    }
+
+    private void cleanup(OdlOnem2mCoapClient coapClient) {
+        for (CoapObserveRelation relation : relations) {
+            relation.proactiveCancel();
+        }
+        relations.clear();
+        for (CoapEndpoint endpoint : endpoints) {
+            endpoint.destroy();
+        }
+        endpoints.clear();
+
+        coapClient.sendRequest(new OdlOnem2mCoapRequestPrimitiveBuilder()
+                .setOperationDelete()
+                .setTo(CONTAINER_URI)
+                .setFrom("PerfCoapObserve_FROM")
+                .setRequestIdentifier("PerfCoapObserve_RQI")
+                .build());
+    }
+
+    private class ObserveHandler implements CoapHandler {
+        private final CountDownLatch registered;
+        private final CountDownLatch lastReceived;
+        private boolean first = true;
+        private boolean done = false;
+
+        ObserveHandler(CountDownLatch registered, CountDownLatch lastReceived) {
+            this.registered = registered;
+            this.lastReceived = lastReceived;
+        }
+
+        @Override
+        public synchronized void onLoad(CoapResponse response) {
+            if (first) {
+                // response of the registration
+                first = false;
+                registered.countDown();
+                return;
+            }
+            numNotifications.incrementAndGet();
+            if (!done && response.getResponseText().contains(LAST_CONTENT)) {
+                done = true;
+                lastReceived.countDown();
+            }
+        }
+
+        @Override
+        public void onError() {
+            LOG.error("Observe relation failed");
+        }
+    }
+}
@@ -28,6 +28,7 @@ public class PerfCrudRpc {
     private static final Logger LOG = LoggerFactory.getLogger(PerfCrudRpc.class);
     public long createsPerSec, retrievesPerSec, crudsPerSec, deletesPerSec;
     private Onem2mService onem2mService;
+    private final boolean localDispatch;
     private ExecutorService executor;
     private Integer nextQueueId = 0;
     private Integer numSuccessful = 0;
@@ -35,10 +36,27 @@ public class PerfCrudRpc {
     private ArrayList<ArrayList<Integer>> resourceIdQueues;
 
     public PerfCrudRpc(Onem2mService onem2mService) {
+        this(onem2mService, false);
+    }
+
+    /**
+     * @param onem2mService the RPC service
+     * @param localDispatch true to send the requests through the in-process dispatch, false to invoke the RPC
+     */
+    public PerfCrudRpc(Onem2mService onem2mService, boolean localDispatch) {
         this.onem2mService = onem2mService;
+        this.localDispatch = localDispatch;
         executor = null;
     }
 
+    private Onem2mResponsePrimitiveClient send(Onem2mRequestPrimitiveClient req) {
+        if (localDispatch) {
+            return req.send(onem2mService);
+        }
+        return new Onem2mResponsePrimitiveClient(
+                Onem2m.serviceOnem2mRequestRpc(req, onem2mService, Onem2m.DEFAULTSECURITYLEVEL));
+    }
+
     private synchronized Integer getNextQ() {
         return nextQueueId++;
     }
@@ -198,7 +216,7 @@ public class PerfCrudRpc {
         b.setName(newResourceName);
         Onem2mRequestPrimitiveClient req = b.build();
 
-        Onem2mResponsePrimitiveClient res = req.send(onem2mService);
+        Onem2mResponsePrimitiveClient res = send(req);
         if (!res.responseOk()) {
             LOG.error(res.getError());
             return false;
@@ -222,7 +240,7 @@ public class PerfCrudRpc {
         b.setName("RN_" + resourceId);
         Onem2mRequestPrimitiveClient req = b.build();
 
-        Onem2mResponsePrimitiveClient res = req.send(onem2mService);
+        Onem2mResponsePrimitiveClient res = send(req);
         if (!res.responseOk()) {
             LOG.error(res.getError());
             return false;
@@ -262,7 +280,7 @@ public class PerfCrudRpc {
                 .setOperationRetrieve()
                 .build();
 
-        Onem2mResponsePrimitiveClient res = req.send(onem2mService);
+        Onem2mResponsePrimitiveClient res = send(req);
         if (!res.responseOk()) {
             LOG.error(res.getError());
             return false;
@@ -325,7 +343,7 @@ public class PerfCrudRpc {
                 .setOperationDelete()
                 .build();
 
-        Onem2mResponsePrimitiveClient res = req.send(onem2mService);
+        Onem2mResponsePrimitiveClient res = send(req);
         if (!res.responseOk()) {
             LOG.error(res.getError());
             return false;
@@ -348,7 +366,7 @@ public class PerfCrudRpc {
                 .setOperationDelete()
                 .build();
 
-        Onem2mResponsePrimitiveClient res = req.send(onem2mService);
+        Onem2mResponsePrimitiveClient res = send(req);
         if (!res.responseOk()) {
             LOG.error(res.getError());
             return false;
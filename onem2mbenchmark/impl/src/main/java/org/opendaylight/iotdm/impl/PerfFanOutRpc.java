@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.opendaylight.iotdm.onem2m.client.Container;
+import org.opendaylight.iotdm.onem2m.client.Onem2mRequestPrimitiveClient;
+import org.opendaylight.iotdm.onem2m.client.Onem2mRequestPrimitiveClientBuilder;
+import org.opendaylight.iotdm.onem2m.client.Onem2mResponsePrimitiveClient;
+import org.opendaylight.iotdm.onem2m.core.Onem2m;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.Onem2mService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the latency of the requests sent to the fanOutPoint of a group depending on the size of the group.
+ * GROUP_SIZES[GROUP_SIZES.length - 1] containers are created under the perf test cseBase and a group is created
+ * for each size with the first size containers as members.  The fanOutPoint of each group is retrieved
+ * numResources times one after another and the average latency is reported per group size.  The requests use
+ * the in-process dispatch so the results are not dominated by the transport.
+ */
+public class PerfFanOutRpc {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PerfFanOutRpc.class);
+    public static final int[] GROUP_SIZES = {1, 10, 100, 500};
+    private static final String BASE_CONTAINER = "FANOUT_CONTAINER";
+    private static final String GROUP_PREFIX = "FANOUT_GROUP_";
+
+    public List<Long> fanOutLatencyUsByGroupSize = new ArrayList<>(GROUP_SIZES.length);
+    private final Onem2mService onem2mService;
+
+    public PerfFanOutRpc(Onem2mService onem2mService) {
+        this.onem2mService = onem2mService;
+    }
+
+    /**
+     * @param numResources number of retrieves of the fanOutPoint of each group
+     * @return true if all requests succeeded
+     */
+    public boolean runPerfTest(int numResources) {
+        boolean status = setUpResourcesForTest();
+        if (status) {
+            for (int groupSize : GROUP_SIZES) {
+                long latencyUs = fanOutTest(groupSize, numResources);
+                status &= latencyUs >= 0;
+                fanOutLatencyUsByGroupSize.add(Math.max(0, latencyUs));
+                LOG.info("Fan-out to {} members: average latency: {} us", groupSize, latencyUs);
+            }
+        }
+        removeResourcesForTest();
+        return status;
+    }
+
+    private static String memberUri(int member) {
+        return "/" + Onem2m.SYS_PERF_TEST_CSE + "/" + BASE_CONTAINER + "/MEMBER_" + member;
+    }
+
+    private static String groupUri(int groupSize) {
+        return "/" + Onem2m.SYS_PERF_TEST_CSE + "/" + GROUP_PREFIX + groupSize;
+    }
+
+    private boolean setUpResourcesForTest() {
+        if (!createTestContainer("/" + Onem2m.SYS_PERF_TEST_CSE, BASE_CONTAINER)) {
+            return false;
+        }
+        int maxMembers = GROUP_SIZES[GROUP_SIZES.length - 1];
+        for (int member = 0; member < maxMembers; member++) {
+            if (!createTestContainer("/" + Onem2m.SYS_PERF_TEST_CSE + "/" + BASE_CONTAINER, "MEMBER_" + member)) {
+                LOG.error("setUpResourcesForTest: cannot create member: {}", member);
+                return false;
+            }
+        }
+        for (int groupSize : GROUP_SIZES) {
+            if (!createTestGroup(groupSize)) {
+                LOG.error("setUpResourcesForTest: cannot create group of {} members", groupSize);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean createTestContainer(String target, String name) {
+        Container b = new Container();
+        b.setTo(target);
+        b.setOperationCreate();
+        b.setMaxNrInstances(1);
+        b.setCreator(null);
+        b.setName(name);
+
+        Onem2mResponsePrimitiveClient res = b.build().send(onem2mService);
+        if (!res.responseOk()) {
+            LOG.error(res.getError());
+            return false;
+        }
+        return true;
+    }
+
+    private boolean createTestGroup(int groupSize) {
+        JSONArray mids = new JSONArray();
+        for (int member = 0; member < groupSize; member++) {
+            mids.put(memberUri(member));
+        }
+        JSONObject grp = new JSONObject();
+        grp.put("mnm", groupSize);
+        grp.put("mid", mids);
+        JSONObject content = new JSONObject();
+        content.put("m2m:" + Onem2m.ResourceTypeString.GROUP, grp);
+
+        Onem2mRequestPrimitiveClient req = new Onem2mRequestPrimitiveClientBuilder()
+                .setProtocol(Onem2m.Protocol.NATIVEAPP)
+                .setContentFormat(Onem2m.ContentFormat.JSON)
+                .setTo("/" + Onem2m.SYS_PERF_TEST_CSE)
+                .setFrom("/createTestGroup")
+                .setRequestIdentifier("RQI_1234")
+                .setOperationCreate()
+                .setResourceType(Onem2m.ResourceType.GROUP)
+                .setName(GROUP_PREFIX + groupSize)
+                .setPrimitiveContent(content.toString())
+                .build();
+
+        Onem2mResponsePrimitiveClient res = req.send(onem2mService);
+        if (!res.responseOk()) {
+            LOG.error(res.getError());
+            return false;
+        }
+        return true;
+    }
+
+    /*
+     * Returns the average latency in microseconds or -1 if any of the retrieves failed.
+     */
+    private long fanOutTest(int groupSize, int numResources) {
+        Onem2mRequestPrimitiveClient req = new Onem2mRequestPrimitiveClientBuilder()
+                .setProtocol(Onem2m.Protocol.NATIVEAPP)
+                .setContentFormat(Onem2m.ContentFormat.JSON)
+                .setTo(groupUri(groupSize) + "/fopt")
+                .setFrom("/fanOutTest")
+                .setRequestIdentifier("RQI_1234")
+                .setOperationRetrieve()
+                .build();
+
+        long startTime = System.nanoTime();
+        for (int i = 0; i < numResources; i++) {
+            Onem2mResponsePrimitiveClient res = req.send(onem2mService);
+            if (!res.responseOk()) {
+                LOG.error("fanOutTest: group of {} members: {}", groupSize, res.getError());
+                return -1;
+            }
+        }
+        long delta = System.nanoTime() - startTime;
+        return delta / 1000 / numResources;
+    }
+
+    private boolean removeResource(String uri) {
+        Onem2mRequestPrimitiveClient req = new Onem2mRequestPrimitiveClientBuilder()
+                .setProtocol(Onem2m.Protocol.NATIVEAPP)
+                .setContentFormat(Onem2m.ContentFormat.JSON)
+                .setTo(uri)
+                .setFrom("/removeResourcesForTest")
+                .setResultContent("1")
+                .setRequestIdentifier("RQI_1234")
+                .setOperationDelete()
+                .build();
+
+        Onem2mResponsePrimitiveClient res = req.send(onem2mService);
+        if (!res.responseOk()) {
+            LOG.error(res.getError());
+            return false;
+        }
+        return true;
+    }
+
+    private void removeResourcesForTest() {
+        for (int groupSize : GROUP_SIZES) {
+            removeResource(groupUri(groupSize));
+        }
+        removeResource("/" + Onem2m.SYS_PERF_TEST_CSE + "/" + BASE_CONTAINER);
+    }
+}
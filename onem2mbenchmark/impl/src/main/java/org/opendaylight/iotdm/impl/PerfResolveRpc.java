@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.opendaylight.iotdm.onem2m.client.Container;
+import org.opendaylight.iotdm.onem2m.client.Onem2mRequestPrimitiveClient;
+import org.opendaylight.iotdm.onem2m.client.Onem2mRequestPrimitiveClientBuilder;
+import org.opendaylight.iotdm.onem2m.client.Onem2mResponsePrimitiveClient;
+import org.opendaylight.iotdm.onem2m.core.Onem2m;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.Onem2mService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the cost of the structured URI resolution depending on the depth of the target resource.  A chain
+ * of MAX_DEPTH containers is created under the perf test cseBase and the container at each depth is retrieved
+ * by its hierarchical URI numResources times.  The retrieves of a missing child of the deepest container
+ * measure the resolution of the URIs which don't exist.  The requests use the in-process dispatch so the
+ * results are not dominated by the transport.
+ */
+public class PerfResolveRpc {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PerfResolveRpc.class);
+    public static final int MAX_DEPTH = 16;
+    private static final String BASE_CONTAINER = "RESOLVE_CONTAINER";
+
+    public long retrievesPerSec, notFoundPerSec;
+    public List<Long> retrievesPerSecByDepth = new ArrayList<>(MAX_DEPTH);
+    private final Onem2mService onem2mService;
+
+    public PerfResolveRpc(Onem2mService onem2mService) {
+        this.onem2mService = onem2mService;
+    }
+
+    /**
+     * @param numResources number of retrieves at each depth
+     * @param numThreads number of threads sending the retrieves
+     * @return true if all requests succeeded
+     */
+    public boolean runPerfTest(int numResources, int numThreads) {
+        List<String> uris = setUpResourcesForTest();
+        if (null == uris) {
+            removeResourcesForTest();
+            return false;
+        }
+
+        boolean status = true;
+        // the first pass resolves each URI once so all depths are measured the same way
+        for (String uri : uris) {
+            status &= retrieveOne(uri, true);
+        }
+        for (int depth = 1; depth <= uris.size(); depth++) {
+            long perSec = retrieveTest(uris.get(depth - 1), true, numResources, numThreads);
+            status &= perSec >= 0;
+            retrievesPerSecByDepth.add(Math.max(0, perSec));
+            LOG.info("Retrieve at depth {}: ops/s: {}", depth, perSec);
+        }
+        retrievesPerSec = retrievesPerSecByDepth.get(retrievesPerSecByDepth.size() - 1);
+
+        notFoundPerSec = retrieveTest(uris.get(uris.size() - 1) + "/NOT_FOUND", false, numResources, numThreads);
+        status &= notFoundPerSec >= 0;
+        LOG.info("Retrieve of a missing resource at depth {}: ops/s: {}", uris.size() + 1, notFoundPerSec);
+
+        removeResourcesForTest();
+        return status;
+    }
+
+    private List<String> setUpResourcesForTest() {
+        List<String> uris = new ArrayList<>(MAX_DEPTH);
+        String parent = "/" + Onem2m.SYS_PERF_TEST_CSE;
+        for (int depth = 1; depth <= MAX_DEPTH; depth++) {
+            String name = (depth == 1) ? BASE_CONTAINER : "CONTAINER_" + depth;
+            if (!createTestContainer(parent, name)) {
+                LOG.error("setUpResourcesForTest: cannot create container at depth {}", depth);
+                return null;
+            }
+            parent = parent + "/" + name;
+            uris.add(parent);
+        }
+        return uris;
+    }
+
+    private boolean createTestContainer(String target, String name) {
+        Container b = new Container();
+        b.setTo(target);
+        b.setOperationCreate();
+        b.setMaxNrInstances(1);
+        b.setCreator(null);
+        b.setName(name);
+
+        Onem2mResponsePrimitiveClient res = b.build().send(onem2mService);
+        if (!res.responseOk()) {
+            LOG.error(res.getError());
+            return false;
+        }
+        return true;
+    }
+
+    private boolean retrieveOne(String uri, boolean exists) {
+        Onem2mRequestPrimitiveClient req = new Onem2mRequestPrimitiveClientBuilder()
+                .setProtocol(Onem2m.Protocol.NATIVEAPP)
+                .setContentFormat(Onem2m.ContentFormat.JSON)
+                .setTo(uri)
+                .setFrom("/retrieveOneTest")
+                .setRequestIdentifier("RQI_1234")
+                .setOperationRetrieve()
+                .build();
+
+        Onem2mResponsePrimitiveClient res = req.send(onem2mService);
+        if (res.responseOk() != exists) {
+            LOG.error("retrieveOne: {}: {}", uri, res.getError());
+            return false;
+        }
+        return true;
+    }
+
+    /*
+     * Returns the retrieves/second or -1 if any of the retrieves failed.
+     */
+    private long retrieveTest(final String uri, final boolean exists, final int numResources, int numThreads) {
+        final AtomicInteger remaining = new AtomicInteger(numResources);
+        final AtomicInteger numFailed = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+
+        long startTime = System.nanoTime();
+        for (int i = 0; i < numThreads; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    while (remaining.getAndDecrement() > 0) {
+                        if (!retrieveOne(uri, exists)) {
+                            numFailed.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.HOURS);
+        } catch (InterruptedException e) {
+            LOG.error("retrieveTest: interrupted");
+            executor.shutdownNow();
+            return -1;
+        }
+        long delta = System.nanoTime() - startTime;
+
+        if (numFailed.get() != 0) {
+            LOG.error("retrieveTest: {} of {} retrieves of {} failed", numFailed.get(), numResources, uri);
+            return -1;
+        }
+        return (long) (numResources / ((double) delta / 1000000000));
+    }
+
+    private boolean removeResourcesForTest() {
+        Onem2mRequestPrimitiveClient req = new Onem2mRequestPrimitiveClientBuilder()
+                .setProtocol(Onem2m.Protocol.NATIVEAPP)
+                .setContentFormat(Onem2m.ContentFormat.JSON)
+                .setTo("/" + Onem2m.SYS_PERF_TEST_CSE + "/" + BASE_CONTAINER)
+                .setFrom("/removeResourcesForTest")
+                .setResultContent("1")
+                .setRequestIdentifier("RQI_1234")
+                .setOperationDelete()
+                .build();
+
+        Onem2mResponsePrimitiveClient res = req.send(onem2mService);
+        if (!res.responseOk()) {
+            LOG.error(res.getError());
+            return false;
+        }
+        return true;
+    }
+}
@@ -9,7 +9,10 @@
 package org.opendaylight.iotdm.onem2m.odlclient;
 
 import org.eclipse.californium.core.CoapClient;
+import org.eclipse.californium.core.CoapHandler;
+import org.eclipse.californium.core.CoapObserveRelation;
 import org.eclipse.californium.core.CoapResponse;
+import org.eclipse.californium.core.network.Endpoint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,5 +29,22 @@ public class OdlOnem2mCoapClient {
     public CoapResponse sendRequest(OdlOnem2mCoapRequestPrimitive onem2mRequest) {
         return coapClient.advanced(onem2mRequest.coapRequest);
     }
+
+    /**
+     * Sends the requests through the given endpoint instead of the default endpoint of the process.
+     */
+    public OdlOnem2mCoapClient setEndpoint(Endpoint endpoint) {
+        coapClient.setEndpoint(endpoint);
+        return this;
+    }
+
+    /**
+     * Registers the retrieve request as observe relation, the handler is called with the response and with
+     * each notification.
+     */
+    public CoapObserveRelation observe(OdlOnem2mCoapRequestPrimitive onem2mRequest, CoapHandler handler) {
+        onem2mRequest.coapRequest.setObserve();
+        return coapClient.observe(onem2mRequest.coapRequest, handler);
+    }
 }
 
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.jmh;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.json.JSONObject;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+
+/**
+ * Runs the benchmarks selected by the JMH command line and adds the environment they were measured in to each
+ * benchmark of the JSON result: the commit, the number of processors, the JVM, the OS and the maximal heap.
+ * The scores of the baselines are comparable only when they were measured in the same environment.
+ */
+public final class Baseline {
+
+    private static final String FIRST_FIELD = "\"jmhVersion\" :";
+    private static final String UNKNOWN_COMMIT = "unknown";
+
+    private Baseline() {
+    }
+
+    /*
+     * Short id of the commit checked out in the working directory, the working tree changes are not reflected.
+     */
+    private static String commit() {
+        try {
+            Process git = new ProcessBuilder("git", "rev-parse", "--short", "HEAD").redirectErrorStream(true).start();
+            try (BufferedReader output = new BufferedReader(
+                    new InputStreamReader(git.getInputStream(), StandardCharsets.UTF_8))) {
+                String commit = output.readLine();
+                return (0 == git.waitFor() && null != commit) ? commit.trim() : UNKNOWN_COMMIT;
+            }
+        } catch (IOException e) {
+            return UNKNOWN_COMMIT;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return UNKNOWN_COMMIT;
+        }
+    }
+
+    static JSONObject environment() {
+        Runtime runtime = Runtime.getRuntime();
+        return new JSONObject()
+                .put("commit", commit())
+                .put("availableProcessors", runtime.availableProcessors())
+                .put("jvm", System.getProperty("java.vm.name") + " " + System.getProperty("java.vm.version"))
+                .put("os", System.getProperty("os.name") + " " + System.getProperty("os.version") + " " +
+                           System.getProperty("os.arch"))
+                .put("maxHeapMb", runtime.maxMemory() / (1024 * 1024));
+    }
+
+    /**
+     * Adds the environment as the first field of each benchmark of the JSON result written by JMH, the rest of
+     * the result is kept as written.
+     * @param result JSON result file
+     * @throws IOException if the result can't be read or written
+     */
+    static void recordEnvironment(Path result) throws IOException {
+        String json = new String(Files.readAllBytes(result), StandardCharsets.UTF_8);
+        String environment = "\"environment\" : " + environment().toString() + ",\n        ";
+        Files.write(result, json.replace(FIRST_FIELD, environment + FIRST_FIELD).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Takes the JMH options, e.g. -rf json -rff baseline/20261017-9ca5e1e-cache.json CacheBenchmark.
+     */
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException, IOException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        new Runner(commandLine).run();
+        if (commandLine.getResult().hasValue()) {
+            recordEnvironment(Paths.get(commandLine.getResult().get()));
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.jmh;
+
+import java.util.concurrent.TimeUnit;
+import org.opendaylight.iotdm.jmh.dao.InMemoryDaoResourceTreeFactory;
+import org.opendaylight.iotdm.onem2m.core.Onem2m;
+import org.opendaylight.iotdm.onem2m.core.database.transactionCore.Cache;
+import org.opendaylight.iotdm.onem2m.core.database.transactionCore.Onem2mResourceElem;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResource;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResourceKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Get and put of the resources cached by the transaction core. The containers are put under one cseBase so the
+ * put also updates the cached children of the cseBase, the same as the create of a resource does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CacheBenchmark {
+
+    private static final String CSE_RESOURCE_ID = "0-1-1-0";
+    private static final String CONTAINER_JSON =
+            "{\"ct\":\"20170601T120000\",\"lt\":\"20170601T120000\",\"et\":\"29991231T111111\",\"st\":0," +
+            "\"mni\":10,\"mbs\":1000,\"cni\":0,\"cbs\":0,\"lbl\":[\"jmh\"]}";
+
+    @Param({"1000", "100000"})
+    public int numResources;
+
+    private InMemoryDaoResourceTreeFactory factory;
+    private Cache cache;
+    private Onem2mResourceKey[] keys;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup
+    public void setUp() {
+        factory = new InMemoryDaoResourceTreeFactory();
+        cache = new Cache(factory.getDaoResourceTreeReader());
+        cache.createResource(CSE_RESOURCE_ID, "JMH_CSE", "{}", "", Onem2m.ResourceType.CSE_BASE, "");
+        keys = new Onem2mResourceKey[numResources];
+        for (int i = 0; i < numResources; i++) {
+            String resourceId = resourceId(i);
+            keys[i] = new Onem2mResourceKey(resourceId);
+            put(resourceId, i);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        factory.close();
+    }
+
+    private static String resourceId(int i) {
+        return "0-" + Integer.toString(i + 2, 36) + "-1-0";
+    }
+
+    private Onem2mResource put(String resourceId, int i) {
+        return cache.createResource(resourceId, "CNT_" + i, CONTAINER_JSON, CSE_RESOURCE_ID,
+                                    Onem2m.ResourceType.CONTAINER, "/JMH_CSE");
+    }
+
+    @Benchmark
+    public Onem2mResourceElem get(Cursor cursor) {
+        int i = cursor.next++ % numResources;
+        return cache.retrieveResourceById(keys[i]);
+    }
+
+    @Benchmark
+    public Onem2mResource put(Cursor cursor) {
+        // overwrite the existing entries, the cache keeps its size during the measurement
+        int i = cursor.next++ % numResources;
+        return put(keys[i].getResourceId(), i);
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.jmh;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.opendaylight.iotdm.jmh.dao.InMemoryDaoResourceTreeFactory;
+import org.opendaylight.iotdm.jmh.dao.MdsalTestDataBroker;
+import org.opendaylight.iotdm.onem2m.client.CSE;
+import org.opendaylight.iotdm.onem2m.client.Container;
+import org.opendaylight.iotdm.onem2m.client.ContentInstance;
+import org.opendaylight.iotdm.onem2m.client.Onem2mRequestPrimitiveClient;
+import org.opendaylight.iotdm.onem2m.core.Onem2m;
+import org.opendaylight.iotdm.onem2m.core.Onem2mCoreProvider;
+import org.opendaylight.iotdm.onem2m.core.database.dao.DaoResourceTreeReader;
+import org.opendaylight.iotdm.onem2m.core.database.dao.DaoResourceTreeWriter;
+import org.opendaylight.iotdm.onem2m.core.database.dao.factory.DaoResourceTreeFactory;
+import org.opendaylight.iotdm.onem2m.core.database.transactionCore.Onem2mResourceElem;
+import org.opendaylight.iotdm.onem2m.core.resource.ResourceContainer;
+import org.opendaylight.iotdm.onem2m.core.rest.utils.ResponsePrimitive;
+import org.opendaylight.iotdm.onem2m.persistence.logstore.LogStoreDaoResourceTreeFactory;
+import org.opendaylight.iotdm.onem2m.persistence.mdsal.MDSALDaoResourceTreeFactory;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.cse.list.Onem2mCseKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mParentChildListKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResourceKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.onem2m.parent.child.list.Onem2mParentChild;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.onem2m.persistence.logstore.rev170601.Onem2mPersistenceLogstoreConfigBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Side by side comparison of the DAO plugins: the throughput and the latency distribution (the sample mode
+ * reports the percentiles) of the contentInstance creates processed by the core end to end, and of the reads
+ * and updates of the resources through the DAO directly, bypassing the cache of the core.
+ *
+ * The MDSAL plugin runs on the in-memory data broker of the controller test framework, the LogStore plugin
+ * writes into a temporary directory and syncs each batch, the in-memory plugin is the reference without any
+ * datastore. Run it with more threads (-t) to see the effect of the group commit of the plugins.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DaoBenchmark {
+
+    private static final String CSE_NAME = "JMH_CSE";
+    private static final String CONTAINER_NAME = "JMH_CNT";
+    private static final String CONTAINER_URI = "/" + CSE_NAME + "/" + CONTAINER_NAME;
+    private static final String READ_CONTAINER_NAME = "JMH_READ_CNT";
+    private static final String READ_CONTAINER_URI = "/" + CSE_NAME + "/" + READ_CONTAINER_NAME;
+    // the oldest contentInstances of the written container are removed at the container limit of the core,
+    // the creates delete as well
+    private static final int MAX_NR_INSTANCES = ResourceContainer.SYS_MAX_NR_INSTANCES;
+
+    @Param({"inmemory", "mdsal", "logstore"})
+    public String dao;
+
+    // contentInstances of the container the resources are read from
+    @Param({"10000"})
+    public int numResources;
+
+    private Onem2mCoreProvider provider;
+    private DaoResourceTreeFactory factory;
+    private DaoResourceTreeReader reader;
+    private DaoResourceTreeWriter writer;
+    private Path logStoreDirectory;
+    private String[] resourceIds;
+    private String jsonContent;
+
+    private static void check(ResponsePrimitive response, String operation) {
+        String rsc = response.getPrimitive(ResponsePrimitive.RESPONSE_STATUS_CODE);
+        if (null == rsc || !rsc.startsWith("2")) {
+            throw new IllegalStateException(operation + " failed: " + rsc + " " +
+                                            response.getPrimitive(ResponsePrimitive.CONTENT));
+        }
+    }
+
+    private ResponsePrimitive send(Onem2mRequestPrimitiveClient request) {
+        return provider.handle(request, Onem2m.DEFAULTSECURITYLEVEL);
+    }
+
+    private DaoResourceTreeFactory createFactory() throws Exception {
+        switch (dao) {
+            case "inmemory":
+                return new InMemoryDaoResourceTreeFactory();
+            case "mdsal":
+                return new MDSALDaoResourceTreeFactory(new MdsalTestDataBroker().start(), null);
+            case "logstore":
+                logStoreDirectory = Files.createTempDirectory("iotdm-logstore");
+                return new LogStoreDaoResourceTreeFactory(new Onem2mPersistenceLogstoreConfigBuilder()
+                        .setDataDirectory(logStoreDirectory.toString())
+                        .build());
+            default:
+                throw new IllegalArgumentException("Unknown DAO plugin: " + dao);
+        }
+    }
+
+    private void createContainer(String name, Integer maxNrInstances) {
+        Container container = new Container();
+        container.setTo("/" + CSE_NAME);
+        container.setOperationCreate();
+        if (null != maxNrInstances) {
+            container.setMaxNrInstances(maxNrInstances);
+        }
+        container.setCreator(null);
+        container.setName(name);
+        check(send(container.build()), "Container create");
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        provider = new Onem2mCoreProvider(null, null, null);
+        factory = createFactory();
+        provider.registerDaoPlugin(factory);
+        reader = factory.getDaoResourceTreeReader();
+        writer = factory.getDaoResourceTreeWriter();
+
+        CSE cse = new CSE();
+        cse.setCseId(CSE_NAME);
+        cse.setCseType(Onem2m.CseType.INCSE);
+        cse.setOperationCreate();
+        check(send(cse.build()), "CSE provisioning");
+
+        createContainer(CONTAINER_NAME, MAX_NR_INSTANCES);
+        createContainer(READ_CONTAINER_NAME, null);
+        for (int i = 0; i < numResources; i++) {
+            ContentInstance cin = new ContentInstance();
+            cin.setTo(READ_CONTAINER_URI);
+            cin.setOperationCreate();
+            cin.setContent(Integer.toString(i));
+            check(send(cin.build()), "ContentInstance create");
+        }
+
+        String cseResourceId = reader.retrieveCseByName(new Onem2mCseKey(CSE_NAME)).getResourceId();
+        String containerResourceId = reader.retrieveChildByName(cseResourceId, READ_CONTAINER_NAME).getResourceId();
+        List<Onem2mParentChild> children = reader.retrieveParentChildList(
+                new Onem2mParentChildListKey(containerResourceId));
+        resourceIds = children.stream().map(Onem2mParentChild::getResourceId).toArray(String[]::new);
+        jsonContent = reader.retrieveResourceById(new Onem2mResourceKey(resourceIds[0]))
+                            .getResourceContentJsonString();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        provider.unregisterDaoPlugin();
+        factory.close();
+        if (null != logStoreDirectory) {
+            try (Stream<Path> files = Files.walk(logStoreDirectory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private String randomResourceId() {
+        return resourceIds[ThreadLocalRandom.current().nextInt(resourceIds.length)];
+    }
+
+    @Benchmark
+    public ResponsePrimitive createContentInstance() {
+        ContentInstance cin = new ContentInstance();
+        cin.setTo(CONTAINER_URI);
+        cin.setOperationCreate();
+        cin.setContent("21.5");
+        return send(cin.build());
+    }
+
+    @Benchmark
+    public Onem2mResourceElem retrieveResource() {
+        return reader.retrieveResourceById(new Onem2mResourceKey(randomResourceId()));
+    }
+
+    @Benchmark
+    public List<Onem2mParentChild> retrieveChildren() {
+        return reader.retrieveParentChildList(new Onem2mParentChildListKey(randomResourceId()), 1, 0);
+    }
+
+    @Benchmark
+    public boolean updateResource() {
+        return writer.updateJsonResourceContentString(null, randomResourceId(), jsonContent);
+    }
+}
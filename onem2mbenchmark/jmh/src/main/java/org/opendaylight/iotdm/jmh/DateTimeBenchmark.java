@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.jmh;
+
+import java.util.concurrent.TimeUnit;
+import org.opendaylight.iotdm.onem2m.core.utils.Onem2mDateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Formatting and comparison of the onem2m time strings, done for the ct/lt/et of every created resource and for
+ * the expiration and filter criteria checks.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DateTimeBenchmark {
+
+    private String older = "20170601T120000";
+    private String newer = "20170601T120001";
+    private String expiration = "20991231T235959";
+
+    @Benchmark
+    public String getCurrDateTime() {
+        return Onem2mDateTime.getCurrDateTime();
+    }
+
+    @Benchmark
+    public String addAgeToCurTime() {
+        return Onem2mDateTime.addAgeToCurTime(3600);
+    }
+
+    @Benchmark
+    public int dateCompare() {
+        return Onem2mDateTime.dateCompare(older, newer);
+    }
+
+    @Benchmark
+    public int dateCompareForever() {
+        return Onem2mDateTime.dateCompare(Onem2mDateTime.FOREVER, newer);
+    }
+
+    @Benchmark
+    public boolean isValidDateTime() {
+        return Onem2mDateTime.isValidDateTime(expiration);
+    }
+
+    @Benchmark
+    public boolean isAlive() {
+        return Onem2mDateTime.isAlive(expiration);
+    }
+
+    @Benchmark
+    public long toEpochMillis() {
+        return Onem2mDateTime.toEpochMillis(expiration);
+    }
+}
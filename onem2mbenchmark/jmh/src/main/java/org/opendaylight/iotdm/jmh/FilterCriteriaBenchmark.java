@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.jmh;
+
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
+import org.opendaylight.iotdm.onem2m.client.Onem2mRequestPrimitiveClientBuilder;
+import org.opendaylight.iotdm.onem2m.core.Onem2m;
+import org.opendaylight.iotdm.onem2m.core.database.transactionCore.Onem2mResourceElem;
+import org.opendaylight.iotdm.onem2m.core.rest.RequestPrimitiveProcessor;
+import org.opendaylight.iotdm.onem2m.core.rest.utils.FilterCriteria;
+import org.opendaylight.iotdm.onem2m.core.rest.utils.ResponsePrimitive;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Filter criteria check of one contentInstance, done for every resource visited by the discovery and by the
+ * retrieve with filter criteria.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FilterCriteriaBenchmark {
+
+    private RequestPrimitiveProcessor labelsAndTypeRequest;
+    private RequestPrimitiveProcessor datesAndSizeRequest;
+    private RequestPrimitiveProcessor noFilterRequest;
+    private Onem2mResourceElem resource;
+    private ResponsePrimitive response;
+
+    private static RequestPrimitiveProcessor request(String query) {
+        Onem2mRequestPrimitiveClientBuilder builder = new Onem2mRequestPrimitiveClientBuilder()
+                .setProtocol(Onem2m.Protocol.NATIVEAPP)
+                .setContentFormat(Onem2m.ContentFormat.JSON)
+                .setTo("/JMH_CSE/JMH_AE/JMH_CNT")
+                .setFrom("/FilterCriteriaBenchmark")
+                .setRequestIdentifier("RQI_1234")
+                .setOperationRetrieve();
+        builder.parseQueryStringIntoPrimitives(query);
+
+        RequestPrimitiveProcessor request = new RequestPrimitiveProcessor();
+        ResponsePrimitive response = new ResponsePrimitive();
+        request.processRequestPrimitive(builder.build(), response);
+        if (null != response.getPrimitiveResponseStatusCode()) {
+            throw new IllegalStateException("Invalid filter criteria: " + query);
+        }
+        return request;
+    }
+
+    @Setup
+    public void setUp() {
+        labelsAndTypeRequest = request("lbl=other&lbl=temperature&rty=3&rty=4");
+        datesAndSizeRequest = request("cra=20170101T000000&crb=20171231T000000&ms=20170101T000000&sza=1&szb=100");
+        noFilterRequest = request("");
+
+        String content = new JSONObject(Payloads.CONTENT_INSTANCE).getJSONObject("m2m:cin").toString();
+        resource = new Onem2mResourceElem(null, "0-4-1-0", "0-3-1-0", "cin_1",
+                                          String.valueOf(Onem2m.ResourceType.CONTENT_INSTANCE), content,
+                                          "/JMH_CSE/JMH_AE/JMH_CNT");
+        response = new ResponsePrimitive();
+        response.setJsonResourceContent(content);
+    }
+
+    @Benchmark
+    public boolean matchesNoFilter() {
+        return FilterCriteria.matches(noFilterRequest, resource, response);
+    }
+
+    @Benchmark
+    public boolean matchesLabelsAndType() {
+        return FilterCriteria.matches(labelsAndTypeRequest, resource, response);
+    }
+
+    @Benchmark
+    public boolean matchesDatesAndSize() {
+        return FilterCriteria.matches(datesAndSizeRequest, resource, response);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.jmh;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
+import org.opendaylight.iotdm.onem2m.core.utils.JsonUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parse and serialization of the AE, container and contentInstance representations and the JsonUtils helpers
+ * used to build them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonBenchmark {
+
+    @Param({"ae", "cnt", "cin"})
+    public String resource;
+
+    private String payload;
+    private JSONObject parsed;
+
+    @Setup
+    public void setUp() {
+        switch (resource) {
+            case "ae":
+                payload = Payloads.AE;
+                break;
+            case "cnt":
+                payload = Payloads.CONTAINER;
+                break;
+            default:
+                payload = Payloads.CONTENT_INSTANCE;
+                break;
+        }
+        parsed = new JSONObject(payload);
+    }
+
+    @Benchmark
+    public JSONObject parse() {
+        return new JSONObject(payload);
+    }
+
+    @Benchmark
+    public Optional<JSONObject> stringToJsonObject() {
+        return JsonUtils.stringToJsonObject(payload);
+    }
+
+    @Benchmark
+    public String serialize() {
+        return parsed.toString();
+    }
+
+    @Benchmark
+    public String buildContentInstance() {
+        JSONObject cin = new JSONObject();
+        JsonUtils.put(cin, "rn", "cin_1");
+        JsonUtils.put(cin, "ty", 4);
+        JsonUtils.put(cin, "ct", "20170601T120000");
+        JsonUtils.put(cin, "lt", "20170601T120000");
+        JsonUtils.put(cin, "et", "29991231T111111");
+        JsonUtils.append(cin, "lbl", "jmh");
+        JsonUtils.append(cin, "lbl", "temperature");
+        JsonUtils.put(cin, "st", 0);
+        JsonUtils.inc(cin, "st");
+        JsonUtils.put(cin, "cs", 4);
+        JsonUtils.put(cin, "con", "21.5");
+        return JsonUtils.put(new JSONObject(), "m2m:cin", cin).toString();
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.jmh;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.opendaylight.iotdm.jmh.dao.MdsalTestDataBroker;
+import org.opendaylight.iotdm.onem2m.client.CSE;
+import org.opendaylight.iotdm.onem2m.client.Container;
+import org.opendaylight.iotdm.onem2m.client.ContentInstance;
+import org.opendaylight.iotdm.onem2m.client.Onem2mRequestPrimitiveClient;
+import org.opendaylight.iotdm.onem2m.core.Onem2m;
+import org.opendaylight.iotdm.onem2m.core.Onem2mCoreProvider;
+import org.opendaylight.iotdm.onem2m.core.resource.ResourceContainer;
+import org.opendaylight.iotdm.onem2m.core.rest.utils.ResponsePrimitive;
+import org.opendaylight.iotdm.onem2m.persistence.mdsal.MDSALDaoResourceTreeFactory;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.onem2m.persistence.mdsal.rev170601.Onem2mPersistenceMdsalConfigBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scaling of the contentInstance creates of the MDSAL DAO plugin with the number of shards. The containers are
+ * children of the cseBase so they are spread over the shards, each benchmark thread writes its own container
+ * so the writes of the threads go through different shards when there are enough shards.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MdsalShardBenchmark {
+
+    private static final String CSE_NAME = "JMH_CSE";
+    private static final String CONTAINER_NAME = "JMH_CNT_";
+    private static final int NUM_CONTAINERS = 64;
+    // the oldest contentInstances are removed at the container limit of the core so the tree keeps
+    // its size during the measurement
+    private static final int MAX_NR_INSTANCES = ResourceContainer.SYS_MAX_NR_INSTANCES;
+
+    @Param({"1", "2", "4", "8"})
+    public short numShards;
+
+    private Onem2mCoreProvider provider;
+    private MDSALDaoResourceTreeFactory factory;
+    private final AtomicInteger nextContainer = new AtomicInteger();
+
+    @State(Scope.Thread)
+    public static class ThreadContainer {
+        String uri;
+
+        @Setup(Level.Trial)
+        public void setUp(MdsalShardBenchmark benchmark) {
+            uri = "/" + CSE_NAME + "/" + CONTAINER_NAME +
+                  (benchmark.nextContainer.getAndIncrement() % NUM_CONTAINERS);
+        }
+    }
+
+    private static void check(ResponsePrimitive response, String operation) {
+        String rsc = response.getPrimitive(ResponsePrimitive.RESPONSE_STATUS_CODE);
+        if (null == rsc || !rsc.startsWith("2")) {
+            throw new IllegalStateException(operation + " failed: " + rsc + " " +
+                                            response.getPrimitive(ResponsePrimitive.CONTENT));
+        }
+    }
+
+    private ResponsePrimitive send(Onem2mRequestPrimitiveClient request) {
+        return provider.handle(request, Onem2m.DEFAULTSECURITYLEVEL);
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        provider = new Onem2mCoreProvider(null, null, null);
+        factory = new MDSALDaoResourceTreeFactory(new MdsalTestDataBroker().start(),
+                new Onem2mPersistenceMdsalConfigBuilder().setNumShards(numShards).build());
+        provider.registerDaoPlugin(factory);
+
+        CSE cse = new CSE();
+        cse.setCseId(CSE_NAME);
+        cse.setCseType(Onem2m.CseType.INCSE);
+        cse.setOperationCreate();
+        check(send(cse.build()), "CSE provisioning");
+
+        for (int i = 0; i < NUM_CONTAINERS; i++) {
+            Container container = new Container();
+            container.setTo("/" + CSE_NAME);
+            container.setOperationCreate();
+            container.setMaxNrInstances(MAX_NR_INSTANCES);
+            container.setCreator(null);
+            container.setName(CONTAINER_NAME + i);
+            check(send(container.build()), "Container create");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        provider.unregisterDaoPlugin();
+    }
+
+    @Benchmark
+    public ResponsePrimitive createContentInstance(ThreadContainer container) {
+        ContentInstance cin = new ContentInstance();
+        cin.setTo(container.uri);
+        cin.setOperationCreate();
+        cin.setContent("21.5");
+        return send(cin.build());
+    }
+}
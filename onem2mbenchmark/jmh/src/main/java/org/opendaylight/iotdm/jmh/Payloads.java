@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.jmh;
+
+/**
+ * Typical resource representations as returned by the retrieve of the AE, container and contentInstance.
+ */
+final class Payloads {
+
+    static final String AE =
+            "{\"m2m:ae\":{\"rn\":\"JMH_AE\",\"ty\":2,\"ri\":\"0-2-1-0\",\"pi\":\"0-1-1-0\"," +
+            "\"ct\":\"20170601T120000\",\"lt\":\"20170601T120000\",\"et\":\"29991231T111111\"," +
+            "\"lbl\":[\"jmh\",\"sensor\"],\"api\":\"jmh.benchmark\",\"aei\":\"CJMH_AE\"," +
+            "\"poa\":[\"http://127.0.0.1:8282\"],\"rr\":true}}";
+
+    static final String CONTAINER =
+            "{\"m2m:cnt\":{\"rn\":\"JMH_CNT\",\"ty\":3,\"ri\":\"0-3-1-0\",\"pi\":\"0-2-1-0\"," +
+            "\"ct\":\"20170601T120000\",\"lt\":\"20170601T120000\",\"et\":\"29991231T111111\"," +
+            "\"lbl\":[\"jmh\",\"temperature\"],\"st\":5,\"cr\":\"CJMH_AE\",\"mni\":100,\"mbs\":10000," +
+            "\"mia\":3600,\"cni\":5,\"cbs\":20}}";
+
+    static final String CONTENT_INSTANCE =
+            "{\"m2m:cin\":{\"rn\":\"cin_1\",\"ty\":4,\"ri\":\"0-4-1-0\",\"pi\":\"0-3-1-0\"," +
+            "\"ct\":\"20170601T120000\",\"lt\":\"20170601T120000\",\"et\":\"29991231T111111\"," +
+            "\"lbl\":[\"jmh\",\"temperature\"],\"st\":0,\"cr\":\"CJMH_AE\",\"cnf\":\"text/plain:0\"," +
+            "\"cs\":4,\"con\":\"21.5\"}}";
+
+    private Payloads() {
+    }
+}
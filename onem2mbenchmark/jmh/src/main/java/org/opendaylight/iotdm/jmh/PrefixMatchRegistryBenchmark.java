@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.jmh;
+
+import java.util.concurrent.TimeUnit;
+import org.opendaylight.iotdm.onem2m.plugins.IotdmPlugin;
+import org.opendaylight.iotdm.onem2m.plugins.IotdmPluginRequest;
+import org.opendaylight.iotdm.onem2m.plugins.IotdmPluginResponse;
+import org.opendaylight.iotdm.onem2m.plugins.Onem2mPluginManager;
+import org.opendaylight.iotdm.onem2m.plugins.channels.Onem2mBaseCommunicationChannel;
+import org.opendaylight.iotdm.onem2m.plugins.registry.Onem2mSharedPrefixMatchRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookup of the plugin handling the target URI of the received request in the registry of a channel shared
+ * by the plugins registered for URI prefixes (e.g. one plugin per AE of the IPE).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PrefixMatchRegistryBenchmark {
+
+    @Param({"10", "1000"})
+    public int numPlugins;
+
+    private Onem2mSharedPrefixMatchRegistry registry;
+    private String[] targetUris;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    private static class BenchmarkPlugin implements IotdmPlugin<IotdmPluginRequest, IotdmPluginResponse> {
+        private final String instanceName;
+
+        BenchmarkPlugin(String instanceName) {
+            this.instanceName = instanceName;
+        }
+
+        @Override
+        public String getPluginName() {
+            return "jmh";
+        }
+
+        @Override
+        public String getInstanceName() {
+            return instanceName;
+        }
+
+        @Override
+        public void handle(IotdmPluginRequest request, IotdmPluginResponse response) {
+
+        }
+
+        @Override
+        public void close() {
+
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        Onem2mPluginManager.ChannelIdentifier channelId = Onem2mPluginManager.getInstance().new ChannelIdentifier(
+                Onem2mBaseCommunicationChannel.CommunicationChannelType.SERVER,
+                Onem2mBaseCommunicationChannel.TransportProtocol.TCP,
+                "0.0.0.0", 8282, "http", Onem2mPluginManager.Mode.SharedPrefixMatch);
+        registry = new Onem2mSharedPrefixMatchRegistry(channelId);
+
+        registry.regPlugin(new BenchmarkPlugin("root"), "/");
+        for (int i = 0; i < numPlugins; i++) {
+            registry.regPlugin(new BenchmarkPlugin("ae_" + i), "/JMH_CSE/AE_" + i);
+        }
+
+        targetUris = new String[numPlugins * 2];
+        for (int i = 0; i < numPlugins; i++) {
+            // requests to the resources deeper in the tree of the AE and to the not registered prefixes
+            targetUris[2 * i] = "/JMH_CSE/AE_" + i + "/CNT_1/cin_" + i;
+            targetUris[2 * i + 1] = "/JMH_CSE/OTHER_AE_" + i + "/CNT_1";
+        }
+    }
+
+    @Benchmark
+    public IotdmPlugin getPlugin(Cursor cursor) {
+        int i = cursor.next++ % targetUris.length;
+        return registry.getPlugin(targetUris[i]);
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.jmh;
+
+import com.google.common.util.concurrent.Monitor;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.opendaylight.iotdm.onem2m.core.rest.RequestLocker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Locking of the resources by the requests. The private variants lock resources of the thread only, the shared
+ * variant locks the same resource from all threads the same as the concurrent updates of one container do.
+ * The locker parameter compares the lock stripes of the RequestLocker with the global monitor it replaced,
+ * main() runs the comparison with 1 to MAX_THREADS threads.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestLockerBenchmark {
+
+    private static final String SHARED_RESOURCE_ID = "0-1-1-0";
+    private static final int GROUP_SIZE = 10;
+    private static final AtomicInteger NEXT_THREAD = new AtomicInteger();
+    private static final int MAX_THREADS = 64;
+
+    interface Locker {
+        void lock(String resourceId);
+
+        void unlock(String resourceId);
+    }
+
+    /**
+     * The RequestLocker before the lock stripes: every lock and unlock enters one global monitor to find the
+     * monitor of the resource in the map.
+     */
+    static final class GlobalMonitorLocker implements Locker {
+        private final Monitor gMonitor = new Monitor();
+        private final ConcurrentHashMap<String, ResourceInfo> resourceInfoMap = new ConcurrentHashMap<>(200);
+
+        private static final class ResourceInfo {
+            int numLocks = 1;
+            final Monitor monitor = new Monitor();
+        }
+
+        @Override
+        public void lock(String resourceId) {
+            ResourceInfo resourceInfo;
+            gMonitor.enter();
+            resourceInfo = resourceInfoMap.get(resourceId);
+            if (resourceInfo == null) {
+                resourceInfo = new ResourceInfo();
+                resourceInfoMap.put(resourceId, resourceInfo);
+            } else {
+                resourceInfo.numLocks++;
+            }
+            gMonitor.leave();
+            resourceInfo.monitor.enter();
+        }
+
+        @Override
+        public void unlock(String resourceId) {
+            gMonitor.enter();
+            ResourceInfo resourceInfo = resourceInfoMap.get(resourceId);
+            if (resourceInfo != null) {
+                resourceInfo.monitor.leave();
+                resourceInfo.numLocks--;
+                if (resourceInfo.numLocks == 0) {
+                    resourceInfoMap.remove(resourceId);
+                }
+            }
+            gMonitor.leave();
+        }
+    }
+
+    static final class StripedLocker implements Locker {
+        @Override
+        public void lock(String resourceId) {
+            RequestLocker.getInstance().LockResource(resourceId);
+        }
+
+        @Override
+        public void unlock(String resourceId) {
+            RequestLocker.getInstance().UnlockResource(resourceId);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Lockers {
+        @Param({"striped", "globalMonitor"})
+        public String locker;
+
+        Locker impl;
+
+        @Setup
+        public void setUp() {
+            impl = "globalMonitor".equals(locker) ? new GlobalMonitorLocker() : new StripedLocker();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadResources {
+        String resourceId;
+        List<String> groupResourceIds = new ArrayList<>(GROUP_SIZE);
+
+        @Setup
+        public void setUp() {
+            int thread = NEXT_THREAD.incrementAndGet();
+            resourceId = "0-" + Integer.toString(thread, 36) + "-1-0";
+            for (int i = 0; i < GROUP_SIZE; i++) {
+                groupResourceIds.add("1-" + Integer.toString(thread * GROUP_SIZE + i, 36) + "-1-0");
+            }
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void lockUnlock(Lockers lockers, ThreadResources resources) {
+        lockers.impl.lock(resources.resourceId);
+        lockers.impl.unlock(resources.resourceId);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void lockUnlockPrivate(Lockers lockers, ThreadResources resources) {
+        lockers.impl.lock(resources.resourceId);
+        lockers.impl.unlock(resources.resourceId);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void lockUnlockShared(Lockers lockers) {
+        lockers.impl.lock(SHARED_RESOURCE_ID);
+        lockers.impl.unlock(SHARED_RESOURCE_ID);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean tryLockUnlockResources(ThreadResources resources) {
+        boolean locked = RequestLocker.getInstance().TryLockResources(resources.groupResourceIds,
+                                                                      1, TimeUnit.SECONDS);
+        if (locked) {
+            RequestLocker.getInstance().UnlockResources(resources.groupResourceIds);
+        }
+        return locked;
+    }
+
+    /**
+     * Runs the private and shared variants of both lockers with 1, 2, 4 ... MAX_THREADS threads, the other
+     * JMH options are taken from the command line, e.g. -rf json -rff result.json.
+     */
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException, IOException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        for (int threads = 1; threads <= MAX_THREADS; threads *= 2) {
+            OptionsBuilder options = new OptionsBuilder();
+            options.parent(commandLine)
+                   .include(RequestLockerBenchmark.class.getSimpleName() + ".lockUnlock(Private|Shared)$")
+                   .threads(threads);
+            String result = null;
+            if (commandLine.getResult().hasValue()) {
+                result = commandLine.getResult().get();
+                int dot = result.lastIndexOf('.');
+                String suffix = "-t" + threads;
+                result = (dot < 0) ? result + suffix : result.substring(0, dot) + suffix + result.substring(dot);
+                options.result(result);
+            }
+            new Runner(options.build()).run();
+            if (null != result) {
+                Baseline.recordEnvironment(Paths.get(result));
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.jmh;
+
+import java.util.concurrent.TimeUnit;
+import org.opendaylight.iotdm.jmh.dao.InMemoryDaoResourceTreeFactory;
+import org.opendaylight.iotdm.onem2m.client.CSE;
+import org.opendaylight.iotdm.onem2m.client.Container;
+import org.opendaylight.iotdm.onem2m.client.ContentInstance;
+import org.opendaylight.iotdm.onem2m.client.Onem2mRequestPrimitiveClient;
+import org.opendaylight.iotdm.onem2m.client.Onem2mRequestPrimitiveClientBuilder;
+import org.opendaylight.iotdm.onem2m.core.Onem2m;
+import org.opendaylight.iotdm.onem2m.core.Onem2mCoreProvider;
+import org.opendaylight.iotdm.onem2m.core.resource.ResourceContainer;
+import org.opendaylight.iotdm.onem2m.core.rest.utils.ResponsePrimitive;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Create and retrieve requests processed by the core from the parsing of the primitives to the response, the
+ * same path the requests received by the protocol plugins take. The DAO plugin keeps the resource tree in
+ * memory so the results are not dominated by the datastore.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestProcessingBenchmark {
+
+    private static final String CSE_NAME = "JMH_CSE";
+    private static final String CONTAINER_NAME = "JMH_CNT";
+    private static final String CONTAINER_URI = "/" + CSE_NAME + "/" + CONTAINER_NAME;
+    // the oldest contentInstances are removed at the container limit of the core so the tree keeps
+    // its size during the measurement
+    private static final int MAX_NR_INSTANCES = ResourceContainer.SYS_MAX_NR_INSTANCES;
+
+    private Onem2mCoreProvider provider;
+    private InMemoryDaoResourceTreeFactory factory;
+
+    private static void check(ResponsePrimitive response, String operation) {
+        String rsc = response.getPrimitive(ResponsePrimitive.RESPONSE_STATUS_CODE);
+        if (null == rsc || !rsc.startsWith("2")) {
+            throw new IllegalStateException(operation + " failed: " + rsc + " " +
+                                            response.getPrimitive(ResponsePrimitive.CONTENT));
+        }
+    }
+
+    private ResponsePrimitive send(Onem2mRequestPrimitiveClient request) {
+        return provider.handle(request, Onem2m.DEFAULTSECURITYLEVEL);
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        provider = new Onem2mCoreProvider(null, null, null);
+        factory = new InMemoryDaoResourceTreeFactory();
+        provider.registerDaoPlugin(factory);
+
+        CSE cse = new CSE();
+        cse.setCseId(CSE_NAME);
+        cse.setCseType(Onem2m.CseType.INCSE);
+        cse.setOperationCreate();
+        check(send(cse.build()), "CSE provisioning");
+
+        Container container = new Container();
+        container.setTo("/" + CSE_NAME);
+        container.setOperationCreate();
+        container.setMaxNrInstances(MAX_NR_INSTANCES);
+        container.setCreator(null);
+        container.setName(CONTAINER_NAME);
+        check(send(container.build()), "Container create");
+
+        for (int i = 0; i < MAX_NR_INSTANCES; i++) {
+            check(createContentInstance(), "ContentInstance create");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        provider.unregisterDaoPlugin();
+        factory.close();
+    }
+
+    @Benchmark
+    public ResponsePrimitive createContentInstance() {
+        ContentInstance cin = new ContentInstance();
+        cin.setTo(CONTAINER_URI);
+        cin.setOperationCreate();
+        cin.setContent("21.5");
+        return send(cin.build());
+    }
+
+    @Benchmark
+    public ResponsePrimitive retrieveContainer() {
+        return send(new Onem2mRequestPrimitiveClientBuilder()
+                .setProtocol(Onem2m.Protocol.NATIVEAPP)
+                .setContentFormat(Onem2m.ContentFormat.JSON)
+                .setTo(CONTAINER_URI)
+                .setFrom("/RequestProcessingBenchmark")
+                .setRequestIdentifier("RQI_1234")
+                .setOperationRetrieve()
+                .build());
+    }
+
+    @Benchmark
+    public ResponsePrimitive retrieveLatest() {
+        return send(new Onem2mRequestPrimitiveClientBuilder()
+                .setProtocol(Onem2m.Protocol.NATIVEAPP)
+                .setContentFormat(Onem2m.ContentFormat.JSON)
+                .setTo(CONTAINER_URI + "/la")
+                .setFrom("/RequestProcessingBenchmark")
+                .setRequestIdentifier("RQI_1234")
+                .setOperationRetrieve()
+                .build());
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.jmh;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.opendaylight.iotdm.onem2m.client.CSE;
+import org.opendaylight.iotdm.onem2m.client.Container;
+import org.opendaylight.iotdm.onem2m.client.ContentInstance;
+import org.opendaylight.iotdm.onem2m.client.Onem2mRequestPrimitiveClient;
+import org.opendaylight.iotdm.onem2m.client.Onem2mRequestPrimitiveClientBuilder;
+import org.opendaylight.iotdm.onem2m.core.Onem2m;
+import org.opendaylight.iotdm.onem2m.core.Onem2mCoreProvider;
+import org.opendaylight.iotdm.onem2m.core.database.transactionCore.ResourceTreeRecovery;
+import org.opendaylight.iotdm.onem2m.core.resource.ResourceContainer;
+import org.opendaylight.iotdm.onem2m.core.rest.utils.ResponsePrimitive;
+import org.opendaylight.iotdm.onem2m.persistence.logstore.LogStoreDaoResourceTreeFactory;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.onem2m.core.rev141210.Onem2mCoreConfigBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.onem2m.core.rev141210.onem2m.core.warm.restart.config.WarmRestartConfigBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.onem2m.persistence.logstore.rev170601.Onem2mPersistenceLogstoreConfigBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.onem2m.persistence.logstore.rev170601.onem2m.persistence.logstore.write.config.WriteConfigBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Timeout;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Restart of the core with the resource tree kept by the LogStore DAO plugin. Each invocation registers the
+ * plugin on the resource tree written by the setup, as after a restart of the controller:
+ * startup is the time until the requests are served, steadyState the time until the state derived from the
+ * resource tree is rebuilt, serveHotSet the time until the latest contentInstance of each container is
+ * retrieved, the requests the clients send first after a restart.
+ *
+ * The resource tree of numResources resources is made of containers holding the maximal number of
+ * contentInstances of the core each. The hotSet parameter enables the hot set snapshot written when the plugin
+ * is unregistered. The resource tree is written once per trial by WRITER_THREADS threads, it takes minutes with
+ * the default number of resources.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+// the writes of the trial setup count to the first iteration, the default timeout of 10 minutes interrupts them
+@Timeout(time = 2, timeUnit = TimeUnit.HOURS)
+@State(Scope.Benchmark)
+public class WarmRestartBenchmark {
+
+    private static final String CSE_NAME = "JMH_CSE";
+    private static final String CONTAINER_NAME = "JMH_CNT_";
+    private static final int HOT_SET_SIZE = 100000;
+    private static final int RECOVERY_THREADS = 4;
+    private static final int WRITER_THREADS = 8;
+    private static final int CONTENT_INSTANCES_PER_CONTAINER = ResourceContainer.SYS_MAX_NR_INSTANCES;
+
+    @Param({"true", "false"})
+    public boolean hotSet;
+
+    // containers and contentInstances of the resource tree
+    @Param({"2000000"})
+    public int numResources;
+
+    private int numContainers;
+    private Onem2mCoreProvider provider;
+    private Path directory;
+    private Path logStoreDirectory;
+
+    private static void check(ResponsePrimitive response, String operation) {
+        String rsc = response.getPrimitive(ResponsePrimitive.RESPONSE_STATUS_CODE);
+        if (null == rsc || !rsc.startsWith("2")) {
+            throw new IllegalStateException(operation + " failed: " + rsc + " " +
+                                            response.getPrimitive(ResponsePrimitive.CONTENT));
+        }
+    }
+
+    private ResponsePrimitive send(Onem2mRequestPrimitiveClient request) {
+        return provider.handle(request, Onem2m.DEFAULTSECURITYLEVEL);
+    }
+
+    private static String containerUri(int i) {
+        return "/" + CSE_NAME + "/" + CONTAINER_NAME + i;
+    }
+
+    private ResourceTreeRecovery registerDaoPlugin() throws IOException {
+        // the durability of the writes isn't measured, the restart reads the same segments without the syncs
+        provider.registerDaoPlugin(new LogStoreDaoResourceTreeFactory(new Onem2mPersistenceLogstoreConfigBuilder()
+                .setDataDirectory(logStoreDirectory.toString())
+                .setWriteConfig(new WriteConfigBuilder().setSyncWrites(false).build())
+                .build()));
+        return provider.getResourceTreeRecovery();
+    }
+
+    private void retrieveLatest() {
+        for (int i = 0; i < numContainers; i++) {
+            check(send(new Onem2mRequestPrimitiveClientBuilder()
+                    .setProtocol(Onem2m.Protocol.NATIVEAPP)
+                    .setContentFormat(Onem2m.ContentFormat.JSON)
+                    .setTo(containerUri(i) + "/la")
+                    .setFrom("/WarmRestartBenchmark")
+                    .setRequestIdentifier("RQI_1234")
+                    .setOperationRetrieve()
+                    .build()), "Latest retrieve");
+        }
+    }
+
+    private void writeContainer(int i) {
+        Container container = new Container();
+        container.setTo("/" + CSE_NAME);
+        container.setOperationCreate();
+        container.setMaxNrInstances(CONTENT_INSTANCES_PER_CONTAINER);
+        container.setCreator(null);
+        container.setName(CONTAINER_NAME + i);
+        check(send(container.build()), "Container create");
+        for (int j = 0; j < CONTENT_INSTANCES_PER_CONTAINER; j++) {
+            ContentInstance cin = new ContentInstance();
+            cin.setTo(containerUri(i));
+            cin.setOperationCreate();
+            cin.setContent(Integer.toString(j));
+            check(send(cin.build()), "ContentInstance create");
+        }
+    }
+
+    private void writeResourceTree() throws Exception {
+        ExecutorService writers = Executors.newFixedThreadPool(WRITER_THREADS);
+        try {
+            List<Future<Void>> written = new ArrayList<>();
+            for (int i = 0; i < numContainers; i++) {
+                final int container = i;
+                written.add(writers.submit((Callable<Void>) () -> {
+                    writeContainer(container);
+                    return null;
+                }));
+            }
+            for (Future<Void> future : written) {
+                future.get();
+            }
+        } finally {
+            writers.shutdownNow();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        numContainers = Math.max(1, numResources / (1 + CONTENT_INSTANCES_PER_CONTAINER));
+        directory = Files.createTempDirectory("iotdm-warm-restart");
+        logStoreDirectory = Files.createDirectory(directory.resolve("logstore"));
+        provider = new Onem2mCoreProvider(new Onem2mCoreConfigBuilder()
+                .setWarmRestartConfig(new WarmRestartConfigBuilder()
+                        .setHotSetFile(directory.resolve("hot-set").toString())
+                        .setHotSetSize(hotSet ? (long) HOT_SET_SIZE : 0L)
+                        .setHotSetSnapshotInterval(0L)
+                        .setRecoveryThreads((short) RECOVERY_THREADS)
+                        .build())
+                .build(), null, null);
+        registerDaoPlugin();
+
+        CSE cse = new CSE();
+        cse.setCseId(CSE_NAME);
+        cse.setCseType(Onem2m.CseType.INCSE);
+        cse.setOperationCreate();
+        check(send(cse.build()), "CSE provisioning");
+
+        writeResourceTree();
+        // the latest contentInstances are cached, they make the hot set of the snapshot written when unregistered
+        retrieveLatest();
+        provider.unregisterDaoPlugin();
+    }
+
+    @TearDown(Level.Iteration)
+    public void restartTearDown() {
+        provider.unregisterDaoPlugin();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public ResourceTreeRecovery startup() throws IOException {
+        return registerDaoPlugin();
+    }
+
+    @Benchmark
+    public ResourceTreeRecovery steadyState() throws InterruptedException, IOException {
+        ResourceTreeRecovery recovery = registerDaoPlugin();
+        if (!recovery.awaitSteadyState(1, TimeUnit.HOURS)) {
+            throw new IllegalStateException("Resource tree recovery failed: " + recovery.getStats());
+        }
+        return recovery;
+    }
+
+    @Benchmark
+    public ResourceTreeRecovery serveHotSet() throws IOException {
+        ResourceTreeRecovery recovery = registerDaoPlugin();
+        retrieveLatest();
+        return recovery;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.jmh.dao;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.opendaylight.iotdm.onem2m.core.Onem2m;
+import org.opendaylight.iotdm.onem2m.core.database.dao.DaoResourceTreeReader;
+import org.opendaylight.iotdm.onem2m.core.database.transactionCore.Onem2mResourceElem;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.Onem2mCseList;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.Onem2mCseListBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.Onem2mResourceTree;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.Onem2mResourceTreeBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.cse.list.Onem2mCse;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.cse.list.Onem2mCseKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mParentChildList;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mParentChildListBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree
+        .Onem2mParentChildListKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResource;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResourceKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree
+        .onem2m.parent.child.list.Onem2mParentChild;
+
+/**
+ * Reads the resource tree from the in-memory store.
+ */
+public class InMemoryResourceTreeReader implements DaoResourceTreeReader {
+    private final InMemoryResourceTreeStore store;
+
+    InMemoryResourceTreeReader(InMemoryResourceTreeStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public Onem2mCse retrieveCseByName(Onem2mCseKey key) {
+        return store.cses.get(key.getName());
+    }
+
+    @Override
+    public Onem2mResourceElem retrieveResourceById(Onem2mResourceKey key) {
+        Onem2mResource resource = store.resources.get(key.getResourceId());
+        if (null == resource) {
+            return null;
+        }
+        return new Onem2mResourceElem(this, resource.getResourceId(), resource.getParentId(), resource.getName(),
+                                      resource.getResourceType(), resource.getResourceContentJsonString(),
+                                      resource.getParentTargetUri());
+    }
+
+    @Override
+    public List<Onem2mParentChild> retrieveParentChildList(Onem2mParentChildListKey key) {
+        Map<String, Onem2mParentChild> childMap = store.children.get(key.getParentResourceId());
+        if (null == childMap) {
+            return null;
+        }
+        return new ArrayList<>(childMap.values());
+    }
+
+    @Override
+    public List<Onem2mParentChild> retrieveParentChildList(Onem2mParentChildListKey key, int limit, int offset) {
+        Map<String, Onem2mParentChild> childMap = store.children.get(key.getParentResourceId());
+        if (limit <= 0 || null == childMap) {
+            return new ArrayList<>();
+        }
+        return childMap.values()
+                       .stream()
+                       .skip(offset)
+                       .limit(limit)
+                       .collect(Collectors.toList());
+    }
+
+    @Override
+    public Onem2mParentChild retrieveChildByName(String resourceId, String name) {
+        Map<String, Onem2mParentChild> childMap = store.children.get(resourceId);
+        return (null == childMap) ? null : childMap.get(name);
+    }
+
+    @Override
+    public Onem2mCseList retrieveFullCseList() {
+        return new Onem2mCseListBuilder().setOnem2mCse(new ArrayList<>(store.cses.values())).build();
+    }
+
+    @Override
+    public Onem2mResourceTree retrieveFullResourceList() {
+        List<Onem2mParentChildList> parentChildLists = new ArrayList<>(store.children.size());
+        for (Map.Entry<String, Map<String, Onem2mParentChild>> entry : store.children.entrySet()) {
+            parentChildLists.add(new Onem2mParentChildListBuilder()
+                    .setKey(new Onem2mParentChildListKey(entry.getKey()))
+                    .setParentResourceId(entry.getKey())
+                    .setOnem2mParentChild(new ArrayList<>(entry.getValue().values()))
+                    .build());
+        }
+        return new Onem2mResourceTreeBuilder()
+                .setOnem2mResource(new ArrayList<>(store.resources.values()))
+                .setOnem2mParentChildList(parentChildLists)
+                .build();
+    }
+
+    @Override
+    public String retrieveAeResourceIdByAeId(String cseBaseName, String aeId) {
+        Map<String, String> cseAeIds = store.aeIds.get(cseBaseName);
+        return (null == cseAeIds) ? null : cseAeIds.get(aeId);
+    }
+
+    @Override
+    public Integer isEntityRegistered(String entityId, String cseBaseCseId) {
+        if (null != cseBaseCseId) {
+            return (null != retrieveAeResourceIdByAeId(cseBaseCseId, entityId)) ? Onem2m.ResourceType.AE : null;
+        }
+        for (String cseBaseName : store.cses.keySet()) {
+            if (null != retrieveAeResourceIdByAeId(cseBaseName, entityId)) {
+                return Onem2m.ResourceType.AE;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int retrieveSystemStartId() {
+        return store.systemStartId;
+    }
+
+    @Override
+    public void close() {
+
+    }
+}
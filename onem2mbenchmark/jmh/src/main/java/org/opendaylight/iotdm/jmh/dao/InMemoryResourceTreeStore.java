@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.jmh.dao;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.cse.list.Onem2mCse;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResource;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree
+        .onem2m.parent.child.list.Onem2mParentChild;
+
+/**
+ * The data shared by the in-memory reader and writer. The maps mirror the lists of the onem2m-cse-list and
+ * onem2m-resource-tree containers of the MDSAL datastore.
+ */
+class InMemoryResourceTreeStore {
+    final Map<String, Onem2mCse> cses = new ConcurrentHashMap<>();
+    final Map<String, Onem2mResource> resources = new ConcurrentHashMap<>();
+    // children are kept sorted by name, the same order the MDSAL list is returned in
+    final Map<String, Map<String, Onem2mParentChild>> children = new ConcurrentHashMap<>();
+    final Map<String, Map<String, String>> aeIds = new ConcurrentHashMap<>();
+    final Map<String, Map<String, String>> remoteCseIds = new ConcurrentHashMap<>();
+    volatile int systemStartId = 0;
+
+    Map<String, Onem2mParentChild> childMap(String parentResourceId) {
+        return children.computeIfAbsent(parentResourceId, k -> new ConcurrentSkipListMap<>());
+    }
+
+    void clear() {
+        cses.clear();
+        resources.clear();
+        children.clear();
+        aeIds.clear();
+        remoteCseIds.clear();
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.jmh.dao;
+
+import org.opendaylight.controller.md.sal.binding.api.DataBroker;
+import org.opendaylight.controller.md.sal.binding.test.AbstractConcurrentDataBrokerTest;
+
+/**
+ * In-memory MD-SAL data broker of the controller test framework, it runs the MDSAL DAO plugin without the
+ * controller. The commits are processed by the executor of the data broker as in the controller, the datastore
+ * is not persisted.
+ */
+public class MdsalTestDataBroker extends AbstractConcurrentDataBrokerTest {
+
+    public MdsalTestDataBroker() {
+        super(true);
+    }
+
+    /**
+     * @return the data broker with the schema of all YANG modules on the classpath
+     * @throws Exception if the schema can't be loaded
+     */
+    public DataBroker start() throws Exception {
+        setup();
+        return getDataBroker();
+    }
+}
@@ -50,6 +50,7 @@ class Onem2mEdeviceHandler implements IotdmPlugin, IotdmPluginDbClient {
     @Override
     public void dbClientStart() {
         onem2mDataStoreChangeHandler = new Onem2mDataStoreChangeHandler(dataBroker);
+        onem2mDataStoreChangeHandler.register();
         try {
             Onem2mPluginManager.getInstance()
                 .registerPluginHttp(this, 8284, Onem2mPluginManager.Mode.Exclusive, null)
@@ -61,7 +62,10 @@ class Onem2mEdeviceHandler implements IotdmPlugin, IotdmPluginDbClient {
 
     @Override
     public void dbClientStop() {
-        onem2mDataStoreChangeHandler = null;
+        if (onem2mDataStoreChangeHandler != null) {
+            onem2mDataStoreChangeHandler.close();
+            onem2mDataStoreChangeHandler = null;
+        }
         Onem2mPluginManager.getInstance().unregisterIotdmPlugin(this);
     }
 
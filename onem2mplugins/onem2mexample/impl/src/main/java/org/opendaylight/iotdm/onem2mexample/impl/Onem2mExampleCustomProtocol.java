@@ -285,11 +285,15 @@ public class Onem2mExampleCustomProtocol implements IotdmPlugin,
         // here, when we obtain valid ResourceTreeReader
         // ResourceTreeWriter is not used in this example
         onem2mDataStoreChangeHandler = new Onem2mDataStoreChangeHandler(dataBroker);
+        onem2mDataStoreChangeHandler.register();
     }
 
     @Override
     public void dbClientStop() {
-        onem2mDataStoreChangeHandler = null;
+        if (onem2mDataStoreChangeHandler != null) {
+            onem2mDataStoreChangeHandler.close();
+            onem2mDataStoreChangeHandler = null;
+        }
     }
 
 
@@ -19,7 +19,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import org.eclipse.californium.core.CoapClient;
 import org.eclipse.californium.core.CoapHandler;
+import org.eclipse.californium.core.CoapObserveRelation;
 import org.eclipse.californium.core.CoapResponse;
+import org.eclipse.californium.core.coap.Request;
 import org.eclipse.californium.core.network.CoapEndpoint;
 import org.eclipse.californium.core.network.Endpoint;
 import org.eclipse.californium.core.network.config.NetworkConfig;
@@ -117,6 +119,15 @@ public class Onem2mOicClient {
         return;
     }
 
+    /**
+     * Stops the CoAP endpoint of the client, the observe relations are not notified anymore
+     */
+    public void close() {
+        if (client != null) {
+            client.destroy();
+        }
+    }
+
     /**
      *
      * @param host  Host IP Address. If null or empty, Multicast is performed.
@@ -151,6 +162,64 @@ public class Onem2mOicClient {
 
     }
 
+    /**
+     * Client of one request to the device, the shared coapClient is used by the discovery only as it keeps the URI.
+     */
+    private CoapClient newResourceClient(InetAddress host, int port, String href) {
+        CoapClient resourceClient = new CoapClient("coap://" + host.getHostAddress() + ":" +
+                                                   ((port == 0) ? OIC_MULTICAST_PORT : port) + href);
+        resourceClient.useCONs();
+        resourceClient.setEndpoint(client);
+        return resourceClient;
+    }
+
+    /**
+     * GET the representation of the OIC resource, validated by the ETag of the last representation.  The handler
+     * gets 2.03 (Valid) if the representation didn't change.
+     *
+     * @param host  Host IP Address of the device
+     * @param port  Host Port number. If Zero, 5683 is used
+     * @param href  Uri of the resource on the device
+     * @param etag  ETag of the last representation or null
+     * @param handler   Coaphandler for response
+     */
+    public void oicGetResource(InetAddress host, int port, String href, byte[] etag, CoapHandler handler) {
+        CoapClient resourceClient = newResourceClient(host, port, href);
+        Request request = Request.newGet();
+        request.setURI(resourceClient.getURI());
+        if (etag != null) {
+            request.getOptions().addETag(etag);
+        }
+        resourceClient.advanced(handler, request);
+    }
+
+    /**
+     * Observe the OIC resource, the handler gets the current representation and each change of it.  If the
+     * device doesn't support the observe of the resource, the response has no Observe option and the relation
+     * is not established.
+     *
+     * @param host  Host IP Address of the device
+     * @param port  Host Port number. If Zero, 5683 is used
+     * @param href  Uri of the resource on the device
+     * @param handler   Coaphandler for the response and notifications
+     * @return the observe relation
+     */
+    public CoapObserveRelation oicObserveResource(InetAddress host, int port, String href, CoapHandler handler) {
+        return newResourceClient(host, port, href).observe(handler);
+    }
+
+    /**
+     * Parse the representation of an OIC resource
+     *
+     * @param payload   CBOR payload of CoapResponse from GET of the resource
+     * @return  the representation in json format
+     */
+    public String oicParseRepresentation(byte payload[]) throws IOException {
+        CBORFactory factory = new CBORFactory();
+        ObjectMapper m = new ObjectMapper(factory);
+        return m.readTree(payload).toString();
+    }
+
     /**
      * Parse the payload of GET request of /oic/if
      * @param payload   Payload of CoapResponse from GET /oic/if
@@ -13,6 +13,7 @@ import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.on
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
+import java.util.List;
 
 public class Onem2mOicIPE {
     private static final Logger LOG = LoggerFactory.getLogger(Onem2mOicProvider.class);
@@ -136,68 +137,88 @@ public class Onem2mOicIPE {
     /**
      * Creates OIC links as resources that maps to OIC Device
      * It creates a container with name "oic_device_indentifier"_con
-     * and all the OIC links are creates as content sharing
+     * and the OIC links are creates as content sharing
      * resource under it
      *
-     * @param oicResource    Oic device that needs to added to M2M resource tree
+     * @param di        Oic device identifier
+     * @param links     Oic links that need to be added to M2M resource tree
      * @param cseName   CSE name under which AE is created
-     * @return          true on sucessful creation of AE, failse on unsuccessful attempt
+     * @param containerCreated  true if the container was created already, it's not retrieved again
+     * @return          the links written to the tree, null if the container could not be created
      */
-    public boolean createOicDevResource(Onem2mOicClient.OicResource oicResource, String cseName) {
+    public List<Onem2mOicClient.OicLinks> createOicDevResource(String di, List<Onem2mOicClient.OicLinks> links,
+                                                               String cseName, boolean containerCreated) {
         Container oicContainer;
         ContentInstance oicContentInstance;
-        String devContainer = oicResource.di + "_con";
-        int index = 0;
+        String devContainer = di + "_con";
+        List<Onem2mOicClient.OicLinks> written = new ArrayList<Onem2mOicClient.OicLinks>();
 
         if (cseName == null || cseName.isEmpty()) {
             /* Its too chatty to log error in this api */
             //LOG.error("CSE Name is null, cant create AE");
-            return false;
+            return null;
         }
 
-        if (oicResource.di == null || oicResource.di.isEmpty()) {
+        if (di == null || di.isEmpty()) {
             /* Its too chatty to log error in this api */
             //LOG.error("CSE Name is null, cant create AE");
-            return false;
+            return null;
         }
 
-        oicContainer = mapDevToContainer(devContainer, cseName);
-        if (getCse(cseName)) {
-            if (getContainer(cseName, oicContainer.getPrimitiveValue("nm"))
-                                            || createContainer(oicContainer)) {
-                LOG.info("Container creation successfull or already present "
-                                        + oicContainer.getPrimitiveValue("nm"));
-            } else {
-                return false;
-            }
-        } else {
-            //LOG.error("CSE with cseName does not exist");
-            return false;
-        }
-
-        for (index = 0; index < oicResource.links.size(); index++) {
-            oicContentInstance = mapRestoContentRes(cseName, devContainer,
-                    oicResource.links.get(index));
-
+        if (!containerCreated) {
+            oicContainer = mapDevToContainer(devContainer, cseName);
             if (getCse(cseName)) {
-                //if (getContentRes(cseName, devContainer, oicContentInstance.getPrimitiveValue("nm"))
-                // || createContentResource(oicContentInstance)) {
-                if (createContentResource(oicContentInstance)) {
-                    LOG.info("Content Instance creation successfull" +
-                            oicContentInstance.getPrimitiveValue("nm"));
+                if (getContainer(cseName, oicContainer.getPrimitiveValue("nm"))
+                                                || createContainer(oicContainer)) {
+                    LOG.info("Container creation successfull or already present "
+                                            + oicContainer.getPrimitiveValue("nm"));
                 } else {
-                    return false;
+                    return null;
                 }
             } else {
                 //LOG.error("CSE with cseName does not exist");
-                return false;
+                return null;
             }
         }
 
-        return true;
+        for (Onem2mOicClient.OicLinks link : links) {
+            oicContentInstance = mapRestoContentRes(cseName, devContainer, link);
+            if (createContentResource(oicContentInstance)) {
+                LOG.info("Content Instance creation successfull" +
+                        oicContentInstance.getPrimitiveValue("nm"));
+                written.add(link);
+            }
+        }
+
+        return written;
     }
 
+    /**
+     * Creates a content instance with the representation of the OIC resource, it's created when the
+     * representation changes
+     *
+     * @param cseName   CSE name under which AE is created
+     * @param di        Oic device identifier
+     * @param href      Uri of the resource on the device
+     * @param representation    the representation in json format
+     * @return          true on sucessful creation
+     */
+    public boolean createOicRepresentation(String cseName, String di, String href, String representation) {
+        ContentInstance b;
+        ArrayList<String> labels = new ArrayList<String>();
 
+        b = new ContentInstance();
+        b.setTo(cseName + "/" + di + "_con");
+        b.setOperationCreate();
+        b.setContent(representation);
+        b.setContentInfo(href.substring(href.lastIndexOf("/") + 1));
+        b.setOntologyRef(null);
+        labels.add("Iwked-Technology: OIC" + "\n");
+        labels.add("Iwked-Entity-ID:" + href + "\n");
+        labels.add("Iwked-Content-Type: JSON" + "\n");
+        b.setLabels(labels);
+        return createContentResource(b);
+    }
 
     /**
      * Verifies whether the CSE with cseName exists
@@ -452,8 +473,11 @@ public class Onem2mOicIPE {
         Onem2mResponsePrimitiveClient res = req.send(onem2mService);
 
         if (!res.responseOk()) {
-            LOG.info("Content Instance create request failed OR already present: {}",
-                    res.getError());
+            // the content instance of the link is created once, it can be present from before restart
+            if (Onem2m.ResponseStatusCode.CONFLICT.equals(res.getResponseStatusCode())) {
+                return true;
+            }
+            LOG.info("Content Instance create request failed: {}", res.getError());
             return false;
         }
 
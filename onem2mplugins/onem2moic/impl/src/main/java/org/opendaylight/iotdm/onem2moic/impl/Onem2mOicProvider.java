@@ -8,6 +8,7 @@
 package org.opendaylight.iotdm.onem2moic.impl;
 
 import org.eclipse.californium.core.CoapHandler;
+import org.eclipse.californium.core.CoapObserveRelation;
 import org.eclipse.californium.core.CoapResponse;
 import org.eclipse.californium.core.coap.CoAP;
 import org.opendaylight.controller.md.sal.binding.api.ClusteredDataTreeChangeListener;
@@ -23,7 +24,10 @@ import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -35,12 +39,15 @@ import static org.opendaylight.iotdm.onem2moic.impl.Onem2mOicClient.WELL_KNOWN_Q
 
 public class Onem2mOicProvider {
     private static final Logger LOG = LoggerFactory.getLogger(Onem2mOicProvider.class);
+    // devices not discovered by this number of polls are evicted from the registry
+    static final int STALE_POLL_PERIODS = 3;
     protected Onem2mService onem2mService;
     private final DataBroker dataBroker;
     private final RpcProviderRegistry rpcProviderRegistry;
     private ExecutorService pollerExecutor;
     private Onem2mOicClient oicClient;
     private Onem2mOicIPE oicIpe;
+    private final Onem2mOicRegistry oicRegistry;
     private OicConfigParams oicConfigParams;
 
     public Onem2mOicProvider(
@@ -48,6 +55,22 @@ public class Onem2mOicProvider {
             final RpcProviderRegistry rpcProviderRegistry) {
         this.dataBroker = dataBroker;
         this.rpcProviderRegistry = rpcProviderRegistry;
+        this.oicRegistry = new Onem2mOicRegistry();
+    }
+
+    /**
+     * Provider without the poller and the datastore, the discoveries and refreshes are called by the tests
+     */
+    Onem2mOicProvider(Onem2mOicClient oicClient, Onem2mOicIPE oicIpe, Onem2mOicRegistry oicRegistry,
+                      String cseName, int pollPeriod) {
+        this.dataBroker = null;
+        this.rpcProviderRegistry = null;
+        this.oicClient = oicClient;
+        this.oicIpe = oicIpe;
+        this.oicRegistry = oicRegistry;
+        this.oicConfigParams = new OicConfigParams();
+        this.oicConfigParams.setCseName(cseName);
+        this.oicConfigParams.setPollPeriod(pollPeriod);
     }
 
     /**
@@ -72,18 +95,36 @@ public class Onem2mOicProvider {
     }
 
     /**
-     * OIC Device discovery routine by sending /oic/d to "All Coap nodes" multicast group
+     * OIC Device discovery routine by sending /oic/d to "All Coap nodes" multicast group.
+     * The devices and resources are written to the M2M resource tree only if their discovery payload
+     * changed since the last write, see Onem2mOicRegistry.
      */
     public void discoverOicDevices() {
+        discoverOicDevices(null, 0);
+    }
+
+    /**
+     * @param host address of the device to discover, null for the multicast discovery
+     * @param port port of the device, it's ignored for the multicast discovery
+     */
+    void discoverOicDevices(String host, int port) {
         CoapHandler discoverHandler = new CoapHandler() {
             @Override
             public void onLoad(CoapResponse coapResponse) {
                 Onem2mOicClient.OicDevice oicDevice;
                 try {
                     if (CoAP.ResponseCode.isSuccess(coapResponse.getCode())) {
-                        oicDevice = oicClient.oicParseDevicePayload(
-                                                coapResponse.advanced().getPayload());
-                        oicIpe.createOicAe(oicDevice, oicConfigParams.getCseName());
+                        byte[] payload = coapResponse.advanced().getPayload();
+                        oicDevice = oicClient.oicParseDevicePayload(payload);
+                        if (oicDevice.di == null) {
+                            return;
+                        }
+                        Onem2mOicRegistry.OicDeviceEntry device = oicRegistry.deviceDiscovered(oicDevice.di);
+                        String deviceHash = Onem2mOicRegistry.hash(payload);
+                        if (oicRegistry.isDeviceChanged(device, deviceHash) &&
+                                oicIpe.createOicAe(oicDevice, oicConfigParams.getCseName())) {
+                            oicRegistry.deviceWritten(device, deviceHash);
+                        }
                     } else {
                         LOG.error("CoAP Request failure: ", coapResponse.getCode().toString());
                     }
@@ -98,7 +139,7 @@ public class Onem2mOicProvider {
         };
 
         /* Write the response handler */
-        oicClient.oicDeviceDiscovery(null, 0, WELL_KNOWN_DEVICE_QUERY, discoverHandler);
+        oicClient.oicDeviceDiscovery(host, port, WELL_KNOWN_DEVICE_QUERY, discoverHandler);
 
         /* Lets discover resources */
         CoapHandler resourceHandler = new CoapHandler() {
@@ -107,9 +148,17 @@ public class Onem2mOicProvider {
                 Onem2mOicClient.OicResource oicResource;
                 try {
                     if (CoAP.ResponseCode.isSuccess(coapResponse.getCode())) {
-                        oicResource = oicClient.oicParseResourcePayload(
-                                coapResponse.advanced().getPayload());
-                        oicIpe.createOicDevResource(oicResource, oicConfigParams.getCseName());
+                        byte[] payload = coapResponse.advanced().getPayload();
+                        oicResource = oicClient.oicParseResourcePayload(payload);
+                        if (oicResource.di == null || oicResource.di.isEmpty()) {
+                            return;
+                        }
+                        Onem2mOicRegistry.OicDeviceEntry device = oicRegistry.deviceDiscovered(oicResource.di);
+                        synchronized (device) {
+                            device.host = coapResponse.advanced().getSource();
+                            device.port = coapResponse.advanced().getSourcePort();
+                        }
+                        updateOicDevResources(device, oicResource, Onem2mOicRegistry.hash(payload));
                     } else {
                         LOG.error("CoAP Request failure: ", coapResponse.getCode().toString());
                     }
@@ -124,7 +173,191 @@ public class Onem2mOicProvider {
         };
 
         /* Write the response handler */
-        oicClient.oicDeviceDiscovery(null, 0, WELL_KNOWN_QUERY, resourceHandler);
+        oicClient.oicDeviceDiscovery(host, port, WELL_KNOWN_QUERY, resourceHandler);
+    }
+
+    /**
+     * Writes the new links of the device and starts the observe of them
+     */
+    private void updateOicDevResources(Onem2mOicRegistry.OicDeviceEntry device,
+                                       Onem2mOicClient.OicResource oicResource, String resourcesHash) {
+        List<Onem2mOicClient.OicLinks> newLinks = oicRegistry.updateLinks(device, resourcesHash,
+                                                                              oicResource.links);
+        if (newLinks == null) {
+            // same /oic/res as written before, nothing to do
+            return;
+        }
+
+        boolean containerCreated;
+        synchronized (device) {
+            containerCreated = device.containerCreated;
+        }
+        List<Onem2mOicClient.OicLinks> written = oicIpe.createOicDevResource(
+                device.di, newLinks, oicConfigParams.getCseName(), containerCreated);
+        if (written == null) {
+            // the container is checked again by the next discovery
+            oicRegistry.containerLost(device);
+            return;
+        }
+        oicRegistry.linksWritten(device, resourcesHash, written, written.size() == newLinks.size());
+        for (Onem2mOicClient.OicLinks link : written) {
+            observeOicResource(device, link.href);
+        }
+    }
+
+    /**
+     * Observes the representation of the OIC resource, if the device doesn't support the observe
+     * of the resource then its representation is read now and refreshed by the polls
+     */
+    private void observeOicResource(Onem2mOicRegistry.OicDeviceEntry device, String href) {
+        InetAddress host;
+        int port;
+        byte[] etag;
+        boolean observable;
+        synchronized (device) {
+            Onem2mOicRegistry.OicLinkEntry link = device.links.get(href);
+            if (link == null || link.observeRelation != null || device.host == null) {
+                return;
+            }
+            host = device.host;
+            port = device.port;
+            etag = link.etag;
+            observable = link.observable;
+        }
+        if (!observable) {
+            getOicResource(device, host, port, href, etag);
+            return;
+        }
+
+        CoapObserveRelation relation = oicClient.oicObserveResource(host, port, href, new CoapHandler() {
+            @Override
+            public void onLoad(CoapResponse coapResponse) {
+                if (!coapResponse.getOptions().hasObserve()) {
+                    synchronized (device) {
+                        Onem2mOicRegistry.OicLinkEntry link = device.links.get(href);
+                        if (link != null) {
+                            link.observable = false;
+                            link.observeRelation = null;
+                        }
+                    }
+                }
+                handleRepresentation(device, href, coapResponse);
+            }
+            @Override
+            public void onError() {
+                synchronized (device) {
+                    Onem2mOicRegistry.OicLinkEntry link = device.links.get(href);
+                    if (link != null) {
+                        // observed again by the next poll
+                        link.observeRelation = null;
+                    }
+                }
+            }
+        });
+
+        boolean keep;
+        synchronized (device) {
+            Onem2mOicRegistry.OicLinkEntry link = device.links.get(href);
+            keep = link != null && link.observable;
+            if (keep) {
+                link.observeRelation = relation;
+            }
+        }
+        if (!keep) {
+            // not under the device monitor, the notification handler locks it while holding the relation
+            relation.proactiveCancel();
+        }
+    }
+
+    /**
+     * Reads the representation of the OIC resource, validated by the ETag of the last representation
+     */
+    private void getOicResource(Onem2mOicRegistry.OicDeviceEntry device, InetAddress host, int port, String href,
+                                byte[] etag) {
+        oicClient.oicGetResource(host, port, href, etag, new CoapHandler() {
+            @Override
+            public void onLoad(CoapResponse coapResponse) {
+                handleRepresentation(device, href, coapResponse);
+            }
+            @Override
+            public void onError() {
+            }
+        });
+    }
+
+    /**
+     * Writes the representation of the OIC resource if it changed
+     */
+    private void handleRepresentation(Onem2mOicRegistry.OicDeviceEntry device, String href,
+                                      CoapResponse coapResponse) {
+        if (coapResponse.getCode() == CoAP.ResponseCode.VALID) {
+            // validated by the ETag, not changed
+            return;
+        }
+        if (!CoAP.ResponseCode.isSuccess(coapResponse.getCode())) {
+            LOG.error("CoAP Request failure: {}, {}", href, coapResponse.getCode().toString());
+            return;
+        }
+
+        byte[] payload = coapResponse.advanced().getPayload();
+        List<byte[]> etags = coapResponse.getOptions().getETags();
+        byte[] etag = etags.isEmpty() ? null : etags.get(0);
+        String representationHash = Onem2mOicRegistry.hash(payload);
+        if (!oicRegistry.isRepresentationChanged(device, href, etag, representationHash)) {
+            return;
+        }
+        try {
+            String representation = oicClient.oicParseRepresentation(payload);
+            if (oicIpe.createOicRepresentation(oicConfigParams.getCseName(), device.di, href, representation)) {
+                oicRegistry.representationWritten(device, href, etag, representationHash);
+            } else {
+                // e.g. the container was deleted, it's created again by the next discovery
+                oicRegistry.containerLost(device);
+            }
+        } catch (IOException ioe) {
+            LOG.error("Cannot parse OIC representation of: {}, {}", href, ioe.toString());
+        }
+    }
+
+    /**
+     * Refreshes the resources which are not observed, the GET is validated by the ETag of the
+     * last representation, so the unchanged representations are not transferred again.
+     * The devices which were not discovered by the last polls are evicted and not refreshed.
+     */
+    void refreshOicResources() {
+        oicRegistry.evictStaleDevices(
+                TimeUnit.MILLISECONDS.toNanos((long) STALE_POLL_PERIODS * oicConfigParams.getPollPeriod()));
+        for (Onem2mOicRegistry.OicDeviceEntry device : oicRegistry.getDevices()) {
+            List<String> refresh = new ArrayList<String>();
+            List<String> observe = new ArrayList<String>();
+            List<byte[]> etags = new ArrayList<byte[]>();
+            InetAddress host;
+            int port;
+            synchronized (device) {
+                host = device.host;
+                port = device.port;
+                for (Onem2mOicRegistry.OicLinkEntry link : device.links.values()) {
+                    if (!link.linkWritten) {
+                        continue;
+                    }
+                    if (link.observable && link.observeRelation == null) {
+                        observe.add(link.href);
+                    } else if (!link.observable) {
+                        refresh.add(link.href);
+                        etags.add(link.etag);
+                    }
+                }
+            }
+            if (host == null) {
+                continue;
+            }
+            for (String href : observe) {
+                observeOicResource(device, href);
+            }
+            for (int i = 0; i < refresh.size(); i++) {
+                getOicResource(device, host, port, refresh.get(i), etags.get(i));
+            }
+        }
     }
 
     /**
@@ -139,6 +372,7 @@ public class Onem2mOicProvider {
                 LOG.error("Timer was interrrupted {} ", e.toString());
             }
             discoverOicDevices();
+            refreshOicResources();
         }
     }
 
@@ -198,6 +432,7 @@ public class Onem2mOicProvider {
      * Method called when the blueprint container is destroyed.
      */
     public void close() {
+        oicRegistry.clear();
         LOG.info("Onem2mOicProvider Closed");
     }
 
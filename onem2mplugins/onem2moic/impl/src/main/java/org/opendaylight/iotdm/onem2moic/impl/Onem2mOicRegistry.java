@@ -0,0 +1,338 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2moic.impl;
+
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+import org.eclipse.californium.core.CoapObserveRelation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local registry of the discovered OIC devices and their resources (links).  The registry keeps the hash of the
+ * last /oic/d and /oic/res payloads written to the oneM2M resource tree and the hash and ETag of the last
+ * representation of each link, so the repeated discoveries and unchanged representations don't cause writes.
+ * The hashes are recorded only after a successful write, a failed write is retried by the next discovery.
+ * The devices which didn't answer the discoveries for a while are evicted, so they are not polled anymore.
+ */
+public class Onem2mOicRegistry {
+    private static final Logger LOG = LoggerFactory.getLogger(Onem2mOicRegistry.class);
+
+    private final Map<String, OicDeviceEntry> devices = new ConcurrentHashMap<>();
+    private final LongSupplier clock;
+
+    public Onem2mOicRegistry() {
+        this(System::nanoTime);
+    }
+
+    /**
+     * @param clock source of the discovery times in nanoseconds, replaced by the tests
+     */
+    Onem2mOicRegistry(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Registry entry of the OIC device, the fields are guarded by the entry
+     */
+    public static class OicDeviceEntry {
+        final String di;
+        // hash of the /oic/d payload of the created AE
+        String deviceHash;
+        // hash of the /oic/res payload of the created container and content instances
+        String resourcesHash;
+        boolean containerCreated = false;
+        // time of the last discovery of the device, updated by deviceDiscovered()
+        long lastSeen;
+        InetAddress host;
+        int port;
+        final Map<String, OicLinkEntry> links = new HashMap<>();
+
+        OicDeviceEntry(String di) {
+            this.di = di;
+        }
+    }
+
+    /**
+     * Registry entry of the OIC resource (link) of a device
+     */
+    public static class OicLinkEntry {
+        final String href;
+        // the content instance of the link is created once
+        boolean linkWritten = false;
+        // hash and ETag of the last representation written to the tree
+        String representationHash;
+        byte[] etag;
+        CoapObserveRelation observeRelation;
+        // false if the device doesn't accept the observe of the link, it's refreshed by the polls
+        boolean observable = true;
+
+        OicLinkEntry(String href) {
+            this.href = href;
+        }
+    }
+
+    /**
+     * Returns the entry of the discovered device and records the time of the discovery.
+     * @param di id of the device
+     * @return the entry of the device, created by the first discovery
+     */
+    public OicDeviceEntry deviceDiscovered(String di) {
+        long now = clock.getAsLong();
+        return devices.compute(di, (key, device) -> {
+            if (device == null) {
+                device = new OicDeviceEntry(key);
+            }
+            synchronized (device) {
+                device.lastSeen = now;
+            }
+            return device;
+        });
+    }
+
+    public OicDeviceEntry getDevice(String di) {
+        return devices.get(di);
+    }
+
+    public Collection<OicDeviceEntry> getDevices() {
+        return devices.values();
+    }
+
+    /**
+     * @param device the device
+     * @param deviceHash hash of the discovered /oic/d payload
+     * @return true if the AE of the device must be written
+     */
+    public boolean isDeviceChanged(OicDeviceEntry device, String deviceHash) {
+        synchronized (device) {
+            return !deviceHash.equals(device.deviceHash);
+        }
+    }
+
+    public void deviceWritten(OicDeviceEntry device, String deviceHash) {
+        synchronized (device) {
+            device.deviceHash = deviceHash;
+        }
+    }
+
+    /**
+     * Merges the discovered links of the device into the registry.  The links not discovered anymore are removed
+     * and their observe relations are cancelled.
+     * @param device the device
+     * @param resourcesHash hash of the discovered /oic/res payload
+     * @param links the discovered links
+     * @return the links which were not written yet, null if the payload didn't change
+     */
+    public List<Onem2mOicClient.OicLinks> updateLinks(OicDeviceEntry device, String resourcesHash,
+                                                      List<Onem2mOicClient.OicLinks> links) {
+        List<CoapObserveRelation> cancelled = new ArrayList<>();
+        List<Onem2mOicClient.OicLinks> newLinks = new ArrayList<>();
+        synchronized (device) {
+            if (resourcesHash.equals(device.resourcesHash)) {
+                return null;
+            }
+            Set<String> discovered = new HashSet<>();
+            if (links != null) {
+                for (Onem2mOicClient.OicLinks link : links) {
+                    if (link.href == null) {
+                        continue;
+                    }
+                    discovered.add(link.href);
+                    OicLinkEntry entry = device.links.computeIfAbsent(link.href, OicLinkEntry::new);
+                    if (!entry.linkWritten) {
+                        newLinks.add(link);
+                    }
+                }
+            }
+
+            Iterator<OicLinkEntry> it = device.links.values().iterator();
+            while (it.hasNext()) {
+                OicLinkEntry entry = it.next();
+                if (!discovered.contains(entry.href)) {
+                    LOG.info("OIC resource removed from device: {}, {}", device.di, entry.href);
+                    detachObserve(entry, cancelled);
+                    it.remove();
+                }
+            }
+        }
+        cancel(cancelled);
+        return newLinks;
+    }
+
+    /**
+     * Records the written links, the /oic/res payload is recorded when all new links were written.
+     */
+    public void linksWritten(OicDeviceEntry device, String resourcesHash, List<Onem2mOicClient.OicLinks> written,
+                             boolean allWritten) {
+        synchronized (device) {
+            device.containerCreated = true;
+            for (Onem2mOicClient.OicLinks link : written) {
+                OicLinkEntry entry = device.links.get(link.href);
+                if (entry != null) {
+                    entry.linkWritten = true;
+                }
+            }
+            if (allWritten) {
+                device.resourcesHash = resourcesHash;
+            }
+        }
+    }
+
+    /**
+     * @param device the device
+     * @param href the link of the representation
+     * @param etag ETag of the representation, null if the device doesn't use them
+     * @param representationHash hash of the representation
+     * @return true if the representation differs from the last written one, false if the link is not written,
+     *         e.g. a late notification of the observe cancelled by containerLost()
+     */
+    public boolean isRepresentationChanged(OicDeviceEntry device, String href, byte[] etag,
+                                           String representationHash) {
+        synchronized (device) {
+            OicLinkEntry entry = device.links.get(href);
+            if (entry == null || !entry.linkWritten) {
+                return false;
+            }
+            if (etag != null && entry.etag != null && Arrays.equals(etag, entry.etag)) {
+                return false;
+            }
+            return !representationHash.equals(entry.representationHash);
+        }
+    }
+
+    public void representationWritten(OicDeviceEntry device, String href, byte[] etag, String representationHash) {
+        synchronized (device) {
+            OicLinkEntry entry = device.links.get(href);
+            if (entry != null) {
+                entry.etag = etag;
+                entry.representationHash = representationHash;
+            }
+        }
+    }
+
+    /**
+     * Resets the written state of the device after a failed write to its container, e.g. if the container was
+     * deleted from the tree.  The next discovery checks or creates the container again and writes all links and
+     * representations of the device.
+     */
+    public void containerLost(OicDeviceEntry device) {
+        List<CoapObserveRelation> cancelled = new ArrayList<>();
+        synchronized (device) {
+            if (device.containerCreated) {
+                LOG.info("OIC device container reset: {}", device.di);
+            }
+            device.containerCreated = false;
+            device.resourcesHash = null;
+            for (OicLinkEntry entry : device.links.values()) {
+                detachObserve(entry, cancelled);
+                entry.linkWritten = false;
+                entry.representationHash = null;
+                entry.etag = null;
+            }
+        }
+        cancel(cancelled);
+    }
+
+    /**
+     * Removes the devices which were not discovered for the given time and cancels the observe of their links.
+     * The device discovered again is written as a new one, its AE and container are reused because they're
+     * checked for existence before they're created.
+     * @param maxAge maximum time since the last discovery in nanoseconds
+     * @return the evicted devices
+     */
+    public List<OicDeviceEntry> evictStaleDevices(long maxAge) {
+        long now = clock.getAsLong();
+        List<OicDeviceEntry> evicted = new ArrayList<>();
+        List<CoapObserveRelation> cancelled = new ArrayList<>();
+        for (String di : devices.keySet()) {
+            // the device can be discovered concurrently, the check and the removal are atomic
+            devices.computeIfPresent(di, (key, device) -> {
+                synchronized (device) {
+                    if (now - device.lastSeen < maxAge) {
+                        return device;
+                    }
+                    for (OicLinkEntry entry : device.links.values()) {
+                        detachObserve(entry, cancelled);
+                    }
+                }
+                evicted.add(device);
+                return null;
+            });
+        }
+        cancel(cancelled);
+        for (OicDeviceEntry device : evicted) {
+            LOG.info("OIC device not discovered anymore, evicted: {}", device.di);
+        }
+        return evicted;
+    }
+
+    /**
+     * Removes the observe relation from the link, the relation is cancelled by cancel() once the device monitor is
+     * released.  The notification handlers lock the device while Californium holds the monitor of the relation,
+     * so the relation must not be cancelled under the device monitor.
+     */
+    private static void detachObserve(OicLinkEntry entry, List<CoapObserveRelation> cancelled) {
+        if (entry.observeRelation != null) {
+            cancelled.add(entry.observeRelation);
+        }
+        entry.observeRelation = null;
+    }
+
+    private static void cancel(List<CoapObserveRelation> relations) {
+        for (CoapObserveRelation relation : relations) {
+            if (!relation.isCanceled()) {
+                relation.proactiveCancel();
+            }
+        }
+    }
+
+    public void clear() {
+        List<CoapObserveRelation> cancelled = new ArrayList<>();
+        for (OicDeviceEntry device : devices.values()) {
+            synchronized (device) {
+                for (OicLinkEntry entry : device.links.values()) {
+                    detachObserve(entry, cancelled);
+                }
+            }
+        }
+        devices.clear();
+        cancel(cancelled);
+    }
+
+    public static String hash(byte[] payload) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] bytes = digest.digest((payload == null) ? new byte[0] : payload);
+            StringBuilder sb = new StringBuilder();
+            for (byte b : bytes) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is always available, fall back to the weaker hash
+            return Integer.toHexString(Arrays.hashCode(payload));
+        }
+    }
+
+    public static String hash(String s) {
+        return hash(s.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2moic.impl;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyBoolean;
+import static org.mockito.Mockito.anyList;
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Discovery, observe and refresh of the OIC devices simulated on the loopback interface.  The writes to the
+ * oneM2M resource tree are counted by the mocked Onem2mOicIPE, the discovery time is driven by the test, so
+ * the eviction of the vanished devices doesn't depend on the wall clock.
+ */
+public class Onem2mOicProviderTest {
+    private static final String CSE_NAME = "InCSE1";
+    private static final int POLL_PERIOD = 1000;
+    private static final int NUM_DEVICES = 8;
+    private static final int NUM_OBSERVABLE = 2;
+    private static final int NUM_POLLED = 1;
+    private static final long VERIFY_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+
+    private final AtomicLong now = new AtomicLong();
+    private final List<SimulatedOicDevice> devices = new ArrayList<>();
+    private Onem2mOicRegistry registry;
+    private Onem2mOicIPE ipe;
+    private Onem2mOicClient client;
+    private Onem2mOicProvider provider;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        registry = new Onem2mOicRegistry(now::get);
+        ipe = mock(Onem2mOicIPE.class);
+        when(ipe.createOicAe(any(Onem2mOicClient.OicDevice.class), anyString())).thenReturn(true);
+        when(ipe.createOicDevResource(anyString(), anyList(), anyString(), anyBoolean())).thenAnswer(
+                invocation -> new ArrayList<>((List<Onem2mOicClient.OicLinks>) invocation.getArguments()[1]));
+        when(ipe.createOicRepresentation(anyString(), anyString(), anyString(), anyString())).thenReturn(true);
+        client = new Onem2mOicClient(Onem2mOicClient.OicClientType.COAP,
+                                     InetAddress.getLoopbackAddress().getHostAddress());
+        provider = new Onem2mOicProvider(client, ipe, registry, CSE_NAME, POLL_PERIOD);
+    }
+
+    @After
+    public void tearDown() {
+        provider.close();
+        client.close();
+        devices.forEach(SimulatedOicDevice::stop);
+    }
+
+    private SimulatedOicDevice startDevice(String di) {
+        SimulatedOicDevice device = new SimulatedOicDevice(di, NUM_OBSERVABLE, NUM_POLLED).start();
+        devices.add(device);
+        return device;
+    }
+
+    /**
+     * Discovers the running devices and waits for the responses
+     */
+    private void discover() throws InterruptedException {
+        long discoveryTime = now.addAndGet(TimeUnit.MILLISECONDS.toNanos(POLL_PERIOD));
+        for (SimulatedOicDevice device : devices) {
+            provider.discoverOicDevices(device.getHost(), device.getPort());
+        }
+        for (SimulatedOicDevice device : devices) {
+            await(() -> {
+                Onem2mOicRegistry.OicDeviceEntry entry = registry.getDevice(device.getDi());
+                if (entry == null) {
+                    return false;
+                }
+                synchronized (entry) {
+                    return entry.lastSeen == discoveryTime;
+                }
+            }, "discovery of " + device.getDi());
+        }
+    }
+
+    /**
+     * One poll period of the poller: the running devices are discovered and the resources refreshed
+     */
+    private void poll() throws InterruptedException {
+        discover();
+        provider.refreshOicResources();
+    }
+
+    private static void await(Supplier<Boolean> condition, String message) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + VERIFY_TIMEOUT;
+        while (!condition.get() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(message, condition.get());
+    }
+
+    private static String representation(int value) {
+        return "{\"value\":" + value + "}";
+    }
+
+    /**
+     * Waits until all links and representations of the device are written and the observable links observed
+     */
+    private void awaitWritten(SimulatedOicDevice device) throws InterruptedException {
+        await(() -> {
+            Onem2mOicRegistry.OicDeviceEntry entry = registry.getDevice(device.getDi());
+            if (entry == null) {
+                return false;
+            }
+            synchronized (entry) {
+                return entry.containerCreated && entry.links.size() == NUM_OBSERVABLE + NUM_POLLED &&
+                        entry.links.values().stream().allMatch(link -> link.linkWritten &&
+                                link.representationHash != null &&
+                                (!link.observable || link.observeRelation != null));
+            }
+        }, "resources of " + device.getDi() + " written");
+    }
+
+    @Test
+    public void testUnchangedDevicesAreWrittenOnce() throws Exception {
+        for (int i = 0; i < NUM_DEVICES; i++) {
+            startDevice("light-device-" + i);
+        }
+        discover();
+        for (SimulatedOicDevice device : devices) {
+            awaitWritten(device);
+        }
+
+        List<Integer> numGets = new ArrayList<>();
+        for (SimulatedOicDevice device : devices) {
+            numGets.add(device.getNumGets(device.getHrefs().get(NUM_OBSERVABLE)));
+        }
+        int numPolls = 5;
+        for (int i = 0; i < numPolls; i++) {
+            poll();
+        }
+        for (int i = 0; i < devices.size(); i++) {
+            String polledHref = devices.get(i).getHrefs().get(NUM_OBSERVABLE);
+            int expected = numGets.get(i) + numPolls;
+            SimulatedOicDevice device = devices.get(i);
+            // one GET validated by the ETag per refresh
+            await(() -> device.getNumGets(polledHref) == expected, "refresh of " + polledHref);
+        }
+
+        verify(ipe, times(NUM_DEVICES)).createOicAe(any(Onem2mOicClient.OicDevice.class), eq(CSE_NAME));
+        verify(ipe, times(NUM_DEVICES)).createOicDevResource(anyString(), anyList(), eq(CSE_NAME), eq(false));
+        verify(ipe, times(NUM_DEVICES * (NUM_OBSERVABLE + NUM_POLLED)))
+                .createOicRepresentation(eq(CSE_NAME), anyString(), anyString(), anyString());
+    }
+
+    @Test
+    public void testChangedRepresentationsAreWritten() throws Exception {
+        SimulatedOicDevice device = startDevice("light-device");
+        discover();
+        awaitWritten(device);
+
+        String observedHref = device.getHrefs().get(0);
+        device.setValue(observedHref, 1);
+        verify(ipe, timeout(VERIFY_TIMEOUT))
+                .createOicRepresentation(CSE_NAME, device.getDi(), observedHref, representation(1));
+
+        String polledHref = device.getHrefs().get(NUM_OBSERVABLE);
+        device.setValue(polledHref, 2);
+        poll();
+        verify(ipe, timeout(VERIFY_TIMEOUT))
+                .createOicRepresentation(CSE_NAME, device.getDi(), polledHref, representation(2));
+    }
+
+    @Test
+    public void testVanishedDeviceIsEvicted() throws Exception {
+        SimulatedOicDevice vanishing = startDevice("vanishing-device");
+        SimulatedOicDevice staying = startDevice("staying-device");
+        discover();
+        awaitWritten(vanishing);
+        awaitWritten(staying);
+
+        vanishing.stop();
+        devices.remove(vanishing);
+        for (int i = 0; i <= Onem2mOicProvider.STALE_POLL_PERIODS; i++) {
+            poll();
+        }
+
+        assertNull(registry.getDevice(vanishing.getDi()));
+        assertNotNull(registry.getDevice(staying.getDi()));
+        // the device discovered again is written as a new one
+        startDevice(vanishing.getDi());
+        discover();
+        verify(ipe, timeout(VERIFY_TIMEOUT).times(2))
+                .createOicDevResource(eq(vanishing.getDi()), anyList(), eq(CSE_NAME), eq(false));
+    }
+
+    @Test
+    public void testContainerRecreatedAfterFailedWrite() throws Exception {
+        SimulatedOicDevice device = startDevice("light-device");
+        discover();
+        awaitWritten(device);
+
+        // e.g. the container of the device was deleted from the tree
+        when(ipe.createOicRepresentation(anyString(), anyString(), anyString(), anyString())).thenReturn(false);
+        String observedHref = device.getHrefs().get(0);
+        device.setValue(observedHref, 1);
+        verify(ipe, timeout(VERIFY_TIMEOUT))
+                .createOicRepresentation(CSE_NAME, device.getDi(), observedHref, representation(1));
+        Onem2mOicRegistry.OicDeviceEntry entry = registry.getDevice(device.getDi());
+        await(() -> {
+            synchronized (entry) {
+                return !entry.containerCreated;
+            }
+        }, "container reset");
+
+        when(ipe.createOicRepresentation(anyString(), anyString(), anyString(), anyString())).thenReturn(true);
+        discover();
+        awaitWritten(device);
+        verify(ipe, times(2)).createOicDevResource(eq(device.getDi()), anyList(), eq(CSE_NAME), eq(false));
+        verify(ipe, times(2)).createOicRepresentation(CSE_NAME, device.getDi(), observedHref, representation(1));
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2moic.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.californium.core.CoapResource;
+import org.eclipse.californium.core.CoapServer;
+import org.eclipse.californium.core.coap.CoAP;
+import org.eclipse.californium.core.network.CoapEndpoint;
+import org.eclipse.californium.core.network.config.NetworkConfig;
+import org.eclipse.californium.core.server.resources.CoapExchange;
+
+/**
+ * OIC device simulated by a CoAP server on the loopback interface.  The device serves /oic/d, /oic/res and
+ * the light resources with CBOR payloads, the representations have ETags and the observable resources notify
+ * their observers of each change.
+ */
+class SimulatedOicDevice {
+    private static final int CBOR_CONTENT_FORMAT = 60;
+    private static final ObjectMapper CBOR_MAPPER = new ObjectMapper(new CBORFactory());
+
+    private final String di;
+    private final CoapServer server;
+    private final CoapEndpoint endpoint;
+    private final Map<String, LightResource> lights = new LinkedHashMap<>();
+
+    /**
+     * Light resource of the device, the representation is {"value": n}
+     */
+    private static final class LightResource extends CoapResource {
+        private final String href;
+        private final AtomicInteger numGets = new AtomicInteger();
+        private volatile int value;
+
+        LightResource(String name, boolean observable) {
+            super(name);
+            this.href = "/" + name;
+            setObservable(observable);
+            getAttributes().addResourceType("oic.r.light");
+            if (observable) {
+                getAttributes().setObservable();
+            }
+        }
+
+        private byte[] etag() {
+            return Integer.toString(value).getBytes();
+        }
+
+        @Override
+        public void handleGET(CoapExchange exchange) {
+            numGets.incrementAndGet();
+            byte[] etag = etag();
+            List<byte[]> requestEtags = exchange.getRequestOptions().getETags();
+            if (requestEtags.stream().anyMatch(requestEtag -> Arrays.equals(requestEtag, etag))) {
+                exchange.setETag(etag);
+                exchange.respond(CoAP.ResponseCode.VALID);
+                return;
+            }
+            ObjectNode representation = CBOR_MAPPER.createObjectNode();
+            representation.put("value", value);
+            exchange.setETag(etag);
+            exchange.respond(CoAP.ResponseCode.CONTENT, cbor(representation), CBOR_CONTENT_FORMAT);
+        }
+
+        void setValue(int value) {
+            this.value = value;
+            changed();
+        }
+    }
+
+    /**
+     * @param di id of the device
+     * @param numObservable number of the observable light resources
+     * @param numPolled number of the light resources which can't be observed
+     */
+    SimulatedOicDevice(String di, int numObservable, int numPolled) {
+        this.di = di;
+        server = new CoapServer(new NetworkConfig());
+        endpoint = new CoapEndpoint(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), new NetworkConfig());
+        server.addEndpoint(endpoint);
+
+        CoapResource oic = new CoapResource("oic");
+        oic.add(new CoapResource("d") {
+            @Override
+            public void handleGET(CoapExchange exchange) {
+                exchange.respond(CoAP.ResponseCode.CONTENT, devicePayload(), CBOR_CONTENT_FORMAT);
+            }
+        });
+        oic.add(new CoapResource("res") {
+            @Override
+            public void handleGET(CoapExchange exchange) {
+                exchange.respond(CoAP.ResponseCode.CONTENT, resourcesPayload(), CBOR_CONTENT_FORMAT);
+            }
+        });
+        server.add(oic);
+        for (int i = 0; i < numObservable + numPolled; i++) {
+            LightResource light = new LightResource(di + "-light" + i, i < numObservable);
+            lights.put(light.href, light);
+            server.add(light);
+        }
+    }
+
+    private static byte[] cbor(ObjectNode node) {
+        try {
+            return CBOR_MAPPER.writeValueAsBytes(node);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] cbor(ArrayNode node) {
+        try {
+            return CBOR_MAPPER.writeValueAsBytes(node);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private byte[] devicePayload() {
+        ObjectNode device = CBOR_MAPPER.createObjectNode();
+        device.putArray("if").add("oic.if.baseline");
+        device.put("di", di);
+        device.put("n", "Simulated light " + di);
+        device.put("icv", "core.1.1.0");
+        device.put("dmv", "res.1.1.0");
+        return cbor(device);
+    }
+
+    private byte[] resourcesPayload() {
+        ArrayNode root = CBOR_MAPPER.createArrayNode();
+        ObjectNode device = root.addObject();
+        device.put("di", di);
+        ArrayNode links = device.putArray("links");
+        for (LightResource light : lights.values()) {
+            ObjectNode link = links.addObject();
+            link.put("href", light.href);
+            link.putArray("rt").add("oic.r.light");
+            link.putArray("if").add("oic.if.baseline");
+            link.putObject("p").put("bm", light.isObservable() ? 3 : 1);
+        }
+        return cbor(root);
+    }
+
+    SimulatedOicDevice start() {
+        server.start();
+        return this;
+    }
+
+    void stop() {
+        server.destroy();
+    }
+
+    String getDi() {
+        return di;
+    }
+
+    String getHost() {
+        return endpoint.getAddress().getAddress().getHostAddress();
+    }
+
+    int getPort() {
+        return endpoint.getAddress().getPort();
+    }
+
+    List<String> getHrefs() {
+        return new ArrayList<>(lights.keySet());
+    }
+
+    void setValue(String href, int value) {
+        lights.get(href).setValue(value);
+    }
+
+    int getNumGets(String href) {
+        return lights.get(href).numGets.get();
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.opendaylight.iotdm.onem2m.simpleadapter.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.onem2msimpleadapter.rev160210.onem2m.simple.adapter.config.SimpleAdapterDesc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Micro-batches the readings of the asynchronous wire protocols (MQTT and COAP).  The readings destined for the
+ * same container within BATCH_WINDOW_MS (or up to MAX_BATCH_SIZE readings) are grouped, so the container is
+ * verified once per batch and the content instances of the batch are created back to back.
+ *
+ * The batches of a container are always processed by the same single threaded processor, so the content
+ * instances are created in the order the readings arrived.
+ *
+ * The number of pending readings is bounded.  A reading submitted above the limit waits up to the given time for
+ * the processors to make room, so the wire protocol applies back-pressure to its senders, and it's dropped if there
+ * is no room after the wait.  The dropped readings are counted and logged.
+ */
+public class Onem2mSimpleAdapterBatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Onem2mSimpleAdapterBatcher.class);
+
+    private static final long BATCH_WINDOW_MS = 20;
+    private static final int MAX_BATCH_SIZE = 64;
+    private static final int NUM_BATCH_PROCESSORS = 4;
+    // readings waiting for the processors, the new readings wait for room or are dropped above the limit
+    private static final int MAX_PENDING_READINGS = 100000;
+    // the drops are logged at most once per interval, with the total count
+    private static final long DROP_LOG_INTERVAL_MS = 10000;
+
+    private final Onem2mSimpleAdapterManager onem2mSimpleAdapterManager;
+    // the open batches by their container URI, guarded by itself
+    private final Map<String,Batch> pendingBatches = new HashMap<>();
+    private final List<ScheduledExecutorService> processors = new ArrayList<>(NUM_BATCH_PROCESSORS);
+    // a permit per reading which can be submitted, released when the batch of the reading is processed
+    private final Semaphore pendingPermits;
+    private final AtomicLong numDroppedReadings = new AtomicLong(0);
+    private final AtomicLong lastDropLogTime = new AtomicLong(0);
+    private volatile boolean closed = false;
+
+    private static class Batch {
+        private final SimpleAdapterDesc simpleAdapterDesc;
+        private final String uri;
+        private final String onem2mContainerName;
+        private final String containerUri;
+        private final List<String> contents = new ArrayList<>();
+
+        private Batch(SimpleAdapterDesc simpleAdapterDesc, String uri, String onem2mContainerName,
+                      String containerUri) {
+            this.simpleAdapterDesc = simpleAdapterDesc;
+            this.uri = uri;
+            this.onem2mContainerName = onem2mContainerName;
+            this.containerUri = containerUri;
+        }
+    }
+
+    public Onem2mSimpleAdapterBatcher(Onem2mSimpleAdapterManager onem2mSimpleAdapterManager) {
+        this(onem2mSimpleAdapterManager, MAX_PENDING_READINGS);
+    }
+
+    /**
+     * @param onem2mSimpleAdapterManager manager creating the content instances of the batches
+     * @param maxPendingReadings limit of the readings waiting for the processors, lowered by the tests
+     */
+    Onem2mSimpleAdapterBatcher(Onem2mSimpleAdapterManager onem2mSimpleAdapterManager, int maxPendingReadings) {
+        this.onem2mSimpleAdapterManager = onem2mSimpleAdapterManager;
+        this.pendingPermits = new Semaphore(maxPendingReadings);
+        for (int i = 0; i < NUM_BATCH_PROCESSORS; i++) {
+            final int processorNum = i;
+            processors.add(Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "simple-adapter-batch-" + processorNum);
+                thread.setDaemon(true);
+                return thread;
+            }));
+        }
+    }
+
+    /**
+     * Processes the pending batches and stops the processors.
+     */
+    public void close() {
+        closed = true;
+        for (ScheduledExecutorService processor : processors) {
+            // the delayed flushes of the open batches still run after the shutdown
+            processor.shutdown();
+        }
+    }
+
+    /**
+     * @return number of the readings dropped because there were too many pending readings
+     */
+    public long getNumDroppedReadings() {
+        return numDroppedReadings.get();
+    }
+
+    /**
+     * Adds the reading to the open batch of its container, the batch is opened if there is none.
+     * @param simpleAdapterDesc descriptor of the reading
+     * @param uri trimmed onem2m target URI
+     * @param onem2mContainerName name of the container under the target
+     * @param content content of the content instance
+     * @param maxWaitMs time to wait for room if there are too many pending readings, 0 to not wait
+     * @return false if the reading was dropped
+     */
+    public boolean submit(SimpleAdapterDesc simpleAdapterDesc, String uri, String onem2mContainerName,
+                          String content, long maxWaitMs) {
+
+        if (closed) {
+            return false;
+        }
+        if (!acquirePermit(maxWaitMs)) {
+            readingDropped(uri, onem2mContainerName);
+            return false;
+        }
+
+        String containerUri = uri + "/" + onem2mContainerName;
+        ScheduledExecutorService processor = getProcessor(containerUri);
+        Batch fullBatch = null;
+        synchronized (pendingBatches) {
+            Batch batch = pendingBatches.get(containerUri);
+            if (batch == null) {
+                batch = new Batch(simpleAdapterDesc, uri, onem2mContainerName, containerUri);
+                pendingBatches.put(containerUri, batch);
+                final Batch openedBatch = batch;
+                processor.schedule(() -> flush(openedBatch), BATCH_WINDOW_MS, TimeUnit.MILLISECONDS);
+            }
+            batch.contents.add(content);
+            if (batch.contents.size() >= MAX_BATCH_SIZE) {
+                pendingBatches.remove(containerUri);
+                fullBatch = batch;
+            }
+        }
+        if (fullBatch != null) {
+            // queued before the delayed flush of any later batch of the container, so the order is kept
+            final Batch batch = fullBatch;
+            processor.execute(() -> process(batch));
+        }
+        return true;
+    }
+
+    private boolean acquirePermit(long maxWaitMs) {
+        if (pendingPermits.tryAcquire()) {
+            return true;
+        }
+        if (maxWaitMs <= 0) {
+            return false;
+        }
+        try {
+            return pendingPermits.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void readingDropped(String uri, String onem2mContainerName) {
+        long numDropped = numDroppedReadings.incrementAndGet();
+        long now = System.currentTimeMillis();
+        long lastLogTime = lastDropLogTime.get();
+        if (now - lastLogTime >= DROP_LOG_INTERVAL_MS && lastDropLogTime.compareAndSet(lastLogTime, now)) {
+            LOG.warn("Too many pending readings, dropped reading for {}/{}, {} readings dropped in total",
+                    uri, onem2mContainerName, numDropped);
+        }
+    }
+
+    private ScheduledExecutorService getProcessor(String containerUri) {
+        return processors.get((containerUri.hashCode() & Integer.MAX_VALUE) % NUM_BATCH_PROCESSORS);
+    }
+
+    // the window of the batch has expired, it's processed unless it was already processed as full
+    private void flush(Batch batch) {
+        synchronized (pendingBatches) {
+            if (!pendingBatches.remove(batch.containerUri, batch)) {
+                return;
+            }
+        }
+        process(batch);
+    }
+
+    private void process(Batch batch) {
+        try {
+            String error = onem2mSimpleAdapterManager.processContentInstances(batch.simpleAdapterDesc, batch.uri,
+                    batch.onem2mContainerName, batch.contents);
+            if (error != null) {
+                LOG.error("Failed to process batch of {} readings for {}: {}",
+                        batch.contents.size(), batch.containerUri, error);
+            } else {
+                LOG.debug("Processed batch of {} readings for {}", batch.contents.size(), batch.containerUri);
+            }
+        } catch (RuntimeException e) {
+            LOG.error("Failed to process batch for {}: {}", batch.containerUri, e.toString());
+        } finally {
+            pendingPermits.release(batch.contents.size());
+        }
+    }
+}
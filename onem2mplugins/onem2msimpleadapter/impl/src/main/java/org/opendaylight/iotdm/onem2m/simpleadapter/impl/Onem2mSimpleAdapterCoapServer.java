@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.opendaylight.iotdm.onem2m.simpleadapter.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import org.eclipse.californium.core.CoapResource;
+import org.eclipse.californium.core.CoapServer;
+import org.eclipse.californium.core.coap.CoAP;
+import org.eclipse.californium.core.server.resources.CoapExchange;
+import org.eclipse.californium.core.server.resources.Resource;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.onem2msimpleadapter.rev160210.SimpleAdapterParmsDesc;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.onem2msimpleadapter.rev160210.onem2m.simple.adapter.config.SimpleAdapterDesc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * COAP wire protocol of the simple adapter.  The readings are POSTed (or PUT) to the onem2m-target-id, or to
+ * onem2m-target-id/container, confirmable or non-confirmable.  The reading is acknowledged as soon as it's queued
+ * to the batcher of the manager, the response of a non-confirmable request is non-confirmable as well.
+ * If the batcher is full the reading is rejected with 5.03 (Service Unavailable) and the Max-Age option tells
+ * the device when to retry.
+ */
+public class Onem2mSimpleAdapterCoapServer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Onem2mSimpleAdapterCoapServer.class);
+    // seconds after which the device retries a reading rejected by the full batcher
+    static final long RETRY_AFTER_SECONDS = 1;
+    // the servers by their port, guarded by itself
+    private final HashMap<Integer,CoapServerParms> coapMap;
+    private Onem2mSimpleAdapterManager onem2mSimpleAdapterManager = null;
+
+    public Onem2mSimpleAdapterCoapServer(Onem2mSimpleAdapterManager onem2mSimpleAdapterManager) {
+        coapMap = new HashMap<Integer,CoapServerParms>();
+        this.onem2mSimpleAdapterManager = onem2mSimpleAdapterManager;
+    }
+
+    public void startCoapServer(SimpleAdapterDesc simpleAdapterDesc) {
+
+        if (simpleAdapterDesc.getCoapServerPort() == null) {
+            LOG.error("startCoapServer: coap-server-port missing: {}", simpleAdapterDesc.getSimpleAdapterName());
+            return;
+        }
+        Integer port = simpleAdapterDesc.getCoapServerPort().intValue();
+        synchronized (coapMap) {
+            CoapServerParms cp = coapMap.get(port);
+            if (cp == null) {
+                CoapServer server = new Onem2mSimpleAdapterCoapHandler(port);
+                cp = new CoapServerParms(port, server);
+                coapMap.put(port, cp);
+                try {
+                    server.start();
+                } catch (Exception e) {
+                    LOG.info("Exception: {}", e.toString());
+                }
+            } else {
+                cp.count++;
+            }
+        }
+    }
+
+    public void stopCoapServer(SimpleAdapterDesc simpleAdapterDesc) {
+
+        if (simpleAdapterDesc.getCoapServerPort() == null) {
+            return;
+        }
+        Integer port = simpleAdapterDesc.getCoapServerPort().intValue();
+        synchronized (coapMap) {
+            CoapServerParms cp = coapMap.get(port);
+            if (cp != null) {
+                if (--cp.count == 0) {
+                    stop(cp);
+                    coapMap.remove(port);
+                }
+            }
+        }
+    }
+
+    public void close() {
+        List<CoapServerParms> servers;
+        synchronized (coapMap) {
+            servers = new ArrayList<>(coapMap.values());
+            coapMap.clear();
+        }
+        for (CoapServerParms cp : servers) {
+            stop(cp);
+        }
+    }
+
+    private void stop(CoapServerParms cp) {
+        try {
+            cp.server.stop();
+            cp.server.destroy();
+        } catch (Exception e) {
+            LOG.info("Exception: {}", e.toString());
+        }
+    }
+
+    private class CoapServerParms {
+        private long port;
+        private CoapServer server;
+        private long count;
+        protected CoapServerParms(long port, CoapServer server) {
+            this.port = port;
+            this.server = server;
+            this.count = 1;
+        }
+    }
+
+    private class Onem2mSimpleAdapterCoapHandler extends CoapServer {
+
+        protected Onem2mSimpleAdapterCoapHandler(int port) {
+            super(port);
+        }
+
+        @Override
+        protected Resource createRoot() {
+            return new RootResource();
+        }
+
+        /**
+         * The root handles every URI path, the path is the onem2m target of the reading.
+         */
+        private class RootResource extends CoapResource {
+
+            RootResource() {
+                super("OpenDaylight OneM2M Simple Adapter CoAP Server");
+            }
+
+            @Override
+            public Resource getChild(String name) {
+                return this;
+            }
+
+            @Override
+            public void handlePOST(CoapExchange coapExchange) {
+                processCoapMessage(coapExchange);
+            }
+
+            @Override
+            public void handlePUT(CoapExchange coapExchange) {
+                processCoapMessage(coapExchange);
+            }
+        }
+    }
+
+    private void processCoapMessage(CoapExchange coapExchange) {
+
+        String uri = coapExchange.getRequestOptions().getUriPathString();
+        String payload = coapExchange.getRequestText().trim();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("processCoapMessage: type: {}, URI: {}, payload: {}",
+                    coapExchange.advanced().getRequest().getType(), uri, payload);
+        }
+
+        String error = onem2mSimpleAdapterManager.submitReading(SimpleAdapterParmsDesc.WireProtocol.COAP,
+                uri, payload, 0);
+        if (Onem2mSimpleAdapterManager.TOO_MANY_PENDING_READINGS.equals(error)) {
+            coapExchange.setMaxAge(RETRY_AFTER_SECONDS);
+            coapExchange.respond(CoAP.ResponseCode.SERVICE_UNAVAILABLE);
+            return;
+        }
+        if (error != null) {
+            coapExchange.respond(CoAP.ResponseCode.BAD_REQUEST, "{\"error\":\"" + error + "\"}");
+            return;
+        }
+        coapExchange.respond(CoAP.ResponseCode.CHANGED);
+    }
+}
@@ -26,9 +26,6 @@ public class Onem2mSimpleAdapterHttpServer {
 
     private static final Logger LOG = LoggerFactory.getLogger(Onem2mSimpleAdapterHttpServer.class);
     private HashMap<Integer,HttpServerParms> httpMap;
-
-    private String response;
-    private int httpRSC;
     private Onem2mSimpleAdapterManager onem2mSimpleAdapterManager = null;
 
     public Onem2mSimpleAdapterHttpServer(Onem2mSimpleAdapterManager onem2mSimpleAdapterManager) {
@@ -91,42 +88,46 @@ public class Onem2mSimpleAdapterHttpServer {
                            HttpServletRequest httpRequest,
                            HttpServletResponse httpResponse) throws IOException, ServletException {
 
-            response = null;
-            httpRSC = HttpServletResponse.SC_OK;
             String method = baseRequest.getMethod().toLowerCase();
             String uri = baseRequest.getRequestURI();
             String payload = IOUtils.toString(baseRequest.getInputStream()).trim();
 
-            LOG.info("handle: received http message: start");
-            LOG.info("Method {}", method);
-            LOG.info("URI {}", uri);
-            LOG.info("RemoteAddr {}", baseRequest.getRemoteAddr());
-            for (Enumeration<String> e = baseRequest.getHeaderNames(); e.hasMoreElements(); ) {
-                String header = e.nextElement();
-                LOG.info("Header: {}, Value: {}", header, baseRequest.getHeader(header));
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("handle: received http message: start");
+                LOG.debug("Method {}", method);
+                LOG.debug("URI {}", uri);
+                LOG.debug("RemoteAddr {}", baseRequest.getRemoteAddr());
+                for (Enumeration<String> e = baseRequest.getHeaderNames(); e.hasMoreElements(); ) {
+                    String header = e.nextElement();
+                    LOG.debug("Header: {}, Value: {}", header, baseRequest.getHeader(header));
+                }
+                LOG.debug("payload: {}", payload);
             }
-            LOG.info("payload: {}", payload);
 
+            // the handler serves the requests concurrently, the response is kept per request
+            String error = null;
             if (method.compareToIgnoreCase("POST") == 0 || method.compareToIgnoreCase("PUT") == 0) {
-                processHttpMessage(baseRequest, uri, payload);
+                error = processHttpMessage(baseRequest, uri, payload);
             }
 
-            sendHttpResponse(httpResponse);
+            sendHttpResponse(httpResponse, error);
             baseRequest.setHandled(true);
 
-            LOG.info("handle: received http message: end");
+            LOG.debug("handle: received http message: end");
         }
     }
 
-    private boolean processHttpMessage(Request baseRequest, String uri, String payload) {
+    /**
+     * @return error, null if the message was processed
+     */
+    private String processHttpMessage(Request baseRequest, String uri, String payload) {
 
         uri = trim(uri);
 
         // verify uri is configured as an entry in the simple adapter and it is in the onem2m datastore
         SimpleAdapterDesc simpleAdapterDesc = onem2mSimpleAdapterManager.findDescriptorUsingUri(uri);
         if (simpleAdapterDesc == null) {
-            setErrorResponse(HttpServletResponse.SC_BAD_REQUEST, "onem2m target uri not configured: " + uri);
-            return false;
+            return "onem2m target uri not configured: " + uri;
         }
 
         String onem2mContainerHeaderValue = null;
@@ -134,18 +135,11 @@ public class Onem2mSimpleAdapterHttpServer {
         if (onem2mContainerHeaderName != null) {
             onem2mContainerHeaderValue = baseRequest.getHeader(onem2mContainerHeaderName);
             if (onem2mContainerHeaderValue == null) {
-                setErrorResponse(HttpServletResponse.SC_BAD_REQUEST, "missing expected header: " + onem2mContainerHeaderName);
-                return false;
+                return "missing expected header: " + onem2mContainerHeaderName;
             }
         }
 
-        String error = onem2mSimpleAdapterManager.processUriAndPayload(simpleAdapterDesc, uri, payload, onem2mContainerHeaderValue);
-        if (error != null) {
-            setErrorResponse(HttpServletResponse.SC_BAD_REQUEST, error);
-            return false;
-        }
-
-        return true;
+        return onem2mSimpleAdapterManager.processUriAndPayload(simpleAdapterDesc, uri, payload, onem2mContainerHeaderValue);
     }
 
     private String trim(String stringWithSlashes) {
@@ -158,18 +152,13 @@ public class Onem2mSimpleAdapterHttpServer {
         return stringWithSlashes;
     }
 
-    private void setErrorResponse(int rsc, String content) {
-        httpRSC = rsc;
-        response = "{\"error\":\"" + content + "\"}";
-    }
-
-    private void sendHttpResponse(HttpServletResponse httpResponse) throws IOException {
+    private void sendHttpResponse(HttpServletResponse httpResponse, String error) throws IOException {
 
-        if (response != null) {
-            httpResponse.setStatus(httpRSC);
-            httpResponse.getWriter().println(response);
+        if (error != null) {
+            httpResponse.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            httpResponse.getWriter().println("{\"error\":\"" + error + "\"}");
         } else {
-            httpResponse.setStatus(httpRSC);
+            httpResponse.setStatus(HttpServletResponse.SC_OK);
         }
         httpResponse.setContentType("text/json;charset=utf-8");
     }
@@ -9,8 +9,12 @@
 package org.opendaylight.iotdm.onem2m.simpleadapter.impl;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.opendaylight.controller.md.sal.binding.api.DataBroker;
@@ -18,10 +22,13 @@ import org.opendaylight.controller.md.sal.binding.api.ClusteredDataTreeChangeLis
 import org.opendaylight.controller.md.sal.binding.api.DataTreeIdentifier;
 import org.opendaylight.controller.md.sal.binding.api.DataTreeModification;
 import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
-import org.opendaylight.iotdm.onem2m.client.*;
+import org.opendaylight.iotdm.onem2m.core.Onem2m;
+import org.opendaylight.iotdm.onem2m.plugins.Onem2mDatastoreListener;
 import org.opendaylight.iotdm.onem2m.plugins.Onem2mPluginsDbApi;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.Onem2mService;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResource;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.onem2msimpleadapter.rev160210.Onem2mSimpleAdapterConfig;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.onem2msimpleadapter.rev160210.SimpleAdapterParmsDesc;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.onem2msimpleadapter.rev160210.onem2m.simple.adapter.config.SimpleAdapterDesc;
 import org.opendaylight.yangtools.concepts.ListenerRegistration;
 import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
@@ -37,19 +44,42 @@ public class Onem2mSimpleAdapterManager implements ClusteredDataTreeChangeListen
 
     private static final Logger LOG = LoggerFactory.getLogger(Onem2mSimpleAdapterManager.class);
 
+    private static final int MAX_KNOWN_CONTAINERS = 10000;
+    // error of a reading which was not accepted because the batcher is full
+    public static final String TOO_MANY_PENDING_READINGS = "Too many pending readings";
+
     private DataBroker dataBroker;
     private HashMap<String,SimpleAdapterDesc> simpleAdapterMap;
+    // the descriptors by their trimmed onem2m target id, the URI of a message is looked up directly
+    private Map<String,SimpleAdapterDesc> simpleAdapterTargetMap;
+    // LRU of the containers known to exist, by their trimmed URI, so a message costs only the content instance create
+    private final Map<String,Boolean> knownContainers = new LinkedHashMap<String,Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,Boolean> eldest) {
+            return size() > MAX_KNOWN_CONTAINERS;
+        }
+    };
+    private ContainerDeleteListener containerDeleteListener;
     private static final InstanceIdentifier<SimpleAdapterDesc> ONEM2M_SIMPLE_ADAPTER_DESC_IID =
             InstanceIdentifier.builder(Onem2mSimpleAdapterConfig.class)
                     .child(SimpleAdapterDesc.class)
                     .build();
     private ListenerRegistration<Onem2mSimpleAdapterManager> dcReg;
     private Onem2mSimpleAdapterHttpServer onem2mHttpServer = null;
-    //private Onem2mSimpleAdapterMqttClient onem2mMqttClient = null;
-    //private Onem2mSimpleAdapterCoapServer onem2mCoapServer = null;
-    private Onem2mService onem2mService;
+    private Onem2mSimpleAdapterMqttClient onem2mMqttClient = null;
+    private Onem2mSimpleAdapterCoapServer onem2mCoapServer = null;
+    private Onem2mSimpleAdapterBatcher batcher;
+    private final Onem2mSimpleAdapterResourceClient resourceClient;
 
     public Onem2mSimpleAdapterManager(DataBroker dataBroker, Onem2mService onem2mService) {
+        this(dataBroker, new Onem2mSimpleAdapterResourceClient(onem2mService));
+    }
+
+    /**
+     * @param dataBroker data broker of the simple adapter descriptors
+     * @param resourceClient requests to the resource tree, stubbed by the tests
+     */
+    Onem2mSimpleAdapterManager(DataBroker dataBroker, Onem2mSimpleAdapterResourceClient resourceClient) {
 
         this.dataBroker = dataBroker;
         // listen for changes to simple adapter descriptors
@@ -57,7 +87,11 @@ public class Onem2mSimpleAdapterManager implements ClusteredDataTreeChangeListen
                 ONEM2M_SIMPLE_ADAPTER_DESC_IID), this);
         // cache each of the simple adapter descriptors
         simpleAdapterMap = new HashMap<String,SimpleAdapterDesc>();
-        this.onem2mService = onem2mService;
+        simpleAdapterTargetMap = new ConcurrentHashMap<String,SimpleAdapterDesc>();
+        this.resourceClient = resourceClient;
+        containerDeleteListener = new ContainerDeleteListener(dataBroker);
+        batcher = new Onem2mSimpleAdapterBatcher(this);
+        containerDeleteListener.register();
         LOG.info("Created Onem2mSimpleAdapterManager");
 
     }
@@ -65,15 +99,60 @@ public class Onem2mSimpleAdapterManager implements ClusteredDataTreeChangeListen
     public void setOnem2mSimpleAdapterHttpServer(Onem2mSimpleAdapterHttpServer onem2mHttpServer) {
         this.onem2mHttpServer = onem2mHttpServer;
     }
-//    public void setOnem2mSimpleAdapterMqttClient(Onem2mSimpleAdapterMqttClient onem2mMqttClient) {
-//        this.onem2mMqttClient = onem2mMqttClient;
-//    }
-//    public void setOnem2mSimpleAdapterCoapServer(Onem2mSimpleAdapterCoapServer onem2mCoapServer) {
-//        this.onem2mCoapServer = onem2mCoapServer;
-//    }
+    public void setOnem2mSimpleAdapterMqttClient(Onem2mSimpleAdapterMqttClient onem2mMqttClient) {
+        this.onem2mMqttClient = onem2mMqttClient;
+    }
+    public void setOnem2mSimpleAdapterCoapServer(Onem2mSimpleAdapterCoapServer onem2mCoapServer) {
+        this.onem2mCoapServer = onem2mCoapServer;
+    }
 
     public void close() {
         dcReg.close();
+        // stop the asynchronous wire protocols before the batcher processes the pending readings
+        if (onem2mMqttClient != null) {
+            onem2mMqttClient.close();
+        }
+        if (onem2mCoapServer != null) {
+            onem2mCoapServer.close();
+        }
+        batcher.close();
+        containerDeleteListener.close();
+        synchronized (knownContainers) {
+            knownContainers.clear();
+        }
+    }
+
+    // forget the deleted containers, the next message to the container creates it again
+    private class ContainerDeleteListener extends Onem2mDatastoreListener {
+
+        ContainerDeleteListener(DataBroker dataBroker) {
+            super(dataBroker);
+        }
+
+        @Override
+        public void onem2mResourceCreated(String hName, Onem2mResource onem2mResource) {
+        }
+
+        @Override
+        public void onem2mResourceChanged(String hName, Onem2mResource onem2mResource) {
+        }
+
+        @Override
+        public void onem2mResourceDeleted(String hName, Onem2mResource onem2mResource) {
+            if (Integer.valueOf(onem2mResource.getResourceType()) != Onem2m.ResourceType.CONTAINER) {
+                return;
+            }
+            containerDeleted(trim(Onem2mPluginsDbApi.getInstance().getHierarchicalNameForResource(onem2mResource)));
+        }
+    }
+
+    /**
+     * @param containerUri trimmed URI of the deleted container
+     */
+    void containerDeleted(String containerUri) {
+        synchronized (knownContainers) {
+            knownContainers.remove(containerUri);
+        }
     }
 
     /**
@@ -113,13 +192,16 @@ public class Onem2mSimpleAdapterManager implements ClusteredDataTreeChangeListen
         LOG.info("simpleAdapterParmsCreated: {}", simpleAdapterDesc.getSimpleAdapterName());
         String descName = simpleAdapterDesc.getSimpleAdapterName();
         simpleAdapterMap.put(descName, simpleAdapterDesc);
+        simpleAdapterTargetMap.put(trim(simpleAdapterDesc.getOnem2mTargetId()), simpleAdapterDesc);
         switch (simpleAdapterDesc.getWireProtocol()) {
             case HTTP:
                 onem2mHttpServer.startHttpServer(simpleAdapterDesc);
                 break;
             case MQTT:
+                onem2mMqttClient.startMqttClient(simpleAdapterDesc);
                 break;
             case COAP:
+                onem2mCoapServer.startCoapServer(simpleAdapterDesc);
                 break;
         }
     }
@@ -130,13 +212,16 @@ public class Onem2mSimpleAdapterManager implements ClusteredDataTreeChangeListen
 
         String descName = simpleAdapterDesc.getSimpleAdapterName();
         simpleAdapterMap.remove(descName);
+        simpleAdapterTargetMap.remove(trim(simpleAdapterDesc.getOnem2mTargetId()), simpleAdapterDesc);
         switch (simpleAdapterDesc.getWireProtocol()) {
             case HTTP:
                 onem2mHttpServer.stopHttpServer(simpleAdapterDesc);
                 break;
             case MQTT:
+                onem2mMqttClient.stopMqttClient(simpleAdapterDesc);
                 break;
             case COAP:
+                onem2mCoapServer.stopCoapServer(simpleAdapterDesc);
                 break;
         }
 
@@ -149,20 +234,11 @@ public class Onem2mSimpleAdapterManager implements ClusteredDataTreeChangeListen
      */
     public SimpleAdapterDesc findDescriptorUsingUri(String uri) {
 
-        for (Map.Entry<String, SimpleAdapterDesc> entry : simpleAdapterMap.entrySet()) {
-            SimpleAdapterDesc desc = entry.getValue();
-            if (uri.contentEquals(trim(desc.getOnem2mTargetId()))) {
-                String onem2mResourceId = null;
-                try {
-                    onem2mResourceId = Onem2mPluginsDbApi.getInstance().findResourceIdUsingURI(uri);
-                } catch (Exception e) {
-                    LOG.error("Failed to find resourceId: {}", e);
-                }
-                return (onem2mResourceId != null) ? desc : null;
-            }
+        SimpleAdapterDesc desc = simpleAdapterTargetMap.get(uri);
+        if (desc == null) {
+            return null;
         }
-
-        return null;
+        return resourceClient.targetExists(uri) ? desc : null;
     }
 
     private String trim(String stringWithSlashes) {
@@ -197,168 +273,161 @@ public class Onem2mSimpleAdapterManager implements ClusteredDataTreeChangeListen
         }
 
         if (onem2mContainerName == null) {
-
-            String path[] = simpleAdapterDesc.getOnem2mContainerJsonKeyName().split("/");
-            Integer jsonNestedCount;
-
-            JSONObject tempJ = jsonPayloadObject;
-            for (jsonNestedCount = 1; jsonNestedCount < path.length && tempJ != null; jsonNestedCount++) {
-                tempJ = tempJ.optJSONObject(path[jsonNestedCount - 1]);
-            }
-            if (tempJ == null) {
+            onem2mContainerName = getContainerNameFromPayload(simpleAdapterDesc, jsonPayloadObject);
+            if (onem2mContainerName == null) {
                 return simpleAdapterDesc.getOnem2mContainerJsonKeyName() + " missing";
             }
+        }
 
-            String jsonKeyValue = tempJ.optString(path[jsonNestedCount - 1], null);
-            if (jsonKeyValue == null) {
-                return simpleAdapterDesc.getOnem2mContainerJsonKeyName() + " missing";
+        return processContentInstances(simpleAdapterDesc, uri, onem2mContainerName,
+                Collections.singletonList(jsonPayloadObject.toString()));
+    }
+
+    /**
+     * A reading of the asynchronous wire protocols (MQTT, COAP).  The uri is either the onem2m target id of the
+     * descriptor or the target id followed by the container name.  The reading is checked and queued to the
+     * batcher, it's written to the resource tree with the other readings of its container.
+     * @param wireProtocol wire protocol the reading was received on
+     * @param uri MQTT topic or COAP URI path
+     * @param payload JSON payload
+     * @param maxWaitMs time to wait for room in the batcher if it's full, 0 to not wait
+     * @return error, null if the reading was accepted, TOO_MANY_PENDING_READINGS if the batcher is full
+     */
+    public String submitReading(SimpleAdapterParmsDesc.WireProtocol wireProtocol, String uri, String payload,
+                                long maxWaitMs) {
+
+        uri = trim(uri);
+        String onem2mContainerName = null;
+        SimpleAdapterDesc simpleAdapterDesc = findDescriptorUsingUri(uri);
+        if (simpleAdapterDesc == null) {
+            int i = uri.lastIndexOf('/');
+            if (i > 0 && i < uri.length() - 1) {
+                simpleAdapterDesc = findDescriptorUsingUri(uri.substring(0, i));
+                if (simpleAdapterDesc != null) {
+                    onem2mContainerName = uri.substring(i + 1);
+                    uri = uri.substring(0, i);
+                }
             }
-            onem2mContainerName = jsonKeyValue;
+        }
+        if (simpleAdapterDesc == null || simpleAdapterDesc.getWireProtocol() != wireProtocol) {
+            return "onem2m target uri not configured: " + uri;
         }
 
-        String target = "/" + uri;
-        if (!getContainer(target, onem2mContainerName)) {
-            LOG.info("processUriAndPayload: adding {}/{}", target, onem2mContainerName);
-            if (!createContainer(target, onem2mContainerName, simpleAdapterDesc)) {
-                return "Error adding " + target + "/" + onem2mContainerName;
-            }
+        JSONObject jsonPayloadObject;
+        try {
+            jsonPayloadObject = new JSONObject(payload);
+        } catch (JSONException e) {
+            return "Error json format:" + e.toString();
         }
-        target += "/" + onem2mContainerName;
-        if (!createContentInstance(target, jsonPayloadObject.toString(), simpleAdapterDesc)) {
-            return "Error adding content to " + target;
+
+        if (onem2mContainerName == null) {
+            onem2mContainerName = getContainerNameFromPayload(simpleAdapterDesc, jsonPayloadObject);
+            if (onem2mContainerName == null) {
+                return simpleAdapterDesc.getOnem2mContainerJsonKeyName() + " missing";
+            }
         }
 
+        if (!batcher.submit(simpleAdapterDesc, uri, onem2mContainerName, jsonPayloadObject.toString(), maxWaitMs)) {
+            return TOO_MANY_PENDING_READINGS;
+        }
         return null;
     }
 
-    private boolean getContainer(String parent, String name) {
+    /**
+     * @return number of the MQTT and COAP readings dropped because the batcher was full
+     */
+    public long getNumDroppedReadings() {
+        return batcher.getNumDroppedReadings();
+    }
 
-        Container b;
+    private String getContainerNameFromPayload(SimpleAdapterDesc simpleAdapterDesc, JSONObject jsonPayloadObject) {
 
-        b = new Container();
-        b.setTo(parent + "/" + name);
-        b.setOperationRetrieve();
-        Onem2mRequestPrimitiveClient req = b.build();
-        Onem2mResponsePrimitiveClient res = req.send(onem2mService);
-        if (!res.responseOk()) {
-            return false;
-        }
-        Onem2mContainerResponse ctrResponse = new Onem2mContainerResponse(res.getContent());
-        if (!ctrResponse.responseOk()) {
-            LOG.error("Container get request: {}", ctrResponse.getError());
-            return false;
+        if (simpleAdapterDesc.getOnem2mContainerJsonKeyName() == null) {
+            return null;
         }
+        String path[] = simpleAdapterDesc.getOnem2mContainerJsonKeyName().split("/");
+        Integer jsonNestedCount;
 
-        String resourceId = ctrResponse.getResourceId();
-        if (resourceId == null) {
-            LOG.error("get cannot parse resourceId for Container create");
-            return false;
+        JSONObject tempJ = jsonPayloadObject;
+        for (jsonNestedCount = 1; jsonNestedCount < path.length && tempJ != null; jsonNestedCount++) {
+            tempJ = tempJ.optJSONObject(path[jsonNestedCount - 1]);
+        }
+        if (tempJ == null) {
+            return null;
         }
 
-        LOG.info("getContainer {}/{}: Curr/Max Nr Instances: {}/{}, curr/Max ByteSize: {}/{}",
-                parent, name,
-                ctrResponse.getCurrNrInstances(),
-                ctrResponse.getMaxNrInstances(),
-                ctrResponse.getCurrByteSize(),
-                ctrResponse.getMaxByteSize());
-
-        return true;
+        return tempJ.optString(path[jsonNestedCount - 1], null);
     }
 
-    private boolean createContainer(String parent, String name, SimpleAdapterDesc simpleAdapterDesc) {
-
-        Container b;
+    /**
+     * Creates the content instances in the container, the container is verified (and created if needed) once.
+     * @param simpleAdapterDesc descriptor of the readings
+     * @param uri trimmed onem2m target URI
+     * @param onem2mContainerName name of the container under the target
+     * @param contents contents of the content instances in the order they are created
+     * @return error, null if all content instances were created
+     */
+    public String processContentInstances(SimpleAdapterDesc simpleAdapterDesc,
+                                          String uri,
+                                          String onem2mContainerName,
+                                          List<String> contents) {
 
-        b = new Container();
-        b.setTo(parent);
-        b.setOperationCreate();
-        b.setPrimitiveContent(simpleAdapterDesc.getOnem2mContainerJsonString());
-        b.setName(name);
-        Onem2mRequestPrimitiveClient req = b.build();
-        Onem2mResponsePrimitiveClient res = req.send(onem2mService);
-        if (!res.responseOk()) {
-            LOG.error(res.getError());
-            return false;
-        }
-        Onem2mContainerResponse ctrResponse = new Onem2mContainerResponse(res.getContent());
-        if (!ctrResponse.responseOk()) {
-            LOG.error("Container create request: {}", ctrResponse.getError());
-            return false;
+        String target = "/" + uri;
+        String containerUri = uri + "/" + onem2mContainerName;
+        String containerTarget = target + "/" + onem2mContainerName;
+        boolean containerVerified = false;
+        if (!isContainerKnown(containerUri)) {
+            if (!verifyContainer(target, onem2mContainerName, containerUri, simpleAdapterDesc)) {
+                return "Error adding " + containerTarget;
+            }
+            containerVerified = true;
         }
 
-        String resourceId = ctrResponse.getResourceId();
-        if (resourceId == null) {
-            LOG.error("Create cannot parse resourceId for Container create");
-            return false;
+        int numCreated = 0;
+        for (String content : contents) {
+            if (resourceClient.createContentInstance(containerTarget, content, simpleAdapterDesc)) {
+                numCreated++;
+                continue;
+            }
+            if (containerVerified) {
+                return "Error adding content to " + containerTarget + ", created " + numCreated + "/" + contents.size();
+            }
+            // the container might have been deleted, verify it as for an unknown container
+            synchronized (knownContainers) {
+                knownContainers.remove(containerUri);
+            }
+            if (!verifyContainer(target, onem2mContainerName, containerUri, simpleAdapterDesc)) {
+                return "Error adding " + containerTarget;
+            }
+            containerVerified = true;
+            if (!resourceClient.createContentInstance(containerTarget, content, simpleAdapterDesc)) {
+                return "Error adding content to " + containerTarget + ", created " + numCreated + "/" + contents.size();
+            }
+            numCreated++;
         }
 
-        LOG.info("createContainer {}/{}", parent, name);
-
-        return true;
+        return null;
     }
 
-    private boolean createContainer2(String parent, String name, SimpleAdapterDesc simpleAdapterDesc) {
-
-        Container b;
-
-        b = new Container();
-        b.setTo(parent);
-        b.setOperationCreate();
-        b.setPrimitiveContent(simpleAdapterDesc.getOnem2mContainerJsonString());
-        b.setMaxNrInstances(1);
-        b.setName(name);
-        Onem2mRequestPrimitiveClient req = b.build();
-        Onem2mResponsePrimitiveClient res = req.send(onem2mService);
-        if (!res.responseOk()) {
-            LOG.error(res.getError());
-            return false;
-        }
-        Onem2mContainerResponse ctrResponse = new Onem2mContainerResponse(res.getContent());
-        if (!ctrResponse.responseOk()) {
-            LOG.error("Container create request: {}", ctrResponse.getError());
-            return false;
-        }
-
-        String resourceId = ctrResponse.getResourceId();
-        if (resourceId == null) {
-            LOG.error("Create cannot parse resourceId for Container create");
-            return false;
+    private boolean isContainerKnown(String containerUri) {
+        synchronized (knownContainers) {
+            return knownContainers.get(containerUri) != null;
         }
-
-        LOG.info("createContainer {}/{}", parent, name);
-
-        return true;
     }
 
-    private boolean createContentInstance(String parent, String content, SimpleAdapterDesc simpleAdapterDesc) {
-
-        ContentInstance b;
+    // retrieves the container, it's created if it doesn't exist
+    private boolean verifyContainer(String target, String onem2mContainerName, String containerUri,
+                                    SimpleAdapterDesc simpleAdapterDesc) {
 
-        b = new ContentInstance();
-        b.setTo(parent);
-        b.setOperationCreate();
-        b.setPrimitiveContent(simpleAdapterDesc.getOnem2mContentInstanceJsonString());
-        b.setContent(content);
-        Onem2mRequestPrimitiveClient req = b.build();
-        Onem2mResponsePrimitiveClient res = req.send(onem2mService);
-        if (!res.responseOk()) {
-            LOG.error(res.getError());
-            return false;
-        }
-        Onem2mContentInstanceResponse ciResponse = new Onem2mContentInstanceResponse(res.getContent());
-        if (!ciResponse.responseOk()) {
-            LOG.error("Container create request: {}", ciResponse.getError());
-            return false;
+        if (!resourceClient.getContainer(target, onem2mContainerName)) {
+            LOG.info("processUriAndPayload: adding {}/{}", target, onem2mContainerName);
+            if (!resourceClient.createContainer(target, onem2mContainerName, simpleAdapterDesc)) {
+                return false;
+            }
         }
-
-        String resourceId = ciResponse.getResourceId();
-        if (resourceId == null) {
-            LOG.error("Create cannot parse resourceId for ContentInstance create");
-            return false;
+        synchronized (knownContainers) {
+            knownContainers.put(containerUri, Boolean.TRUE);
         }
-
-        LOG.info("createContentInstance: Curr ContentSize: {}\n", ciResponse.getContentSize());
-
         return true;
     }
 }
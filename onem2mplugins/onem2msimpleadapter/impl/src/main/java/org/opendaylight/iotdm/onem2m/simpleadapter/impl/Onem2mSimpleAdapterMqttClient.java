@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.opendaylight.iotdm.onem2m.simpleadapter.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.opendaylight.iotdm.onem2m.plugins.channels.mqtt.Onem2mMqttAbstractClient;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.onem2msimpleadapter.rev160210.SimpleAdapterParmsDesc;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.onem2msimpleadapter.rev160210.onem2m.simple.adapter.config.SimpleAdapterDesc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * MQTT wire protocol of the simple adapter.  One client is connected to each configured broker, it subscribes
+ * to the onem2m-target-id of each MQTT descriptor and to its onem2m-target-id/+ subtopics, the last topic segment
+ * of a subtopic names the container.  The received readings are handed to the batcher of the manager.
+ */
+public class Onem2mSimpleAdapterMqttClient {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Onem2mSimpleAdapterMqttClient.class);
+    private static final int SUBSCRIBE_QOS = 1;
+    // a reading waits this long for room in the full batcher, it's acknowledged only after it's queued, so
+    // the broker holds the next QoS 1 messages; the wait is kept well below the keep alive interval
+    static final long SUBMIT_WAIT_MS = 10000;
+    private static final String SHARED_SUBSCRIPTION_PREFIX = "$share/";
+
+    // the clients by their broker, guarded by itself
+    private final HashMap<String,MqttClientParms> mqttMap;
+    private Onem2mSimpleAdapterManager onem2mSimpleAdapterManager = null;
+
+    public Onem2mSimpleAdapterMqttClient(Onem2mSimpleAdapterManager onem2mSimpleAdapterManager) {
+        mqttMap = new HashMap<String,MqttClientParms>();
+        this.onem2mSimpleAdapterManager = onem2mSimpleAdapterManager;
+    }
+
+    public void startMqttClient(SimpleAdapterDesc simpleAdapterDesc) {
+
+        String mqttBroker = simpleAdapterDesc.getMqttBroker();
+        if (mqttBroker == null) {
+            LOG.error("startMqttClient: mqtt-broker missing: {}", simpleAdapterDesc.getSimpleAdapterName());
+            return;
+        }
+        MqttClientParms mp;
+        boolean connect = false;
+        synchronized (mqttMap) {
+            mp = mqttMap.get(mqttBroker);
+            if (mp == null) {
+                mp = new MqttClientParms(new Onem2mSimpleAdapterMqttAsyncClient(mqttBroker));
+                mqttMap.put(mqttBroker, mp);
+                connect = true;
+            } else {
+                mp.count++;
+            }
+        }
+        mp.client.addTopics(getTopics(simpleAdapterDesc));
+        if (connect) {
+            try {
+                if (!mp.client.connectToMqttServer()) {
+                    // the client keeps reconnecting, the topics are subscribed when it's connected
+                    LOG.error("startMqttClient: cannot connect to broker: {}", mqttBroker);
+                }
+            } catch (MqttException e) {
+                LOG.error("startMqttClient: cannot connect to broker: {}, {}", mqttBroker, e.toString());
+            }
+        }
+    }
+
+    public void stopMqttClient(SimpleAdapterDesc simpleAdapterDesc) {
+
+        String mqttBroker = simpleAdapterDesc.getMqttBroker();
+        if (mqttBroker == null) {
+            return;
+        }
+        MqttClientParms mp;
+        boolean close = false;
+        synchronized (mqttMap) {
+            mp = mqttMap.get(mqttBroker);
+            if (mp == null) {
+                return;
+            }
+            if (--mp.count == 0) {
+                mqttMap.remove(mqttBroker);
+                close = true;
+            }
+        }
+        if (close) {
+            mp.client.close();
+        } else {
+            mp.client.removeTopics(getTopics(simpleAdapterDesc));
+        }
+    }
+
+    public void close() {
+        List<MqttClientParms> clients;
+        synchronized (mqttMap) {
+            clients = new ArrayList<>(mqttMap.values());
+            mqttMap.clear();
+        }
+        for (MqttClientParms mp : clients) {
+            mp.client.close();
+        }
+    }
+
+    /**
+     * @param simpleAdapterDesc MQTT descriptor
+     * @return the topic filters of the descriptor, prefixed by $share/group/ if the shared subscription is used
+     */
+    private static List<String> getTopics(SimpleAdapterDesc simpleAdapterDesc) {
+        String target = trim(simpleAdapterDesc.getOnem2mTargetId());
+        String group = simpleAdapterDesc.getMqttSharedSubscriptionGroup();
+        String prefix = (group == null || group.trim().isEmpty()) ? "" :
+                SHARED_SUBSCRIPTION_PREFIX + group.trim() + "/";
+        List<String> topics = new ArrayList<>();
+        topics.add(prefix + target);
+        topics.add(prefix + target + "/+");
+        return topics;
+    }
+
+    private static String trim(String stringWithSlashes) {
+
+        stringWithSlashes = stringWithSlashes.trim();
+        stringWithSlashes = stringWithSlashes.startsWith("/") ?
+                stringWithSlashes.substring("/".length()) : stringWithSlashes;
+        stringWithSlashes = stringWithSlashes.endsWith("/") ?
+                stringWithSlashes.substring(0,stringWithSlashes.length()-1) : stringWithSlashes;
+        return stringWithSlashes;
+    }
+
+    private class MqttClientParms {
+        private Onem2mSimpleAdapterMqttAsyncClient client;
+        private long count;
+        protected MqttClientParms(Onem2mSimpleAdapterMqttAsyncClient client) {
+            this.client = client;
+            this.count = 1;
+        }
+    }
+
+    /**
+     * Client of one broker, the topics are reference counted as more descriptors can share a target.
+     */
+    private class Onem2mSimpleAdapterMqttAsyncClient extends Onem2mMqttAbstractClient {
+
+        // the subscribed topic filters, guarded by itself
+        private final Map<String,Integer> topics = new HashMap<>();
+
+        protected Onem2mSimpleAdapterMqttAsyncClient(String mqttBroker) {
+            super(mqttBroker, LOG);
+        }
+
+        @Override
+        protected void connectionFailureCallback() {
+            LOG.error("Connection to MQTT broker failed: {}", mqttBroker);
+        }
+
+        @Override
+        public boolean connectToMqttServer() throws MqttException {
+            if (!super.connectToMqttServer()) {
+                return false;
+            }
+            // the subscriptions are made again after each (re)connect
+            List<String> subscribed;
+            synchronized (topics) {
+                subscribed = new ArrayList<>(topics.keySet());
+            }
+            subscribe(subscribed);
+            return true;
+        }
+
+        private void addTopics(List<String> newTopics) {
+            List<String> subscribe = new ArrayList<>();
+            synchronized (topics) {
+                for (String topic : newTopics) {
+                    if (topics.merge(topic, 1, Integer::sum) == 1) {
+                        subscribe.add(topic);
+                    }
+                }
+            }
+            if (client != null && client.isConnected()) {
+                subscribe(subscribe);
+            }
+        }
+
+        private void removeTopics(List<String> oldTopics) {
+            List<String> unsubscribe = new ArrayList<>();
+            synchronized (topics) {
+                for (String topic : oldTopics) {
+                    Integer count = topics.get(topic);
+                    if (count == null) {
+                        continue;
+                    }
+                    if (count > 1) {
+                        topics.put(topic, count - 1);
+                    } else {
+                        topics.remove(topic);
+                        unsubscribe.add(topic);
+                    }
+                }
+            }
+            if (client != null && client.isConnected() && !unsubscribe.isEmpty()) {
+                try {
+                    client.unsubscribe(unsubscribe.toArray(new String[unsubscribe.size()]));
+                } catch (MqttException e) {
+                    LOG.error("removeTopics: cannot unsubscribe {}, {}", unsubscribe, e.toString());
+                }
+            }
+        }
+
+        private void subscribe(List<String> subscribe) {
+            if (subscribe.isEmpty()) {
+                return;
+            }
+            int qos[] = new int[subscribe.size()];
+            for (int i = 0; i < qos.length; i++) {
+                qos[i] = SUBSCRIBE_QOS;
+            }
+            try {
+                client.subscribe(subscribe.toArray(new String[subscribe.size()]), qos);
+            } catch (MqttException e) {
+                LOG.error("subscribe: cannot subscribe {}, {}", subscribe, e.toString());
+            }
+        }
+
+        /**
+         * Called on the thread of the client, the reading is only queued so the next message isn't delayed.
+         * If the batcher is full the thread waits for room, the message is acknowledged when this returns.
+         */
+        @Override
+        protected void messageArrived(String topic, MqttMessage message) throws Exception {
+            String payload = new String(message.getPayload(), StandardCharsets.UTF_8).trim();
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("messageArrived: topic: {}, payload: {}", topic, payload);
+            }
+            String error = onem2mSimpleAdapterManager.submitReading(SimpleAdapterParmsDesc.WireProtocol.MQTT,
+                    topic, payload, SUBMIT_WAIT_MS);
+            // the drops of the full batcher are counted and logged by the batcher
+            if (error != null && !Onem2mSimpleAdapterManager.TOO_MANY_PENDING_READINGS.equals(error)) {
+                LOG.error("messageArrived: topic: {}, {}", topic, error);
+            }
+        }
+    }
+}
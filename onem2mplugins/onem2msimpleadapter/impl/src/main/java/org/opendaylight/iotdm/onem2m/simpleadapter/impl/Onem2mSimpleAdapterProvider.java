@@ -27,8 +27,8 @@ public class Onem2mSimpleAdapterProvider implements IotdmPluginDbClient, Binding
     private Onem2mService onem2mService = null;
     private Onem2mSimpleAdapterManager saMgr = null;
     private Onem2mSimpleAdapterHttpServer saHttpServer = null;
-    //private Onem2mSimpleAdapterMqttClient saMqttClient = null;
-    //private Onem2mSimpleAdapterCoapServer saCoapServer = null;
+    private Onem2mSimpleAdapterMqttClient saMqttClient = null;
+    private Onem2mSimpleAdapterCoapServer saCoapServer = null;
 
     @Override
     public void onSessionInitiated(ProviderContext session) {
@@ -56,11 +56,11 @@ public class Onem2mSimpleAdapterProvider implements IotdmPluginDbClient, Binding
     public void dbClientStart() {
         saMgr = new Onem2mSimpleAdapterManager(dataBroker, onem2mService);
         saHttpServer = new Onem2mSimpleAdapterHttpServer(saMgr);
-        //saMqttClient = new Onem2mSimpleAdapterMqttClient(saMgr);
-        //saCoapServer = new Onem2mSimpleAdapterCoapServer(saMgr);
+        saMqttClient = new Onem2mSimpleAdapterMqttClient(saMgr);
+        saCoapServer = new Onem2mSimpleAdapterCoapServer(saMgr);
         saMgr.setOnem2mSimpleAdapterHttpServer(saHttpServer);
-        //saMgr.setOnem2mSimpleAdapterMqttClient(saMqttClient);
-        //saMgr.setOnem2mSimpleAdapterCoapServer(saCoapServer);
+        saMgr.setOnem2mSimpleAdapterMqttClient(saMqttClient);
+        saMgr.setOnem2mSimpleAdapterCoapServer(saCoapServer);
     }
 
     @Override
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.opendaylight.iotdm.onem2m.simpleadapter.impl;
+
+import org.opendaylight.iotdm.onem2m.client.*;
+import org.opendaylight.iotdm.onem2m.plugins.Onem2mPluginsDbApi;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.Onem2mService;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.onem2msimpleadapter.rev160210.onem2m.simple.adapter.config.SimpleAdapterDesc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Requests of the simple adapter to the oneM2M resource tree.  Each method is one request primitive, or one read
+ * of the resource tree, so the manager's cost per reading can be counted by the tests.
+ */
+public class Onem2mSimpleAdapterResourceClient {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Onem2mSimpleAdapterResourceClient.class);
+
+    private final Onem2mService onem2mService;
+
+    public Onem2mSimpleAdapterResourceClient(Onem2mService onem2mService) {
+        this.onem2mService = onem2mService;
+    }
+
+    /**
+     * @param uri trimmed onem2m target URI
+     * @return true if the target is in the onem2m datastore
+     */
+    public boolean targetExists(String uri) {
+
+        String onem2mResourceId = null;
+        try {
+            onem2mResourceId = Onem2mPluginsDbApi.getInstance().findResourceIdUsingURI(uri);
+        } catch (Exception e) {
+            LOG.error("Failed to find resourceId: {}", e);
+        }
+        return onem2mResourceId != null;
+    }
+
+    public boolean getContainer(String parent, String name) {
+
+        Container b;
+
+        b = new Container();
+        b.setTo(parent + "/" + name);
+        b.setOperationRetrieve();
+        Onem2mRequestPrimitiveClient req = b.build();
+        Onem2mResponsePrimitiveClient res = req.send(onem2mService);
+        if (!res.responseOk()) {
+            return false;
+        }
+        Onem2mContainerResponse ctrResponse = new Onem2mContainerResponse(res.getContent());
+        if (!ctrResponse.responseOk()) {
+            LOG.error("Container get request: {}", ctrResponse.getError());
+            return false;
+        }
+
+        String resourceId = ctrResponse.getResourceId();
+        if (resourceId == null) {
+            LOG.error("get cannot parse resourceId for Container create");
+            return false;
+        }
+
+        LOG.debug("getContainer {}/{}: Curr/Max Nr Instances: {}/{}, curr/Max ByteSize: {}/{}",
+                parent, name,
+                ctrResponse.getCurrNrInstances(),
+                ctrResponse.getMaxNrInstances(),
+                ctrResponse.getCurrByteSize(),
+                ctrResponse.getMaxByteSize());
+
+        return true;
+    }
+
+    public boolean createContainer(String parent, String name, SimpleAdapterDesc simpleAdapterDesc) {
+
+        Container b;
+
+        b = new Container();
+        b.setTo(parent);
+        b.setOperationCreate();
+        b.setPrimitiveContent(simpleAdapterDesc.getOnem2mContainerJsonString());
+        b.setName(name);
+        Onem2mRequestPrimitiveClient req = b.build();
+        Onem2mResponsePrimitiveClient res = req.send(onem2mService);
+        if (!res.responseOk()) {
+            LOG.error(res.getError());
+            return false;
+        }
+        Onem2mContainerResponse ctrResponse = new Onem2mContainerResponse(res.getContent());
+        if (!ctrResponse.responseOk()) {
+            LOG.error("Container create request: {}", ctrResponse.getError());
+            return false;
+        }
+
+        String resourceId = ctrResponse.getResourceId();
+        if (resourceId == null) {
+            LOG.error("Create cannot parse resourceId for Container create");
+            return false;
+        }
+
+        LOG.info("createContainer {}/{}", parent, name);
+
+        return true;
+    }
+
+    public boolean createContentInstance(String parent, String content, SimpleAdapterDesc simpleAdapterDesc) {
+
+        ContentInstance b;
+
+        b = new ContentInstance();
+        b.setTo(parent);
+        b.setOperationCreate();
+        b.setPrimitiveContent(simpleAdapterDesc.getOnem2mContentInstanceJsonString());
+        b.setContent(content);
+        Onem2mRequestPrimitiveClient req = b.build();
+        Onem2mResponsePrimitiveClient res = req.send(onem2mService);
+        if (!res.responseOk()) {
+            LOG.error(res.getError());
+            return false;
+        }
+        Onem2mContentInstanceResponse ciResponse = new Onem2mContentInstanceResponse(res.getContent());
+        if (!ciResponse.responseOk()) {
+            LOG.error("Container create request: {}", ciResponse.getError());
+            return false;
+        }
+
+        String resourceId = ciResponse.getResourceId();
+        if (resourceId == null) {
+            LOG.error("Create cannot parse resourceId for ContentInstance create");
+            return false;
+        }
+
+        LOG.debug("createContentInstance: Curr ContentSize: {}\n", ciResponse.getContentSize());
+
+        return true;
+    }
+}
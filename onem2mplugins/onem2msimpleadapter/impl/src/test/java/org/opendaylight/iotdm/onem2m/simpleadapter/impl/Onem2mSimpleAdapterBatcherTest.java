@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2m.simpleadapter.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.onem2msimpleadapter.rev160210.onem2m.simple.adapter.config.SimpleAdapterDesc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyList;
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Batches, arrival order and the bound of the pending readings of the batcher.  The content instances are
+ * "created" by the mocked manager, which can hold the processors to fill the batcher.
+ */
+public class Onem2mSimpleAdapterBatcherTest {
+    private static final String TARGET_URI = "InCSE1/sensors";
+    private static final int NUM_CONTAINERS = 10;
+    private static final int READINGS_PER_CONTAINER = 1000;
+    private static final int MAX_BATCH_SIZE = 64;
+    private static final int MAX_PENDING_READINGS = 100;
+
+    // the created contents by their container URI
+    private final Map<String,List<String>> created = new ConcurrentHashMap<>();
+    private final AtomicInteger numCreated = new AtomicInteger();
+    private final AtomicInteger maxBatch = new AtomicInteger();
+    private volatile CountDownLatch processorsHeld = new CountDownLatch(0);
+    private final SimpleAdapterDesc simpleAdapterDesc = mock(SimpleAdapterDesc.class);
+    private final ExecutorService submitter = Executors.newSingleThreadExecutor();
+    private Onem2mSimpleAdapterBatcher batcher;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        Onem2mSimpleAdapterManager manager = mock(Onem2mSimpleAdapterManager.class);
+        when(manager.processContentInstances(any(SimpleAdapterDesc.class), anyString(), anyString(), anyList()))
+                .thenAnswer(invocation -> {
+                    processorsHeld.await(30, TimeUnit.SECONDS);
+                    String containerUri = invocation.getArguments()[1] + "/" + invocation.getArguments()[2];
+                    List<String> contents = (List<String>) invocation.getArguments()[3];
+                    created.computeIfAbsent(containerUri, uri -> new ArrayList<>()).addAll(contents);
+                    maxBatch.accumulateAndGet(contents.size(), Math::max);
+                    numCreated.addAndGet(contents.size());
+                    return null;
+                });
+        batcher = new Onem2mSimpleAdapterBatcher(manager, MAX_PENDING_READINGS);
+    }
+
+    @After
+    public void tearDown() {
+        processorsHeld.countDown();
+        submitter.shutdownNow();
+        batcher.close();
+    }
+
+    private static void await(Supplier<Boolean> condition, String message) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        while (!condition.get() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(message, condition.get());
+    }
+
+    private boolean submit(String container, int value, long maxWaitMs) {
+        return batcher.submit(simpleAdapterDesc, TARGET_URI, container, "{\"value\":" + value + "}", maxWaitMs);
+    }
+
+    @Test
+    public void testReadingsCreatedInArrivalOrder() throws Exception {
+        for (int i = 0; i < READINGS_PER_CONTAINER; i++) {
+            for (int c = 0; c < NUM_CONTAINERS; c++) {
+                // waits for room, the limit is below the number of readings
+                assertTrue(submit("cnt" + c, i, TimeUnit.SECONDS.toMillis(30)));
+            }
+        }
+        await(() -> numCreated.get() == NUM_CONTAINERS * READINGS_PER_CONTAINER, "all readings created");
+
+        assertEquals(NUM_CONTAINERS, created.size());
+        for (List<String> contents : created.values()) {
+            assertEquals(READINGS_PER_CONTAINER, contents.size());
+            for (int i = 0; i < READINGS_PER_CONTAINER; i++) {
+                assertEquals("{\"value\":" + i + "}", contents.get(i));
+            }
+        }
+        assertTrue(maxBatch.get() <= MAX_BATCH_SIZE);
+        assertEquals(0, batcher.getNumDroppedReadings());
+    }
+
+    @Test
+    public void testFullBatcherDropsAndCounts() throws Exception {
+        processorsHeld = new CountDownLatch(1);
+        for (int i = 0; i < MAX_PENDING_READINGS; i++) {
+            assertTrue(submit("cnt" + (i % NUM_CONTAINERS), i, 0));
+        }
+
+        assertFalse(submit("cnt0", MAX_PENDING_READINGS, 0));
+        assertFalse(submit("cnt0", MAX_PENDING_READINGS, 50));
+        assertEquals(2, batcher.getNumDroppedReadings());
+
+        // the waiting reading is accepted when the processors make room
+        Future<Boolean> waiting = submitter.submit(() -> submit("cnt0", MAX_PENDING_READINGS,
+                TimeUnit.SECONDS.toMillis(30)));
+        Thread.sleep(100);
+        assertFalse(waiting.isDone());
+        processorsHeld.countDown();
+        assertTrue(waiting.get(30, TimeUnit.SECONDS));
+
+        await(() -> numCreated.get() == MAX_PENDING_READINGS + 1, "accepted readings created");
+        assertEquals(2, batcher.getNumDroppedReadings());
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2m.simpleadapter.impl;
+
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.eclipse.californium.core.CoapClient;
+import org.eclipse.californium.core.CoapHandler;
+import org.eclipse.californium.core.CoapResponse;
+import org.eclipse.californium.core.coap.CoAP;
+import org.eclipse.californium.core.coap.MediaTypeRegistry;
+import org.eclipse.californium.core.network.CoapEndpoint;
+import org.eclipse.californium.core.network.config.NetworkConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.onem2msimpleadapter.rev160210.SimpleAdapterParmsDesc;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.onem2msimpleadapter.rev160210.onem2m.simple.adapter.config.SimpleAdapterDesc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.anyLong;
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * COAP ingestion over the loopback interface.  The readings are POSTed by Californium clients, confirmable and
+ * non-confirmable, and received by the mocked manager, which can report the batcher as full.
+ */
+public class Onem2mSimpleAdapterCoapServerTest {
+    private static final String TARGET_URI = "InCSE1/sensors";
+    private static final int NUM_CLIENTS = 4;
+    private static final int READINGS_PER_CLIENT = 250;
+
+    private final List<String> readings = new CopyOnWriteArrayList<>();
+    private volatile String submitError = null;
+    private final List<CoapEndpoint> clientEndpoints = new CopyOnWriteArrayList<>();
+    private Onem2mSimpleAdapterCoapServer coapServer;
+    private SimpleAdapterDesc simpleAdapterDesc;
+    private int port;
+
+    @Before
+    public void setUp() throws Exception {
+        Onem2mSimpleAdapterManager manager = mock(Onem2mSimpleAdapterManager.class);
+        when(manager.submitReading(eq(SimpleAdapterParmsDesc.WireProtocol.COAP), anyString(), anyString(),
+                anyLong())).thenAnswer(invocation -> {
+                    String error = submitError;
+                    if (error == null) {
+                        readings.add(invocation.getArguments()[1] + " " + invocation.getArguments()[2]);
+                    }
+                    return error;
+                });
+        try (DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            port = socket.getLocalPort();
+        }
+        simpleAdapterDesc = mock(SimpleAdapterDesc.class);
+        when(simpleAdapterDesc.getSimpleAdapterName()).thenReturn("coap-sensors");
+        when(simpleAdapterDesc.getOnem2mTargetId()).thenReturn(TARGET_URI);
+        when(simpleAdapterDesc.getWireProtocol()).thenReturn(SimpleAdapterParmsDesc.WireProtocol.COAP);
+        when(simpleAdapterDesc.getCoapServerPort()).thenReturn((long) port);
+
+        coapServer = new Onem2mSimpleAdapterCoapServer(manager);
+        coapServer.startCoapServer(simpleAdapterDesc);
+    }
+
+    @After
+    public void tearDown() {
+        clientEndpoints.forEach(CoapEndpoint::destroy);
+        coapServer.stopCoapServer(simpleAdapterDesc);
+    }
+
+    private CoapClient newClient(String path) throws Exception {
+        CoapEndpoint endpoint = new CoapEndpoint(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                                                 new NetworkConfig());
+        endpoint.start();
+        clientEndpoints.add(endpoint);
+        CoapClient client = new CoapClient("coap://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" +
+                                           port + "/" + path);
+        client.setEndpoint(endpoint);
+        client.setTimeout(TimeUnit.SECONDS.toMillis(30));
+        return client;
+    }
+
+    private static void await(Supplier<Boolean> condition, String message) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        while (!condition.get() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(message, condition.get());
+    }
+
+    private static String reading(int value) {
+        return "{\"temp\":" + value + "}";
+    }
+
+    @Test
+    public void testConfirmableReadingAcknowledged() throws Exception {
+        CoapClient client = newClient(TARGET_URI + "/temp");
+        CoapResponse response = client.post(reading(1), MediaTypeRegistry.APPLICATION_JSON);
+        assertNotNull(response);
+        assertEquals(CoAP.ResponseCode.CHANGED, response.getCode());
+        assertEquals(1, readings.size());
+        assertEquals(TARGET_URI + "/temp " + reading(1), readings.get(0));
+    }
+
+    @Test
+    public void testNonConfirmableReadingAnsweredNonConfirmable() throws Exception {
+        CoapClient client = newClient(TARGET_URI + "/temp");
+        client.useNONs();
+        CoapResponse response = client.post(reading(1), MediaTypeRegistry.APPLICATION_JSON);
+        assertNotNull(response);
+        assertEquals(CoAP.ResponseCode.CHANGED, response.getCode());
+        assertEquals(CoAP.Type.NON, response.advanced().getType());
+        assertEquals(1, readings.size());
+    }
+
+    @Test
+    public void testReadingsFromManyClients() throws Exception {
+        AtomicInteger numChanged = new AtomicInteger();
+        CoapHandler handler = new CoapHandler() {
+            @Override
+            public void onLoad(CoapResponse response) {
+                if (response.getCode() == CoAP.ResponseCode.CHANGED) {
+                    numChanged.incrementAndGet();
+                }
+            }
+
+            @Override
+            public void onError() {
+            }
+        };
+        for (int c = 0; c < NUM_CLIENTS; c++) {
+            CoapClient client = newClient(TARGET_URI + "/temp" + c);
+            for (int i = 0; i < READINGS_PER_CLIENT; i++) {
+                client.post(handler, reading(i), MediaTypeRegistry.APPLICATION_JSON);
+            }
+        }
+
+        int numReadings = NUM_CLIENTS * READINGS_PER_CLIENT;
+        await(() -> readings.size() == numReadings && numChanged.get() == numReadings, "all readings received");
+        for (int c = 0; c < NUM_CLIENTS; c++) {
+            String prefix = TARGET_URI + "/temp" + c + " ";
+            assertEquals(READINGS_PER_CLIENT, readings.stream().filter(r -> r.startsWith(prefix)).count());
+        }
+    }
+
+    @Test
+    public void testFullBatcherRejectsWithRetry() throws Exception {
+        submitError = Onem2mSimpleAdapterManager.TOO_MANY_PENDING_READINGS;
+        CoapClient client = newClient(TARGET_URI + "/temp");
+        CoapResponse response = client.post(reading(1), MediaTypeRegistry.APPLICATION_JSON);
+        assertNotNull(response);
+        assertEquals(CoAP.ResponseCode.SERVICE_UNAVAILABLE, response.getCode());
+        assertEquals(Long.valueOf(Onem2mSimpleAdapterCoapServer.RETRY_AFTER_SECONDS),
+                     response.getOptions().getMaxAge());
+
+        // the device retries after Max-Age
+        submitError = null;
+        response = client.post(reading(1), MediaTypeRegistry.APPLICATION_JSON);
+        assertEquals(CoAP.ResponseCode.CHANGED, response.getCode());
+        assertEquals(1, readings.size());
+    }
+
+    @Test
+    public void testInvalidReadingRejected() throws Exception {
+        submitError = "onem2m target uri not configured: unknown";
+        CoapClient client = newClient("unknown");
+        CoapResponse response = client.post(reading(1), MediaTypeRegistry.APPLICATION_JSON);
+        assertNotNull(response);
+        assertEquals(CoAP.ResponseCode.BAD_REQUEST, response.getCode());
+        assertTrue(readings.isEmpty());
+    }
+}
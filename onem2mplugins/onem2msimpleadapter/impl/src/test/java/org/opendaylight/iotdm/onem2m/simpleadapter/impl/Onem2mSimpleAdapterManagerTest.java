@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2m.simpleadapter.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.controller.md.sal.binding.api.DataBroker;
+import org.opendaylight.controller.md.sal.binding.api.DataObjectModification;
+import org.opendaylight.controller.md.sal.binding.api.DataTreeIdentifier;
+import org.opendaylight.controller.md.sal.binding.api.DataTreeModification;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.onem2msimpleadapter.rev160210.SimpleAdapterParmsDesc;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.onem2msimpleadapter.rev160210.onem2m.simple.adapter.config.SimpleAdapterDesc;
+import org.opendaylight.yangtools.concepts.ListenerRegistration;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * HTTP ingestion through the manager with a stubbed resource client.  The readings of many devices are POSTed
+ * concurrently to the HTTP adapter, the container of a device is named by the "device" key of the payload.  The
+ * requests to the resource tree are counted: once the containers are known, a reading costs one content instance
+ * create.
+ */
+public class Onem2mSimpleAdapterManagerTest {
+    private static final String TARGET_URI = "InCSE1/sensors";
+    private static final int NUM_DEVICES = 500;
+    private static final int READINGS_PER_DEVICE = 10;
+    private static final int NUM_HTTP_CLIENTS = 8;
+
+    // the containers in the stubbed resource tree, by their target
+    private final Set<String> containers = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean failNextContentInstance = new AtomicBoolean();
+    private final ExecutorService httpClients = Executors.newFixedThreadPool(NUM_HTTP_CLIENTS);
+    private Onem2mSimpleAdapterResourceClient resourceClient;
+    private Onem2mSimpleAdapterManager manager;
+    private Onem2mSimpleAdapterHttpServer httpServer;
+    private SimpleAdapterDesc simpleAdapterDesc;
+    private int port;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        resourceClient = mock(Onem2mSimpleAdapterResourceClient.class);
+        when(resourceClient.targetExists(TARGET_URI)).thenReturn(true);
+        when(resourceClient.getContainer(anyString(), anyString())).thenAnswer(
+                invocation -> containers.contains(invocation.getArguments()[0] + "/" + invocation.getArguments()[1]));
+        when(resourceClient.createContainer(anyString(), anyString(), any(SimpleAdapterDesc.class))).thenAnswer(
+                invocation -> containers.add(invocation.getArguments()[0] + "/" + invocation.getArguments()[1]));
+        when(resourceClient.createContentInstance(anyString(), anyString(), any(SimpleAdapterDesc.class))).thenAnswer(
+                invocation -> !failNextContentInstance.getAndSet(false) &&
+                        containers.contains((String) invocation.getArguments()[0]));
+
+        DataBroker dataBroker = mock(DataBroker.class);
+        doReturn(mock(ListenerRegistration.class)).when(dataBroker)
+                .registerDataTreeChangeListener(any(DataTreeIdentifier.class), any(Onem2mSimpleAdapterManager.class));
+        manager = new Onem2mSimpleAdapterManager(dataBroker, resourceClient);
+        httpServer = new Onem2mSimpleAdapterHttpServer(manager);
+        manager.setOnem2mSimpleAdapterHttpServer(httpServer);
+
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        simpleAdapterDesc = mock(SimpleAdapterDesc.class);
+        when(simpleAdapterDesc.getSimpleAdapterName()).thenReturn("http-sensors");
+        when(simpleAdapterDesc.getOnem2mTargetId()).thenReturn("/" + TARGET_URI);
+        when(simpleAdapterDesc.getWireProtocol()).thenReturn(SimpleAdapterParmsDesc.WireProtocol.HTTP);
+        when(simpleAdapterDesc.getHttpServerPort()).thenReturn((long) port);
+        when(simpleAdapterDesc.getOnem2mContainerJsonKeyName()).thenReturn("device");
+
+        // the descriptor is configured as by the datastore
+        DataTreeModification<SimpleAdapterDesc> change = mock(DataTreeModification.class);
+        DataObjectModification<SimpleAdapterDesc> rootNode = mock(DataObjectModification.class);
+        when(change.getRootNode()).thenReturn(rootNode);
+        when(rootNode.getModificationType()).thenReturn(DataObjectModification.ModificationType.WRITE);
+        when(rootNode.getDataAfter()).thenReturn(simpleAdapterDesc);
+        manager.onDataTreeChanged(Collections.singletonList(change));
+    }
+
+    @After
+    public void tearDown() {
+        httpClients.shutdownNow();
+        httpServer.stopHttpServer(simpleAdapterDesc);
+        manager.close();
+    }
+
+    private static String device(int deviceNum) {
+        return "dev-" + deviceNum;
+    }
+
+    private static String reading(int deviceNum, int value) {
+        return "{\"device\":\"" + device(deviceNum) + "\",\"temp\":" + value + "}";
+    }
+
+    private static String containerTarget(int deviceNum) {
+        return "/" + TARGET_URI + "/" + device(deviceNum);
+    }
+
+    /**
+     * @return HTTP status of the POST
+     */
+    private int post(String uri, String payload) throws IOException {
+        URL url = new URL("http", InetAddress.getLoopbackAddress().getHostAddress(), port, "/" + uri);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(payload.getBytes(StandardCharsets.UTF_8));
+            }
+            int status = connection.getResponseCode();
+            InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+            if (in != null) {
+                while (in.read() != -1) {
+                    // the response is consumed so the connection is reused
+                }
+                in.close();
+            }
+            return status;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Test
+    public void testHttpIngestOfManyDevices() throws Exception {
+        for (int i = 0; i < READINGS_PER_DEVICE; i++) {
+            final int value = i;
+            // a round posts one reading of each device, the first round adds the containers
+            List<Future<Integer>> statuses = new ArrayList<>();
+            for (int d = 0; d < NUM_DEVICES; d++) {
+                final int deviceNum = d;
+                statuses.add(httpClients.submit(() -> post(TARGET_URI, reading(deviceNum, value))));
+            }
+            for (Future<Integer> status : statuses) {
+                assertEquals(Integer.valueOf(HttpURLConnection.HTTP_OK), status.get(30, TimeUnit.SECONDS));
+            }
+        }
+
+        assertEquals(NUM_DEVICES, containers.size());
+        verify(resourceClient, times(NUM_DEVICES)).getContainer(eq("/" + TARGET_URI), anyString());
+        verify(resourceClient, times(NUM_DEVICES))
+                .createContainer(eq("/" + TARGET_URI), anyString(), eq(simpleAdapterDesc));
+        for (int d = 0; d < NUM_DEVICES; d++) {
+            verify(resourceClient, times(READINGS_PER_DEVICE))
+                    .createContentInstance(eq(containerTarget(d)), anyString(), eq(simpleAdapterDesc));
+        }
+    }
+
+    @Test
+    public void testDeletedContainerIsAddedAgain() throws Exception {
+        assertEquals(HttpURLConnection.HTTP_OK, post(TARGET_URI, reading(0, 1)));
+        assertEquals(HttpURLConnection.HTTP_OK, post(TARGET_URI, reading(0, 2)));
+        verify(resourceClient, times(1)).getContainer("/" + TARGET_URI, device(0));
+
+        // the delete event of the container
+        containers.remove(containerTarget(0));
+        manager.containerDeleted(TARGET_URI + "/" + device(0));
+        assertEquals(HttpURLConnection.HTTP_OK, post(TARGET_URI, reading(0, 3)));
+
+        verify(resourceClient, times(2)).getContainer("/" + TARGET_URI, device(0));
+        verify(resourceClient, times(2)).createContainer("/" + TARGET_URI, device(0), simpleAdapterDesc);
+        verify(resourceClient, times(3)).createContentInstance(eq(containerTarget(0)), anyString(),
+                eq(simpleAdapterDesc));
+    }
+
+    @Test
+    public void testFailedCreateVerifiesTheContainer() throws Exception {
+        assertEquals(HttpURLConnection.HTTP_OK, post(TARGET_URI, reading(0, 1)));
+
+        // the container is deleted without the event reaching the manager
+        containers.remove(containerTarget(0));
+        failNextContentInstance.set(true);
+        assertEquals(HttpURLConnection.HTTP_OK, post(TARGET_URI, reading(0, 2)));
+
+        verify(resourceClient, times(2)).getContainer("/" + TARGET_URI, device(0));
+        verify(resourceClient, times(2)).createContainer("/" + TARGET_URI, device(0), simpleAdapterDesc);
+        // the failed create and its retry
+        verify(resourceClient, times(3)).createContentInstance(eq(containerTarget(0)), anyString(),
+                eq(simpleAdapterDesc));
+    }
+
+    @Test
+    public void testUnknownTargetIsRejected() throws Exception {
+        assertEquals(HttpURLConnection.HTTP_BAD_REQUEST, post("InCSE1/unknown", reading(0, 1)));
+        assertEquals(HttpURLConnection.HTTP_BAD_REQUEST, post(TARGET_URI, "{\"temp\":1}"));
+        verify(resourceClient, never()).getContainer(anyString(), anyString());
+        verify(resourceClient, never()).createContentInstance(anyString(), anyString(), any(SimpleAdapterDesc.class));
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.iotdm.onem2m.simpleadapter.impl;
+
+import io.moquette.BrokerConstants;
+import io.moquette.broker.Server;
+import io.moquette.broker.config.MemoryConfig;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.onem2msimpleadapter.rev160210.SimpleAdapterParmsDesc;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.onem2msimpleadapter.rev160210.onem2m.simple.adapter.config.SimpleAdapterDesc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.anyLong;
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * MQTT ingestion through a broker embedded in the test.  The readings are published with QoS 1 and received by
+ * the mocked manager, which can hold the client thread like a full batcher or report the readings as dropped.
+ */
+public class Onem2mSimpleAdapterMqttClientTest {
+    private static final String TARGET_URI = "InCSE1/sensors";
+    private static final String PROBE = "{\"probe\":true}";
+    private static final int NUM_READINGS = 500;
+
+    // the received readings as "topic payload"
+    private final List<String> readings = new CopyOnWriteArrayList<>();
+    private volatile CountDownLatch clientHeld = new CountDownLatch(0);
+    private volatile String submitError = null;
+    private Server broker;
+    private String brokerUri;
+    private Onem2mSimpleAdapterMqttClient mqttClient;
+    private SimpleAdapterDesc simpleAdapterDesc;
+    private MqttClient publisher;
+
+    @Before
+    public void setUp() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            port = socket.getLocalPort();
+        }
+        Properties properties = new Properties();
+        properties.setProperty(BrokerConstants.HOST_PROPERTY_NAME, InetAddress.getLoopbackAddress().getHostAddress());
+        properties.setProperty(BrokerConstants.PORT_PROPERTY_NAME, Integer.toString(port));
+        properties.setProperty(BrokerConstants.WEB_SOCKET_PORT_PROPERTY_NAME, BrokerConstants.DISABLED_PORT_BIND);
+        properties.setProperty(BrokerConstants.ALLOW_ANONYMOUS_PROPERTY_NAME, "true");
+        properties.setProperty(BrokerConstants.PERSISTENT_STORE_PROPERTY_NAME, "");
+        properties.setProperty(BrokerConstants.IMMEDIATE_BUFFER_FLUSH_PROPERTY_NAME, "true");
+        properties.setProperty(BrokerConstants.ENABLE_TELEMETRY_NAME, "false");
+        broker = new Server();
+        broker.startServer(new MemoryConfig(properties));
+        brokerUri = "tcp://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + port;
+
+        Onem2mSimpleAdapterManager manager = mock(Onem2mSimpleAdapterManager.class);
+        when(manager.submitReading(eq(SimpleAdapterParmsDesc.WireProtocol.MQTT), anyString(), anyString(),
+                anyLong())).thenAnswer(invocation -> {
+                    readings.add(invocation.getArguments()[1] + " " + invocation.getArguments()[2]);
+                    clientHeld.await(30, TimeUnit.SECONDS);
+                    return submitError;
+                });
+        simpleAdapterDesc = mock(SimpleAdapterDesc.class);
+        when(simpleAdapterDesc.getSimpleAdapterName()).thenReturn("mqtt-sensors");
+        when(simpleAdapterDesc.getOnem2mTargetId()).thenReturn("/" + TARGET_URI + "/");
+        when(simpleAdapterDesc.getWireProtocol()).thenReturn(SimpleAdapterParmsDesc.WireProtocol.MQTT);
+        when(simpleAdapterDesc.getMqttBroker()).thenReturn(brokerUri);
+
+        mqttClient = new Onem2mSimpleAdapterMqttClient(manager);
+        mqttClient.startMqttClient(simpleAdapterDesc);
+
+        publisher = new MqttClient(brokerUri, MqttClient.generateClientId(), new MemoryPersistence());
+        MqttConnectOptions options = new MqttConnectOptions();
+        options.setCleanSession(true);
+        publisher.connect(options);
+        awaitSubscribed();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        clientHeld.countDown();
+        if (publisher.isConnected()) {
+            publisher.disconnect();
+        }
+        publisher.close();
+        mqttClient.stopMqttClient(simpleAdapterDesc);
+        broker.stopServer();
+    }
+
+    private static void await(Supplier<Boolean> condition, String message) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        while (!condition.get() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(message, condition.get());
+    }
+
+    private void publish(String topic, String payload) throws Exception {
+        MqttMessage message = new MqttMessage(payload.getBytes(StandardCharsets.UTF_8));
+        message.setQos(1);
+        publisher.publish(topic, message);
+    }
+
+    // the subscriptions are made asynchronously, the probes are published until one is received
+    private void awaitSubscribed() throws Exception {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        while (readings.isEmpty() && System.currentTimeMillis() < deadline) {
+            publish(TARGET_URI, PROBE);
+            Thread.sleep(100);
+        }
+        assertTrue("subscribed to " + TARGET_URI, !readings.isEmpty());
+        Thread.sleep(100);
+        readings.clear();
+    }
+
+    private static String reading(int value) {
+        return "{\"temp\":" + value + "}";
+    }
+
+    private List<String> expectedReadings(String topic, int from, int to) {
+        List<String> expected = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            expected.add(topic + " " + reading(i));
+        }
+        return expected;
+    }
+
+    @Test
+    public void testReadingsReceivedInOrder() throws Exception {
+        String topic = TARGET_URI + "/temp";
+        for (int i = 0; i < NUM_READINGS; i++) {
+            publish(topic, reading(i));
+        }
+        await(() -> readings.size() == NUM_READINGS, "all readings received");
+        assertEquals(expectedReadings(topic, 0, NUM_READINGS), readings);
+    }
+
+    @Test
+    public void testHeldClientDelaysLaterReadings() throws Exception {
+        String topic = TARGET_URI + "/temp";
+        clientHeld = new CountDownLatch(1);
+        for (int i = 0; i < 10; i++) {
+            publish(topic, reading(i));
+        }
+        await(() -> readings.size() == 1, "first reading received");
+        // the client waits for room in the batcher, the next readings are not delivered meanwhile
+        Thread.sleep(200);
+        assertEquals(1, readings.size());
+
+        clientHeld.countDown();
+        await(() -> readings.size() == 10, "held readings received");
+        assertEquals(expectedReadings(topic, 0, 10), readings);
+    }
+
+    @Test
+    public void testDroppedReadingsKeepTheSubscription() throws Exception {
+        String topic = TARGET_URI + "/temp";
+        submitError = Onem2mSimpleAdapterManager.TOO_MANY_PENDING_READINGS;
+        for (int i = 0; i < 10; i++) {
+            publish(topic, reading(i));
+        }
+        await(() -> readings.size() == 10, "dropped readings received");
+
+        submitError = null;
+        publish(topic, reading(10));
+        await(() -> readings.size() == 11, "reading after the drops received");
+        assertEquals(expectedReadings(topic, 0, 11), readings);
+    }
+}
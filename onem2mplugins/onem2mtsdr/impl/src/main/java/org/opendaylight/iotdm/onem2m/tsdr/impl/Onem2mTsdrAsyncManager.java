@@ -8,9 +8,6 @@
 
 package org.opendaylight.iotdm.onem2m.tsdr.impl;
 
-import java.util.HashMap;
-
-import java.util.Map;
 import org.opendaylight.iotdm.onem2m.plugins.Onem2mPluginsDbApi;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResource;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.onem2mtsdr.rev160210.onem2m.tsdr.config.Onem2mTargetDesc;
@@ -21,45 +18,54 @@ public class Onem2mTsdrAsyncManager {
 
     private static final Logger LOG = LoggerFactory.getLogger(Onem2mTsdrAsyncManager.class);
     private Onem2mTsdrSender onem2mTsdrSender;
-    private HashMap<String,Onem2mTargetDesc> tsdrMap;
+    // descriptors by the hierarchical name of their target, an update is matched in the depth of its resource
+    private Onem2mTsdrUriTrie<Onem2mTargetDesc> tsdrTrie;
 
     public Onem2mTsdrAsyncManager(Onem2mTsdrSender onem2mTsdrSender) {
         this.onem2mTsdrSender = onem2mTsdrSender;
-        tsdrMap = new HashMap<String,Onem2mTargetDesc>();
+        tsdrTrie = new Onem2mTsdrUriTrie<Onem2mTargetDesc>();
 
         LOG.info("Created Onem2mTsdrAsyncManager");
     }
 
     public void close() {
+        tsdrTrie.clear();
     }
 
     /*
     ** These crud routines handle changes to the onem2mtsdr.yang descriptor changes in the datastore
      */
     public void onem2mTargetDescCreated(Onem2mTargetDesc onem2mTargetDesc) {
-        tsdrMap.put(onem2mTargetDesc.getOnem2mTargetUri(), onem2mTargetDesc);
+        tsdrTrie.put(onem2mTargetDesc.getOnem2mTargetUri(), onem2mTargetDesc);
     }
 
     public void onem2mTargetDescChanged(Onem2mTargetDesc onem2mTargetDesc) {
-        tsdrMap.put(onem2mTargetDesc.getOnem2mTargetUri(), onem2mTargetDesc);
+        tsdrTrie.put(onem2mTargetDesc.getOnem2mTargetUri(), onem2mTargetDesc);
     }
 
     public void onem2mTargetDescDeleted(Onem2mTargetDesc onem2mTargetDesc) {
-        tsdrMap.remove(onem2mTargetDesc.getOnem2mTargetUri());
+        tsdrTrie.remove(onem2mTargetDesc.getOnem2mTargetUri());
+    }
+
+    /*
+    ** A created resource can be the target of a descriptor which was configured before the resource existed
+     */
+    public void onem2mResourceCreated(String h, Onem2mResource onem2mResource) {
+        if (tsdrTrie.hasPending()) {
+            tsdrTrie.resolvePending();
+        }
+        onem2mResourceUpdate(h, onem2mResource);
     }
 
     /*
     ** When a database update occurs, see if falls under an async onem2mTargetDesc, then send the data to the TSDR
      */
     public void onem2mResourceUpdate(String h, Onem2mResource onem2mResource) {
-        for (Map.Entry<String, Onem2mTargetDesc> entry : tsdrMap.entrySet()) {
-            Onem2mTargetDesc targetDesc = entry.getValue();
-            // ... see if there are any target's in the tsdrMap that contain this resource
-            String targetResourceId = Onem2mPluginsDbApi.getInstance().findResourceIdUsingURI(targetDesc.getOnem2mTargetUri());
-            if (Onem2mPluginsDbApi.getInstance().isResourceIdUnderTargetId(targetResourceId, onem2mResource.getResourceId())) {
-                onem2mTsdrSender.sendDataToTsdr(targetDesc, h, onem2mResource);
-                break;
-            }
+        // the resource is sent once, using the descriptor of its closest target
+        Onem2mTargetDesc targetDesc = tsdrTrie.findLongestPrefix(
+                Onem2mPluginsDbApi.getInstance().getHierarchicalNameForResource(onem2mResource));
+        if (targetDesc != null) {
+            onem2mTsdrSender.sendDataToTsdr(targetDesc, h, onem2mResource);
         }
     }
 }
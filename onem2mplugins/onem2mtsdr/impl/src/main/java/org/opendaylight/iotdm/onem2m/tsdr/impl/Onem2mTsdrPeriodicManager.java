@@ -8,11 +8,12 @@
 
 package org.opendaylight.iotdm.onem2m.tsdr.impl;
 
-import static java.lang.Thread.sleep;
-
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import org.opendaylight.iotdm.onem2m.plugins.Onem2mPluginsDbApi;
@@ -21,36 +22,49 @@ import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.onem2mts
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Polls the POLL mode descriptors, each descriptor is a timer of the hashed timer wheel which expires every
+ * poll period.  The first poll of a descriptor sends all resources under its target, the next polls send only
+ * the resources created or changed under the target since the previous poll.  The changes are tracked from the
+ * resource change events, so a poll doesn't scan the subtree of the target again.
+ */
 public class Onem2mTsdrPeriodicManager {
 
     private static final Logger LOG = LoggerFactory.getLogger(Onem2mTsdrPeriodicManager.class);
+    private static final int NUM_POLLER_THREADS = 4;
     private ExecutorService pollerExecutor;
+    private Onem2mTsdrTimerWheel timerWheel;
     private Onem2mTsdrSender onem2mTsdrSender;
     private final int ONEM2M_TSDR_POLLER_RESOURCE_LIMIT = 1000;
 
-    private HashMap<String,TsdrPollingDesc> tsdrMap;
+    private Map<String,TsdrPollingDesc> tsdrMap;
+    // polling descriptors by the hierarchical name of their target, used to track the changed resources
+    private Onem2mTsdrUriTrie<TsdrPollingDesc> tsdrTrie;
 
     public Onem2mTsdrPeriodicManager(Onem2mTsdrSender onem2mTsdrSender) {
         this.onem2mTsdrSender = onem2mTsdrSender;
-        tsdrMap = new HashMap<String,TsdrPollingDesc>();
+        tsdrMap = new ConcurrentHashMap<String,TsdrPollingDesc>();
+        tsdrTrie = new Onem2mTsdrUriTrie<TsdrPollingDesc>();
         LOG.info("Created Onem2mTsdrPeriodicManager");
-        pollerExecutor = Executors.newFixedThreadPool(1);
-        pollerExecutor.execute(new Runnable() {
-            @Override
-            public void run() {
-                poller();
-            }
-        });
+        pollerExecutor = Executors.newFixedThreadPool(NUM_POLLER_THREADS);
+        timerWheel = new Onem2mTsdrTimerWheel("onem2m-tsdr-poller-timer", pollerExecutor);
     }
 
     public void close() {
+        timerWheel.close();
         tsdrMap.clear();
+        tsdrTrie.clear();
         pollerExecutor.shutdown();
     }
 
     public void onem2mTargetDescCreated(Onem2mTargetDesc onem2mTargetDesc) {
         TsdrPollingDesc t = new TsdrPollingDesc(onem2mTargetDesc);
-        tsdrMap.put(onem2mTargetDesc.getOnem2mTargetUri(), t);
+        TsdrPollingDesc old = tsdrMap.put(onem2mTargetDesc.getOnem2mTargetUri(), t);
+        if (old != null) {
+            old.cancel();
+        }
+        tsdrTrie.put(onem2mTargetDesc.getOnem2mTargetUri(), t);
+        timerWheel.schedule(t.timer, t.getPollPeriod());
     }
 
     public void onem2mTargetDescChanged(Onem2mTargetDesc onem2mTargetDesc) {
@@ -58,33 +72,68 @@ public class Onem2mTsdrPeriodicManager {
         if (t == null) {
             onem2mTargetDescCreated(onem2mTargetDesc);
         } else {
-            t.adjustTimer(onem2mTargetDesc.getPollPeriod().longValue());
+            // the next poll is moved by the difference of the periods
+            long oldSeconds = t.getPollPeriod();
             t.onem2mTargetDesc = onem2mTargetDesc;
+            long remaining = timerWheel.getRemainingSeconds(t.timer);
+            if (remaining > 0) {
+                timerWheel.schedule(t.timer, remaining + t.getPollPeriod() - oldSeconds);
+            }
         }
     }
 
     public void onem2mTargetDescDeleted(Onem2mTargetDesc onem2mTargetDesc) {
-        tsdrMap.remove(onem2mTargetDesc.getOnem2mTargetUri());
+        TsdrPollingDesc t = tsdrMap.remove(onem2mTargetDesc.getOnem2mTargetUri());
+        if (t != null) {
+            t.cancel();
+            tsdrTrie.remove(onem2mTargetDesc.getOnem2mTargetUri());
+        }
     }
 
-    // for now one poller, one thread ... let's see how it scales
-    // future: timerWheel, many threads to poll and send???
-    private void poller() {
-        while (true) {
-            try {
-                sleep(1000);
-            } catch (InterruptedException e) {
-                LOG.error("Timer was interrrupted {}", e.toString());
-            }
-            /*
-            ** See if this descriptor has expired, if so, process the descriptor
-             */
-            for (Map.Entry<String, TsdrPollingDesc> entry : tsdrMap.entrySet()) {
-                TsdrPollingDesc t = entry.getValue();
-                if (t.decrementTimerAndIsExpired()) {
-                    sendPollingDataToTsdr(t.onem2mTargetDesc);
+    /*
+    ** The created or changed resource is sent by the next poll of the descriptors which contain it
+     */
+    public void onem2mResourceChanged(Onem2mResource onem2mResource, boolean created) {
+        if (created && tsdrTrie.hasPending()) {
+            tsdrTrie.resolvePending();
+        }
+        String h = Onem2mPluginsDbApi.getInstance().getHierarchicalNameForResource(onem2mResource);
+        for (TsdrPollingDesc t : tsdrTrie.findAllPrefixes(h)) {
+            t.resourceChanged(onem2mResource);
+        }
+    }
+
+    public void onem2mResourceDeleted(Onem2mResource onem2mResource) {
+        String h = Onem2mPluginsDbApi.getInstance().getHierarchicalNameForResource(onem2mResource);
+        for (TsdrPollingDesc t : tsdrTrie.findAllPrefixes(h)) {
+            t.resourceDeleted(onem2mResource.getResourceId());
+        }
+    }
+
+    /*
+    ** Runs on a poller thread when the timer of the descriptor expires, the timer is scheduled again after the
+    ** poll so the polls of one descriptor never overlap
+     */
+    private void poll(TsdrPollingDesc t) {
+        if (t.cancelled) {
+            return;
+        }
+        try {
+            Collection<Onem2mResource> changedResources = t.takeChangedResources();
+            if (changedResources == null) {
+                sendPollingDataToTsdr(t.onem2mTargetDesc);
+            } else {
+                for (Onem2mResource onem2mResource : changedResources) {
+                    String h = Onem2mPluginsDbApi.getInstance().getHierarchicalNameForResource(onem2mResource);
+                    onem2mTsdrSender.sendDataToTsdr(t.onem2mTargetDesc, h, onem2mResource);
                 }
             }
+        } catch (RuntimeException e) {
+            LOG.error("Failed to poll: {}, {}", t.onem2mTargetDesc.getOnem2mTargetUri(), e.toString());
+        } finally {
+            if (!t.cancelled) {
+                timerWheel.schedule(t.timer, t.getPollPeriod());
+            }
         }
     }
 
@@ -109,45 +158,56 @@ public class Onem2mTsdrPeriodicManager {
     private class TsdrPollingDesc {
 
         private final long ONEM2M_TSDR_POLLER_INTERVAL_SECONDS_DEFAULT = 15;
-        private Onem2mTargetDesc onem2mTargetDesc;
-        private long secondsCountDown;
+        private volatile Onem2mTargetDesc onem2mTargetDesc;
+        private final Onem2mTsdrTimerWheel.Timer timer;
+        private volatile boolean cancelled = false;
+        // resources changed since the last poll, the latest snapshot of each resource
+        private Map<String, Onem2mResource> changedResources = new LinkedHashMap<>();
+        // the whole target is sent by the first poll and when too many resources changed
+        private boolean fullPollRequired = true;
 
         private TsdrPollingDesc(Onem2mTargetDesc t) {
             onem2mTargetDesc = t;
-            resetTimer();
+            timer = new Onem2mTsdrTimerWheel.Timer(() -> poll(this));
         }
 
-        void resetTimer() {
-            secondsCountDown = onem2mTargetDesc.getPollPeriod().longValue();
-            if (secondsCountDown <= 0) {
-                secondsCountDown = ONEM2M_TSDR_POLLER_INTERVAL_SECONDS_DEFAULT;
-            }
+        long getPollPeriod() {
+            long seconds = onem2mTargetDesc.getPollPeriod().longValue();
+            return (seconds <= 0) ? ONEM2M_TSDR_POLLER_INTERVAL_SECONDS_DEFAULT : seconds;
         }
 
-        boolean decrementTimerAndIsExpired() {
-            if (--secondsCountDown == 0) {
-                resetTimer();
-                return true;
-            }
-            return false;
+        void cancel() {
+            cancelled = true;
+            timerWheel.cancel(timer);
         }
 
-        void adjustTimer(long newSeconds) {
-            if (newSeconds <= 0) {
-                newSeconds = ONEM2M_TSDR_POLLER_INTERVAL_SECONDS_DEFAULT;
+        synchronized void resourceChanged(Onem2mResource onem2mResource) {
+            if (fullPollRequired) {
+                return;
             }
-            long oldSeconds = onem2mTargetDesc.getPollPeriod();
-            if (oldSeconds <= 0) {
-                oldSeconds = ONEM2M_TSDR_POLLER_INTERVAL_SECONDS_DEFAULT;
+            changedResources.put(onem2mResource.getResourceId(), onem2mResource);
+            if (changedResources.size() > ONEM2M_TSDR_POLLER_RESOURCE_LIMIT) {
+                changedResources.clear();
+                fullPollRequired = true;
             }
-            if (newSeconds >= oldSeconds) {
-                secondsCountDown += (newSeconds - oldSeconds);
-            } else {
-                secondsCountDown = (oldSeconds - newSeconds);
-                if (secondsCountDown <= 0) {
-                    secondsCountDown = 1; // next poll, expire, and send data
-                }
+        }
+
+        synchronized void resourceDeleted(String resourceId) {
+            changedResources.remove(resourceId);
+        }
+
+        /**
+         * @return the resources changed since the last poll, null if the whole target must be sent
+         */
+        synchronized Collection<Onem2mResource> takeChangedResources() {
+            if (fullPollRequired) {
+                fullPollRequired = false;
+                changedResources.clear();
+                return null;
             }
+            List<Onem2mResource> resources = new ArrayList<>(changedResources.values());
+            changedResources.clear();
+            return resources;
         }
     }
 }
@@ -35,7 +35,7 @@ public class Onem2mTsdrProvider implements IotdmPluginDbClient, BindingAwareProv
     private Onem2mDataStoreChangeHandler onem2mDataStoreChangeHandler;
     private TsdrTargetDescDataStoreChangeHandler tsdrTargetDataStoreChangeHandler;
     private TsdrConfigDataStoreChangeHandler tsdrConfigDataStoreChangeHandler;
-    private Onem2mTsdrPeriodicManager onem2mTsdrPeriodicManager;
+    private volatile Onem2mTsdrPeriodicManager onem2mTsdrPeriodicManager;
     private Onem2mTsdrAsyncManager onem2mTsdrAsyncManager;
 
     private HashMap<String,Onem2mTargetDesc> tsdrMap;
@@ -66,6 +66,7 @@ public class Onem2mTsdrProvider implements IotdmPluginDbClient, BindingAwareProv
     public void dbClientStart() {
         onem2mTsdrPeriodicManager = new Onem2mTsdrPeriodicManager(onem2mTsdrSender);
         onem2mDataStoreChangeHandler = new Onem2mDataStoreChangeHandler(dataBroker);
+        onem2mDataStoreChangeHandler.register();
     }
 
     @Override
@@ -75,7 +76,10 @@ public class Onem2mTsdrProvider implements IotdmPluginDbClient, BindingAwareProv
             onem2mTsdrPeriodicManager = null;
         }
 
-        onem2mDataStoreChangeHandler = null;
+        if (onem2mDataStoreChangeHandler != null) {
+            onem2mDataStoreChangeHandler.close();
+            onem2mDataStoreChangeHandler = null;
+        }
     }
 
     @Override
@@ -91,7 +95,8 @@ public class Onem2mTsdrProvider implements IotdmPluginDbClient, BindingAwareProv
         onem2mTsdrAsyncManager.close();
     }
 
-    // listen for changes to the onem2m resource tree, only the async manager needs to be informed
+    // listen for changes to the onem2m resource tree, the async manager sends the changes and the periodic manager
+    // tracks the changed resources for its next polls
     private class Onem2mDataStoreChangeHandler extends Onem2mDatastoreListener {
 
         public Onem2mDataStoreChangeHandler(DataBroker dataBroker) {
@@ -100,31 +105,41 @@ public class Onem2mTsdrProvider implements IotdmPluginDbClient, BindingAwareProv
 
         @Override
         public void onem2mResourceCreated(String hierarchicalResourceName, Onem2mResource onem2mResource) {
-            LOG.info("Onem2mTsdrProvider: onem2mResourceCreated h={}, id:{}, type:{}",
+            LOG.debug("Onem2mTsdrProvider: onem2mResourceCreated h={}, id:{}, type:{}",
                     hierarchicalResourceName,
                     onem2mResource.getResourceId(),
                     onem2mResource.getResourceType());
-            // only async cares about onem2m data tree changes
-            onem2mTsdrAsyncManager.onem2mResourceUpdate(hierarchicalResourceName, onem2mResource);
-
+            onem2mTsdrAsyncManager.onem2mResourceCreated(hierarchicalResourceName, onem2mResource);
+            Onem2mTsdrPeriodicManager periodicManager = onem2mTsdrPeriodicManager;
+            if (periodicManager != null) {
+                periodicManager.onem2mResourceChanged(onem2mResource, true);
+            }
         }
 
         @Override
         public void onem2mResourceChanged(String hierarchicalResourceName, Onem2mResource onem2mResource) {
-            LOG.info("Onem2mTsdrProvider: onem2mResourceChanged h={}, id:{}, type:{}",
+            LOG.debug("Onem2mTsdrProvider: onem2mResourceChanged h={}, id:{}, type:{}",
                     hierarchicalResourceName,
                     onem2mResource.getResourceId(),
                     onem2mResource.getResourceType());
             onem2mTsdrAsyncManager.onem2mResourceUpdate(hierarchicalResourceName, onem2mResource);
+            Onem2mTsdrPeriodicManager periodicManager = onem2mTsdrPeriodicManager;
+            if (periodicManager != null) {
+                periodicManager.onem2mResourceChanged(onem2mResource, false);
+            }
         }
 
         @Override
         public void onem2mResourceDeleted(String hierarchicalResourceName, Onem2mResource onem2mResource) {
-            LOG.info("Onem2mTsdrProvider: onem2mResourceDeleted h={}, id:{}, type:{}",
+            LOG.debug("Onem2mTsdrProvider: onem2mResourceDeleted h={}, id:{}, type:{}",
                     hierarchicalResourceName,
                     onem2mResource.getResourceId(),
                     onem2mResource.getResourceType());
-            // no processing required as resource is now gone
+            // the resource is gone, it's not sent by the next poll
+            Onem2mTsdrPeriodicManager periodicManager = onem2mTsdrPeriodicManager;
+            if (periodicManager != null) {
+                periodicManager.onem2mResourceDeleted(onem2mResource);
+            }
         }
     }
 
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.opendaylight.iotdm.onem2m.tsdr.impl;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hashed timer wheel with the one second tick.  A timer of N seconds is put to the slot (current + N) % WHEEL_SIZE
+ * with N / WHEEL_SIZE remaining rounds, so each tick visits only the timers of one slot instead of every timer.
+ * The expired timers are run on the executor passed to the wheel, so a long task doesn't delay the next tick.
+ */
+public class Onem2mTsdrTimerWheel {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Onem2mTsdrTimerWheel.class);
+    public static final int WHEEL_SIZE = 512;
+    private static final long TICK_MS = 1000;
+
+    private final List<Set<Timer>> slots = new ArrayList<>(WHEEL_SIZE);
+    private final Executor taskExecutor;
+    private final Thread tickThread;
+    private long currentTick = 0;
+    private volatile boolean running = true;
+
+    /**
+     * Timer of the wheel, it's scheduled again by the owner if it's periodic.
+     */
+    public static class Timer {
+        private final Runnable task;
+        private int slot = -1;
+        private long rounds;
+        private long expirationTick;
+
+        public Timer(Runnable task) {
+            this.task = task;
+        }
+    }
+
+    public Onem2mTsdrTimerWheel(String name, Executor taskExecutor) {
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            slots.add(new HashSet<>());
+        }
+        this.taskExecutor = taskExecutor;
+        tickThread = new Thread(this::run, name);
+        tickThread.setDaemon(true);
+        tickThread.start();
+    }
+
+    public void close() {
+        running = false;
+        tickThread.interrupt();
+        synchronized (slots) {
+            for (Set<Timer> slot : slots) {
+                slot.clear();
+            }
+        }
+    }
+
+    /**
+     * Schedules the timer, if it's already scheduled then it's moved.
+     * @param timer the timer
+     * @param delaySeconds seconds until the expiration, at least one tick
+     */
+    public void schedule(Timer timer, long delaySeconds) {
+        long delay = Math.max(1, delaySeconds);
+        synchronized (slots) {
+            removeFromSlot(timer);
+            timer.expirationTick = currentTick + delay;
+            timer.slot = (int) (timer.expirationTick % WHEEL_SIZE);
+            timer.rounds = (delay - 1) / WHEEL_SIZE;
+            slots.get(timer.slot).add(timer);
+        }
+    }
+
+    public void cancel(Timer timer) {
+        synchronized (slots) {
+            removeFromSlot(timer);
+        }
+    }
+
+    /**
+     * @param timer the timer
+     * @return seconds until the expiration of the timer, 0 if it's not scheduled
+     */
+    public long getRemainingSeconds(Timer timer) {
+        synchronized (slots) {
+            return (timer.slot < 0) ? 0 : timer.expirationTick - currentTick;
+        }
+    }
+
+    private void removeFromSlot(Timer timer) {
+        if (timer.slot >= 0) {
+            slots.get(timer.slot).remove(timer);
+            timer.slot = -1;
+        }
+    }
+
+    private void run() {
+        long nextTickMs = System.currentTimeMillis() + TICK_MS;
+        while (running) {
+            long sleepMs = nextTickMs - System.currentTimeMillis();
+            if (sleepMs > 0) {
+                try {
+                    Thread.sleep(sleepMs);
+                } catch (InterruptedException e) {
+                    if (!running) {
+                        return;
+                    }
+                    LOG.error("Timer was interrrupted {}", e.toString());
+                    continue;
+                }
+            }
+            // the next tick is kept on the schedule, so the ticks are not shifted by the processing time
+            nextTickMs += TICK_MS;
+            tick();
+        }
+    }
+
+    private void tick() {
+        List<Timer> expired = new ArrayList<>();
+        synchronized (slots) {
+            currentTick++;
+            Iterator<Timer> it = slots.get((int) (currentTick % WHEEL_SIZE)).iterator();
+            while (it.hasNext()) {
+                Timer timer = it.next();
+                if (timer.rounds > 0) {
+                    timer.rounds--;
+                } else {
+                    it.remove();
+                    timer.slot = -1;
+                    expired.add(timer);
+                }
+            }
+        }
+        for (Timer timer : expired) {
+            try {
+                taskExecutor.execute(timer.task);
+            } catch (RuntimeException e) {
+                LOG.error("Failed to run the expired timer: {}", e.toString());
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2017 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.opendaylight.iotdm.onem2m.tsdr.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.opendaylight.iotdm.onem2m.plugins.Onem2mPluginsDbApi;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.iotdm.onem2m.rev150105.onem2m.resource.tree.Onem2mResource;
+
+/**
+ * Trie of the target descriptors keyed by the hierarchical name of their target resource, split by the path
+ * segments.  The descriptors covering a resource are found by walking the hierarchical name of the resource,
+ * so the lookup costs the depth of the resource instead of a subtree check against every descriptor.
+ *
+ * The target URI of a descriptor can be non-hierarchical, it's resolved to the hierarchical name when it's
+ * added.  If the target doesn't exist yet the URI is used as it is and it's resolved again by resolvePending().
+ *
+ * @param <T> the descriptor type
+ */
+public class Onem2mTsdrUriTrie<T> {
+
+    private static final long RESOLVE_INTERVAL_MS = 1000;
+
+    private final Node<T> root = new Node<>();
+    // target URI of the descriptor to its key in the trie
+    private final Map<String, String> trieKeys = new HashMap<>();
+    // target URIs which were not resolved to the hierarchical name
+    private final Map<String, T> pending = new HashMap<>();
+    private long lastResolveMs = 0;
+
+    private static class Node<T> {
+        private final Map<String, Node<T>> children = new HashMap<>();
+        // descriptors by their target URI, more URIs can name the same resource
+        private final Map<String, T> values = new LinkedHashMap<>();
+    }
+
+    /**
+     * @param uri hierarchical URI, the leading slashes are ignored
+     * @return the path segments of the URI
+     */
+    public static String[] toPathSegments(String uri) {
+        int i = 0;
+        while (i < uri.length() && uri.charAt(i) == '/') {
+            i++;
+        }
+        String path = uri.substring(i);
+        return path.isEmpty() ? new String[0] : path.split("/");
+    }
+
+    /**
+     * @param targetUri target URI of a descriptor
+     * @return the hierarchical name of the target resource or null if the target doesn't exist (yet)
+     */
+    private static String resolveHierarchicalName(String targetUri) {
+        if (!Onem2mPluginsDbApi.getInstance().isApiReady()) {
+            return null;
+        }
+        String resourceId = Onem2mPluginsDbApi.getInstance().findResourceIdUsingURI(targetUri);
+        Onem2mResource onem2mResource = (resourceId == null) ? null :
+                Onem2mPluginsDbApi.getInstance().getResource(resourceId);
+        if (onem2mResource == null) {
+            return null;
+        }
+        return Onem2mPluginsDbApi.getInstance().getHierarchicalNameForResource(onem2mResource);
+    }
+
+    public synchronized void put(String targetUri, T value) {
+        remove(targetUri);
+        String key = resolveHierarchicalName(targetUri);
+        if (key == null) {
+            key = targetUri;
+            pending.put(targetUri, value);
+        }
+        trieKeys.put(targetUri, key);
+        Node<T> node = root;
+        for (String segment : toPathSegments(key)) {
+            node = node.children.computeIfAbsent(segment, k -> new Node<>());
+        }
+        node.values.put(targetUri, value);
+    }
+
+    public synchronized void remove(String targetUri) {
+        pending.remove(targetUri);
+        String key = trieKeys.remove(targetUri);
+        if (key != null) {
+            removeFrom(root, toPathSegments(key), 0, targetUri);
+        }
+    }
+
+    // returns true if the node became empty and it can be removed from its parent
+    private boolean removeFrom(Node<T> node, String[] segments, int depth, String targetUri) {
+        if (depth == segments.length) {
+            node.values.remove(targetUri);
+        } else {
+            Node<T> child = node.children.get(segments[depth]);
+            if (child != null && removeFrom(child, segments, depth + 1, targetUri)) {
+                node.children.remove(segments[depth]);
+            }
+        }
+        return node.values.isEmpty() && node.children.isEmpty();
+    }
+
+    /**
+     * @return true if some target URIs were not resolved yet, the check is cheap
+     */
+    public synchronized boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * Resolves again the target URIs which were not resolved, called when new resources are created.  It's done
+     * at most once per RESOLVE_INTERVAL_MS, so a target which is never created doesn't cost a lookup per create.
+     */
+    public synchronized void resolvePending() {
+        long now = System.currentTimeMillis();
+        if (pending.isEmpty() || now - lastResolveMs < RESOLVE_INTERVAL_MS) {
+            return;
+        }
+        lastResolveMs = now;
+        for (Map.Entry<String, T> entry : new ArrayList<>(pending.entrySet())) {
+            if (resolveHierarchicalName(entry.getKey()) != null) {
+                put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * @param hierarchicalName hierarchical name of the resource
+     * @return a descriptor of the longest target which is the resource or one of its ancestors, null if none
+     */
+    public synchronized T findLongestPrefix(String hierarchicalName) {
+        Node<T> node = root;
+        T found = root.values.isEmpty() ? null : root.values.values().iterator().next();
+        for (String segment : toPathSegments(hierarchicalName)) {
+            node = node.children.get(segment);
+            if (node == null) {
+                break;
+            }
+            if (!node.values.isEmpty()) {
+                found = node.values.values().iterator().next();
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @param hierarchicalName hierarchical name of the resource
+     * @return the descriptors of all targets which are the resource or one of its ancestors
+     */
+    public synchronized List<T> findAllPrefixes(String hierarchicalName) {
+        List<T> found = new ArrayList<>(root.values.values());
+        Node<T> node = root;
+        for (String segment : toPathSegments(hierarchicalName)) {
+            node = node.children.get(segment);
+            if (node == null) {
+                break;
+            }
+            found.addAll(node.values.values());
+        }
+        return found;
+    }
+
+    public synchronized void clear() {
+        root.children.clear();
+        root.values.clear();
+        trieKeys.clear();
+        pending.clear();
+    }
+}